@@ -48,6 +48,9 @@ public class DnTuple implements Comparable<DnTuple>
 
     private DnTuple parent;
 
+    /** The parent ID, when the tuple has been read back without its parent */
+    private String parentId;
+
     private int nbChildren = 0;
 
     private int nbDecendents = 0;
@@ -65,6 +68,30 @@ public class DnTuple implements Comparable<DnTuple>
     }
 
 
+    /**
+     * Creates a DnTuple which has been read back from a sorted run, with
+     * its parent ID instead of its parent.
+     *
+     * @param dn The DN
+     * @param offset The offset of the entry in the LDIF file
+     * @param len The length of the entry
+     * @param id The entry ID
+     * @param parentId The parent entry ID
+     * @param nbChildren The number of children
+     * @param nbDecendents The number of descendants
+     */
+    public DnTuple( Dn dn, long offset, int len, String id, String parentId, int nbChildren, int nbDecendents )
+    {
+        this.dn = dn;
+        this.offset = offset;
+        this.len = len;
+        this.id = id;
+        this.parentId = parentId;
+        this.nbChildren = nbChildren;
+        this.nbDecendents = nbDecendents;
+    }
+
+
     public Dn getDn()
     {
         return dn;
@@ -87,6 +114,11 @@ public class DnTuple implements Comparable<DnTuple>
     {
         if ( parent == null )
         {
+            if ( parentId != null )
+            {
+                return parentId;
+            }
+
             return Partition.ROOT_ID;
         }
 
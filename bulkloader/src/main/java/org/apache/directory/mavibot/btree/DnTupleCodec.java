@@ -0,0 +1,115 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.mavibot.btree;
+
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+
+
+/**
+ * Stores the DnTuples in the runs of an {@link ExternalSorter}. The parent is replaced by its ID,
+ * and the DN is parsed again when the tuple is read back.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+/** no qualifier */ class DnTupleCodec implements ExternalSorter.Codec<DnTuple>
+{
+    /** The SchemaManager used to normalize the DNs */
+    private final SchemaManager schemaManager;
+
+
+    /**
+     * Creates a new instance of DnTupleCodec.
+     *
+     * @param schemaManager The SchemaManager used to normalize the DNs
+     */
+    /** no qualifier */ DnTupleCodec( SchemaManager schemaManager )
+    {
+        this.schemaManager = schemaManager;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write( DataOutput out, DnTuple dt ) throws IOException
+    {
+        writeString( out, dt.getDn().getName() );
+        out.writeLong( dt.getOffset() );
+        out.writeInt( dt.getLen() );
+        out.writeUTF( dt.getId() );
+        out.writeUTF( dt.getParentId() );
+        out.writeInt( dt.getNbChildren() );
+        out.writeInt( dt.getNbDecendents() );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public DnTuple read( DataInput in ) throws IOException
+    {
+        String name = readString( in );
+        long offset = in.readLong();
+        int len = in.readInt();
+        String id = in.readUTF();
+        String parentId = in.readUTF();
+        int nbChildren = in.readInt();
+        int nbDecendents = in.readInt();
+
+        try
+        {
+            return new DnTuple( new Dn( schemaManager, name ), offset, len, id, parentId, nbChildren, nbDecendents );
+        }
+        catch ( LdapInvalidDnException lide )
+        {
+            throw new IOException( "Invalid DN " + name, lide );
+        }
+    }
+
+
+    /**
+     * Writes a String which may be longer than what writeUTF accepts
+     */
+    private static void writeString( DataOutput out, String value ) throws IOException
+    {
+        byte[] bytes = value.getBytes( "UTF-8" );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+
+    /**
+     * Reads a String written by writeString
+     */
+    private static String readString( DataInput in ) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully( bytes );
+
+        return new String( bytes, "UTF-8" );
+    }
+}
@@ -0,0 +1,473 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.mavibot.btree;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+
+/**
+ * Sorts more elements than what can be held in memory. The elements are gathered in
+ * buffers of a fixed size, each full buffer being sorted and written in a temporary
+ * file (a run) by a thread of the given executor, while the next buffer is being
+ * filled. The sorted elements are then read back by merging all the runs at once.<br>
+ * At most <i>maxPendingRuns</i> buffers are waiting for their thread, so the memory
+ * used by the sorter is bounded by ( maxPendingRuns + 1 ) * runSize elements.<br>
+ * When all the elements fit in a single buffer, nothing is written on disk.
+ * <br>
+ * The elements can be read more than once : the runs are kept until the sorter is closed.
+ * This class is not thread safe, except for the writing of the runs, which is done internally.
+ *
+ * @param <T> The type of sorted elements
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ExternalSorter<T> implements Closeable
+{
+    /** The size of the buffers used to read and write the runs */
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Writes and reads back the sorted elements in the runs
+     *
+     * @param <T> The type of sorted elements
+     */
+    public interface Codec<T>
+    {
+        /**
+         * Writes an element. This method can be called concurrently.
+         *
+         * @param out The output
+         * @param element The element to write
+         * @throws IOException If the element can't be written
+         */
+        void write( DataOutput out, T element ) throws IOException;
+
+
+        /**
+         * Reads an element
+         *
+         * @param in The input
+         * @return The element
+         * @throws IOException If the element can't be read
+         */
+        T read( DataInput in ) throws IOException;
+    }
+
+    /** The name of the sorter, used as a prefix for the runs */
+    private final String name;
+
+    /** The element comparator */
+    private final Comparator<T> comparator;
+
+    /** The codec used to store the elements in the runs */
+    private final Codec<T> codec;
+
+    /** The directory where the runs are stored */
+    private final File workDir;
+
+    /** The number of elements in a run */
+    private final int runSize;
+
+    /** The executor sorting and writing the runs */
+    private final ExecutorService executor;
+
+    /** Limits the number of buffers waiting to be written */
+    private final Semaphore pendingRuns;
+
+    /** The buffer being filled */
+    private List<T> buffer;
+
+    /** The runs written, or being written, on disk */
+    private final List<Future<Run>> runs = new ArrayList<Future<Run>>();
+
+    /** The sorted elements, when they all fit in a single buffer */
+    private List<T> sortedBuffer;
+
+    /** The total number of elements */
+    private long size;
+
+    /** Tells if all the elements have been added */
+    private boolean finished;
+
+
+    /**
+     * Creates a new instance of ExternalSorter.
+     *
+     * @param name The sorter name, used as a prefix for the runs
+     * @param comparator The element comparator
+     * @param codec The codec used to store the elements in the runs
+     * @param workDir The directory where the runs are stored
+     * @param runSize The number of elements in a run
+     * @param executor The executor sorting and writing the runs
+     * @param maxPendingRuns The maximum number of buffers waiting to be written
+     */
+    public ExternalSorter( String name, Comparator<T> comparator, Codec<T> codec, File workDir, int runSize,
+        ExecutorService executor, int maxPendingRuns )
+    {
+        this.name = name;
+        this.comparator = comparator;
+        this.codec = codec;
+        this.workDir = workDir;
+        this.runSize = runSize;
+        this.executor = executor;
+        this.pendingRuns = new Semaphore( maxPendingRuns );
+
+        buffer = new ArrayList<T>( runSize );
+    }
+
+
+    /**
+     * Adds an element. If the current buffer is full, it's handed to the executor, which
+     * may block the caller until a previous buffer has been written.
+     *
+     * @param element The element to add
+     * @throws IOException If a run can't be written
+     */
+    public void add( T element ) throws IOException
+    {
+        if ( finished )
+        {
+            throw new IllegalStateException( "The elements of the sorter " + name + " have already been sorted" );
+        }
+
+        buffer.add( element );
+        size++;
+
+        if ( buffer.size() == runSize )
+        {
+            spill();
+            buffer = new ArrayList<T>( runSize );
+        }
+    }
+
+
+    /**
+     * @return The number of elements added to the sorter
+     */
+    public long size()
+    {
+        return size;
+    }
+
+
+    /**
+     * Gives an iterator over the sorted elements. The first call waits for all the runs to
+     * be written, no element can be added after that. The iterator throws a RuntimeException
+     * if a run can't be read.
+     *
+     * @return An iterator over the sorted elements
+     * @throws IOException If a run can't be written or opened
+     */
+    public Iterator<T> iterator() throws IOException
+    {
+        if ( !finished )
+        {
+            finished = true;
+
+            if ( runs.isEmpty() )
+            {
+                // Everything fits in memory
+                Collections.sort( buffer, comparator );
+                sortedBuffer = buffer;
+            }
+            else if ( !buffer.isEmpty() )
+            {
+                spill();
+            }
+
+            buffer = null;
+        }
+
+        if ( sortedBuffer != null )
+        {
+            return Collections.unmodifiableList( sortedBuffer ).iterator();
+        }
+
+        List<Run> writtenRuns = new ArrayList<Run>( runs.size() );
+
+        for ( Future<Run> run : runs )
+        {
+            writtenRuns.add( waitFor( run ) );
+        }
+
+        return new MergeIterator( writtenRuns );
+    }
+
+
+    /**
+     * Deletes the runs
+     */
+    public void close()
+    {
+        for ( Future<Run> future : runs )
+        {
+            try
+            {
+                future.get().file.delete();
+            }
+            catch ( Exception e )
+            {
+                // The run has not been written, there is nothing to delete
+            }
+        }
+
+        runs.clear();
+        buffer = null;
+        sortedBuffer = null;
+    }
+
+
+    /**
+     * Hands the current buffer to the executor
+     */
+    private void spill() throws IOException
+    {
+        try
+        {
+            pendingRuns.acquire();
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while waiting for a run of the sorter " + name );
+        }
+
+        final List<T> elements = buffer;
+        final File file = new File( workDir, name + "-" + runs.size() + ".run" );
+
+        runs.add( executor.submit( new Callable<Run>()
+        {
+            public Run call() throws IOException
+            {
+                try
+                {
+                    Collections.sort( elements, comparator );
+
+                    try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+                        new FileOutputStream( file ), IO_BUFFER_SIZE ) ) )
+                    {
+                        for ( T element : elements )
+                        {
+                            codec.write( out, element );
+                        }
+                    }
+
+                    return new Run( file, elements.size() );
+                }
+                finally
+                {
+                    pendingRuns.release();
+                }
+            }
+        } ) );
+    }
+
+
+    /**
+     * Waits for a run to be written
+     */
+    private Run waitFor( Future<Run> run ) throws IOException
+    {
+        try
+        {
+            return run.get();
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while waiting for a run of the sorter " + name );
+        }
+        catch ( ExecutionException ee )
+        {
+            throw new IOException( "Failed to write a run of the sorter " + name, ee.getCause() );
+        }
+    }
+
+
+    /**
+     * A sorted run stored on disk
+     */
+    private static class Run
+    {
+        /** The file containing the elements */
+        private final File file;
+
+        /** The number of elements */
+        private final int nbElements;
+
+
+        private Run( File file, int nbElements )
+        {
+            this.file = file;
+            this.nbElements = nbElements;
+        }
+    }
+
+
+    /**
+     * Reads the elements of a run, one by one
+     */
+    private class RunReader implements Comparable<RunReader>
+    {
+        /** The run position, used to keep the merge stable */
+        private final int position;
+
+        /** The run content */
+        private final DataInputStream in;
+
+        /** The number of elements not read yet */
+        private int remaining;
+
+        /** The current element */
+        private T current;
+
+
+        private RunReader( int position, Run run ) throws IOException
+        {
+            this.position = position;
+            this.in = new DataInputStream( new BufferedInputStream( new FileInputStream( run.file ),
+                IO_BUFFER_SIZE ) );
+            this.remaining = run.nbElements;
+        }
+
+
+        /**
+         * Reads the next element of the run
+         *
+         * @return false if the run is exhausted, in which case it's closed
+         */
+        private boolean advance() throws IOException
+        {
+            if ( remaining == 0 )
+            {
+                current = null;
+                in.close();
+
+                return false;
+            }
+
+            current = codec.read( in );
+            remaining--;
+
+            return true;
+        }
+
+
+        public int compareTo( RunReader other )
+        {
+            int val = comparator.compare( current, other.current );
+
+            if ( val != 0 )
+            {
+                return val;
+            }
+
+            return position - other.position;
+        }
+    }
+
+
+    /**
+     * Merges the runs, keeping the current element of each run in a priority queue
+     */
+    private class MergeIterator implements Iterator<T>
+    {
+        /** The runs which still have elements, ordered by their current element */
+        private final PriorityQueue<RunReader> queue;
+
+
+        private MergeIterator( List<Run> writtenRuns ) throws IOException
+        {
+            queue = new PriorityQueue<RunReader>( Math.max( 1, writtenRuns.size() ) );
+
+            for ( int i = 0; i < writtenRuns.size(); i++ )
+            {
+                RunReader reader = new RunReader( i, writtenRuns.get( i ) );
+
+                if ( reader.advance() )
+                {
+                    queue.add( reader );
+                }
+            }
+        }
+
+
+        public boolean hasNext()
+        {
+            return !queue.isEmpty();
+        }
+
+
+        public T next()
+        {
+            RunReader reader = queue.poll();
+
+            if ( reader == null )
+            {
+                throw new NoSuchElementException();
+            }
+
+            T element = reader.current;
+
+            try
+            {
+                if ( reader.advance() )
+                {
+                    queue.add( reader );
+                }
+            }
+            catch ( IOException ioe )
+            {
+                throw new RuntimeException( "Failed to read a run of the sorter " + name, ioe );
+            }
+
+            return element;
+        }
+
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException( "Not supported" );
+        }
+    }
+}
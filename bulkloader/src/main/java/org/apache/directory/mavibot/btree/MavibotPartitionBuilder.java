@@ -26,23 +26,28 @@ import static org.apache.directory.mavibot.btree.BTreeFactory.setKey;
 import static org.apache.directory.mavibot.btree.BTreeFactory.setValue;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Array;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.csn.CsnFactory;
@@ -64,9 +69,13 @@ import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.comparators.SerializableComparator;
 import org.apache.directory.api.ldap.schema.loader.JarLdifSchemaLoader;
 import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
 import org.apache.directory.api.util.DateUtils;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.mavibot.btree.serializer.ByteArraySerializer;
+import org.apache.directory.mavibot.btree.serializer.ElementSerializer;
 import org.apache.directory.mavibot.btree.serializer.LongSerializer;
 import org.apache.directory.mavibot.btree.serializer.StringSerializer;
 import org.apache.directory.mavibot.btree.util.Strings;
@@ -80,12 +89,17 @@ import org.apache.directory.server.core.api.DnFactory;
 import org.apache.directory.server.core.api.InstanceLayout;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmIndex;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmPartition;
 import org.apache.directory.server.core.partition.impl.btree.mavibot.MavibotIndex;
 import org.apache.directory.server.core.partition.impl.btree.mavibot.MavibotPartition;
 import org.apache.directory.server.core.partition.impl.btree.mavibot.MavibotRdnIndex;
 import org.apache.directory.server.core.partition.ldif.SingleFileLdifPartition;
 import org.apache.directory.server.core.shared.DefaultDnFactory;
 import org.apache.directory.server.xdbm.Index;
+import org.apache.directory.server.xdbm.MasterTable;
 import org.apache.directory.server.xdbm.ParentIdAndRdn;
 import org.apache.directory.server.xdbm.Store;
 import org.slf4j.Logger;
@@ -93,7 +107,9 @@ import org.slf4j.LoggerFactory;
 
 
 /**
- * A BTree builder that builds a tree from the bottom.
+ * A BTree builder that builds a tree from the bottom. It can also build a JDBM partition :
+ * the sorted tuples are then inserted in the JDBM tables in key order, as JDBM can't write
+ * its pages directly.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -134,6 +150,87 @@ public class MavibotPartitionBuilder
     /** The DN factory, used to check DN */ 
     private DnFactory dnFactory;
 
+    /** The number of threads sorting the runs and parsing the entries */
+    private int nbThreads = Runtime.getRuntime().availableProcessors();
+
+    /** The number of elements sorted in memory before being written in a run */
+    private int runSize = DEFAULT_RUN_SIZE;
+
+    /** The directory in which the sort directory is created */
+    private String tmpDir = System.getProperty( "java.io.tmpdir" );
+
+    /** The directory where the sorted runs are stored */
+    private File sortDir;
+
+    /** The executor sorting the runs and parsing the entries */
+    private ExecutorService executor;
+
+    /** The entries, sorted by ID */
+    private ExternalSorter<DnTuple> entrySorter;
+
+    /** The RDN index forward tuples */
+    private ExternalSorter<Tuple> rdnFwdSorter;
+
+    /** The RDN index reverse tuples */
+    private ExternalSorter<Tuple> rdnRevSorter;
+
+    /** The tuples of the other indexes */
+    private List<IndexSorter> indexSorters = new ArrayList<IndexSorter>();
+
+    /** The presence index tuples */
+    private ExternalSorter<Tuple> presenceSorter;
+
+    /** The OIDs of the attributes stored in the presence index */
+    private Set<String> presenceOids = new HashSet<String>();
+
+    /** Tells if we build a JDBM partition instead of a Mavibot partition */
+    private boolean jdbm = false;
+
+    /** The JDBM partition being built, if any */
+    private JdbmPartition jdbmPartition;
+
+    /** The default number of elements in a sorted run */
+    private static final int DEFAULT_RUN_SIZE = 50000;
+
+    /** The number of entries parsed at once by a thread */
+    private static final int PARSE_BATCH_SIZE = 1000;
+
+    /** Sorts the DNs so that an entry comes right before its descendants */
+    private static final Comparator<DnTuple> HIERARCHY_COMPARATOR = new Comparator<DnTuple>()
+    {
+        @Override
+        public int compare( DnTuple dt0, DnTuple dt1 )
+        {
+            List<Rdn> rdns0 = dt0.getDn().getRdns();
+            List<Rdn> rdns1 = dt1.getDn().getRdns();
+            int size0 = rdns0.size();
+            int size1 = rdns1.size();
+
+            // The RDNs are compared starting from the root
+            for ( int i = 1; ( i <= size0 ) && ( i <= size1 ); i++ )
+            {
+                int val = rdns0.get( size0 - i ).getNormName().compareTo( rdns1.get( size1 - i ).getNormName() );
+
+                if ( val != 0 )
+                {
+                    return val;
+                }
+            }
+
+            return size0 - size1;
+        }
+    };
+
+    /** Sorts the DNs by ID */
+    private static final Comparator<DnTuple> ID_COMPARATOR = new Comparator<DnTuple>()
+    {
+        @Override
+        public int compare( DnTuple dt0, DnTuple dt1 )
+        {
+            return dt0.getId().compareTo( dt1.getId() );
+        }
+    };
+
     private static final Logger LOG = LoggerFactory.getLogger( MavibotPartitionBuilder.class );
 
 
@@ -471,7 +568,14 @@ public class MavibotPartitionBuilder
     }
 
 
-    private Set<DnTuple> getDnTuples() throws Exception
+    /**
+     * Reads all the DNs from the LDIF file, and sorts them in hierarchical order. The sorted
+     * runs are written on disk when the DNs don't fit in memory.
+     *
+     * @return The sorter containing the DNs
+     * @throws Exception If the LDIF file can't be read
+     */
+    private ExternalSorter<DnTuple> sortDnTuples() throws Exception
     {
         File file = new File( ldifFile );
 
@@ -479,327 +583,384 @@ public class MavibotPartitionBuilder
 
         FastLdifReader reader = new FastLdifReader( file, dnFactory );
 
-        Set<DnTuple> sortedDnSet = new TreeSet<DnTuple>();
+        ExternalSorter<DnTuple> dnSorter = newSorter( "dn", HIERARCHY_COMPARATOR, new DnTupleCodec( schemaManager ) );
 
-        while ( reader.hasNext() )
+        try
         {
-            // FastLdifReader will always return NULL LdifEntry
-            // call getDnTuple() after next() to get a DnTuple
-            reader.next();
-            
-            DnTuple dt = reader.getDnTuple();
-            
-            dt.getDn().apply( schemaManager );
-            sortedDnSet.add( dt );
-
-            if ( dt.getDn().toString().equals( "uid=user.29998,ou=People,dc=example,dc=com" ) )
+            while ( reader.hasNext() )
             {
-                System.out.println( dt );
-            }
-        }
+                // FastLdifReader will always return NULL LdifEntry
+                // call getDnTuple() after next() to get a DnTuple
+                reader.next();
 
-        reader.close();
+                DnTuple dt = reader.getDnTuple();
 
-        if ( sortedDnSet.isEmpty() )
-        {
-            return Collections.EMPTY_SET;
+                dt.getDn().apply( schemaManager );
+                dnSorter.add( dt );
+            }
         }
-
-        Iterator<DnTuple> itr = sortedDnSet.iterator();
-        /*
-        FileWriter fw = new FileWriter( "/tmp/dntuples.txt" );
-        while( itr.hasNext() )
+        finally
         {
-            fw.write( itr.next().getDn().getName() + "\n" );
+            reader.close();
         }
-        
-        fw.close();
-        itr = sortedDnSet.iterator();
-        */
-        DnTuple root = itr.next();
-        root.setParent( null );
 
-        suffixDn = root.getDn();
-        
-        System.out.println( "Using " + suffixDn.getName() + " as the partition's root DN" );
-        
-        Map<String, DnTuple> parentDnIdMap = new HashMap<String, DnTuple>();
-        parentDnIdMap.put( root.getDn().getNormName(), root );
+        return dnSorter;
+    }
 
-        DnTuple prevTuple = root;
-        
-        while ( itr.hasNext() )
+
+    /**
+     * Sets the parent of each entry, and counts its children and descendants. As the DNs are
+     * sorted in hierarchical order, an entry comes right after its parent or one of its
+     * siblings' descendants, so we only have to keep the ancestors of the current entry.
+     * An entry is handed to the entry and RDN sorters once all its descendants have been
+     * counted.
+     *
+     * @param root The partition's root
+     * @param dnItr The other DNs, in hierarchical order
+     * @throws Exception If a sorted run can't be written or read, or if the RDN index can't be updated
+     */
+    private void resolveParents( DnTuple root, Iterator<DnTuple> dnItr ) throws Exception
+    {
+        Deque<DnTuple> ancestors = new ArrayDeque<DnTuple>();
+        ancestors.push( root );
+
+        while ( dnItr.hasNext() )
         {
-            DnTuple dt = itr.next();
+            DnTuple dt = dnItr.next();
 
-            String parentDn = dt.getDn().getParent().getNormName();
-            DnTuple parent = parentDnIdMap.get( parentDn );
+            while ( !ancestors.isEmpty() && !dt.getDn().isDescendantOf( ancestors.peek().getDn() ) )
+            {
+                addEntry( ancestors.pop() );
+            }
 
-            if ( parent == null )
+            if ( ancestors.isEmpty() )
             {
-                if ( parentDn.equals( prevTuple.getDn().getNormName() ) )
-                {
-                    parentDnIdMap.put( prevTuple.getDn().getNormName(), prevTuple );
-                    parent = prevTuple;
-                }
-                else
-                {
-                    throw new IllegalStateException( "Parent entry's ID of the entry " + dt.getDn().getName()
-                        + " not found." );
-                }
+                throw new IllegalStateException( "The entry " + dt.getDn().getName() + " is not below the root "
+                    + root.getDn().getName() );
             }
-            else
+
+            DnTuple parent = ancestors.peek();
+
+            if ( dt.getDn().equals( parent.getDn() ) )
             {
-                // load certain siblings
-                if( !dt.getDn().isDescendantOf( prevTuple.getDn() ) )
-                {
-                    //System.out.println( "adding dn " + prevTuple.getDn().getName() + " to the map");
-                    parentDnIdMap.put( prevTuple.getDn().getNormName(), root );
-                }
+                LOG.warn( "Ignoring the duplicate entry {}", dt.getDn().getName() );
+                continue;
             }
-            
+
+            if ( dt.getDn().size() != parent.getDn().size() + 1 )
+            {
+                throw new IllegalStateException( "Parent entry's ID of the entry " + dt.getDn().getName()
+                    + " not found." );
+            }
+
             dt.setParent( parent );
             parent.addChild();
             parent.addDecendent();
-            
-            prevTuple = dt;
-        }
 
-//        for ( DnTuple dt : sortedDnSet )
-//        {
-//            System.out.println( dt );
-//        }
+            ancestors.push( dt );
+        }
 
-        return sortedDnSet;
+        while ( !ancestors.isEmpty() )
+        {
+            addEntry( ancestors.pop() );
+        }
     }
 
 
-    private void buildMasterTable( Set<DnTuple> sortedDnSet ) throws Exception
+    /**
+     * Adds an entry whose children and descendants have all been counted to the
+     * master table and RDN index sorters. The JDBM RDN index is directly updated, as
+     * the siblings are already close to each other.
+     */
+    private void addEntry( DnTuple dt ) throws Exception
     {
-        final Set<DnTuple> idSortedSet = new TreeSet<DnTuple>( new Comparator<DnTuple>()
-        {
+        ParentIdAndRdn parentIdAndRdn;
 
-            @Override
-            public int compare( DnTuple dt0, DnTuple dt1 )
-            {
-                return dt0.getId().compareTo( dt1.getId() );
-            }
-        } );
+        if ( dt.getParent() == null )
+        {
+            parentIdAndRdn = new ParentIdAndRdn( Partition.ROOT_ID, dt.getDn().getRdns() );
+        }
+        else
+        {
+            parentIdAndRdn = new ParentIdAndRdn( dt.getParentId(), dt.getDn().getRdn() );
+        }
 
-        idSortedSet.addAll( sortedDnSet );
+        parentIdAndRdn.setNbChildren( dt.getNbChildren() );
+        parentIdAndRdn.setNbDescendants( dt.getNbDecendents() );
 
-//        System.out.println( "Sorted on ID" );
-//        for ( DnTuple dt : idSortedSet )
-//        {
-//            System.out.println( dt );
-//        }
+        entrySorter.add( dt );
 
-        Iterator<Tuple> entryItr = new Iterator<Tuple>()
+        if ( jdbmPartition != null )
+        {
+            jdbmPartition.getRdnIndex().add( parentIdAndRdn, dt.getId() );
+        }
+        else
         {
+            rdnFwdSorter.add( new Tuple( parentIdAndRdn, dt.getId() ) );
+            rdnRevSorter.add( new Tuple( dt.getId(), parentIdAndRdn ) );
+        }
+    }
 
-            private Iterator<DnTuple> itr = idSortedSet.iterator();
 
-            final SchemaAwareLdifReader lar = new SchemaAwareLdifReader( schemaManager );
+    /**
+     * Builds the master table, reading the entries in ID order. The entries are parsed
+     * by the executor threads, and their indexed values are handed to the index sorters.
+     *
+     * @throws Exception If the master table can't be built
+     */
+    private void buildMasterTable() throws Exception
+    {
+        try
+        {
+            Iterator<Tuple> entryItr = new EntryIterator( entrySorter.iterator() );
 
-            final AttributeType atEntryUUID = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.ENTRY_UUID_AT );
-            final AttributeType atEntryParentID = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.ENTRY_PARENT_ID_AT );
-            final AttributeType atCsn = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.ENTRY_CSN_AT );
-            final AttributeType atCreator = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.CREATORS_NAME_AT );
-            final AttributeType atCreatedTime = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.CREATE_TIMESTAMP_AT );
-            
-            final Attribute creatorsName = new DefaultAttribute( atCreator, ServerDNConstants.ADMIN_SYSTEM_DN );
-            final Attribute createdTime = new DefaultAttribute( atCreatedTime, DateUtils.getGeneralizedTime() );
-            final Attribute entryCsn = new DefaultAttribute( atCsn, csnFactory.newInstance().toString() );
-            
-            final Tuple t = new Tuple();
-            
-            @Override
-            public boolean hasNext()
+            if ( jdbmPartition == null )
             {
-                return itr.hasNext();
+                build( entryItr, masterTableName );
+
+                return;
             }
 
+            MasterTable master = jdbmPartition.getMasterTable();
 
-            @Override
-            public Tuple<String, Entry> next()
+            while ( entryItr.hasNext() )
             {
+                Tuple t = entryItr.next();
+                master.put( ( String ) t.getKey(), ( Entry ) t.getValue() );
+            }
+        }
+        finally
+        {
+            entrySorter.close();
+        }
+    }
 
-                DnTuple dt = itr.next();
-                t.setKey( dt.getId() );
-
-                try
-                {
-                    
-                    byte[] data = new byte[dt.getLen()];
-                    raf.seek( dt.getOffset() );
-                    raf.readFully( data, 0, data.length );
-
-                    Entry entry = lar.parseLdifEntry( Strings.utf8ToString( data ) ).getEntry();
-
-                    entry.add( atEntryUUID, dt.getId() );
-                    entry.add( atEntryParentID, dt.getParentId() );
-                    entry.add( entryCsn );
-                    entry.add( creatorsName );
-                    entry.add( createdTime );
-
-                    t.setValue( entry );
-                }
-                catch ( Exception e )
-                {
-                    LOG.warn( "Failed to parse the entry for the DnTuple " + dt );
-                    throw new RuntimeException( e );
-                }
 
-                return t;
+    /**
+     * Builds a B-tree from the tuples stored in a sorter. When the B-tree allows duplicate
+     * keys, the values of a key are gathered in a Set.
+     *
+     * @param sorter The sorter containing the tuples
+     * @param name The B-tree name
+     * @throws Exception If the B-tree can't be built
+     */
+    private void buildSorted( ExternalSorter<Tuple> sorter, String name ) throws Exception
+    {
+        try
+        {
+            if ( sorter.size() == 0 )
+            {
+                return;
             }
 
+            BTree btree = rm.getManagedTree( name );
+            Iterator<Tuple> tupleItr = sorter.iterator();
 
-            @Override
-            public void remove()
+            if ( btree.isAllowDuplicates() )
             {
-                throw new UnsupportedOperationException( "Not supported" );
+                tupleItr = new DuplicateKeyIterator( tupleItr, btree.getKeySerializer().getComparator(),
+                    btree.getValueSerializer().getComparator() );
             }
 
-        };
-
-        build( entryItr, masterTableName );
+            build( tupleItr, name );
+        }
+        finally
+        {
+            sorter.close();
+        }
     }
 
 
-    private void buildRdnIndex( Set<DnTuple> sortedDnSet ) throws Exception
+    /**
+     * Adds the tuples stored in a sorter to a JDBM index, in key order, so that the
+     * inserted keys are most of the time in the pages which have just been written.
+     *
+     * @param sorter The sorter containing the tuples
+     * @param index The JDBM index
+     * @throws Exception If the index can't be updated
+     */
+    private void writeSorted( ExternalSorter<Tuple> sorter, Index index ) throws Exception
     {
-        final Set<DnTuple> parentIdRdnSortedSet = new TreeSet<DnTuple>( new Comparator<DnTuple>()
+        try
         {
+            Iterator<Tuple> tupleItr = sorter.iterator();
 
-            @Override
-            public int compare( DnTuple dt0, DnTuple dt1 )
+            while ( tupleItr.hasNext() )
             {
-                int val = dt0.getParentId().compareTo( dt1.getParentId() );
-                if ( val != 0 )
-                {
-                    return val;
-                }
+                Tuple t = tupleItr.next();
+                index.add( t.getKey(), ( String ) t.getValue() );
+            }
+        }
+        finally
+        {
+            sorter.close();
+        }
+    }
 
-                Rdn[] dt0Rdns = dt0.getDn().getRdns().toArray( new Rdn[0] );
 
-                Rdn[] dt1Rdns = dt1.getDn().getRdns().toArray( new Rdn[0] );
+    /**
+     * Creates a sorter storing its runs in the sort directory
+     */
+    private <T> ExternalSorter<T> newSorter( String name, Comparator<T> comparator, ExternalSorter.Codec<T> codec )
+    {
+        return new ExternalSorter<T>( name, comparator, codec, sortDir, runSize, executor, nbThreads );
+    }
 
-                if ( dt0Rdns.length == 1 )
-                {
-                    // Special case : we only have one rdn.
-                    val = dt0Rdns[0].getNormName().compareTo( dt1Rdns[0].getNormName() );
 
-                    return val;
-                }
-                else
-                {
-                    for ( int i = 0; i < dt0Rdns.length; i++ )
-                    {
-                        val = dt0Rdns[i].getNormName().compareTo( dt1Rdns[i].getNormName() );
+    /**
+     * Creates a sorter for the tuples of a B-tree, ordered by key
+     */
+    private ExternalSorter<Tuple> newTupleSorter( String name, BTree btree )
+    {
+        return newSorter( name, new IndexTupleComparator( btree.getKeySerializer().getComparator() ),
+            new TupleCodec( btree.getKeySerializer(), btree.getValueSerializer() ) );
+    }
 
-                        if ( val != 0 )
-                        {
-                            return val;
-                        }
-                    }
 
-                    return 0;
-                }
-            }
-        } );
+    /**
+     * Creates a sorter for the tuples of a JDBM index, ordered by key using the
+     * comparator of the index forward table
+     */
+    private ExternalSorter<Tuple> newTupleSorter( String name, ElementSerializer keySerializer )
+    {
+        return newSorter( name, new IndexTupleComparator( keySerializer.getComparator() ),
+            new TupleCodec( keySerializer, StringSerializer.INSTANCE ) );
+    }
 
-        parentIdRdnSortedSet.addAll( sortedDnSet );
 
-//        System.out.println( "Sorted on ParentID and RDNs" );
-//        for ( DnTuple dt : parentIdRdnSortedSet )
-//        {
-//            System.out.println( dt );
-//        }
+    /**
+     * Creates the serializer of the keys of a JDBM index, which compares the keys using
+     * the equality matching rule of the indexed AttributeType, as the index does
+     */
+    private ElementSerializer getKeySerializer( AttributeType attributeType )
+    {
+        SerializableComparator comp = new SerializableComparator( attributeType.getEquality().getOid() );
+        comp.setSchemaManager( schemaManager );
 
-        Iterator<Tuple> parentIdAndRdnFwdItr = new Iterator<Tuple>()
+        if ( attributeType.getSyntax().isHumanReadable() )
+        {
+            return new StringSerializer( comp );
+        }
+        else
         {
-            Iterator<DnTuple> itr = parentIdRdnSortedSet.iterator();
+            return new ByteArraySerializer( comp );
+        }
+    }
 
 
-            @Override
-            public void remove()
-            {
-            }
+    /**
+     * @return The system and user indexes of a partition
+     */
+    private List<Index<?, String>> getAllIndices( AbstractBTreePartition partition ) throws Exception
+    {
+        List<Index<?, String>> indexes = new ArrayList<Index<?, String>>();
+        Iterator<String> systemIndexItr = partition.getSystemIndices();
 
+        while ( systemIndexItr.hasNext() )
+        {
+            indexes.add( partition.getSystemIndex( schemaManager.lookupAttributeTypeRegistry(
+                systemIndexItr.next() ) ) );
+        }
 
-            @Override
-            public Tuple next()
-            {
-                DnTuple dt = itr.next();
-                Tuple t = new Tuple();
+        Iterator<String> userIndexItr = partition.getUserIndices();
 
-                ParentIdAndRdn rdn = new ParentIdAndRdn( dt.getParentId(), dt.getDn().getRdns() );
-                rdn.setNbChildren( dt.getNbChildren() );
-                rdn.setNbDescendants( dt.getNbDecendents() );
-                
-                t.setKey( rdn );
-                t.setValue( dt.getId() );
+        while ( userIndexItr.hasNext() )
+        {
+            indexes.add( partition.getUserIndex( schemaManager.lookupAttributeTypeRegistry(
+                userIndexItr.next() ) ) );
+        }
 
-                return t;
-            }
+        return indexes;
+    }
 
 
-            @Override
-            public boolean hasNext()
-            {
-                return itr.hasNext();
-            }
-        };
+    /**
+     * Creates the sorters for the RDN index and for all the other indexes
+     *
+     * @param partition The partition being built
+     */
+    private void createIndexSorters( AbstractBTreePartition partition ) throws Exception
+    {
+        entrySorter = newSorter( "entry", ID_COMPARATOR, new DnTupleCodec( schemaManager ) );
 
-        String forwardRdnTree = ApacheSchemaConstants.APACHE_RDN_AT_OID + MavibotRdnIndex.FORWARD_BTREE;
+        if ( !jdbm )
+        {
+            String forwardRdnTree = ApacheSchemaConstants.APACHE_RDN_AT_OID + MavibotRdnIndex.FORWARD_BTREE;
+            String revRdnTree = ApacheSchemaConstants.APACHE_RDN_AT_OID + MavibotRdnIndex.REVERSE_BTREE;
 
-        build( parentIdAndRdnFwdItr, forwardRdnTree );
+            rdnFwdSorter = newTupleSorter( "rdn-fwd", rm.getManagedTree( forwardRdnTree ) );
+            rdnRevSorter = newTupleSorter( "rdn-rev", rm.getManagedTree( revRdnTree ) );
+        }
 
-        Iterator<Tuple> parentIdAndRdnRevItr = new Iterator<Tuple>()
+        for ( Index<?, String> idx : getAllIndices( partition ) )
         {
-            Iterator<DnTuple> itr = parentIdRdnSortedSet.iterator();
-
+            // RDN and presence indices are built separately
+            String oid = idx.getAttribute().getOid();
 
-            @Override
-            public void remove()
+            if ( ApacheSchemaConstants.APACHE_RDN_AT_OID.equals( oid )
+                || ApacheSchemaConstants.APACHE_PRESENCE_AT_OID.equals( oid ) )
             {
+                continue;
             }
 
+            String ignoreVal = null;
 
-            @Override
-            public Tuple next()
+            if ( SchemaConstants.OBJECT_CLASS_AT_OID.equals( oid ) )
             {
-                DnTuple dt = itr.next();
-                Tuple t = new Tuple();
+                // should be a normalized val
+                ignoreVal = "top";
+            }
 
-                ParentIdAndRdn rdn = new ParentIdAndRdn( dt.getParentId(), dt.getDn().getRdns() );
-                rdn.setNbChildren( dt.getNbChildren() );
-                rdn.setNbDescendants( dt.getNbDecendents() );
-                
-                t.setKey( dt.getId() );
-                t.setValue( rdn );
+            indexSorters.add( new IndexSorter( idx, ignoreVal ) );
+        }
 
-                return t;
-            }
+        Iterator<String> userIndexItr = partition.getUserIndices();
 
+        while ( userIndexItr.hasNext() )
+        {
+            presenceOids.add( userIndexItr.next() );
+        }
+
+        if ( jdbm )
+        {
+            presenceSorter = newTupleSorter( "presence", StringSerializer.INSTANCE );
+        }
+        else
+        {
+            presenceSorter = newTupleSorter( "presence",
+                rm.getManagedTree( ApacheSchemaConstants.APACHE_PRESENCE_AT_OID + MavibotIndex.FORWARD_BTREE ) );
+        }
+    }
 
-            @Override
-            public boolean hasNext()
-            {
-                return itr.hasNext();
-            }
-        };
 
-        String revRdnTree = ApacheSchemaConstants.APACHE_RDN_AT_OID + MavibotRdnIndex.REVERSE_BTREE;
+    /**
+     * Hands the indexed values of an entry to the index sorters
+     */
+    private void indexEntry( String id, Entry entry ) throws IOException
+    {
+        for ( IndexSorter indexSorter : indexSorters )
+        {
+            indexSorter.add( id, entry );
+        }
 
-        build( parentIdAndRdnRevItr, revRdnTree );
+        for ( String oid : presenceOids )
+        {
+            if ( entry.get( oid ) != null )
+            {
+                presenceSorter.add( new Tuple( oid, id ) );
+            }
+        }
     }
 
 
     /**
      * Import a LDIF file and create a fully working Mavibot partition.
-     * TODO buildPartition.
      *
+     * The DNs are first sorted in hierarchical order to find the parent of each entry, then
+     * the entries are sorted by ID to build the master table, while the values of the indexed
+     * attributes are sorted for each index. All the sorts are done by the {@link ExternalSorter},
+     * which spills its sorted runs on disk, so the number of entries we can load is not limited
+     * by the available memory.
      */
     public void buildPartition()
     {
@@ -816,6 +977,7 @@ public class MavibotPartitionBuilder
             InstanceLayout instanceLayout = new InstanceLayout( outputDir );
             cacheService.initialize( instanceLayout );
 
+            sortDir = Files.createTempDirectory( new File( tmpDir ).toPath(), "bulkloader" ).toFile();
         }
         catch ( Exception e )
         {
@@ -824,44 +986,90 @@ public class MavibotPartitionBuilder
             return;
         }
 
-        // Now, read all the DNs, and sort them
-        Set<DnTuple> sortedDnSet = null;
-        
-        try
-        {
-            long sortT0 = System.currentTimeMillis();
-            System.out.println( "Sorting the LDIF data..." );
-            
-            sortedDnSet = getDnTuples();
-            long sortT1 = System.currentTimeMillis();
+        executor = Executors.newFixedThreadPool( nbThreads );
 
-            totalEntries = sortedDnSet.size();
-            
-            System.out.println( "Completed sorting, total number of entries " + totalEntries + 
-                ", time taken : " + ( sortT1 - sortT0 ) + "ms" );
-        }
-        catch ( Exception e )
+        try
         {
-            e.printStackTrace();
-            LOG.warn( "Failed to parse the given LDIF file ", e );
-            return;
+            loadEntries();
         }
-        
-        if ( ( sortedDnSet == null ) || ( sortedDnSet.isEmpty() ) )
+        finally
         {
-            String message = "No entries found in the given LDIF file, aborting bulk load";
-            System.out.println( message );
+            executor.shutdownNow();
+
+            try
+            {
+                FileUtils.deleteDirectory( sortDir );
+            }
+            catch ( IOException ioe )
+            {
+                LOG.warn( "Failed to delete the sort directory " + sortDir, ioe );
+            }
+        }
+    }
+
+
+    /**
+     * Loads the LDIF file in the partition, once the schema and the executor are ready
+     */
+    private void loadEntries()
+    {
+        // Now, read all the DNs, and sort them
+        ExternalSorter<DnTuple> dnSorter = null;
+        Iterator<DnTuple> dnItr = null;
+
+        try
+        {
+            long sortT0 = System.currentTimeMillis();
+            System.out.println( "Sorting the LDIF data..." );
+
+            dnSorter = sortDnTuples();
+            dnItr = dnSorter.iterator();
+            long sortT1 = System.currentTimeMillis();
+
+            totalEntries = ( int ) dnSorter.size();
+
+            System.out.println( "Completed sorting, total number of entries " + totalEntries +
+                ", time taken : " + ( sortT1 - sortT0 ) + "ms" );
+        }
+        catch ( Exception e )
+        {
+            e.printStackTrace();
+            LOG.warn( "Failed to parse the given LDIF file ", e );
+            return;
+        }
+
+        if ( !dnItr.hasNext() )
+        {
+            String message = "No entries found in the given LDIF file, aborting bulk load";
+            System.out.println( message );
             LOG.info( message );
+            dnSorter.close();
+
+            return;
         }
-        
-        MavibotPartition partition = null;
-        
+
+        DnTuple root = dnItr.next();
+        suffixDn = root.getDn();
+
+        System.out.println( "Using " + suffixDn.getName() + " as the partition's root DN" );
+
+        AbstractBTreePartition partition = null;
+
         try
         {
             long partT0 = System.currentTimeMillis();
             System.out.print( "Creating partition..." );
-            
-            partition = new MavibotPartition( schemaManager, dnFactory );
+
+            if ( jdbm )
+            {
+                jdbmPartition = new JdbmPartition( schemaManager, dnFactory );
+                partition = jdbmPartition;
+            }
+            else
+            {
+                partition = new MavibotPartition( schemaManager, dnFactory );
+            }
+
             partition.setId( "builder" );
             partition.setSuffixDn( suffixDn );
 
@@ -869,17 +1077,30 @@ public class MavibotPartitionBuilder
             partition.setPartitionPath( dir.toURI() );
             partition.setCacheService( cacheService );
 
-            for( String atName : indexAttributes )
+            for ( String atName : indexAttributes )
             {
                 schemaManager.lookupAttributeTypeRegistry( atName );
-                partition.addIndex( new MavibotIndex( atName, false ) );
+
+                if ( jdbm )
+                {
+                    partition.addIndex( new JdbmIndex<String>( atName, false ) );
+                }
+                else
+                {
+                    partition.addIndex( new MavibotIndex( atName, false ) );
+                }
             }
-            
+
             partition.initialize();
 
-            masterTableName = partition.getMasterTable().getName();
-            
-            rm = partition.getRecordMan();
+            if ( !jdbm )
+            {
+                masterTableName = partition.getMasterTable().getName();
+
+                rm = ( ( MavibotPartition ) partition ).getRecordMan();
+            }
+
+            createIndexSorters( partition );
 
             long partT1 = System.currentTimeMillis();
             System.out.println( ", time taken : " + ( partT1 - partT0 ) + "ms" );
@@ -891,339 +1112,519 @@ public class MavibotPartitionBuilder
             return;
         }
 
+        try
+        {
+            long hierarchyT0 = System.currentTimeMillis();
+            System.out.print( "Resolving the parent entries..." );
+            resolveParents( root, dnItr );
+            long hierarchyT1 = System.currentTimeMillis();
+            System.out.println( ", time taken : " + ( hierarchyT1 - hierarchyT0 ) + "ms" );
+        }
+        catch ( Exception e )
+        {
+            e.printStackTrace();
+            LOG.warn( "Failed to resolve the parent entries", e );
+            return;
+        }
+        finally
+        {
+            // not needed anymore
+            dnSorter.close();
+        }
+
         try
         {
             long masterT0 = System.currentTimeMillis();
             System.out.print( "Building master table..." );
-            buildMasterTable( sortedDnSet );
+            buildMasterTable();
             long masterT1 = System.currentTimeMillis();
             System.out.println( ", time taken : " + ( masterT1 - masterT0 ) + "ms" );
         }
-        catch( Exception e )
+        catch ( Exception e )
         {
             e.printStackTrace();
             LOG.warn( "Failed to build master table", e );
-            e.printStackTrace();
             return;
         }
-        
-        Iterator<String> userIndexItr = partition.getUserIndices();
-        
+
+        if ( jdbm )
+        {
+            buildJdbmIndexes();
+
+            return;
+        }
+
         try
         {
             // the RecordManager must be re-initialized cause we are
             // setting the "values" of leaves to null while building
             // the tree to avoid OOM errors
             partition.destroy();
-            
+
             rm = new RecordManager( new File( partition.getPartitionPath() ).getAbsolutePath() );
-            
+
             long rdnT0 = System.currentTimeMillis();
             System.out.print( "Building RDN index." );
-            buildRdnIndex( sortedDnSet );
+            buildSorted( rdnFwdSorter, ApacheSchemaConstants.APACHE_RDN_AT_OID + MavibotRdnIndex.FORWARD_BTREE );
+            buildSorted( rdnRevSorter, ApacheSchemaConstants.APACHE_RDN_AT_OID + MavibotRdnIndex.REVERSE_BTREE );
             long rdnT1 = System.currentTimeMillis();
             System.out.println( ", time taken : " + ( rdnT1 - rdnT0 ) + "ms" );
         }
-        catch( Exception e )
+        catch ( Exception e )
         {
             e.printStackTrace();
             LOG.warn( "Failed to build the RDN index", e );
             return;
         }
-        
-        // not needed anymore
-        System.out.println( "Clearing the sorted DN set." );
-        sortedDnSet.clear();
-        
-        for( Index<?, String> id : partition.getAllIndices() )
+
+        for ( IndexSorter indexSorter : indexSorters )
         {
-            // RDN and presence indices are built separately
-            String oid = id.getAttribute().getOid();
-            
-            if( ApacheSchemaConstants.APACHE_RDN_AT_OID.equals( oid ) 
-                || ApacheSchemaConstants.APACHE_PRESENCE_AT_OID.equals( oid ) )
-            {
-                continue;
-            }
-            
-            String ignoreVal = null;
-            
-            if( SchemaConstants.OBJECT_CLASS_AT_OID.equals( oid ) )
-            {
-                // should be a normalized val
-                ignoreVal = "top";
-            }
-            
+            String name = indexSorter.attributeType.getName();
+
             try
             {
                 long indexT0 = System.currentTimeMillis();
-                System.out.print("Building index " + id.getAttribute().getName() );
-                buildIndex( id, ignoreVal );
+                System.out.print( "Building index " + name );
+                buildSorted( indexSorter.fwdSorter, indexSorter.attributeType.getOid() + MavibotIndex.FORWARD_BTREE );
+
+                if ( indexSorter.revSorter != null )
+                {
+                    buildSorted( indexSorter.revSorter, indexSorter.attributeType.getOid()
+                        + MavibotIndex.REVERSE_BTREE );
+                }
+
                 long indexT1 = System.currentTimeMillis();
                 System.out.println( ", time taken : " + ( indexT1 - indexT0 ) + "ms" );
             }
-            catch( Exception e )
+            catch ( Exception e )
             {
                 e.printStackTrace();
-                LOG.warn( "Failed to build the index " + id.getAttribute().getName() );
+                LOG.warn( "Failed to build the index " + name );
                 LOG.warn( "", e );
                 return;
             }
         }
-        
+
         try
         {
             System.out.print( "Building presence index..." );
             long presenceT0 = System.currentTimeMillis();
-            buildPresenceIndex( userIndexItr );
+            buildSorted( presenceSorter, ApacheSchemaConstants.APACHE_PRESENCE_AT_OID + MavibotIndex.FORWARD_BTREE );
             long presenceT1 = System.currentTimeMillis();
             System.out.println( ", time taken : " + ( presenceT1 - presenceT0 ) + "ms" );
         }
-        catch( Exception e )
+        catch ( Exception e )
         {
             e.printStackTrace();
             LOG.warn( "Failed to build the presence index." );
             LOG.warn( "", e );
             return;
         }
-        
+
         System.out.println( "Patition building complete." );
     }
 
-    
-    private void buildPresenceIndex( Iterator<String> itr ) throws Exception
-    {
-        Set<String> idxOids = new HashSet<String>();
-        
-        while( itr.hasNext() )
-        {
-            idxOids.add( itr.next() );
-        }
-
-        BTree masterTree = rm.getManagedTree( masterTableName );
 
-        BTree fwdTree = rm.getManagedTree( ApacheSchemaConstants.APACHE_PRESENCE_AT_OID + MavibotIndex.FORWARD_BTREE );
-        boolean fwdDupsAllowed = fwdTree.isAllowDuplicates();
-        
-        Comparator fwdKeyComparator = fwdTree.getKeySerializer().getComparator();
-        
-        final Map<String, Set> fwdMap = new TreeMap<String, Set>();
-
-        TupleCursor<String, Entry> cursor = masterTree.browse();
-        
-        while ( cursor.hasNext() )
+    /**
+     * Writes the JDBM indexes once the master table has been written, and closes the JDBM
+     * partition. The RDN index has already been written while resolving the parents.
+     */
+    private void buildJdbmIndexes()
+    {
+        try
         {
-            Tuple<String, Entry> t = cursor.next();
-            
-            Entry e = t.getValue();
-            
-            for( String oid : idxOids )
+            for ( IndexSorter indexSorter : indexSorters )
             {
-                Attribute at = e.get( oid );
-                if( at == null )
+                String name = indexSorter.attributeType.getName();
+
+                try
                 {
-                    continue;
+                    long indexT0 = System.currentTimeMillis();
+                    System.out.print( "Building index " + name );
+                    writeSorted( indexSorter.fwdSorter, indexSorter.index );
+                    long indexT1 = System.currentTimeMillis();
+                    System.out.println( ", time taken : " + ( indexT1 - indexT0 ) + "ms" );
                 }
-                
-                Set<String> idSet = fwdMap.get( oid );
-                
-                if( idSet == null )
+                catch ( Exception e )
                 {
-                    idSet = new TreeSet<String>();
-                    idSet.add( t.getKey() );
-
-                    fwdMap.put( oid, idSet );
+                    e.printStackTrace();
+                    LOG.warn( "Failed to build the index " + name );
+                    LOG.warn( "", e );
+                    return;
                 }
             }
-        }
-        
-        cursor.close();
-        
-        Iterator<Tuple> tupleItr = new Iterator<Tuple>()
-        {
-            Iterator<java.util.Map.Entry<String, Set>> itr = fwdMap.entrySet().iterator();
-            
-            @Override
-            public Tuple next()
+
+            try
             {
-                java.util.Map.Entry<String, Set> e = itr.next();
-                
-                Tuple t = new Tuple();
-                t.setKey( e.getKey() );
-                t.setValue( e.getValue() );
-                
-                return t;
+                System.out.print( "Building presence index..." );
+                long presenceT0 = System.currentTimeMillis();
+                writeSorted( presenceSorter, jdbmPartition.getPresenceIndex() );
+                long presenceT1 = System.currentTimeMillis();
+                System.out.println( ", time taken : " + ( presenceT1 - presenceT0 ) + "ms" );
             }
-            
-            
-            @Override
-            public boolean hasNext()
+            catch ( Exception e )
             {
-                return itr.hasNext();
+                e.printStackTrace();
+                LOG.warn( "Failed to build the presence index." );
+                LOG.warn( "", e );
+                return;
             }
-            
-            @Override
-            public void remove()
+        }
+        finally
+        {
+            try
             {
+                // Flushes the JDBM files
+                jdbmPartition.destroy();
             }
-        };
-        
-        build( tupleItr, fwdTree.getName() );
+            catch ( Exception e )
+            {
+                LOG.warn( "Failed to close the JDBM partition", e );
+            }
+        }
+
+        System.out.println( "Patition building complete." );
     }
-    
-    
-    private void buildIndex( Index<?, String> idx, String ignoreVal ) throws Exception
+
+
+    /**
+     * The sorters of the forward and reverse tuples of an index
+     */
+    private class IndexSorter
     {
-        BTree masterTree = rm.getManagedTree( masterTableName );
-        
-        AttributeType type = idx.getAttribute();
-        boolean isBinary = type.getSyntax().isHumanReadable();
-        boolean singleValued = type.isSingleValued();
-        
-        BTree fwdTree = rm.getManagedTree( type.getOid() + MavibotIndex.FORWARD_BTREE );
-        boolean fwdDupsAllowed = fwdTree.isAllowDuplicates();
-        
-        Comparator fwdKeyComparator = fwdTree.getKeySerializer().getComparator();
-        
-        Set<Tuple> fwdSet = new TreeSet<Tuple>( new IndexTupleComparator( fwdKeyComparator ) );
-        
-        Map fwdMap = new TreeMap( fwdKeyComparator );
-        
-        BTree revTree = null;
-        boolean revDupsAllowed;
-        Set<Tuple> revSet = null;
-        Map<String,Tuple> revMap = null;
-        Comparator revValComparator = null;
-        
-        if( idx.hasReverse() )
+        /** The index */
+        private final Index<?, String> index;
+
+        /** The indexed AttributeType */
+        private final AttributeType attributeType;
+
+        /** The value which is not indexed, if any */
+        private final String ignoreVal;
+
+        /** The forward tuples : ( value, ID ) */
+        private final ExternalSorter<Tuple> fwdSorter;
+
+        /** The reverse tuples : ( ID, value ), if the index has a reverse table */
+        private final ExternalSorter<Tuple> revSorter;
+
+
+        private IndexSorter( Index<?, String> idx, String ignoreVal ) throws Exception
         {
-            revTree = rm.getManagedTree( type.getOid() + MavibotIndex.REVERSE_BTREE );
-            revDupsAllowed = revTree.isAllowDuplicates();
-            Comparator revKeyComparator = revTree.getKeySerializer().getComparator();
-            revValComparator = revTree.getValueSerializer().getComparator();
-            revSet = new TreeSet<Tuple>( new IndexTupleComparator( revKeyComparator ) );
-            revMap = new TreeMap( revKeyComparator );
+            this.index = idx;
+            this.attributeType = idx.getAttribute();
+            this.ignoreVal = ignoreVal;
+
+            String oid = attributeType.getOid();
+
+            if ( jdbm )
+            {
+                // The JDBM index updates its reverse table along with the forward table
+                fwdSorter = newTupleSorter( oid + "-fwd", getKeySerializer( attributeType ) );
+                revSorter = null;
+
+                return;
+            }
+
+            fwdSorter = newTupleSorter( oid + "-fwd", rm.getManagedTree( oid + MavibotIndex.FORWARD_BTREE ) );
+
+            if ( idx.hasReverse() )
+            {
+                revSorter = newTupleSorter( oid + "-rev", rm.getManagedTree( oid + MavibotIndex.REVERSE_BTREE ) );
+            }
+            else
+            {
+                revSorter = null;
+            }
         }
-        
-        
-        TupleCursor<String, Entry> cursor = masterTree.browse();
-        
-        while ( cursor.hasNext() )
+
+
+        private void add( String id, Entry entry ) throws IOException
         {
-            Tuple<String, Entry> t = cursor.next();
-            
-            Entry e = t.getValue();
-            Attribute at = e.get( type );
-            if( at == null )
+            Attribute at = entry.get( attributeType );
+
+            if ( at == null )
             {
-                continue;
+                return;
             }
-            
-            if( singleValued )
+
+            for ( Value v : at )
             {
-                Value v = at.get();
                 Object normVal = v.getNormValue();
-                
-                if( ignoreVal != null )
+
+                if ( ( ignoreVal != null ) && normVal.equals( ignoreVal ) )
                 {
-                    if( normVal.equals( ignoreVal ) )
-                    {
-                        continue;
-                    }
+                    continue;
                 }
-                
-                Tuple fwdTuple = new Tuple( normVal, t.getKey() );
-                fwdSet.add( fwdTuple );
-                
-                if( revTree != null )
+
+                fwdSorter.add( new Tuple( normVal, id ) );
+
+                if ( revSorter != null )
                 {
-                    Tuple revTuple = new Tuple( t.getKey(), v.getNormValue() );
-                    revSet.add( revTuple );
+                    revSorter.add( new Tuple( id, normVal ) );
                 }
             }
-            else
+        }
+    }
+
+
+    /**
+     * Reads the entries of the master table, in ID order. The entries are read from the LDIF
+     * file by batches, each batch being parsed by the executor threads while the previous one
+     * is written in the master table.
+     */
+    private class EntryIterator implements Iterator<Tuple>
+    {
+        /** The entries, sorted by ID */
+        private final Iterator<DnTuple> dnItr;
+
+        final AttributeType atEntryUUID = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.ENTRY_UUID_AT );
+        final AttributeType atEntryParentID = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.ENTRY_PARENT_ID_AT );
+        final AttributeType atCsn = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.ENTRY_CSN_AT );
+        final AttributeType atCreator = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.CREATORS_NAME_AT );
+        final AttributeType atCreatedTime = schemaManager.lookupAttributeTypeRegistry( SchemaConstants.CREATE_TIMESTAMP_AT );
+
+        final Attribute creatorsName = new DefaultAttribute( atCreator, ServerDNConstants.ADMIN_SYSTEM_DN );
+        final Attribute createdTime = new DefaultAttribute( atCreatedTime, DateUtils.getGeneralizedTime() );
+        final Attribute entryCsn = new DefaultAttribute( atCsn, csnFactory.newInstance().toString() );
+
+        /** The parsed entries being written */
+        private Iterator<Tuple> current = Collections.<Tuple> emptyIterator();
+
+        /** The next batch, being parsed */
+        private List<Future<List<Tuple>>> nextBatch;
+
+
+        private EntryIterator( Iterator<DnTuple> dnItr ) throws Exception
+        {
+            this.dnItr = dnItr;
+
+            nextBatch = submitBatch();
+        }
+
+
+        @Override
+        public boolean hasNext()
+        {
+            while ( !current.hasNext() )
             {
-                for( Value v : at )
+                if ( nextBatch.isEmpty() )
                 {
-                    Object val = v.getNormValue();
-                    
-                    if( ignoreVal != null )
-                    {
-                        if( val.equals( ignoreVal ) )
-                        {
-                            continue;
-                        }
-                    }
-                    
-                    Tuple fwdTuple = ( Tuple ) fwdMap.get( val );
-                    
-                    if( fwdTuple == null )
-                    {
-                        Set<String> idSet = new TreeSet<String>();
-                        idSet.add( t.getKey() );
-                        
-                        fwdTuple = new Tuple( val, idSet );
-                        fwdMap.put( val, fwdTuple );
-                    }
-                    else
-                    {
-                        Set<String> idSet = ( Set<String> ) fwdTuple.getValue();
-                        idSet.add( t.getKey() );
-                    }
-                    
-                    if( revTree != null )
-                    {
-                        Tuple revTuple = revMap.get( t.getKey() );
-                        
-                        if( revTuple == null )
-                        {
-                            Set valSet = new TreeSet( revValComparator );
-                            valSet.add( val );
-                            revTuple = new Tuple( t.getKey(), valSet );
-                        }
-                        else
-                        {
-                            Set valSet = ( Set ) revTuple.getValue();
-                            valSet.add( val );
-                        }
-                    }
+                    return false;
+                }
+
+                List<Future<List<Tuple>>> batch = nextBatch;
+
+                try
+                {
+                    nextBatch = submitBatch();
+                    current = collect( batch ).iterator();
+                }
+                catch ( Exception e )
+                {
+                    throw new RuntimeException( e );
                 }
             }
+
+            return true;
         }
-        
-        cursor.close();
-        
-        if( singleValued )
+
+
+        @Override
+        public Tuple next()
         {
-            if( fwdSet.isEmpty() )
+            if ( !hasNext() )
             {
-                return;
+                throw new NoSuchElementException();
             }
-            
-            build( fwdSet.iterator(), fwdTree.getName() );
-            
-            if( revTree != null )
+
+            return current.next();
+        }
+
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException( "Not supported" );
+        }
+
+
+        /**
+         * Reads the next entries from the LDIF file, and submits them to the executor threads
+         */
+        private List<Future<List<Tuple>>> submitBatch() throws IOException
+        {
+            List<Future<List<Tuple>>> batch = new ArrayList<Future<List<Tuple>>>( nbThreads );
+
+            for ( int i = 0; ( i < nbThreads ) && dnItr.hasNext(); i++ )
             {
-                build( revSet.iterator(), revTree.getName() );
+                final List<DnTuple> dnTuples = new ArrayList<DnTuple>( PARSE_BATCH_SIZE );
+                final List<byte[]> ldifs = new ArrayList<byte[]>( PARSE_BATCH_SIZE );
+
+                while ( ( dnTuples.size() < PARSE_BATCH_SIZE ) && dnItr.hasNext() )
+                {
+                    DnTuple dt = dnItr.next();
+
+                    byte[] data = new byte[dt.getLen()];
+                    raf.seek( dt.getOffset() );
+                    raf.readFully( data, 0, data.length );
+
+                    dnTuples.add( dt );
+                    ldifs.add( data );
+                }
+
+                batch.add( executor.submit( new Callable<List<Tuple>>()
+                {
+                    public List<Tuple> call() throws Exception
+                    {
+                        return parse( dnTuples, ldifs );
+                    }
+                } ) );
             }
+
+            return batch;
         }
-        else
+
+
+        /**
+         * Parses some entries, and adds their ID and parent ID. This is done by the executor threads.
+         */
+        private List<Tuple> parse( List<DnTuple> dnTuples, List<byte[]> ldifs ) throws Exception
         {
-            if( fwdMap.isEmpty() )
+            SchemaAwareLdifReader lar = new SchemaAwareLdifReader( schemaManager );
+            List<Tuple> tuples = new ArrayList<Tuple>( dnTuples.size() );
+
+            for ( int i = 0; i < dnTuples.size(); i++ )
             {
-                return;
+                DnTuple dt = dnTuples.get( i );
+
+                try
+                {
+                    Entry entry = lar.parseLdifEntry( Strings.utf8ToString( ldifs.get( i ) ) ).getEntry();
+
+                    entry.add( atEntryUUID, dt.getId() );
+                    entry.add( atEntryParentID, dt.getParentId() );
+
+                    tuples.add( new Tuple( dt.getId(), entry ) );
+                }
+                catch ( Exception e )
+                {
+                    LOG.warn( "Failed to parse the entry for the DnTuple " + dt );
+                    throw e;
+                }
             }
-            
-            build( fwdMap.values().iterator(), fwdTree.getName() );
 
-            if( revTree != null )
+            return tuples;
+        }
+
+
+        /**
+         * Waits for a batch of parsed entries, in the order of their IDs, and indexes them
+         */
+        private List<Tuple> collect( List<Future<List<Tuple>>> batch ) throws Exception
+        {
+            List<Tuple> tuples = new ArrayList<Tuple>( batch.size() * PARSE_BATCH_SIZE );
+
+            for ( Future<List<Tuple>> future : batch )
             {
-                build( revMap.values().iterator(), revTree.getName() );
+                try
+                {
+                    tuples.addAll( future.get() );
+                }
+                catch ( ExecutionException ee )
+                {
+                    if ( ee.getCause() instanceof Exception )
+                    {
+                        throw ( Exception ) ee.getCause();
+                    }
+
+                    throw ee;
+                }
             }
+
+            for ( Tuple t : tuples )
+            {
+                Entry entry = ( Entry ) t.getValue();
+
+                entry.add( entryCsn );
+                entry.add( creatorsName );
+                entry.add( createdTime );
+
+                indexEntry( ( String ) t.getKey(), entry );
+            }
+
+            return tuples;
         }
     }
-    
-    
+
+
+    /**
+     * Gathers the values of the consecutive tuples having the same key in a Set, as
+     * expected by the build method for the B-trees allowing duplicate keys.
+     */
+    private static class DuplicateKeyIterator implements Iterator<Tuple>
+    {
+        /** The tuples, sorted by key */
+        private final Iterator<Tuple> tupleItr;
+
+        /** The key comparator */
+        private final Comparator keyComparator;
+
+        /** The value comparator */
+        private final Comparator valueComparator;
+
+        /** The first tuple of the next key, already read */
+        private Tuple nextTuple;
+
+
+        private DuplicateKeyIterator( Iterator<Tuple> tupleItr, Comparator keyComparator, Comparator valueComparator )
+        {
+            this.tupleItr = tupleItr;
+            this.keyComparator = keyComparator;
+            this.valueComparator = valueComparator;
+        }
+
+
+        @Override
+        public boolean hasNext()
+        {
+            return ( nextTuple != null ) || tupleItr.hasNext();
+        }
+
+
+        @Override
+        public Tuple next()
+        {
+            Tuple first = ( nextTuple != null ) ? nextTuple : tupleItr.next();
+            nextTuple = null;
+
+            Set values = new TreeSet( valueComparator );
+            values.add( first.getValue() );
+
+            while ( tupleItr.hasNext() )
+            {
+                Tuple t = tupleItr.next();
+
+                if ( keyComparator.compare( first.getKey(), t.getKey() ) != 0 )
+                {
+                    nextTuple = t;
+                    break;
+                }
+
+                values.add( t.getValue() );
+            }
+
+            return new Tuple( first.getKey(), values );
+        }
+
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException( "Not supported" );
+        }
+    }
+
+
     public void testBTree( String name )
     {
         try
@@ -1263,6 +1664,42 @@ public class MavibotPartitionBuilder
     }
 
     
+    /**
+     * @param nbThreads The number of threads sorting the runs and parsing the entries
+     */
+    public void setNbThreads( int nbThreads )
+    {
+        this.nbThreads = nbThreads;
+    }
+
+
+    /**
+     * @param runSize The number of elements sorted in memory before being written on disk
+     */
+    public void setRunSize( int runSize )
+    {
+        this.runSize = runSize;
+    }
+
+
+    /**
+     * @param jdbm Tells if we build a JDBM partition instead of a Mavibot partition
+     */
+    public void setJdbm( boolean jdbm )
+    {
+        this.jdbm = jdbm;
+    }
+
+
+    /**
+     * @param tmpDir The directory in which the sorted runs are stored
+     */
+    public void setTmpDir( String tmpDir )
+    {
+        this.tmpDir = tmpDir;
+    }
+
+
     /** no qualifier */ int getTotalEntries()
     {
         return totalEntries;
@@ -1333,6 +1770,10 @@ public class MavibotPartitionBuilder
         int rid = 1;
         boolean cleanOutDir = false;
         boolean verifyMasterTable = false;
+        int nbThreads = Runtime.getRuntime().availableProcessors();
+        int runSize = DEFAULT_RUN_SIZE;
+        String tmpDir = System.getProperty( "java.io.tmpdir" );
+        boolean jdbm = false;
 
         if ( args.length < 2 )
         {
@@ -1379,6 +1820,22 @@ public class MavibotPartitionBuilder
                     configDir = getArgAt( ++i, opt, args );
                     break;
 
+                case NUM_THREADS :
+                    nbThreads = Integer.parseInt( getArgAt( ++i, opt, args ) );
+                    break;
+
+                case SORT_SIZE :
+                    runSize = Integer.parseInt( getArgAt( ++i, opt, args ) );
+                    break;
+
+                case TMP_DIR :
+                    tmpDir = getArgAt( ++i, opt, args );
+                    break;
+
+                case JDBM :
+                    jdbm = true;
+                    break;
+
                 case UNKNOWN :
                     System.out.println( "Unknown option " + args[i] );
                     continue;
@@ -1413,6 +1870,10 @@ public class MavibotPartitionBuilder
         }
         
         MavibotPartitionBuilder builder = new MavibotPartitionBuilder( configDir, inFile, outDirPath, numKeysInNode, rid );
+        builder.setNbThreads( nbThreads );
+        builder.setRunSize( runSize );
+        builder.setTmpDir( tmpDir );
+        builder.setJdbm( jdbm );
         
         long start = System.currentTimeMillis();
         
@@ -1422,7 +1883,11 @@ public class MavibotPartitionBuilder
         
         System.out.println( "Total time taken " + ( end - start ) + "msec" );
         
-        if ( verifyMasterTable )
+        if ( verifyMasterTable && jdbm )
+        {
+            System.out.println( "The master table can only be verified in a Mavibot partition" );
+        }
+        else if ( verifyMasterTable )
         {
             System.out.println( "Verifying the contents of master table" );
             builder.testBTree( "master" );
@@ -29,9 +29,13 @@ package org.apache.directory.mavibot.btree;
  * <li>-clean : delete the content of the output directory</li>
  * <li>-h : gives the list of possible options</li>
  * <li>-i : the LDIF file to be loaded</li>
+ * <li>-jdbm : build a JDBM partition instead of a Mavibot partition</li>
  * <li>-n : the number of keys stored in each node</li>
  * <li>-o : the directory where the resulting partition will be stored</li>
  * <li>-rid : the replica ID</li>
+ * <li>-sortsize : the number of elements sorted in memory before being written on disk</li>
+ * <li>-threads : the number of threads sorting and parsing the data</li>
+ * <li>-tmp : the directory where the sorted data is temporarily stored</li>
  * <li>-verify : check that we have loaded all the entries in the MAsterTable</li>
  * </ul>
  * 
@@ -54,6 +58,14 @@ public enum Option
     CONFIG_DIR("-c", "The configuration partition directory"),
 
     VERIFY_MASTER_TABLE("-verify", "(optional) Verifies the master table by just browsing (entries are not verified)"),
+
+    NUM_THREADS("-threads", "(optional) The number of threads sorting and parsing the data, default is the number of processors"),
+
+    SORT_SIZE("-sortsize", "(optional) The number of elements sorted in memory before being written on disk, default is 50000"),
+
+    TMP_DIR("-tmp", "(optional) The directory where the sorted data is temporarily stored, default is java.io.tmpdir"),
+
+    JDBM("-jdbm", "(optional) Builds a JDBM partition instead of a Mavibot partition"),
     
     UNKNOWN(null, "Unknown Option");
 
@@ -124,6 +136,26 @@ public enum Option
             return CONFIG_DIR;
         }
 
+        if ( opt.equalsIgnoreCase( NUM_THREADS.text ) )
+        {
+            return NUM_THREADS;
+        }
+
+        if ( opt.equalsIgnoreCase( SORT_SIZE.text ) )
+        {
+            return SORT_SIZE;
+        }
+
+        if ( opt.equalsIgnoreCase( TMP_DIR.text ) )
+        {
+            return TMP_DIR;
+        }
+
+        if ( opt.equalsIgnoreCase( JDBM.text ) )
+        {
+            return JDBM;
+        }
+
         return UNKNOWN;
     }
 }
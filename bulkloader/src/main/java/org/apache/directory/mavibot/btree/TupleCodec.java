@@ -0,0 +1,89 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.mavibot.btree;
+
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.directory.mavibot.btree.serializer.ElementSerializer;
+
+
+/**
+ * Stores the tuples of a B-tree in the runs of an {@link ExternalSorter}, using the
+ * B-tree key and value serializers.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+/** no qualifier */ class TupleCodec<K, V> implements ExternalSorter.Codec<Tuple<K, V>>
+{
+    /** The key serializer */
+    private final ElementSerializer<K> keySerializer;
+
+    /** The value serializer */
+    private final ElementSerializer<V> valueSerializer;
+
+
+    /**
+     * Creates a new instance of TupleCodec.
+     *
+     * @param keySerializer The key serializer
+     * @param valueSerializer The value serializer
+     */
+    /** no qualifier */ TupleCodec( ElementSerializer<K> keySerializer, ElementSerializer<V> valueSerializer )
+    {
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write( DataOutput out, Tuple<K, V> tuple ) throws IOException
+    {
+        byte[] key = keySerializer.serialize( tuple.getKey() );
+        out.writeInt( key.length );
+        out.write( key );
+
+        byte[] value = valueSerializer.serialize( tuple.getValue() );
+        out.writeInt( value.length );
+        out.write( value );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Tuple<K, V> read( DataInput in ) throws IOException
+    {
+        byte[] key = new byte[in.readInt()];
+        in.readFully( key );
+
+        byte[] value = new byte[in.readInt()];
+        in.readFully( value );
+
+        return new Tuple<K, V>( keySerializer.fromBytes( key ), valueSerializer.fromBytes( value ) );
+    }
+}
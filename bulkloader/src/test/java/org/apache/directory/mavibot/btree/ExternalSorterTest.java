@@ -0,0 +1,186 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.mavibot.btree;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests for ExternalSorter.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ExternalSorterTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+
+    private File workDir;
+
+    private static final Comparator<String> COMPARATOR = new Comparator<String>()
+    {
+        @Override
+        public int compare( String s1, String s2 )
+        {
+            return s1.compareTo( s2 );
+        }
+    };
+
+    private static final ExternalSorter.Codec<String> CODEC = new ExternalSorter.Codec<String>()
+    {
+        @Override
+        public void write( DataOutput out, String element ) throws IOException
+        {
+            out.writeUTF( element );
+        }
+
+
+        @Override
+        public String read( DataInput in ) throws IOException
+        {
+            return in.readUTF();
+        }
+    };
+
+
+    @Before
+    public void init() throws Exception
+    {
+        executor = Executors.newFixedThreadPool( 4 );
+        workDir = folder.newFolder( "ExternalSorterTest" );
+    }
+
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+
+    private List<String> randomElements( int nbElements )
+    {
+        Random random = new Random( 42 );
+        List<String> elements = new ArrayList<String>( nbElements );
+
+        for ( int i = 0; i < nbElements; i++ )
+        {
+            elements.add( "element-" + random.nextInt( nbElements / 2 ) );
+        }
+
+        return elements;
+    }
+
+
+    private List<String> toList( Iterator<String> itr )
+    {
+        List<String> elements = new ArrayList<String>();
+
+        while ( itr.hasNext() )
+        {
+            elements.add( itr.next() );
+        }
+
+        return elements;
+    }
+
+
+    @Test
+    public void testInMemory() throws Exception
+    {
+        List<String> elements = randomElements( 100 );
+        ExternalSorter<String> sorter = new ExternalSorter<String>( "test", COMPARATOR, CODEC, workDir, 1000,
+            executor, 2 );
+
+        for ( String element : elements )
+        {
+            sorter.add( element );
+        }
+
+        List<String> sorted = toList( sorter.iterator() );
+        sorter.close();
+
+        Collections.sort( elements );
+        assertEquals( elements, sorted );
+        assertEquals( 100, sorter.size() );
+        assertEquals( 0, workDir.list().length );
+    }
+
+
+    @Test
+    public void testRuns() throws Exception
+    {
+        List<String> elements = randomElements( 10000 );
+        ExternalSorter<String> sorter = new ExternalSorter<String>( "test", COMPARATOR, CODEC, workDir, 300,
+            executor, 2 );
+
+        for ( String element : elements )
+        {
+            sorter.add( element );
+        }
+
+        Collections.sort( elements );
+
+        // The runs can be merged more than once
+        assertEquals( elements, toList( sorter.iterator() ) );
+        assertEquals( elements, toList( sorter.iterator() ) );
+        assertEquals( 34, workDir.list().length );
+
+        sorter.close();
+
+        assertEquals( 0, workDir.list().length );
+    }
+
+
+    @Test
+    public void testEmpty() throws Exception
+    {
+        ExternalSorter<String> sorter = new ExternalSorter<String>( "test", COMPARATOR, CODEC, workDir, 10,
+            executor, 2 );
+
+        assertFalse( sorter.iterator().hasNext() );
+        assertEquals( 0, sorter.size() );
+
+        sorter.close();
+    }
+}
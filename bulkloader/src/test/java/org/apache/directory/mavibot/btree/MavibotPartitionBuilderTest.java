@@ -23,8 +23,14 @@ package org.apache.directory.mavibot.btree;
 import java.io.File;
 import java.io.InputStream;
 
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.FileUtils;
 import org.apache.directory.server.config.LdifConfigExtractor;
+import org.apache.directory.server.core.api.CacheService;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmPartition;
+import org.apache.directory.server.core.shared.DefaultDnFactory;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -59,17 +65,25 @@ public class MavibotPartitionBuilderTest
         configFile = LdifConfigExtractor.extractSingleFileConfig( configDir, "config.ldif", true );
     }
     
-    @Test
-    public void testBulkLoad() throws Exception
+    private File copyLdif() throws Exception
     {
-        //File file = new File( outDir, "builder-test.ldif" );
-        File file = new File( outDir, "30k.ldif" );
-        //InputStream in = MavibotPartitionBuilder.class.getClassLoader().getResourceAsStream( "builder-test.ldif" );
-        try ( InputStream in = MavibotPartitionBuilder.class.getClassLoader().getResourceAsStream( "30k.ldif" ) )
+        File file = new File( outDir, "builder-test.ldif" );
+
+        try ( InputStream in = MavibotPartitionBuilder.class.getClassLoader()
+            .getResourceAsStream( "builder-test.ldif" ) )
         {
             FileUtils.copyInputStreamToFile( in, file );
         }
 
+        return file;
+    }
+
+
+    @Test
+    public void testBulkLoad() throws Exception
+    {
+        File file = copyLdif();
+
         MavibotPartitionBuilder builder = new MavibotPartitionBuilder( configFile, file.getAbsolutePath(), outDir.getAbsolutePath() );
         
         builder.buildPartition();
@@ -78,6 +92,54 @@ public class MavibotPartitionBuilderTest
         
         RecordManager rm = builder.getRm();
         BTree masterTree = rm.getManagedTree( builder.getMasterTableName() );
+        assertEquals( 7, builder.getTotalEntries() );
         assertEquals( builder.getTotalEntries(), masterTree.getNbElems() );
     }
+
+
+    @Test
+    public void testJdbmBulkLoad() throws Exception
+    {
+        File file = copyLdif();
+        File partitionDir = new File( outDir, "jdbm" );
+
+        MavibotPartitionBuilder builder = new MavibotPartitionBuilder( configFile, file.getAbsolutePath(),
+            partitionDir.getAbsolutePath() );
+        builder.setJdbm( true );
+
+        builder.buildPartition();
+
+        assertEquals( 7, builder.getTotalEntries() );
+
+        // Open the written partition
+        SchemaManager schemaManager = builder.getSchemaManager();
+        CacheService cacheService = new CacheService();
+        cacheService.initialize( null );
+
+        JdbmPartition partition = new JdbmPartition( schemaManager, new DefaultDnFactory( schemaManager, null ) );
+        partition.setId( "builder" );
+        partition.setSuffixDn( new Dn( schemaManager, "ou=builder" ) );
+        partition.setPartitionPath( partitionDir.toURI() );
+        partition.setCacheService( cacheService );
+        partition.initialize();
+
+        try
+        {
+            assertEquals( builder.getTotalEntries(), partition.count() );
+
+            Dn dn = new Dn( schemaManager, "uid=hnelson,ou=Users,ou=builder" );
+            String id = partition.getEntryId( dn );
+            assertNotNull( id );
+
+            Entry entry = partition.fetch( id, dn );
+            assertNotNull( entry );
+            assertTrue( entry.contains( "uid", "hnelson" ) );
+            assertTrue( partition.getObjectClassIndex().count() > 0 );
+        }
+        finally
+        {
+            partition.destroy();
+            cacheService.destroy();
+        }
+    }
 }
@@ -41,6 +41,7 @@ import org.apache.directory.server.core.api.entry.ServerEntryFactory;
 import org.apache.directory.server.core.api.event.EventService;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.api.journal.Journal;
+import org.apache.directory.server.core.api.monitor.OperationMetrics;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.schema.SchemaPartition;
@@ -495,6 +496,31 @@ public interface DirectoryService extends ServerEntryFactory
     OperationManager getOperationManager();
 
 
+    /**
+     * Gets the latencies of the operations in each interceptor.
+     *
+     * @return The interceptor chain metrics
+     */
+    OperationMetrics getOperationMetrics();
+
+
+    /**
+     * @return <code>true</code> if the metrics are gathered and exposed through JMX and
+     * the ou=monitor entries
+     */
+    boolean isMetricsEnabled();
+
+
+    /**
+     * Enables or disables the metrics, which are disabled by default. They are exposed
+     * through JMX and the ou=monitor entries only when the service is started with the
+     * metrics enabled.
+     *
+     * @param metricsEnabled <code>true</code> to gather and expose the metrics
+     */
+    void setMetricsEnabled( boolean metricsEnabled );
+
+
     /**
      * @return The maximum allowed size for an incoming PDU
      */
@@ -20,9 +20,6 @@
 package org.apache.directory.server.core.api.changelog;
 
 
-import org.apache.directory.server.core.api.partition.Partition;
-
-
 /**
  * TODO TaggableSearchableChangeLogStore.
  *
@@ -36,31 +33,4 @@ public interface TaggableSearchableChangeLogStore extends TaggableChangeLogStore
      * @return the snapshot query engine for this store.
      */
     TagSearchEngine getTagSearchEngine();
-
-
-    /**
-     * 
-     * Gets the read only Partition backed by this ChangeLogStore.
-     * The init() method on this partition needs to be called by the caller.<br><br>
-     * Note: This partition allows add/delete operation on the tags container
-     *       The revisions container is read-only.<br><br>  
-     * The default containers of the partition are
-     *    <li>ou=changelog</li>
-     *    <li>ou=tags,ou=changelog</li>
-     *    <li>ou=revisions,ou=changelog</li> 
-     * 
-     * @param partitionSuffix the suffix of the partition e.x ou=chnagelog
-     * @param revContainerName the container's name for holding the revisions ex. ou=revisions
-     * @param tagContainerName the container's name for holding the tags ex. ou=tags
-     */
-    void createPartition( String partitionSuffix, String revContainerName, String tagContainerName );
-
-
-    /**
-     * Gets the partition associated with this store
-     *
-     * @return the partition associated with this store, null if not initialized
-     */
-    Partition getPartition();
-
 }
@@ -475,7 +475,7 @@ public class ClonedServerEntry implements Entry
 
         if ( obj instanceof ClonedServerEntry )
         {
-            other = ( ( ClonedServerEntry ) obj ).getClonedEntry();
+            other = ( ( ClonedServerEntry ) obj ).clonedEntry;
         }
         else if ( obj instanceof Entry )
         {
@@ -0,0 +1,324 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.entry;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+
+
+/**
+ * A ClonedServerEntry which does not copy the original entry upfront. The view
+ * has its own attribute map, but shares the attributes of the original entry
+ * until they are modified : an attribute is copied the first time it is returned
+ * by one of the get() methods, or when some values are added to or removed from
+ * it through the entry. Attributes can be added, replaced or removed without
+ * copying anything.
+ *
+ * The attributes returned by {@link #iterator()} and {@link #getAttributes()}
+ * may be shared with the original entry, and must not be modified : use get()
+ * to obtain a modifiable attribute.
+ *
+ * This is the view returned by the partitions over their cached entries, which
+ * must never be modified.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CopyOnWriteServerEntry extends ClonedServerEntry
+{
+    /** Tells if all the shared attributes have already been copied */
+    private boolean materialized;
+
+
+    /**
+     * Creates a new instance of CopyOnWriteServerEntry.
+     *
+     * @param originalEntry The original entry, which will not be modified
+     */
+    public CopyOnWriteServerEntry( Entry originalEntry )
+    {
+        this.originalEntry = originalEntry;
+        this.clonedEntry = originalEntry.shallowClone();
+    }
+
+
+    /**
+     * Tells if an attribute of the view is still the original entry's one
+     */
+    private boolean isShared( Attribute attribute )
+    {
+        AttributeType attributeType = attribute.getAttributeType();
+
+        if ( attributeType != null )
+        {
+            return originalEntry.get( attributeType ) == attribute;
+        }
+        else
+        {
+            return originalEntry.get( attribute.getUpId() ) == attribute;
+        }
+    }
+
+
+    /**
+     * Replaces an attribute shared with the original entry by a copy
+     *
+     * @param attribute The attribute, as stored in the view
+     * @return The attribute that can be modified
+     */
+    private Attribute own( Attribute attribute )
+    {
+        if ( materialized || ( attribute == null ) || !isShared( attribute ) )
+        {
+            return attribute;
+        }
+
+        Attribute copy = attribute.clone();
+
+        try
+        {
+            clonedEntry.put( copy );
+        }
+        catch ( LdapException le )
+        {
+            // Can't happen, the copy has the same AttributeType as the attribute it replaces
+            throw new IllegalStateException( le.getMessage(), le );
+        }
+
+        return copy;
+    }
+
+
+    /**
+     * Copies all the attributes still shared with the original entry
+     */
+    private void materialize()
+    {
+        if ( materialized )
+        {
+            return;
+        }
+
+        List<Attribute> attributes = new ArrayList<Attribute>( clonedEntry.getAttributes() );
+
+        for ( Attribute attribute : attributes )
+        {
+            own( attribute );
+        }
+
+        materialized = true;
+    }
+
+
+    /**
+     * Gives back the view as a plain entry. All the attributes are copied first, so that
+     * the returned entry can be freely modified.
+     *
+     * @return the cloned Entry
+     */
+    @Override
+    public Entry getClonedEntry()
+    {
+        materialize();
+
+        return clonedEntry;
+    }
+
+
+    @Override
+    public Attribute get( AttributeType attributeType )
+    {
+        return own( clonedEntry.get( attributeType ) );
+    }
+
+
+    @Override
+    public Attribute get( String alias )
+    {
+        return own( clonedEntry.get( alias ) );
+    }
+
+
+    @Override
+    public Entry add( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        own( clonedEntry.get( attributeType ) );
+
+        return clonedEntry.add( attributeType, values );
+    }
+
+
+    @Override
+    public Entry add( AttributeType attributeType, String... values ) throws LdapException
+    {
+        own( clonedEntry.get( attributeType ) );
+
+        return clonedEntry.add( attributeType, values );
+    }
+
+
+    @Override
+    public Entry add( AttributeType attributeType, Value<?>... values ) throws LdapException
+    {
+        own( clonedEntry.get( attributeType ) );
+
+        return clonedEntry.add( attributeType, values );
+    }
+
+
+    @Override
+    public Entry add( String upId, AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        own( clonedEntry.get( attributeType ) );
+
+        return clonedEntry.add( upId, attributeType, values );
+    }
+
+
+    @Override
+    public Entry add( String upId, AttributeType attributeType, String... values ) throws LdapException
+    {
+        own( clonedEntry.get( attributeType ) );
+
+        return clonedEntry.add( upId, attributeType, values );
+    }
+
+
+    @Override
+    public Entry add( String upId, AttributeType attributeType, Value<?>... values ) throws LdapException
+    {
+        own( clonedEntry.get( attributeType ) );
+
+        return clonedEntry.add( upId, attributeType, values );
+    }
+
+
+    @Override
+    public Entry add( Attribute... attributes ) throws LdapException
+    {
+        for ( Attribute attribute : attributes )
+        {
+            if ( attribute.getAttributeType() != null )
+            {
+                own( clonedEntry.get( attribute.getAttributeType() ) );
+            }
+            else
+            {
+                own( clonedEntry.get( attribute.getUpId() ) );
+            }
+        }
+
+        return clonedEntry.add( attributes );
+    }
+
+
+    @Override
+    public Entry add( String upId, String... values ) throws LdapException
+    {
+        own( clonedEntry.get( upId ) );
+
+        return clonedEntry.add( upId, values );
+    }
+
+
+    @Override
+    public Entry add( String upId, byte[]... values ) throws LdapException
+    {
+        own( clonedEntry.get( upId ) );
+
+        return clonedEntry.add( upId, values );
+    }
+
+
+    @Override
+    public Entry add( String upId, Value<?>... values ) throws LdapException
+    {
+        own( clonedEntry.get( upId ) );
+
+        return clonedEntry.add( upId, values );
+    }
+
+
+    @Override
+    public boolean remove( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        own( clonedEntry.get( attributeType ) );
+
+        return clonedEntry.remove( attributeType, values );
+    }
+
+
+    @Override
+    public boolean remove( AttributeType attributeType, String... values ) throws LdapException
+    {
+        own( clonedEntry.get( attributeType ) );
+
+        return clonedEntry.remove( attributeType, values );
+    }
+
+
+    @Override
+    public boolean remove( AttributeType attributeType, Value<?>... values ) throws LdapException
+    {
+        own( clonedEntry.get( attributeType ) );
+
+        return clonedEntry.remove( attributeType, values );
+    }
+
+
+    @Override
+    public boolean remove( String upId, byte[]... values ) throws LdapException
+    {
+        own( clonedEntry.get( upId ) );
+
+        return clonedEntry.remove( upId, values );
+    }
+
+
+    @Override
+    public boolean remove( String upId, String... values ) throws LdapException
+    {
+        own( clonedEntry.get( upId ) );
+
+        return clonedEntry.remove( upId, values );
+    }
+
+
+    @Override
+    public boolean remove( String upId, Value<?>... values ) throws LdapException
+    {
+        own( clonedEntry.get( upId ) );
+
+        return clonedEntry.remove( upId, values );
+    }
+
+
+    @Override
+    public Entry shallowClone()
+    {
+        return getClonedEntry().shallowClone();
+    }
+}
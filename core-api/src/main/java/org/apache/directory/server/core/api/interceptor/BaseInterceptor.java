@@ -31,6 +31,7 @@ import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.DnFactory;
 import org.apache.directory.server.core.api.InterceptorEnum;
 import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
@@ -46,6 +47,8 @@ import org.apache.directory.server.core.api.interceptor.context.OperationContext
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.monitor.MeasuredEntryFilteringCursor;
+import org.apache.directory.server.core.api.monitor.OperationMetrics;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 
 
@@ -337,8 +340,17 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( AddOperationContext addContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( addContext );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+        long start = metrics.begin();
 
-        interceptor.add( addContext );
+        try
+        {
+            interceptor.add( addContext );
+        }
+        finally
+        {
+            metrics.end( start, interceptor.getName(), OperationEnum.ADD );
+        }
     }
 
 
@@ -360,8 +372,17 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( BindOperationContext bindContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( bindContext );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+        long start = metrics.begin();
 
-        interceptor.bind( bindContext );
+        try
+        {
+            interceptor.bind( bindContext );
+        }
+        finally
+        {
+            metrics.end( start, interceptor.getName(), OperationEnum.BIND );
+        }
     }
 
 
@@ -382,8 +403,17 @@ public abstract class BaseInterceptor implements Interceptor
     protected final boolean next( CompareOperationContext compareContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( compareContext );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+        long start = metrics.begin();
 
-        return interceptor.compare( compareContext );
+        try
+        {
+            return interceptor.compare( compareContext );
+        }
+        finally
+        {
+            metrics.end( start, interceptor.getName(), OperationEnum.COMPARE );
+        }
     }
 
 
@@ -405,8 +435,17 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( DeleteOperationContext deleteContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( deleteContext );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+        long start = metrics.begin();
 
-        interceptor.delete( deleteContext );
+        try
+        {
+            interceptor.delete( deleteContext );
+        }
+        finally
+        {
+            metrics.end( start, interceptor.getName(), OperationEnum.DELETE );
+        }
     }
 
 
@@ -430,8 +469,17 @@ public abstract class BaseInterceptor implements Interceptor
     protected final Entry next( GetRootDseOperationContext getRootDseContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( getRootDseContext );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+        long start = metrics.begin();
 
-        return interceptor.getRootDse( getRootDseContext );
+        try
+        {
+            return interceptor.getRootDse( getRootDseContext );
+        }
+        finally
+        {
+            metrics.end( start, interceptor.getName(), OperationEnum.GET_ROOT_DSE );
+        }
     }
 
 
@@ -455,8 +503,17 @@ public abstract class BaseInterceptor implements Interceptor
     protected final boolean next( HasEntryOperationContext hasEntryContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( hasEntryContext );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+        long start = metrics.begin();
 
-        return interceptor.hasEntry( hasEntryContext );
+        try
+        {
+            return interceptor.hasEntry( hasEntryContext );
+        }
+        finally
+        {
+            metrics.end( start, interceptor.getName(), OperationEnum.HAS_ENTRY );
+        }
     }
 
 
@@ -479,8 +536,17 @@ public abstract class BaseInterceptor implements Interceptor
     protected final Entry next( LookupOperationContext lookupContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( lookupContext );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+        long start = metrics.begin();
 
-        return interceptor.lookup( lookupContext );
+        try
+        {
+            return interceptor.lookup( lookupContext );
+        }
+        finally
+        {
+            metrics.end( start, interceptor.getName(), OperationEnum.LOOKUP );
+        }
     }
 
 
@@ -502,8 +568,17 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( ModifyOperationContext modifyContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( modifyContext );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+        long start = metrics.begin();
 
-        interceptor.modify( modifyContext );
+        try
+        {
+            interceptor.modify( modifyContext );
+        }
+        finally
+        {
+            metrics.end( start, interceptor.getName(), OperationEnum.MODIFY );
+        }
     }
 
 
@@ -525,8 +600,17 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( MoveOperationContext moveContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( moveContext );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+        long start = metrics.begin();
 
-        interceptor.move( moveContext );
+        try
+        {
+            interceptor.move( moveContext );
+        }
+        finally
+        {
+            metrics.end( start, interceptor.getName(), OperationEnum.MOVE );
+        }
     }
 
 
@@ -545,8 +629,17 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( MoveAndRenameOperationContext moveAndRenameContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( moveAndRenameContext );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+        long start = metrics.begin();
 
-        interceptor.moveAndRename( moveAndRenameContext );
+        try
+        {
+            interceptor.moveAndRename( moveAndRenameContext );
+        }
+        finally
+        {
+            metrics.end( start, interceptor.getName(), OperationEnum.MOVE_AND_RENAME );
+        }
     }
 
 
@@ -568,8 +661,17 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( RenameOperationContext renameContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( renameContext );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+        long start = metrics.begin();
 
-        interceptor.rename( renameContext );
+        try
+        {
+            interceptor.rename( renameContext );
+        }
+        finally
+        {
+            metrics.end( start, interceptor.getName(), OperationEnum.RENAME );
+        }
     }
 
 
@@ -592,8 +694,27 @@ public abstract class BaseInterceptor implements Interceptor
     protected final EntryFilteringCursor next( SearchOperationContext searchContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( searchContext );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+        long start = metrics.begin();
+        EntryFilteringCursor cursor;
+
+        try
+        {
+            cursor = interceptor.search( searchContext );
+        }
+        finally
+        {
+            metrics.end( start, interceptor.getName(), OperationEnum.SEARCH );
+        }
 
-        return interceptor.search( searchContext );
+        if ( metrics.isEnabled() )
+        {
+            // The entries are fetched once the cursor has been returned : measure the
+            // filters this interceptor adds, and the partition cursor steps
+            return new MeasuredEntryFilteringCursor( cursor, metrics, getName(), interceptor == finalInterceptor );
+        }
+
+        return cursor;
     }
 
 
@@ -615,7 +736,16 @@ public abstract class BaseInterceptor implements Interceptor
     protected final void next( UnbindOperationContext unbindContext ) throws LdapException
     {
         Interceptor interceptor = getNextInterceptor( unbindContext );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+        long start = metrics.begin();
 
-        interceptor.unbind( unbindContext );
+        try
+        {
+            interceptor.unbind( unbindContext );
+        }
+        finally
+        {
+            metrics.end( start, interceptor.getName(), OperationEnum.UNBIND );
+        }
     }
 }
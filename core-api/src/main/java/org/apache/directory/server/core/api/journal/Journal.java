@@ -20,6 +20,8 @@
 package org.apache.directory.server.core.api.journal;
 
 
+import java.util.concurrent.Future;
+
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.server.core.api.DirectoryService;
@@ -67,25 +69,28 @@ public interface Journal
      * @param principal the authorized LDAP principal triggering the change
      * @param revision the operation revision
      * @param entry LDIF of the change going to the next state
+     * @return A Future returning <code>true</code> once the change is durable
      * @throws Exception if there are problems logging the change
      */
-    void log( LdapPrincipal principal, long revision, LdifEntry entry ) throws LdapException;
+    Future<Boolean> log( LdapPrincipal principal, long revision, LdifEntry entry ) throws LdapException;
 
 
     /**
      * Records a ack for a change
      *
      * @param revision The change revision which is acked
+     * @return A Future returning <code>true</code> once the ack is durable
      */
-    void ack( long revision );
+    Future<Boolean> ack( long revision );
 
 
     /**
      * Records a nack for a change
      *
      * @param revision The change revision which is acked
+     * @return A Future returning <code>true</code> once the nack is durable
      */
-    void nack( long revision );
+    Future<Boolean> nack( long revision );
 
 
     /**
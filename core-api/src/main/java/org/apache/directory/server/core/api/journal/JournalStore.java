@@ -20,6 +20,8 @@
 package org.apache.directory.server.core.api.journal;
 
 
+import java.util.concurrent.Future;
+
 import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.LdapPrincipal;
@@ -67,38 +69,38 @@ public interface JournalStore
 
 
     /**
-     * Records a change as a forward LDIF and the authorized principal
+     * Records a change as a forward LDIF and the authorized principal. The change
+     * is written asynchronously.
      *
      * @param principal The principal who is logging the change
      * @param revision The operation revision
      * @param forward The change to log
-     * @return <code>true</code> if the entry has been written
+     * @return A Future returning <code>true</code> once the entry has been written on disk
      */
-    boolean log( LdapPrincipal principal, long revision, LdifEntry forward );
+    Future<Boolean> log( LdapPrincipal principal, long revision, LdifEntry forward );
 
 
     /**
-     * Records a ack for a change
+     * Records a ack for a change. The ack is written asynchronously.
      *
      * @param revision The change revision which is acked
-     * @return <code>true</code> if the ack has been written
+     * @return A Future returning <code>true</code> once the ack has been written on disk
      */
-    boolean ack( long revision );
+    Future<Boolean> ack( long revision );
 
 
     /**
-     * Records a nack for a change
+     * Records a nack for a change. The nack is written asynchronously.
      *
      * @param revision The change revision which is nacked
-     * @return <code>true</code> if the nack has been written
-     * @throws Exception if there are problems logging the nack
+     * @return A Future returning <code>true</code> once the nack has been written on disk
      */
-    boolean nack( long revision );
+    Future<Boolean> nack( long revision );
 
 
     /**
-     * The file name to use as the journal file. Default to 
-     * 'journal.ldif'
+     * The file name to use as a prefix for the journal segments, which are
+     * followed by the segment number. Default to 'journal'
      * @param fileName the fileName to set
      */
     void setFileName( String fileName );
@@ -111,4 +113,13 @@ public interface JournalStore
      * will be stored
      */
     void setWorkingDirectory( String workingDirectory );
+
+
+    /**
+     * The number of operations stored in a journal file before it is rotated.
+     * If set to 0, the journal is only rotated when it reaches its maximum size.
+     * 
+     * @param rotation the rotation to set
+     */
+    void setRotation( int rotation );
 }
@@ -0,0 +1,251 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.monitor;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A lock free histogram of latencies, in nanoseconds.
+ *
+ * The values are stored in log-linear buckets : each power of two is split in
+ * 16 sub-buckets, so the value returned for a percentile is at most 1/16th
+ * (6.25%) away from the recorded value, whatever its magnitude. Recording a
+ * value is a couple of atomic increments, and does not allocate anything.
+ *
+ * Values above 2^40 ns (around 18 minutes) are stored in the last bucket.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LatencyHistogram
+{
+    /** The number of bits used to split a power of two */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    /** The number of sub-buckets per power of two */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** The highest power of two we store */
+    private static final int MAX_EXPONENT = 40;
+
+    /** The number of buckets */
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + ( MAX_EXPONENT - SUB_BUCKET_BITS + 1 )
+        * SUB_BUCKET_COUNT;
+
+    /** The buckets */
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKET_COUNT );
+
+    /** The sum of all the recorded values */
+    private final AtomicLong total = new AtomicLong( 0L );
+
+    /** The highest recorded value */
+    private final AtomicLong max = new AtomicLong( 0L );
+
+
+    /**
+     * Records a value.
+     *
+     * @param value The value, in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record( long value )
+    {
+        if ( value < 0L )
+        {
+            value = 0L;
+        }
+
+        counts.incrementAndGet( bucketIndex( value ) );
+        total.addAndGet( value );
+
+        long currentMax = max.get();
+
+        while ( ( value > currentMax ) && !max.compareAndSet( currentMax, value ) )
+        {
+            currentMax = max.get();
+        }
+    }
+
+
+    /**
+     * @return The number of recorded values
+     */
+    public long getCount()
+    {
+        long count = 0L;
+
+        for ( int i = 0; i < BUCKET_COUNT; i++ )
+        {
+            count += counts.get( i );
+        }
+
+        return count;
+    }
+
+
+    /**
+     * @return The sum of all the recorded values, in nanoseconds
+     */
+    public long getTotal()
+    {
+        return total.get();
+    }
+
+
+    /**
+     * @return The mean of the recorded values, in nanoseconds
+     */
+    public double getMean()
+    {
+        long count = getCount();
+
+        if ( count == 0L )
+        {
+            return 0d;
+        }
+
+        return ( double ) total.get() / count;
+    }
+
+
+    /**
+     * @return The highest recorded value, in nanoseconds
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+
+    /**
+     * Gives the value below which a given percentage of the recorded values fall.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The highest value of the bucket containing the percentile, in nanoseconds
+     */
+    public long getValueAtPercentile( double percentile )
+    {
+        // Take a snapshot first, so that the count and the buckets are consistent
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0L;
+
+        for ( int i = 0; i < BUCKET_COUNT; i++ )
+        {
+            snapshot[i] = counts.get( i );
+            count += snapshot[i];
+        }
+
+        if ( count == 0L )
+        {
+            return 0L;
+        }
+
+        double boundedPercentile = Math.min( Math.max( percentile, 0d ), 100d );
+        long rank = Math.max( 1L, ( long ) Math.ceil( boundedPercentile * count / 100d ) );
+        long seen = 0L;
+
+        for ( int i = 0; i < BUCKET_COUNT; i++ )
+        {
+            seen += snapshot[i];
+
+            if ( seen >= rank )
+            {
+                return Math.min( highestValue( i ), max.get() );
+            }
+        }
+
+        return max.get();
+    }
+
+
+    /**
+     * Resets the histogram.
+     */
+    public void reset()
+    {
+        for ( int i = 0; i < BUCKET_COUNT; i++ )
+        {
+            counts.set( i, 0L );
+        }
+
+        total.set( 0L );
+        max.set( 0L );
+    }
+
+
+    /**
+     * Computes the bucket a value belongs to
+     */
+    static int bucketIndex( long value )
+    {
+        if ( value < SUB_BUCKET_COUNT )
+        {
+            return ( int ) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+
+        if ( exponent > MAX_EXPONENT )
+        {
+            return BUCKET_COUNT - 1;
+        }
+
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = ( int ) ( value >>> shift ) - SUB_BUCKET_COUNT;
+
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+
+    /**
+     * Computes the highest value stored in a bucket
+     */
+    static long highestValue( int index )
+    {
+        if ( index < SUB_BUCKET_COUNT )
+        {
+            return index;
+        }
+
+        int shift = ( index - SUB_BUCKET_COUNT ) / SUB_BUCKET_COUNT;
+        long subBucket = ( index - SUB_BUCKET_COUNT ) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+
+        return ( ( subBucket + 1 ) << shift ) - 1;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "count=" ).append( getCount() );
+        sb.append( " mean=" ).append( ( long ) getMean() / 1000L ).append( "us" );
+        sb.append( " p50=" ).append( getValueAtPercentile( 50d ) / 1000L ).append( "us" );
+        sb.append( " p99=" ).append( getValueAtPercentile( 99d ) / 1000L ).append( "us" );
+        sb.append( " p999=" ).append( getValueAtPercentile( 99.9d ) / 1000L ).append( "us" );
+        sb.append( " max=" ).append( getMax() / 1000L ).append( "us" );
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.monitor;
+
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.ClosureMonitor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.filtering.EntryFilter;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+
+
+/**
+ * A wrapper on top of the cursor returned to an interceptor by the next one in the
+ * chain, measuring the time spent while the entries are fetched.
+ *
+ * The filters added through this cursor are timed, and their own time is
+ * attributed to the interceptor which has added them. When the wrapped cursor
+ * has been returned by the partition nexus, the cursor steps are timed too, and
+ * their own time (the filters excluded) is attributed to "FINAL". The sums are
+ * recorded in the search cursor histograms of the {@link OperationMetrics} when
+ * the cursor is closed.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MeasuredEntryFilteringCursor extends AbstractCursor<Entry> implements EntryFilteringCursor
+{
+    /** The name of the partition nexus, at the end of the chain */
+    private static final String FINAL = "FINAL";
+
+    /** The wrapped cursor */
+    private final EntryFilteringCursor wrapped;
+
+    /** The metrics to record the times into */
+    private final OperationMetrics metrics;
+
+    /** The name of the interceptor this cursor has been returned to */
+    private final String interceptor;
+
+    /** Tells if the wrapped cursor has been returned by the partition nexus */
+    private final boolean measureSteps;
+
+    /** The number of filters added by the interceptor */
+    private int nbFilters;
+
+    /** The own time spent in the filters added by the interceptor, in nanoseconds */
+    private long filtersTime;
+
+    /** The own time spent in the partition cursor steps, in nanoseconds */
+    private long stepsTime;
+
+    /** Tells if the times have already been recorded */
+    private boolean recorded;
+
+
+    /**
+     * A filter measuring the time spent in the filter it wraps
+     */
+    private class MeasuredEntryFilter implements EntryFilter
+    {
+        /** The wrapped filter */
+        private final EntryFilter filter;
+
+
+        private MeasuredEntryFilter( EntryFilter filter )
+        {
+            this.filter = filter;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean accept( SearchOperationContext operationContext, Entry entry ) throws LdapException
+        {
+            long start = metrics.begin();
+
+            try
+            {
+                return filter.accept( operationContext, entry );
+            }
+            finally
+            {
+                filtersTime += metrics.pop( start );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public String toString( String tabs )
+        {
+            return filter.toString( tabs );
+        }
+    }
+
+
+    /**
+     * Creates a new instance of MeasuredEntryFilteringCursor.
+     *
+     * @param wrapped The cursor returned by the next interceptor
+     * @param metrics The metrics to record the times into
+     * @param interceptor The name of the interceptor this cursor is returned to
+     * @param measureSteps <code>true</code> if the wrapped cursor has been returned by the partition nexus
+     */
+    public MeasuredEntryFilteringCursor( EntryFilteringCursor wrapped, OperationMetrics metrics, String interceptor,
+        boolean measureSteps )
+    {
+        this.wrapped = wrapped;
+        this.metrics = metrics;
+        this.interceptor = interceptor;
+        this.measureSteps = measureSteps;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean addEntryFilter( EntryFilter filter )
+    {
+        nbFilters++;
+
+        return addMeasuredFilter( new MeasuredEntryFilter( filter ) );
+    }
+
+
+    /**
+     * Adds a filter which is already measured to the innermost cursor, so that it
+     * is not measured again by the cursors below.
+     */
+    private boolean addMeasuredFilter( MeasuredEntryFilter filter )
+    {
+        if ( wrapped instanceof MeasuredEntryFilteringCursor )
+        {
+            return ( ( MeasuredEntryFilteringCursor ) wrapped ).addMeasuredFilter( filter );
+        }
+
+        return wrapped.addEntryFilter( filter );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<EntryFilter> getEntryFilters()
+    {
+        return wrapped.getEntryFilters();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public SearchOperationContext getOperationContext()
+    {
+        return wrapped.getOperationContext();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean available()
+    {
+        return wrapped.available();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Entry get() throws InvalidCursorPositionException
+    {
+        return wrapped.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void before( Entry element ) throws LdapException, CursorException
+    {
+        long start = beginStep();
+
+        try
+        {
+            wrapped.before( element );
+        }
+        finally
+        {
+            endStep( start );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void after( Entry element ) throws LdapException, CursorException
+    {
+        long start = beginStep();
+
+        try
+        {
+            wrapped.after( element );
+        }
+        finally
+        {
+            endStep( start );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        long start = beginStep();
+
+        try
+        {
+            wrapped.beforeFirst();
+        }
+        finally
+        {
+            endStep( start );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void afterLast() throws LdapException, CursorException
+    {
+        long start = beginStep();
+
+        try
+        {
+            wrapped.afterLast();
+        }
+        finally
+        {
+            endStep( start );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean first() throws LdapException, CursorException
+    {
+        long start = beginStep();
+
+        try
+        {
+            return wrapped.first();
+        }
+        finally
+        {
+            endStep( start );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean last() throws LdapException, CursorException
+    {
+        long start = beginStep();
+
+        try
+        {
+            return wrapped.last();
+        }
+        finally
+        {
+            endStep( start );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean next() throws LdapException, CursorException
+    {
+        long start = beginStep();
+
+        try
+        {
+            return wrapped.next();
+        }
+        finally
+        {
+            endStep( start );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean previous() throws LdapException, CursorException
+    {
+        long start = beginStep();
+
+        try
+        {
+            return wrapped.previous();
+        }
+        finally
+        {
+            endStep( start );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isClosed()
+    {
+        return wrapped.isClosed();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            wrapped.close();
+        }
+        finally
+        {
+            record();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close( Exception reason ) throws IOException
+    {
+        try
+        {
+            wrapped.close( reason );
+        }
+        finally
+        {
+            record();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setClosureMonitor( ClosureMonitor monitor )
+    {
+        wrapped.setClosureMonitor( monitor );
+    }
+
+
+    /**
+     * Starts measuring a cursor step, if the wrapped cursor is the partition one.
+     * The filters are applied within the step : their time is subtracted from the
+     * step own time, as they are nested calls.
+     */
+    private long beginStep()
+    {
+        if ( measureSteps )
+        {
+            return metrics.begin();
+        }
+
+        return 0L;
+    }
+
+
+    private void endStep( long start )
+    {
+        if ( measureSteps )
+        {
+            stepsTime += metrics.pop( start );
+        }
+    }
+
+
+    /**
+     * Records the times once, when the cursor is closed
+     */
+    private void record()
+    {
+        if ( recorded )
+        {
+            return;
+        }
+
+        recorded = true;
+
+        if ( nbFilters > 0 )
+        {
+            metrics.getCursorHistogram( interceptor ).record( filtersTime );
+        }
+
+        if ( measureSteps )
+        {
+            metrics.getCursorHistogram( FINAL ).record( stepsTime );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public String toString( String tabs )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( tabs ).append( "MeasuredEntryFilteringCursor (" ).append( interceptor ).append( ")\n" );
+        sb.append( wrapped.toString( tabs + "    " ) );
+
+        return sb.toString();
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        return toString( "" );
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.monitor;
+
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.directory.server.core.api.OperationEnum;
+
+
+/**
+ * Gathers the latency of each operation in each interceptor of the chain.
+ *
+ * The time recorded for an interceptor is its own processing time : the time
+ * spent in the interceptors it calls (the next interceptors in the chain, and
+ * the nested operations started through the OperationManager) is not included.
+ * The last element of the chain, named "FINAL", is the partition nexus.
+ *
+ * The calls are measured by surrounding them with {@link #begin()} and
+ * {@link #end(long, String, OperationEnum)} :
+ *
+ * <pre>
+ * long start = metrics.begin();
+ *
+ * try
+ * {
+ *     interceptor.add( addContext );
+ * }
+ * finally
+ * {
+ *     metrics.end( start, interceptor.getName(), OperationEnum.ADD );
+ * }
+ * </pre>
+ *
+ * For a search, the search histograms only measure the time needed to build the
+ * cursor. The entries are fetched later, while the cursor is iterated : the
+ * {@link MeasuredEntryFilteringCursor} returned to each interceptor sums the own
+ * time spent in the filters it has added, and in the partition cursor steps for
+ * "FINAL". These sums are recorded once per search, when the cursor is closed,
+ * in the search cursor histograms (see {@link #getCursorHistogram(String)}).
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class OperationMetrics
+{
+    /** The name of the search cursors iteration, in the reports */
+    public static final String SEARCH_CURSOR = "searchCursor";
+
+    /** The value returned by begin() when the metrics are disabled */
+    private static final long DISABLED = Long.MIN_VALUE;
+
+    /** The histograms, per interceptor, indexed by operation */
+    private final ConcurrentMap<String, AtomicReferenceArray<LatencyHistogram>> histograms =
+        new ConcurrentHashMap<String, AtomicReferenceArray<LatencyHistogram>>();
+
+    /** The histograms of the search cursors iteration, per interceptor */
+    private final ConcurrentMap<String, LatencyHistogram> cursorHistograms =
+        new ConcurrentHashMap<String, LatencyHistogram>();
+
+    /** The stack of the calls being measured by each thread */
+    private final ThreadLocal<CallStack> callStacks = new ThreadLocal<CallStack>()
+    {
+        @Override
+        protected CallStack initialValue()
+        {
+            return new CallStack();
+        }
+    };
+
+    /** Tells if the metrics are gathered */
+    private volatile boolean enabled = false;
+
+
+    /**
+     * The time spent in the nested calls, for each call being measured by a thread
+     */
+    private static class CallStack
+    {
+        /** The time spent in the nested calls, per level */
+        private long[] nested = new long[32];
+
+        /** The current level */
+        private int depth = -1;
+
+
+        private void push()
+        {
+            depth++;
+
+            if ( depth == nested.length )
+            {
+                long[] newNested = new long[nested.length * 2];
+                System.arraycopy( nested, 0, newNested, 0, nested.length );
+                nested = newNested;
+            }
+
+            nested[depth] = 0L;
+        }
+
+
+        /**
+         * Removes the current level, and returns the call own time
+         */
+        private long pop( long elapsed )
+        {
+            long own = elapsed - nested[depth];
+            depth--;
+
+            if ( depth >= 0 )
+            {
+                nested[depth] += elapsed;
+            }
+
+            return own;
+        }
+    }
+
+
+    /**
+     * @return <code>true</code> if the metrics are gathered
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+
+    /**
+     * Enables or disables the metrics gathering
+     *
+     * @param enabled <code>true</code> to gather the metrics
+     */
+    public void setEnabled( boolean enabled )
+    {
+        this.enabled = enabled;
+    }
+
+
+    /**
+     * Starts measuring a call.
+     *
+     * @return The value to give back to {@link #end(long, String, OperationEnum)}
+     */
+    public long begin()
+    {
+        if ( !enabled )
+        {
+            return DISABLED;
+        }
+
+        callStacks.get().push();
+
+        return System.nanoTime();
+    }
+
+
+    /**
+     * Ends measuring a call, and records its own processing time.
+     *
+     * @param start The value returned by {@link #begin()}
+     * @param interceptor The name of the interceptor which has been called
+     * @param operation The operation
+     */
+    public void end( long start, String interceptor, OperationEnum operation )
+    {
+        if ( start == DISABLED )
+        {
+            return;
+        }
+
+        getHistogram( interceptor, operation ).record( pop( start ) );
+    }
+
+
+    /**
+     * Ends measuring a call without recording it, so that the caller can sum the
+     * own time of many calls before recording it.
+     *
+     * @param start The value returned by {@link #begin()}
+     * @return The call own processing time, in nanoseconds, or 0 if the metrics were disabled
+     */
+    public long pop( long start )
+    {
+        if ( start == DISABLED )
+        {
+            return 0L;
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        return callStacks.get().pop( elapsed );
+    }
+
+
+    /**
+     * Gets the histogram for an interceptor and an operation, creating it if needed.
+     *
+     * @param interceptor The interceptor name
+     * @param operation The operation
+     * @return The histogram
+     */
+    public LatencyHistogram getHistogram( String interceptor, OperationEnum operation )
+    {
+        AtomicReferenceArray<LatencyHistogram> perOperation = histograms.get( interceptor );
+
+        if ( perOperation == null )
+        {
+            perOperation = new AtomicReferenceArray<LatencyHistogram>( OperationEnum.values().length );
+            AtomicReferenceArray<LatencyHistogram> existing = histograms.putIfAbsent( interceptor, perOperation );
+
+            if ( existing != null )
+            {
+                perOperation = existing;
+            }
+        }
+
+        LatencyHistogram histogram = perOperation.get( operation.ordinal() );
+
+        if ( histogram == null )
+        {
+            // Another thread may have created it in the meantime : keep the first one
+            perOperation.compareAndSet( operation.ordinal(), null, new LatencyHistogram() );
+            histogram = perOperation.get( operation.ordinal() );
+        }
+
+        return histogram;
+    }
+
+
+    /**
+     * Tells if some calls have been recorded for an interceptor and an operation
+     *
+     * @param interceptor The interceptor name
+     * @param operation The operation
+     * @return <code>true</code> if there is a histogram for this interceptor and operation
+     */
+    public boolean hasHistogram( String interceptor, OperationEnum operation )
+    {
+        AtomicReferenceArray<LatencyHistogram> perOperation = histograms.get( interceptor );
+
+        return ( perOperation != null ) && ( perOperation.get( operation.ordinal() ) != null );
+    }
+
+
+    /**
+     * Gets the histogram of the search cursors iteration for an interceptor, creating
+     * it if needed.
+     *
+     * @param interceptor The interceptor name
+     * @return The histogram
+     */
+    public LatencyHistogram getCursorHistogram( String interceptor )
+    {
+        LatencyHistogram histogram = cursorHistograms.get( interceptor );
+
+        if ( histogram == null )
+        {
+            histogram = new LatencyHistogram();
+            LatencyHistogram existing = cursorHistograms.putIfAbsent( interceptor, histogram );
+
+            if ( existing != null )
+            {
+                histogram = existing;
+            }
+        }
+
+        return histogram;
+    }
+
+
+    /**
+     * Tells if some search cursors iteration have been recorded for an interceptor
+     *
+     * @param interceptor The interceptor name
+     * @return <code>true</code> if there is a search cursor histogram for this interceptor
+     */
+    public boolean hasCursorHistogram( String interceptor )
+    {
+        return cursorHistograms.containsKey( interceptor );
+    }
+
+
+    /**
+     * @return The names of the interceptors for which some calls have been recorded, sorted
+     */
+    public Set<String> getInterceptorNames()
+    {
+        Set<String> names = new TreeSet<String>( histograms.keySet() );
+        names.addAll( cursorHistograms.keySet() );
+
+        return names;
+    }
+
+
+    /**
+     * Resets all the histograms
+     */
+    public void reset()
+    {
+        for ( AtomicReferenceArray<LatencyHistogram> perOperation : histograms.values() )
+        {
+            for ( int i = 0; i < perOperation.length(); i++ )
+            {
+                LatencyHistogram histogram = perOperation.get( i );
+
+                if ( histogram != null )
+                {
+                    histogram.reset();
+                }
+            }
+        }
+
+        for ( LatencyHistogram histogram : cursorHistograms.values() )
+        {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.monitor;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The counters of a partition : the number of cursor steps done by the searches,
+ * the number of index cursors opened to evaluate the filters, and the entry cache
+ * hits and misses.
+ *
+ * The counters are only updated when the metrics are enabled, which is done by the
+ * DirectoryService when the partition is added.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PartitionMetrics
+{
+    /** The number of steps done on the search cursors */
+    private final AtomicLong cursorSteps = new AtomicLong( 0L );
+
+    /** The number of index lookups */
+    private final AtomicLong indexLookups = new AtomicLong( 0L );
+
+    /** The number of entries found in the entry cache */
+    private final AtomicLong cacheHits = new AtomicLong( 0L );
+
+    /** The number of entries read from the master table */
+    private final AtomicLong cacheMisses = new AtomicLong( 0L );
+
+    /** Tells if the counters are updated */
+    private volatile boolean enabled = false;
+
+
+    /**
+     * @return <code>true</code> if the counters are updated
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+
+    /**
+     * Enables or disables the counters
+     *
+     * @param enabled <code>true</code> to update the counters
+     */
+    public void setEnabled( boolean enabled )
+    {
+        this.enabled = enabled;
+    }
+
+
+    /**
+     * Increments the number of cursor steps
+     */
+    public void cursorStep()
+    {
+        if ( enabled )
+        {
+            cursorSteps.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * Increments the number of index lookups
+     */
+    public void indexLookup()
+    {
+        if ( enabled )
+        {
+            indexLookups.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * Increments the number of entry cache hits
+     */
+    public void cacheHit()
+    {
+        if ( enabled )
+        {
+            cacheHits.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * Increments the number of entry cache misses
+     */
+    public void cacheMiss()
+    {
+        if ( enabled )
+        {
+            cacheMisses.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * @return The number of steps done on the search cursors
+     */
+    public long getCursorSteps()
+    {
+        return cursorSteps.get();
+    }
+
+
+    /**
+     * @return The number of index lookups
+     */
+    public long getIndexLookups()
+    {
+        return indexLookups.get();
+    }
+
+
+    /**
+     * @return The number of entries found in the entry cache
+     */
+    public long getCacheHits()
+    {
+        return cacheHits.get();
+    }
+
+
+    /**
+     * @return The number of entries read from the master table
+     */
+    public long getCacheMisses()
+    {
+        return cacheMisses.get();
+    }
+
+
+    /**
+     * Resets all the counters
+     */
+    public void reset()
+    {
+        cursorSteps.set( 0L );
+        indexLookups.set( 0L );
+        cacheHits.set( 0L );
+        cacheMisses.set( 0L );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "cursorSteps=" ).append( getCursorSteps() );
+        sb.append( " indexLookups=" ).append( getIndexLookups() );
+        sb.append( " cacheHits=" ).append( getCacheHits() );
+        sb.append( " cacheMisses=" ).append( getCacheMisses() );
+
+        return sb.toString();
+    }
+}
@@ -34,6 +34,7 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.core.api.CacheService;
 import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.monitor.PartitionMetrics;
 import org.apache.directory.server.i18n.I18n;
 
 
@@ -73,6 +74,9 @@ public abstract class AbstractPartition implements Partition
     /** a flag to detect the change in context CSN */
     protected volatile boolean ctxCsnChanged = false;
 
+    /** The partition counters */
+    protected final PartitionMetrics partitionMetrics = new PartitionMetrics();
+
     /**
      * {@inheritDoc}
      */
@@ -301,4 +305,13 @@ public abstract class AbstractPartition implements Partition
             ctxCsnChanged = true;
         }
     }
+
+
+    /**
+     * @return The partition counters
+     */
+    public PartitionMetrics getPartitionMetrics()
+    {
+        return partitionMetrics;
+    }
 }
@@ -22,6 +22,7 @@ package org.apache.directory.server.core.api.schema;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
@@ -42,6 +43,7 @@ import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.model.schema.SchemaUtils;
+import org.apache.directory.api.ldap.model.schema.registries.Registries;
 import org.apache.directory.api.util.DateUtils;
 import org.apache.directory.server.constants.ApacheSchemaConstants;
 import org.apache.directory.server.core.api.CacheService;
@@ -130,6 +132,12 @@ public final class SchemaPartition extends AbstractPartition
     /** The ObjectClass AttributeType */
     private AttributeType objectClassAT;
 
+    /** A counter incremented each time the schema is modified */
+    private final AtomicLong schemaVersion = new AtomicLong( 0L );
+
+    /** The registries the current schema version has been computed with */
+    private volatile Registries versionedRegistries;
+
 
     public SchemaPartition( SchemaManager schemaManager )
     {
@@ -502,6 +510,9 @@ public final class SchemaPartition extends AbstractPartition
      */
     private void updateSchemaModificationAttributes( OperationContext opContext ) throws LdapException
     {
+        // The registries have been updated at this point, let the caches know about it
+        schemaVersion.incrementAndGet();
+
         String modifiersName = opContext.getSession().getEffectivePrincipal().getName();
         String modifyTimestamp = DateUtils.getGeneralizedTime();
 
@@ -524,6 +535,35 @@ public final class SchemaPartition extends AbstractPartition
     }
 
 
+    /**
+     * Gets the current version of the schema. This version is incremented each time
+     * a SchemaObject is added, deleted, modified, moved or renamed, and can be used by
+     * components caching some schema derived data to detect that their cache is stale.
+     * The changes applied directly through the SchemaManager, bypassing this partition,
+     * are detected too, as the SchemaManager replaces its Registries on each of them.
+     *
+     * @return The current schema version
+     */
+    public long getSchemaVersion()
+    {
+        Registries registries = schemaManager.getRegistries();
+
+        if ( registries != versionedRegistries )
+        {
+            synchronized ( schemaVersion )
+            {
+                if ( registries != versionedRegistries )
+                {
+                    versionedRegistries = registries;
+                    schemaVersion.incrementAndGet();
+                }
+            }
+        }
+
+        return schemaVersion.get();
+    }
+
+
     @Override
     public String getContextCsn()
     {
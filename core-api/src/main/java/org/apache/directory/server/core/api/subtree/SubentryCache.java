@@ -20,8 +20,12 @@
 package org.apache.directory.server.core.api.subtree;
 
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -51,6 +55,12 @@ public class SubentryCache implements Iterable<Dn>
     /** The Subentry cache */
     private final Map<Dn, Subentry> cache;
 
+    /** The number of running updates of the selected entries, for each subentry */
+    private final Map<Dn, Integer> pendingUpdates = new HashMap<Dn, Integer>();
+
+    /** A snapshot of the subentries whose selected entries are being updated */
+    private volatile Set<Dn> pendingSubentries = Collections.emptySet();
+
 
     /**
      * Creates a new instance of SubentryCache with a default maximum size.
@@ -142,6 +152,59 @@ public class SubentryCache implements Iterable<Dn>
     }
 
 
+    /**
+     * Tells that the references to a subentry are being updated in the entries it
+     * selects. Until {@link #removePendingUpdate(Dn)} is called, the subentry references
+     * stored in the entries can't be trusted for this subentry : its SubtreeSpecification
+     * has to be evaluated instead.
+     *
+     * @param dn The subentry Dn
+     */
+    public synchronized void addPendingUpdate( Dn dn )
+    {
+        Integer count = pendingUpdates.get( dn );
+        pendingUpdates.put( dn, count == null ? 1 : count + 1 );
+        pendingSubentries = Collections.unmodifiableSet( new HashSet<Dn>( pendingUpdates.keySet() ) );
+    }
+
+
+    /**
+     * Tells that an update of the entries selected by a subentry is completed.
+     *
+     * @param dn The subentry Dn
+     */
+    public synchronized void removePendingUpdate( Dn dn )
+    {
+        Integer count = pendingUpdates.get( dn );
+
+        if ( count == null )
+        {
+            return;
+        }
+
+        if ( count == 1 )
+        {
+            pendingUpdates.remove( dn );
+        }
+        else
+        {
+            pendingUpdates.put( dn, count - 1 );
+        }
+
+        pendingSubentries = Collections.unmodifiableSet( new HashSet<Dn>( pendingUpdates.keySet() ) );
+    }
+
+
+    /**
+     * @return The subentries whose selected entries are being updated. The returned
+     * set is a snapshot, it's cheap to get when there is no pending update.
+     */
+    public Set<Dn> getPendingUpdates()
+    {
+        return pendingSubentries;
+    }
+
+
     /**
      * @return An Iterator over the Subentry's DNs 
      */
@@ -44,6 +44,7 @@ import org.apache.directory.server.core.api.changelog.ChangeLog;
 import org.apache.directory.server.core.api.event.EventService;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
 import org.apache.directory.server.core.api.journal.Journal;
+import org.apache.directory.server.core.api.monitor.OperationMetrics;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.schema.SchemaPartition;
@@ -372,6 +373,23 @@ public class MockDirectoryService implements DirectoryService
     }
 
 
+    public OperationMetrics getOperationMetrics()
+    {
+        return new OperationMetrics();
+    }
+
+
+    public boolean isMetricsEnabled()
+    {
+        return false;
+    }
+
+
+    public void setMetricsEnabled( boolean metricsEnabled )
+    {
+    }
+
+
     public CoreSession getSession() throws LdapException
     {
         return null;
@@ -0,0 +1,161 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.entry;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.StringValue;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the CopyOnWriteServerEntry class : the original entry must never be modified.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CopyOnWriteServerEntryTest
+{
+    private static SchemaManager schemaManager;
+
+    private Entry original;
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    @Before
+    public void initEntry() throws Exception
+    {
+        original = new DefaultEntry( schemaManager, "cn=test,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "sn: Test",
+            "description: first",
+            "description: second" );
+    }
+
+
+    @Test
+    public void testAttributesAreSharedUntilModified() throws Exception
+    {
+        Entry view = new CopyOnWriteServerEntry( original );
+
+        // Iterating does not copy anything
+        for ( Attribute attribute : view )
+        {
+            assertSame( original.get( attribute.getAttributeType() ), attribute );
+        }
+
+        // get() returns a copy which can be modified
+        Attribute description = view.get( "description" );
+        assertNotSame( original.get( "description" ), description );
+        description.remove( "first" );
+
+        assertEquals( 1, view.get( "description" ).size() );
+        assertEquals( 2, original.get( "description" ).size() );
+    }
+
+
+    @Test
+    public void testEntryModificationsDoNotLeak() throws Exception
+    {
+        Entry view = new CopyOnWriteServerEntry( original );
+
+        view.add( "description", "third" );
+        view.remove( "sn", "Test" );
+        view.put( "cn", "other" );
+        view.removeAttributes( "objectClass" );
+        view.add( "ou", "added" );
+        view.setDn( "cn=other,ou=system" );
+
+        assertTrue( view.contains( "description", "first", "second", "third" ) );
+        assertFalse( view.containsAttribute( "sn" ) );
+        assertTrue( view.contains( "cn", "other" ) );
+        assertNull( view.get( "objectClass" ) );
+
+        assertEquals( "cn=test,ou=system", original.getDn().getName() );
+        assertEquals( 2, original.get( "description" ).size() );
+        assertTrue( original.contains( "sn", "Test" ) );
+        assertTrue( original.contains( "cn", "test" ) );
+        assertTrue( original.containsAttribute( "objectClass" ) );
+        assertFalse( original.containsAttribute( "ou" ) );
+    }
+
+
+    @Test
+    public void testClonedEntryIsMaterialized() throws Exception
+    {
+        ClonedServerEntry view = new CopyOnWriteServerEntry( original );
+
+        Entry cloned = view.getClonedEntry();
+
+        for ( Attribute attribute : cloned )
+        {
+            assertNotSame( original.get( attribute.getAttributeType() ), attribute );
+            attribute.clear();
+        }
+
+        assertSame( original, view.getOriginalEntry() );
+        assertEquals( 2, original.get( "description" ).size() );
+        assertEquals( 2, original.get( "objectClass" ).size() );
+    }
+
+
+    @Test
+    public void testAddKeepsUpId() throws Exception
+    {
+        Entry view = new CopyOnWriteServerEntry( original );
+        AttributeType ou = schemaManager.lookupAttributeTypeRegistry( "ou" );
+        AttributeType l = schemaManager.lookupAttributeTypeRegistry( "l" );
+        AttributeType jpegPhoto = schemaManager.lookupAttributeTypeRegistry( "jpegPhoto" );
+
+        view.add( "OrganizationalUnitName", ou, "added" );
+        view.add( "LocalityName", l, new StringValue( l, "Paris" ) );
+        view.add( "JPEGPhoto", jpegPhoto, new byte[]
+            { 0x01, 0x02 } );
+
+        assertEquals( "OrganizationalUnitName", view.get( ou ).getUpId() );
+        assertEquals( "LocalityName", view.get( l ).getUpId() );
+        assertEquals( "JPEGPhoto", view.get( jpegPhoto ).getUpId() );
+
+        assertFalse( original.containsAttribute( ou ) );
+        assertFalse( original.containsAttribute( l ) );
+        assertFalse( original.containsAttribute( jpegPhoto ) );
+    }
+}
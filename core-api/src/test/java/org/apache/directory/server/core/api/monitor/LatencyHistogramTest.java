@@ -0,0 +1,222 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.monitor;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.directory.server.core.api.OperationEnum;
+import org.junit.Test;
+
+
+/**
+ * Tests the LatencyHistogram and OperationMetrics classes.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LatencyHistogramTest
+{
+    @Test
+    public void testBuckets()
+    {
+        for ( long value = 0L; value < 100000L; value++ )
+        {
+            int index = LatencyHistogram.bucketIndex( value );
+
+            // The value must be in its bucket, and the error must stay below 1/16th
+            assertTrue( value <= LatencyHistogram.highestValue( index ) );
+            assertTrue( LatencyHistogram.highestValue( index ) - value <= value / 16 );
+
+            if ( index > 0 )
+            {
+                assertTrue( value > LatencyHistogram.highestValue( index - 1 ) );
+            }
+        }
+    }
+
+
+    @Test
+    public void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals( 0L, histogram.getValueAtPercentile( 99d ) );
+
+        for ( long value = 1L; value <= 1000L; value++ )
+        {
+            histogram.record( value * 1000L );
+        }
+
+        assertEquals( 1000L, histogram.getCount() );
+        assertEquals( 1000000L, histogram.getMax() );
+        assertEquals( 500500d, histogram.getMean(), 0.001d );
+
+        long median = histogram.getValueAtPercentile( 50d );
+        assertTrue( median >= 500000L && median <= 500000L * 17 / 16 );
+
+        long p99 = histogram.getValueAtPercentile( 99d );
+        assertTrue( p99 >= 990000L && p99 <= 1000000L );
+        assertEquals( 1000000L, histogram.getValueAtPercentile( 100d ) );
+
+        histogram.reset();
+
+        assertEquals( 0L, histogram.getCount() );
+        assertEquals( 0L, histogram.getMax() );
+    }
+
+
+    @Test
+    public void testOwnTime() throws Exception
+    {
+        OperationMetrics metrics = new OperationMetrics();
+        metrics.setEnabled( true );
+
+        long outer = metrics.begin();
+        long inner = metrics.begin();
+        Thread.sleep( 50L );
+        metrics.end( inner, "inner", OperationEnum.LOOKUP );
+        metrics.end( outer, "outer", OperationEnum.LOOKUP );
+
+        LatencyHistogram innerHistogram = metrics.getHistogram( "inner", OperationEnum.LOOKUP );
+        LatencyHistogram outerHistogram = metrics.getHistogram( "outer", OperationEnum.LOOKUP );
+
+        // The time spent in the inner call is not accounted to the outer one
+        assertTrue( innerHistogram.getMax() >= 50000000L );
+        assertTrue( outerHistogram.getMax() < 50000000L );
+        assertFalse( metrics.hasHistogram( "outer", OperationEnum.ADD ) );
+    }
+
+
+    @Test
+    public void testCursorTime() throws Exception
+    {
+        OperationMetrics metrics = new OperationMetrics();
+        metrics.setEnabled( true );
+
+        // A cursor step, calling a filter twice
+        long filtersTime = 0L;
+        long step = metrics.begin();
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            long filter = metrics.begin();
+            Thread.sleep( 25L );
+            filtersTime += metrics.pop( filter );
+        }
+
+        long stepTime = metrics.pop( step );
+
+        // Nothing is recorded until the sums are
+        assertFalse( metrics.hasCursorHistogram( "FINAL" ) );
+        assertTrue( filtersTime >= 50000000L );
+        assertTrue( stepTime < 50000000L );
+
+        metrics.getCursorHistogram( "interceptor" ).record( filtersTime );
+        metrics.getCursorHistogram( "FINAL" ).record( stepTime );
+
+        assertTrue( metrics.hasCursorHistogram( "FINAL" ) );
+        assertTrue( metrics.getInterceptorNames().contains( "interceptor" ) );
+        assertEquals( 1L, metrics.getCursorHistogram( "interceptor" ).getCount() );
+
+        metrics.reset();
+
+        assertEquals( 0L, metrics.getCursorHistogram( "interceptor" ).getCount() );
+    }
+
+
+    @Test
+    public void testDisabled()
+    {
+        // The metrics are disabled by default
+        OperationMetrics metrics = new OperationMetrics();
+        assertFalse( metrics.isEnabled() );
+
+        long start = metrics.begin();
+        metrics.end( start, "interceptor", OperationEnum.ADD );
+
+        assertFalse( metrics.hasHistogram( "interceptor", OperationEnum.ADD ) );
+        assertTrue( metrics.getInterceptorNames().isEmpty() );
+
+        PartitionMetrics partitionMetrics = new PartitionMetrics();
+        partitionMetrics.cursorStep();
+        partitionMetrics.cacheHit();
+
+        assertEquals( 0L, partitionMetrics.getCursorSteps() );
+        assertEquals( 0L, partitionMetrics.getCacheHits() );
+
+        partitionMetrics.setEnabled( true );
+        partitionMetrics.cursorStep();
+
+        assertEquals( 1L, partitionMetrics.getCursorSteps() );
+    }
+
+
+    @Test
+    public void testConcurrentHistogramCreation() throws Exception
+    {
+        final OperationMetrics metrics = new OperationMetrics();
+        final LatencyHistogram[] created = new LatencyHistogram[8];
+        final CountDownLatch start = new CountDownLatch( 1 );
+        Thread[] threads = new Thread[created.length];
+
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final int index = i;
+
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        created[index] = metrics.getHistogram( "interceptor", OperationEnum.SEARCH );
+                    }
+                    catch ( InterruptedException ie )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+
+            threads[i].start();
+        }
+
+        start.countDown();
+
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        // All the threads get the same histogram
+        for ( LatencyHistogram histogram : created )
+        {
+            assertSame( created[0], histogram );
+        }
+
+        assertTrue( metrics.hasHistogram( "interceptor", OperationEnum.SEARCH ) );
+    }
+}
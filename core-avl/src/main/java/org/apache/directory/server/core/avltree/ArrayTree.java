@@ -21,13 +21,16 @@ package org.apache.directory.server.core.avltree;
 
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 
 
 /**
- * A data structure simulating a tree (ie, a sorted list of elements) using an array.
+ * A data structure simulating a tree (ie, a sorted list of elements) using arrays.
+ * The elements are stored in a list of sorted leaves, like the leaves of a B+ tree :
+ * an insertion or a removal only shifts the elements of one leaf, and a leaf grows
+ * geometrically until it's split in two. The position of the first element of each
+ * leaf is kept, so that an element is found by its position in O(log n) too.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -36,14 +39,26 @@ public class ArrayTree<K>
     /** The Comparator used for comparing the keys */
     private Comparator<K> comparator;
 
-    /** The array containing the data */
-    private K[] array;
+    /** The leaves containing the data. Only the nbLeaves first ones are used */
+    private K[][] leaves;
 
-    /** The current number of elements in the array. May be lower than the array size */
+    /** The number of elements in each leaf. May be lower than the leaf size */
+    private int[] leafSizes;
+
+    /** The position in the tree of the first element of each leaf */
+    private int[] leafOffsets;
+
+    /** The number of leaves. There is always at least one leaf, which may be empty */
+    private int nbLeaves;
+
+    /** The current number of elements in the tree */
     private int size;
 
-    /** The extend size to use when increasing the array size */
-    private static final int INCREMENT = 16;
+    /** The initial size of a leaf */
+    private static final int INITIAL_LEAF_SIZE = 8;
+
+    /** The maximum number of elements in a leaf. A full leaf is split in two */
+    private static final int MAX_LEAF_SIZE = 256;
 
 
     /**
@@ -54,7 +69,11 @@ public class ArrayTree<K>
     public ArrayTree( Comparator<K> comparator )
     {
         this.comparator = comparator;
-        array = ( K[] ) new Object[INCREMENT];
+        leaves = ( K[][] ) new Object[1][];
+        leaves[0] = ( K[] ) new Object[INITIAL_LEAF_SIZE];
+        leafSizes = new int[1];
+        leafOffsets = new int[1];
+        nbLeaves = 1;
         size = 0;
     }
 
@@ -63,23 +82,36 @@ public class ArrayTree<K>
      * Creates a new instance of AVLTree.
      *
      * @param comparator the comparator to be used for comparing keys
+     * @param array The sorted keys to store in the tree
      */
     public ArrayTree( Comparator<K> comparator, K[] array )
     {
-        this.comparator = comparator;
+        this( comparator );
 
-        if ( array != null )
+        if ( ( array != null ) && ( array.length > 0 ) )
         {
-            size = array.length;
-            int arraySize = size;
+            // Fill the leaves up to three quarters, so that the next insertions
+            // don't split them immediately
+            int leafSize = MAX_LEAF_SIZE * 3 / 4;
+            int nb = ( array.length + leafSize - 1 ) / leafSize;
 
-            if ( size % INCREMENT != 0 )
+            leaves = ( K[][] ) new Object[nb][];
+            leafSizes = new int[nb];
+            leafOffsets = new int[nb];
+
+            for ( int i = 0; i < nb; i++ )
             {
-                arraySize += INCREMENT - size % INCREMENT;
+                int offset = i * leafSize;
+                int length = Math.min( leafSize, array.length - offset );
+
+                leaves[i] = ( K[] ) new Object[Math.max( length, INITIAL_LEAF_SIZE )];
+                System.arraycopy( array, offset, leaves[i], 0, length );
+                leafSizes[i] = length;
+                leafOffsets[i] = offset;
             }
 
-            this.array = ( K[] ) new Object[arraySize];
-            System.arraycopy( array, 0, this.array, 0, size );
+            nbLeaves = nb;
+            size = array.length;
         }
     }
 
@@ -108,48 +140,52 @@ public class ArrayTree<K>
             return null;
         }
 
-        // Check if the key already exists, and if so, return the
-        // existing one
-        K existing = find( key );
+        int leaf = findLeaf( key );
+        int pos = search( leaf, key );
 
-        if ( existing != null )
+        if ( pos >= 0 )
         {
-            return existing;
+            // The key already exists, return the existing one
+            return leaves[leaf][pos];
         }
 
-        if ( size == array.length )
+        pos = -( pos + 1 );
+
+        if ( leafSizes[leaf] == MAX_LEAF_SIZE )
         {
-            // The array is full, let's extend it
-            K[] newArray = ( K[] ) new Object[size + INCREMENT];
+            // The leaf is full, split it in two
+            splitLeaf( leaf );
 
-            System.arraycopy( array, 0, newArray, 0, size );
-            array = newArray;
+            if ( pos > leafSizes[leaf] )
+            {
+                pos -= leafSizes[leaf];
+                leaf++;
+            }
         }
 
-        // Currently, just add the element at the end of the array
-        // and sort the array. We could be more efficient by inserting the
-        // element at the right position by splitting the array in two
-        // parts and copying the right part one slot on the right.
-        array[size++] = key;
-        Arrays.sort( array, 0, size, comparator );
+        K[] keys = leaves[leaf];
+        int leafSize = leafSizes[leaf];
 
-        return null;
-    }
-
-
-    /**q<
-     * Reduce the array size if neede
-     */
-    private void reduceArray()
-    {
-        // We will reduce the array size when the number of elements
-        // in it is leaving twice the number of INCREMENT empty slots.
-        // We then remove INCREMENT slots
-        if ( ( array.length - size ) > ( INCREMENT << 1 ) )
+        if ( leafSize == keys.length )
         {
-            K[] newArray = ( K[] ) new Object[array.length - INCREMENT];
-            System.arraycopy( array, 0, newArray, 0, array.length );
+            // The leaf array is full, double its size
+            K[] newKeys = ( K[] ) new Object[Math.min( keys.length << 1, MAX_LEAF_SIZE )];
+            System.arraycopy( keys, 0, newKeys, 0, pos );
+            System.arraycopy( keys, pos, newKeys, pos + 1, leafSize - pos );
+            leaves[leaf] = newKeys;
+            keys = newKeys;
         }
+        else
+        {
+            System.arraycopy( keys, pos, keys, pos + 1, leafSize - pos );
+        }
+
+        keys[pos] = key;
+        leafSizes[leaf]++;
+        size++;
+        shiftOffsets( leaf + 1, 1 );
+
+        return null;
     }
 
 
@@ -161,29 +197,46 @@ public class ArrayTree<K>
      */
     public K remove( K key )
     {
-        // Search for the key position in the tree
-        int pos = getPosition( key );
+        if ( ( key == null ) || ( size == 0 ) )
+        {
+            return null;
+        }
+
+        int leaf = findLeaf( key );
+        int pos = search( leaf, key );
 
-        if ( pos != -1 )
+        if ( pos < 0 )
         {
-            // Found... 
-            if ( pos != size - 1 )
-            {
-                // If the element is not the last one, we have to
-                // move the end of the array one step to the left
-                System.arraycopy( array, pos + 1, array, pos, size - pos - 1 );
+            return null;
+        }
 
-                reduceArray();
-            }
+        K[] keys = leaves[leaf];
+        int leafSize = --leafSizes[leaf];
 
-            size--;
+        // Move the end of the leaf one step to the left
+        System.arraycopy( keys, pos + 1, keys, pos, leafSize - pos );
+        keys[leafSize] = null;
+        size--;
+        shiftOffsets( leaf + 1, -1 );
 
-            return key;
+        if ( ( leafSize == 0 ) && ( nbLeaves > 1 ) )
+        {
+            removeLeaf( leaf );
+        }
+        else if ( ( leaf < nbLeaves - 1 ) && ( leafSize + leafSizes[leaf + 1] <= MAX_LEAF_SIZE >> 1 ) )
+        {
+            mergeLeaves( leaf );
+        }
+        else if ( ( leaf > 0 ) && ( leafSize + leafSizes[leaf - 1] <= MAX_LEAF_SIZE >> 1 ) )
+        {
+            mergeLeaves( leaf - 1 );
         }
         else
         {
-            return null;
+            reduceLeaf( leaf );
         }
+
+        return key;
     }
 
 
@@ -216,9 +269,12 @@ public class ArrayTree<K>
     {
         List<K> list = new ArrayList<K>( size );
 
-        for ( int i = 0; i < size; i++ )
+        for ( int leaf = 0; leaf < nbLeaves; leaf++ )
         {
-            list.add( array[i] );
+            for ( int i = 0; i < leafSizes[leaf]; i++ )
+            {
+                list.add( leaves[leaf][i] );
+            }
         }
 
         return list;
@@ -236,21 +292,7 @@ public class ArrayTree<K>
             return;
         }
 
-        boolean isFirst = false;
-
-        for ( K key : array )
-        {
-            if ( isFirst )
-            {
-                isFirst = false;
-            }
-            else
-            {
-                System.out.print( ", " );
-            }
-
-            System.out.println( key );
-        }
+        System.out.println( toString() );
     }
 
 
@@ -267,7 +309,9 @@ public class ArrayTree<K>
             throw new ArrayIndexOutOfBoundsException();
         }
 
-        return array[position];
+        int leaf = getLeafAt( position );
+
+        return leaves[leaf][position - leafOffsets[leaf]];
     }
 
 
@@ -280,7 +324,7 @@ public class ArrayTree<K>
     {
         if ( size != 0 )
         {
-            return array[0];
+            return leaves[0][0];
         }
         else
         {
@@ -298,7 +342,7 @@ public class ArrayTree<K>
     {
         if ( size != 0 )
         {
-            return array[size - 1];
+            return leaves[nbLeaves - 1][leafSizes[nbLeaves - 1] - 1];
         }
         else
         {
@@ -317,112 +361,9 @@ public class ArrayTree<K>
      */
     public K findGreater( K key )
     {
-        if ( key == null )
-        {
-            return null;
-        }
-
-        switch ( size )
-        {
-            case 0:
-                return null;
-
-            case 1:
-                if ( comparator.compare( array[0], key ) > 0 )
-                {
-                    return array[0];
-                }
-                else
-                {
-                    return null;
-                }
-
-            case 2:
-                if ( comparator.compare( array[0], key ) > 0 )
-                {
-                    return array[0];
-                }
-                else if ( comparator.compare( array[1], key ) > 0 )
-                {
-                    return array[1];
-                }
-                else
-                {
-                    return null;
-                }
-
-            default:
-                // Split the array in two parts, the left part an the right part
-                int current = size >> 1;
-                int start = 0;
-                int end = size - 1;
-
-                while ( end - start + 1 > 2 )
-                {
-                    int res = comparator.compare( array[current], key );
-
-                    if ( res == 0 )
-                    {
-                        // Current can't be equal to zero at this point
-                        return array[current + 1];
-                    }
-                    else if ( res < 0 )
-                    {
-                        start = current;
-                        current = ( current + end + 1 ) >> 1;
-                    }
-                    else
-                    {
-                        end = current;
-                        current = ( current + start + 1 ) >> 1;
-                    }
-                }
+        int position = getAfterPosition( key );
 
-                switch ( end - start + 1 )
-                {
-                    case 1:
-                        int res = comparator.compare( array[start], key );
-
-                        if ( res <= 0 )
-                        {
-                            if ( start == size )
-                            {
-                                return null;
-                            }
-                            else
-                            {
-                                return array[start + 1];
-                            }
-                        }
-
-                        return array[start];
-
-                    case 2:
-                        res = comparator.compare( array[start], key );
-
-                        if ( res <= 0 )
-                        {
-                            res = comparator.compare( array[start + 1], key );
-
-                            if ( res <= 0 )
-                            {
-                                if ( start == size - 2 )
-                                {
-                                    return null;
-                                }
-
-                                return array[start + 2];
-                            }
-
-                            return array[start + 1];
-                        }
-
-                        return array[start];
-
-                    default:
-                        return null;
-                }
-        }
+        return position == -1 ? null : get( position );
     }
 
 
@@ -440,108 +381,14 @@ public class ArrayTree<K>
             return null;
         }
 
-        switch ( size )
-        {
-            case 0:
-                return null;
+        int position = search( key );
 
-            case 1:
-                if ( comparator.compare( array[0], key ) >= 0 )
-                {
-                    return array[0];
-                }
-                else
-                {
-                    return null;
-                }
-
-            case 2:
-                if ( comparator.compare( array[0], key ) >= 0 )
-                {
-                    return array[0];
-                }
-                else if ( comparator.compare( array[1], key ) >= 0 )
-                {
-                    return array[1];
-                }
-                else
-                {
-                    return null;
-                }
-
-            default:
-                // Split the array in two parts, the left part an the right part
-                int current = size >> 1;
-                int start = 0;
-                int end = size - 1;
-
-                while ( end - start + 1 > 2 )
-                {
-                    int res = comparator.compare( array[current], key );
-
-                    if ( res == 0 )
-                    {
-                        return array[current];
-                    }
-                    else if ( res < 0 )
-                    {
-                        start = current;
-                        current = ( current + end + 1 ) >> 1;
-                    }
-                    else
-                    {
-                        end = current;
-                        current = ( current + start + 1 ) >> 1;
-                    }
-                }
-
-                switch ( end - start + 1 )
-                {
-                    case 1:
-                        int res = comparator.compare( array[start], key );
-
-                        if ( res >= 0 )
-                        {
-                            return array[start];
-                        }
-                        else
-                        {
-                            if ( start == size - 1 )
-                            {
-                                return null;
-                            }
-                            else
-                            {
-                                return array[start + 1];
-                            }
-                        }
-
-                    case 2:
-                        res = comparator.compare( array[start], key );
-
-                        if ( res < 0 )
-                        {
-                            res = comparator.compare( array[start + 1], key );
-
-                            if ( res < 0 )
-                            {
-                                if ( start == size - 2 )
-                                {
-                                    return null;
-                                }
-
-                                return array[start + 2];
-                            }
-
-                            return array[start + 1];
-                        }
-
-                        return array[start];
-
-                    default:
-                        return null;
-                }
+        if ( position < 0 )
+        {
+            position = -( position + 1 );
         }
+
+        return position < size ? get( position ) : null;
     }
 
 
@@ -554,133 +401,9 @@ public class ArrayTree<K>
      */
     public K findLess( K key )
     {
-        if ( key == null )
-        {
-            return null;
-        }
-
-        switch ( size )
-        {
-            case 0:
-                return null;
-
-            case 1:
-                if ( comparator.compare( array[0], key ) >= 0 )
-                {
-                    return null;
-                }
-                else
-                {
-                    return array[0];
-                }
-
-            case 2:
-                if ( comparator.compare( array[0], key ) >= 0 )
-                {
-                    return null;
-                }
-                else if ( comparator.compare( array[1], key ) >= 0 )
-                {
-                    return array[0];
-                }
-                else
-                {
-                    return array[1];
-                }
+        int position = getBeforePosition( key );
 
-            default:
-                // Split the array in two parts, the left part an the right part
-                int current = size >> 1;
-                int start = 0;
-                int end = size - 1;
-
-                while ( end - start + 1 > 2 )
-                {
-                    int res = comparator.compare( array[current], key );
-
-                    if ( res == 0 )
-                    {
-                        // Current can't be equal to zero at this point
-                        return array[current - 1];
-                    }
-                    else if ( res < 0 )
-                    {
-                        start = current;
-                        current = ( current + end + 1 ) >> 1;
-                    }
-                    else
-                    {
-                        end = current;
-                        current = ( current + start + 1 ) >> 1;
-                    }
-                }
-
-                switch ( end - start + 1 )
-                {
-                    case 1:
-                        // Three cases :
-                        // o The value is equal to the current position, or below
-                        // the current position :
-                        //   - if the current position is at the beginning
-                        //     of the array, return null
-                        //   - otherwise, return the previous position in the array
-                        // o The value is above the current position :
-                        //   - return the current position
-                        int res = comparator.compare( array[start], key );
-
-                        if ( res >= 0 )
-                        {
-                            // start can be equal to 0. Check that
-                            if ( start == 1 )
-                            {
-                                return null;
-                            }
-                            else
-                            {
-                                return array[start - 1];
-                            }
-                        }
-                        else
-                        {
-                            return array[start];
-                        }
-
-                    case 2:
-                        // Four cases :
-                        // o the value is equal the current position, or below 
-                        //   the first position :
-                        //   - if the current position is at the beginning
-                        //     of the array, return null
-                        //   - otherwise, return the previous element
-                        // o the value is above the first position but below
-                        //   or equal the second position, return the first position
-                        // o otherwise, return the second position
-                        res = comparator.compare( array[start], key );
-
-                        if ( res >= 0 )
-                        {
-                            if ( start == 0 )
-                            {
-                                return null;
-                            }
-                            else
-                            {
-                                return array[start - 1];
-                            }
-                        }
-                        else if ( comparator.compare( array[start + 1], key ) >= 0 )
-                        {
-                            return array[start];
-                        }
-                        else
-                        {
-                            return array[start + 1];
-                        }
-
-                    default:
-                        return null;
-                }
-        }
+        return position == -1 ? null : get( position );
     }
 
 
@@ -698,143 +421,14 @@ public class ArrayTree<K>
             return null;
         }
 
-        switch ( size )
-        {
-            case 0:
-                return null;
+        int position = search( key );
 
-            case 1:
-                if ( comparator.compare( array[0], key ) <= 0 )
-                {
-                    return array[0];
-                }
-                else
-                {
-                    return null;
-                }
-
-            case 2:
-                int res = comparator.compare( array[0], key );
-
-                if ( res > 0 )
-                {
-                    return null;
-                }
-                else if ( res == 0 )
-                {
-                    return array[0];
-                }
-
-                res = comparator.compare( array[1], key );
-
-                if ( res == 0 )
-                {
-                    return array[1];
-                }
-                else if ( comparator.compare( array[1], key ) > 0 )
-                {
-                    return array[0];
-                }
-                else
-                {
-                    return array[1];
-                }
-
-            default:
-                // Split the array in two parts, the left part an the right part
-                int current = size >> 1;
-                int start = 0;
-                int end = size - 1;
-
-                while ( end - start + 1 > 2 )
-                {
-                    res = comparator.compare( array[current], key );
-
-                    if ( res == 0 )
-                    {
-                        return array[current];
-                    }
-                    else if ( res < 0 )
-                    {
-                        start = current;
-                        current = ( current + end + 1 ) >> 1;
-                    }
-                    else
-                    {
-                        end = current;
-                        current = ( current + start + 1 ) >> 1;
-                    }
-                }
-
-                switch ( end - start + 1 )
-                {
-                    case 1:
-                        // Three cases :
-                        // o The value is equal to the current position, or below
-                        // the current position :
-                        //   - if the current position is at the beginning
-                        //     of the array, return null
-                        //   - otherwise, return the previous position in the array
-                        // o The value is above the current position :
-                        //   - return the current position
-                        res = comparator.compare( array[start], key );
-
-                        if ( res > 0 )
-                        {
-                            // start can be equal to 0. Check that
-                            if ( start == 1 )
-                            {
-                                return null;
-                            }
-                            else
-                            {
-                                return array[start - 1];
-                            }
-                        }
-                        else
-                        {
-                            return array[start];
-                        }
-
-                    case 2:
-                        // Four cases :
-                        // o the value is equal the current position, or below 
-                        //   the first position :
-                        //   - if the current position is at the beginning
-                        //     of the array, return null
-                        //   - otherwise, return the previous element
-                        // o the value is above the first position but below
-                        //   or equal the second position, return the first position
-                        // o otherwise, return the second position
-                        res = comparator.compare( array[start], key );
-
-                        if ( res > 0 )
-                        {
-                            if ( start == 0 )
-                            {
-                                return null;
-                            }
-                            else
-                            {
-                                return array[start - 1];
-                            }
-                        }
-
-                        res = comparator.compare( array[start + 1], key );
-
-                        if ( res > 0 )
-                        {
-                            return array[start];
-                        }
-                        else
-                        {
-                            return array[start + 1];
-                        }
-
-                    default:
-                        return null;
-                }
+        if ( position < 0 )
+        {
+            position = -( position + 1 ) - 1;
         }
+
+        return position >= 0 ? get( position ) : null;
     }
 
 
@@ -845,430 +439,312 @@ public class ArrayTree<K>
      * @return the found node, or null
      */
     public K find( K key )
+    {
+        int position = getPosition( key );
+
+        return position == -1 ? null : get( position );
+    }
+
+
+    /**
+     * Find the element position in the array. 
+     *
+     * @param key the key to find
+     * @return the position in the array, or -1 if not found
+     */
+    public int getPosition( K key )
     {
         if ( key == null )
         {
-            return null;
+            return -1;
         }
 
-        switch ( size )
-        {
-            case 0:
-                return null;
+        int position = search( key );
 
-            case 1:
-                if ( comparator.compare( array[0], key ) == 0 )
-                {
-                    return array[0];
-                }
-                else
-                {
-                    return null;
-                }
+        return position < 0 ? -1 : position;
+    }
 
-            case 2:
-                if ( comparator.compare( array[0], key ) == 0 )
-                {
-                    return array[0];
-                }
-                else if ( comparator.compare( array[1], key ) == 0 )
-                {
-                    return array[1];
-                }
-                else
-                {
-                    return null;
-                }
 
-            default:
-                // Split the array in two parts, the left part an the right part
-                int current = size >> 1;
-                int start = 0;
-                int end = size - 1;
+    /**
+     * Find the position of the closest greater element in the array. 
+     *
+     * @param key the key to find
+     * @return the position in the array, or -1 if not found
+     */
+    public int getAfterPosition( K key )
+    {
+        if ( key == null )
+        {
+            return -1;
+        }
 
-                while ( end - start + 1 > 2 )
-                {
-                    int res = comparator.compare( array[current], key );
-
-                    if ( res == 0 )
-                    {
-                        return array[current];
-                    }
-                    else if ( res < 0 )
-                    {
-                        start = current;
-                        current = ( current + end + 1 ) >> 1;
-                    }
-                    else
-                    {
-                        end = current;
-                        current = ( current + start + 1 ) >> 1;
-                    }
-                }
+        int position = search( key );
 
-                switch ( end - start + 1 )
-                {
-                    case 1:
-                        if ( comparator.compare( array[start], key ) == 0 )
-                        {
-                            return array[start];
-                        }
-                        else
-                        {
-                            return null;
-                        }
-
-                    case 2:
-                        if ( comparator.compare( array[start], key ) == 0 )
-                        {
-                            return array[start];
-                        }
-                        else if ( comparator.compare( array[end], key ) == 0 )
-                        {
-                            return array[end];
-                        }
-                        else
-                        {
-                            return null;
-                        }
-
-                    default:
-                        return null;
-                }
+        if ( position >= 0 )
+        {
+            position++;
         }
+        else
+        {
+            position = -( position + 1 );
+        }
+
+        return position < size ? position : -1;
     }
 
 
     /**
-     * Find the element position in the array. 
+     * Find the position of the closest lower element in the array. 
      *
      * @param key the key to find
      * @return the position in the array, or -1 if not found
      */
-    public int getPosition( K key )
+    public int getBeforePosition( K key )
     {
         if ( key == null )
         {
             return -1;
         }
 
-        switch ( size )
+        int position = search( key );
+
+        if ( position < 0 )
         {
-            case 0:
-                return -1;
+            position = -( position + 1 );
+        }
 
-            case 1:
-                if ( comparator.compare( array[0], key ) == 0 )
-                {
-                    return 0;
-                }
-                else
-                {
-                    return -1;
-                }
+        return position - 1;
+    }
 
-            case 2:
-                if ( comparator.compare( array[0], key ) == 0 )
-                {
-                    return 0;
-                }
-                else if ( comparator.compare( array[1], key ) == 0 )
-                {
-                    return 1;
-                }
-                else
-                {
-                    return -1;
-                }
 
-            default:
-                // Split the array in two parts, the left part an the right part
-                int current = size >> 1;
-                int start = 0;
-                int end = size - 1;
+    /**
+     * Tells if a key exist in the array.
+     * 
+     * @param key The key to look for
+     * @return true if the key exist in the array
+     */
+    public boolean contains( K key )
+    {
+        return find( key ) != null;
+    }
 
-                while ( end - start + 1 > 2 )
-                {
-                    int res = comparator.compare( array[current], key );
-
-                    if ( res == 0 )
-                    {
-                        return current;
-                    }
-                    else if ( res < 0 )
-                    {
-                        start = current;
-                        current = ( current + end + 1 ) >> 1;
-                    }
-                    else
-                    {
-                        end = current;
-                        current = ( current + start + 1 ) >> 1;
-                    }
-                }
 
-                switch ( end - start + 1 )
-                {
-                    case 1:
-                        if ( comparator.compare( array[start], key ) == 0 )
-                        {
-                            return start;
-                        }
-                        else
-                        {
-                            return -1;
-                        }
-
-                    case 2:
-                        if ( comparator.compare( array[start], key ) == 0 )
-                        {
-                            return start;
-                        }
-                        else if ( comparator.compare( array[end], key ) == 0 )
-                        {
-                            return end;
-                        }
-                        else
-                        {
-                            return -1;
-                        }
-
-                    default:
-                        return -1;
-                }
+    /**
+     * Searches a key in the whole tree.
+     *
+     * @return the key position if found, or (-(insertion point) - 1), as
+     * {@link java.util.Arrays#binarySearch(Object[], Object)} does
+     */
+    private int search( K key )
+    {
+        int leaf = findLeaf( key );
+        int pos = search( leaf, key );
+
+        if ( pos >= 0 )
+        {
+            return leafOffsets[leaf] + pos;
         }
+
+        return pos - leafOffsets[leaf];
     }
 
 
     /**
-     * Find the element position in the array, or the position of the closest greater element in the array. 
+     * Searches a key in a leaf.
      *
-     * @param key the key to find
-     * @return the position in the array, or -1 if not found
+     * @return the key position in the leaf if found, or (-(insertion point) - 1)
      */
-    public int getAfterPosition( K key )
+    private int search( int leaf, K key )
     {
-        if ( key == null )
+        K[] keys = leaves[leaf];
+        int low = 0;
+        int high = leafSizes[leaf] - 1;
+
+        while ( low <= high )
         {
-            return -1;
+            int middle = ( low + high ) >>> 1;
+            int res = comparator.compare( keys[middle], key );
+
+            if ( res < 0 )
+            {
+                low = middle + 1;
+            }
+            else if ( res > 0 )
+            {
+                high = middle - 1;
+            }
+            else
+            {
+                return middle;
+            }
         }
 
-        switch ( size )
+        return -( low + 1 );
+    }
+
+
+    /**
+     * Finds the leaf which contains a key, or where it should be inserted : the first
+     * leaf whose last key is greater or equal to the key, or the last leaf.
+     */
+    private int findLeaf( K key )
+    {
+        int low = 0;
+        int high = nbLeaves - 1;
+
+        while ( low < high )
         {
-            case 0:
-                return -1;
+            int middle = ( low + high ) >>> 1;
 
-            case 1:
-                if ( comparator.compare( array[0], key ) > 0 )
-                {
-                    return 0;
-                }
-                else
-                {
-                    return -1;
-                }
+            if ( comparator.compare( leaves[middle][leafSizes[middle] - 1], key ) < 0 )
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
 
-            case 2:
-                if ( comparator.compare( array[0], key ) > 0 )
-                {
-                    return 0;
-                }
+        return low;
+    }
 
-                if ( comparator.compare( array[1], key ) > 0 )
-                {
-                    return 1;
-                }
-                else
-                {
-                    return -1;
-                }
 
-            default:
-                // Split the array in two parts, the left part an the right part
-                int current = size >> 1;
-                int start = 0;
-                int end = size - 1;
+    /**
+     * Finds the leaf containing the element at a given position.
+     */
+    private int getLeafAt( int position )
+    {
+        int low = 0;
+        int high = nbLeaves - 1;
 
-                while ( end - start + 1 > 2 )
-                {
-                    int res = comparator.compare( array[current], key );
-
-                    if ( res == 0 )
-                    {
-                        if ( current != size - 1 )
-                        {
-                            return current + 1;
-                        }
-                        else
-                        {
-                            return -1;
-                        }
-                    }
-                    else if ( res < 0 )
-                    {
-                        start = current;
-                        current = ( current + end + 1 ) >> 1;
-                    }
-                    else
-                    {
-                        end = current;
-                        current = ( current + start + 1 ) >> 1;
-                    }
-                }
+        while ( low < high )
+        {
+            int middle = ( low + high + 1 ) >>> 1;
 
-                switch ( end - start + 1 )
-                {
-                    case 1:
-                        if ( comparator.compare( array[start], key ) > 0 )
-                        {
-                            return start;
-                        }
-                        else
-                        {
-                            return -1;
-                        }
-
-                    case 2:
-                        if ( comparator.compare( array[start], key ) > 0 )
-                        {
-                            return start;
-                        }
-
-                        if ( comparator.compare( array[end], key ) > 0 )
-                        {
-                            return end;
-                        }
-                        else
-                        {
-                            return -1;
-                        }
-
-                    default:
-                        return -1;
-                }
+            if ( leafOffsets[middle] <= position )
+            {
+                low = middle;
+            }
+            else
+            {
+                high = middle - 1;
+            }
         }
+
+        return low;
     }
 
 
     /**
-     * Find the element position in the array, or the position of the closest greater element in the array. 
-     *
-     * @param key the key to find
-     * @return the position in the array, or -1 if not found
+     * Adds a delta to the offsets of the leaves, starting at a given leaf
      */
-    public int getBeforePosition( K key )
+    private void shiftOffsets( int fromLeaf, int delta )
     {
-        if ( key == null )
+        for ( int leaf = fromLeaf; leaf < nbLeaves; leaf++ )
         {
-            return -1;
+            leafOffsets[leaf] += delta;
         }
+    }
 
-        switch ( size )
+
+    /**
+     * Splits a full leaf in two halves.
+     */
+    private void splitLeaf( int leaf )
+    {
+        if ( nbLeaves == leaves.length )
         {
-            case 0:
-                return -1;
+            int newLength = nbLeaves << 1;
+            K[][] newLeaves = ( K[][] ) new Object[newLength][];
+            System.arraycopy( leaves, 0, newLeaves, 0, nbLeaves );
+            leaves = newLeaves;
 
-            case 1:
-                if ( comparator.compare( array[0], key ) < 0 )
-                {
-                    return 0;
-                }
-                else
-                {
-                    return -1;
-                }
+            int[] newSizes = new int[newLength];
+            System.arraycopy( leafSizes, 0, newSizes, 0, nbLeaves );
+            leafSizes = newSizes;
 
-            case 2:
-                if ( comparator.compare( array[1], key ) < 0 )
-                {
-                    return 1;
-                }
+            int[] newOffsets = new int[newLength];
+            System.arraycopy( leafOffsets, 0, newOffsets, 0, nbLeaves );
+            leafOffsets = newOffsets;
+        }
 
-                if ( comparator.compare( array[0], key ) < 0 )
-                {
-                    return 0;
-                }
-                else
-                {
-                    return -1;
-                }
+        // Make room for the new leaf
+        System.arraycopy( leaves, leaf + 1, leaves, leaf + 2, nbLeaves - leaf - 1 );
+        System.arraycopy( leafSizes, leaf + 1, leafSizes, leaf + 2, nbLeaves - leaf - 1 );
+        System.arraycopy( leafOffsets, leaf + 1, leafOffsets, leaf + 2, nbLeaves - leaf - 1 );
+        nbLeaves++;
 
-            default:
-                // Split the array in two parts, the left part an the right part
-                int current = size >> 1;
-                int start = 0;
-                int end = size - 1;
+        K[] keys = leaves[leaf];
+        int half = leafSizes[leaf] >> 1;
+        int rightSize = leafSizes[leaf] - half;
+        K[] right = ( K[] ) new Object[MAX_LEAF_SIZE];
 
-                while ( end - start + 1 > 2 )
-                {
-                    int res = comparator.compare( array[current], key );
-
-                    if ( res == 0 )
-                    {
-                        if ( current == 0 )
-                        {
-                            return -1;
-                        }
-                        else
-                        {
-                            return current - 1;
-                        }
-                    }
-                    else if ( res < 0 )
-                    {
-                        start = current;
-                        current = ( current + end + 1 ) >> 1;
-                    }
-                    else
-                    {
-                        end = current;
-                        current = ( current + start + 1 ) >> 1;
-                    }
-                }
+        System.arraycopy( keys, half, right, 0, rightSize );
 
-                switch ( end - start + 1 )
-                {
-                    case 1:
-                        if ( comparator.compare( array[start], key ) < 0 )
-                        {
-                            return start;
-                        }
-                        else
-                        {
-                            return -1;
-                        }
-
-                    case 2:
-                        if ( comparator.compare( array[end], key ) < 0 )
-                        {
-                            return end;
-                        }
-
-                        if ( comparator.compare( array[start], key ) < 0 )
-                        {
-                            return start;
-                        }
-                        else
-                        {
-                            return -1;
-                        }
-
-                    default:
-                        return -1;
-                }
+        for ( int i = half; i < leafSizes[leaf]; i++ )
+        {
+            keys[i] = null;
         }
+
+        leaves[leaf + 1] = right;
+        leafSizes[leaf + 1] = rightSize;
+        leafOffsets[leaf + 1] = leafOffsets[leaf] + half;
+        leafSizes[leaf] = half;
     }
 
 
     /**
-     * Tells if a key exist in the array.
-     * 
-     * @param key The key to look for
-     * @return true if the key exist in the array
+     * Removes an empty leaf
      */
-    public boolean contains( K key )
+    private void removeLeaf( int leaf )
     {
-        return find( key ) != null;
+        System.arraycopy( leaves, leaf + 1, leaves, leaf, nbLeaves - leaf - 1 );
+        System.arraycopy( leafSizes, leaf + 1, leafSizes, leaf, nbLeaves - leaf - 1 );
+        System.arraycopy( leafOffsets, leaf + 1, leafOffsets, leaf, nbLeaves - leaf - 1 );
+        nbLeaves--;
+        leaves[nbLeaves] = null;
+    }
+
+
+    /**
+     * Moves the elements of a leaf at the end of the previous leaf, and removes it
+     */
+    private void mergeLeaves( int leaf )
+    {
+        int leftSize = leafSizes[leaf];
+        int rightSize = leafSizes[leaf + 1];
+        K[] keys = leaves[leaf];
+
+        if ( leftSize + rightSize > keys.length )
+        {
+            K[] newKeys = ( K[] ) new Object[MAX_LEAF_SIZE >> 1];
+            System.arraycopy( keys, 0, newKeys, 0, leftSize );
+            leaves[leaf] = newKeys;
+            keys = newKeys;
+        }
+
+        System.arraycopy( leaves[leaf + 1], 0, keys, leftSize, rightSize );
+        leafSizes[leaf] = leftSize + rightSize;
+        leafSizes[leaf + 1] = 0;
+        removeLeaf( leaf + 1 );
+    }
+
+
+    /**
+     * Halves the size of a leaf array when it's less than a quarter full
+     */
+    private void reduceLeaf( int leaf )
+    {
+        K[] keys = leaves[leaf];
+        int leafSize = leafSizes[leaf];
+
+        if ( ( keys.length > INITIAL_LEAF_SIZE ) && ( leafSize < keys.length >> 2 ) )
+        {
+            K[] newKeys = ( K[] ) new Object[Math.max( keys.length >> 1, INITIAL_LEAF_SIZE )];
+            System.arraycopy( keys, 0, newKeys, 0, leafSize );
+            leaves[leaf] = newKeys;
+        }
     }
 
 
@@ -1286,20 +762,21 @@ public class ArrayTree<K>
 
         boolean isFirst = true;
 
-        for ( int i = 0; i < size; i++ )
+        for ( int leaf = 0; leaf < nbLeaves; leaf++ )
         {
-            K key = array[i];
-
-            if ( isFirst )
-            {
-                isFirst = false;
-            }
-            else
+            for ( int i = 0; i < leafSizes[leaf]; i++ )
             {
-                sb.append( ", " );
-            }
+                if ( isFirst )
+                {
+                    isFirst = false;
+                }
+                else
+                {
+                    sb.append( ", " );
+                }
 
-            sb.append( key );
+                sb.append( leaves[leaf][i] );
+            }
         }
 
         return sb.toString();
@@ -28,7 +28,10 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeSet;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -1390,4 +1393,58 @@ public class ArrayTreeTest
         assertEquals( 2, tree.getBeforePosition( EIGHT ) );
         assertEquals( 3, tree.getBeforePosition( NINE ) );
     }
+
+
+    @Test
+    public void testManyElements()
+    {
+        ArrayTree<Integer> tree = createTree();
+        TreeSet<Integer> expected = new TreeSet<Integer>();
+        Random random = new Random( 42L );
+
+        // Enough elements to split the leaves several times
+        for ( int i = 0; i < 5000; i++ )
+        {
+            Integer value = random.nextInt( 20000 ) * 2;
+            assertEquals( expected.contains( value ) ? value : null, tree.insert( value ) );
+            expected.add( value );
+        }
+
+        assertEquals( new ArrayList<Integer>( expected ), tree.getKeys() );
+
+        // Remove half of them, merging the leaves
+        for ( int i = 0; i < 10000; i++ )
+        {
+            Integer value = random.nextInt( 20000 ) * 2;
+            assertEquals( expected.remove( value ) ? value : null, tree.remove( value ) );
+        }
+
+        assertEquals( expected.size(), tree.size() );
+        assertEquals( expected.first(), tree.getFirst() );
+        assertEquals( expected.last(), tree.getLast() );
+
+        int position = 0;
+
+        for ( Integer value : expected )
+        {
+            assertEquals( value, tree.get( position ) );
+            assertEquals( position, tree.getPosition( value ) );
+            assertEquals( value, tree.find( value ) );
+            assertEquals( expected.higher( value + 1 ), tree.findGreater( value + 1 ) );
+            assertEquals( expected.lower( value + 1 ), tree.findLess( value + 1 ) );
+            assertEquals( expected.ceiling( value - 1 ), tree.findGreaterOrEqual( value - 1 ) );
+            assertEquals( expected.floor( value + 1 ), tree.findLessOrEqual( value + 1 ) );
+            assertEquals( position < expected.size() - 1 ? position + 1 : -1, tree.getAfterPosition( value ) );
+            assertEquals( position - 1, tree.getBeforePosition( value ) );
+            position++;
+        }
+
+        // A tree built from a sorted array
+        ArrayTree<Integer> copy = new ArrayTree<Integer>( tree.getComparator(), tree.getKeys().toArray(
+            new Integer[0] ) );
+        assertEquals( tree.getKeys(), copy.getKeys() );
+        assertNull( copy.insert( 1 ) );
+        assertEquals( ONE, copy.getFirst() );
+        assertEquals( tree.size() + 1, copy.size() );
+    }
 }
@@ -268,4 +268,8 @@ public final class ApacheSchemaConstants
     // entryParentId
     public static final String ENTRY_PARENT_ID_AT = "entryParentId";
     public static final String ENTRY_PARENT_ID_OID = "1.3.6.1.4.1.18060.0.4.1.2.51";
+
+    // replDelta : the modifications sent by a provider to a delta-syncrepl consumer
+    public static final String REPL_DELTA_AT = "replDelta";
+    public static final String REPL_DELTA_AT_OID = "1.3.6.1.4.1.18060.0.4.1.2.70";
 }
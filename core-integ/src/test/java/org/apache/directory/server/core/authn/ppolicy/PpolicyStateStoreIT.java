@@ -0,0 +1,359 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.authn.ppolicy;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.constants.PasswordPolicySchemaConstants;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the PpolicyStateStore : the coalesced updates, and the states which can't
+ * be written.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "PpolicyStateStoreIT")
+public class PpolicyStateStoreIT extends AbstractLdapTestUnit
+{
+    private static final String FIRST_TIME = "20141201102233.000Z";
+    private static final String SECOND_TIME = "20141201112233.000Z";
+    private static final String THIRD_TIME = "20141201122233.000Z";
+
+    private CoreSession session;
+
+    private Dn userDn;
+
+    private AttributeType pwdFailureTimeAT;
+
+    private AttributeType pwdLastSuccessAT;
+
+    private AttributeType pwdAccountLockedTimeAT;
+
+    private AttributeType pwdGraceUseTimeAT;
+
+    private FailingStore store;
+
+
+    /**
+     * A store whose writes fail on demand
+     */
+    private static class FailingStore extends PpolicyStateStore
+    {
+        private boolean failing = false;
+
+        private int nbWrites = 0;
+
+
+        private FailingStore( DirectoryService directoryService )
+        {
+            // Never flushed by the thread, which is not started
+            super( directoryService, 60000L, 100 );
+        }
+
+
+        @Override
+        protected void modify( ModifyOperationContext modifyContext ) throws LdapException
+        {
+            if ( failing )
+            {
+                throw new LdapOtherException( "Write failure" );
+            }
+
+            nbWrites++;
+            super.modify( modifyContext );
+        }
+    }
+
+
+    @Before
+    public void createUser() throws Exception
+    {
+        session = getService().getAdminSession();
+        SchemaManager schemaManager = getService().getSchemaManager();
+
+        pwdFailureTimeAT = schemaManager
+            .lookupAttributeTypeRegistry( PasswordPolicySchemaConstants.PWD_FAILURE_TIME_AT );
+        pwdLastSuccessAT = schemaManager
+            .lookupAttributeTypeRegistry( PasswordPolicySchemaConstants.PWD_LAST_SUCCESS_AT );
+        pwdAccountLockedTimeAT = schemaManager
+            .lookupAttributeTypeRegistry( PasswordPolicySchemaConstants.PWD_ACCOUNT_LOCKED_TIME_AT );
+        pwdGraceUseTimeAT = schemaManager
+            .lookupAttributeTypeRegistry( PasswordPolicySchemaConstants.PWD_GRACE_USE_TIME_AT );
+
+        userDn = new Dn( schemaManager, "uid=ppolicyUser,ou=system" );
+
+        session.add( new DefaultEntry( schemaManager, userDn,
+            "objectClass: top",
+            "objectClass: person",
+            "objectClass: organizationalPerson",
+            "objectClass: inetOrgPerson",
+            "uid: ppolicyUser",
+            "cn: ppolicyUser",
+            "sn: ppolicyUser",
+            "userPassword: secret" ) );
+
+        store = new FailingStore( getService() );
+    }
+
+
+    @After
+    public void deleteUser() throws Exception
+    {
+        if ( session.exists( userDn ) )
+        {
+            session.delete( userDn );
+        }
+    }
+
+
+    private List<Modification> replace( AttributeType attributeType, String value ) throws Exception
+    {
+        return Collections.<Modification> singletonList( new DefaultModification(
+            ModificationOperation.REPLACE_ATTRIBUTE, new DefaultAttribute( attributeType, value ) ) );
+    }
+
+
+    private List<Modification> add( AttributeType attributeType, String value ) throws Exception
+    {
+        return Collections.<Modification> singletonList( new DefaultModification(
+            ModificationOperation.ADD_ATTRIBUTE, new DefaultAttribute( attributeType, value ) ) );
+    }
+
+
+    private Entry lookup() throws Exception
+    {
+        return session.lookup( userDn, "*", "+" );
+    }
+
+
+    @Test
+    public void testUpdatesAreCoalesced() throws Exception
+    {
+        store.update( userDn, replace( pwdFailureTimeAT, FIRST_TIME ) );
+        store.update( userDn, replace( pwdFailureTimeAT, SECOND_TIME ) );
+        store.update( userDn, replace( pwdLastSuccessAT, FIRST_TIME ) );
+
+        assertEquals( 1, store.size() );
+
+        // Nothing is written yet, but the state is visible through apply()
+        assertNull( lookup().get( pwdFailureTimeAT ) );
+
+        Entry applied = store.apply( lookup() );
+        assertTrue( applied.contains( pwdFailureTimeAT, SECOND_TIME ) );
+        assertEquals( 1, applied.get( pwdFailureTimeAT ).size() );
+        assertTrue( applied.contains( pwdLastSuccessAT, FIRST_TIME ) );
+
+        // A single write
+        store.flush( userDn );
+
+        assertEquals( 1, store.nbWrites );
+        assertEquals( 0, store.size() );
+
+        Entry entry = lookup();
+        assertTrue( entry.contains( pwdFailureTimeAT, SECOND_TIME ) );
+        assertTrue( entry.contains( pwdLastSuccessAT, FIRST_TIME ) );
+
+        // No pending state : the entry is returned as is
+        assertSame( entry, store.apply( entry ) );
+    }
+
+
+    @Test
+    public void testRemovedAttribute() throws Exception
+    {
+        store.update( userDn, replace( pwdAccountLockedTimeAT, FIRST_TIME ) );
+        store.flush();
+
+        assertTrue( lookup().containsAttribute( pwdAccountLockedTimeAT ) );
+
+        store.update( userDn, Collections.<Modification> singletonList( new DefaultModification(
+            ModificationOperation.REMOVE_ATTRIBUTE, new DefaultAttribute( pwdAccountLockedTimeAT ) ) ) );
+
+        assertFalse( store.apply( lookup() ).containsAttribute( pwdAccountLockedTimeAT ) );
+
+        store.flush();
+
+        assertFalse( lookup().containsAttribute( pwdAccountLockedTimeAT ) );
+    }
+
+
+    @Test
+    public void testFailedWriteIsKept() throws Exception
+    {
+        store.update( userDn, replace( pwdFailureTimeAT, FIRST_TIME ) );
+        store.update( userDn, replace( pwdLastSuccessAT, FIRST_TIME ) );
+        store.failing = true;
+
+        try
+        {
+            store.flush( userDn );
+            fail();
+        }
+        catch ( LdapOtherException loe )
+        {
+            // Expected
+        }
+
+        // The state is still pending, and still visible
+        assertEquals( 1, store.size() );
+        assertTrue( store.apply( lookup() ).contains( pwdFailureTimeAT, FIRST_TIME ) );
+
+        // A newer value recorded before the next flush wins
+        store.update( userDn, replace( pwdFailureTimeAT, SECOND_TIME ) );
+
+        try
+        {
+            store.flush();
+            fail();
+        }
+        catch ( LdapOtherException loe )
+        {
+            // Expected
+        }
+
+        assertEquals( 1, store.size() );
+
+        store.failing = false;
+        store.flush();
+
+        assertEquals( 0, store.size() );
+
+        Entry entry = lookup();
+        assertTrue( entry.contains( pwdFailureTimeAT, SECOND_TIME ) );
+        assertEquals( 1, entry.get( pwdFailureTimeAT ).size() );
+        assertTrue( entry.contains( pwdLastSuccessAT, FIRST_TIME ) );
+    }
+
+
+    @Test
+    public void testDeletedEntry() throws Exception
+    {
+        store.update( userDn, replace( pwdFailureTimeAT, FIRST_TIME ) );
+        session.delete( userDn );
+
+        // The state of a deleted entry is dropped
+        store.flush();
+
+        assertEquals( 0, store.size() );
+    }
+
+
+    @Test
+    public void testDiscard() throws Exception
+    {
+        store.update( userDn, replace( pwdFailureTimeAT, FIRST_TIME ) );
+        store.discard( userDn );
+
+        assertEquals( 0, store.size() );
+
+        store.flush( userDn );
+
+        assertEquals( 0, store.nbWrites );
+    }
+
+
+    @Test
+    public void testAddedValuesAreAccumulated() throws Exception
+    {
+        store.update( userDn, add( pwdGraceUseTimeAT, FIRST_TIME ) );
+        store.update( userDn, add( pwdGraceUseTimeAT, SECOND_TIME ) );
+
+        Entry applied = store.apply( lookup() );
+        assertEquals( 2, applied.get( pwdGraceUseTimeAT ).size() );
+
+        store.flush();
+
+        // The values are added to the values already written
+        store.update( userDn, add( pwdGraceUseTimeAT, THIRD_TIME ) );
+
+        applied = store.apply( lookup() );
+        assertEquals( 3, applied.get( pwdGraceUseTimeAT ).size() );
+
+        store.flush();
+
+        Entry entry = lookup();
+        assertTrue( entry.contains( pwdGraceUseTimeAT, FIRST_TIME, SECOND_TIME, THIRD_TIME ) );
+
+        // A replaced attribute loses the values added before
+        store.update( userDn, add( pwdGraceUseTimeAT, SECOND_TIME ) );
+        store.update( userDn, replace( pwdGraceUseTimeAT, FIRST_TIME ) );
+        store.flush();
+
+        entry = lookup();
+        assertTrue( entry.contains( pwdGraceUseTimeAT, FIRST_TIME ) );
+        assertEquals( 1, entry.get( pwdGraceUseTimeAT ).size() );
+    }
+
+
+    @Test
+    public void testOverlayOnRead() throws Exception
+    {
+        store.update( userDn, replace( pwdFailureTimeAT, FIRST_TIME ) );
+
+        // The operational attributes are requested
+        Entry entry = lookup();
+        store.overlay( new LookupOperationContext( session, userDn, "*", "+" ), entry );
+
+        assertTrue( entry.contains( pwdFailureTimeAT, FIRST_TIME ) );
+
+        // They are not
+        entry = session.lookup( userDn, "*" );
+        store.overlay( new LookupOperationContext( session, userDn, "*" ), entry );
+
+        assertNull( entry.get( pwdFailureTimeAT ) );
+
+        // Nothing has been written by the reads
+        assertEquals( 0, store.nbWrites );
+        assertEquals( 1, store.size() );
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.authz;
+
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.entry.CopyOnWriteServerEntry;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the update of the GroupCache when a group is modified.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "GroupCacheIT")
+public class GroupCacheIT extends AbstractLdapTestUnit
+{
+    private static final int NB_MEMBERS = 100;
+
+    private SchemaManager schemaManager;
+
+    private GroupCache groupCache;
+
+    private Dn groupDn;
+
+    private Entry group;
+
+
+    @Before
+    public void createCache() throws Exception
+    {
+        schemaManager = getService().getSchemaManager();
+        groupCache = new GroupCache( getService() );
+        groupDn = new Dn( schemaManager, "cn=large,ou=groups,ou=system" );
+
+        group = new DefaultEntry( schemaManager, groupDn,
+            "objectClass: top",
+            "objectClass: groupOfUniqueNames",
+            "cn: large" );
+
+        for ( int i = 0; i < NB_MEMBERS; i++ )
+        {
+            group.add( "uniqueMember", member( i ) );
+        }
+
+        groupCache.groupAdded( groupDn, group );
+    }
+
+
+    private String member( int i )
+    {
+        return "uid=member" + i + ",ou=users,ou=system";
+    }
+
+
+    private List<Modification> mods( ModificationOperation operation, String attributeId, String... values )
+        throws Exception
+    {
+        List<Modification> mods = new ArrayList<Modification>();
+        mods.add( new DefaultModification( operation, new DefaultAttribute(
+            schemaManager.lookupAttributeTypeRegistry( attributeId ), values ) ) );
+
+        return mods;
+    }
+
+
+    @Test
+    public void testMemberAdded() throws Exception
+    {
+        assertFalse( groupCache.getGroups( member( NB_MEMBERS ) ).contains( groupDn ) );
+
+        groupCache.groupModified( groupDn, mods( ModificationOperation.ADD_ATTRIBUTE, "uniqueMember",
+            member( NB_MEMBERS ) ), group, schemaManager );
+
+        assertTrue( groupCache.getGroups( member( NB_MEMBERS ) ).contains( groupDn ) );
+        assertTrue( groupCache.getGroups( member( 0 ) ).contains( groupDn ) );
+    }
+
+
+    @Test
+    public void testMemberRemoved() throws Exception
+    {
+        assertTrue( groupCache.getGroups( member( 10 ) ).contains( groupDn ) );
+
+        // The member is normalized before being removed
+        groupCache.groupModified( groupDn, mods( ModificationOperation.REMOVE_ATTRIBUTE, "uniqueMember",
+            "UID=Member10, OU=users,ou=system" ), group, schemaManager );
+
+        assertFalse( groupCache.getGroups( member( 10 ) ).contains( groupDn ) );
+        assertTrue( groupCache.getGroups( member( 11 ) ).contains( groupDn ) );
+    }
+
+
+    @Test
+    public void testMembersReplaced() throws Exception
+    {
+        groupCache.groupModified( groupDn, mods( ModificationOperation.REPLACE_ATTRIBUTE, "uniqueMember",
+            member( NB_MEMBERS ) ), group, schemaManager );
+
+        assertTrue( groupCache.getGroups( member( NB_MEMBERS ) ).contains( groupDn ) );
+        assertFalse( groupCache.getGroups( member( 0 ) ).contains( groupDn ) );
+    }
+
+
+    @Test
+    public void testOtherAttributeModified() throws Exception
+    {
+        groupCache.groupModified( groupDn, mods( ModificationOperation.REPLACE_ATTRIBUTE, "description",
+            member( NB_MEMBERS ) ), group, schemaManager );
+
+        assertFalse( groupCache.getGroups( member( NB_MEMBERS ) ).contains( groupDn ) );
+        assertTrue( groupCache.getGroups( member( 0 ) ).contains( groupDn ) );
+    }
+
+
+    @Test
+    public void testCopyOnWriteEntry() throws Exception
+    {
+        // The group entry given by the partition is a view on the cached entry
+        Entry view = new CopyOnWriteServerEntry( group );
+
+        groupCache.groupModified( groupDn, mods( ModificationOperation.ADD_ATTRIBUTE, "uniqueMember",
+            member( NB_MEMBERS ) ), view, schemaManager );
+
+        assertTrue( groupCache.getGroups( member( NB_MEMBERS ) ).contains( groupDn ) );
+    }
+
+
+    @Test
+    public void testNotAGroup() throws Exception
+    {
+        Entry person = new DefaultEntry( schemaManager, groupDn,
+            "objectClass: top",
+            "objectClass: person",
+            "cn: large",
+            "sn: large" );
+
+        groupCache.groupModified( groupDn, mods( ModificationOperation.ADD_ATTRIBUTE, "description", "test" ),
+            person, schemaManager );
+
+        assertTrue( groupCache.getGroups( member( 0 ) ).contains( groupDn ) );
+    }
+}
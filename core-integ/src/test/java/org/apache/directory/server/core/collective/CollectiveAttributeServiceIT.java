@@ -27,6 +27,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.directory.api.ldap.model.cursor.EntryCursor;
 import org.apache.directory.api.ldap.model.entry.Attribute;
@@ -40,11 +41,15 @@ import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapSchemaViolationException;
 import org.apache.directory.api.ldap.model.ldif.LdapLdifException;
 import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.ldap.client.api.LdapConnection;
 import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.InterceptorEnum;
 import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
 import org.apache.directory.server.core.integ.FrameworkRunner;
 import org.apache.directory.server.core.integ.IntegrationUtils;
+import org.apache.directory.server.core.subtree.SubentryInterceptor;
+import org.apache.directory.server.core.subtree.SubentryUpdater;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -565,4 +570,72 @@ public class CollectiveAttributeServiceIT extends AbstractLdapTestUnit
 
         connection.close();
     }
+
+
+    /**
+     * While the references to a subentry are being added in the background, the
+     * collective attributes are computed from its subtreeSpecification
+     */
+    @Test
+    public void testLookupWhileUpdatePending() throws Exception
+    {
+        LdapConnection connection = IntegrationUtils.getAdminConnection( getService() );
+        addAdministrativeRole( connection, "collectiveAttributeSpecificArea" );
+
+        SubentryInterceptor subentryInterceptor = ( SubentryInterceptor ) getService().getInterceptor(
+            InterceptorEnum.SUBENTRY_INTERCEPTOR.getName() );
+        SubentryUpdater updater = subentryInterceptor.getUpdater();
+        int synchronousUpdateLimit = subentryInterceptor.getSynchronousUpdateLimit();
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        // Block the updater thread, the subentry update will be queued behind
+        updater.submit( new Dn( "cn=blocker,ou=system" ), new SubentryUpdater.Update()
+        {
+            public void apply() throws LdapException
+            {
+                try
+                {
+                    release.await();
+                }
+                catch ( InterruptedException ie )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } );
+
+        try
+        {
+            subentryInterceptor.setSynchronousUpdateLimit( 0 );
+            connection.add( getTestSubentry( "cn=testsubentry,ou=system" ) );
+
+            assertTrue( updater.isPending( new Dn( getService().getSchemaManager(), "cn=testsubentry,ou=system" ) ) );
+
+            // The entry does not reference the subentry yet, but gets its collective attribute
+            Entry entry = connection.lookup( "ou=services,ou=configuration,ou=system", "*", "+" );
+            assertNull( entry.get( "collectiveAttributeSubentries" ) );
+            assertNotNull( entry.get( "c-ou" ) );
+            assertEquals( "configuration", entry.get( "c-ou" ).getString() );
+
+            // An entry not selected by the subentry
+            assertNull( connection.lookup( "ou=users,ou=system" ).get( "c-ou" ) );
+        }
+        finally
+        {
+            subentryInterceptor.setSynchronousUpdateLimit( synchronousUpdateLimit );
+            release.countDown();
+        }
+
+        for ( int i = 0; ( i < 1000 ) && ( updater.getPendingUpdates() > 0 ); i++ )
+        {
+            Thread.sleep( 10L );
+        }
+
+        assertEquals( 0, updater.getPendingUpdates() );
+
+        // The references have been added
+        Entry entry = connection.lookup( "ou=services,ou=configuration,ou=system", "*", "+" );
+        assertNotNull( entry.get( "collectiveAttributeSubentries" ) );
+        assertEquals( "configuration", entry.get( "c-ou" ).getString() );
+    }
 }
@@ -0,0 +1,288 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.operations.modify;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapAttributeInUseException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.exception.LdapNoSuchAttributeException;
+import org.apache.directory.api.ldap.model.exception.LdapSchemaViolationException;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Test the modification of attributes having enough values for the SchemaInterceptor
+ * to track the added and removed values instead of copying the attribute.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "ModifyLargeAttributeIT")
+public class ModifyLargeAttributeIT extends AbstractLdapTestUnit
+{
+    /** More values than the SchemaInterceptor's large attribute threshold */
+    private static final int NB_VALUES = 100;
+
+    private CoreSession session;
+
+    private SchemaManager schemaManager;
+
+    private Dn groupDn;
+
+    private AttributeType uniqueMemberAT;
+
+    private AttributeType descriptionAT;
+
+    private AttributeType cnAT;
+
+
+    @Before
+    public void createGroup() throws Exception
+    {
+        session = getService().getAdminSession();
+        schemaManager = getService().getSchemaManager();
+        groupDn = new Dn( schemaManager, "cn=large,ou=system" );
+        uniqueMemberAT = schemaManager.lookupAttributeTypeRegistry( "uniqueMember" );
+        descriptionAT = schemaManager.lookupAttributeTypeRegistry( "description" );
+        cnAT = schemaManager.lookupAttributeTypeRegistry( "cn" );
+
+        Entry group = new DefaultEntry( schemaManager, groupDn,
+            "objectClass: top",
+            "objectClass: groupOfUniqueNames",
+            "cn: large" );
+
+        for ( int i = 0; i < NB_VALUES; i++ )
+        {
+            group.add( uniqueMemberAT, member( i ) );
+            group.add( descriptionAT, "description " + i );
+            group.add( cnAT, "large" + i );
+        }
+
+        session.add( group );
+    }
+
+
+    @After
+    public void deleteGroup() throws Exception
+    {
+        if ( session.exists( groupDn ) )
+        {
+            session.delete( groupDn );
+        }
+    }
+
+
+    private String member( int i )
+    {
+        return "cn=member" + i + ",ou=people,o=sevenSeas";
+    }
+
+
+    private Modification mod( ModificationOperation operation, AttributeType attributeType, String... values )
+        throws Exception
+    {
+        return new DefaultModification( operation, new DefaultAttribute( attributeType, values ) );
+    }
+
+
+    @Test
+    public void testAddValue() throws Exception
+    {
+        session.modify( groupDn, mod( ModificationOperation.ADD_ATTRIBUTE, uniqueMemberAT, member( NB_VALUES ) ) );
+
+        Entry entry = session.lookup( groupDn );
+        assertEquals( NB_VALUES + 1, entry.get( uniqueMemberAT ).size() );
+        assertTrue( entry.contains( uniqueMemberAT, member( NB_VALUES ) ) );
+    }
+
+
+    @Test
+    public void testAddExistingValue() throws Exception
+    {
+        try
+        {
+            // The value is compared using its normalized form
+            session.modify( groupDn, mod( ModificationOperation.ADD_ATTRIBUTE, uniqueMemberAT,
+                "CN=Member5, OU=People,o=sevenSeas" ) );
+            fail();
+        }
+        catch ( LdapAttributeInUseException laiue )
+        {
+            // Expected
+        }
+
+        assertEquals( NB_VALUES, session.lookup( groupDn ).get( uniqueMemberAT ).size() );
+    }
+
+
+    @Test
+    public void testAddSameValueTwice() throws Exception
+    {
+        try
+        {
+            session.modify( groupDn,
+                mod( ModificationOperation.ADD_ATTRIBUTE, uniqueMemberAT, member( NB_VALUES ) ),
+                mod( ModificationOperation.ADD_ATTRIBUTE, uniqueMemberAT, member( NB_VALUES ) ) );
+            fail();
+        }
+        catch ( LdapAttributeInUseException laiue )
+        {
+            // Expected
+        }
+
+        assertFalse( session.lookup( groupDn ).contains( uniqueMemberAT, member( NB_VALUES ) ) );
+    }
+
+
+    @Test
+    public void testAddInvalidValue() throws Exception
+    {
+        try
+        {
+            session.modify( groupDn, mod( ModificationOperation.ADD_ATTRIBUTE, uniqueMemberAT, "not a dn" ) );
+            fail();
+        }
+        catch ( LdapInvalidAttributeValueException liave )
+        {
+            assertEquals( ResultCodeEnum.INVALID_ATTRIBUTE_SYNTAX, liave.getResultCode() );
+        }
+    }
+
+
+    @Test
+    public void testRemoveMissingValue() throws Exception
+    {
+        try
+        {
+            session.modify( groupDn,
+                mod( ModificationOperation.REMOVE_ATTRIBUTE, uniqueMemberAT, member( NB_VALUES ) ) );
+            fail();
+        }
+        catch ( LdapNoSuchAttributeException lnsae )
+        {
+            // Expected
+        }
+
+        assertEquals( NB_VALUES, session.lookup( groupDn ).get( uniqueMemberAT ).size() );
+    }
+
+
+    @Test
+    public void testRemoveAndAddBackValue() throws Exception
+    {
+        session.modify( groupDn,
+            mod( ModificationOperation.REMOVE_ATTRIBUTE, uniqueMemberAT, member( 0 ) ),
+            mod( ModificationOperation.ADD_ATTRIBUTE, uniqueMemberAT, member( 0 ) ) );
+
+        assertEquals( NB_VALUES, session.lookup( groupDn ).get( uniqueMemberAT ).size() );
+
+        // A value added in the same request can be removed, and only once
+        session.modify( groupDn,
+            mod( ModificationOperation.ADD_ATTRIBUTE, uniqueMemberAT, member( NB_VALUES ) ),
+            mod( ModificationOperation.REMOVE_ATTRIBUTE, uniqueMemberAT, member( NB_VALUES ) ) );
+
+        assertFalse( session.lookup( groupDn ).contains( uniqueMemberAT, member( NB_VALUES ) ) );
+
+        try
+        {
+            session.modify( groupDn,
+                mod( ModificationOperation.REMOVE_ATTRIBUTE, uniqueMemberAT, member( 1 ) ),
+                mod( ModificationOperation.REMOVE_ATTRIBUTE, uniqueMemberAT, member( 1 ) ) );
+            fail();
+        }
+        catch ( LdapNoSuchAttributeException lnsae )
+        {
+            // Expected
+        }
+    }
+
+
+    @Test
+    public void testRemoveAllValues() throws Exception
+    {
+        String[] descriptions = new String[NB_VALUES];
+
+        for ( int i = 0; i < NB_VALUES; i++ )
+        {
+            descriptions[i] = "description " + i;
+        }
+
+        // Removing all the values one by one removes the attribute
+        session.modify( groupDn, mod( ModificationOperation.REMOVE_ATTRIBUTE, descriptionAT, descriptions ) );
+
+        assertNull( session.lookup( groupDn ).get( descriptionAT ) );
+    }
+
+
+    @Test
+    public void testReplaceAfterAdd() throws Exception
+    {
+        session.modify( groupDn,
+            mod( ModificationOperation.ADD_ATTRIBUTE, descriptionAT, "added" ),
+            mod( ModificationOperation.REPLACE_ATTRIBUTE, descriptionAT, "replaced" ) );
+
+        Entry entry = session.lookup( groupDn );
+        assertEquals( 1, entry.get( descriptionAT ).size() );
+        assertTrue( entry.contains( descriptionAT, "replaced" ) );
+    }
+
+
+    @Test
+    public void testRemoveRdnValue() throws Exception
+    {
+        // The Rdn attribute is large too, but its values must still be checked
+        try
+        {
+            session.modify( groupDn, mod( ModificationOperation.REMOVE_ATTRIBUTE, cnAT, "large" ) );
+            fail();
+        }
+        catch ( LdapSchemaViolationException lsve )
+        {
+            assertEquals( ResultCodeEnum.NOT_ALLOWED_ON_RDN, lsve.getResultCode() );
+        }
+
+        session.modify( groupDn, mod( ModificationOperation.REMOVE_ATTRIBUTE, cnAT, "large0" ) );
+
+        assertEquals( NB_VALUES, session.lookup( groupDn ).get( cnAT ).size() );
+    }
+}
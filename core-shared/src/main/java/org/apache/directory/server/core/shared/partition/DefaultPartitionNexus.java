@@ -809,6 +809,11 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
             partition.initialize();
         }
 
+        if ( partition instanceof AbstractPartition )
+        {
+            ( ( AbstractPartition ) partition ).getPartitionMetrics().setEnabled( directoryService.isMetricsEnabled() );
+        }
+
         synchronized ( partitionLookupTree )
         {
             Dn partitionSuffix = partition.getSuffixDn();
@@ -68,7 +68,6 @@ import org.apache.directory.api.ldap.util.tree.DnNode;
 import org.apache.directory.api.util.DateUtils;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.api.util.exception.NotImplementedException;
-import org.apache.directory.server.constants.ApacheSchemaConstants;
 import org.apache.directory.server.constants.ServerDNConstants;
 import org.apache.directory.server.core.admin.AdministrativePointInterceptor;
 import org.apache.directory.server.core.api.AttributeTypeProvider;
@@ -90,7 +89,6 @@ import org.apache.directory.server.core.api.administrative.TriggerExecutionAdmin
 import org.apache.directory.server.core.api.changelog.ChangeLog;
 import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
 import org.apache.directory.server.core.api.changelog.Tag;
-import org.apache.directory.server.core.api.changelog.TaggableSearchableChangeLogStore;
 import org.apache.directory.server.core.api.event.EventService;
 import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
 import org.apache.directory.server.core.api.interceptor.Interceptor;
@@ -100,6 +98,8 @@ import org.apache.directory.server.core.api.interceptor.context.HasEntryOperatio
 import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.journal.Journal;
+import org.apache.directory.server.core.api.monitor.OperationMetrics;
+import org.apache.directory.server.core.api.partition.AbstractPartition;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.schema.SchemaPartition;
@@ -116,6 +116,8 @@ import org.apache.directory.server.core.event.EventInterceptor;
 import org.apache.directory.server.core.exception.ExceptionInterceptor;
 import org.apache.directory.server.core.journal.DefaultJournal;
 import org.apache.directory.server.core.journal.JournalInterceptor;
+import org.apache.directory.server.core.monitor.DirectoryServiceMonitor;
+import org.apache.directory.server.core.monitor.MonitorPartition;
 import org.apache.directory.server.core.normalization.NormalizationInterceptor;
 import org.apache.directory.server.core.operational.OperationalAttributeInterceptor;
 import org.apache.directory.server.core.referral.ReferralInterceptor;
@@ -170,6 +172,18 @@ public class DefaultDirectoryService implements DirectoryService
      */
     private OperationManager operationManager = new DefaultOperationManager( this );
 
+    /** The latencies of the operations in each interceptor */
+    private OperationMetrics operationMetrics = new OperationMetrics();
+
+    /** Tells if the metrics are gathered and exposed. Off by default */
+    private boolean metricsEnabled = false;
+
+    /** The JMX view of the metrics */
+    private DirectoryServiceMonitor monitor;
+
+    /** The partition exposing the metrics under ou=monitor */
+    private MonitorPartition monitorPartition;
+
     /** the distinguished name of the administrative user */
     private Dn adminDn;
 
@@ -1210,6 +1224,42 @@ public class DefaultDirectoryService implements DirectoryService
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    public OperationMetrics getOperationMetrics()
+    {
+        return operationMetrics;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isMetricsEnabled()
+    {
+        return metricsEnabled;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setMetricsEnabled( boolean metricsEnabled )
+    {
+        this.metricsEnabled = metricsEnabled;
+        operationMetrics.setEnabled( metricsEnabled );
+
+        for ( Partition partition : partitions )
+        {
+            if ( partition instanceof AbstractPartition )
+            {
+                ( ( AbstractPartition ) partition ).getPartitionMetrics().setEnabled( metricsEnabled );
+            }
+        }
+    }
+
+
     /**
      * @throws Exception if the LDAP server cannot be started
      */
@@ -1307,6 +1357,23 @@ public class DefaultDirectoryService implements DirectoryService
         }
 
         
+        // --------------------------------------------------------------------
+        // Stop exposing the metrics
+        // --------------------------------------------------------------------
+        if ( monitor != null )
+        {
+            LOG.debug( "--- Unregistering the monitor" );
+            monitor.unregister();
+            monitor = null;
+        }
+
+        if ( monitorPartition != null )
+        {
+            // The partition is created again on the next startup
+            partitions.remove( monitorPartition );
+            monitorPartition = null;
+        }
+
         // --------------------------------------------------------------------
         // Shutdown the partition
         // --------------------------------------------------------------------
@@ -1835,13 +1902,6 @@ public class DefaultDirectoryService implements DirectoryService
         if ( changeLog.isEnabled() )
         {
             changeLog.init( this );
-
-            if ( changeLog.isExposed() && changeLog.isTagSearchSupported() )
-            {
-                String clSuffix = ( ( TaggableSearchableChangeLogStore ) changeLog.getChangeLogStore() ).getPartition()
-                    .getSuffixDn().getName();
-                partitionNexus.getRootDse( null ).add( ApacheSchemaConstants.CHANGELOG_CONTEXT_AT, clSuffix );
-            }
         }
 
         // --------------------------------------------------------------------
@@ -1852,6 +1912,20 @@ public class DefaultDirectoryService implements DirectoryService
             journal.init( this );
         }
 
+        // --------------------------------------------------------------------
+        // Expose the metrics under ou=monitor and through JMX if enabled
+        // --------------------------------------------------------------------
+        if ( metricsEnabled )
+        {
+            monitorPartition = new MonitorPartition( this );
+            monitorPartition.setSchemaManager( schemaManager );
+            monitorPartition.setSuffixDn( getDnFactory().create( MonitorPartition.MONITOR_DN ) );
+            addPartition( monitorPartition );
+
+            monitor = new DirectoryServiceMonitor( this );
+            monitor.register();
+        }
+
         if ( LOG.isDebugEnabled() )
         {
             LOG.debug( "<--- DefaultDirectoryService initialized" );
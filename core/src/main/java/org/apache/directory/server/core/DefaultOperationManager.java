@@ -44,6 +44,7 @@ import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.url.LdapUrl;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.OperationManager;
 import org.apache.directory.server.core.api.ReferralManager;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
@@ -62,6 +63,7 @@ import org.apache.directory.server.core.api.interceptor.context.OperationContext
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.monitor.OperationMetrics;
 import org.apache.directory.server.i18n.I18n;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -389,15 +391,19 @@ public class DefaultOperationManager implements OperationManager
 
         // Call the Add method
         Interceptor head = directoryService.getInterceptor( addContext.getNextInterceptor() );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
 
         lockWrite();
 
+        long chainStart = metrics.begin();
+
         try
         {
             head.add( addContext );
         }
         finally
         {
+            metrics.end( chainStart, head.getName(), OperationEnum.ADD );
             unlockWrite();
         }
 
@@ -434,15 +440,19 @@ public class DefaultOperationManager implements OperationManager
 
         // Call the Delete method
         Interceptor head = directoryService.getInterceptor( bindContext.getNextInterceptor() );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
 
         lockRead();
 
+        long chainStart = metrics.begin();
+
         try
         {
             head.bind( bindContext );
         }
         finally
         {
+            metrics.end( chainStart, head.getName(), OperationEnum.BIND );
             unlockRead();
         }
 
@@ -532,17 +542,21 @@ public class DefaultOperationManager implements OperationManager
 
         // Call the Compare method
         Interceptor head = directoryService.getInterceptor( compareContext.getNextInterceptor() );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
 
         boolean result = false;
 
         lockRead();
 
+        long chainStart = metrics.begin();
+
         try
         {
             result = head.compare( compareContext );
         }
         finally
         {
+            metrics.end( chainStart, head.getName(), OperationEnum.COMPARE );
             unlockRead();
         }
 
@@ -640,8 +654,18 @@ public class DefaultOperationManager implements OperationManager
 
             // Call the Delete method
             Interceptor head = directoryService.getInterceptor( deleteContext.getNextInterceptor() );
+            OperationMetrics metrics = directoryService.getOperationMetrics();
+
+            long chainStart = metrics.begin();
 
-            head.delete( deleteContext );
+            try
+            {
+                head.delete( deleteContext );
+            }
+            finally
+            {
+                metrics.end( chainStart, head.getName(), OperationEnum.DELETE );
+            }
         }
         finally
         {
@@ -680,8 +704,19 @@ public class DefaultOperationManager implements OperationManager
         ensureStarted();
 
         Interceptor head = directoryService.getInterceptor( getRootDseContext.getNextInterceptor() );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
 
-        Entry root = head.getRootDse( getRootDseContext );
+        Entry root = null;
+        long chainStart = metrics.begin();
+
+        try
+        {
+            root = head.getRootDse( getRootDseContext );
+        }
+        finally
+        {
+            metrics.end( chainStart, head.getName(), OperationEnum.GET_ROOT_DSE );
+        }
 
         if ( IS_DEBUG )
         {
@@ -717,17 +752,21 @@ public class DefaultOperationManager implements OperationManager
         ensureStarted();
 
         Interceptor head = directoryService.getInterceptor( hasEntryContext.getNextInterceptor() );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
 
         boolean result = false;
 
         lockRead();
 
+        long chainStart = metrics.begin();
+
         try
         {
             result = head.hasEntry( hasEntryContext );
         }
         finally
         {
+            metrics.end( chainStart, head.getName(), OperationEnum.HAS_ENTRY );
             unlockRead();
         }
 
@@ -765,17 +804,21 @@ public class DefaultOperationManager implements OperationManager
         ensureStarted();
 
         Interceptor head = directoryService.getInterceptor( lookupContext.getNextInterceptor() );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
 
         Entry entry = null;
 
         lockRead();
 
+        long chainStart = metrics.begin();
+
         try
         {
             entry = head.lookup( lookupContext );
         }
         finally
         {
+            metrics.end( chainStart, head.getName(), OperationEnum.LOOKUP );
             unlockRead();
         }
 
@@ -882,8 +925,18 @@ public class DefaultOperationManager implements OperationManager
 
             // Call the Modify method
             Interceptor head = directoryService.getInterceptor( modifyContext.getNextInterceptor() );
+            OperationMetrics metrics = directoryService.getOperationMetrics();
+
+            long chainStart = metrics.begin();
 
-            head.modify( modifyContext );
+            try
+            {
+                head.modify( modifyContext );
+            }
+            finally
+            {
+                metrics.end( chainStart, head.getName(), OperationEnum.MODIFY );
+            }
         }
         finally
         {
@@ -1001,8 +1054,18 @@ public class DefaultOperationManager implements OperationManager
 
             // Call the Move method
             Interceptor head = directoryService.getInterceptor( moveContext.getNextInterceptor() );
+            OperationMetrics metrics = directoryService.getOperationMetrics();
+
+            long chainStart = metrics.begin();
 
-            head.move( moveContext );
+            try
+            {
+                head.move( moveContext );
+            }
+            finally
+            {
+                metrics.end( chainStart, head.getName(), OperationEnum.MOVE );
+            }
         }
         finally
         {
@@ -1120,8 +1183,18 @@ public class DefaultOperationManager implements OperationManager
 
             // Call the MoveAndRename method
             Interceptor head = directoryService.getInterceptor( moveAndRenameContext.getNextInterceptor() );
+            OperationMetrics metrics = directoryService.getOperationMetrics();
+
+            long chainStart = metrics.begin();
 
-            head.moveAndRename( moveAndRenameContext );
+            try
+            {
+                head.moveAndRename( moveAndRenameContext );
+            }
+            finally
+            {
+                metrics.end( chainStart, head.getName(), OperationEnum.MOVE_AND_RENAME );
+            }
         }
         finally
         {
@@ -1235,8 +1308,18 @@ public class DefaultOperationManager implements OperationManager
 
             // Call the Rename method
             Interceptor head = directoryService.getInterceptor( renameContext.getNextInterceptor() );
+            OperationMetrics metrics = directoryService.getOperationMetrics();
+
+            long chainStart = metrics.begin();
 
-            head.rename( renameContext );
+            try
+            {
+                head.rename( renameContext );
+            }
+            finally
+            {
+                metrics.end( chainStart, head.getName(), OperationEnum.RENAME );
+            }
         }
         finally
         {
@@ -1332,17 +1415,21 @@ public class DefaultOperationManager implements OperationManager
 
         // Call the Search method
         Interceptor head = directoryService.getInterceptor( searchContext.getNextInterceptor() );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
 
         EntryFilteringCursor cursor = null;
 
         lockRead();
 
+        long chainStart = metrics.begin();
+
         try
         {
             cursor = head.search( searchContext );
         }
         finally
         {
+            metrics.end( chainStart, head.getName(), OperationEnum.SEARCH );
             unlockRead();
         }
 
@@ -1381,8 +1468,18 @@ public class DefaultOperationManager implements OperationManager
 
         // Call the Unbind method
         Interceptor head = directoryService.getInterceptor( unbindContext.getNextInterceptor() );
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+
+        long chainStart = metrics.begin();
 
-        head.unbind( unbindContext );
+        try
+        {
+            head.unbind( unbindContext );
+        }
+        finally
+        {
+            metrics.end( chainStart, head.getName(), OperationEnum.UNBIND );
+        }
 
         if ( IS_DEBUG )
         {
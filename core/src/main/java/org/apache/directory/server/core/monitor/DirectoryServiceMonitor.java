@@ -0,0 +1,346 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.monitor;
+
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.OperationEnum;
+import org.apache.directory.server.core.api.monitor.LatencyHistogram;
+import org.apache.directory.server.core.api.monitor.OperationMetrics;
+import org.apache.directory.server.core.api.monitor.PartitionMetrics;
+import org.apache.directory.server.core.api.partition.AbstractPartition;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Exposes the DirectoryService metrics through JMX, as
+ * <code>org.apache.directory.server:type=DirectoryService,instance=&lt;instance id&gt;,name=Monitor</code>.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DirectoryServiceMonitor implements DirectoryServiceMonitorMXBean
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( DirectoryServiceMonitor.class );
+
+    /** The DirectoryService instance */
+    private final DirectoryService directoryService;
+
+    /** The name this bean has been registered with */
+    private ObjectName objectName;
+
+
+    /**
+     * Creates a new instance of DirectoryServiceMonitor.
+     *
+     * @param directoryService The monitored DirectoryService
+     */
+    public DirectoryServiceMonitor( DirectoryService directoryService )
+    {
+        this.directoryService = directoryService;
+    }
+
+
+    /**
+     * Registers this bean in the platform MBean server. A failure is logged, but
+     * does not prevent the server from starting.
+     */
+    public void register()
+    {
+        try
+        {
+            String instance = directoryService.getInstanceId() == null ? "default" : directoryService
+                .getInstanceId();
+            ObjectName name = new ObjectName( "org.apache.directory.server:type=DirectoryService,instance="
+                + ObjectName.quote( instance ) + ",name=Monitor" );
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+            if ( server.isRegistered( name ) )
+            {
+                server.unregisterMBean( name );
+            }
+
+            server.registerMBean( this, name );
+            objectName = name;
+        }
+        catch ( Exception e )
+        {
+            LOG.warn( "Cannot register the DirectoryService monitor MBean", e );
+        }
+    }
+
+
+    /**
+     * Removes this bean from the platform MBean server
+     */
+    public void unregister()
+    {
+        if ( objectName == null )
+        {
+            return;
+        }
+
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean( objectName );
+        }
+        catch ( Exception e )
+        {
+            LOG.warn( "Cannot unregister the DirectoryService monitor MBean", e );
+        }
+
+        objectName = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isEnabled()
+    {
+        return directoryService.getOperationMetrics().isEnabled();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setEnabled( boolean enabled )
+    {
+        directoryService.setMetricsEnabled( enabled );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public String[] getInterceptors()
+    {
+        return directoryService.getOperationMetrics().getInterceptorNames().toArray( new String[0] );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public String[] getLatencyReport()
+    {
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+        List<String> lines = new ArrayList<String>();
+
+        for ( String interceptor : metrics.getInterceptorNames() )
+        {
+            for ( OperationEnum operation : OperationEnum.getOperations() )
+            {
+                if ( metrics.hasHistogram( interceptor, operation ) )
+                {
+                    lines.add( interceptor + " " + operation.getMethodName() + ": "
+                        + metrics.getHistogram( interceptor, operation ) );
+                }
+            }
+
+            if ( metrics.hasCursorHistogram( interceptor ) )
+            {
+                lines.add( interceptor + " " + OperationMetrics.SEARCH_CURSOR + ": "
+                    + metrics.getCursorHistogram( interceptor ) );
+            }
+        }
+
+        return lines.toArray( new String[0] );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getCount( String interceptor, String operation )
+    {
+        LatencyHistogram histogram = getHistogram( interceptor, operation );
+
+        return histogram == null ? 0L : histogram.getCount();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public double getMeanLatency( String interceptor, String operation )
+    {
+        LatencyHistogram histogram = getHistogram( interceptor, operation );
+
+        return histogram == null ? 0d : histogram.getMean() / 1000d;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getLatencyAtPercentile( String interceptor, String operation, double percentile )
+    {
+        LatencyHistogram histogram = getHistogram( interceptor, operation );
+
+        return histogram == null ? 0L : histogram.getValueAtPercentile( percentile ) / 1000L;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getMaxLatency( String interceptor, String operation )
+    {
+        LatencyHistogram histogram = getHistogram( interceptor, operation );
+
+        return histogram == null ? 0L : histogram.getMax() / 1000L;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public String[] getPartitions()
+    {
+        List<String> ids = new ArrayList<String>();
+
+        for ( Partition partition : directoryService.getPartitions() )
+        {
+            if ( partition instanceof AbstractPartition )
+            {
+                ids.add( partition.getId() );
+            }
+        }
+
+        return ids.toArray( new String[0] );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getCursorSteps( String partitionId )
+    {
+        PartitionMetrics metrics = getPartitionMetrics( partitionId );
+
+        return metrics == null ? 0L : metrics.getCursorSteps();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getIndexLookups( String partitionId )
+    {
+        PartitionMetrics metrics = getPartitionMetrics( partitionId );
+
+        return metrics == null ? 0L : metrics.getIndexLookups();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getCacheHits( String partitionId )
+    {
+        PartitionMetrics metrics = getPartitionMetrics( partitionId );
+
+        return metrics == null ? 0L : metrics.getCacheHits();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getCacheMisses( String partitionId )
+    {
+        PartitionMetrics metrics = getPartitionMetrics( partitionId );
+
+        return metrics == null ? 0L : metrics.getCacheMisses();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void reset()
+    {
+        directoryService.getOperationMetrics().reset();
+
+        for ( Partition partition : directoryService.getPartitions() )
+        {
+            if ( partition instanceof AbstractPartition )
+            {
+                ( ( AbstractPartition ) partition ).getPartitionMetrics().reset();
+            }
+        }
+    }
+
+
+    private LatencyHistogram getHistogram( String interceptor, String operation )
+    {
+        OperationMetrics metrics = directoryService.getOperationMetrics();
+
+        if ( OperationMetrics.SEARCH_CURSOR.equalsIgnoreCase( operation ) )
+        {
+            if ( metrics.hasCursorHistogram( interceptor ) )
+            {
+                return metrics.getCursorHistogram( interceptor );
+            }
+
+            return null;
+        }
+
+        for ( OperationEnum operationEnum : OperationEnum.getOperations() )
+        {
+            if ( operationEnum.getMethodName().equalsIgnoreCase( operation ) )
+            {
+                if ( metrics.hasHistogram( interceptor, operationEnum ) )
+                {
+                    return metrics.getHistogram( interceptor, operationEnum );
+                }
+
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+
+    private PartitionMetrics getPartitionMetrics( String partitionId )
+    {
+        for ( Partition partition : directoryService.getPartitions() )
+        {
+            if ( ( partition instanceof AbstractPartition ) && partition.getId().equals( partitionId ) )
+            {
+                return ( ( AbstractPartition ) partition ).getPartitionMetrics();
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.monitor;
+
+
+/**
+ * The JMX view of the DirectoryService metrics. The latencies are the own processing
+ * time of an operation in an interceptor, in microseconds. The operations are named
+ * after the Interceptor methods (add, search, moveAndRename...).
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface DirectoryServiceMonitorMXBean
+{
+    /**
+     * @return <code>true</code> if the interceptor latencies are gathered
+     */
+    boolean isEnabled();
+
+
+    /**
+     * Enables or disables the gathering of the interceptor latencies and of the
+     * partition counters
+     *
+     * @param enabled <code>true</code> to gather the latencies
+     */
+    void setEnabled( boolean enabled );
+
+
+    /**
+     * @return The names of the interceptors for which some operations have been measured
+     */
+    String[] getInterceptors();
+
+
+    /**
+     * @return One line per interceptor and operation, with the count, mean, median,
+     * 99th and 99.9th percentiles and maximum latency. The "searchCursor" operation is the
+     * time spent fetching the entries of each search, once its cursor has been built.
+     */
+    String[] getLatencyReport();
+
+
+    /**
+     * @param interceptor The interceptor name
+     * @param operation The operation name
+     * @return The number of measured operations
+     */
+    long getCount( String interceptor, String operation );
+
+
+    /**
+     * @param interceptor The interceptor name
+     * @param operation The operation name
+     * @return The mean latency, in microseconds
+     */
+    double getMeanLatency( String interceptor, String operation );
+
+
+    /**
+     * @param interceptor The interceptor name
+     * @param operation The operation name
+     * @param percentile The percentile, between 0 and 100
+     * @return The latency at the given percentile, in microseconds
+     */
+    long getLatencyAtPercentile( String interceptor, String operation, double percentile );
+
+
+    /**
+     * @param interceptor The interceptor name
+     * @param operation The operation name
+     * @return The maximum latency, in microseconds
+     */
+    long getMaxLatency( String interceptor, String operation );
+
+
+    /**
+     * @return The IDs of the partitions exposing counters
+     */
+    String[] getPartitions();
+
+
+    /**
+     * @param partitionId The partition ID
+     * @return The number of steps done on the search cursors
+     */
+    long getCursorSteps( String partitionId );
+
+
+    /**
+     * @param partitionId The partition ID
+     * @return The number of index lookups done to evaluate the search filters
+     */
+    long getIndexLookups( String partitionId );
+
+
+    /**
+     * @param partitionId The partition ID
+     * @return The number of entries found in the entry cache
+     */
+    long getCacheHits( String partitionId );
+
+
+    /**
+     * @param partitionId The partition ID
+     * @return The number of entries read from the master table
+     */
+    long getCacheMisses( String partitionId );
+
+
+    /**
+     * Resets all the latencies and counters
+     */
+    void reset();
+}
@@ -0,0 +1,391 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.monitor;
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.ListCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.OperationEnum;
+import org.apache.directory.server.core.api.event.ExpressionEvaluator;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursorImpl;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.HasEntryOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.monitor.LatencyHistogram;
+import org.apache.directory.server.core.api.monitor.OperationMetrics;
+import org.apache.directory.server.core.api.partition.AbstractPartition;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.Subordinates;
+
+
+/**
+ * A read only partition exposing the metrics of the DirectoryService under ou=monitor.
+ * The entries are computed each time they are read :
+ *
+ * <pre>
+ * ou=monitor
+ *   ou=interceptors,ou=monitor
+ *     cn=&lt;interceptor&gt;,ou=interceptors,ou=monitor : one description value per operation,
+ *       and one for the search cursors iteration
+ *   ou=partitions,ou=monitor
+ *     cn=&lt;partition id&gt;,ou=partitions,ou=monitor : one description value per counter
+ * </pre>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MonitorPartition extends AbstractPartition
+{
+    /** The partition suffix */
+    public static final String MONITOR_DN = "ou=monitor";
+
+    /** The partition ID */
+    public static final String MONITOR_ID = "monitor";
+
+    /** The DirectoryService instance */
+    private final DirectoryService directoryService;
+
+    /** The container of the interceptor entries */
+    private Dn interceptorsDn;
+
+    /** The container of the partition entries */
+    private Dn partitionsDn;
+
+
+    /**
+     * Creates a new instance of MonitorPartition.
+     *
+     * @param directoryService The DirectoryService instance
+     */
+    public MonitorPartition( DirectoryService directoryService )
+    {
+        this.directoryService = directoryService;
+        id = MONITOR_ID;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void doInit() throws LdapException
+    {
+        if ( suffixDn == null )
+        {
+            suffixDn = new Dn( schemaManager, MONITOR_DN );
+        }
+
+        interceptorsDn = suffixDn.add( new Rdn( schemaManager, "ou=interceptors" ) );
+        partitionsDn = suffixDn.add( new Rdn( schemaManager, "ou=partitions" ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void doDestroy() throws Exception
+    {
+        // Nothing to do
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void doRepair() throws Exception
+    {
+        // Nothing to do
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void sync() throws Exception
+    {
+        // Nothing to do
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void saveContextCsn() throws Exception
+    {
+        // Nothing to do
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Entry delete( DeleteOperationContext deleteContext ) throws LdapException
+    {
+        throw readOnly();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void add( AddOperationContext addContext ) throws LdapException
+    {
+        throw readOnly();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void modify( ModifyOperationContext modifyContext ) throws LdapException
+    {
+        throw readOnly();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void rename( RenameOperationContext renameContext ) throws LdapException
+    {
+        throw readOnly();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void move( MoveOperationContext moveContext ) throws LdapException
+    {
+        throw readOnly();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void moveAndRename( MoveAndRenameOperationContext moveAndRenameContext ) throws LdapException
+    {
+        throw readOnly();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void unbind( UnbindOperationContext unbindContext ) throws LdapException
+    {
+        // Nothing to do
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Entry lookup( LookupOperationContext lookupContext ) throws LdapException
+    {
+        return buildEntries().get( lookupContext.getDn().getNormName() );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasEntry( HasEntryOperationContext hasEntryContext ) throws LdapException
+    {
+        return buildEntries().containsKey( hasEntryContext.getDn().getNormName() );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public EntryFilteringCursor search( SearchOperationContext searchContext ) throws LdapException
+    {
+        Dn baseDn = searchContext.getDn();
+        SearchScope scope = searchContext.getScope();
+        ExprNode filter = searchContext.getFilter();
+        ExpressionEvaluator evaluator = new ExpressionEvaluator( schemaManager );
+        List<Entry> selected = new ArrayList<Entry>();
+
+        for ( Entry entry : buildEntries().values() )
+        {
+            if ( inScope( entry.getDn(), baseDn, scope ) && evaluator.evaluate( filter, entry.getDn(), entry ) )
+            {
+                selected.add( entry );
+            }
+        }
+
+        return new EntryFilteringCursorImpl( new ListCursor<Entry>( selected ), searchContext, schemaManager );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Subordinates getSubordinates( Entry entry ) throws LdapException
+    {
+        Subordinates subordinates = new Subordinates();
+        Dn dn = entry.getDn();
+        long nbChildren = 0L;
+        long nbSubordinates = 0L;
+
+        for ( Entry candidate : buildEntries().values() )
+        {
+            if ( inScope( candidate.getDn(), dn, SearchScope.ONELEVEL ) )
+            {
+                nbChildren++;
+            }
+
+            if ( !candidate.getDn().equals( dn ) && inScope( candidate.getDn(), dn, SearchScope.SUBTREE ) )
+            {
+                nbSubordinates++;
+            }
+        }
+
+        subordinates.setNbChildren( nbChildren );
+        subordinates.setNbSubordinates( nbSubordinates );
+
+        return subordinates;
+    }
+
+
+    /**
+     * Tells if an entry is in the scope of a search
+     */
+    private boolean inScope( Dn dn, Dn baseDn, SearchScope scope )
+    {
+        switch ( scope )
+        {
+            case OBJECT:
+                return dn.equals( baseDn );
+
+            case ONELEVEL:
+                return !dn.isRootDse() && dn.getParent().equals( baseDn );
+
+            default:
+                return dn.equals( baseDn ) || dn.isDescendantOf( baseDn );
+        }
+    }
+
+
+    /**
+     * Builds all the monitor entries, with the current values of the metrics, by
+     * normalized Dn.
+     */
+    private Map<String, Entry> buildEntries() throws LdapException
+    {
+        Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+        addContainer( entries, suffixDn, "monitor", "The DirectoryService metrics" );
+        addContainer( entries, interceptorsDn, "interceptors",
+            "The own processing time of the operations in each interceptor" );
+
+        OperationMetrics operationMetrics = directoryService.getOperationMetrics();
+
+        for ( String interceptor : operationMetrics.getInterceptorNames() )
+        {
+            Entry entry = newProcessEntry( interceptorsDn, interceptor );
+
+            for ( OperationEnum operation : OperationEnum.getOperations() )
+            {
+                if ( operationMetrics.hasHistogram( interceptor, operation ) )
+                {
+                    LatencyHistogram histogram = operationMetrics.getHistogram( interceptor, operation );
+                    entry.add( SchemaConstants.DESCRIPTION_AT, operation.getMethodName() + ": " + histogram );
+                }
+            }
+
+            if ( operationMetrics.hasCursorHistogram( interceptor ) )
+            {
+                entry.add( SchemaConstants.DESCRIPTION_AT, OperationMetrics.SEARCH_CURSOR + ": "
+                    + operationMetrics.getCursorHistogram( interceptor ) );
+            }
+
+            entries.put( entry.getDn().getNormName(), entry );
+        }
+
+        addContainer( entries, partitionsDn, "partitions", "The counters of each partition" );
+
+        for ( Partition partition : directoryService.getPartitions() )
+        {
+            if ( partition instanceof AbstractPartition )
+            {
+                Entry entry = newProcessEntry( partitionsDn, partition.getId() );
+                entry.add( SchemaConstants.DESCRIPTION_AT,
+                    ( ( AbstractPartition ) partition ).getPartitionMetrics().toString() );
+                entries.put( entry.getDn().getNormName(), entry );
+            }
+        }
+
+        return entries;
+    }
+
+
+    private void addContainer( Map<String, Entry> entries, Dn dn, String ou, String description )
+        throws LdapException
+    {
+        Entry entry = new DefaultEntry( schemaManager, dn );
+        entry.put( SchemaConstants.OBJECT_CLASS_AT, SchemaConstants.TOP_OC, SchemaConstants.ORGANIZATIONAL_UNIT_OC );
+        entry.put( SchemaConstants.OU_AT, ou );
+        entry.put( SchemaConstants.DESCRIPTION_AT, description );
+
+        entries.put( dn.getNormName(), entry );
+    }
+
+
+    private Entry newProcessEntry( Dn parentDn, String name ) throws LdapException
+    {
+        Dn dn = parentDn.add( new Rdn( schemaManager, SchemaConstants.CN_AT + "=" + name ) );
+        Entry entry = new DefaultEntry( schemaManager, dn );
+        entry.put( SchemaConstants.OBJECT_CLASS_AT, SchemaConstants.TOP_OC, "applicationProcess" );
+        entry.put( SchemaConstants.CN_AT, name );
+
+        return entry;
+    }
+
+
+    private LdapUnwillingToPerformException readOnly()
+    {
+        return new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+            "The monitor entries are read only" );
+    }
+}
@@ -0,0 +1,526 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.integration.http;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.csn.Csn;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.ldif.LdifUtils;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Base64;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.OperationManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A servlet streaming the result of a search as LDIF or as NDJSON (one JSON object
+ * per line), so that large exports don't have to be pulled page by page through
+ * the paged search control. The search is done with a core session, opened with
+ * the credentials of the HTTP Basic authentication, the user name being a Dn.<br>
+ * The parameters are :
+ * <ul>
+ *   <li>base : the search base, mandatory</li>
+ *   <li>scope : base, one or sub (the default)</li>
+ *   <li>filter : the search filter, (objectClass=*) by default</li>
+ *   <li>attributes : a comma separated list of attributes to return, all the user attributes by default</li>
+ *   <li>format : ldif (the default) or ndjson</li>
+ *   <li>since : a token returned by a previous export, to only get the entries modified since</li>
+ * </ul>
+ * The response is sent chunked, and compressed when the client accepts gzip. The
+ * writes block when the client does not read fast enough, which suspends the
+ * search, and the number of concurrent exports is bounded.<br>
+ * The token is a CSN generated when the export starts, while no write operation is
+ * in progress (see {@link #getToken()}) : all the entries with an older entryCSN
+ * are committed when the search starts, and the entries written later get a newer
+ * entryCSN. It's sent in the X-Export-Token header, and repeated in the last line
+ * of the stream once all the entries have been written, so that a client only keeps
+ * the token of an export it has completely received. As the search results are not
+ * ordered, an interrupted export is resumed by exporting again the entries modified
+ * since the last complete one : some entries may be sent twice, none is missed.<br>
+ * The deleted entries are not reported by an export using a token, as nothing is
+ * left to be found in the partitions. A client which needs to know about them has
+ * to do a full export, or to use the changelog.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ExportServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = LoggerFactory.getLogger( ExportServlet.class );
+
+    /** The header containing the export token */
+    public static final String TOKEN_HEADER = "X-Export-Token";
+
+    /** The LDIF format */
+    public static final String FORMAT_LDIF = "ldif";
+
+    /** The NDJSON format */
+    public static final String FORMAT_NDJSON = "ndjson";
+
+    /** The size of the buffer, above which the data is sent as a chunk */
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    /** The number of entries after which the buffered data is flushed */
+    private static final int FLUSH_INTERVAL = 1000;
+
+    /** The default maximum number of concurrent exports */
+    public static final int DEFAULT_MAX_EXPORTS = 2;
+
+    /** The directory service */
+    private final transient DirectoryService directoryService;
+
+    /** Bounds the number of concurrent exports */
+    private final transient Semaphore exports;
+
+
+    /**
+     * Creates a new instance of ExportServlet.
+     *
+     * @param directoryService The directory service
+     * @param maxExports The maximum number of concurrent exports
+     */
+    public ExportServlet( DirectoryService directoryService, int maxExports )
+    {
+        this.directoryService = directoryService;
+        exports = new Semaphore( maxExports );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        CoreSession session = authenticate( request );
+
+        if ( session == null )
+        {
+            response.setHeader( "WWW-Authenticate", "Basic realm=\"ApacheDS\"" );
+            response.sendError( HttpServletResponse.SC_UNAUTHORIZED );
+
+            return;
+        }
+
+        try
+        {
+            String format = getParameter( request, "format", FORMAT_LDIF );
+
+            if ( !FORMAT_LDIF.equals( format ) && !FORMAT_NDJSON.equals( format ) )
+            {
+                response.sendError( HttpServletResponse.SC_BAD_REQUEST, "Unknown format " + format );
+
+                return;
+            }
+
+            String base = request.getParameter( "base" );
+            String since = request.getParameter( "since" );
+            String filter = getParameter( request, "filter", "(objectClass=*)" );
+            SearchScope scope = getScope( getParameter( request, "scope", "sub" ) );
+
+            if ( ( base == null ) || ( scope == null ) || ( ( since != null ) && !Csn.isValid( since ) ) )
+            {
+                response.sendError( HttpServletResponse.SC_BAD_REQUEST, "Invalid base, scope or since parameter" );
+
+                return;
+            }
+
+            if ( since != null )
+            {
+                // The CSN has been checked, it can't break the filter
+                filter = "(&" + filter + "(!(" + SchemaConstants.ENTRY_CSN_AT + "<=" + since + ")))";
+            }
+
+            Dn baseDn;
+            ExprNode filterNode;
+
+            try
+            {
+                baseDn = directoryService.getDnFactory().create( base );
+                filterNode = FilterParser.parse( directoryService.getSchemaManager(), filter );
+            }
+            catch ( Exception e )
+            {
+                response.sendError( HttpServletResponse.SC_BAD_REQUEST, e.getMessage() );
+
+                return;
+            }
+
+            if ( !exports.tryAcquire() )
+            {
+                response.setHeader( "Retry-After", "60" );
+                response.sendError( HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many exports in progress" );
+
+                return;
+            }
+
+            try
+            {
+                String attributes = getParameter( request, "attributes", SchemaConstants.ALL_USER_ATTRIBUTES );
+
+                export( session, baseDn, scope, filterNode, attributes.split( "," ), FORMAT_NDJSON.equals( format ),
+                    request, response );
+            }
+            finally
+            {
+                exports.release();
+            }
+        }
+        finally
+        {
+            try
+            {
+                session.unbind();
+            }
+            catch ( Exception e )
+            {
+                LOG.warn( "Failed to close the export session", e );
+            }
+        }
+    }
+
+
+    /**
+     * Runs the search and streams the entries
+     */
+    private void export( CoreSession session, Dn baseDn, SearchScope scope, ExprNode filter, String[] attributes,
+        boolean json, HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        Csn token = getToken();
+        Cursor<Entry> cursor;
+
+        try
+        {
+            cursor = session.search( baseDn, scope, filter, AliasDerefMode.NEVER_DEREF_ALIASES, attributes );
+        }
+        catch ( LdapException le )
+        {
+            response.sendError( HttpServletResponse.SC_BAD_REQUEST, le.getMessage() );
+
+            return;
+        }
+
+        response.setBufferSize( BUFFER_SIZE );
+        response.setContentType( json ? "application/x-ndjson; charset=UTF-8" : "text/x-ldif; charset=UTF-8" );
+        response.setHeader( TOKEN_HEADER, token.toString() );
+
+        OutputStream out = response.getOutputStream();
+        String acceptEncoding = request.getHeader( "Accept-Encoding" );
+
+        if ( ( acceptEncoding != null ) && acceptEncoding.contains( "gzip" ) )
+        {
+            response.setHeader( "Content-Encoding", "gzip" );
+
+            // Sync flush, so that the flushed entries are readable by the client
+            out = new GZIPOutputStream( out, BUFFER_SIZE, true );
+        }
+
+        Writer writer = new OutputStreamWriter( out, "UTF-8" );
+        int count = 0;
+
+        try
+        {
+            while ( cursor.next() )
+            {
+                Entry entry = cursor.get();
+
+                if ( json )
+                {
+                    writer.write( toJson( entry ) );
+                    writer.write( '\n' );
+                }
+                else
+                {
+                    writer.write( LdifUtils.convertToLdif( entry ) );
+                    writer.write( '\n' );
+                }
+
+                count++;
+
+                if ( count % FLUSH_INTERVAL == 0 )
+                {
+                    writer.flush();
+                }
+            }
+
+            // The last line tells the client the export is complete
+            if ( json )
+            {
+                writer.write( "{\"token\":" );
+                writer.write( quote( token.toString() ) );
+                writer.write( "}\n" );
+            }
+            else
+            {
+                writer.write( "# token: " + token + "\n" );
+            }
+
+            LOG.debug( "Exported {} entries from {}", count, baseDn );
+        }
+        catch ( IOException ioe )
+        {
+            // The client has gone
+            LOG.debug( "Export from {} aborted after {} entries", baseDn, count );
+
+            throw ioe;
+        }
+        catch ( Exception e )
+        {
+            LOG.warn( "Export from {} failed after {} entries", baseDn, count, e );
+
+            // The status has already been sent, the error replaces the token line
+            if ( json )
+            {
+                writer.write( "{\"error\":" + quote( String.valueOf( e.getMessage() ) ) + "}\n" );
+            }
+            else
+            {
+                writer.write( "# error: " + e.getMessage() + "\n" );
+            }
+        }
+        finally
+        {
+            try
+            {
+                cursor.close();
+            }
+            catch ( Exception e )
+            {
+                LOG.warn( "Failed to close the export cursor", e );
+            }
+        }
+
+        writer.close();
+    }
+
+
+    /**
+     * Generates the export token. The write operations generate the entryCSN and
+     * commit the entry while holding the OperationManager write lock, so none is in
+     * progress while we hold the read lock : an operation having generated an older
+     * CSN has been committed, and will be seen by the search.
+     */
+    private Csn getToken()
+    {
+        OperationManager operationManager = directoryService.getOperationManager();
+        operationManager.lockRead();
+
+        try
+        {
+            return directoryService.getCSN();
+        }
+        finally
+        {
+            operationManager.unlockRead();
+        }
+    }
+
+
+    /**
+     * Opens a session with the HTTP Basic credentials
+     *
+     * @return The session, or null if the credentials are missing or invalid
+     */
+    private CoreSession authenticate( HttpServletRequest request )
+    {
+        String authorization = request.getHeader( "Authorization" );
+
+        if ( ( authorization == null ) || !authorization.regionMatches( true, 0, "Basic ", 0, 6 ) )
+        {
+            return null;
+        }
+
+        try
+        {
+            String credentials = Strings.utf8ToString( Base64.decode( authorization.substring( 6 ).trim()
+                .toCharArray() ) );
+            int colon = credentials.indexOf( ':' );
+
+            if ( colon <= 0 )
+            {
+                return null;
+            }
+
+            Dn principalDn = directoryService.getDnFactory().create( credentials.substring( 0, colon ) );
+
+            return directoryService.getSession( principalDn, Strings.getBytesUtf8( credentials.substring( colon + 1 ) ) );
+        }
+        catch ( Exception e )
+        {
+            LOG.debug( "Export authentication failed", e );
+
+            return null;
+        }
+    }
+
+
+    private String getParameter( HttpServletRequest request, String name, String defaultValue )
+    {
+        String value = request.getParameter( name );
+
+        return ( value == null ) ? defaultValue : value;
+    }
+
+
+    private SearchScope getScope( String scope )
+    {
+        if ( "base".equalsIgnoreCase( scope ) )
+        {
+            return SearchScope.OBJECT;
+        }
+        else if ( "one".equalsIgnoreCase( scope ) )
+        {
+            return SearchScope.ONELEVEL;
+        }
+        else if ( "sub".equalsIgnoreCase( scope ) )
+        {
+            return SearchScope.SUBTREE;
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Converts an entry to a JSON object : the Dn, and the attributes values in
+     * arrays. The binary values are base64 encoded, the attribute name being
+     * suffixed with ';binary'.
+     */
+    private String toJson( Entry entry )
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "{\"dn\":" ).append( quote( entry.getDn().getName() ) ).append( ",\"attributes\":{" );
+
+        boolean first = true;
+
+        for ( Attribute attribute : entry )
+        {
+            if ( !first )
+            {
+                sb.append( ',' );
+            }
+
+            first = false;
+            boolean binary = !attribute.isHumanReadable();
+
+            sb.append( quote( binary ? attribute.getUpId() + ";binary" : attribute.getUpId() ) ).append( ":[" );
+
+            boolean firstValue = true;
+
+            for ( Value<?> value : attribute )
+            {
+                if ( !firstValue )
+                {
+                    sb.append( ',' );
+                }
+
+                firstValue = false;
+
+                if ( binary )
+                {
+                    sb.append( '"' ).append( Base64.encode( value.getBytes() ) ).append( '"' );
+                }
+                else
+                {
+                    sb.append( quote( value.getString() ) );
+                }
+            }
+
+            sb.append( ']' );
+        }
+
+        return sb.append( "}}" ).toString();
+    }
+
+
+    /**
+     * Quotes and escapes a JSON string
+     */
+    private static String quote( String value )
+    {
+        StringBuilder sb = new StringBuilder( value.length() + 2 );
+        sb.append( '"' );
+
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            char c = value.charAt( i );
+
+            switch ( c )
+            {
+                case '"':
+                    sb.append( "\\\"" );
+                    break;
+
+                case '\\':
+                    sb.append( "\\\\" );
+                    break;
+
+                case '\n':
+                    sb.append( "\\n" );
+                    break;
+
+                case '\r':
+                    sb.append( "\\r" );
+                    break;
+
+                case '\t':
+                    sb.append( "\\t" );
+                    break;
+
+                default:
+                    if ( c < 0x20 )
+                    {
+                        sb.append( String.format( "\\u%04x", ( int ) c ) );
+                    }
+                    else
+                    {
+                        sb.append( c );
+                    }
+            }
+        }
+
+        return sb.append( '"' ).toString();
+    }
+}
@@ -51,6 +51,8 @@ import org.mortbay.jetty.Server;
 import org.mortbay.jetty.handler.ContextHandler;
 import org.mortbay.jetty.nio.SelectChannelConnector;
 import org.mortbay.jetty.security.SslSocketConnector;
+import org.mortbay.jetty.servlet.Context;
+import org.mortbay.jetty.servlet.ServletHolder;
 import org.mortbay.jetty.webapp.WebAppContext;
 import org.mortbay.xml.XmlConfiguration;
 import org.slf4j.Logger;
@@ -86,6 +88,12 @@ public class HttpServer
     /** protocol identifier for https */
     public static final String HTTPS_TRANSPORT_ID = "https";
 
+    /** the context path of the export servlet, null if the export is disabled */
+    private String exportContextPath;
+
+    /** the maximum number of concurrent exports */
+    private int maxExports = ExportServlet.DEFAULT_MAX_EXPORTS;
+
     /** an internal flag to check the server configuration */
     private boolean configured = false;
 
@@ -220,6 +228,15 @@ public class HttpServer
             }
 
             List<Handler> handlers = new ArrayList<Handler>();
+
+            if ( exportContextPath != null )
+            {
+                Context exportContext = new Context();
+                exportContext.setContextPath( exportContextPath );
+                exportContext.addServlet( new ServletHolder( new ExportServlet( dirService, maxExports ) ), "/*" );
+                handlers.add( exportContext );
+            }
+
             for ( WebApp w : webApps )
             {
                 WebAppContext webapp = new WebAppContext();
@@ -332,4 +349,33 @@ public class HttpServer
         this.httpsTransport = httpsTransport;
     }
 
+
+    public String getExportContextPath()
+    {
+        return exportContextPath;
+    }
+
+
+    /**
+     * Enables the streaming export of entries, served at the given context path.
+     *
+     * @param exportContextPath the context path of the export, null to disable it
+     */
+    public void setExportContextPath( String exportContextPath )
+    {
+        this.exportContextPath = exportContextPath;
+    }
+
+
+    public int getMaxExports()
+    {
+        return maxExports;
+    }
+
+
+    public void setMaxExports( int maxExports )
+    {
+        this.maxExports = maxExports;
+    }
+
 }
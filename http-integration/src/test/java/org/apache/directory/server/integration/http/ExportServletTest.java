@@ -0,0 +1,273 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.integration.http;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.csn.Csn;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Base64;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.annotations.ContextEntry;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.annotations.CreatePartition;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.protocol.shared.transport.TcpTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the ExportServlet, served by the HttpServer.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateDS(name = "ExportServletTest",
+    partitions =
+        {
+            @CreatePartition(
+                name = "example",
+                suffix = "dc=example,dc=com",
+                contextEntry = @ContextEntry(entryLdif =
+                    "dn: dc=example,dc=com\n" +
+                        "objectClass: domain\n" +
+                        "dc: example"))
+    })
+public class ExportServletTest extends AbstractLdapTestUnit
+{
+    private static final String ADMIN = "uid=admin,ou=system";
+
+    private HttpServer httpServer;
+
+    private int port;
+
+    private CoreSession session;
+
+
+    /**
+     * The response of an export
+     */
+    private static class Export
+    {
+        private int status;
+
+        private String token;
+
+        private List<String> lines = new ArrayList<String>();
+    }
+
+
+    @Before
+    public void startServer() throws Exception
+    {
+        ServerSocket socket = new ServerSocket( 0 );
+        port = socket.getLocalPort();
+        socket.close();
+
+        httpServer = new HttpServer();
+        httpServer.setHttpTransport( new TcpTransport( port ) );
+        httpServer.setWebApps( Collections.<WebApp> emptySet() );
+        httpServer.setExportContextPath( "/export" );
+        httpServer.start( getService() );
+
+        session = getService().getAdminSession();
+
+        // A value which must be escaped in JSON
+        session.add( new DefaultEntry( getService().getSchemaManager(), "cn=escaped,dc=example,dc=com",
+            "objectClass: person",
+            "cn: escaped",
+            "sn: escaped",
+            "description", "a \"quoted\" back\\slash\nnew line" ) );
+    }
+
+
+    @After
+    public void stopServer() throws Exception
+    {
+        httpServer.stop();
+
+        Dn dn = new Dn( getService().getSchemaManager(), "cn=escaped,dc=example,dc=com" );
+
+        if ( session.exists( dn ) )
+        {
+            session.delete( dn );
+        }
+    }
+
+
+    private Export export( String user, String password, String parameters ) throws Exception
+    {
+        URL url = new URL( "http://localhost:" + port + "/export/?base=" + URLEncoder.encode( "dc=example,dc=com",
+            "UTF-8" ) + parameters );
+        HttpURLConnection connection = ( HttpURLConnection ) url.openConnection();
+
+        if ( user != null )
+        {
+            String credentials = new String( Base64.encode( Strings.getBytesUtf8( user + ":" + password ) ) );
+            connection.setRequestProperty( "Authorization", "Basic " + credentials );
+        }
+
+        Export export = new Export();
+        export.status = connection.getResponseCode();
+
+        if ( export.status == HttpURLConnection.HTTP_OK )
+        {
+            export.token = connection.getHeaderField( ExportServlet.TOKEN_HEADER );
+
+            BufferedReader reader = new BufferedReader( new InputStreamReader( connection.getInputStream(),
+                "UTF-8" ) );
+
+            try
+            {
+                String line = reader.readLine();
+
+                while ( line != null )
+                {
+                    export.lines.add( line );
+                    line = reader.readLine();
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+
+        connection.disconnect();
+
+        return export;
+    }
+
+
+    private boolean contains( Export export, String value )
+    {
+        for ( String line : export.lines )
+        {
+            if ( line.contains( value ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    @Test
+    public void testAuthentication() throws Exception
+    {
+        assertEquals( HttpURLConnection.HTTP_UNAUTHORIZED, export( null, null, "" ).status );
+        assertEquals( HttpURLConnection.HTTP_UNAUTHORIZED, export( ADMIN, "wrong", "" ).status );
+        assertEquals( HttpURLConnection.HTTP_UNAUTHORIZED, export( "not a dn", "secret", "" ).status );
+        assertEquals( HttpURLConnection.HTTP_OK, export( ADMIN, "secret", "" ).status );
+    }
+
+
+    @Test
+    public void testInvalidParameters() throws Exception
+    {
+        assertEquals( HttpURLConnection.HTTP_BAD_REQUEST, export( ADMIN, "secret", "&format=xml" ).status );
+        assertEquals( HttpURLConnection.HTTP_BAD_REQUEST, export( ADMIN, "secret", "&scope=all" ).status );
+        assertEquals( HttpURLConnection.HTTP_BAD_REQUEST, export( ADMIN, "secret", "&since=yesterday" ).status );
+        assertEquals( HttpURLConnection.HTTP_BAD_REQUEST, export( ADMIN, "secret", "&filter=(cn=" ).status );
+    }
+
+
+    @Test
+    public void testLdifExport() throws Exception
+    {
+        Export export = export( ADMIN, "secret", "" );
+
+        assertNotNull( export.token );
+        assertTrue( Csn.isValid( export.token ) );
+        assertTrue( contains( export, "dn: dc=example,dc=com" ) );
+        assertTrue( contains( export, "dn: cn=escaped,dc=example,dc=com" ) );
+
+        // The last line tells the export is complete
+        assertEquals( "# token: " + export.token, export.lines.get( export.lines.size() - 1 ) );
+    }
+
+
+    @Test
+    public void testJsonEscaping() throws Exception
+    {
+        Export export = export( ADMIN, "secret", "&format=ndjson&scope=one" );
+
+        assertEquals( HttpURLConnection.HTTP_OK, export.status );
+
+        // One line per entry, and the token line
+        assertEquals( 2, export.lines.size() );
+        assertTrue( export.lines.get( 0 ).startsWith( "{\"dn\":\"cn=escaped,dc=example,dc=com\"" ) );
+        assertTrue( export.lines.get( 0 ).contains( "\"a \\\"quoted\\\" back\\\\slash\\nnew line\"" ) );
+        assertEquals( "{\"token\":\"" + export.token + "\"}", export.lines.get( 1 ) );
+    }
+
+
+    @Test
+    public void testSince() throws Exception
+    {
+        Export first = export( ADMIN, "secret", "" );
+
+        // Nothing has changed since the first export
+        Export second = export( ADMIN, "secret", "&since=" + URLEncoder.encode( first.token, "UTF-8" ) );
+
+        assertEquals( HttpURLConnection.HTTP_OK, second.status );
+        assertEquals( 1, second.lines.size() );
+        assertTrue( new Csn( second.token ).compareTo( new Csn( first.token ) ) > 0 );
+
+        // A modified and an added entry
+        session.modify( new Dn( getService().getSchemaManager(), "cn=escaped,dc=example,dc=com" ),
+            new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, "sn", "modified" ) );
+        session.add( new DefaultEntry( getService().getSchemaManager(), "cn=added,dc=example,dc=com",
+            "objectClass: person",
+            "cn: added",
+            "sn: added" ) );
+
+        Export third = export( ADMIN, "secret", "&since=" + URLEncoder.encode( second.token, "UTF-8" ) );
+
+        assertTrue( contains( third, "dn: cn=escaped,dc=example,dc=com" ) );
+        assertTrue( contains( third, "dn: cn=added,dc=example,dc=com" ) );
+        assertFalse( contains( third, "dn: dc=example,dc=com" ) );
+
+        session.delete( new Dn( getService().getSchemaManager(), "cn=added,dc=example,dc=com" ) );
+    }
+}
@@ -46,7 +46,7 @@ import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.InterceptorEnum;
 import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyConfiguration;
 import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyException;
-import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.authn.ppolicy.PpolicyStateStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -213,6 +213,10 @@ public abstract class AbstractAuthenticator implements Authenticator
             InterceptorEnum.AUTHENTICATION_INTERCEPTOR.getName() );
         PasswordPolicyConfiguration pPolicyConfig = authenticationInterceptor.getPwdPolicy( userEntry );
 
+        // Take into account the state modified by the previous binds, not yet written
+        PpolicyStateStore pwdPolicyStateStore = authenticationInterceptor.getPwdPolicyStateStore();
+        userEntry = pwdPolicyStateStore.apply( userEntry );
+
         // check for locked out account
         if ( pPolicyConfig.isPwdLockout() )
         {
@@ -246,13 +250,8 @@ public abstract class AbstractAuthenticator implements Authenticator
                         // remove pwdAccountLockedTime attribute
                         Modification pwdAccountLockMod = new DefaultModification(
                             ModificationOperation.REMOVE_ATTRIBUTE, accountLockAttr );
-                        ModifyOperationContext modContext = new ModifyOperationContext(
-                            directoryService.getAdminSession() );
-                        modContext.setDn( userEntry.getDn() );
-
-                        modContext.setModItems( Collections.singletonList( pwdAccountLockMod ) );
 
-                        directoryService.getPartitionNexus().modify( modContext );
+                        pwdPolicyStateStore.update( userEntry.getDn(), Collections.singletonList( pwdAccountLockMod ) );
                     }
                 }
             }
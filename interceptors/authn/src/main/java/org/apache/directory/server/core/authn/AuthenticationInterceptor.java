@@ -81,6 +81,7 @@ import org.apache.directory.server.core.api.LdapPrincipal;
 import org.apache.directory.server.core.api.authn.ppolicy.CheckQualityEnum;
 import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyConfiguration;
 import org.apache.directory.server.core.api.authn.ppolicy.PasswordPolicyException;
+import org.apache.directory.server.core.api.filtering.EntryFilter;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
@@ -98,6 +99,7 @@ import org.apache.directory.server.core.api.interceptor.context.RenameOperationC
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
 import org.apache.directory.server.core.authn.ppolicy.PpolicyConfigContainer;
+import org.apache.directory.server.core.authn.ppolicy.PpolicyStateStore;
 import org.apache.directory.server.core.shared.DefaultCoreSession;
 import org.apache.directory.server.i18n.I18n;
 import org.slf4j.Logger;
@@ -150,6 +152,38 @@ public class AuthenticationInterceptor extends BaseInterceptor
     /** a container to hold all the ppolicies */
     private PpolicyConfigContainer pwdPolicyContainer;
 
+    /** The password policy state modified by the binds, not yet written */
+    private PpolicyStateStore pwdPolicyStateStore;
+
+    /**
+     * The search filter applying the password policy state not yet written on the
+     * returned entries
+     */
+    private class PwdPolicyStateFilter implements EntryFilter
+    {
+        /**
+         * {@inheritDoc}
+         */
+        public boolean accept( SearchOperationContext operation, Entry entry ) throws LdapException
+        {
+            pwdPolicyStateStore.overlay( operation, entry );
+
+            return true;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public String toString( String tabs )
+        {
+            return tabs + "PwdPolicyStateFilter";
+        }
+    }
+
+    /** The password policy state search filter */
+    private final EntryFilter pwdPolicyStateFilter = new PwdPolicyStateFilter();
+
 
     /**
      * Creates an authentication service interceptor.
@@ -181,6 +215,22 @@ public class AuthenticationInterceptor extends BaseInterceptor
         }
 
         loadPwdPolicyStateAttributeTypes();
+
+        pwdPolicyStateStore = new PpolicyStateStore( directoryService );
+        startPwdPolicyStateStore();
+    }
+
+
+    /**
+     * Starts the thread writing the password policy state modified by the binds, once
+     * a password policy is enabled
+     */
+    private void startPwdPolicyStateStore()
+    {
+        if ( ( pwdPolicyStateStore != null ) && isPwdPolicyEnabled() )
+        {
+            pwdPolicyStateStore.start();
+        }
     }
 
 
@@ -263,6 +313,11 @@ public class AuthenticationInterceptor extends BaseInterceptor
         {
             authenticator.destroy();
         }
+
+        if ( pwdPolicyStateStore != null )
+        {
+            pwdPolicyStateStore.stop();
+        }
     }
 
 
@@ -563,6 +618,9 @@ public class AuthenticationInterceptor extends BaseInterceptor
             LookupOperationContext lookupContext = new LookupOperationContext( adminSession, bindDn,
                 SchemaConstants.ALL_ATTRIBUTES_ARRAY );
             userEntry = directoryService.getPartitionNexus().lookup( lookupContext );
+
+            // Apply the state modified by the previous binds, and not yet written
+            userEntry = pwdPolicyStateStore.apply( userEntry );
         }
 
         // check if the user entry is null, it will be null
@@ -600,6 +658,7 @@ public class AuthenticationInterceptor extends BaseInterceptor
                 mods.add( pwdFailTimeMod );
 
                 int numFailures = pwdFailTimeAt.size();
+                boolean locked = false;
 
                 if ( policyConfig.isPwdLockout() && ( numFailures >= policyConfig.getPwdMaxFailure() ) )
                 {
@@ -622,6 +681,7 @@ public class AuthenticationInterceptor extends BaseInterceptor
                         Modification pwdAccountLockedMod = new DefaultModification( REPLACE_ATTRIBUTE,
                             pwdAccountLockedTimeAt );
                         mods.add( pwdAccountLockedMod );
+                        locked = true;
 
                         pwdRespCtrl.getResponse().setPasswordPolicyError( PasswordPolicyErrorEnum.ACCOUNT_LOCKED );
                     }
@@ -650,18 +710,13 @@ public class AuthenticationInterceptor extends BaseInterceptor
 
                 if ( !mods.isEmpty() )
                 {
-                    String csnVal = directoryService.getCSN().toString();
-                    Modification csnMod = new DefaultModification( REPLACE_ATTRIBUTE, directoryService.getAtProvider()
-                        .getEntryCSN(), csnVal );
-                    mods.add( csnMod );
-
-                    ModifyOperationContext bindModCtx = new ModifyOperationContext( adminSession );
-                    bindModCtx.setDn( bindDn );
-                    bindModCtx.setEntry( userEntry );
-                    bindModCtx.setModItems( mods );
-                    bindModCtx.setPushToEvtInterceptor( true );
-
-                    directoryService.getPartitionNexus().modify( bindModCtx );
+                    pwdPolicyStateStore.update( userEntry.getDn(), mods );
+
+                    if ( locked )
+                    {
+                        // The account has been locked, don't wait to write it
+                        pwdPolicyStateStore.flushSoon();
+                    }
                 }
             }
 
@@ -717,14 +772,16 @@ public class AuthenticationInterceptor extends BaseInterceptor
                         }
                         else
                         {
-                            pwdGraceUseAttr = new DefaultAttribute( pwdGraceUseTimeAT );
                             numGraceAuth = policyConfig.getPwdGraceAuthNLimit() - 1;
                         }
 
                         pwdRespCtrl.getResponse().setGraceAuthNRemaining( numGraceAuth );
 
-                        pwdGraceUseAttr.add( DateUtils.getGeneralizedTime() );
-                        Modification pwdGraceUseMod = new DefaultModification( ADD_ATTRIBUTE, pwdGraceUseAttr );
+                        // Only the new value is added : the state store accumulates the added
+                        // values, so that the grace login times of concurrent binds are all kept
+                        Attribute newGraceUseAttr = new DefaultAttribute( pwdGraceUseTimeAT,
+                            DateUtils.getGeneralizedTime() );
+                        Modification pwdGraceUseMod = new DefaultModification( ADD_ATTRIBUTE, newGraceUseAttr );
                         mods.add( pwdGraceUseMod );
                     }
                 }
@@ -732,18 +789,8 @@ public class AuthenticationInterceptor extends BaseInterceptor
 
             if ( !mods.isEmpty() )
             {
-                String csnVal = directoryService.getCSN().toString();
-                Modification csnMod = new DefaultModification( REPLACE_ATTRIBUTE, directoryService.getAtProvider()
-                    .getEntryCSN(), csnVal );
-                mods.add( csnMod );
-
-                ModifyOperationContext bindModCtx = new ModifyOperationContext( adminSession );
-                bindModCtx.setDn( bindDn );
-                bindModCtx.setEntry( userEntry );
-                bindModCtx.setModItems( mods );
-                bindModCtx.setPushToEvtInterceptor( true );
-
-                directoryService.getPartitionNexus().modify( bindModCtx );
+                // Written asynchronously, coalesced with the next binds
+                pwdPolicyStateStore.update( userEntry.getDn(), mods );
             }
 
             if ( isPPolicyReqCtrlPresent )
@@ -798,6 +845,7 @@ public class AuthenticationInterceptor extends BaseInterceptor
         checkAuthenticated( deleteContext );
         checkPwdReset( deleteContext );
         next( deleteContext );
+        pwdPolicyStateStore.discard( deleteContext.getDn() );
         invalidateAuthenticatorCaches( deleteContext.getDn() );
     }
 
@@ -849,7 +897,12 @@ public class AuthenticationInterceptor extends BaseInterceptor
         checkAuthenticated( lookupContext );
         checkPwdReset( lookupContext );
 
-        return next( lookupContext );
+        Entry entry = next( lookupContext );
+
+        // Make the password policy state modified by the last binds visible
+        pwdPolicyStateStore.overlay( lookupContext, entry );
+
+        return entry;
     }
 
 
@@ -880,6 +933,9 @@ public class AuthenticationInterceptor extends BaseInterceptor
 
         checkAuthenticated( modifyContext );
 
+        // The pending password policy state must be written before the entry is modified
+        pwdPolicyStateStore.flush( modifyContext.getDn() );
+
         if ( !directoryService.isPwdPolicyEnabled() || modifyContext.isReplEvent() )
         {
             processStandardModify( modifyContext );
@@ -1273,6 +1329,7 @@ public class AuthenticationInterceptor extends BaseInterceptor
 
         checkAuthenticated( moveContext );
         checkPwdReset( moveContext );
+        pwdPolicyStateStore.flush( moveContext.getDn() );
         next( moveContext );
         invalidateAuthenticatorCaches( moveContext.getDn() );
     }
@@ -1290,6 +1347,7 @@ public class AuthenticationInterceptor extends BaseInterceptor
 
         checkAuthenticated( moveAndRenameContext );
         checkPwdReset( moveAndRenameContext );
+        pwdPolicyStateStore.flush( moveAndRenameContext.getDn() );
         next( moveAndRenameContext );
         invalidateAuthenticatorCaches( moveAndRenameContext.getDn() );
     }
@@ -1307,6 +1365,7 @@ public class AuthenticationInterceptor extends BaseInterceptor
 
         checkAuthenticated( renameContext );
         checkPwdReset( renameContext );
+        pwdPolicyStateStore.flush( renameContext.getDn() );
         next( renameContext );
         invalidateAuthenticatorCaches( renameContext.getDn() );
     }
@@ -1325,7 +1384,15 @@ public class AuthenticationInterceptor extends BaseInterceptor
         checkAuthenticated( searchContext );
         checkPwdReset( searchContext );
 
-        return next( searchContext );
+        EntryFilteringCursor cursor = next( searchContext );
+
+        // Make the password policy state modified by the last binds visible
+        if ( isPwdPolicyEnabled() )
+        {
+            cursor.addEntryFilter( pwdPolicyStateFilter );
+        }
+
+        return cursor;
     }
 
 
@@ -1786,6 +1853,7 @@ public class AuthenticationInterceptor extends BaseInterceptor
     public void setPwdPolicies( PpolicyConfigContainer policyContainer )
     {
         this.pwdPolicyContainer = policyContainer;
+        startPwdPolicyStateStore();
     }
 
 
@@ -1800,6 +1868,15 @@ public class AuthenticationInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * @return the store keeping the password policy state modified by the binds
+     */
+    public PpolicyStateStore getPwdPolicyStateStore()
+    {
+        return pwdPolicyStateStore;
+    }
+
+
     /**
      * @return the pwdPolicyContainer
      */
@@ -1815,6 +1892,7 @@ public class AuthenticationInterceptor extends BaseInterceptor
     public void setPwdPolicyContainer( PpolicyConfigContainer pwdPolicyContainer )
     {
         this.pwdPolicyContainer = pwdPolicyContainer;
+        startPwdPolicyStateStore();
     }
 
 
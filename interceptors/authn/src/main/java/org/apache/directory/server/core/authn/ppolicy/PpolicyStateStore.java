@@ -0,0 +1,738 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.authn.ppolicy;
+
+
+import static org.apache.directory.api.ldap.model.entry.ModificationOperation.ADD_ATTRIBUTE;
+import static org.apache.directory.api.ldap.model.entry.ModificationOperation.REPLACE_ATTRIBUTE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.interceptor.context.FilteringOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Keeps the password policy state attributes modified by the binds (pwdFailureTime,
+ * pwdAccountLockedTime, pwdLastSuccess, pwdGraceUseTime) in memory, and writes them
+ * in the backend asynchronously.
+ *
+ * The updates are coalesced per user : only the last value of each replaced attribute
+ * is written, in a single modification, whatever the number of binds done by the user
+ * in between. The values added to an attribute (the grace login times) are accumulated,
+ * and written as an addition, so that the values added by concurrent binds are all kept.
+ * The pending state is flushed every flush interval, or as soon as the number of users
+ * waiting for a flush reaches the batch size. The flushing thread is only started when
+ * a password policy is enabled.
+ *
+ * The entries read by the bind operation must go through {@link #apply(Entry)}, so
+ * that the decisions (lockout, failure count, grace logins) are taken on the up to
+ * date state. The entries returned by the lookups and searches go through
+ * {@link #overlay(FilteringOperationContext, Entry)} : the reads never write, and don't
+ * take any lock. The pending state of an entry must be flushed before the entry is
+ * modified or renamed, and discarded when it is deleted.
+ *
+ * A state which can't be written is kept in the store, and written again with the
+ * next flush, unless a more recent value has been recorded for the same attribute
+ * in the meantime.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PpolicyStateStore
+{
+    /** The class logger */
+    private static final Logger LOG = LoggerFactory.getLogger( PpolicyStateStore.class );
+
+    /** The default delay between two flushes, in milliseconds */
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000L;
+
+    /** The default number of users waiting for a flush before it's forced */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** The DirectoryService instance */
+    private final DirectoryService directoryService;
+
+    /** The delay between two flushes, in milliseconds */
+    private final long flushInterval;
+
+    /** The number of users waiting for a flush before it's forced */
+    private final int batchSize;
+
+    /** The states waiting to be flushed, by normalized Dn */
+    private volatile Map<String, PendingState> pending = new ConcurrentHashMap<String, PendingState>();
+
+    /** The states being written */
+    private volatile Map<String, PendingState> inFlight = new ConcurrentHashMap<String, PendingState>();
+
+    /** A lock serializing the writes in the backend */
+    private final Object writeLock = new Object();
+
+    /** The thread flushing the pending states */
+    private volatile Flusher flusher;
+
+
+    /**
+     * The state waiting to be written for one user : the last value of each
+     * replaced attribute, an empty attribute meaning it has to be removed, and the
+     * values added to the other attributes. The stored attributes are never modified,
+     * they are replaced, so that they can be read without lock.
+     */
+    private static class PendingState
+    {
+        /** The user entry Dn */
+        private final Dn dn;
+
+        /** The replaced attributes, by AttributeType OID */
+        private final Map<String, Attribute> attributes = new ConcurrentHashMap<String, Attribute>();
+
+        /** The added values, by AttributeType OID */
+        private final Map<String, Attribute> addedValues = new ConcurrentHashMap<String, Attribute>();
+
+
+        private PendingState( Dn dn )
+        {
+            this.dn = dn;
+        }
+    }
+
+
+    /**
+     * Creates a new instance of PpolicyStateStore, using the default flush interval
+     * and batch size.
+     *
+     * @param directoryService The DirectoryService instance
+     */
+    public PpolicyStateStore( DirectoryService directoryService )
+    {
+        this( directoryService, DEFAULT_FLUSH_INTERVAL, DEFAULT_BATCH_SIZE );
+    }
+
+
+    /**
+     * Creates a new instance of PpolicyStateStore.
+     *
+     * @param directoryService The DirectoryService instance
+     * @param flushInterval The delay between two flushes, in milliseconds
+     * @param batchSize The number of users waiting for a flush before it's forced
+     */
+    public PpolicyStateStore( DirectoryService directoryService, long flushInterval, int batchSize )
+    {
+        this.directoryService = directoryService;
+        this.flushInterval = flushInterval > 0 ? flushInterval : DEFAULT_FLUSH_INTERVAL;
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    }
+
+
+    /**
+     * Starts the thread flushing the pending states, if it's not already started
+     */
+    public synchronized void start()
+    {
+        if ( flusher == null )
+        {
+            flusher = new Flusher();
+            flusher.start();
+        }
+    }
+
+
+    /**
+     * Stops the flushing thread, and write all the pending states
+     */
+    public void stop()
+    {
+        Flusher current;
+
+        synchronized ( this )
+        {
+            current = flusher;
+            flusher = null;
+        }
+
+        if ( current != null )
+        {
+            current.shutdown();
+        }
+
+        try
+        {
+            flush();
+        }
+        catch ( LdapException le )
+        {
+            LOG.error( "The password policy state of {} users has been lost", size(), le );
+        }
+    }
+
+
+    /**
+     * Records the modifications of the password policy state of a user. Only the
+     * REPLACE_ATTRIBUTE, REMOVE_ATTRIBUTE (of the whole attribute) and ADD_ATTRIBUTE
+     * modifications are accepted : the state is stored as the final value of each
+     * replaced attribute, and as the values added to the other attributes.
+     *
+     * @param dn The user entry Dn
+     * @param mods The modifications to apply
+     */
+    public void update( Dn dn, List<Modification> mods )
+    {
+        boolean full;
+
+        synchronized ( this )
+        {
+            PendingState state = pending.get( dn.getNormName() );
+
+            if ( state == null )
+            {
+                state = new PendingState( dn );
+                pending.put( dn.getNormName(), state );
+            }
+
+            for ( Modification mod : mods )
+            {
+                Attribute attribute = mod.getAttribute();
+                String oid = attribute.getAttributeType().getOid();
+
+                switch ( mod.getOperation() )
+                {
+                    case REPLACE_ATTRIBUTE:
+                        state.attributes.put( oid, attribute.clone() );
+                        state.addedValues.remove( oid );
+                        break;
+
+                    case REMOVE_ATTRIBUTE:
+                        state.attributes.put( oid, new DefaultAttribute( attribute.getAttributeType() ) );
+                        state.addedValues.remove( oid );
+                        break;
+
+                    case ADD_ATTRIBUTE:
+                        Attribute replaced = state.attributes.get( oid );
+
+                        if ( replaced != null )
+                        {
+                            // The added values complete the final value of the attribute
+                            state.attributes.put( oid, merge( replaced, attribute ) );
+                        }
+                        else
+                        {
+                            Attribute added = state.addedValues.get( oid );
+                            state.addedValues.put( oid, added == null ? attribute.clone() : merge( added,
+                                attribute ) );
+                        }
+
+                        break;
+
+                    default:
+                        throw new IllegalArgumentException( "Unexpected modification " + mod );
+                }
+            }
+
+            full = pending.size() >= batchSize;
+        }
+
+        if ( full )
+        {
+            flushSoon();
+        }
+    }
+
+
+    /**
+     * Asks the flushing thread to write the pending states now
+     */
+    public void flushSoon()
+    {
+        Flusher current = flusher;
+
+        if ( current != null )
+        {
+            current.wakeUp();
+        }
+    }
+
+
+    /**
+     * @return A copy of an attribute, with the values of another one added
+     */
+    private static Attribute merge( Attribute attribute, Attribute addedValues )
+    {
+        Attribute merged = attribute.clone();
+
+        for ( Value<?> value : addedValues )
+        {
+            merged.add( value );
+        }
+
+        return merged;
+    }
+
+
+    /**
+     * Returns the entry with the password policy state not yet written applied on it.
+     *
+     * @param entry The entry read from the backend
+     * @return The given entry if there is no pending state for it, a modified copy otherwise
+     * @throws LdapException If the state can't be applied
+     */
+    public Entry apply( Entry entry ) throws LdapException
+    {
+        if ( ( entry == null ) || !hasState( entry.getDn() ) )
+        {
+            return entry;
+        }
+
+        Entry copy = entry.clone();
+        overlay( null, copy );
+
+        return copy;
+    }
+
+
+    /**
+     * Applies the password policy state not yet written on an entry returned by a
+     * read operation. Only the attributes returned by the operation are modified.
+     * No lock is taken, and nothing is written.
+     *
+     * @param filteringContext The read operation, or null if all the attributes are returned
+     * @param entry The entry read from the backend, modified in place
+     * @throws LdapException If the state can't be applied
+     */
+    public void overlay( FilteringOperationContext filteringContext, Entry entry ) throws LdapException
+    {
+        if ( entry == null )
+        {
+            return;
+        }
+
+        String normName = entry.getDn().getNormName();
+
+        // The pending states are read first : a state moves from the pending states to
+        // the in flight states, and it's added to the in flight states before being
+        // removed from the pending states
+        PendingState waiting = pending.get( normName );
+        PendingState writing = inFlight.get( normName );
+
+        // The in flight state is older than the pending one
+
+        if ( writing != null )
+        {
+            overlay( filteringContext, entry, writing );
+        }
+
+        if ( waiting != null )
+        {
+            overlay( filteringContext, entry, waiting );
+        }
+    }
+
+
+    /**
+     * Applies a pending state on an entry
+     */
+    private void overlay( FilteringOperationContext filteringContext, Entry entry, PendingState state )
+        throws LdapException
+    {
+        for ( Attribute attribute : state.attributes.values() )
+        {
+            if ( attribute.size() == 0 )
+            {
+                entry.removeAttributes( attribute.getAttributeType() );
+            }
+            else if ( isReturned( filteringContext, attribute ) )
+            {
+                entry.put( attribute.clone() );
+            }
+        }
+
+        for ( Attribute addedValues : state.addedValues.values() )
+        {
+            Attribute attribute = entry.get( addedValues.getAttributeType() );
+
+            if ( attribute != null )
+            {
+                for ( Value<?> value : addedValues )
+                {
+                    attribute.add( value );
+                }
+            }
+            else if ( isReturned( filteringContext, addedValues ) )
+            {
+                entry.put( addedValues.clone() );
+            }
+        }
+    }
+
+
+    /**
+     * Tells if an attribute is returned by a read operation
+     */
+    private boolean isReturned( FilteringOperationContext filteringContext, Attribute attribute )
+    {
+        return ( filteringContext == null )
+            || filteringContext.contains( directoryService.getSchemaManager(), attribute.getAttributeType() );
+    }
+
+
+    /**
+     * Tells if there is a password policy state not yet written for an entry
+     */
+    private boolean hasState( Dn dn )
+    {
+        String normName = dn.getNormName();
+
+        return pending.containsKey( normName ) || inFlight.containsKey( normName );
+    }
+
+
+    /**
+     * Writes the pending state of a user, if any. This has to be done before the
+     * user entry is modified by another operation.
+     *
+     * @param dn The user entry Dn
+     * @throws LdapException If the state can't be written. It's kept in the store
+     */
+    public void flush( Dn dn ) throws LdapException
+    {
+        // Most of the time, there is nothing to write for this entry : don't
+        // wait for a batch being written by the flusher
+        if ( !hasState( dn ) )
+        {
+            return;
+        }
+
+        synchronized ( writeLock )
+        {
+            PendingState state;
+
+            synchronized ( this )
+            {
+                state = pending.get( dn.getNormName() );
+
+                if ( state == null )
+                {
+                    return;
+                }
+
+                inFlight.put( dn.getNormName(), state );
+                pending.remove( dn.getNormName() );
+            }
+
+            try
+            {
+                write( state );
+            }
+            catch ( LdapException le )
+            {
+                requeue( state );
+
+                throw le;
+            }
+            finally
+            {
+                synchronized ( this )
+                {
+                    inFlight.remove( dn.getNormName() );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Writes all the pending states. The states which can't be written are kept in
+     * the store.
+     *
+     * @throws LdapException The first error met while writing the states
+     */
+    public void flush() throws LdapException
+    {
+        synchronized ( writeLock )
+        {
+            synchronized ( this )
+            {
+                if ( pending.isEmpty() )
+                {
+                    return;
+                }
+
+                // The readers look at the pending states first
+                inFlight = pending;
+                pending = new ConcurrentHashMap<String, PendingState>();
+            }
+
+            LdapException failure = null;
+
+            for ( PendingState state : inFlight.values() )
+            {
+                try
+                {
+                    write( state );
+                }
+                catch ( LdapException le )
+                {
+                    requeue( state );
+
+                    if ( failure == null )
+                    {
+                        failure = le;
+                    }
+                }
+            }
+
+            synchronized ( this )
+            {
+                inFlight = new ConcurrentHashMap<String, PendingState>();
+            }
+
+            if ( failure != null )
+            {
+                throw failure;
+            }
+        }
+    }
+
+
+    /**
+     * Puts back a state which has not been written in the pending states. The values
+     * recorded since it was taken win over its own values.
+     */
+    private synchronized void requeue( PendingState state )
+    {
+        String normName = state.dn.getNormName();
+        PendingState newer = pending.get( normName );
+
+        if ( newer == null )
+        {
+            pending.put( normName, state );
+
+            return;
+        }
+
+        for ( Map.Entry<String, Attribute> attribute : state.attributes.entrySet() )
+        {
+            String oid = attribute.getKey();
+
+            if ( !newer.attributes.containsKey( oid ) )
+            {
+                // The values added since then complete the older final value
+                Attribute newerAdded = newer.addedValues.get( oid );
+
+                if ( newerAdded != null )
+                {
+                    newer.attributes.put( oid, merge( attribute.getValue(), newerAdded ) );
+                    newer.addedValues.remove( oid );
+                }
+                else
+                {
+                    newer.attributes.put( oid, attribute.getValue() );
+                }
+            }
+        }
+
+        for ( Map.Entry<String, Attribute> addedValues : state.addedValues.entrySet() )
+        {
+            String oid = addedValues.getKey();
+
+            // An attribute replaced since then has lost the older added values
+            if ( !newer.attributes.containsKey( oid ) )
+            {
+                Attribute newerAdded = newer.addedValues.get( oid );
+
+                newer.addedValues.put( oid, newerAdded == null ? addedValues.getValue() : merge(
+                    addedValues.getValue(), newerAdded ) );
+            }
+        }
+    }
+
+
+    /**
+     * Forgets the pending state of a user, when its entry is deleted.
+     *
+     * @param dn The user entry Dn
+     */
+    public synchronized void discard( Dn dn )
+    {
+        pending.remove( dn.getNormName() );
+    }
+
+
+    /**
+     * @return The number of users waiting for a flush
+     */
+    public int size()
+    {
+        return pending.size();
+    }
+
+
+    /**
+     * Write the state of a user in the backend
+     */
+    private void write( PendingState state ) throws LdapException
+    {
+        List<Modification> mods = new ArrayList<Modification>( state.attributes.size()
+            + state.addedValues.size() + 1 );
+
+        for ( Attribute attribute : state.attributes.values() )
+        {
+            mods.add( new DefaultModification( REPLACE_ATTRIBUTE, attribute ) );
+        }
+
+        for ( Attribute addedValues : state.addedValues.values() )
+        {
+            mods.add( new DefaultModification( ADD_ATTRIBUTE, addedValues ) );
+        }
+
+        try
+        {
+            String csnVal = directoryService.getCSN().toString();
+            mods.add( new DefaultModification( REPLACE_ATTRIBUTE, directoryService.getAtProvider().getEntryCSN(),
+                csnVal ) );
+
+            ModifyOperationContext modifyContext = new ModifyOperationContext( directoryService.getAdminSession() );
+            modifyContext.setDn( state.dn );
+            modifyContext.setModItems( mods );
+            modifyContext.setPushToEvtInterceptor( true );
+
+            modify( modifyContext );
+        }
+        catch ( LdapNoSuchObjectException lnsoe )
+        {
+            // The entry has been removed in the meantime
+            LOG.debug( "The entry {} does not exist anymore, its password policy state is dropped", state.dn );
+        }
+        catch ( LdapException le )
+        {
+            LOG.error( "Failed to write the password policy state of {}, it will be written again", state.dn, le );
+
+            throw le;
+        }
+    }
+
+
+    /**
+     * Applies a modification in the backend
+     *
+     * @param modifyContext The modification
+     * @throws LdapException If the entry can't be modified
+     */
+    protected void modify( ModifyOperationContext modifyContext ) throws LdapException
+    {
+        directoryService.getPartitionNexus().modify( modifyContext );
+    }
+
+
+    /**
+     * The thread writing the pending states, every flush interval or when asked to.
+     */
+    private class Flusher extends Thread
+    {
+        /** Set when the thread must stop */
+        private volatile boolean stop = false;
+
+        /** A lock used to wait */
+        private final Object lock = new Object();
+
+        /** Set when a flush has been requested */
+        private boolean requested = false;
+
+
+        private Flusher()
+        {
+            super( "PpolicyStateFlusher" );
+            setDaemon( true );
+        }
+
+
+        private void wakeUp()
+        {
+            synchronized ( lock )
+            {
+                requested = true;
+                lock.notifyAll();
+            }
+        }
+
+
+        private void shutdown()
+        {
+            stop = true;
+            wakeUp();
+
+            try
+            {
+                join();
+            }
+            catch ( InterruptedException ie )
+            {
+                LOG.warn( "Interrupted while waiting for the PpolicyStateFlusher thread to stop", ie );
+            }
+        }
+
+
+        @Override
+        public void run()
+        {
+            while ( !stop )
+            {
+                try
+                {
+                    synchronized ( lock )
+                    {
+                        if ( !requested )
+                        {
+                            lock.wait( flushInterval );
+                        }
+
+                        requested = false;
+                    }
+                }
+                catch ( InterruptedException ie )
+                {
+                    LOG.warn( "PpolicyStateFlusher thread was interrupted", ie );
+                }
+
+                try
+                {
+                    flush();
+                }
+                catch ( LdapException le )
+                {
+                    // Already logged, the states will be written again with the next flush
+                }
+            }
+        }
+    }
+}
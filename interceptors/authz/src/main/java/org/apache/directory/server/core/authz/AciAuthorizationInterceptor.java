@@ -53,6 +53,7 @@ import org.apache.directory.api.ldap.model.message.SearchScope;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.normalizers.ConcreteNameComponentNormalizer;
+import org.apache.directory.api.ldap.model.subtree.Subentry;
 import org.apache.directory.server.constants.ServerDNConstants;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.DirectoryService;
@@ -355,6 +356,7 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
         }
 
         Attribute oc = originalEntry.get( directoryService.getAtProvider().getObjectClass() );
+        Dn protectedDn = dn;
 
         /*
          * If the protected entry is a subentry, then the entry being evaluated
@@ -373,9 +375,18 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
                 SchemaConstants.ALL_ATTRIBUTES_ARRAY );
 
             originalEntry = directoryService.getPartitionNexus().lookup( lookupContext );
+            protectedDn = parentDn;
         }
 
         Attribute subentries = originalEntry.get( directoryService.getAtProvider().getAccessControlSubentries() );
+        Set<Dn> pendingSubentries = directoryService.getSubentryCache().getPendingUpdates();
+
+        if ( !pendingSubentries.isEmpty() )
+        {
+            addPendingPerscriptiveAciTuples( tuples, protectedDn, originalEntry, subentries, pendingSubentries );
+
+            return;
+        }
 
         if ( subentries == null )
         {
@@ -390,6 +401,52 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * Adds the perscriptiveACI tuples while the entries selected by some subentries are
+     * being updated in the background. The references stored in the entry can't be
+     * trusted for those subentries : their subtreeSpecification is evaluated instead.
+     */
+    private void addPendingPerscriptiveAciTuples( Collection<ACITuple> tuples, Dn dn, Entry entry,
+        Attribute subentries, Set<Dn> pendingSubentries ) throws LdapException
+    {
+        Set<String> pendingNames = new HashSet<String>();
+
+        for ( Dn subentryDn : pendingSubentries )
+        {
+            pendingNames.add( subentryDn.getNormName() );
+            Subentry subentry = directoryService.getSubentryCache().getSubentry( subentryDn );
+
+            if ( ( subentry == null ) || !subentry.isAccessControlAdminRole() )
+            {
+                continue;
+            }
+
+            Dn apDn = subentryDn.getParent();
+
+            if ( dn.isDescendantOf( apDn )
+                && directoryService.getEvaluator().evaluate( subentry.getSubtreeSpecification(), apDn, dn, entry ) )
+            {
+                tuples.addAll( tupleCache.getACITuples( subentryDn.getNormName() ) );
+            }
+        }
+
+        if ( subentries == null )
+        {
+            return;
+        }
+
+        for ( Value<?> value : subentries )
+        {
+            String subentryDn = value.getString();
+
+            if ( !pendingNames.contains( subentryDn ) )
+            {
+                tuples.addAll( tupleCache.getACITuples( subentryDn ) );
+            }
+        }
+    }
+
+
     /**
      * Adds the set of entryACI tuples to a collection of tuples.  The entryACI
      * is parsed and tuples are generated on they fly then added to the collection.
@@ -1353,7 +1410,6 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
         {
             // if attribute type scope access is not allowed then remove the attribute and continue
             AttributeType attributeType = attribute.getAttributeType();
-            Attribute attr = clonedEntry.get( attributeType );
 
             aciContext = new AciContext( schemaManager, opContext );
             aciContext.setUserGroupNames( userGroups );
@@ -1375,14 +1431,14 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
             List<Value<?>> valueToRemove = new ArrayList<Value<?>>();
 
             // attribute type scope is ok now let's determine value level scope
-            for ( Value<?> value : attr )
+            for ( Value<?> value : attribute )
             {
                 aciContext = new AciContext( schemaManager, opContext );
                 aciContext.setUserGroupNames( userGroups );
                 aciContext.setUserDn( userDn );
                 aciContext.setAuthenticationLevel( principal.getAuthenticationLevel() );
                 aciContext.setEntryDn( normName );
-                aciContext.setAttributeType( attr.getAttributeType() );
+                aciContext.setAttributeType( attributeType );
                 aciContext.setAttrValue( value );
                 aciContext.setMicroOperations( SEARCH_ATTRVAL_PERMS );
                 aciContext.setAciTuples( tuples );
@@ -1394,14 +1450,24 @@ public class AciAuthorizationInterceptor extends BaseInterceptor
                 }
             }
 
-            for ( Value<?> value : valueToRemove )
+            if ( valueToRemove.size() == attribute.size() )
             {
-                attr.remove( value );
+                attributeToRemove.add( attributeType );
+
+                continue;
             }
 
-            if ( attr.size() == 0 )
+            if ( valueToRemove.isEmpty() )
             {
-                attributeToRemove.add( attributeType );
+                continue;
+            }
+
+            // The attribute may be shared with the cached entry : get a modifiable one
+            Attribute attr = clonedEntry.get( attributeType );
+
+            for ( Value<?> value : valueToRemove )
+            {
+                attr.remove( value );
             }
         }
 
@@ -382,30 +382,28 @@ public class GroupCache
     public void groupModified( Dn name, List<Modification> mods, Entry entry, SchemaManager schemaManager )
         throws LdapException
     {
-        Attribute members = null;
         AttributeType memberAttr = null;
         Attribute oc = entry.get( directoryService.getAtProvider().getObjectClass() );
 
         if ( oc.contains( SchemaConstants.GROUP_OF_NAMES_OC ) )
         {
             memberAttr = directoryService.getAtProvider().getMember();
-            members = entry.get( memberAttr );
         }
 
         if ( oc.contains( SchemaConstants.GROUP_OF_UNIQUE_NAMES_OC ) )
         {
             memberAttr = directoryService.getAtProvider().getUniqueMember();
-            members = entry.get( memberAttr );
         }
 
-        if ( members == null )
+        // Don't get the members : the attribute may be huge, and would be copied
+        if ( ( memberAttr == null ) || !entry.containsAttribute( memberAttr ) )
         {
             return;
         }
 
         for ( Modification modification : mods )
         {
-            if ( memberAttr.getOid() == modification.getAttribute().getId() )
+            if ( memberAttr.equals( modification.getAttribute().getAttributeType() ) )
             {
                 Element memSetElement = ehCache.get( name.getNormName() );
 
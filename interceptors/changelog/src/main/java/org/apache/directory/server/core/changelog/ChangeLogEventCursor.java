@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import java.io.IOException;
+
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.ClosureMonitor;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
+import org.apache.directory.server.core.api.changelog.RevisionOrder;
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A Cursor over a range of revisions of the {@link JdbmChangeLogStore}. It browses
+ * the revision B-tree directly, starting at the first revision of the range, and
+ * stops as soon as it gets out of the range. The events can be returned in
+ * ascending or descending revision order, and can be filtered.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class ChangeLogEventCursor extends AbstractCursor<ChangeLogEvent>
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( Loggers.CURSOR_LOG.getName() );
+
+    /** Speedup for logs */
+    private static final boolean IS_DEBUG = LOG_CURSOR.isDebugEnabled();
+
+    /** The underlying revision table cursor */
+    private final Cursor<Tuple<Long, ChangeLogEvent>> wrapped;
+
+    /** The first revision of the range, inclusive */
+    private final long startRevision;
+
+    /** The last revision of the range, inclusive */
+    private final long endRevision;
+
+    /** Tells if we return the events in ascending revision order */
+    private final boolean ascending;
+
+    /** An optional filter */
+    private final ChangeLogEventFilter filter;
+
+    /** The current event */
+    private ChangeLogEvent current;
+
+
+    /**
+     * Creates a new instance of ChangeLogEventCursor.
+     *
+     * @param wrapped The revision table cursor
+     * @param startRevision The first revision of the range, inclusive
+     * @param endRevision The last revision of the range, inclusive
+     * @param order The order in which the events are returned
+     * @param filter The filter the events must match, or null
+     */
+    ChangeLogEventCursor( Cursor<Tuple<Long, ChangeLogEvent>> wrapped, long startRevision, long endRevision,
+        RevisionOrder order, ChangeLogEventFilter filter )
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Creating ChangeLogEventCursor {}", this );
+        }
+
+        this.wrapped = wrapped;
+        this.startRevision = startRevision;
+        this.endRevision = endRevision;
+        this.ascending = order.isAscending();
+        this.filter = filter;
+    }
+
+
+    private Tuple<Long, ChangeLogEvent> key( long revision )
+    {
+        return new Tuple<Long, ChangeLogEvent>( revision, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void before( ChangeLogEvent element ) throws LdapException, CursorException
+    {
+        if ( ascending )
+        {
+            wrapped.before( key( element.getRevision() ) );
+        }
+        else
+        {
+            wrapped.after( key( element.getRevision() ) );
+        }
+
+        current = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void after( ChangeLogEvent element ) throws LdapException, CursorException
+    {
+        if ( ascending )
+        {
+            wrapped.after( key( element.getRevision() ) );
+        }
+        else
+        {
+            wrapped.before( key( element.getRevision() ) );
+        }
+
+        current = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        if ( ascending )
+        {
+            wrapped.before( key( startRevision ) );
+        }
+        else
+        {
+            wrapped.after( key( endRevision ) );
+        }
+
+        current = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void afterLast() throws LdapException, CursorException
+    {
+        if ( ascending )
+        {
+            wrapped.after( key( endRevision ) );
+        }
+        else
+        {
+            wrapped.before( key( startRevision ) );
+        }
+
+        current = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean last() throws LdapException, CursorException
+    {
+        afterLast();
+
+        return previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean next() throws LdapException, CursorException
+    {
+        return move( ascending );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean previous() throws LdapException, CursorException
+    {
+        return move( !ascending );
+    }
+
+
+    /**
+     * Move the underlying cursor up or down the revisions until we find an
+     * event in the range accepted by the filter.
+     */
+    private boolean move( boolean up ) throws LdapException, CursorException
+    {
+        while ( up ? wrapped.next() : wrapped.previous() )
+        {
+            Tuple<Long, ChangeLogEvent> tuple = wrapped.get();
+            long revision = tuple.getKey();
+
+            if ( up ? ( revision > endRevision ) : ( revision < startRevision ) )
+            {
+                // We are out of the range, no need to go any further
+                break;
+            }
+
+            if ( ( revision < startRevision ) || ( revision > endRevision ) )
+            {
+                continue;
+            }
+
+            if ( ( filter == null ) || filter.accept( tuple.getValue() ) )
+            {
+                current = tuple.getValue();
+
+                return true;
+            }
+        }
+
+        current = null;
+
+        return false;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean available()
+    {
+        return current != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public ChangeLogEvent get() throws CursorException
+    {
+        if ( current == null )
+        {
+            throw new InvalidCursorPositionException( I18n.err( I18n.ERR_708 ) );
+        }
+
+        return current;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public final void setClosureMonitor( ClosureMonitor monitor )
+    {
+        wrapped.setClosureMonitor( monitor );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isClosed()
+    {
+        return wrapped.isClosed();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing ChangeLogEventCursor {}", this );
+        }
+
+        current = null;
+        wrapped.close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close( Exception cause ) throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing ChangeLogEventCursor {}", this );
+        }
+
+        current = null;
+        wrapped.close( cause );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString( String tabs )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( tabs ).append( "ChangeLogEventCursor [" ).append( startRevision ).append( ", " );
+        sb.append( endRevision ).append( "]" ).append( ascending ? " ascending" : " descending" );
+
+        if ( filter != null )
+        {
+            sb.append( " (filtered)" );
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        return toString( "" );
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+
+import jdbm.helper.Serializer;
+
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
+import org.apache.directory.server.core.api.changelog.ChangeLogEventSerializer;
+
+
+/**
+ * A JDBM serializer for the {@link ChangeLogEvent}s stored in the {@link JdbmChangeLogStore}.
+ * It delegates to the {@link ChangeLogEventSerializer}.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ChangeLogEventJdbmSerializer implements Serializer
+{
+    /** The serialVersionUID */
+    private static final long serialVersionUID = 1L;
+
+    /** The schemaManager */
+    private transient SchemaManager schemaManager;
+
+
+    /**
+     * Creates a new instance of ChangeLogEventJdbmSerializer.
+     *
+     * @param schemaManager The reference to the global schemaManager
+     */
+    public ChangeLogEventJdbmSerializer( SchemaManager schemaManager )
+    {
+        this.schemaManager = schemaManager;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public byte[] serialize( Object object ) throws IOException
+    {
+        try ( ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutput out = new ObjectOutputStream( baos ) )
+        {
+            ChangeLogEventSerializer.serialize( ( ChangeLogEvent ) object, out );
+            out.flush();
+
+            return baos.toByteArray();
+        }
+    }
+
+
+    /**
+     *  Deserialize a ChangeLogEvent.
+     *
+     *  @param bytes the byte array containing the serialized ChangeLogEvent
+     *  @return An instance of a ChangeLogEvent object
+     *  @throws IOException if we can't deserialize the ChangeLogEvent
+     */
+    public Object deserialize( byte[] bytes ) throws IOException
+    {
+        try ( ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( bytes ) ) )
+        {
+            ChangeLogEvent event = ChangeLogEventSerializer.deserialize( schemaManager, in );
+            event.getCommitterPrincipal().setSchemaManager( schemaManager );
+
+            return event;
+        }
+        catch ( LdapInvalidDnException lide )
+        {
+            IOException ioe = new IOException( lide.getMessage() );
+            ioe.initCause( lide );
+            throw ioe;
+        }
+    }
+}
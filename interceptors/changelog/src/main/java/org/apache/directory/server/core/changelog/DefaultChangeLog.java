@@ -36,24 +36,18 @@ import org.apache.directory.server.core.api.changelog.Tag;
 import org.apache.directory.server.core.api.changelog.TagSearchEngine;
 import org.apache.directory.server.core.api.changelog.TaggableChangeLogStore;
 import org.apache.directory.server.core.api.changelog.TaggableSearchableChangeLogStore;
-import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.i18n.I18n;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
- * The default ChangeLog service implementation. It stores operations 
- * in memory.
+ * The default ChangeLog service implementation. Unless another store is set, the
+ * operations are stored on disk by a {@link JdbmChangeLogStore}, in the instance
+ * log directory.
  * 
- * Entries are stored into a dedicated partition, named ou=changelog, under which
- * we have two other sub-entries : ou=tags and ou= revisions :
- * 
- *  ou=changelog
- *    |
- *    +-- ou=revisions
- *    |
- *    +-- ou=tags
+ * The changes can't be exposed to the clients as a partition : the exposed flag is
+ * kept for the configuration, but no store supports it.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -69,7 +63,7 @@ public class DefaultChangeLog implements ChangeLog
     private Tag latest;
 
     /** 
-     * The default store is a InMemory store.
+     * The default store is a JDBM store.
      **/
     private ChangeLogStore store;
 
@@ -329,22 +323,16 @@ public class DefaultChangeLog implements ChangeLog
         {
             if ( store == null )
             {
-                // If no store has been defined, create an In Memory store
-                store = new MemoryChangeLogStore();
+                // If no store has been defined, create a JDBM store
+                store = new JdbmChangeLogStore();
             }
 
             store.init( service );
 
-            if ( exposed && isTagSearchSupported() )
+            if ( exposed )
             {
-                TaggableSearchableChangeLogStore tmp = ( TaggableSearchableChangeLogStore ) store;
-
-                tmp.createPartition( partitionSuffix, revContainerName, tagContainerName );
-
-                Partition partition = tmp.getPartition();
-                partition.initialize();
-
-                service.addPartition( partition );
+                LOG.warn( "The change log can't be exposed as the {} partition, the changes are only "
+                    + "available through the ChangeLog API", partitionSuffix );
             }
         }
 
@@ -0,0 +1,1198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import jdbm.RecordManager;
+import jdbm.helper.MRU;
+import jdbm.helper.StringComparator;
+import jdbm.recman.BaseRecordManager;
+import jdbm.recman.CacheRecordManager;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.ListCursor;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.filter.AndNode;
+import org.apache.directory.api.ldap.model.filter.BranchNode;
+import org.apache.directory.api.ldap.model.filter.EqualityNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.GreaterEqNode;
+import org.apache.directory.api.ldap.model.filter.LessEqNode;
+import org.apache.directory.api.ldap.model.filter.NotNode;
+import org.apache.directory.api.ldap.model.filter.OrNode;
+import org.apache.directory.api.ldap.model.filter.ScopeNode;
+import org.apache.directory.api.ldap.model.filter.SimpleNode;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.ObjectClass;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.SchemaObject;
+import org.apache.directory.api.ldap.model.schema.comparators.SerializableComparator;
+import org.apache.directory.api.util.DateUtils;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
+import org.apache.directory.server.core.api.changelog.ChangeLogSearchEngine;
+import org.apache.directory.server.core.api.changelog.RevisionOrder;
+import org.apache.directory.server.core.api.changelog.Tag;
+import org.apache.directory.server.core.api.changelog.TagSearchEngine;
+import org.apache.directory.server.core.api.changelog.TaggableSearchableChangeLogStore;
+import org.apache.directory.server.core.partition.impl.btree.LongComparator;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmTable;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.LongSerializer;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.StringSerializer;
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A change log store keeping its events on disk, in JDBM B-trees. Unlike the
+ * {@link MemoryChangeLogStore}, the events are not kept in memory : they are written
+ * when logged, and read back when browsed, only a bounded cache of pages being kept
+ * in memory.
+ *
+ * The store contains three tables :
+ * <ul>
+ *   <li>the events, indexed by revision</li>
+ *   <li>the revisions, indexed by the normalized Dn of the modified entry</li>
+ *   <li>the tags, indexed by revision</li>
+ * </ul>
+ *
+ * A revision range is read by positioning a cursor on its first revision and
+ * browsing the B-tree until the last one, so the cost of a lookup does not depend
+ * on the size of the log. The searches on a principal, a change type, an attribute
+ * type or an object class are done by browsing the events, as they are not indexed.
+ * The searches using a filter are done the same way, the filter being evaluated
+ * against each event.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmChangeLogStore implements TaggableSearchableChangeLogStore
+{
+    /** The class logger */
+    private static final Logger LOG = LoggerFactory.getLogger( JdbmChangeLogStore.class );
+
+    /** The name of the store file, in the log directory */
+    private static final String CHANGELOG_DB = "changelog";
+
+    /** The table names */
+    private static final String REVISIONS_TABLE = "revisions";
+    private static final String DN_TABLE = "dnIndex";
+    private static final String TAGS_TABLE = "tags";
+
+    /** The default number of pages to keep in memory */
+    public static final int DEFAULT_CACHE_SIZE = 100;
+
+    /** The number of revisions for a Dn above which they are stored in a B-tree */
+    private static final int DN_DUPLICATE_LIMIT = 512;
+
+    /** The prefixes used to store the tags description, as it may be null */
+    private static final String NULL_DESCRIPTION = "-";
+    private static final String DESCRIPTION_PREFIX = "+";
+
+    private static final StringComparator STRCOMP = new StringComparator();
+
+    private static final SerializableComparator<String> STRING_COMPARATOR =
+        new SerializableComparator<String>( "1.3.6.1.4.1.18060.0.4.1.1.3" )
+        {
+            private static final long serialVersionUID = 3258689922792961845L;
+
+
+            public int compare( String o1, String o2 )
+            {
+                return STRCOMP.compare( o1, o2 );
+            }
+        };
+
+    /** An incremental number giving the current revision */
+    private volatile long currentRevision;
+
+    /** The latest tag */
+    private Tag latest;
+
+    /** The tags, ordered by revision. There are usually few tags, we keep them in memory */
+    private final NavigableMap<Long, Tag> tags = new TreeMap<Long, Tag>();
+
+    /** The record manager */
+    private RecordManager recMan;
+
+    /** The events, by revision */
+    private JdbmTable<Long, ChangeLogEvent> revisions;
+
+    /** The revisions, by entry normalized Dn */
+    private JdbmTable<String, Long> dnIndex;
+
+    /** The tags descriptions, by revision */
+    private JdbmTable<Long, String> tagTable;
+
+    /** The directory containing the store */
+    private File workingDirectory;
+
+    /** The number of pages to keep in memory */
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+
+    /** The search engines */
+    private final ChangeLogSearchEngine changeLogSearchEngine = new JdbmChangeLogSearchEngine();
+    private final TagSearchEngine tagSearchEngine = new JdbmTagSearchEngine();
+
+    /** The schemaManager, used to resolve the OIDs used in the search filters */
+    private SchemaManager schemaManager;
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void init( DirectoryService service ) throws Exception
+    {
+        if ( workingDirectory == null )
+        {
+            workingDirectory = service.getInstanceLayout().getLogDirectory();
+        }
+
+        init( service.getSchemaManager() );
+    }
+
+
+    /**
+     * Opens the store in the working directory.
+     *
+     * @param schemaManager The server schemaManager
+     * @throws Exception If the store can't be opened
+     */
+    void init( SchemaManager schemaManager ) throws Exception
+    {
+        this.schemaManager = schemaManager;
+
+        if ( !workingDirectory.exists() && !workingDirectory.mkdirs() )
+        {
+            throw new IOException( I18n.err( I18n.ERR_112_COULD_NOT_CREATE_DIRECORY, workingDirectory ) );
+        }
+
+        String path = new File( workingDirectory, CHANGELOG_DB ).getAbsolutePath();
+        LOG.debug( "Opening the change log store {}", path );
+
+        BaseRecordManager base = new BaseRecordManager( path );
+        base.getTransactionManager().setMaximumTransactionsInLog( 2000 );
+        recMan = new CacheRecordManager( base, new MRU( cacheSize ) );
+
+        revisions = new JdbmTable<Long, ChangeLogEvent>( schemaManager, REVISIONS_TABLE, recMan,
+            LongComparator.INSTANCE, LongSerializer.INSTANCE, new ChangeLogEventJdbmSerializer( schemaManager ) );
+        dnIndex = new JdbmTable<String, Long>( schemaManager, DN_TABLE, DN_DUPLICATE_LIMIT, recMan,
+            STRING_COMPARATOR, LongComparator.INSTANCE, StringSerializer.INSTANCE, LongSerializer.INSTANCE );
+        tagTable = new JdbmTable<Long, String>( schemaManager, TAGS_TABLE, recMan,
+            LongComparator.INSTANCE, LongSerializer.INSTANCE, StringSerializer.INSTANCE );
+
+        loadRevision();
+        loadTags();
+    }
+
+
+    /**
+     * Restore the current revision, which is the last revision stored
+     */
+    private void loadRevision() throws Exception
+    {
+        currentRevision = 0L;
+
+        Cursor<Tuple<Long, ChangeLogEvent>> cursor = revisions.cursor();
+
+        try
+        {
+            if ( cursor.last() )
+            {
+                currentRevision = cursor.get().getKey();
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+
+
+    private void loadTags() throws Exception
+    {
+        tags.clear();
+        latest = null;
+
+        Cursor<Tuple<Long, String>> cursor = tagTable.cursor();
+
+        try
+        {
+            while ( cursor.next() )
+            {
+                Tuple<Long, String> tuple = cursor.get();
+                String description = tuple.getValue();
+
+                if ( description.startsWith( DESCRIPTION_PREFIX ) )
+                {
+                    description = description.substring( DESCRIPTION_PREFIX.length() );
+                }
+                else
+                {
+                    description = null;
+                }
+
+                latest = new Tag( tuple.getKey(), description );
+                tags.put( tuple.getKey(), latest );
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+
+
+    /**
+     * Sets the directory the store will be created in. Defaults to the
+     * instance log directory.
+     *
+     * @param workingDirectory The store directory
+     */
+    public void setWorkingDirectory( File workingDirectory )
+    {
+        this.workingDirectory = workingDirectory;
+    }
+
+
+    /**
+     * Sets the number of pages kept in memory.
+     *
+     * @param cacheSize The number of pages
+     */
+    public void setCacheSize( int cacheSize )
+    {
+        this.cacheSize = cacheSize;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void sync() throws Exception
+    {
+        revisions.sync();
+        dnIndex.sync();
+        tagTable.sync();
+    }
+
+
+    /**
+     * Close the store. The events stay on disk.
+     */
+    public synchronized void destroy() throws Exception
+    {
+        if ( recMan != null )
+        {
+            revisions.close();
+            dnIndex.close();
+            tagTable.close();
+            recMan.close();
+            recMan = null;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getCurrentRevision()
+    {
+        return currentRevision;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, LdifEntry reverse ) throws Exception
+    {
+        List<LdifEntry> reverses = new ArrayList<LdifEntry>( 1 );
+        reverses.add( reverse );
+
+        return log( principal, forward, reverses );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, List<LdifEntry> reverses )
+        throws Exception
+    {
+        long revision = currentRevision + 1;
+        ChangeLogEvent event = new ChangeLogEvent( revision, DateUtils.getGeneralizedTime(),
+            principal, forward, reverses );
+
+        revisions.put( revision, event );
+
+        if ( forward.getDn() != null )
+        {
+            dnIndex.put( forward.getDn().getNormName(), revision );
+        }
+
+        currentRevision = revision;
+
+        return event;
+    }
+
+
+    private void checkRevision( long revision )
+    {
+        if ( revision < 0 )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_239 ) );
+        }
+
+        if ( revision > currentRevision )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_240 ) );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public ChangeLogEvent lookup( long revision ) throws Exception
+    {
+        checkRevision( revision );
+
+        return revisions.get( revision );
+    }
+
+
+    /**
+     * Creates a cursor over a revision range, inclusive. The revisions logged after
+     * the cursor creation are never seen.
+     */
+    private Cursor<ChangeLogEvent> cursor( long startRevision, long endRevision, RevisionOrder order,
+        ChangeLogEventFilter filter ) throws LdapException
+    {
+        return new ChangeLogEventCursor( revisions.cursor(), startRevision, Math.min( endRevision,
+            currentRevision ), order, filter );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Cursor<ChangeLogEvent> find() throws Exception
+    {
+        return cursor( 0L, currentRevision, RevisionOrder.AscendingOrder, null );
+    }
+
+
+    /**
+     * Gets a Cursor over the ChangeLogEvents that occurred before a revision, inclusive.
+     */
+    public Cursor<ChangeLogEvent> findBefore( long revision ) throws Exception
+    {
+        checkRevision( revision );
+
+        return cursor( 0L, revision, RevisionOrder.AscendingOrder, null );
+    }
+
+
+    /**
+     * Gets a Cursor over the ChangeLogEvents that occurred after a revision, exclusive.
+     */
+    public Cursor<ChangeLogEvent> findAfter( long revision ) throws LdapException
+    {
+        checkRevision( revision );
+
+        return cursor( revision + 1, currentRevision, RevisionOrder.AscendingOrder, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Cursor<ChangeLogEvent> find( long startRevision, long endRevision ) throws Exception
+    {
+        checkRevision( startRevision );
+        checkRevision( endRevision );
+
+        if ( startRevision > endRevision )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_240 ) );
+        }
+
+        return cursor( startRevision, endRevision, RevisionOrder.AscendingOrder, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Tag tag( long revision ) throws Exception
+    {
+        return tag( revision, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Tag tag() throws Exception
+    {
+        return tag( currentRevision, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Tag tag( String description ) throws Exception
+    {
+        return tag( currentRevision, description );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Tag tag( long revision, String description ) throws Exception
+    {
+        Tag tag = tags.get( revision );
+
+        if ( tag != null )
+        {
+            return tag;
+        }
+
+        latest = new Tag( revision, description );
+        tags.put( revision, latest );
+        tagTable.put( revision, description == null ? NULL_DESCRIPTION : DESCRIPTION_PREFIX + description );
+
+        return latest;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Tag getLatest() throws LdapException
+    {
+        return latest;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Tag removeTag( long revision ) throws Exception
+    {
+        Tag removed = tags.remove( revision );
+
+        if ( removed != null )
+        {
+            tagTable.remove( revision );
+
+            if ( removed == latest )
+            {
+                Map.Entry<Long, Tag> last = tags.lastEntry();
+                latest = ( last == null ) ? null : last.getValue();
+            }
+        }
+
+        return removed;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public ChangeLogSearchEngine getChangeLogSearchEngine()
+    {
+        return changeLogSearchEngine;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public TagSearchEngine getTagSearchEngine()
+    {
+        return tagSearchEngine;
+    }
+
+
+    /**
+     * Tells if a schema object has a given name or OID
+     */
+    private static boolean hasName( SchemaObject schemaObject, String name )
+    {
+        if ( schemaObject.getOid().equals( name ) )
+        {
+            return true;
+        }
+
+        for ( String alias : schemaObject.getNames() )
+        {
+            if ( alias.equalsIgnoreCase( name ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Tells if an attribute is an instance of an AttributeType
+     */
+    private static boolean isAttributeType( Attribute attribute, AttributeType attributeType )
+    {
+        if ( attribute.getAttributeType() != null )
+        {
+            return attribute.getAttributeType().getOid().equals( attributeType.getOid() );
+        }
+
+        return hasName( attributeType, attribute.getId() );
+    }
+
+
+    /**
+     * Tells if an attribute contains an ObjectClass name
+     */
+    private static boolean containsObjectClass( Attribute attribute, ObjectClass objectClass )
+    {
+        if ( !SchemaConstants.OBJECT_CLASS_AT.equalsIgnoreCase( attribute.getId() )
+            && !SchemaConstants.OBJECT_CLASS_AT_OID.equals( attribute.getId() ) )
+        {
+            return false;
+        }
+
+        for ( Value<?> value : attribute )
+        {
+            if ( hasName( objectClass, value.getString() ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Accepts the events on the entries in the scope of a base Dn
+     */
+    private static ChangeLogEventFilter scopeFilter( final Dn base, final SearchScope scope )
+    {
+        return new ChangeLogEventFilter()
+        {
+            public boolean accept( ChangeLogEvent event )
+            {
+                Dn dn = event.getForwardLdif().getDn();
+
+                if ( ( dn == null ) || !dn.isDescendantOf( base ) )
+                {
+                    return false;
+                }
+
+                switch ( scope )
+                {
+                    case OBJECT:
+                        return dn.equals( base );
+
+                    case ONELEVEL:
+                        return ( dn.size() > 0 ) && dn.getParent().equals( base );
+
+                    default:
+                        return true;
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Accepts the events committed by a principal
+     */
+    private static ChangeLogEventFilter principalFilter( final Dn principalDn )
+    {
+        return new ChangeLogEventFilter()
+        {
+            public boolean accept( ChangeLogEvent event )
+            {
+                Dn committer = event.getCommitterPrincipal().getDn();
+
+                return ( committer != null ) && committer.equals( principalDn );
+            }
+        };
+    }
+
+
+    /**
+     * Accepts the events of a change type
+     */
+    private static ChangeLogEventFilter changeTypeFilter( final ChangeType changeType )
+    {
+        return new ChangeLogEventFilter()
+        {
+            public boolean accept( ChangeLogEvent event )
+            {
+                return event.getForwardLdif().getChangeType() == changeType;
+            }
+        };
+    }
+
+
+    /**
+     * Accepts the additions of entries having an attribute, and the modifications of
+     * this attribute
+     */
+    private static ChangeLogEventFilter attributeTypeFilter( final AttributeType attributeType )
+    {
+        return new ChangeLogEventFilter()
+        {
+            public boolean accept( ChangeLogEvent event )
+            {
+                LdifEntry forward = event.getForwardLdif();
+
+                if ( forward.getChangeType() == ChangeType.Add )
+                {
+                    for ( Attribute attribute : forward.getEntry() )
+                    {
+                        if ( isAttributeType( attribute, attributeType ) )
+                        {
+                            return true;
+                        }
+                    }
+                }
+                else if ( forward.getChangeType() == ChangeType.Modify )
+                {
+                    for ( Modification modification : forward.getModifications() )
+                    {
+                        if ( isAttributeType( modification.getAttribute(), attributeType ) )
+                        {
+                            return true;
+                        }
+                    }
+                }
+
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * Accepts the additions of entries of an ObjectClass, and the modifications
+     * adding or removing this ObjectClass
+     */
+    private static ChangeLogEventFilter objectClassFilter( final ObjectClass objectClass )
+    {
+        return new ChangeLogEventFilter()
+        {
+            public boolean accept( ChangeLogEvent event )
+            {
+                LdifEntry forward = event.getForwardLdif();
+
+                if ( forward.getChangeType() == ChangeType.Add )
+                {
+                    Attribute objectClasses = forward.getEntry().get( SchemaConstants.OBJECT_CLASS_AT );
+
+                    return ( objectClasses != null ) && containsObjectClass( objectClasses, objectClass );
+                }
+                else if ( forward.getChangeType() == ChangeType.Modify )
+                {
+                    for ( Modification modification : forward.getModifications() )
+                    {
+                        if ( containsObjectClass( modification.getAttribute(), objectClass ) )
+                        {
+                            return true;
+                        }
+                    }
+                }
+
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * Accepts the events whose revision or time compares to an asserted value as
+     * required by the assertion : 0 for an equality, a positive value for a
+     * greaterOrEqual, a negative value for a lessOrEqual
+     */
+    private static ChangeLogEventFilter compareFilter( final boolean isRevision, final String value,
+        final int assertion )
+    {
+        final long revision = isRevision ? Long.parseLong( value ) : 0L;
+
+        return new ChangeLogEventFilter()
+        {
+            public boolean accept( ChangeLogEvent event )
+            {
+                int comparison;
+
+                if ( isRevision )
+                {
+                    comparison = Long.valueOf( event.getRevision() ).compareTo( revision );
+                }
+                else
+                {
+                    comparison = event.getZuluTime().compareTo( value );
+                }
+
+                if ( assertion == 0 )
+                {
+                    return comparison == 0;
+                }
+                else if ( assertion > 0 )
+                {
+                    return comparison >= 0;
+                }
+                else
+                {
+                    return comparison <= 0;
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Builds the event filter evaluating a filter expression tree, as described in
+     * {@link ChangeLogSearchEngine#find(ExprNode, RevisionOrder)}.
+     *
+     * @param node The filter
+     * @return The event filter
+     * @throws LdapException If the filter uses an unsupported attribute or assertion
+     */
+    ChangeLogEventFilter buildFilter( ExprNode node ) throws LdapException
+    {
+        if ( ( node instanceof AndNode ) || ( node instanceof OrNode ) )
+        {
+            final boolean isAnd = node instanceof AndNode;
+            final List<ChangeLogEventFilter> filters = new ArrayList<ChangeLogEventFilter>();
+
+            for ( ExprNode child : ( ( BranchNode ) node ).getChildren() )
+            {
+                filters.add( buildFilter( child ) );
+            }
+
+            return new ChangeLogEventFilter()
+            {
+                public boolean accept( ChangeLogEvent event )
+                {
+                    for ( ChangeLogEventFilter filter : filters )
+                    {
+                        if ( filter.accept( event ) != isAnd )
+                        {
+                            return !isAnd;
+                        }
+                    }
+
+                    return isAnd;
+                }
+            };
+        }
+
+        if ( node instanceof NotNode )
+        {
+            final ChangeLogEventFilter filter = buildFilter( ( ( NotNode ) node ).getFirstChild() );
+
+            return new ChangeLogEventFilter()
+            {
+                public boolean accept( ChangeLogEvent event )
+                {
+                    return !filter.accept( event );
+                }
+            };
+        }
+
+        if ( node instanceof ScopeNode )
+        {
+            ScopeNode scopeNode = ( ScopeNode ) node;
+
+            return scopeFilter( scopeNode.getBaseDn(), scopeNode.getScope() );
+        }
+
+        int assertion;
+
+        if ( node instanceof EqualityNode )
+        {
+            assertion = 0;
+        }
+        else if ( node instanceof GreaterEqNode )
+        {
+            assertion = 1;
+        }
+        else if ( node instanceof LessEqNode )
+        {
+            assertion = -1;
+        }
+        else
+        {
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                "Unsupported change log filter : " + node );
+        }
+
+        SimpleNode<?> simpleNode = ( SimpleNode<?> ) node;
+        String attribute = simpleNode.getAttribute();
+        String value = simpleNode.getValue().getString();
+
+        try
+        {
+            if ( "revision".equalsIgnoreCase( attribute ) )
+            {
+                return compareFilter( true, value, assertion );
+            }
+
+            if ( "date".equalsIgnoreCase( attribute ) )
+            {
+                return compareFilter( false, value, assertion );
+            }
+
+            // The other attributes only support the equality
+            if ( assertion == 0 )
+            {
+                if ( "ndn".equalsIgnoreCase( attribute ) )
+                {
+                    return scopeFilter( new Dn( schemaManager, value ), SearchScope.OBJECT );
+                }
+
+                if ( "principal".equalsIgnoreCase( attribute ) )
+                {
+                    return principalFilter( new Dn( schemaManager, value ) );
+                }
+
+                if ( "changeType".equalsIgnoreCase( attribute ) )
+                {
+                    return changeTypeFilter( ChangeType.valueOf( value ) );
+                }
+
+                if ( "attributeType".equalsIgnoreCase( attribute ) )
+                {
+                    return attributeTypeFilter( schemaManager.lookupAttributeTypeRegistry( value ) );
+                }
+
+                if ( "objectClass".equalsIgnoreCase( attribute ) )
+                {
+                    return objectClassFilter( schemaManager.lookupObjectClassRegistry( value ) );
+                }
+            }
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                "Invalid value in the change log filter " + node + " : " + iae.getMessage() );
+        }
+
+        throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+            "Unsupported change log filter : " + node );
+    }
+
+
+    /**
+     * The search engine, browsing the revision B-tree
+     */
+    private class JdbmChangeLogSearchEngine implements ChangeLogSearchEngine
+    {
+        /**
+         * {@inheritDoc}
+         */
+        public long lookup( String generalizedTime ) throws Exception
+        {
+            // The revisions are contiguous and their times ordered : dichotomic search
+            long low = 1L;
+            long high = currentRevision;
+            long found = 0L;
+
+            while ( low <= high )
+            {
+                long middle = ( low + high ) >>> 1;
+                ChangeLogEvent event = revisions.get( middle );
+
+                if ( ( event != null ) && ( event.getZuluTime().compareTo( generalizedTime ) <= 0 ) )
+                {
+                    found = middle;
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle - 1;
+                }
+            }
+
+            return found;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public ChangeLogEvent lookup( long revision ) throws Exception
+        {
+            return JdbmChangeLogStore.this.lookup( revision );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public Cursor<ChangeLogEvent> find( RevisionOrder order ) throws Exception
+        {
+            return cursor( 0L, currentRevision, order, null );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public Cursor<ChangeLogEvent> findBefore( long revision, RevisionOrder order ) throws Exception
+        {
+            checkRevision( revision );
+
+            return cursor( 0L, revision, order, null );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public Cursor<ChangeLogEvent> findAfter( long revision, RevisionOrder order ) throws Exception
+        {
+            checkRevision( revision );
+
+            return cursor( revision, currentRevision, order, null );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public Cursor<ChangeLogEvent> find( long startRevision, long endRevision, RevisionOrder order )
+            throws Exception
+        {
+            checkRevision( startRevision );
+            checkRevision( endRevision );
+
+            if ( startRevision > endRevision )
+            {
+                throw new IllegalArgumentException( I18n.err( I18n.ERR_240 ) );
+            }
+
+            return cursor( startRevision, endRevision, order, null );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public Cursor<ChangeLogEvent> find( Dn dn, RevisionOrder order ) throws Exception
+        {
+            return new RevisionLookupCursor( dnIndex.valueCursor( dn.getNormName() ), revisions,
+                currentRevision, order );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public Cursor<ChangeLogEvent> find( Dn base, SearchScope scope, RevisionOrder order )
+            throws Exception
+        {
+            if ( scope == SearchScope.OBJECT )
+            {
+                return find( base, order );
+            }
+
+            return cursor( 0L, currentRevision, order, scopeFilter( base, scope ) );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public Cursor<ChangeLogEvent> find( LdapPrincipal principal, RevisionOrder order ) throws Exception
+        {
+            return cursor( 0L, currentRevision, order, principalFilter( principal.getDn() ) );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public Cursor<ChangeLogEvent> find( ChangeType changeType, RevisionOrder order ) throws Exception
+        {
+            return cursor( 0L, currentRevision, order, changeTypeFilter( changeType ) );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public Cursor<ChangeLogEvent> find( AttributeType attributeType, RevisionOrder order ) throws Exception
+        {
+            return cursor( 0L, currentRevision, order, attributeTypeFilter( attributeType ) );
+        }
+
+
+        /**
+         * Finds the additions of entries of an ObjectClass, and the modifications
+         * adding or removing this ObjectClass.
+         */
+        public Cursor<ChangeLogEvent> find( ObjectClass objectClass, RevisionOrder order ) throws Exception
+        {
+            return cursor( 0L, currentRevision, order, objectClassFilter( objectClass ) );
+        }
+
+
+        /**
+         * Finds the events matching the filter, by browsing all the events. The filter
+         * is checked before browsing : a filter using an attribute or an assertion which
+         * is not supported is rejected with an LdapUnwillingToPerformException.
+         */
+        public Cursor<ChangeLogEvent> find( ExprNode filter, RevisionOrder order ) throws Exception
+        {
+            return cursor( 0L, currentRevision, order, buildFilter( filter ) );
+        }
+    }
+
+
+    /**
+     * The tag search engine, using the in-memory tags
+     */
+    private class JdbmTagSearchEngine implements TagSearchEngine
+    {
+        /**
+         * {@inheritDoc}
+         */
+        public Tag lookup( long revision ) throws Exception
+        {
+            synchronized ( JdbmChangeLogStore.this )
+            {
+                return tags.get( revision );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean has( long revision ) throws Exception
+        {
+            synchronized ( JdbmChangeLogStore.this )
+            {
+                return tags.containsKey( revision );
+            }
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public Cursor<Tag> find( RevisionOrder order ) throws Exception
+        {
+            return find( 0L, currentRevision, order );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public Cursor<Tag> findBefore( long revision, RevisionOrder order ) throws Exception
+        {
+            checkRevision( revision );
+
+            return find( 0L, revision, order );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public Cursor<Tag> findAfter( long revision, RevisionOrder order ) throws Exception
+        {
+            checkRevision( revision );
+
+            return find( revision, currentRevision, order );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public Cursor<Tag> find( long startRevision, long endRevision, RevisionOrder order ) throws Exception
+        {
+            if ( startRevision > endRevision )
+            {
+                throw new IllegalArgumentException( I18n.err( I18n.ERR_240 ) );
+            }
+
+            List<Tag> found;
+
+            synchronized ( JdbmChangeLogStore.this )
+            {
+                found = new ArrayList<Tag>( tags.subMap( startRevision, true, endRevision, true ).values() );
+            }
+
+            if ( !order.isAscending() )
+            {
+                Collections.reverse( found );
+            }
+
+            return new ListCursor<Tag>( found );
+        }
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "JdbmChangeLog\n" );
+        sb.append( "working directory : " ).append( workingDirectory ).append( '\n' );
+        sb.append( "latest tag : " ).append( latest ).append( '\n' );
+        sb.append( "current revision : " ).append( currentRevision ).append( '\n' );
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import java.io.IOException;
+
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.ClosureMonitor;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
+import org.apache.directory.server.core.api.changelog.RevisionOrder;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmTable;
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A Cursor over a set of revisions read from an index of the {@link JdbmChangeLogStore},
+ * returning the associated {@link ChangeLogEvent}s. The revisions greater than the
+ * revision the cursor has been created at are ignored.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class RevisionLookupCursor extends AbstractCursor<ChangeLogEvent>
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( Loggers.CURSOR_LOG.getName() );
+
+    /** Speedup for logs */
+    private static final boolean IS_DEBUG = LOG_CURSOR.isDebugEnabled();
+
+    /** The underlying cursor over the revisions, in ascending order */
+    private final Cursor<Long> wrapped;
+
+    /** The table containing the events */
+    private final JdbmTable<Long, ChangeLogEvent> revisions;
+
+    /** The last revision visible from this cursor */
+    private final long maxRevision;
+
+    /** Tells if we return the events in ascending revision order */
+    private final boolean ascending;
+
+    /** The current event */
+    private ChangeLogEvent current;
+
+
+    /**
+     * Creates a new instance of RevisionLookupCursor.
+     *
+     * @param wrapped The cursor over the revisions
+     * @param revisions The table containing the events
+     * @param maxRevision The last revision visible from this cursor
+     * @param order The order in which the events are returned
+     */
+    RevisionLookupCursor( Cursor<Long> wrapped, JdbmTable<Long, ChangeLogEvent> revisions, long maxRevision,
+        RevisionOrder order )
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Creating RevisionLookupCursor {}", this );
+        }
+
+        this.wrapped = wrapped;
+        this.revisions = revisions;
+        this.maxRevision = maxRevision;
+        this.ascending = order.isAscending();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void before( ChangeLogEvent element ) throws LdapException, CursorException
+    {
+        if ( ascending )
+        {
+            wrapped.before( element.getRevision() );
+        }
+        else
+        {
+            wrapped.after( element.getRevision() );
+        }
+
+        current = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void after( ChangeLogEvent element ) throws LdapException, CursorException
+    {
+        if ( ascending )
+        {
+            wrapped.after( element.getRevision() );
+        }
+        else
+        {
+            wrapped.before( element.getRevision() );
+        }
+
+        current = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        if ( ascending )
+        {
+            wrapped.beforeFirst();
+        }
+        else
+        {
+            wrapped.afterLast();
+        }
+
+        current = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void afterLast() throws LdapException, CursorException
+    {
+        if ( ascending )
+        {
+            wrapped.afterLast();
+        }
+        else
+        {
+            wrapped.beforeFirst();
+        }
+
+        current = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean last() throws LdapException, CursorException
+    {
+        afterLast();
+
+        return previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean next() throws LdapException, CursorException
+    {
+        return move( ascending );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean previous() throws LdapException, CursorException
+    {
+        return move( !ascending );
+    }
+
+
+    private boolean move( boolean up ) throws LdapException, CursorException
+    {
+        while ( up ? wrapped.next() : wrapped.previous() )
+        {
+            long revision = wrapped.get();
+
+            if ( revision > maxRevision )
+            {
+                if ( up )
+                {
+                    break;
+                }
+
+                continue;
+            }
+
+            ChangeLogEvent event = revisions.get( revision );
+
+            if ( event != null )
+            {
+                current = event;
+
+                return true;
+            }
+        }
+
+        current = null;
+
+        return false;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean available()
+    {
+        return current != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public ChangeLogEvent get() throws CursorException
+    {
+        if ( current == null )
+        {
+            throw new InvalidCursorPositionException( I18n.err( I18n.ERR_708 ) );
+        }
+
+        return current;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public final void setClosureMonitor( ClosureMonitor monitor )
+    {
+        wrapped.setClosureMonitor( monitor );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isClosed()
+    {
+        return wrapped.isClosed();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing RevisionLookupCursor {}", this );
+        }
+
+        current = null;
+        wrapped.close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close( Exception cause ) throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing RevisionLookupCursor {}", this );
+        }
+
+        current = null;
+        wrapped.close( cause );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString( String tabs )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( tabs ).append( "RevisionLookupCursor [.., " ).append( maxRevision ).append( "]" );
+        sb.append( ascending ? " ascending" : " descending" );
+
+        return sb.toString();
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        return toString( "" );
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.StringValue;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.filter.AndNode;
+import org.apache.directory.api.ldap.model.filter.EqualityNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.GreaterEqNode;
+import org.apache.directory.api.ldap.model.filter.LessEqNode;
+import org.apache.directory.api.ldap.model.filter.NotNode;
+import org.apache.directory.api.ldap.model.filter.OrNode;
+import org.apache.directory.api.ldap.model.filter.ScopeNode;
+import org.apache.directory.api.ldap.model.filter.SubstringNode;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifRevertor;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
+import org.apache.directory.server.core.api.changelog.RevisionOrder;
+import org.apache.directory.server.core.api.changelog.Tag;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the JdbmChangeLogStore.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmChangeLogStoreTest
+{
+    private static SchemaManager schemaManager;
+
+    private File workingDirectory;
+
+    private JdbmChangeLogStore store;
+
+
+    @BeforeClass
+    public static void init() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    @Before
+    public void openStore() throws Exception
+    {
+        workingDirectory = File.createTempFile( getClass().getSimpleName(), "" );
+        workingDirectory.delete();
+        workingDirectory.mkdirs();
+
+        store = createStore();
+    }
+
+
+    @After
+    public void destroyStore() throws Exception
+    {
+        if ( store != null )
+        {
+            store.destroy();
+        }
+
+        File[] files = workingDirectory.listFiles();
+
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                file.delete();
+            }
+        }
+
+        workingDirectory.delete();
+    }
+
+
+    private JdbmChangeLogStore createStore() throws Exception
+    {
+        JdbmChangeLogStore jdbmStore = new JdbmChangeLogStore();
+        jdbmStore.setWorkingDirectory( workingDirectory );
+        jdbmStore.init( schemaManager );
+
+        return jdbmStore;
+    }
+
+
+    private ChangeLogEvent logAdd( String dn ) throws Exception
+    {
+        LdifEntry forward = new LdifEntry();
+        forward.setDn( new Dn( schemaManager, dn ) );
+        forward.setChangeType( ChangeType.Add );
+        forward.putAttribute( "objectClass", "organizationalUnit" );
+        forward.putAttribute( "ou", "test" );
+
+        LdifEntry reverse = LdifRevertor.reverseAdd( forward.getDn() );
+
+        return store.log( new LdapPrincipal( schemaManager ), forward, reverse );
+    }
+
+
+    private List<Long> revisions( Cursor<ChangeLogEvent> cursor ) throws Exception
+    {
+        List<Long> result = new ArrayList<Long>();
+
+        while ( cursor.next() )
+        {
+            result.add( cursor.get().getRevision() );
+        }
+
+        cursor.close();
+
+        return result;
+    }
+
+
+    @Test
+    public void testLogAndLookup() throws Exception
+    {
+        assertEquals( 0, store.getCurrentRevision() );
+
+        for ( int i = 1; i <= 10; i++ )
+        {
+            assertEquals( i, logAdd( "ou=test" + i + ",ou=system" ).getRevision() );
+        }
+
+        assertEquals( 10, store.getCurrentRevision() );
+        assertEquals( 5, store.lookup( 5 ).getRevision() );
+        assertEquals( new Dn( schemaManager, "ou=test5,ou=system" ), store.lookup( 5 ).getForwardLdif().getDn() );
+    }
+
+
+    @Test
+    public void testRanges() throws Exception
+    {
+        for ( int i = 1; i <= 10; i++ )
+        {
+            logAdd( "ou=test" + i + ",ou=system" );
+        }
+
+        assertEquals( 10, revisions( store.find() ).size() );
+        assertEquals( Arrays.asList( 8L, 9L, 10L ), revisions( store.findAfter( 7 ) ) );
+        assertEquals( Arrays.asList( 1L, 2L, 3L ), revisions( store.findBefore( 3 ) ) );
+        assertEquals( Arrays.asList( 3L, 4L, 5L, 6L ), revisions( store.find( 3, 6 ) ) );
+        assertEquals( Arrays.asList( 6L, 5L, 4L, 3L ),
+            revisions( store.getChangeLogSearchEngine().find( 3, 6, RevisionOrder.DescendingOrder ) ) );
+    }
+
+
+    @Test
+    public void testFindByDn() throws Exception
+    {
+        for ( int i = 1; i <= 10; i++ )
+        {
+            logAdd( "ou=test" + ( i % 3 ) + ",ou=system" );
+        }
+
+        Dn dn = new Dn( schemaManager, "ou=test1,ou=system" );
+
+        assertEquals( Arrays.asList( 1L, 4L, 7L, 10L ),
+            revisions( store.getChangeLogSearchEngine().find( dn, RevisionOrder.AscendingOrder ) ) );
+        assertEquals( Arrays.asList( 10L, 7L, 4L, 1L ),
+            revisions( store.getChangeLogSearchEngine().find( dn, RevisionOrder.DescendingOrder ) ) );
+    }
+
+
+    @Test
+    public void testReopen() throws Exception
+    {
+        for ( int i = 1; i <= 5; i++ )
+        {
+            logAdd( "ou=test" + i + ",ou=system" );
+        }
+
+        store.tag( 3, "three" );
+        store.tag();
+        store.destroy();
+
+        store = createStore();
+
+        assertEquals( 5, store.getCurrentRevision() );
+        assertEquals( 5, store.getLatest().getRevision() );
+        assertNull( store.getLatest().getDescription() );
+
+        Tag tag = store.getTagSearchEngine().lookup( 3 );
+        assertEquals( "three", tag.getDescription() );
+        assertTrue( store.getTagSearchEngine().has( 5 ) );
+        assertFalse( store.getTagSearchEngine().has( 4 ) );
+
+        assertEquals( 6, logAdd( "ou=test6,ou=system" ).getRevision() );
+    }
+
+
+    private List<Long> find( ExprNode filter ) throws Exception
+    {
+        return revisions( store.getChangeLogSearchEngine().find( filter, RevisionOrder.AscendingOrder ) );
+    }
+
+
+    @Test
+    public void testFindByFilter() throws Exception
+    {
+        for ( int i = 1; i <= 10; i++ )
+        {
+            logAdd( "ou=test" + ( i % 3 ) + ",ou=system" );
+        }
+
+        logAdd( "ou=child,ou=test1,ou=system" );
+
+        // A revision range
+        ExprNode range = new AndNode(
+            new GreaterEqNode<String>( "revision", new StringValue( "3" ) ),
+            new LessEqNode<String>( "revision", new StringValue( "6" ) ) );
+        assertEquals( Arrays.asList( 3L, 4L, 5L, 6L ), find( range ) );
+
+        // An entry, in a range
+        ExprNode entryInRange = new AndNode(
+            new EqualityNode<String>( "ndn", new StringValue( "OU=Test1, ou=SYSTEM" ) ),
+            new GreaterEqNode<String>( "revision", new StringValue( "4" ) ) );
+        assertEquals( Arrays.asList( 4L, 7L, 10L ), find( entryInRange ) );
+
+        // Two entries
+        ExprNode twoEntries = new OrNode(
+            new EqualityNode<String>( "ndn", new StringValue( "ou=test0,ou=system" ) ),
+            new EqualityNode<String>( "ndn", new StringValue( "ou=child,ou=test1,ou=system" ) ) );
+        assertEquals( Arrays.asList( 3L, 6L, 9L, 11L ), find( twoEntries ) );
+
+        // Everything but an entry
+        ExprNode notEntry = new NotNode(
+            new EqualityNode<String>( "ndn", new StringValue( "ou=test2,ou=system" ) ) );
+        assertEquals( Arrays.asList( 1L, 3L, 4L, 6L, 7L, 9L, 10L, 11L ), find( notEntry ) );
+
+        // A one level scope
+        ExprNode scope = new ScopeNode( AliasDerefMode.NEVER_DEREF_ALIASES,
+            new Dn( schemaManager, "ou=test1,ou=system" ), null, SearchScope.ONELEVEL );
+        assertEquals( Arrays.asList( 11L ), find( scope ) );
+
+        // The change type and the objectClass
+        ExprNode changeType = new AndNode(
+            new EqualityNode<String>( "changeType", new StringValue( "Add" ) ),
+            new EqualityNode<String>( "objectClass", new StringValue( "2.5.6.5" ) ),
+            new LessEqNode<String>( "revision", new StringValue( "2" ) ) );
+        assertEquals( Arrays.asList( 1L, 2L ), find( changeType ) );
+
+        // The dates
+        String date = store.lookup( 5 ).getZuluTime();
+        assertTrue( find( new LessEqNode<String>( "date", new StringValue( date ) ) ).contains( 5L ) );
+        assertTrue( find( new GreaterEqNode<String>( "date", new StringValue( date ) ) ).contains( 5L ) );
+    }
+
+
+    @Test
+    public void testUnsupportedFilter() throws Exception
+    {
+        logAdd( "ou=test,ou=system" );
+
+        ExprNode[] filters = new ExprNode[]
+            {
+                new SubstringNode( "ndn", "ou=", null ),
+                new GreaterEqNode<String>( "principal", new StringValue( "uid=admin,ou=system" ) ),
+                new EqualityNode<String>( "cn", new StringValue( "test" ) ),
+                new EqualityNode<String>( "revision", new StringValue( "one" ) )
+        };
+
+        for ( ExprNode filter : filters )
+        {
+            try
+            {
+                find( filter );
+                fail( "The filter " + filter + " should have been rejected" );
+            }
+            catch ( LdapUnwillingToPerformException lutpe )
+            {
+                // Expected
+            }
+        }
+    }
+}
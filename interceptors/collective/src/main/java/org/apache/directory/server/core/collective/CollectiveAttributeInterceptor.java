@@ -20,6 +20,7 @@
 package org.apache.directory.server.core.collective;
 
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -38,6 +39,7 @@ import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.SchemaUtils;
+import org.apache.directory.api.ldap.model.subtree.Subentry;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.InterceptorEnum;
@@ -330,15 +332,18 @@ public class CollectiveAttributeInterceptor extends BaseInterceptor
         throws LdapException
     {
         CoreSession session = opContext.getSession();
+        Entry originalEntry = ( ( ClonedServerEntry ) entry ).getOriginalEntry();
 
-        Attribute collectiveAttributeSubentries = ( ( ClonedServerEntry ) entry ).getOriginalEntry().get(
+        Attribute collectiveAttributeSubentries = originalEntry.get(
             directoryService.getAtProvider().getCollectiveAttributeSubentries() );
 
+        List<Dn> subentryDns = getCollectiveSubentries( entry.getDn(), originalEntry, collectiveAttributeSubentries );
+
         /*
          * If there are no collective attribute subentries referenced then we
          * have no collective attributes to inject to this entry.
          */
-        if ( collectiveAttributeSubentries == null )
+        if ( subentryDns.isEmpty() )
         {
             return;
         }
@@ -384,11 +389,8 @@ public class CollectiveAttributeInterceptor extends BaseInterceptor
          * attributes of the subentry and copy collective attributes from the
          * subentry into the entry.
          */
-        for ( Value<?> value : collectiveAttributeSubentries )
+        for ( Dn subentryDn : subentryDns )
         {
-            String subentryDnStr = value.getString();
-            Dn subentryDn = dnFactory.create( subentryDnStr );
-
             LOG.debug( "Applying subentries {}", subentryDn.getName() );
 
             /*
@@ -461,4 +463,56 @@ public class CollectiveAttributeInterceptor extends BaseInterceptor
             }
         }
     }
+
+
+    /**
+     * Gets the collective attribute subentries applying to an entry. While the entries
+     * selected by a subentry are being updated in the background, the references stored
+     * in the entry can't be trusted for this subentry : its subtreeSpecification is
+     * evaluated instead.
+     *
+     * @param dn the entry Dn
+     * @param entry the entry, as stored
+     * @param references the collectiveAttributeSubentries attribute of the entry, may be null
+     * @return the Dn of the subentries whose collective attributes are injected
+     * @throws LdapException if the subtreeSpecification of a pending subentry can't be evaluated
+     */
+    private List<Dn> getCollectiveSubentries( Dn dn, Entry entry, Attribute references ) throws LdapException
+    {
+        Set<Dn> pendingSubentries = directoryService.getSubentryCache().getPendingUpdates();
+        List<Dn> subentryDns = new ArrayList<Dn>();
+
+        if ( references != null )
+        {
+            for ( Value<?> value : references )
+            {
+                Dn subentryDn = dnFactory.create( value.getString() );
+
+                if ( !pendingSubentries.contains( subentryDn ) )
+                {
+                    subentryDns.add( subentryDn );
+                }
+            }
+        }
+
+        for ( Dn subentryDn : pendingSubentries )
+        {
+            Subentry subentry = directoryService.getSubentryCache().getSubentry( subentryDn );
+
+            if ( ( subentry == null ) || !subentry.isCollectiveAdminRole() )
+            {
+                continue;
+            }
+
+            Dn apDn = subentryDn.getParent();
+
+            if ( dn.isDescendantOf( apDn )
+                && directoryService.getEvaluator().evaluate( subentry.getSubtreeSpecification(), apDn, dn, entry ) )
+            {
+                subentryDns.add( subentryDn );
+            }
+        }
+
+        return subentryDns;
+    }
 }
@@ -19,6 +19,8 @@
 package org.apache.directory.server.core.journal;
 
 
+import java.util.concurrent.Future;
+
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.server.core.api.DirectoryService;
@@ -91,6 +93,7 @@ public class DefaultJournal implements Journal
             store = new DefaultJournalStore();
         }
 
+        store.setRotation( rotation );
         store.init( directoryService );
 
         LOG.debug( "The Journal service has been initialized" );
@@ -109,27 +112,27 @@ public class DefaultJournal implements Journal
     /**
      * {@inheritDoc}
      */
-    public void log( LdapPrincipal principal, long revision, LdifEntry entry ) throws LdapException
+    public Future<Boolean> log( LdapPrincipal principal, long revision, LdifEntry entry ) throws LdapException
     {
-        store.log( principal, revision, entry );
+        return store.log( principal, revision, entry );
     }
 
 
     /**
      * {@inheritDoc}
      */
-    public void ack( long revision )
+    public Future<Boolean> ack( long revision )
     {
-        store.ack( revision );
+        return store.ack( revision );
     }
 
 
     /**
      * {@inheritDoc}
      */
-    public void nack( long revision )
+    public Future<Boolean> nack( long revision )
     {
-        store.nack( revision );
+        return store.nack( revision );
     }
 
 
@@ -21,37 +21,80 @@ package org.apache.directory.server.core.journal;
 
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.api.ldap.model.ldif.LdifUtils;
+import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.LdapPrincipal;
 import org.apache.directory.server.core.api.journal.JournalStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 /**
- * @todo : Missing Javadoc
+ * The default journal store. The changes, acks and nacks are appended to binary
+ * segment files (see {@link JournalRecord} for the format) named after the journal
+ * file name, followed by a segment number.
+ * 
+ * The records are not written by the callers : they are queued and a dedicated
+ * thread writes them, flushing the segment once for a group of records (group commit).
+ * The callers get a Future they can wait on if they need the record to be durable.
+ * 
+ * When the store is started, the existing segments are read back : the changes which
+ * have been logged but neither acked nor nacked are reported, as the server may have
+ * stopped before applying them. They are available through {@link #getUnacknowledged()}.
+ * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
 */
 public class DefaultJournalStore implements JournalStore
 {
+    /** The class logger */
+    private static final Logger LOG = LoggerFactory.getLogger( DefaultJournalStore.class );
+
+    /** The default number of records written before a flush */
+    public static final int DEFAULT_GROUP_COMMIT_SIZE = 128;
+
+    /** The default maximum time a record waits for a flush, in microseconds */
+    public static final long DEFAULT_GROUP_COMMIT_DELAY = 1000L;
+
+    /** The default maximum size of a segment : 64Mb */
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024L * 1024L;
+
     /** The directory where the journal is stored */
     private File workingDirectory;
 
-    /** The journal file name */
+    /** The journal file name, used as a prefix for the segments */
     private String fileName;
 
-    /** The file containing the journal */
-    private File journal;
+    /** The number of records written before a flush */
+    private int groupCommitSize = DEFAULT_GROUP_COMMIT_SIZE;
+
+    /** The maximum time a record waits for a flush, in microseconds */
+    private long groupCommitDelay = DEFAULT_GROUP_COMMIT_DELAY;
+
+    /** The number of logged operations before a segment is rotated */
+    private int rotation;
+
+    /** The maximum size of a segment */
+    private long maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+
+    /** Tells if the segments must be synced on the device on each group commit */
+    private boolean forceSync;
+
+    /** The thread writing the records */
+    private JournalWriter writer;
+
+    /** The last logged revision */
+    private final AtomicLong currentRevision = new AtomicLong( 0L );
 
-    /** The stream used to write data into the journal */
-    private Writer writer;
+    /** The changes found in the existing segments without ack or nack */
+    private List<JournalRecord> unacknowledged = new ArrayList<JournalRecord>();
 
 
     /**
@@ -61,7 +104,8 @@ public class DefaultJournalStore implements JournalStore
     {
         if ( writer != null )
         {
-            writer.close();
+            writer.shutdown();
+            writer = null;
         }
     }
 
@@ -79,15 +123,36 @@ public class DefaultJournalStore implements JournalStore
         /** Load or create the journal file */
         if ( fileName == null )
         {
-            fileName = "journal.ldif";
+            fileName = "journal";
         }
 
-        journal = new File( workingDirectory, fileName );
+        recover();
 
-        // The new requests are added at the end of the existing journal
-        writer = new PrintWriter(
-            new OutputStreamWriter(
-                new FileOutputStream( journal, true ) ) );
+        // The new requests are added in a new segment, following the existing ones
+        writer = new JournalWriter( workingDirectory, fileName, groupCommitSize, groupCommitDelay, rotation,
+            maxSegmentSize, forceSync );
+        writer.open();
+        writer.start();
+    }
+
+
+    /**
+     * Read the existing segments, to get the last revision and the changes which
+     * have not been acknowledged
+     */
+    private void recover() throws Exception
+    {
+        JournalReader reader = new JournalReader( workingDirectory, fileName );
+        reader.read();
+
+        currentRevision.set( reader.getLastRevision() );
+        unacknowledged = reader.getUnacknowledged();
+
+        for ( JournalRecord record : unacknowledged )
+        {
+            LOG.warn( "The revision {} logged by {} has neither been acked nor nacked :\n{}", new Object[]
+                { record.getRevision(), record.getPrincipal(), record.getLdif() } );
+        }
     }
 
 
@@ -98,42 +163,26 @@ public class DefaultJournalStore implements JournalStore
      * @param revision The operation revision
      * @param forward The change to log
      */
-    public boolean log( LdapPrincipal principal, long revision, LdifEntry forward )
+    public Future<Boolean> log( LdapPrincipal principal, long revision, LdifEntry forward )
     {
-        synchronized ( writer )
+        String ldif = null;
+
+        try
         {
-            try
-            {
-                // Write the LdapPrincipal
-                writer.write( "# principal: " );
-                writer.write( principal.getName() );
-                writer.write( '\n' );
-
-                // Write the timestamp
-                writer.write( "# timestamp: " );
-                writer.write( Long.toString( System.currentTimeMillis() ) );
-                writer.write( '\n' );
-
-                // Write the revision
-                writer.write( "# revision: " );
-                writer.write( Long.toString( revision ) );
-                writer.write( "\n" );
-
-                // Write the entry
-                writer.write( LdifUtils.convertToLdif( forward, 80 ) );
-                writer.flush();
-            }
-            catch ( LdapException ne )
-            {
-                return false;
-            }
-            catch ( IOException ioe )
-            {
-                return false;
-            }
+            // Done by the caller, so that the writer thread only has bytes to copy
+            ldif = LdifUtils.convertToLdif( forward, 80 );
+        }
+        catch ( LdapException ne )
+        {
+            LOG.error( "Cannot convert the revision {} to LDIF", revision, ne );
+
+            return JournalRecord.completed( false );
         }
 
-        return true;
+        currentRevision.set( revision );
+
+        return writer.add( new JournalRecord( JournalRecord.LOG, revision, System.currentTimeMillis(),
+            Strings.getBytesUtf8( principal.getName() ), Strings.getBytesUtf8( ldif ) ) );
     }
 
 
@@ -141,29 +190,11 @@ public class DefaultJournalStore implements JournalStore
      * Records a ack for a change
      *
      * @param revision The change revision which is acked
-     * @return <code>true</code> if the ack has been written
-     * @throws Exception if there are problems logging the ack
+     * @return A Future returning <code>true</code> once the ack has been written
      */
-    public boolean ack( long revision )
+    public Future<Boolean> ack( long revision )
     {
-        synchronized ( writer )
-        {
-            try
-            {
-                // Write the revision
-                writer.write( "# ack-revision: " );
-                writer.write( Long.toString( revision ) );
-                writer.write( "\n\n" );
-
-                writer.flush();
-            }
-            catch ( IOException ioe )
-            {
-                return false;
-            }
-        }
-
-        return true;
+        return writer.add( new JournalRecord( JournalRecord.ACK, revision, System.currentTimeMillis(), null, null ) );
     }
 
 
@@ -171,43 +202,39 @@ public class DefaultJournalStore implements JournalStore
      * Records a nack for a change
      *
      * @param revision The change revision which is nacked
-     * @return <code>true</code> if the nack has been written
-     * @throws Exception if there are problems logging the nack
+     * @return A Future returning <code>true</code> once the nack has been written
      */
-    public boolean nack( long revision )
+    public Future<Boolean> nack( long revision )
     {
-        synchronized ( writer )
-        {
-            try
-            {
-                // Write the revision
-                writer.write( "# nack-revision: " );
-                writer.write( Long.toString( revision ) );
-                writer.write( "\n\n" );
-
-                writer.flush();
-            }
-            catch ( IOException ioe )
-            {
-                return false;
-            }
-        }
-
-        return true;
+        return writer.add( new JournalRecord( JournalRecord.NACK, revision, System.currentTimeMillis(), null, null ) );
     }
 
 
+    /**
+     * Waits until all the records logged so far are written on disk
+     */
     public void sync() throws Exception
     {
-        // TODO Auto-generated method stub
-
+        if ( writer != null )
+        {
+            writer.add( new JournalRecord( JournalRecord.SYNC, 0L, 0L, null, null ) ).get();
+        }
     }
 
 
     public long getCurrentRevision()
     {
-        // TODO Auto-generated method stub
-        return 0;
+        return currentRevision.get();
+    }
+
+
+    /**
+     * @return The changes found in the journal when it has been started which
+     * have neither been acked nor nacked
+     */
+    List<JournalRecord> getUnacknowledged()
+    {
+        return unacknowledged;
     }
 
 
@@ -236,4 +263,49 @@ public class DefaultJournalStore implements JournalStore
     {
         this.workingDirectory = new File( workingDirectoryName );
     }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setRotation( int rotation )
+    {
+        this.rotation = rotation;
+    }
+
+
+    /**
+     * @param groupCommitSize The number of records written before the segment is flushed
+     */
+    public void setGroupCommitSize( int groupCommitSize )
+    {
+        this.groupCommitSize = groupCommitSize > 0 ? groupCommitSize : DEFAULT_GROUP_COMMIT_SIZE;
+    }
+
+
+    /**
+     * @param groupCommitDelay The maximum time a record waits for a flush, in microseconds
+     */
+    public void setGroupCommitDelay( long groupCommitDelay )
+    {
+        this.groupCommitDelay = groupCommitDelay >= 0 ? groupCommitDelay : DEFAULT_GROUP_COMMIT_DELAY;
+    }
+
+
+    /**
+     * @param maxSegmentSize The size, in bytes, above which a segment is rotated
+     */
+    public void setMaxSegmentSize( long maxSegmentSize )
+    {
+        this.maxSegmentSize = maxSegmentSize > 0 ? maxSegmentSize : DEFAULT_MAX_SEGMENT_SIZE;
+    }
+
+
+    /**
+     * @param forceSync If true, the segment is synced on the device on each group commit
+     */
+    public void setForceSync( boolean forceSync )
+    {
+        this.forceSync = forceSync;
+    }
 }
@@ -19,12 +19,15 @@
 package org.apache.directory.server.core.journal;
 
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Modification;
 import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.ldif.ChangeType;
 import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
@@ -47,6 +50,12 @@ import org.slf4j.LoggerFactory;
  * An interceptor which intercepts write operations to the directory and
  * logs them into a journal.
  * 
+ * The change is applied once it has been written in the journal : if it can't be
+ * written, the operation fails. The ack or nack recorded after the operation are not
+ * waited for, the group commit writes them along with the next records. If the server
+ * stops before they are written, the change is reported as unacknowledged when the
+ * journal is started again.
+ * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 public class JournalInterceptor extends BaseInterceptor
@@ -100,7 +109,27 @@ public class JournalInterceptor extends BaseInterceptor
      */
     private void log( OperationContext opCtx, long revision, LdifEntry ldif ) throws LdapException
     {
-        journal.log( getPrincipal( opCtx ), revision, ldif );
+        Future<Boolean> written = journal.log( getPrincipal( opCtx ), revision, ldif );
+        boolean done;
+
+        try
+        {
+            done = written.get();
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            throw new LdapOtherException( "Interrupted while logging the revision " + revision, ie );
+        }
+        catch ( ExecutionException ee )
+        {
+            throw new LdapOtherException( "Cannot log the revision " + revision, ee.getCause() );
+        }
+
+        if ( !done )
+        {
+            throw new LdapOtherException( "Cannot log the revision " + revision );
+        }
     }
 
 
@@ -173,7 +202,7 @@ public class JournalInterceptor extends BaseInterceptor
             ldif.setChangeType( ChangeType.Delete );
             ldif.setDn( deleteContext.getDn() );
 
-            journal.log( getPrincipal( deleteContext ), opRevision, ldif );
+            log( deleteContext, opRevision, ldif );
         }
 
         try
@@ -221,7 +250,7 @@ public class JournalInterceptor extends BaseInterceptor
                 ldif.addModification( modification );
             }
 
-            journal.log( getPrincipal( modifyContext ), opRevision, ldif );
+            log( modifyContext, opRevision, ldif );
         }
 
         try
@@ -263,7 +292,7 @@ public class JournalInterceptor extends BaseInterceptor
             ldif.setDn( moveContext.getDn() );
             ldif.setNewSuperior( moveContext.getNewSuperior().getNormName() );
 
-            journal.log( getPrincipal( moveContext ), opRevision, ldif );
+            log( moveContext, opRevision, ldif );
         }
 
         try
@@ -308,7 +337,7 @@ public class JournalInterceptor extends BaseInterceptor
             ldif.setDeleteOldRdn( moveAndRenameContext.getDeleteOldRdn() );
             ldif.setNewSuperior( moveAndRenameContext.getNewDn().getNormName() );
 
-            journal.log( getPrincipal( moveAndRenameContext ), opRevision, ldif );
+            log( moveAndRenameContext, opRevision, ldif );
         }
 
         try
@@ -352,7 +381,7 @@ public class JournalInterceptor extends BaseInterceptor
             ldif.setNewRdn( renameContext.getNewRdn().getNormName() );
             ldif.setDeleteOldRdn( renameContext.getDeleteOldRdn() );
 
-            journal.log( getPrincipal( renameContext ), opRevision, ldif );
+            log( renameContext, opRevision, ldif );
         }
 
         try
@@ -0,0 +1,175 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.journal;
+
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Reads the records stored in the journal segments. It is used when the journal is
+ * started, to find the changes which have been logged but never acked nor nacked :
+ * the server stopped before they were applied, or before their status was written.
+ *
+ * A segment is read up to its end, or up to the first truncated or corrupted record,
+ * which is what the writer leaves behind when the server crashes.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class JournalReader
+{
+    /** The class logger */
+    private static final Logger LOG = LoggerFactory.getLogger( JournalReader.class );
+
+    /** The size of the buffer in front of the segment file */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The directory containing the segments */
+    private final File workingDirectory;
+
+    /** The segments' name prefix */
+    private final String fileName;
+
+    /** The last logged revision */
+    private long lastRevision = 0L;
+
+    /** The logged records without ack or nack, in the order they have been logged */
+    private final Map<Long, JournalRecord> unacknowledged = new LinkedHashMap<Long, JournalRecord>();
+
+
+    JournalReader( File workingDirectory, String fileName )
+    {
+        this.workingDirectory = workingDirectory;
+        this.fileName = fileName;
+    }
+
+
+    /**
+     * Read all the segments, from the first one to the last one
+     *
+     * @throws IOException If a segment can't be read
+     */
+    void read() throws IOException
+    {
+        int lastSegment = JournalWriter.lastSegmentNumber( workingDirectory, fileName );
+
+        for ( int segmentNumber = 1; segmentNumber <= lastSegment; segmentNumber++ )
+        {
+            File segment = JournalWriter.getSegmentFile( workingDirectory, fileName, segmentNumber );
+
+            if ( segment.exists() )
+            {
+                for ( JournalRecord record : readSegment( segment ) )
+                {
+                    apply( record );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Read the valid records of a segment
+     *
+     * @param segment The segment file
+     * @return The records, up to the first invalid one
+     * @throws IOException If the segment can't be read
+     */
+    static List<JournalRecord> readSegment( File segment ) throws IOException
+    {
+        List<JournalRecord> records = new ArrayList<JournalRecord>();
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( segment ),
+            BUFFER_SIZE ) );
+
+        try
+        {
+            long read = 0L;
+            JournalRecord record = JournalRecord.readFrom( in );
+
+            while ( record != null )
+            {
+                records.add( record );
+                read += record.size();
+                record = JournalRecord.readFrom( in );
+            }
+
+            if ( read < segment.length() )
+            {
+                LOG.warn( "The journal segment {} is truncated after {} records", segment, records.size() );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return records;
+    }
+
+
+    private void apply( JournalRecord record )
+    {
+        switch ( record.getType() )
+        {
+            case JournalRecord.LOG:
+                lastRevision = Math.max( lastRevision, record.getRevision() );
+                unacknowledged.put( record.getRevision(), record );
+                break;
+
+            case JournalRecord.ACK:
+            case JournalRecord.NACK:
+                unacknowledged.remove( record.getRevision() );
+                break;
+
+            default:
+                // Not a known record, skip it
+                break;
+        }
+    }
+
+
+    /**
+     * @return The last logged revision, or 0 if nothing has been logged
+     */
+    long getLastRevision()
+    {
+        return lastRevision;
+    }
+
+
+    /**
+     * @return The logged records which have neither been acked nor nacked
+     */
+    List<JournalRecord> getUnacknowledged()
+    {
+        return new ArrayList<JournalRecord>( unacknowledged.values() );
+    }
+}
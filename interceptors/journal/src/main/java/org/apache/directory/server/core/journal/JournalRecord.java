@@ -0,0 +1,304 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.journal;
+
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A record stored in a journal segment. It is also the Future the caller can
+ * wait on : it completes when the record has been flushed to disk, or when the
+ * write has failed.
+ *
+ * The on-disk format of a record is :
+ * <pre>
+ * [int    : length of the data that follows, CRC excluded]
+ * [byte   : record type (LOG, ACK, NACK)]
+ * [long   : revision]
+ * [long   : timestamp]
+ * [int    : principal length][byte[] : principal, UTF-8]
+ * [int    : LDIF length][byte[] : forward LDIF, UTF-8]
+ * [long   : CRC32 of the data]
+ * </pre>
+ *
+ * The ACK and NACK records have empty principal and LDIF.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class JournalRecord implements Future<Boolean>
+{
+    /** A logged change */
+    static final byte LOG = 0;
+
+    /** A change which has been applied */
+    static final byte ACK = 1;
+
+    /** A change which has failed */
+    static final byte NACK = 2;
+
+    /** A marker used to force a flush, never written */
+    static final byte SYNC = 3;
+
+    /** The fixed size of a record : length, type, revision, timestamp, 2 lengths and the CRC */
+    static final int HEADER_SIZE = 4 + 1 + 8 + 8 + 4 + 4 + 8;
+
+    /** The record type */
+    private final byte type;
+
+    /** The operation revision */
+    private final long revision;
+
+    /** The time the record has been created */
+    private final long timestamp;
+
+    /** The principal name, as UTF-8 bytes */
+    private final byte[] principal;
+
+    /** The forward LDIF, as UTF-8 bytes */
+    private final byte[] ldif;
+
+    /** Released when the record has been flushed, or has failed */
+    private final CountDownLatch done = new CountDownLatch( 1 );
+
+    /** The result of the write */
+    private volatile boolean written;
+
+
+    JournalRecord( byte type, long revision, long timestamp, byte[] principal, byte[] ldif )
+    {
+        this.type = type;
+        this.revision = revision;
+        this.timestamp = timestamp;
+        this.principal = ( principal == null ) ? Strings.EMPTY_BYTES : principal;
+        this.ldif = ( ldif == null ) ? Strings.EMPTY_BYTES : ldif;
+    }
+
+
+    /**
+     * Creates a record which is already completed
+     */
+    static JournalRecord completed( boolean written )
+    {
+        JournalRecord record = new JournalRecord( SYNC, 0L, 0L, null, null );
+        record.complete( written );
+
+        return record;
+    }
+
+
+    /**
+     * @return The number of bytes this record uses on disk
+     */
+    int size()
+    {
+        return HEADER_SIZE + principal.length + ldif.length;
+    }
+
+
+    /**
+     * Serialize the record
+     */
+    void writeTo( DataOutputStream out ) throws IOException
+    {
+        out.writeInt( size() - 4 - 8 );
+        out.writeByte( type );
+        out.writeLong( revision );
+        out.writeLong( timestamp );
+        out.writeInt( principal.length );
+        out.write( principal );
+        out.writeInt( ldif.length );
+        out.write( ldif );
+        out.writeLong( crc() );
+    }
+
+
+    /**
+     * Read a record from a segment.
+     *
+     * @return The read record, or null if we have reached the end of the segment, or
+     * if the record is truncated or corrupted (the server crashed while writing it)
+     */
+    static JournalRecord readFrom( DataInputStream in ) throws IOException
+    {
+        try
+        {
+            int length = in.readInt();
+            byte type = in.readByte();
+            long revision = in.readLong();
+            long timestamp = in.readLong();
+            int principalLength = in.readInt();
+
+            if ( ( principalLength < 0 ) || ( principalLength > length ) )
+            {
+                return null;
+            }
+
+            byte[] principal = new byte[principalLength];
+            in.readFully( principal );
+            int ldifLength = in.readInt();
+
+            if ( ( ldifLength < 0 ) || ( ldifLength > length ) )
+            {
+                return null;
+            }
+
+            byte[] ldif = new byte[ldifLength];
+            in.readFully( ldif );
+            long expectedCrc = in.readLong();
+
+            JournalRecord record = new JournalRecord( type, revision, timestamp, principal, ldif );
+
+            if ( record.crc() != expectedCrc )
+            {
+                return null;
+            }
+
+            return record;
+        }
+        catch ( EOFException eofe )
+        {
+            return null;
+        }
+    }
+
+
+    private long crc()
+    {
+        CRC32 crc = new CRC32();
+        byte[] header = new byte[1 + 8 + 8];
+        header[0] = type;
+        putLong( header, 1, revision );
+        putLong( header, 9, timestamp );
+        crc.update( header );
+        crc.update( principal );
+        crc.update( ldif );
+
+        return crc.getValue();
+    }
+
+
+    private static void putLong( byte[] buffer, int pos, long value )
+    {
+        for ( int i = 7; i >= 0; i-- )
+        {
+            buffer[pos + i] = ( byte ) value;
+            value >>>= 8;
+        }
+    }
+
+
+    /**
+     * Signal the waiting threads that the record has been processed
+     */
+    void complete( boolean written )
+    {
+        this.written = written;
+        done.countDown();
+    }
+
+
+    byte getType()
+    {
+        return type;
+    }
+
+
+    long getRevision()
+    {
+        return revision;
+    }
+
+
+    long getTimestamp()
+    {
+        return timestamp;
+    }
+
+
+    String getPrincipal()
+    {
+        return Strings.utf8ToString( principal );
+    }
+
+
+    String getLdif()
+    {
+        return Strings.utf8ToString( ldif );
+    }
+
+
+    /**
+     * A journal record can't be cancelled
+     */
+    public boolean cancel( boolean mayInterruptIfRunning )
+    {
+        return false;
+    }
+
+
+    public boolean isCancelled()
+    {
+        return false;
+    }
+
+
+    public boolean isDone()
+    {
+        return done.getCount() == 0;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Boolean get() throws InterruptedException, ExecutionException
+    {
+        done.await();
+
+        return written;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Boolean get( long timeout, TimeUnit unit ) throws InterruptedException, ExecutionException,
+        TimeoutException
+    {
+        if ( !done.await( timeout, unit ) )
+        {
+            throw new TimeoutException();
+        }
+
+        return written;
+    }
+}
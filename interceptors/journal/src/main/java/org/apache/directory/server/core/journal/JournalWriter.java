@@ -0,0 +1,412 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.journal;
+
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The thread writing the journal records into the segment files. The records are
+ * queued by the callers, and written in batches : the segment is flushed (group
+ * commit) when the number of unflushed records reaches the group commit size, when
+ * the oldest unflushed record has waited more than the group commit delay, or when
+ * there is nothing more to write. The waiting records are completed once flushed.
+ *
+ * A new segment is created each time the writer is started, and when the current
+ * segment contains more than the configured number of logged operations, or is
+ * bigger than the maximum segment size.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class JournalWriter extends Thread
+{
+    /** The class logger */
+    private static final Logger LOG = LoggerFactory.getLogger( JournalWriter.class );
+
+    /** The size of the buffer in front of the segment file */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The queue containing the records to write */
+    private final BlockingQueue<JournalRecord> queue = new LinkedBlockingQueue<JournalRecord>();
+
+    /** The directory containing the segments */
+    private final File workingDirectory;
+
+    /** The segments' name prefix */
+    private final String fileName;
+
+    /** The number of records to write before flushing */
+    private final int groupCommitSize;
+
+    /** The maximum time a record can wait for a flush, in microseconds */
+    private final long groupCommitDelay;
+
+    /** The number of logged operations before a rotation. 0 means no limit */
+    private final int rotation;
+
+    /** The maximum size of a segment, in bytes */
+    private final long maxSegmentSize;
+
+    /** Tells if the segment must be synced to the device when flushed */
+    private final boolean forceSync;
+
+    /** The current segment number */
+    private int segmentNumber;
+
+    /** The current segment */
+    private FileOutputStream segmentStream;
+
+    /** The stream used to write in the current segment */
+    private DataOutputStream out;
+
+    /** The number of bytes written in the current segment */
+    private long segmentSize;
+
+    /** The number of operations logged in the current segment */
+    private int segmentOperations;
+
+    /** The records written but not yet flushed */
+    private final List<JournalRecord> pending = new ArrayList<JournalRecord>();
+
+    /** The time the first pending record has been written, in nanoseconds */
+    private long firstPendingTime;
+
+    /** Set when the writer must stop */
+    private volatile boolean stop = false;
+
+    /** Set when the writer does not accept records anymore */
+    private boolean closed = false;
+
+    /** A lock protecting the queue against additions once the writer is closed */
+    private final Object lock = new Object();
+
+
+    JournalWriter( File workingDirectory, String fileName, int groupCommitSize, long groupCommitDelay,
+        int rotation, long maxSegmentSize, boolean forceSync )
+    {
+        super( "JournalWriter-" + fileName );
+        this.workingDirectory = workingDirectory;
+        this.fileName = fileName;
+        this.groupCommitSize = groupCommitSize;
+        this.groupCommitDelay = groupCommitDelay;
+        this.rotation = rotation;
+        this.maxSegmentSize = maxSegmentSize;
+        this.forceSync = forceSync;
+        setDaemon( true );
+    }
+
+
+    /**
+     * Opens a new segment, following the existing ones
+     */
+    void open() throws IOException
+    {
+        segmentNumber = lastSegmentNumber( workingDirectory, fileName );
+        openNextSegment();
+    }
+
+
+    /**
+     * Get the number of the last segment found in the working directory
+     *
+     * @return The last segment number, or 0 if there is none
+     */
+    static int lastSegmentNumber( File workingDirectory, String fileName )
+    {
+        String prefix = fileName + ".";
+        String[] names = workingDirectory.list();
+        int last = 0;
+
+        if ( names != null )
+        {
+            for ( String name : names )
+            {
+                if ( name.startsWith( prefix ) )
+                {
+                    try
+                    {
+                        last = Math.max( last, Integer.parseInt( name.substring( prefix.length() ) ) );
+                    }
+                    catch ( NumberFormatException nfe )
+                    {
+                        // Not a segment, skip it
+                    }
+                }
+            }
+        }
+
+        return last;
+    }
+
+
+    /**
+     * @return The segment file for a given segment number
+     */
+    static File getSegmentFile( File workingDirectory, String fileName, int segmentNumber )
+    {
+        return new File( workingDirectory, String.format( "%s.%08d", fileName, segmentNumber ) );
+    }
+
+
+    private void openNextSegment() throws IOException
+    {
+        segmentNumber++;
+        File segment = getSegmentFile( workingDirectory, fileName, segmentNumber );
+        LOG.debug( "Opening the journal segment {}", segment );
+
+        segmentStream = new FileOutputStream( segment, true );
+        out = new DataOutputStream( new BufferedOutputStream( segmentStream, BUFFER_SIZE ) );
+        segmentSize = 0L;
+        segmentOperations = 0;
+    }
+
+
+    /**
+     * Queue a record. It will be completed when written on disk.
+     */
+    JournalRecord add( JournalRecord record )
+    {
+        synchronized ( lock )
+        {
+            if ( closed )
+            {
+                record.complete( false );
+            }
+            else
+            {
+                queue.add( record );
+            }
+        }
+
+        return record;
+    }
+
+
+    /**
+     * Stops the writer, once all the queued records have been written
+     */
+    void shutdown() throws InterruptedException
+    {
+        stop = true;
+
+        // Wake up the writer
+        add( JournalRecord.completed( true ) );
+        join();
+    }
+
+
+    @Override
+    public void run()
+    {
+        boolean interrupted = false;
+
+        while ( !stop || !queue.isEmpty() )
+        {
+            JournalRecord record = null;
+
+            try
+            {
+                if ( pending.isEmpty() )
+                {
+                    record = queue.poll( 1, TimeUnit.SECONDS );
+                }
+                else
+                {
+                    long remaining = groupCommitDelay - ( System.nanoTime() - firstPendingTime ) / 1000L;
+
+                    if ( remaining > 0 )
+                    {
+                        record = queue.poll( remaining, TimeUnit.MICROSECONDS );
+                    }
+                    else
+                    {
+                        record = queue.poll();
+                    }
+                }
+            }
+            catch ( InterruptedException ie )
+            {
+                // Write what has been queued, then stop
+                LOG.warn( "JournalWriter thread was interrupted, stopping it", ie );
+                interrupted = true;
+                stop = true;
+            }
+
+            if ( record != null )
+            {
+                write( record );
+
+                // Write what is already waiting, up to the group commit size
+                while ( pending.size() < groupCommitSize )
+                {
+                    record = queue.poll();
+
+                    if ( record == null )
+                    {
+                        break;
+                    }
+
+                    write( record );
+                }
+            }
+
+            if ( !pending.isEmpty() )
+            {
+                long waited = ( System.nanoTime() - firstPendingTime ) / 1000L;
+
+                if ( ( pending.size() >= groupCommitSize ) || ( waited >= groupCommitDelay ) || queue.isEmpty() )
+                {
+                    commit();
+                }
+            }
+        }
+
+        close();
+
+        if ( interrupted )
+        {
+            // Restore the interrupted status
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Write a record in the current segment, rotating it if needed
+     */
+    private void write( JournalRecord record )
+    {
+        if ( pending.isEmpty() )
+        {
+            firstPendingTime = System.nanoTime();
+        }
+
+        if ( record.getType() != JournalRecord.SYNC )
+        {
+            try
+            {
+                record.writeTo( out );
+                segmentSize += record.size();
+            }
+            catch ( IOException ioe )
+            {
+                LOG.error( "Failed to write the revision {} in the journal", record.getRevision(), ioe );
+                record.complete( false );
+
+                return;
+            }
+
+            if ( record.getType() == JournalRecord.LOG )
+            {
+                segmentOperations++;
+            }
+        }
+
+        pending.add( record );
+    }
+
+
+    /**
+     * Flush the segment and complete the pending records
+     */
+    private void commit()
+    {
+        boolean flushed = true;
+
+        try
+        {
+            out.flush();
+
+            if ( forceSync )
+            {
+                segmentStream.getChannel().force( false );
+            }
+        }
+        catch ( IOException ioe )
+        {
+            LOG.error( "Failed to flush the journal", ioe );
+            flushed = false;
+        }
+
+        for ( JournalRecord record : pending )
+        {
+            record.complete( flushed );
+        }
+
+        pending.clear();
+
+        if ( ( ( rotation > 0 ) && ( segmentOperations >= rotation ) ) || ( segmentSize >= maxSegmentSize ) )
+        {
+            try
+            {
+                out.close();
+                openNextSegment();
+            }
+            catch ( IOException ioe )
+            {
+                LOG.error( "Failed to rotate the journal", ioe );
+            }
+        }
+    }
+
+
+    private void close()
+    {
+        if ( !pending.isEmpty() )
+        {
+            commit();
+        }
+
+        try
+        {
+            out.close();
+        }
+        catch ( IOException ioe )
+        {
+            LOG.error( "Failed to close the journal", ioe );
+        }
+
+        // Nothing can be written anymore
+        synchronized ( lock )
+        {
+            closed = true;
+            JournalRecord record = queue.poll();
+
+            while ( record != null )
+            {
+                record.complete( false );
+                record = queue.poll();
+            }
+        }
+    }
+}
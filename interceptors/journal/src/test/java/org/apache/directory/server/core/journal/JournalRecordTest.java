@@ -0,0 +1,155 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.journal;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+
+import org.apache.directory.api.util.Strings;
+import org.junit.Test;
+
+
+/**
+ * Tests the serialization of the JournalRecord.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JournalRecordTest
+{
+    private static final String LDIF = "dn: ou=test,ou=system\nchangetype: delete\n\n";
+
+
+    private byte[] serialize( JournalRecord... records ) throws Exception
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( baos );
+
+        for ( JournalRecord record : records )
+        {
+            record.writeTo( out );
+        }
+
+        out.flush();
+
+        return baos.toByteArray();
+    }
+
+
+    private DataInputStream input( byte[] data )
+    {
+        return new DataInputStream( new ByteArrayInputStream( data ) );
+    }
+
+
+    @Test
+    public void testLogRecord() throws Exception
+    {
+        JournalRecord record = new JournalRecord( JournalRecord.LOG, 12L, 1000L,
+            Strings.getBytesUtf8( "uid=admin,ou=system" ), Strings.getBytesUtf8( LDIF ) );
+
+        byte[] data = serialize( record );
+        assertEquals( record.size(), data.length );
+
+        DataInputStream in = input( data );
+        JournalRecord read = JournalRecord.readFrom( in );
+
+        assertEquals( JournalRecord.LOG, read.getType() );
+        assertEquals( 12L, read.getRevision() );
+        assertEquals( 1000L, read.getTimestamp() );
+        assertEquals( "uid=admin,ou=system", read.getPrincipal() );
+        assertEquals( LDIF, read.getLdif() );
+
+        // End of the stream
+        assertNull( JournalRecord.readFrom( in ) );
+    }
+
+
+    @Test
+    public void testAckAndNackRecords() throws Exception
+    {
+        byte[] data = serialize( new JournalRecord( JournalRecord.ACK, 1L, 10L, null, null ),
+            new JournalRecord( JournalRecord.NACK, 2L, 20L, null, null ) );
+
+        DataInputStream in = input( data );
+        JournalRecord ack = JournalRecord.readFrom( in );
+        JournalRecord nack = JournalRecord.readFrom( in );
+
+        assertEquals( JournalRecord.ACK, ack.getType() );
+        assertEquals( 1L, ack.getRevision() );
+        assertEquals( "", ack.getPrincipal() );
+        assertEquals( "", ack.getLdif() );
+        assertEquals( JournalRecord.HEADER_SIZE, ack.size() );
+
+        assertEquals( JournalRecord.NACK, nack.getType() );
+        assertEquals( 2L, nack.getRevision() );
+        assertEquals( 20L, nack.getTimestamp() );
+    }
+
+
+    @Test
+    public void testTruncatedRecord() throws Exception
+    {
+        byte[] data = serialize( new JournalRecord( JournalRecord.LOG, 1L, 10L,
+            Strings.getBytesUtf8( "uid=admin,ou=system" ), Strings.getBytesUtf8( LDIF ) ) );
+
+        // Each truncation is detected
+        for ( int length = 0; length < data.length; length++ )
+        {
+            assertNull( JournalRecord.readFrom( input( Arrays.copyOf( data, length ) ) ) );
+        }
+    }
+
+
+    @Test
+    public void testCorruptedRecord() throws Exception
+    {
+        byte[] data = serialize( new JournalRecord( JournalRecord.LOG, 1L, 10L,
+            Strings.getBytesUtf8( "uid=admin,ou=system" ), Strings.getBytesUtf8( LDIF ) ) );
+
+        // Change a byte of the LDIF : the CRC does not match anymore
+        data[data.length - 10] ^= 0x01;
+
+        assertNull( JournalRecord.readFrom( input( data ) ) );
+    }
+
+
+    @Test
+    public void testCompletion() throws Exception
+    {
+        JournalRecord record = new JournalRecord( JournalRecord.ACK, 1L, 10L, null, null );
+
+        assertFalse( record.isDone() );
+
+        record.complete( true );
+
+        assertTrue( record.isDone() );
+        assertTrue( record.get() );
+        assertFalse( JournalRecord.completed( false ).get() );
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.journal;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.apache.directory.api.util.Strings;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the JournalWriter, and the JournalReader reading back what has been written.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JournalWriterTest
+{
+    private static final String FILE_NAME = "journal";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File workingDirectory;
+
+
+    @Before
+    public void setUp() throws Exception
+    {
+        workingDirectory = folder.newFolder( "journal" );
+    }
+
+
+    private JournalWriter startWriter( int rotation ) throws Exception
+    {
+        JournalWriter writer = new JournalWriter( workingDirectory, FILE_NAME, 4, 1000L, rotation,
+            DefaultJournalStore.DEFAULT_MAX_SEGMENT_SIZE, false );
+        writer.open();
+        writer.start();
+
+        return writer;
+    }
+
+
+    private JournalRecord log( long revision )
+    {
+        String ldif = "dn: cn=test" + revision + ",ou=system\nchangetype: delete\n\n";
+
+        return new JournalRecord( JournalRecord.LOG, revision, System.currentTimeMillis(),
+            Strings.getBytesUtf8( "uid=admin,ou=system" ), Strings.getBytesUtf8( ldif ) );
+    }
+
+
+    private JournalRecord ack( long revision )
+    {
+        return new JournalRecord( JournalRecord.ACK, revision, System.currentTimeMillis(), null, null );
+    }
+
+
+    private JournalRecord nack( long revision )
+    {
+        return new JournalRecord( JournalRecord.NACK, revision, System.currentTimeMillis(), null, null );
+    }
+
+
+    @Test
+    public void testWriteAndRead() throws Exception
+    {
+        JournalWriter writer = startWriter( 0 );
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+
+        for ( long revision = 1L; revision <= 10L; revision++ )
+        {
+            futures.add( writer.add( log( revision ) ) );
+            futures.add( writer.add( ack( revision ) ) );
+        }
+
+        for ( Future<Boolean> future : futures )
+        {
+            assertTrue( future.get() );
+        }
+
+        writer.shutdown();
+
+        List<JournalRecord> records = JournalReader.readSegment( JournalWriter.getSegmentFile( workingDirectory,
+            FILE_NAME, 1 ) );
+
+        assertEquals( 20, records.size() );
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            JournalRecord logged = records.get( 2 * i );
+            JournalRecord acked = records.get( 2 * i + 1 );
+
+            assertEquals( JournalRecord.LOG, logged.getType() );
+            assertEquals( i + 1L, logged.getRevision() );
+            assertEquals( "uid=admin,ou=system", logged.getPrincipal() );
+            assertEquals( "dn: cn=test" + ( i + 1 ) + ",ou=system\nchangetype: delete\n\n", logged.getLdif() );
+            assertEquals( JournalRecord.ACK, acked.getType() );
+            assertEquals( i + 1L, acked.getRevision() );
+        }
+
+        JournalReader reader = new JournalReader( workingDirectory, FILE_NAME );
+        reader.read();
+
+        assertEquals( 10L, reader.getLastRevision() );
+        assertTrue( reader.getUnacknowledged().isEmpty() );
+    }
+
+
+    @Test
+    public void testUnacknowledged() throws Exception
+    {
+        JournalWriter writer = startWriter( 0 );
+
+        writer.add( log( 1L ) );
+        writer.add( ack( 1L ) );
+        writer.add( log( 2L ) );
+        writer.add( log( 3L ) );
+        writer.add( nack( 3L ) );
+        writer.add( log( 4L ) ).get();
+        writer.shutdown();
+
+        JournalReader reader = new JournalReader( workingDirectory, FILE_NAME );
+        reader.read();
+
+        List<JournalRecord> unacknowledged = reader.getUnacknowledged();
+
+        assertEquals( 4L, reader.getLastRevision() );
+        assertEquals( 2, unacknowledged.size() );
+        assertEquals( 2L, unacknowledged.get( 0 ).getRevision() );
+        assertEquals( 4L, unacknowledged.get( 1 ).getRevision() );
+    }
+
+
+    @Test
+    public void testRotation() throws Exception
+    {
+        // A new segment every 2 logged operations
+        JournalWriter writer = startWriter( 2 );
+
+        for ( long revision = 1L; revision <= 6L; revision++ )
+        {
+            writer.add( log( revision ) ).get();
+            writer.add( ack( revision ) ).get();
+        }
+
+        writer.shutdown();
+
+        assertTrue( JournalWriter.lastSegmentNumber( workingDirectory, FILE_NAME ) >= 3 );
+
+        // A restarted writer uses a new segment, and the acks are found in any segment
+        writer = startWriter( 0 );
+        int segment = JournalWriter.lastSegmentNumber( workingDirectory, FILE_NAME );
+        writer.add( ack( 7L ) ).get();
+        writer.shutdown();
+
+        assertTrue( JournalWriter.getSegmentFile( workingDirectory, FILE_NAME, segment ).length() > 0 );
+
+        JournalReader reader = new JournalReader( workingDirectory, FILE_NAME );
+        reader.read();
+
+        assertEquals( 6L, reader.getLastRevision() );
+        assertTrue( reader.getUnacknowledged().isEmpty() );
+    }
+
+
+    @Test
+    public void testTruncatedSegment() throws Exception
+    {
+        JournalWriter writer = startWriter( 0 );
+
+        writer.add( log( 1L ) );
+        writer.add( ack( 1L ) );
+        writer.add( log( 2L ) ).get();
+        writer.shutdown();
+
+        // Simulate a crash while the last record was written
+        File segment = JournalWriter.getSegmentFile( workingDirectory, FILE_NAME, 1 );
+        RandomAccessFile file = new RandomAccessFile( segment, "rw" );
+
+        try
+        {
+            file.setLength( file.length() - 3 );
+        }
+        finally
+        {
+            file.close();
+        }
+
+        assertEquals( 2, JournalReader.readSegment( segment ).size() );
+
+        JournalReader reader = new JournalReader( workingDirectory, FILE_NAME );
+        reader.read();
+
+        assertEquals( 1L, reader.getLastRevision() );
+    }
+
+
+    @Test
+    public void testClosedWriter() throws Exception
+    {
+        JournalWriter writer = startWriter( 0 );
+        writer.shutdown();
+
+        // Nothing can be written once the writer is stopped
+        assertFalse( writer.add( log( 1L ) ).get() );
+    }
+}
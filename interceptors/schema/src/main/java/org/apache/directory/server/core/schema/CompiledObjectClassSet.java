@@ -0,0 +1,104 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.schema;
+
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * The result of the schema checks which only depend on the objectClasses of an
+ * entry : the complete list of objectClasses (including the inherited ones), the
+ * MUST and allowed AttributeTypes, and the presence of the extensibleObject
+ * ObjectClass. It is computed once for a given set of objectClasses, and shared
+ * by all the entries using the same set. Instances are immutable.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class CompiledObjectClassSet
+{
+    /** The objectClasses, including 'top' and all the inherited ones */
+    private final List<String> objectClasses;
+
+    /** The MUST AttributeTypes OIDs */
+    private final Set<String> must;
+
+    /** The allowed AttributeTypes OIDs : MUST, MAY and objectClass */
+    private final Set<String> allowed;
+
+    /** Tells if the extensibleObject ObjectClass is present */
+    private final boolean extensibleObject;
+
+
+    /**
+     * Creates a new instance of CompiledObjectClassSet.
+     *
+     * @param objectClasses The objectClasses, including the inherited ones
+     * @param must The MUST AttributeTypes OIDs
+     * @param allowed The allowed AttributeTypes OIDs
+     * @param extensibleObject Tells if the extensibleObject ObjectClass is present
+     */
+    CompiledObjectClassSet( List<String> objectClasses, Set<String> must, Set<String> allowed,
+        boolean extensibleObject )
+    {
+        this.objectClasses = Collections.unmodifiableList( objectClasses );
+        this.must = Collections.unmodifiableSet( must );
+        this.allowed = Collections.unmodifiableSet( allowed );
+        this.extensibleObject = extensibleObject;
+    }
+
+
+    /**
+     * @return The objectClasses, including 'top' and all the inherited ones
+     */
+    List<String> getObjectClasses()
+    {
+        return objectClasses;
+    }
+
+
+    /**
+     * @return The MUST AttributeTypes OIDs
+     */
+    Set<String> getMust()
+    {
+        return must;
+    }
+
+
+    /**
+     * @return The allowed AttributeTypes OIDs
+     */
+    Set<String> getAllowed()
+    {
+        return allowed;
+    }
+
+
+    /**
+     * @return <code>true</code> if the extensibleObject ObjectClass is present
+     */
+    boolean hasExtensibleObject()
+    {
+        return extensibleObject;
+    }
+}
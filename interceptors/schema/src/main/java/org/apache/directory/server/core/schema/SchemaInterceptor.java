@@ -22,11 +22,13 @@ package org.apache.directory.server.core.schema;
 
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.directory.api.ldap.model.constants.MetaSchemaConstants;
@@ -36,6 +38,7 @@ import org.apache.directory.api.ldap.model.cursor.SingletonCursor;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.BinaryValue;
 import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Modification;
@@ -71,6 +74,7 @@ import org.apache.directory.api.ldap.model.schema.UsageEnum;
 import org.apache.directory.api.ldap.model.schema.registries.Schema;
 import org.apache.directory.api.ldap.model.schema.syntaxCheckers.OctetStringSyntaxChecker;
 import org.apache.directory.api.util.Strings;
+import org.apache.directory.api.util.SynchronizedLRUMap;
 import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.InterceptorEnum;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
@@ -86,6 +90,7 @@ import org.apache.directory.server.core.api.interceptor.context.ModifyOperationC
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
+import org.apache.directory.server.core.api.schema.SchemaPartition;
 import org.apache.directory.server.core.shared.SchemaService;
 import org.apache.directory.server.i18n.I18n;
 import org.slf4j.Logger;
@@ -107,6 +112,12 @@ public class SchemaInterceptor extends BaseInterceptor
     /** Speedup for logs */
     private static final boolean IS_DEBUG = LOG.isDebugEnabled();
 
+    /** The maximum number of objectClass combinations we keep compiled */
+    private static final int COMPILED_OC_SETS_SIZE = 1024;
+
+    /** The number of values above which the values modified in an attribute are tracked instead of copying it */
+    private static final int LARGE_ATTRIBUTE_SIZE = 64;
+
     /**
      * the root nexus to all database partitions
      */
@@ -143,6 +154,12 @@ public class SchemaInterceptor extends BaseInterceptor
     /** A map used to store all the objectClasses allowed attributes (may + must) */
     private Map<String, List<AttributeType>> allowed;
 
+    /** The compiled objectClass combinations, by normalized set of objectClasses */
+    private final SynchronizedLRUMap compiledOcSets = new SynchronizedLRUMap( COMPILED_OC_SETS_SIZE );
+
+    /** The schema version the compiled objectClass combinations have been computed with */
+    private volatile long compiledSchemaVersion;
+
 
     /**
      * Creates a new instance of a SchemaInterceptor.
@@ -338,6 +355,9 @@ public class SchemaInterceptor extends BaseInterceptor
         computeMayAttributes( objectClass, atSeen );
 
         superiors.put( objectClass.getName(), ocSuperiors );
+
+        // The compiled objectClass combinations may use this ObjectClass
+        compiledOcSets.clear();
     }
 
 
@@ -352,6 +372,7 @@ public class SchemaInterceptor extends BaseInterceptor
         allMust = new ConcurrentHashMap<String, List<AttributeType>>();
         allMay = new ConcurrentHashMap<String, List<AttributeType>>();
         allowed = new ConcurrentHashMap<String, List<AttributeType>>();
+        compiledOcSets.clear();
 
         while ( objectClasses.hasNext() )
         {
@@ -692,8 +713,30 @@ public class SchemaInterceptor extends BaseInterceptor
         // - the ATs are present in the schema
         // - The value is syntaxically correct
         //
-        // While doing that, we will apply the modification to a copy of the current entry
-        Entry tempEntry = currentEntry.clone();
+        // While doing that, we will apply the modification to a copy of the current entry.
+        // The copy shares the current entry's attributes until they are modified, and the
+        // values added to or removed from a large attribute are only tracked : the cost of
+        // a modification does not depend on the number of values already present.
+        Entry tempEntry = new DefaultEntry( schemaManager, currentEntry.getDn() );
+
+        for ( Attribute attribute : currentEntry )
+        {
+            tempEntry.put( attribute );
+        }
+
+        // The attributes which are not shared anymore
+        Set<AttributeType> copied = new HashSet<AttributeType>();
+
+        // The values added to and removed from the large attributes
+        Map<AttributeType, PendingValues> pendingValues = new HashMap<AttributeType, PendingValues>();
+
+        // The ObjectClasses may be altered by the checks
+        AttributeType objectClassAT = directoryService.getAtProvider().getObjectClass();
+
+        if ( tempEntry.containsAttribute( objectClassAT ) )
+        {
+            getModifiableAttribute( tempEntry, objectClassAT, copied );
+        }
 
         // Now, apply each mod one by one
         for ( Modification mod : mods )
@@ -713,20 +756,35 @@ public class SchemaInterceptor extends BaseInterceptor
                     // If not, we have to create the entry
                     if ( currentAttribute != null )
                     {
+                        PendingValues pending = getPendingValues( dn, currentAttribute, copied, pendingValues );
+
+                        if ( pending != null )
+                        {
+                            // The added values won't be checked with the entry
+                            Attribute addedValues = attribute.clone();
+                            assertHumanReadable( addedValues );
+                            assertSyntaxes( addedValues );
+                        }
+                        else
+                        {
+                            currentAttribute = getModifiableAttribute( tempEntry, attributeType, copied );
+                        }
+
                         for ( Value<?> value : attribute )
                         {
                             // At this point, we know that the attribute's syntax is correct
                             // We just have to check that the current attribute does not
                             // contains the value already
-                            if ( currentAttribute.contains( value ) )
+                            boolean added = ( pending != null ) ? pending.add( value ) : currentAttribute
+                                .add( value ) == 1;
+
+                            if ( !added )
                             {
                                 // This is an error.
                                 String msg = I18n.err( I18n.ERR_54, value );
                                 LOG.error( msg );
                                 throw new LdapAttributeInUseException( msg );
                             }
-
-                            currentAttribute.add( value );
                         }
                     }
                     else
@@ -746,6 +804,7 @@ public class SchemaInterceptor extends BaseInterceptor
                         }
 
                         tempEntry.put( newAttribute );
+                        copied.add( attributeType );
                     }
 
                     break;
@@ -764,20 +823,26 @@ public class SchemaInterceptor extends BaseInterceptor
                     {
                         // No value : we have to remove the entire attribute
                         tempEntry.removeAttributes( attributeType );
+                        pendingValues.remove( attributeType );
                     }
                     else
                     {
                         currentAttribute = tempEntry.get( attributeType );
+                        PendingValues pending = getPendingValues( dn, currentAttribute, copied, pendingValues );
+
+                        if ( pending == null )
+                        {
+                            currentAttribute = getModifiableAttribute( tempEntry, attributeType, copied );
+                        }
 
                         // Now remove all the values
                         for ( Value<?> value : attribute )
                         {
                             // We can only remove existing values.
-                            if ( currentAttribute.contains( value ) )
-                            {
-                                currentAttribute.remove( value );
-                            }
-                            else
+                            boolean removed = ( pending != null ) ? pending.remove( value ) : currentAttribute
+                                .remove( value );
+
+                            if ( !removed )
                             {
                                 String msg = I18n.err( I18n.ERR_56, attributeType );
                                 LOG.error( msg );
@@ -787,9 +852,12 @@ public class SchemaInterceptor extends BaseInterceptor
 
                         // If the current attribute is empty, we have to remove
                         // it from the entry
-                        if ( currentAttribute.size() == 0 )
+                        int size = ( pending != null ) ? pending.size() : currentAttribute.size();
+
+                        if ( size == 0 )
                         {
                             tempEntry.removeAttributes( attributeType );
+                            pendingValues.remove( attributeType );
                         }
                     }
 
@@ -798,6 +866,8 @@ public class SchemaInterceptor extends BaseInterceptor
                 case REPLACE_ATTRIBUTE:
                     // The replaced attribute might not exist, it will then be a Add
                     // If there is no value, then the attribute will be removed
+                    pendingValues.remove( attributeType );
+
                     if ( !tempEntry.containsAttribute( attributeType ) )
                     {
                         if ( attribute.size() == 0 )
@@ -812,6 +882,7 @@ public class SchemaInterceptor extends BaseInterceptor
                             Attribute newAttribute = createNewAttribute( attribute );
 
                             tempEntry.put( newAttribute );
+                            copied.add( attributeType );
                         }
                     }
                     else
@@ -831,6 +902,7 @@ public class SchemaInterceptor extends BaseInterceptor
                             Attribute newAttribute = createNewAttribute( attribute );
 
                             tempEntry.put( newAttribute );
+                            copied.add( attributeType );
                         }
                     }
 
@@ -850,7 +922,63 @@ public class SchemaInterceptor extends BaseInterceptor
         // - all the attribute are in MUST and MAY, except fo the extensibleObeject OC
         // is present
         // - We haven't removed a part of the Rdn
-        check( dn, tempEntry );
+        // The values of the attributes still shared with the current entry have already
+        // been checked when they were stored.
+        check( dn, tempEntry, copied );
+    }
+
+
+    /**
+     * Gives back the values added to or removed from an attribute of the entry being
+     * modified, if the attribute is large enough for the values to be tracked instead
+     * of copying the attribute. Null is returned if the attribute must be copied.
+     */
+    private PendingValues getPendingValues( Dn dn, Attribute currentAttribute, Set<AttributeType> copied,
+        Map<AttributeType, PendingValues> pendingValues )
+    {
+        AttributeType attributeType = currentAttribute.getAttributeType();
+        PendingValues pending = pendingValues.get( attributeType );
+
+        if ( ( pending != null ) || copied.contains( attributeType ) || attributeType.isSingleValued()
+            || ( currentAttribute.size() < LARGE_ATTRIBUTE_SIZE ) )
+        {
+            return pending;
+        }
+
+        // The Rdn attributes are always copied, so that their values can be checked
+        for ( Ava ava : dn.getRdn() )
+        {
+            String type = ava.getNormType();
+
+            if ( attributeType.getOid().equals( type ) || attributeType.getName().equalsIgnoreCase( type ) )
+            {
+                return null;
+            }
+        }
+
+        pending = new PendingValues( currentAttribute );
+        pendingValues.put( attributeType, pending );
+
+        return pending;
+    }
+
+
+    /**
+     * Gives back an attribute of the entry being modified which is not shared with the
+     * current entry, copying it if needed.
+     */
+    private Attribute getModifiableAttribute( Entry tempEntry, AttributeType attributeType,
+        Set<AttributeType> copied ) throws LdapException
+    {
+        Attribute attribute = tempEntry.get( attributeType );
+
+        if ( copied.add( attributeType ) )
+        {
+            attribute = attribute.clone();
+            tempEntry.put( attribute );
+        }
+
+        return attribute;
     }
 
 
@@ -913,6 +1041,16 @@ public class SchemaInterceptor extends BaseInterceptor
      * We also check the syntaxes
      */
     private void check( Dn dn, Entry entry ) throws LdapException
+    {
+        check( dn, entry, null );
+    }
+
+
+    /**
+     * Checks an entry, the values being checked only for the given attributes, or for
+     * all the attributes if the set is null.
+     */
+    private void check( Dn dn, Entry entry, Set<AttributeType> checkedAttributes ) throws LdapException
     {
         // ---------------------------------------------------------------
         // First, make sure all attributes are valid schema defined attributes
@@ -945,35 +1083,169 @@ public class SchemaInterceptor extends BaseInterceptor
             objectClassAttr = new DefaultAttribute( directoryService.getAtProvider().getObjectClass() );
         }
 
-        List<ObjectClass> ocs = new ArrayList<ObjectClass>();
+        // All the checks depending only on the ObjectClasses are done once
+        // for a given set of ObjectClasses
+        CompiledObjectClassSet compiled = getCompiledObjectClassSet( dn, objectClassAttr );
+
+        alterObjectClasses( objectClassAttr, compiled );
+
+        assertRequiredAttributesPresent( dn, entry, compiled.getMust() );
+        assertNumberOfAttributeValuesValid( entry );
+
+        if ( !compiled.hasExtensibleObject() )
+        {
+            assertAllAttributesAllowed( dn, entry, compiled.getAllowed() );
+        }
+
+        // Check the attributes values and transform them to String if necessary
+        assertHumanReadable( entry, checkedAttributes );
+
+        // Now check the syntaxes
+        assertSyntaxes( entry, checkedAttributes );
+
+        assertRdn( dn, entry );
+    }
+
+
+    /**
+     * Gets the compiled form of a set of ObjectClasses, computing it if it's not
+     * already cached. The cache is flushed when the schema is modified.
+     */
+    private CompiledObjectClassSet getCompiledObjectClassSet( Dn dn, Attribute objectClassAttr )
+        throws LdapException
+    {
+        long currentSchemaVersion = getSchemaVersion();
+
+        if ( currentSchemaVersion != compiledSchemaVersion )
+        {
+            synchronized ( compiledOcSets )
+            {
+                if ( currentSchemaVersion != compiledSchemaVersion )
+                {
+                    LOG.debug( "Schema has changed, flushing the compiled objectClass sets" );
+                    compiledOcSets.clear();
+                    compiledSchemaVersion = currentSchemaVersion;
+                }
+            }
+        }
+
+        // The key is the sorted set of the normalized objectClasses, 'top' excluded
+        Set<String> names = new TreeSet<String>();
 
-        alterObjectClasses( objectClassAttr );
+        for ( Value<?> objectClass : objectClassAttr )
+        {
+            String name = Strings.toLowerCaseAscii( objectClass.getString() );
+
+            if ( !SchemaConstants.TOP_OC.equals( name ) )
+            {
+                names.add( name );
+            }
+        }
+
+        String key = names.toString();
+        CompiledObjectClassSet compiled = ( CompiledObjectClassSet ) compiledOcSets.get( key );
+
+        if ( compiled == null )
+        {
+            compiled = compileObjectClassSet( dn, objectClassAttr );
+            compiledOcSets.put( key, compiled );
+        }
+
+        return compiled;
+    }
+
+
+    /**
+     * Computes everything that depends only on the ObjectClasses : the inherited
+     * ObjectClasses, the MUST and allowed AttributeTypes. We also check that the
+     * ObjectClasses don't conflict : a set of ObjectClasses which does not pass
+     * this check is not compiled, and the exception is thrown.
+     */
+    private CompiledObjectClassSet compileObjectClassSet( Dn dn, Attribute objectClassAttr ) throws LdapException
+    {
+        // Work on a copy, the entry will be updated by alterObjectClasses( Attribute, CompiledObjectClassSet )
+        Attribute objectClasses = objectClassAttr.clone();
+        alterObjectClasses( objectClasses );
 
         // Now we can process the MUST and MAY attributes
-        Set<String> must = getAllMust( objectClassAttr );
-        Set<String> allowed = getAllAllowed( objectClassAttr, must );
+        Set<String> must = getAllMust( objectClasses );
+        Set<String> allowed = getAllAllowed( objectClasses, must );
 
-        boolean hasExtensibleObject = getObjectClasses( objectClassAttr, ocs );
+        List<ObjectClass> ocs = new ArrayList<ObjectClass>();
+        boolean hasExtensibleObject = getObjectClasses( objectClasses, ocs );
 
         // As we now have all the ObjectClasses updated, we have
         // to check that we don't have conflicting ObjectClasses
         assertObjectClasses( dn, ocs );
 
-        assertRequiredAttributesPresent( dn, entry, must );
-        assertNumberOfAttributeValuesValid( entry );
+        List<String> names = new ArrayList<String>( objectClasses.size() );
 
-        if ( !hasExtensibleObject )
+        for ( Value<?> objectClass : objectClasses )
         {
-            assertAllAttributesAllowed( dn, entry, allowed );
+            names.add( objectClass.getString() );
         }
 
-        // Check the attributes values and transform them to String if necessary
-        assertHumanReadable( entry );
+        return new CompiledObjectClassSet( names, must, allowed, hasExtensibleObject );
+    }
 
-        // Now check the syntaxes
-        assertSyntaxes( entry );
 
-        assertRdn( dn, entry );
+    /**
+     * Adds the missing inherited ObjectClasses to the objectClass attribute, and
+     * removes the duplicated values. The attribute is left untouched if it's
+     * already complete.
+     */
+    private void alterObjectClasses( Attribute objectClassAttr, CompiledObjectClassSet compiled )
+        throws LdapException
+    {
+        Set<String> objectClasses = new HashSet<String>();
+        List<String> objectClassesUP = new ArrayList<String>();
+
+        for ( Value<?> ocValue : objectClassAttr )
+        {
+            String ocName = ocValue.getString();
+
+            if ( objectClasses.add( Strings.toLowerCaseAscii( ocName ) ) )
+            {
+                objectClassesUP.add( ocName );
+            }
+        }
+
+        for ( String ocName : compiled.getObjectClasses() )
+        {
+            if ( objectClasses.add( Strings.toLowerCaseAscii( ocName ) ) )
+            {
+                objectClassesUP.add( ocName );
+            }
+        }
+
+        if ( objectClassesUP.size() == objectClassAttr.size() )
+        {
+            // No duplicate, nothing missing
+            return;
+        }
+
+        objectClassAttr.clear();
+
+        for ( String ocName : objectClassesUP )
+        {
+            objectClassAttr.add( ocName );
+        }
+    }
+
+
+    /**
+     * @return The current schema version, used to invalidate the compiled objectClass sets
+     */
+    private long getSchemaVersion()
+    {
+        SchemaPartition schemaPartition = directoryService.getSchemaPartition();
+
+        if ( schemaPartition == null )
+        {
+            return 0L;
+        }
+
+        return schemaPartition.getSchemaVersion();
     }
 
 
@@ -1437,18 +1709,36 @@ public class SchemaInterceptor extends BaseInterceptor
      */
     private void assertRequiredAttributesPresent( Dn dn, Entry entry, Set<String> must ) throws LdapException
     {
+        // The entry can't have twice the same AttributeType, counting is enough
+        int present = 0;
+
         for ( Attribute attribute : entry )
         {
-            must.remove( attribute.getAttributeType().getOid() );
+            if ( must.contains( attribute.getAttributeType().getOid() ) )
+            {
+                present++;
+            }
         }
 
-        if ( must.size() != 0 )
+        if ( present == must.size() )
+        {
+            return;
+        }
+
+        Set<String> missing = new HashSet<String>( must );
+
+        for ( Attribute attribute : entry )
+        {
+            missing.remove( attribute.getAttributeType().getOid() );
+        }
+
+        if ( missing.size() != 0 )
         {
             // include AT names for better error reporting
             StringBuilder sb = new StringBuilder();
             sb.append( '[' );
 
-            for ( String oid : must )
+            for ( String oid : missing )
             {
                 String name = schemaManager.getAttributeType( oid ).getName();
                 sb.append( name )
@@ -1544,36 +1834,48 @@ public class SchemaInterceptor extends BaseInterceptor
     /**
      * Check the entry attributes syntax, using the syntaxCheckers
      */
-    private void assertSyntaxes( Entry entry ) throws LdapException
+    private void assertSyntaxes( Entry entry, Set<AttributeType> checkedAttributes ) throws LdapException
     {
         // First, loop on all attributes
         for ( Attribute attribute : entry )
         {
-            AttributeType attributeType = attribute.getAttributeType();
-            SyntaxChecker syntaxChecker = attributeType.getSyntax().getSyntaxChecker();
+            if ( ( checkedAttributes == null ) || checkedAttributes.contains( attribute.getAttributeType() ) )
+            {
+                assertSyntaxes( attribute );
+            }
+        }
+    }
+
+
+    /**
+     * Check the attribute values syntax, using the syntaxChecker
+     */
+    private void assertSyntaxes( Attribute attribute ) throws LdapException
+    {
+        AttributeType attributeType = attribute.getAttributeType();
+        SyntaxChecker syntaxChecker = attributeType.getSyntax().getSyntaxChecker();
 
-            if ( syntaxChecker instanceof OctetStringSyntaxChecker )
+        if ( syntaxChecker instanceof OctetStringSyntaxChecker )
+        {
+            // This is a speedup : no need to check the syntax of any value
+            // if all the syntaxes are accepted...
+            return;
+        }
+
+        // Then loop on all values
+        for ( Value<?> value : attribute )
+        {
+            if ( value.isSchemaAware() )
             {
-                // This is a speedup : no need to check the syntax of any value
-                // if all the syntaxes are accepted...
+                // No need to validate something which is already ok
                 continue;
             }
 
-            // Then loop on all values
-            for ( Value<?> value : attribute )
+            if ( !syntaxChecker.isValidSyntax( value.getValue() ) )
             {
-                if ( value.isSchemaAware() )
-                {
-                    // No need to validate something which is already ok
-                    continue;
-                }
-
-                if ( !syntaxChecker.isValidSyntax( value.getValue() ) )
-                {
-                    String message = I18n.err( I18n.ERR_280, value.getString(), attribute.getUpId() );
-                    LOG.info( message );
-                    throw new LdapInvalidAttributeValueException( ResultCodeEnum.INVALID_ATTRIBUTE_SYNTAX );
-                }
+                String message = I18n.err( I18n.ERR_280, value.getString(), attribute.getUpId() );
+                LOG.info( message );
+                throw new LdapInvalidAttributeValueException( ResultCodeEnum.INVALID_ATTRIBUTE_SYNTAX );
             }
         }
     }
@@ -1689,7 +1991,7 @@ public class SchemaInterceptor extends BaseInterceptor
      * to valid String if they are stored as byte[], and that non Human Readable attributes
      * stored as String can be transformed to byte[]
      */
-    private void assertHumanReadable( Entry entry ) throws LdapException
+    private void assertHumanReadable( Entry entry, Set<AttributeType> checkedAttributes ) throws LdapException
     {
         boolean isModified = false;
 
@@ -1698,18 +2000,13 @@ public class SchemaInterceptor extends BaseInterceptor
         // Loops on all attributes
         for ( Attribute attribute : entry )
         {
-            AttributeType attributeType = attribute.getAttributeType();
-
-            // If the attributeType is H-R, check all of its values
-            if ( attributeType.getSyntax().isHumanReadable() )
-            {
-                isModified = checkHumanReadable( attribute );
-            }
-            else
+            if ( ( checkedAttributes != null ) && !checkedAttributes.contains( attribute.getAttributeType() ) )
             {
-                isModified = checkNotHumanReadable( attribute );
+                continue;
             }
 
+            isModified = assertHumanReadable( attribute );
+
             // If we have a returned attribute, then we need to store it
             // into a new entry
             if ( isModified )
@@ -1731,4 +2028,100 @@ public class SchemaInterceptor extends BaseInterceptor
             entry = clonedEntry;
         }
     }
+
+
+    /**
+     * Check that the attribute's values can be transformed to valid String if the attribute
+     * is Human Readable, or to byte[] if it's not.
+     *
+     * @return true if some values have been transformed
+     */
+    private boolean assertHumanReadable( Attribute attribute ) throws LdapException
+    {
+        // If the attributeType is H-R, check all of its values
+        if ( attribute.getAttributeType().getSyntax().isHumanReadable() )
+        {
+            return checkHumanReadable( attribute );
+        }
+        else
+        {
+            return checkNotHumanReadable( attribute );
+        }
+    }
+
+
+    /**
+     * The values added to and removed from a large attribute of an entry being modified. The
+     * attribute itself is left untouched, so that it does not have to be copied.
+     *
+     * Only the checks done here are independent of the attribute size : the partition
+     * still stores the values inline in the entry, which is serialized as a whole.
+     */
+    private static final class PendingValues
+    {
+        /** The attribute, as stored in the current entry */
+        private final Attribute attribute;
+
+        /** The added values */
+        private final Set<Value<?>> added = new HashSet<Value<?>>();
+
+        /** The removed values */
+        private final Set<Value<?>> removed = new HashSet<Value<?>>();
+
+
+        private PendingValues( Attribute attribute )
+        {
+            this.attribute = attribute;
+        }
+
+
+        private boolean contains( Value<?> value )
+        {
+            return added.contains( value ) || ( !removed.contains( value ) && attribute.contains( value ) );
+        }
+
+
+        /**
+         * @return false if the value is already present
+         */
+        private boolean add( Value<?> value )
+        {
+            if ( contains( value ) )
+            {
+                return false;
+            }
+
+            if ( !removed.remove( value ) )
+            {
+                added.add( value );
+            }
+
+            return true;
+        }
+
+
+        /**
+         * @return false if the value is not present
+         */
+        private boolean remove( Value<?> value )
+        {
+            if ( !contains( value ) )
+            {
+                return false;
+            }
+
+            if ( !added.remove( value ) )
+            {
+                removed.add( value );
+            }
+
+            return true;
+        }
+
+
+        private int size()
+        {
+            return attribute.size() + added.size() - removed.size();
+        }
+    }
 }
@@ -41,7 +41,6 @@ import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
 import org.apache.directory.api.ldap.model.exception.LdapNoSuchAttributeException;
-import org.apache.directory.api.ldap.model.exception.LdapOperationErrorException;
 import org.apache.directory.api.ldap.model.exception.LdapOperationException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.exception.LdapSchemaViolationException;
@@ -106,6 +105,15 @@ public class SubentryInterceptor extends BaseInterceptor
     /** A reference to the nexus for direct backend operations */
     private PartitionNexus nexus;
 
+    /** The default maximum number of entries evaluated within the operation modifying a subentry */
+    public static final int DEFAULT_SYNCHRONOUS_UPDATE_LIMIT = 1000;
+
+    /** The maximum number of entries evaluated within the operation modifying a subentry */
+    private int synchronousUpdateLimit = DEFAULT_SYNCHRONOUS_UPDATE_LIMIT;
+
+    /** The updater processing the big administrative areas in the background */
+    private SubentryUpdater updater;
+
     /** An enum used for the entries update */
     private enum OperationEnum
     {
@@ -201,6 +209,7 @@ public class SubentryInterceptor extends BaseInterceptor
         super.init( directoryService );
 
         nexus = directoryService.getPartitionNexus();
+        updater = new SubentryUpdater( directoryService.getSubentryCache() );
 
         ssParser = new SubtreeSpecificationParser( schemaManager );
 
@@ -278,6 +287,50 @@ public class SubentryInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    public void destroy()
+    {
+        if ( updater != null )
+        {
+            updater.stop();
+        }
+    }
+
+
+    /**
+     * Sets the maximum number of entries evaluated within an operation adding, modifying
+     * or deleting a subentry. The entries of a bigger administrative area are updated in
+     * the background, once the operation has returned.
+     *
+     * @param synchronousUpdateLimit The maximum number of entries, 0 to update all the
+     * entries in the background
+     */
+    public void setSynchronousUpdateLimit( int synchronousUpdateLimit )
+    {
+        this.synchronousUpdateLimit = synchronousUpdateLimit;
+    }
+
+
+    /**
+     * @return The maximum number of entries evaluated within an operation on a subentry
+     */
+    public int getSynchronousUpdateLimit()
+    {
+        return synchronousUpdateLimit;
+    }
+
+
+    /**
+     * @return The updater processing the big administrative areas in the background
+     */
+    public SubentryUpdater getUpdater()
+    {
+        return updater;
+    }
+
+
     //-------------------------------------------------------------------------------------------
     // Helper methods
     //-------------------------------------------------------------------------------------------
@@ -347,11 +400,49 @@ public class SubentryInterceptor extends BaseInterceptor
 
 
     /**
-     * Update all the entries under an AP adding the
+     * Update all the entries selected by a subentry, adding or removing the references
+     * to the subentry. The first entries are updated within the current operation ; if
+     * the area contains more entries than the synchronous update limit, or if an update
+     * is already pending for the subentry, the entries are updated in the background.
      */
-    private void updateEntries( OperationEnum operation, CoreSession session, Dn subentryDn, Dn apDn,
-        SubtreeSpecification ss, Dn baseDn, List<Attribute> operationalAttributes ) throws LdapException
+    private void updateEntries( final OperationEnum operation, CoreSession session, final Dn subentryDn,
+        final Dn apDn, final SubtreeSpecification ss, final Dn baseDn, final List<Attribute> operationalAttributes )
+        throws LdapException
     {
+        if ( !updater.isPending( subentryDn ) )
+        {
+            if ( updateSelectedEntries( operation, session, subentryDn, apDn, ss, baseDn, operationalAttributes,
+                synchronousUpdateLimit ) )
+            {
+                return;
+            }
+        }
+
+        // Too many entries : restart in the background. The entries already updated
+        // will not be modified again
+        updater.submit( subentryDn, new SubentryUpdater.Update()
+        {
+            public void apply() throws LdapException
+            {
+                updateSelectedEntries( operation, directoryService.getAdminSession(), subentryDn, apDn, ss, baseDn,
+                    operationalAttributes, Long.MAX_VALUE );
+            }
+        } );
+    }
+
+
+    /**
+     * Update the entries selected by a subentry, skipping those which already have the
+     * expected references.
+     *
+     * @return <tt>true</tt> if all the entries have been processed, <tt>false</tt> if
+     * the limit has been reached before
+     */
+    private boolean updateSelectedEntries( OperationEnum operation, CoreSession session, Dn subentryDn, Dn apDn,
+        SubtreeSpecification ss, Dn baseDn, List<Attribute> operationalAttributes, long limit )
+        throws LdapException
+    {
+        boolean background = ( limit == Long.MAX_VALUE );
         ExprNode filter = ObjectClassNode.OBJECT_CLASS_NODE; // (objectClass=*)
         SearchControls controls = new SearchControls();
         controls.setSearchScope( SearchControls.SUBTREE_SCOPE );
@@ -363,13 +454,21 @@ public class SubentryInterceptor extends BaseInterceptor
         searchOperationContext.setAliasDerefMode( AliasDerefMode.NEVER_DEREF_ALIASES );
 
         EntryFilteringCursor subentries = nexus.search( searchOperationContext );
+        long nbEvaluated = 0L;
 
         try
         {
             while ( subentries.next() )
             {
+                if ( nbEvaluated == limit )
+                {
+                    return false;
+                }
+
+                nbEvaluated++;
                 Entry candidate = subentries.get();
                 Dn candidateDn = candidate.getDn();
+                boolean modified = false;
 
                 if ( directoryService.getEvaluator().evaluate( ss, apDn, candidateDn, candidate ) )
                 {
@@ -378,7 +477,11 @@ public class SubentryInterceptor extends BaseInterceptor
                     switch ( operation )
                     {
                         case ADD:
-                            modifications = getOperationalModsForAdd( candidate, operationalAttributes );
+                            if ( !hasOperationalAttributes( candidate, operationalAttributes ) )
+                            {
+                                modifications = getOperationalModsForAdd( candidate, operationalAttributes );
+                            }
+
                             break;
 
                         case REMOVE:
@@ -395,11 +498,25 @@ public class SubentryInterceptor extends BaseInterceptor
                     }
 
                     LOG.debug( "The entry {} has been evaluated to true for subentry {}", candidate.getDn(), subentryDn );
-                    nexus.modify( new ModifyOperationContext( session, candidateDn, modifications ) );
+
+                    if ( ( modifications != null ) && !modifications.isEmpty() )
+                    {
+                        nexus.modify( new ModifyOperationContext( session, candidateDn, modifications ) );
+                        modified = true;
+                    }
+                }
+
+                if ( background )
+                {
+                    updater.entryProcessed( modified );
                 }
             }
 
-            subentries.close();
+            return true;
+        }
+        catch ( LdapException le )
+        {
+            throw le;
         }
         catch ( Exception e )
         {
@@ -419,6 +536,33 @@ public class SubentryInterceptor extends BaseInterceptor
     }
 
 
+    /**
+     * Tells if an entry already contains all the values of some operational attributes
+     */
+    private boolean hasOperationalAttributes( Entry entry, List<Attribute> operationalAttributes )
+    {
+        for ( Attribute operationalAttribute : operationalAttributes )
+        {
+            Attribute opAttrInEntry = entry.get( operationalAttribute.getAttributeType() );
+
+            if ( opAttrInEntry == null )
+            {
+                return false;
+            }
+
+            for ( Value<?> value : operationalAttribute )
+            {
+                if ( !opAttrInEntry.contains( value ) )
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+
     /**
      * Checks if the given Dn is a namingContext
      */
@@ -1128,49 +1272,7 @@ public class SubentryInterceptor extends BaseInterceptor
             Dn oldBaseDn = apName;
             oldBaseDn = oldBaseDn.add( ssOld.getBase() );
 
-            ExprNode filter = new PresenceNode( directoryService.getAtProvider().getObjectClass() );
-            SearchControls controls = new SearchControls();
-            controls.setSearchScope( SearchControls.SUBTREE_SCOPE );
-            controls.setReturningAttributes( new String[]
-                { SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES, SchemaConstants.ALL_USER_ATTRIBUTES } );
-
-            SearchOperationContext searchOperationContext = new SearchOperationContext( modifyContext.getSession(),
-                oldBaseDn, filter, controls );
-            searchOperationContext.setAliasDerefMode( AliasDerefMode.NEVER_DEREF_ALIASES );
-
-            EntryFilteringCursor subentries = nexus.search( searchOperationContext );
-
-            try
-            {
-                while ( subentries.next() )
-                {
-                    Entry candidate = subentries.get();
-                    Dn candidateDn = candidate.getDn();
-
-                    if ( directoryService.getEvaluator().evaluate( ssOld, apName, candidateDn, candidate ) )
-                    {
-                        nexus.modify( new ModifyOperationContext( modifyContext.getSession(), candidateDn,
-                            getOperationalModsForRemove( dn, candidate ) ) );
-                    }
-                }
-
-                subentries.close();
-            }
-            catch ( Exception e )
-            {
-                throw new LdapOperationErrorException( e.getMessage(), e );
-            }
-            finally
-            {
-                try
-                {
-                    subentries.close();
-                }
-                catch ( Exception e )
-                {
-                    LOG.error( I18n.err( I18n.ERR_168 ), e );
-                }
-            }
+            updateEntries( OperationEnum.REMOVE, modifyContext.getSession(), dn, apName, ssOld, oldBaseDn, null );
 
             // search for all selected entries by the new SS and add references to subentry
             subentry = directoryService.getSubentryCache().getSubentry( dn );
@@ -1178,42 +1280,8 @@ public class SubentryInterceptor extends BaseInterceptor
             Dn newBaseDn = apName;
             newBaseDn = newBaseDn.add( ssNew.getBase() );
 
-            searchOperationContext = new SearchOperationContext( modifyContext.getSession(), newBaseDn, filter,
-                controls );
-            searchOperationContext.setAliasDerefMode( AliasDerefMode.NEVER_DEREF_ALIASES );
-
-            subentries = nexus.search( searchOperationContext );
-
-            try
-            {
-                while ( subentries.next() )
-                {
-                    Entry candidate = subentries.get();
-                    Dn candidateDn = candidate.getDn();
-
-                    if ( directoryService.getEvaluator().evaluate( ssNew, apName, candidateDn, candidate ) )
-                    {
-                        nexus.modify( new ModifyOperationContext( modifyContext.getSession(), candidateDn,
-                            getOperationalModsForAdd( candidate, operationalAttributes ) ) );
-                    }
-                }
-                subentries.close();
-            }
-            catch ( Exception e )
-            {
-                throw new LdapOperationErrorException( e.getMessage(), e );
-            }
-            finally
-            {
-                try
-                {
-                    subentries.close();
-                }
-                catch ( Exception e )
-                {
-                    LOG.error( I18n.err( I18n.ERR_168 ), e );
-                }
-            }
+            updateEntries( OperationEnum.ADD, modifyContext.getSession(), dn, apName, ssNew, newBaseDn,
+                operationalAttributes );
         }
         else
         {
@@ -0,0 +1,311 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.subtree;
+
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.subtree.SubentryCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Updates in the background the references to a subentry stored in the entries it
+ * selects. The updates are applied one after the other, in the order they have been
+ * submitted, on a single thread.<br>
+ * While an update is pending, the subentry is flagged in the {@link SubentryCache},
+ * so that the references stored in the entries are not trusted for this subentry.
+ * A failed update is retried until it succeeds, which is harmless as the updates
+ * only modify the entries which don't have the expected references yet. The subentry
+ * stays pending meanwhile, and so do the subentries whose updates are queued behind :
+ * their subtreeSpecifications keep being evaluated instead of the stored references.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SubentryUpdater
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( SubentryUpdater.class );
+
+    /** The number of processed entries between two progress reports */
+    private static final int PROGRESS_INTERVAL = 10000;
+
+    /** The number of attempts for an update before the retries are slowed down */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /** The default delay before a failed update is retried, in ms */
+    private static final long RETRY_DELAY = 5000L;
+
+    /** The factor applied to the retry delay once MAX_ATTEMPTS attempts have failed */
+    private static final int SLOW_RETRY_FACTOR = 12;
+
+    /** The maximum time we wait for the pending updates when stopping, in seconds */
+    private static final long SHUTDOWN_TIMEOUT = 30L;
+
+    /**
+     * An update of the entries selected by a subentry
+     */
+    public interface Update
+    {
+        /**
+         * Updates the entries
+         *
+         * @throws LdapException If the update failed
+         */
+        void apply() throws LdapException;
+    }
+
+    /** The cache in which the pending subentries are flagged */
+    private final SubentryCache subentryCache;
+
+    /** The thread running the updates */
+    private final ExecutorService executor;
+
+    /** The number of pending updates */
+    private final AtomicInteger pendingUpdates = new AtomicInteger();
+
+    /** The number of entries processed by the background updates */
+    private final AtomicLong processedEntries = new AtomicLong();
+
+    /** The number of entries modified by the background updates */
+    private final AtomicLong modifiedEntries = new AtomicLong();
+
+    /** The delay before a failed update is retried, in ms */
+    private final long retryDelay;
+
+
+    /**
+     * Creates a new instance of SubentryUpdater, and starts its thread.
+     *
+     * @param subentryCache The subentry cache
+     */
+    public SubentryUpdater( SubentryCache subentryCache )
+    {
+        this( subentryCache, RETRY_DELAY );
+    }
+
+
+    /**
+     * Creates a new instance of SubentryUpdater with a given retry delay, and starts
+     * its thread.
+     *
+     * @param subentryCache The subentry cache
+     * @param retryDelay The delay before a failed update is retried, in ms
+     */
+    SubentryUpdater( SubentryCache subentryCache, long retryDelay )
+    {
+        this.subentryCache = subentryCache;
+        this.retryDelay = retryDelay;
+
+        executor = new ThreadPoolExecutor( 1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory()
+            {
+                public Thread newThread( Runnable runnable )
+                {
+                    Thread thread = new Thread( runnable, "subentry-updater" );
+                    thread.setDaemon( true );
+
+                    return thread;
+                }
+            } );
+    }
+
+
+    /**
+     * Submits an update. The subentry is flagged as pending until the update is done.
+     *
+     * @param subentryDn The subentry whose selected entries are updated
+     * @param update The update
+     */
+    public void submit( final Dn subentryDn, final Update update )
+    {
+        subentryCache.addPendingUpdate( subentryDn );
+        pendingUpdates.incrementAndGet();
+
+        LOG.info( "The entries selected by {} will be updated in the background", subentryDn );
+
+        executor.execute( new PendingUpdate( subentryDn, update ) );
+    }
+
+
+    /**
+     * Tells if an update is pending for a subentry. A new update for this subentry must
+     * then be submitted too, so that the updates are applied in order.
+     *
+     * @param subentryDn The subentry Dn
+     * @return <tt>true</tt> if an update is pending
+     */
+    public boolean isPending( Dn subentryDn )
+    {
+        return subentryCache.getPendingUpdates().contains( subentryDn );
+    }
+
+
+    /**
+     * Reports the progress of a background update
+     *
+     * @param modified <tt>true</tt> if the processed entry has been modified
+     */
+    public void entryProcessed( boolean modified )
+    {
+        long processed = processedEntries.incrementAndGet();
+
+        if ( modified )
+        {
+            modifiedEntries.incrementAndGet();
+        }
+
+        if ( processed % PROGRESS_INTERVAL == 0 )
+        {
+            LOG.info( "Subentry updates : {} entries processed, {} modified, {} updates pending", processed,
+                modifiedEntries.get(), pendingUpdates.get() );
+        }
+    }
+
+
+    /**
+     * @return The number of pending updates
+     */
+    public int getPendingUpdates()
+    {
+        return pendingUpdates.get();
+    }
+
+
+    /**
+     * @return The number of entries processed by the background updates
+     */
+    public long getProcessedEntries()
+    {
+        return processedEntries.get();
+    }
+
+
+    /**
+     * @return The number of entries modified by the background updates
+     */
+    public long getModifiedEntries()
+    {
+        return modifiedEntries.get();
+    }
+
+
+    /**
+     * Stops the updater, waiting for the pending updates for a while. The subentries
+     * whose updates have not been completed are logged : their references have to be
+     * fixed by modifying their subtreeSpecification again. They stay flagged as pending
+     * in the cache.
+     */
+    public void stop()
+    {
+        executor.shutdown();
+
+        try
+        {
+            if ( !executor.awaitTermination( SHUTDOWN_TIMEOUT, TimeUnit.SECONDS ) )
+            {
+                List<Runnable> notStarted = executor.shutdownNow();
+
+                for ( Runnable runnable : notStarted )
+                {
+                    LOG.warn( "The entries selected by {} have not been updated",
+                        ( ( PendingUpdate ) runnable ).subentryDn );
+                }
+            }
+        }
+        catch ( InterruptedException ie )
+        {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * An update waiting for the updater thread
+     */
+    private class PendingUpdate implements Runnable
+    {
+        /** The subentry */
+        private final Dn subentryDn;
+
+        /** The update */
+        private final Update update;
+
+
+        private PendingUpdate( Dn subentryDn, Update update )
+        {
+            this.subentryDn = subentryDn;
+            this.update = update;
+        }
+
+
+        /**
+         * Applies the update, retrying until it succeeds. The subentry is only removed
+         * from the pending subentries once the update has succeeded.
+         */
+        public void run()
+        {
+            for ( int attempt = 1;; attempt++ )
+            {
+                try
+                {
+                    update.apply();
+                    LOG.info( "The entries selected by {} have been updated", subentryDn );
+                    pendingUpdates.decrementAndGet();
+                    subentryCache.removePendingUpdate( subentryDn );
+
+                    return;
+                }
+                catch ( LdapException le )
+                {
+                    LOG.error( "Failed to update the entries selected by " + subentryDn + ", attempt " + attempt, le );
+                }
+                catch ( RuntimeException re )
+                {
+                    LOG.error( "Failed to update the entries selected by " + subentryDn + ", attempt " + attempt, re );
+                }
+
+                try
+                {
+                    Thread.sleep( attempt < MAX_ATTEMPTS ? retryDelay : retryDelay * SLOW_RETRY_FACTOR );
+                }
+                catch ( InterruptedException ie )
+                {
+                    LOG.warn( "The update of the entries selected by {} has been interrupted, the subentry stays "
+                        + "pending", subentryDn );
+                    Thread.currentThread().interrupt();
+
+                    return;
+                }
+            }
+        }
+    }
+}
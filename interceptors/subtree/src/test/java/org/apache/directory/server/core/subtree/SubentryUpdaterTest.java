@@ -0,0 +1,182 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.core.subtree;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.subtree.SubentryCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the SubentryUpdater : the updates are applied in order, and the subentries
+ * are flagged as pending in the cache until their updates are done.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SubentryUpdaterTest
+{
+    private SubentryCache subentryCache;
+    private SubentryUpdater updater;
+
+
+    @Before
+    public void init()
+    {
+        subentryCache = new SubentryCache();
+        updater = new SubentryUpdater( subentryCache, 10L );
+    }
+
+
+    @After
+    public void shutdown()
+    {
+        updater.stop();
+    }
+
+
+    @Test
+    public void testPendingUpdates() throws Exception
+    {
+        final Dn subentryDn = new Dn( "cn=subentry,ou=system" );
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( 2 );
+        final List<String> applied = Collections.synchronizedList( new ArrayList<String>() );
+
+        updater.submit( subentryDn, new SubentryUpdater.Update()
+        {
+            public void apply() throws LdapException
+            {
+                started.countDown();
+
+                try
+                {
+                    release.await();
+                }
+                catch ( InterruptedException ie )
+                {
+                    Thread.currentThread().interrupt();
+                }
+
+                applied.add( "remove" );
+                done.countDown();
+            }
+        } );
+
+        updater.submit( subentryDn, new SubentryUpdater.Update()
+        {
+            public void apply() throws LdapException
+            {
+                applied.add( "add" );
+                done.countDown();
+            }
+        } );
+
+        assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+        assertTrue( updater.isPending( subentryDn ) );
+        assertTrue( subentryCache.getPendingUpdates().contains( subentryDn ) );
+        assertEquals( 2, updater.getPendingUpdates() );
+
+        release.countDown();
+        assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+
+        // The flag is removed once the last update is done
+        for ( int i = 0; ( i < 100 ) && updater.isPending( subentryDn ); i++ )
+        {
+            Thread.sleep( 10L );
+        }
+
+        assertFalse( updater.isPending( subentryDn ) );
+        assertEquals( 0, updater.getPendingUpdates() );
+        assertEquals( "remove", applied.get( 0 ) );
+        assertEquals( "add", applied.get( 1 ) );
+    }
+
+
+    @Test
+    public void testProgress()
+    {
+        updater.entryProcessed( true );
+        updater.entryProcessed( false );
+        updater.entryProcessed( true );
+
+        assertEquals( 3L, updater.getProcessedEntries() );
+        assertEquals( 2L, updater.getModifiedEntries() );
+    }
+
+
+    @Test
+    public void testFailedUpdateStaysPending() throws Exception
+    {
+        final Dn subentryDn = new Dn( "cn=subentry,ou=system" );
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch failed = new CountDownLatch( 5 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        updater.submit( subentryDn, new SubentryUpdater.Update()
+        {
+            public void apply() throws LdapException
+            {
+                attempts.incrementAndGet();
+
+                if ( release.getCount() > 0 )
+                {
+                    failed.countDown();
+
+                    throw new LdapOtherException( "Failure" );
+                }
+            }
+        } );
+
+        // Well after the first attempts, the subentry is still pending
+        assertTrue( failed.await( 10, TimeUnit.SECONDS ) );
+        assertTrue( updater.isPending( subentryDn ) );
+        assertTrue( subentryCache.getPendingUpdates().contains( subentryDn ) );
+        assertEquals( 1, updater.getPendingUpdates() );
+
+        // Until an attempt succeeds
+        release.countDown();
+
+        for ( int i = 0; ( i < 500 ) && updater.isPending( subentryDn ); i++ )
+        {
+            Thread.sleep( 10L );
+        }
+
+        assertFalse( updater.isPending( subentryDn ) );
+        assertEquals( 0, updater.getPendingUpdates() );
+        assertTrue( attempts.get() > 5 );
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.AbstractIndexCursor;
+import org.apache.directory.server.xdbm.IndexEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A Cursor browsing all the pairs of a {@link JdbmHashTable}, one bucket at a time :
+ * only the current bucket is held in memory. The pairs are returned in no particular
+ * order, so the Cursor can't be positioned on an element. The bucket list is read
+ * when the Cursor is positioned before the first or after the last element : the
+ * keys moved by a bucket split happening while browsing may be missed or seen twice,
+ * as with any Cursor which is not isolated from the writes.
+ *
+ * @param <K> The index key type
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmHashCursor<K> extends AbstractIndexCursor<K>
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( Loggers.CURSOR_LOG.getName() );
+
+    /** Speedup for logs */
+    private static final boolean IS_DEBUG = LOG_CURSOR.isDebugEnabled();
+
+    /** The browsed table */
+    private final JdbmHashTable<Object, Object> table;
+
+    /** Tells if the table is a forward table, its keys being the index keys */
+    private final boolean forward;
+
+    /** The record IDs of the buckets */
+    private long[] buckets;
+
+    /** The position of the loaded bucket */
+    private int bucketPos;
+
+    /** The keys of the loaded bucket, once per value */
+    private final List<Object> keys = new ArrayList<Object>();
+
+    /** The values of the loaded bucket */
+    private final List<Object> values = new ArrayList<Object>();
+
+    /** The position in the loaded bucket */
+    private int pos;
+
+
+    /**
+     * Creates a new instance of JdbmHashCursor, positioned before the first element.
+     *
+     * @param table The browsed table
+     * @param forward true if the table keys are the index keys, false if they are the entry IDs
+     */
+    @SuppressWarnings("unchecked")
+    public JdbmHashCursor( JdbmHashTable<?, ?> table, boolean forward )
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Creating JdbmHashCursor {}", this );
+        }
+
+        this.table = ( JdbmHashTable<Object, Object> ) table;
+        this.forward = forward;
+        buckets = table.getBuckets();
+        bucketPos = -1;
+        pos = -1;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    protected String getUnsupportedMessage()
+    {
+        return UNSUPPORTED_MSG;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        checkNotClosed( "beforeFirst()" );
+        buckets = table.getBuckets();
+        unload();
+        bucketPos = -1;
+        pos = -1;
+        setAvailable( false );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void afterLast() throws LdapException, CursorException
+    {
+        checkNotClosed( "afterLast()" );
+        buckets = table.getBuckets();
+        unload();
+        bucketPos = buckets.length;
+        pos = 0;
+        setAvailable( false );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean last() throws LdapException, CursorException
+    {
+        afterLast();
+
+        return previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean next() throws LdapException, CursorException
+    {
+        checkNotClosed( "next()" );
+        pos++;
+
+        // Skip the empty buckets
+        while ( pos >= keys.size() )
+        {
+            if ( bucketPos + 1 >= buckets.length )
+            {
+                unload();
+                bucketPos = buckets.length;
+                pos = 0;
+
+                return setAvailable( false );
+            }
+
+            bucketPos++;
+            load();
+            pos = 0;
+        }
+
+        return setAvailable( true );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean previous() throws LdapException, CursorException
+    {
+        checkNotClosed( "previous()" );
+        pos--;
+
+        // Skip the empty buckets
+        while ( pos < 0 )
+        {
+            if ( bucketPos <= 0 )
+            {
+                unload();
+                bucketPos = -1;
+                pos = -1;
+
+                return setAvailable( false );
+            }
+
+            bucketPos--;
+            load();
+            pos = keys.size() - 1;
+        }
+
+        return setAvailable( true );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings("unchecked")
+    public IndexEntry<K, String> get() throws CursorException
+    {
+        checkNotClosed( "get()" );
+
+        if ( !available() )
+        {
+            throw new InvalidCursorPositionException( I18n.err( I18n.ERR_708 ) );
+        }
+
+        IndexEntry<K, String> indexEntry = new IndexEntry<K, String>();
+
+        if ( forward )
+        {
+            indexEntry.setKey( ( K ) keys.get( pos ) );
+            indexEntry.setId( ( String ) values.get( pos ) );
+        }
+        else
+        {
+            indexEntry.setKey( ( K ) values.get( pos ) );
+            indexEntry.setId( ( String ) keys.get( pos ) );
+        }
+
+        return indexEntry;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing JdbmHashCursor {}", this );
+        }
+
+        unload();
+        super.close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close( Exception cause ) throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing JdbmHashCursor {}", this );
+        }
+
+        unload();
+        super.close( cause );
+    }
+
+
+    /**
+     * Reads the pairs of the bucket at bucketPos
+     */
+    private void load() throws LdapException
+    {
+        unload();
+
+        try
+        {
+            table.readBucket( buckets[bucketPos], keys, values );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage() );
+        }
+    }
+
+
+    private void unload()
+    {
+        keys.clear();
+        values.clear();
+    }
+}
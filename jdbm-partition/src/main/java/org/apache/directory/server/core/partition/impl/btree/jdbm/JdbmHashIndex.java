@@ -0,0 +1,507 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.EmptyCursor;
+import org.apache.directory.api.ldap.model.cursor.ListCursor;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.schema.MatchingRule;
+import org.apache.directory.api.ldap.model.schema.Normalizer;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.xdbm.EmptyIndexCursor;
+import org.apache.directory.server.xdbm.IndexEntry;
+
+
+/**
+ * A Jdbm based index storing its keys in an extendible hash table instead of a
+ * BTree : a lookup reads a single bucket whatever the number of keys. It's meant for
+ * the attributes only searched by equality, like uid or mail. The keys being
+ * unordered, the ordering and substring filters on the attribute are evaluated by
+ * scanning the master table, and the greaterThanCount and lessThanCount methods
+ * return the index count.<br>
+ * The String keys are normalized using the equality matching rule before being
+ * hashed, as two values matching each other must have the same hash.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmHashIndex<K> extends JdbmIndex<K>
+{
+    /**  the key used for the forward hash table name */
+    public static final String FORWARD_HASH = "_forward";
+
+    /**  the key used for the reverse hash table name */
+    public static final String REVERSE_HASH = "_reverse";
+
+    /** The forward table, from the normalized attribute values to the entry IDs */
+    protected JdbmHashTable<K, String> forwardHash;
+
+    /** The reverse table, from the entry IDs to the normalized attribute values */
+    protected JdbmHashTable<String, K> reverseHash;
+
+    /** The equality normalizer */
+    private Normalizer normalizer;
+
+
+    /**
+     * Creates a JdbmHashIndex instance for a give AttributeId
+     */
+    public JdbmHashIndex( String attributeId, boolean withReverse )
+    {
+        super( attributeId, withReverse );
+    }
+
+
+    /**
+     * Initializes the forward and reverse hash tables used by this Index.
+     *
+     * @param schemaManager The server schemaManager
+     * @throws IOException if we cannot initialize the forward and reverse tables
+     */
+    @Override
+    protected void initTables( SchemaManager schemaManager ) throws IOException
+    {
+        MatchingRule mr = attributeType.getEquality();
+
+        if ( mr == null )
+        {
+            throw new IOException( I18n.err( I18n.ERR_574, attributeType.getName() ) );
+        }
+
+        normalizer = mr.getNormalizer();
+        forwardHash = new JdbmHashTable<K, String>( recMan, attributeType.getOid() + FORWARD_HASH,
+            JdbmHashTable.DEFAULT_BUCKET_SIZE, numDupLimit );
+
+        if ( withReverse )
+        {
+            reverseHash = new JdbmHashTable<String, K>( recMan, attributeType.getOid() + REVERSE_HASH,
+                JdbmHashTable.DEFAULT_BUCKET_SIZE, numDupLimit );
+        }
+    }
+
+
+    // ------------------------------------------------------------------------
+    // Scan Count Methods
+    // ------------------------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count() throws IOException
+    {
+        return forwardHash.count();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count( K attrVal ) throws Exception
+    {
+        return forwardHash.count( normalize( attrVal ) );
+    }
+
+
+    /**
+     * The keys are not ordered : the index count is returned as the worst case.
+     */
+    @Override
+    public long greaterThanCount( K attrVal ) throws Exception
+    {
+        return forwardHash.count();
+    }
+
+
+    /**
+     * The keys are not ordered : the index count is returned as the worst case.
+     */
+    @Override
+    public long lessThanCount( K attrVal ) throws Exception
+    {
+        return forwardHash.count();
+    }
+
+
+    // ------------------------------------------------------------------------
+    // Forward and Reverse Lookups
+    // ------------------------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String forwardLookup( K attrVal ) throws Exception
+    {
+        List<String> ids = forwardHash.get( normalize( attrVal ) );
+
+        return ids.isEmpty() ? null : ids.get( 0 );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public K reverseLookup( String id ) throws LdapException
+    {
+        if ( !withReverse )
+        {
+            return null;
+        }
+
+        try
+        {
+            List<K> values = reverseHash.get( id );
+
+            return values.isEmpty() ? null : values.get( 0 );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage() );
+        }
+    }
+
+
+    // ------------------------------------------------------------------------
+    // Add/Drop Methods
+    // ------------------------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void add( K attrVal, String id ) throws Exception
+    {
+        K key = normalize( attrVal );
+
+        forwardHash.put( key, id );
+
+        if ( withReverse )
+        {
+            reverseHash.put( id, key );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void drop( K attrVal, String id ) throws Exception
+    {
+        K key = normalize( attrVal );
+
+        forwardHash.remove( key, id );
+
+        if ( withReverse )
+        {
+            reverseHash.remove( id, key );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void drop( String entryId ) throws Exception
+    {
+        if ( withReverse )
+        {
+            for ( K key : reverseHash.remove( entryId ) )
+            {
+                forwardHash.remove( key, entryId );
+            }
+        }
+    }
+
+
+    // ------------------------------------------------------------------------
+    // Index Cursor Operations
+    // ------------------------------------------------------------------------
+    /**
+     * Browses the reverse table one bucket at a time. The entries are not ordered.
+     */
+    @Override
+    public Cursor<IndexEntry<K, String>> reverseCursor() throws Exception
+    {
+        if ( withReverse )
+        {
+            return new JdbmHashCursor<K>( reverseHash, false );
+        }
+        else
+        {
+            return new EmptyIndexCursor<K>();
+        }
+    }
+
+
+    /**
+     * Browses the forward table one bucket at a time. The entries are not ordered,
+     * so the returned Cursor can't be positioned on a key.
+     */
+    @Override
+    public Cursor<IndexEntry<K, String>> forwardCursor() throws LdapException
+    {
+        return new JdbmHashCursor<K>( forwardHash, true );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<IndexEntry<K, String>> reverseCursor( String id ) throws Exception
+    {
+        if ( withReverse )
+        {
+            List<K> keys = reverseHash.get( id );
+            List<String> ids = new ArrayList<String>( keys.size() );
+
+            for ( int i = 0; i < keys.size(); i++ )
+            {
+                ids.add( id );
+            }
+
+            return buildCursor( keys, ids );
+        }
+        else
+        {
+            return new EmptyIndexCursor<K>();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<IndexEntry<K, String>> forwardCursor( K key ) throws Exception
+    {
+        K normalized = normalize( key );
+        List<String> ids = forwardHash.get( normalized );
+        List<K> keys = new ArrayList<K>( ids.size() );
+
+        for ( int i = 0; i < ids.size(); i++ )
+        {
+            keys.add( normalized );
+        }
+
+        return buildCursor( keys, ids );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<K> reverseValueCursor( String id ) throws Exception
+    {
+        if ( withReverse )
+        {
+            return new ListCursor<K>( reverseHash.get( id ) );
+        }
+        else
+        {
+            return new EmptyCursor<K>();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<String> forwardValueCursor( K key ) throws Exception
+    {
+        return new ListCursor<String>( forwardHash.get( normalize( key ) ) );
+    }
+
+
+    // ------------------------------------------------------------------------
+    // Value Assertion (a.k.a Index Lookup) Methods //
+    // ------------------------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean forward( K attrVal ) throws Exception
+    {
+        return forwardHash.has( normalize( attrVal ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean forward( K attrVal, String id ) throws LdapException
+    {
+        try
+        {
+            return forwardHash.has( normalize( attrVal ), id );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage() );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean reverse( String id ) throws Exception
+    {
+        if ( withReverse )
+        {
+            return reverseHash.has( id );
+        }
+        else
+        {
+            return false;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean reverse( String id, K attrVal ) throws Exception
+    {
+        return forward( attrVal, id );
+    }
+
+
+    // ------------------------------------------------------------------------
+    // Maintenance Methods
+    // ------------------------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if ( forwardHash != null )
+        {
+            forwardHash.close();
+        }
+
+        if ( reverseHash != null )
+        {
+            reverseHash.close();
+        }
+
+        super.close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void sync() throws IOException
+    {
+        if ( forwardHash != null )
+        {
+            forwardHash.sync();
+        }
+
+        if ( reverseHash != null )
+        {
+            reverseHash.sync();
+        }
+
+        super.sync();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDupsEnabled()
+    {
+        return withReverse && !attributeType.isSingleValued();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isOrdered()
+    {
+        return false;
+    }
+
+
+    /**
+     * Normalizes a String key, as the hash of two matching values must be the same.
+     * The binary keys are left untouched.
+     */
+    @SuppressWarnings("unchecked")
+    private K normalize( K key ) throws LdapException
+    {
+        if ( key instanceof String )
+        {
+            return ( K ) normalizer.normalize( ( String ) key );
+        }
+
+        return key;
+    }
+
+
+    /**
+     * Builds a cursor on index entries, from the keys and IDs at the same positions
+     */
+    private Cursor<IndexEntry<K, String>> buildCursor( List<K> keys, List<String> ids )
+    {
+        List<IndexEntry<K, String>> entries = new ArrayList<IndexEntry<K, String>>( keys.size() );
+
+        for ( int i = 0; i < keys.size(); i++ )
+        {
+            IndexEntry<K, String> entry = new IndexEntry<K, String>();
+            entry.setKey( keys.get( i ) );
+            entry.setId( ids.get( i ) );
+            entries.add( entry );
+        }
+
+        return new ListCursor<IndexEntry<K, String>>( entries );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "HashIndex<" + attributeId + ">";
+    }
+}
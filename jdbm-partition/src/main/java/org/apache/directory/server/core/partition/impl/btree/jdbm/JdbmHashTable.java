@@ -0,0 +1,1039 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jdbm.RecordManager;
+import jdbm.btree.BTree;
+import jdbm.helper.Serializer;
+import jdbm.helper.Tuple;
+import jdbm.helper.TupleBrowser;
+
+import org.apache.directory.api.util.StringConstants;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.api.util.SynchronizedLRUMap;
+
+
+/**
+ * An extendible hash table stored in a JDBM file, associating a key with a set of
+ * values. The keys are spread over buckets, a bucket being a single record, and a
+ * directory of 2^depth slots gives the bucket of a key using the low order bits of
+ * its hash. When a bucket overflows, it's split in two using one more bit of the
+ * hash, the directory being doubled when the bucket was already using all of them :
+ * a lookup never reads more than one bucket, whatever the number of keys. The
+ * buckets are not merged back when keys are removed.<br>
+ * The keys and the values must be Strings or byte[]. The values of a key are stored
+ * in its bucket, until their number goes above the duplicate limit : like in the
+ * JdbmTable, they are then moved to a BTree of their own, the bucket only keeping
+ * a {@link BTreeRedirect} to it, and they are moved back to the bucket when their
+ * number drops to the limit. The keys can't be browsed in order.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmHashTable<K, V>
+{
+    /** The default maximum number of keys in a bucket */
+    public static final int DEFAULT_BUCKET_SIZE = 64;
+
+    /** The maximum depth : the directory never has more than 2^MAX_DEPTH slots */
+    static final int MAX_DEPTH = 20;
+
+    /** The suffix of the name of the directory record */
+    private static final String DIRECTORY_SUFFIX = "_hash_dir";
+
+    /** The suffix of the name of the count record */
+    private static final String COUNT_SUFFIX = "_hash_sz";
+
+    /** The tag of a serialized String */
+    private static final byte STRING_TAG = 0;
+
+    /** The tag of a serialized byte[] */
+    private static final byte BYTES_TAG = 1;
+
+    /** The number of values written in a bucket in place of the values of a redirected key */
+    private static final int REDIRECT = -1;
+
+    /** The table name */
+    private final String name;
+
+    /** The record manager */
+    private final RecordManager recMan;
+
+    /** The number of keys above which a bucket is split */
+    private final int bucketSize;
+
+    /** The number of values of a key above which they are moved to a BTree */
+    private final int numDupLimit;
+
+    /** The record ID of the directory */
+    private final long directoryRecId;
+
+    /** The record ID of the number of key/value pairs */
+    private final long countRecId;
+
+    /** A cache of the BTrees holding the values of the redirected keys */
+    private final Map<Long, BTree<Object, Object>> duplicateBtrees;
+
+    /** The directory : the record ID of the bucket of each slot */
+    private long[] directory;
+
+    /** The number of hash bits used to select a slot */
+    private int depth;
+
+    /** The number of key/value pairs */
+    private long count;
+
+
+    /**
+     * A bucket, holding the keys whose hash ends with the same depth bits, and
+     * their values
+     */
+    static class Bucket
+    {
+        /** The number of hash bits shared by the keys of this bucket */
+        private int depth;
+
+        /** The keys */
+        private final List<Object> keys = new ArrayList<Object>();
+
+        /** The values of each key : either a List of values, or a BTreeRedirect */
+        private final List<Object> values = new ArrayList<Object>();
+
+
+        Bucket( int depth )
+        {
+            this.depth = depth;
+        }
+
+
+        /**
+         * @return The position of a key in the bucket, or -1 if it's absent
+         */
+        private int indexOf( Object key )
+        {
+            for ( int i = 0; i < keys.size(); i++ )
+            {
+                if ( same( keys.get( i ), key ) )
+                {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+    }
+
+
+    /**
+     * Creates a new instance of JdbmHashTable, or reopens it if the file already contains it.
+     *
+     * @param recMan The record manager
+     * @param name The table name
+     * @throws IOException If the table can't be read or created
+     */
+    public JdbmHashTable( RecordManager recMan, String name ) throws IOException
+    {
+        this( recMan, name, DEFAULT_BUCKET_SIZE );
+    }
+
+
+    /**
+     * Creates a new instance of JdbmHashTable, or reopens it if the file already contains it.
+     *
+     * @param recMan The record manager
+     * @param name The table name
+     * @param bucketSize The number of keys above which a bucket is split. It's only
+     * used when the table is created.
+     * @throws IOException If the table can't be read or created
+     */
+    public JdbmHashTable( RecordManager recMan, String name, int bucketSize ) throws IOException
+    {
+        this( recMan, name, bucketSize, JdbmIndex.DEFAULT_DUPLICATE_LIMIT );
+    }
+
+
+    /**
+     * Creates a new instance of JdbmHashTable, or reopens it if the file already contains it.
+     *
+     * @param recMan The record manager
+     * @param name The table name
+     * @param bucketSize The number of keys above which a bucket is split. It's only
+     * used when the table is created.
+     * @param numDupLimit The number of values of a key above which they are stored in a BTree
+     * @throws IOException If the table can't be read or created
+     */
+    @SuppressWarnings("unchecked")
+    public JdbmHashTable( RecordManager recMan, String name, int bucketSize, int numDupLimit ) throws IOException
+    {
+        this.recMan = recMan;
+        this.name = name;
+        this.bucketSize = bucketSize;
+        this.numDupLimit = numDupLimit;
+
+        // TODO make the size of the duplicate btree cache configurable via constructor
+        duplicateBtrees = new SynchronizedLRUMap( 100 );
+
+        long recId = recMan.getNamedObject( name + DIRECTORY_SUFFIX );
+
+        if ( recId != 0 )
+        {
+            directoryRecId = recId;
+            directory = ( long[] ) recMan.fetch( directoryRecId, DirectorySerializer.INSTANCE );
+            countRecId = recMan.getNamedObject( name + COUNT_SUFFIX );
+            count = ( Long ) recMan.fetch( countRecId );
+        }
+        else
+        {
+            // A new table, with a single empty bucket
+            directory = new long[]
+                { recMan.insert( new Bucket( 0 ), BucketSerializer.INSTANCE ) };
+            directoryRecId = recMan.insert( directory, DirectorySerializer.INSTANCE );
+            recMan.setNamedObject( name + DIRECTORY_SUFFIX, directoryRecId );
+            countRecId = recMan.insert( Long.valueOf( 0L ) );
+            recMan.setNamedObject( name + COUNT_SUFFIX, countRecId );
+        }
+
+        depth = Integer.numberOfTrailingZeros( directory.length );
+    }
+
+
+    /**
+     * @return The table name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+
+    /**
+     * @return The number of key/value pairs
+     */
+    public synchronized long count()
+    {
+        return count;
+    }
+
+
+    /**
+     * @param key The key
+     * @return The number of values of the key
+     * @throws IOException If the bucket can't be read
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized int count( K key ) throws IOException
+    {
+        Bucket bucket = fetchBucket( key );
+        int pos = bucket.indexOf( key );
+
+        if ( pos < 0 )
+        {
+            return 0;
+        }
+
+        Object keyValues = bucket.values.get( pos );
+
+        if ( keyValues instanceof BTreeRedirect )
+        {
+            return getBTree( ( BTreeRedirect ) keyValues ).size();
+        }
+
+        return ( ( List<Object> ) keyValues ).size();
+    }
+
+
+    /**
+     * @param key The key
+     * @return A copy of the values of the key, which is empty if the key is absent
+     * @throws IOException If the bucket can't be read
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<V> get( K key ) throws IOException
+    {
+        Bucket bucket = fetchBucket( key );
+        int pos = bucket.indexOf( key );
+
+        if ( pos < 0 )
+        {
+            return new ArrayList<V>( 0 );
+        }
+
+        return ( List<V> ) copyValues( bucket.values.get( pos ) );
+    }
+
+
+    /**
+     * @param key The key
+     * @return true if the key has at least one value
+     * @throws IOException If the bucket can't be read
+     */
+    public synchronized boolean has( K key ) throws IOException
+    {
+        return fetchBucket( key ).indexOf( key ) >= 0;
+    }
+
+
+    /**
+     * @param key The key
+     * @param value The value
+     * @return true if the value is associated with the key
+     * @throws IOException If the bucket can't be read
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized boolean has( K key, V value ) throws IOException
+    {
+        Bucket bucket = fetchBucket( key );
+        int pos = bucket.indexOf( key );
+
+        if ( pos < 0 )
+        {
+            return false;
+        }
+
+        Object keyValues = bucket.values.get( pos );
+
+        if ( keyValues instanceof BTreeRedirect )
+        {
+            return getBTree( ( BTreeRedirect ) keyValues ).find( value ) != null;
+        }
+
+        return indexOf( ( List<Object> ) keyValues, value ) >= 0;
+    }
+
+
+    /**
+     * Associates a value with a key. Nothing is done if they are already associated.
+     *
+     * @param key The key
+     * @param value The value
+     * @throws IOException If the table can't be updated
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void put( K key, V value ) throws IOException
+    {
+        int hash = hash( key );
+        long recId = directory[hash & ( directory.length - 1 )];
+        Bucket bucket = ( Bucket ) recMan.fetch( recId, BucketSerializer.INSTANCE );
+        int pos = bucket.indexOf( key );
+
+        if ( pos >= 0 )
+        {
+            Object held = bucket.values.get( pos );
+
+            if ( held instanceof BTreeRedirect )
+            {
+                // The bucket is left unchanged, only the BTree is updated
+                if ( getBTree( ( BTreeRedirect ) held ).insert( value, StringConstants.EMPTY_BYTES, true ) == null )
+                {
+                    count++;
+                    updateCount();
+                }
+
+                return;
+            }
+
+            List<Object> keyValues = ( List<Object> ) held;
+
+            if ( indexOf( keyValues, value ) >= 0 )
+            {
+                return;
+            }
+
+            keyValues.add( value );
+
+            if ( keyValues.size() > numDupLimit )
+            {
+                BTree<Object, Object> tree = convertToBTree( keyValues );
+                bucket.values.set( pos, new BTreeRedirect( tree.getRecordId() ) );
+            }
+        }
+        else
+        {
+            List<Object> keyValues = new ArrayList<Object>( 1 );
+            keyValues.add( value );
+            bucket.keys.add( key );
+            bucket.values.add( keyValues );
+        }
+
+        count++;
+        updateCount();
+
+        if ( bucket.keys.size() > bucketSize )
+        {
+            split( recId, bucket );
+        }
+        else
+        {
+            recMan.update( recId, bucket, BucketSerializer.INSTANCE );
+        }
+    }
+
+
+    /**
+     * Removes the association between a key and a value, if it exists.
+     *
+     * @param key The key
+     * @param value The value
+     * @throws IOException If the table can't be updated
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void remove( K key, V value ) throws IOException
+    {
+        long recId = directory[hash( key ) & ( directory.length - 1 )];
+        Bucket bucket = ( Bucket ) recMan.fetch( recId, BucketSerializer.INSTANCE );
+        int pos = bucket.indexOf( key );
+
+        if ( pos < 0 )
+        {
+            return;
+        }
+
+        Object held = bucket.values.get( pos );
+
+        if ( held instanceof BTreeRedirect )
+        {
+            BTree<Object, Object> tree = getBTree( ( BTreeRedirect ) held );
+
+            // The BTree throws an exception when removing a missing key
+            if ( ( tree.find( value ) == null ) || ( tree.remove( value ) == null ) )
+            {
+                return;
+            }
+
+            count--;
+            updateCount();
+
+            // If we drop to the duplicate limit, the values are moved back to the bucket
+            if ( tree.size() <= numDupLimit )
+            {
+                bucket.values.set( pos, browse( tree ) );
+                deleteBTree( tree );
+                recMan.update( recId, bucket, BucketSerializer.INSTANCE );
+            }
+
+            return;
+        }
+
+        List<Object> keyValues = ( List<Object> ) held;
+        int valuePos = indexOf( keyValues, value );
+
+        if ( valuePos < 0 )
+        {
+            return;
+        }
+
+        keyValues.remove( valuePos );
+
+        if ( keyValues.isEmpty() )
+        {
+            bucket.keys.remove( pos );
+            bucket.values.remove( pos );
+        }
+
+        count--;
+        updateCount();
+        recMan.update( recId, bucket, BucketSerializer.INSTANCE );
+    }
+
+
+    /**
+     * Removes a key and all its values.
+     *
+     * @param key The key
+     * @return The removed values, which is empty if the key was absent
+     * @throws IOException If the table can't be updated
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<V> remove( K key ) throws IOException
+    {
+        long recId = directory[hash( key ) & ( directory.length - 1 )];
+        Bucket bucket = ( Bucket ) recMan.fetch( recId, BucketSerializer.INSTANCE );
+        int pos = bucket.indexOf( key );
+
+        if ( pos < 0 )
+        {
+            return new ArrayList<V>( 0 );
+        }
+
+        bucket.keys.remove( pos );
+        Object held = bucket.values.remove( pos );
+        List<V> removed;
+
+        if ( held instanceof BTreeRedirect )
+        {
+            BTree<Object, Object> tree = getBTree( ( BTreeRedirect ) held );
+            removed = ( List<V> ) browse( tree );
+            deleteBTree( tree );
+        }
+        else
+        {
+            removed = ( List<V> ) held;
+        }
+
+        count -= removed.size();
+        updateCount();
+        recMan.update( recId, bucket, BucketSerializer.INSTANCE );
+
+        return removed;
+    }
+
+
+    /**
+     * Gets the record IDs of the buckets, each bucket being listed once. Used with
+     * {@link #readBucket(long, List, List)}, it allows the table to be browsed one
+     * bucket at a time.
+     *
+     * @return The record IDs of the buckets, in the directory order
+     */
+    public synchronized long[] getBuckets()
+    {
+        // A bucket is referenced by several slots when it's not using all the bits
+        Set<Long> recIds = new LinkedHashSet<Long>();
+
+        for ( long recId : directory )
+        {
+            recIds.add( recId );
+        }
+
+        long[] buckets = new long[recIds.size()];
+        int pos = 0;
+
+        for ( long recId : recIds )
+        {
+            buckets[pos++] = recId;
+        }
+
+        return buckets;
+    }
+
+
+    /**
+     * Reads the key/value pairs of a bucket.
+     *
+     * @param recId The record ID of the bucket
+     * @param keys The list the keys are added to, a key being added once per value
+     * @param values The list the values are added to
+     * @throws IOException If the bucket can't be read
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void readBucket( long recId, List<K> keys, List<V> values ) throws IOException
+    {
+        Bucket bucket = ( Bucket ) recMan.fetch( recId, BucketSerializer.INSTANCE );
+
+        for ( int i = 0; i < bucket.keys.size(); i++ )
+        {
+            for ( Object value : copyValues( bucket.values.get( i ) ) )
+            {
+                keys.add( ( K ) bucket.keys.get( i ) );
+                values.add( ( V ) value );
+            }
+        }
+    }
+
+
+    /**
+     * Writes the number of pairs on disk. It's already written on each update, so
+     * this is only a safety net. The changes are not committed.
+     *
+     * @throws IOException If the record can't be written
+     */
+    public synchronized void sync() throws IOException
+    {
+        updateCount();
+    }
+
+
+    /**
+     * Closes the table. The record manager is not closed.
+     *
+     * @throws IOException If the table can't be written
+     */
+    public synchronized void close() throws IOException
+    {
+        sync();
+    }
+
+
+    /**
+     * @return The number of bits of the hash used to select a bucket
+     */
+    synchronized int getDepth()
+    {
+        return depth;
+    }
+
+
+    /**
+     * Splits an overflowing bucket in two, as many times as needed : the keys whose
+     * hash has the next bit set are moved to a new bucket. The directory is doubled
+     * first if the bucket is already using all its bits.
+     */
+    private void split( long recId, Bucket bucket ) throws IOException
+    {
+        long currentRecId = recId;
+        Bucket current = bucket;
+
+        while ( ( current.keys.size() > bucketSize ) && ( current.depth < MAX_DEPTH ) )
+        {
+            if ( current.depth == depth )
+            {
+                long[] doubled = Arrays.copyOf( directory, directory.length * 2 );
+                System.arraycopy( directory, 0, doubled, directory.length, directory.length );
+                directory = doubled;
+                depth++;
+            }
+
+            int bit = 1 << current.depth;
+            current.depth++;
+            Bucket sibling = new Bucket( current.depth );
+
+            for ( int i = current.keys.size() - 1; i >= 0; i-- )
+            {
+                if ( ( hash( current.keys.get( i ) ) & bit ) != 0 )
+                {
+                    sibling.keys.add( current.keys.remove( i ) );
+                    sibling.values.add( current.values.remove( i ) );
+                }
+            }
+
+            long siblingRecId = recMan.insert( sibling, BucketSerializer.INSTANCE );
+
+            for ( int slot = 0; slot < directory.length; slot++ )
+            {
+                if ( ( directory[slot] == currentRecId ) && ( ( slot & bit ) != 0 ) )
+                {
+                    directory[slot] = siblingRecId;
+                }
+            }
+
+            // At most one of the two halves may still overflow
+            if ( sibling.keys.size() > bucketSize )
+            {
+                recMan.update( currentRecId, current, BucketSerializer.INSTANCE );
+                currentRecId = siblingRecId;
+                current = sibling;
+            }
+        }
+
+        // Past the maximum depth, the bucket just grows
+        recMan.update( currentRecId, current, BucketSerializer.INSTANCE );
+        recMan.update( directoryRecId, directory, DirectorySerializer.INSTANCE );
+    }
+
+
+    /**
+     * Writes the number of pairs in its record, so that it's committed along with
+     * the buckets it's describing.
+     */
+    private void updateCount() throws IOException
+    {
+        recMan.update( countRecId, Long.valueOf( count ) );
+    }
+
+
+    /**
+     * @return A copy of the values of a key, read from the bucket or from their BTree
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> copyValues( Object held ) throws IOException
+    {
+        if ( held instanceof BTreeRedirect )
+        {
+            return browse( getBTree( ( BTreeRedirect ) held ) );
+        }
+
+        return new ArrayList<Object>( ( List<Object> ) held );
+    }
+
+
+    /**
+     * @return The BTree a redirect is pointing to
+     */
+    private BTree<Object, Object> getBTree( BTreeRedirect redirect ) throws IOException
+    {
+        BTree<Object, Object> tree = duplicateBtrees.get( redirect.getRecId() );
+
+        if ( tree == null )
+        {
+            tree = new BTree<Object, Object>().load( recMan, redirect.getRecId() );
+            duplicateBtrees.put( redirect.getRecId(), tree );
+        }
+
+        return tree;
+    }
+
+
+    /**
+     * Moves the values of a key to a new BTree, the values being its keys.
+     */
+    private BTree<Object, Object> convertToBTree( List<Object> keyValues ) throws IOException
+    {
+        BTree<Object, Object> tree = new BTree<Object, Object>( recMan, ValueComparator.INSTANCE,
+            ElementSerializer.INSTANCE, null );
+
+        for ( Object value : keyValues )
+        {
+            tree.insert( value, StringConstants.EMPTY_BYTES, true );
+        }
+
+        duplicateBtrees.put( tree.getRecordId(), tree );
+
+        return tree;
+    }
+
+
+    /**
+     * @return The keys of a BTree, in order
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> browse( BTree<Object, Object> tree ) throws IOException
+    {
+        List<Object> keyValues = new ArrayList<Object>( tree.size() );
+        TupleBrowser browser = tree.browse();
+        Tuple tuple = new Tuple();
+
+        while ( browser.getNext( tuple ) )
+        {
+            keyValues.add( tuple.getKey() );
+        }
+
+        return keyValues;
+    }
+
+
+    private void deleteBTree( BTree<Object, Object> tree ) throws IOException
+    {
+        duplicateBtrees.remove( tree.getRecordId() );
+        recMan.delete( tree.getRecordId() );
+    }
+
+
+    /**
+     * @return The bucket a key belongs to
+     */
+    private Bucket fetchBucket( K key ) throws IOException
+    {
+        return ( Bucket ) recMan.fetch( directory[hash( key ) & ( directory.length - 1 )],
+            BucketSerializer.INSTANCE );
+    }
+
+
+    /**
+     * Hashes a key. The String and array hash codes are specified, so the hash of a
+     * key doesn't change from a JVM to another. The bits are mixed as the low order
+     * ones are used first.
+     */
+    private static int hash( Object key )
+    {
+        int h = ( key instanceof byte[] ) ? Arrays.hashCode( ( byte[] ) key ) : key.hashCode();
+
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+
+        return h;
+    }
+
+
+    private static boolean same( Object o1, Object o2 )
+    {
+        if ( ( o1 instanceof byte[] ) && ( o2 instanceof byte[] ) )
+        {
+            return Arrays.equals( ( byte[] ) o1, ( byte[] ) o2 );
+        }
+
+        return o1.equals( o2 );
+    }
+
+
+    private static int indexOf( List<Object> values, Object value )
+    {
+        for ( int i = 0; i < values.size(); i++ )
+        {
+            if ( same( values.get( i ), value ) )
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+
+    private static void writeElement( DataOutputStream out, Object element ) throws IOException
+    {
+        byte[] bytes;
+
+        if ( element instanceof byte[] )
+        {
+            out.writeByte( BYTES_TAG );
+            bytes = ( byte[] ) element;
+        }
+        else
+        {
+            out.writeByte( STRING_TAG );
+            bytes = Strings.getBytesUtf8( ( String ) element );
+        }
+
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+
+    private static Object readElement( DataInputStream in ) throws IOException
+    {
+        byte tag = in.readByte();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully( bytes );
+
+        if ( tag == BYTES_TAG )
+        {
+            return bytes;
+        }
+
+        return Strings.utf8ToString( bytes );
+    }
+
+
+    /**
+     * Orders the values stored in a BTree : the byte[] are compared as unsigned bytes,
+     * the Strings using their natural order.
+     */
+    static final class ValueComparator implements Comparator<Object>, Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        /** The instance */
+        static final ValueComparator INSTANCE = new ValueComparator();
+
+
+        public int compare( Object o1, Object o2 )
+        {
+            if ( ( o1 instanceof byte[] ) && ( o2 instanceof byte[] ) )
+            {
+                byte[] b1 = ( byte[] ) o1;
+                byte[] b2 = ( byte[] ) o2;
+                int length = Math.min( b1.length, b2.length );
+
+                for ( int i = 0; i < length; i++ )
+                {
+                    int diff = ( b1[i] & 0xFF ) - ( b2[i] & 0xFF );
+
+                    if ( diff != 0 )
+                    {
+                        return diff;
+                    }
+                }
+
+                return b1.length - b2.length;
+            }
+
+            if ( o1 instanceof byte[] )
+            {
+                return -1;
+            }
+
+            if ( o2 instanceof byte[] )
+            {
+                return 1;
+            }
+
+            return ( ( String ) o1 ).compareTo( ( String ) o2 );
+        }
+    }
+
+
+    /**
+     * Serializes the values stored as the keys of a BTree.
+     */
+    static final class ElementSerializer implements Serializer
+    {
+        private static final long serialVersionUID = 1L;
+
+        /** The instance */
+        static final ElementSerializer INSTANCE = new ElementSerializer();
+
+
+        public byte[] serialize( Object obj ) throws IOException
+        {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream( baos );
+
+            writeElement( out, obj );
+            out.flush();
+
+            return baos.toByteArray();
+        }
+
+
+        public Object deserialize( byte[] serialized ) throws IOException
+        {
+            return readElement( new DataInputStream( new ByteArrayInputStream( serialized ) ) );
+        }
+    }
+
+
+    /**
+     * Serializes the buckets : the depth, then each key followed by its values. The
+     * values of a redirected key are replaced by the record ID of their BTree.
+     */
+    static final class BucketSerializer implements Serializer
+    {
+        private static final long serialVersionUID = 1L;
+
+        /** The instance */
+        static final BucketSerializer INSTANCE = new BucketSerializer();
+
+
+        @SuppressWarnings("unchecked")
+        public byte[] serialize( Object obj ) throws IOException
+        {
+            Bucket bucket = ( Bucket ) obj;
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream( baos );
+
+            out.writeInt( bucket.depth );
+            out.writeInt( bucket.keys.size() );
+
+            for ( int i = 0; i < bucket.keys.size(); i++ )
+            {
+                Object held = bucket.values.get( i );
+
+                writeElement( out, bucket.keys.get( i ) );
+
+                if ( held instanceof BTreeRedirect )
+                {
+                    out.writeInt( REDIRECT );
+                    out.writeLong( ( ( BTreeRedirect ) held ).getRecId() );
+
+                    continue;
+                }
+
+                List<Object> keyValues = ( List<Object> ) held;
+                out.writeInt( keyValues.size() );
+
+                for ( Object value : keyValues )
+                {
+                    writeElement( out, value );
+                }
+            }
+
+            out.flush();
+
+            return baos.toByteArray();
+        }
+
+
+        public Object deserialize( byte[] serialized ) throws IOException
+        {
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream( serialized ) );
+            Bucket bucket = new Bucket( in.readInt() );
+            int nbKeys = in.readInt();
+
+            for ( int i = 0; i < nbKeys; i++ )
+            {
+                bucket.keys.add( readElement( in ) );
+                int nbValues = in.readInt();
+
+                if ( nbValues == REDIRECT )
+                {
+                    bucket.values.add( new BTreeRedirect( in.readLong() ) );
+
+                    continue;
+                }
+
+                List<Object> keyValues = new ArrayList<Object>( nbValues );
+
+                for ( int j = 0; j < nbValues; j++ )
+                {
+                    keyValues.add( readElement( in ) );
+                }
+
+                bucket.values.add( keyValues );
+            }
+
+            return bucket;
+        }
+    }
+
+
+    /**
+     * Serializes the directory, as its number of slots followed by the bucket record IDs.
+     */
+    static final class DirectorySerializer implements Serializer
+    {
+        private static final long serialVersionUID = 1L;
+
+        /** The instance */
+        static final DirectorySerializer INSTANCE = new DirectorySerializer();
+
+
+        public byte[] serialize( Object obj ) throws IOException
+        {
+            long[] slots = ( long[] ) obj;
+            ByteArrayOutputStream baos = new ByteArrayOutputStream( 4 + slots.length * 8 );
+            DataOutputStream out = new DataOutputStream( baos );
+
+            out.writeInt( slots.length );
+
+            for ( long slot : slots )
+            {
+                out.writeLong( slot );
+            }
+
+            out.flush();
+
+            return baos.toByteArray();
+        }
+
+
+        public Object deserialize( byte[] serialized ) throws IOException
+        {
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream( serialized ) );
+            long[] slots = new long[in.readInt()];
+
+            for ( int i = 0; i < slots.length; i++ )
+            {
+                slots[i] = in.readLong();
+            }
+
+            return slots;
+        }
+    }
+}
@@ -201,7 +201,7 @@ public class JdbmIndex<K> extends AbstractIndex<K, String>
      * @throws IOException if we cannot initialize the forward and reverse
      * tables
      */
-    private void initTables( SchemaManager schemaManager ) throws IOException
+    protected void initTables( SchemaManager schemaManager ) throws IOException
     {
         SerializableComparator<K> comp;
 
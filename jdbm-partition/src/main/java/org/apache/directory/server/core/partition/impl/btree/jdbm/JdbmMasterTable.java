@@ -54,8 +54,20 @@ public class JdbmMasterTable extends JdbmTable<String, Entry> implements MasterT
             }
         };
 
+    /** The admin table key storing the format of the IDs */
+    private static final String ID_FORMAT_KEY = "__idFormat__";
+
+    /** The ID format stored when the IDs are taken from the sequence */
+    private static final String SEQUENTIAL_ID_FORMAT = "sequential";
+
     protected final JdbmTable<String, String> adminTbl;
 
+    /** Tells if the IDs are taken from the sequence instead of being random UUIDs */
+    private volatile boolean sequentialIds;
+
+    /** The last ID taken from the sequence */
+    private long lastId;
+
 
     /**
      * Creates the master table using JDBM B+Trees for the backing store.
@@ -75,8 +87,12 @@ public class JdbmMasterTable extends JdbmTable<String, Entry> implements MasterT
         if ( null == seqValue )
         {
             adminTbl.put( SEQPROP_KEY, "0" );
+            seqValue = "0";
         }
 
+        lastId = Long.parseLong( seqValue );
+        sequentialIds = SEQUENTIAL_ID_FORMAT.equals( adminTbl.get( ID_FORMAT_KEY ) );
+
         UuidComparator.INSTANCE.setSchemaManager( schemaManager );
         STRING_COMPARATOR.setSchemaManager( schemaManager );
     }
@@ -93,23 +109,68 @@ public class JdbmMasterTable extends JdbmTable<String, Entry> implements MasterT
         if ( null == seqValue )
         {
             adminTbl.put( SEQPROP_KEY, "0" );
+            seqValue = "0";
+        }
+
+        lastId = Long.parseLong( seqValue );
+        sequentialIds = SEQUENTIAL_ID_FORMAT.equals( adminTbl.get( ID_FORMAT_KEY ) );
+    }
+
+
+    /**
+     * Tells if the IDs are taken from the sequence. This is a property of the stored
+     * data : once an ID has been taken from the sequence, the IDs can't be random
+     * UUIDs again.
+     *
+     * @return <tt>true</tt> if the IDs are sequential
+     */
+    public boolean isSequentialIds()
+    {
+        return sequentialIds;
+    }
+
+
+    /**
+     * Takes the next IDs from the sequence. The existing entries keep their IDs.
+     *
+     * @throws Exception if the admin table can't be written to
+     */
+    public void enableSequentialIds() throws Exception
+    {
+        synchronized ( adminTbl )
+        {
+            adminTbl.put( ID_FORMAT_KEY, SEQUENTIAL_ID_FORMAT );
+            sequentialIds = true;
         }
     }
 
 
     /**
-     * Get's the next value from this SequenceBDb.  This has the side-effect of
-     * changing the current sequence values permanently in memory and on disk.
-     * Master table sequence begins at BigInteger.ONE.  The BigInteger.ZERO is
-     * used for the fictitious parent of the suffix root entry.
+     * Get's the next value from this SequenceBDb, if the IDs are sequential. This
+     * has the side-effect of changing the current sequence values permanently in
+     * memory and on disk. Master table sequence begins at 1, formated as a UUID
+     * whose most significant bits are all 0. The 0 UUID is used for the fictitious
+     * parent of the suffix root entry.<br/>
+     * Otherwise, a random UUID is returned.
      *
-     * @return the current value incremented by one.
+     * @return the current value incremented by one, or a random UUID
      * @throws Exception if the admin table storing sequences cannot be
      *                         read and written to.
      */
     public String getNextId( Entry entry ) throws Exception
     {
-        return UUID.randomUUID().toString();
+        if ( !sequentialIds )
+        {
+            return UUID.randomUUID().toString();
+        }
+
+        synchronized ( adminTbl )
+        {
+            lastId++;
+            adminTbl.put( SEQPROP_KEY, Long.toString( lastId ) );
+
+            return new UUID( 0L, lastId ).toString();
+        }
     }
 
 
@@ -121,6 +182,7 @@ public class JdbmMasterTable extends JdbmTable<String, Entry> implements MasterT
         synchronized ( adminTbl )
         {
             adminTbl.put( SEQPROP_KEY, "0" );
+            lastId = 0L;
         }
     }
 }
@@ -106,6 +106,9 @@ public class JdbmPartition extends AbstractBTreePartition
     /** the entry cache */
     private Cache entryCache;
 
+    /** Tells if the IDs of the added entries are taken from a sequence */
+    private boolean sequentialIds;
+
 
     /**
      * Creates a store based on JDBM B+Trees.
@@ -127,6 +130,58 @@ public class JdbmPartition extends AbstractBTreePartition
     }
     
     
+    /**
+     * Tells if the IDs of the entries are taken from a sequence instead of being their
+     * entryUUID. The sequential IDs are stored on 8 bytes instead of 72 in the master
+     * table and in the indexes, and they are always added at the end of the B-trees.
+     * An index on entryUUID is added to map the UUIDs to the IDs.<br/>
+     * Once enabled, the sequential IDs can't be disabled anymore for this partition.
+     *
+     * @param sequentialIds <tt>true</tt> to use sequential IDs
+     */
+    public void setSequentialIds( boolean sequentialIds )
+    {
+        checkInitialized( "sequentialIds" );
+        this.sequentialIds = sequentialIds;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the IDs of the entries are taken from a sequence
+     */
+    public boolean isSequentialIds()
+    {
+        return sequentialIds;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isEntryUuidId()
+    {
+        return !sequentialIds;
+    }
+
+
+    /**
+     * Tells if an index has been declared on an AttributeType
+     */
+    private boolean hasDeclaredIndexOn( String oid ) throws LdapException
+    {
+        for ( Index<?, String> index : getIndexedAttributes() )
+        {
+            if ( schemaManager.lookupAttributeTypeRegistry( index.getAttributeId() ).getOid().equals( oid ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
     /**
      * Rebuild the indexes 
      */
@@ -406,6 +461,12 @@ public class JdbmPartition extends AbstractBTreePartition
             List<String> allIndices = new ArrayList<String>();
 
             List<Index<?, String>> indexToBuild = new ArrayList<Index<?, String>>();
+
+            // The sequential IDs need an index mapping the entryUUIDs to the IDs
+            if ( sequentialIds && !hasDeclaredIndexOn( SchemaConstants.ENTRY_UUID_AT_OID ) )
+            {
+                addIndexedAttributes( new JdbmIndex<String>( SchemaConstants.ENTRY_UUID_AT_OID, false ) );
+            }
             
             // Iterate on the declared indexes
             for ( Index<?, String> index : getIndexedAttributes() )
@@ -456,7 +517,18 @@ public class JdbmPartition extends AbstractBTreePartition
             recMan = new CacheRecordManager( base, new MRU( recCacheSize ) );
 
             // Create the master table (the table containing all the entries)
-            master = new JdbmMasterTable( recMan, schemaManager );
+            JdbmMasterTable jdbmMaster = new JdbmMasterTable( recMan, schemaManager );
+            master = jdbmMaster;
+
+            if ( sequentialIds && !jdbmMaster.isSequentialIds() )
+            {
+                jdbmMaster.enableSequentialIds();
+            }
+            else if ( !sequentialIds && jdbmMaster.isSequentialIds() )
+            {
+                throw new IllegalStateException( "The " + id
+                    + " partition uses sequential IDs, it can't be configured without them" );
+            }
 
             if ( indexToBuild.size() > 0 )
             {
@@ -822,7 +894,7 @@ public class JdbmPartition extends AbstractBTreePartition
                 // replace the entry
                 ModifyOperationContext modCtx = ( ModifyOperationContext ) opCtx;
                 Entry entry = modCtx.getAlteredEntry();
-                String id = entry.get( SchemaConstants.ENTRY_UUID_AT ).getString();
+                String id = getIdFromEntryUuid( entry );
 
                 if ( entry instanceof ClonedServerEntry )
                 {
@@ -842,10 +914,10 @@ public class JdbmPartition extends AbstractBTreePartition
             {
                 // delete the entry
                 DeleteOperationContext delCtx = ( DeleteOperationContext ) opCtx;
-                entryCache.remove( delCtx.getEntry().get( SchemaConstants.ENTRY_UUID_AT ).getString() );
+                entryCache.remove( getIdFromEntryUuid( delCtx.getEntry() ) );
             }
         }
-        catch ( LdapException e )
+        catch ( Exception e )
         {
             LOG.warn( "Failed to update entry cache", e );
         }
@@ -21,12 +21,15 @@ package org.apache.directory.server.core.partition.impl.btree.jdbm;
 
 
 import java.io.IOException;
+import java.util.UUID;
 
 import jdbm.helper.Serializer;
 
 
 /**
- * A {@link Serializer} for UUIDs
+ * A {@link Serializer} for UUIDs. The sequential entry IDs, which are UUIDs whose
+ * most significant bits are all 0, are stored as a 8 bytes long. The other UUIDs
+ * are stored as Strings (72 bytes), as they always have been.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -35,6 +38,15 @@ public class UuidSerializer implements Serializer
     private static final long serialVersionUID = 237756689544852128L;
     public static final UuidSerializer INSTANCE = new UuidSerializer();
 
+    /** The beginning of a sequential ID */
+    private static final String SEQUENTIAL_PREFIX = "00000000-0000-0000-";
+
+    /** The length of a UUID String */
+    private static final int UUID_LENGTH = 36;
+
+    /** The length of a serialized sequential ID */
+    private static final int LONG_LENGTH = 8;
+
 
     /**
      * {@inheritDoc}
@@ -42,8 +54,22 @@ public class UuidSerializer implements Serializer
     public byte[] serialize( Object o ) throws IOException
     {
         String uuid = ( String ) o;
+        long id = getSequentialId( uuid );
+
+        if ( id == 0L )
+        {
+            return StringSerializer.INSTANCE.serialize( uuid );
+        }
+
+        byte[] bytes = new byte[LONG_LENGTH];
 
-        return StringSerializer.INSTANCE.serialize( uuid );
+        for ( int i = LONG_LENGTH - 1; i >= 0; i-- )
+        {
+            bytes[i] = ( byte ) id;
+            id >>>= 8;
+        }
+
+        return bytes;
     }
 
 
@@ -52,6 +78,66 @@ public class UuidSerializer implements Serializer
      */
     public Object deserialize( byte[] bytes ) throws IOException
     {
-        return StringSerializer.INSTANCE.deserialize( bytes );
+        // A UUID String is 72 bytes long, there is no ambiguity
+        if ( bytes.length != LONG_LENGTH )
+        {
+            return StringSerializer.INSTANCE.deserialize( bytes );
+        }
+
+        long id = 0L;
+
+        for ( byte b : bytes )
+        {
+            id = ( id << 8 ) | ( b & 0xFFL );
+        }
+
+        return new UUID( 0L, id ).toString();
+    }
+
+
+    /**
+     * Gets the sequence number of a sequential ID. Only the lower case IDs are
+     * considered, so that the deserialized ID is always equal to the serialized one.
+     * The 0 UUID is not considered either, so that the partitions which don't use
+     * sequential IDs keep the same format.
+     *
+     * @param uuid The ID
+     * @return The sequence number, or 0 if the ID is not a sequential ID
+     */
+    private static long getSequentialId( String uuid )
+    {
+        if ( ( uuid.length() != UUID_LENGTH ) || !uuid.startsWith( SEQUENTIAL_PREFIX ) )
+        {
+            return 0L;
+        }
+
+        long id = 0L;
+
+        for ( int i = SEQUENTIAL_PREFIX.length(); i < UUID_LENGTH; i++ )
+        {
+            char c = uuid.charAt( i );
+
+            if ( i == 23 )
+            {
+                if ( c != '-' )
+                {
+                    return 0L;
+                }
+            }
+            else if ( ( c >= '0' ) && ( c <= '9' ) )
+            {
+                id = ( id << 4 ) | ( c - '0' );
+            }
+            else if ( ( c >= 'a' ) && ( c <= 'f' ) )
+            {
+                id = ( id << 4 ) | ( c - 'a' + 10 );
+            }
+            else
+            {
+                return 0L;
+            }
+        }
+
+        return id;
     }
 }
@@ -0,0 +1,294 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.StringValue;
+import org.apache.directory.api.ldap.model.filter.EqualityNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.SubstringNode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.api.CacheService;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.MockCoreSession;
+import org.apache.directory.server.core.api.MockDirectoryService;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.shared.DefaultDnFactory;
+import org.apache.directory.server.xdbm.IndexEntry;
+import org.apache.directory.server.xdbm.StoreUtils;
+import org.apache.directory.server.xdbm.search.Evaluator;
+import org.apache.directory.server.xdbm.search.PartitionSearchResult;
+import org.apache.directory.server.xdbm.search.impl.CursorBuilder;
+import org.apache.directory.server.xdbm.search.impl.DefaultOptimizer;
+import org.apache.directory.server.xdbm.search.impl.EvaluatorBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the searches on an attribute indexed by a JdbmHashIndex : the equality
+ * filters use the index, the substring filters fall back on a full scan.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmHashIndexSearchTest
+{
+    /** The number of entries sharing the same ou value */
+    private static final int NB_SHARED = 150;
+
+    File wkdir;
+    JdbmPartition store;
+    CoreSession session;
+
+    private static SchemaManager schemaManager = null;
+    private static DnFactory dnFactory;
+    private static CacheService cacheService;
+
+    /** The OU AttributeType instance */
+    private static AttributeType OU_AT;
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = JdbmHashIndexSearchTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+
+        OU_AT = schemaManager.getAttributeType( SchemaConstants.OU_AT );
+
+        cacheService = new CacheService();
+        cacheService.initialize( null );
+        dnFactory = new DefaultDnFactory( schemaManager, cacheService.getCache( "dnCache" ) );
+    }
+
+
+    @Before
+    public void createStore() throws Exception
+    {
+        // setup the working directory for the store
+        wkdir = File.createTempFile( getClass().getSimpleName(), "db" );
+        wkdir.delete();
+        wkdir = new File( wkdir.getParentFile(), getClass().getSimpleName() );
+
+        // initialize the store, with a hash index on ou
+        store = new JdbmPartition( schemaManager, dnFactory );
+        store.setId( "example" );
+        store.setCacheSize( 10 );
+        store.setPartitionPath( wkdir.toURI() );
+        store.setSyncOnWrite( false );
+
+        JdbmHashIndex<String> ouIndex = new JdbmHashIndex<String>( SchemaConstants.OU_AT_OID, true );
+        ouIndex.setWkDirPath( wkdir.toURI() );
+        store.addIndex( ouIndex );
+
+        Dn suffixDn = new Dn( schemaManager, "o=Good Times Co." );
+        store.setSuffixDn( suffixDn );
+
+        store.setCacheService( cacheService );
+        store.initialize();
+
+        StoreUtils.loadExampleData( store, schemaManager );
+
+        // Enough entries with the same ou value to split the hash buckets
+        for ( int i = 0; i < NB_SHARED; i++ )
+        {
+            Dn dn = new Dn( schemaManager, "cn=user" + i + ",o=Good Times Co." );
+            Entry entry = new DefaultEntry( schemaManager, dn,
+                "objectClass: top",
+                "objectClass: person",
+                "objectClass: organizationalPerson",
+                "cn: user" + i,
+                "sn: user" + i,
+                "ou: Shared" );
+            StoreUtils.injectEntryInStore( store, entry, 100L + i );
+        }
+
+        DirectoryService directoryService = new MockDirectoryService();
+        directoryService.setSchemaManager( schemaManager );
+        session = new MockCoreSession( new LdapPrincipal(), directoryService );
+    }
+
+
+    @After
+    public void destroyStore() throws Exception
+    {
+        if ( store != null )
+        {
+            // make sure all files are closed so that they can be deleted on Windows.
+            store.destroy();
+        }
+
+        store = null;
+
+        if ( wkdir != null )
+        {
+            FileUtils.deleteDirectory( wkdir );
+        }
+
+        wkdir = null;
+    }
+
+
+    @Test
+    public void testIndexType() throws Exception
+    {
+        assertTrue( store.getUserIndex( OU_AT ) instanceof JdbmHashIndex );
+        assertFalse( store.getUserIndex( OU_AT ).isOrdered() );
+    }
+
+
+    @Test
+    public void testEqualityUsesHashIndex() throws Exception
+    {
+        ExprNode node = new EqualityNode<String>( OU_AT, new StringValue( "  SHARED " ) );
+        new DefaultOptimizer<Entry>( store ).annotate( node );
+
+        PartitionSearchResult searchResult = new PartitionSearchResult( schemaManager );
+        Set<String> candidates = new HashSet<String>();
+        searchResult.setCandidateSet( candidates );
+
+        CursorBuilder cursorBuilder = new CursorBuilder( store, new EvaluatorBuilder( store, schemaManager ) );
+        long nbResults = cursorBuilder.build( node, searchResult );
+
+        // The candidates come from the index, not from a full scan
+        assertEquals( NB_SHARED, nbResults );
+        assertEquals( NB_SHARED, candidates.size() );
+
+        for ( String id : candidates )
+        {
+            assertTrue( store.fetch( id ).get( OU_AT ).contains( "shared" ) );
+        }
+    }
+
+
+    @Test
+    public void testEqualitySearch() throws Exception
+    {
+        ExprNode node = new EqualityNode<String>( OU_AT, new StringValue( "shared" ) );
+
+        assertEquals( NB_SHARED, search( node ) );
+
+        node = new EqualityNode<String>( OU_AT, new StringValue( "sales" ) );
+
+        assertEquals( 1, search( node ) );
+    }
+
+
+    @Test
+    public void testSubstringFallsBackOnFullScan() throws Exception
+    {
+        ExprNode node = new SubstringNode( OU_AT, "sha", null );
+        new DefaultOptimizer<Entry>( store ).annotate( node );
+
+        PartitionSearchResult searchResult = new PartitionSearchResult( schemaManager );
+        searchResult.setCandidateSet( new HashSet<String>() );
+
+        CursorBuilder cursorBuilder = new CursorBuilder( store, new EvaluatorBuilder( store, schemaManager ) );
+
+        // The keys are not ordered : the master table has to be scanned
+        assertEquals( Long.MAX_VALUE, cursorBuilder.build( node, searchResult ) );
+    }
+
+
+    @Test
+    public void testSubstringSearch() throws Exception
+    {
+        ExprNode node = new SubstringNode( OU_AT, "sha", null );
+
+        assertEquals( NB_SHARED, search( node ) );
+
+        node = new SubstringNode( OU_AT, "s", null );
+
+        // Sales and the shared entries
+        assertEquals( NB_SHARED + 1, search( node ) );
+    }
+
+
+    /**
+     * Runs a subtree search from the suffix, returning the number of matching entries
+     */
+    private int search( ExprNode node ) throws Exception
+    {
+        SearchOperationContext searchContext = new SearchOperationContext( session, store.getSuffixDn(),
+            SearchScope.SUBTREE, node, SchemaConstants.ALL_USER_ATTRIBUTES );
+        PartitionSearchResult searchResult = store.getSearchEngine().computeResult( schemaManager, searchContext );
+        Evaluator<? extends ExprNode> evaluator = searchResult.getEvaluator();
+        Cursor<IndexEntry<String, String>> cursor = searchResult.getResultSet();
+        int nbFound = 0;
+
+        while ( cursor.next() )
+        {
+            if ( evaluator.evaluate( cursor.get() ) )
+            {
+                nbFound++;
+            }
+        }
+
+        cursor.close();
+
+        return nbFound;
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jdbm.RecordManager;
+import jdbm.recman.BaseRecordManager;
+
+import org.apache.directory.server.xdbm.IndexEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the JdbmHashTable, with small buckets so that they get split.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmHashTableTest
+{
+    private static final String TEST_OUTPUT_PATH = "test.output.path";
+
+    private static final int BUCKET_SIZE = 4;
+
+    private static final int DUP_LIMIT = 8;
+
+    JdbmHashTable<String, String> table;
+    File dbFile;
+    RecordManager recman;
+
+
+    @Before
+    public void createTable() throws Exception
+    {
+        File tmpDir = null;
+
+        if ( System.getProperty( TEST_OUTPUT_PATH, null ) != null )
+        {
+            tmpDir = new File( System.getProperty( TEST_OUTPUT_PATH ) );
+        }
+
+        dbFile = File.createTempFile( getClass().getSimpleName(), "db", tmpDir );
+        recman = new BaseRecordManager( dbFile.getAbsolutePath() );
+        table = new JdbmHashTable<String, String>( recman, "test", BUCKET_SIZE, DUP_LIMIT );
+    }
+
+
+    @After
+    public void destroyTable() throws Exception
+    {
+        if ( table != null )
+        {
+            table.close();
+        }
+
+        table = null;
+
+        if ( recman != null )
+        {
+            recman.close();
+        }
+
+        recman = null;
+
+        if ( dbFile != null )
+        {
+            String fileToDelete = dbFile.getAbsolutePath();
+            new File( fileToDelete + ".db" ).delete();
+            new File( fileToDelete + ".lg" ).delete();
+
+            dbFile.delete();
+        }
+
+        dbFile = null;
+    }
+
+
+    @Test
+    public void testPutGetWithSplits() throws Exception
+    {
+        for ( int i = 0; i < 1000; i++ )
+        {
+            table.put( "key" + i, "id" + i );
+        }
+
+        assertEquals( 1000, table.count() );
+        assertTrue( table.getDepth() > 0 );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            List<String> values = table.get( "key" + i );
+            assertEquals( 1, values.size() );
+            assertEquals( "id" + i, values.get( 0 ) );
+        }
+
+        assertFalse( table.has( "key1000" ) );
+        assertTrue( table.get( "key1000" ).isEmpty() );
+    }
+
+
+    @Test
+    public void testDuplicateValues() throws Exception
+    {
+        table.put( "key", "id1" );
+        table.put( "key", "id2" );
+        table.put( "key", "id2" );
+
+        assertEquals( 2, table.count() );
+        assertEquals( 2, table.count( "key" ) );
+        assertTrue( table.has( "key", "id1" ) );
+        assertFalse( table.has( "key", "id3" ) );
+
+        table.remove( "key", "id1" );
+        assertEquals( 1, table.count() );
+        assertTrue( table.has( "key" ) );
+
+        table.remove( "key", "id2" );
+        assertEquals( 0, table.count() );
+        assertFalse( table.has( "key" ) );
+    }
+
+
+    @Test
+    public void testRemoveKey() throws Exception
+    {
+        table.put( "key", "id1" );
+        table.put( "key", "id2" );
+        table.put( "other", "id3" );
+
+        List<String> removed = table.remove( "key" );
+
+        assertEquals( 2, removed.size() );
+        assertEquals( 1, table.count() );
+        assertFalse( table.has( "key" ) );
+        assertTrue( table.remove( "key" ).isEmpty() );
+    }
+
+
+    @Test
+    public void testBinaryKeys() throws Exception
+    {
+        JdbmHashTable<byte[], String> binary = new JdbmHashTable<byte[], String>( recman, "binary", BUCKET_SIZE );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            binary.put( new byte[]
+                { ( byte ) i, 1, 2 }, "id" + i );
+        }
+
+        assertEquals( 100, binary.count() );
+        assertTrue( binary.has( new byte[]
+            { 42, 1, 2 }, "id42" ) );
+        assertFalse( binary.has( new byte[]
+            { 42, 1, 3 } ) );
+    }
+
+
+    @Test
+    public void testScan() throws Exception
+    {
+        for ( int i = 0; i < 200; i++ )
+        {
+            table.put( "key" + ( i % 100 ), "id" + i );
+        }
+
+        List<String> keys = new ArrayList<String>();
+        List<String> values = new ArrayList<String>();
+
+        for ( long bucket : table.getBuckets() )
+        {
+            table.readBucket( bucket, keys, values );
+        }
+
+        assertEquals( 200, keys.size() );
+        assertEquals( 200, new HashSet<String>( values ).size() );
+
+        Set<String> distinctKeys = new HashSet<String>( keys );
+        assertEquals( 100, distinctKeys.size() );
+    }
+
+
+    @Test
+    public void testCursor() throws Exception
+    {
+        for ( int i = 0; i < 200; i++ )
+        {
+            table.put( "key" + i, "id" + i );
+        }
+
+        JdbmHashCursor<String> cursor = new JdbmHashCursor<String>( table, true );
+        Set<String> ids = new HashSet<String>();
+
+        while ( cursor.next() )
+        {
+            IndexEntry<String, String> indexEntry = cursor.get();
+            assertEquals( indexEntry.getKey().replace( "key", "id" ), indexEntry.getId() );
+            ids.add( indexEntry.getId() );
+        }
+
+        assertEquals( 200, ids.size() );
+
+        // And backward
+        int nb = 0;
+
+        while ( cursor.previous() )
+        {
+            nb++;
+        }
+
+        assertEquals( 200, nb );
+        assertFalse( cursor.available() );
+        cursor.close();
+    }
+
+
+    @Test
+    public void testReopen() throws Exception
+    {
+        for ( int i = 0; i < 500; i++ )
+        {
+            table.put( "key" + i, "id" + i );
+        }
+
+        table.close();
+        recman.commit();
+        table = new JdbmHashTable<String, String>( recman, "test", BUCKET_SIZE, DUP_LIMIT );
+
+        assertEquals( 500, table.count() );
+
+        for ( int i = 0; i < 500; i++ )
+        {
+            assertTrue( table.has( "key" + i, "id" + i ) );
+        }
+    }
+
+
+    @Test
+    public void testManyValues() throws Exception
+    {
+        // Above the duplicate limit, the values are moved to a BTree
+        for ( int i = 0; i < 100; i++ )
+        {
+            table.put( "key", "id" + i );
+        }
+
+        table.put( "key", "id42" );
+        table.put( "other", "id0" );
+
+        assertEquals( 101, table.count() );
+        assertEquals( 100, table.count( "key" ) );
+        assertEquals( 100, table.get( "key" ).size() );
+        assertTrue( table.has( "key", "id42" ) );
+        assertFalse( table.has( "key", "id100" ) );
+
+        // The scan goes through the BTree too
+        List<String> keys = new ArrayList<String>();
+        List<String> values = new ArrayList<String>();
+
+        for ( long bucket : table.getBuckets() )
+        {
+            table.readBucket( bucket, keys, values );
+        }
+
+        assertEquals( 101, keys.size() );
+
+        // Back below the limit, the values are moved back to the bucket
+        table.remove( "key", "id100" );
+
+        for ( int i = 0; i < 95; i++ )
+        {
+            table.remove( "key", "id" + i );
+        }
+
+        assertEquals( 5, table.count( "key" ) );
+        assertTrue( table.has( "key", "id99" ) );
+        assertFalse( table.has( "key", "id0" ) );
+
+        for ( int i = 0; i < 20; i++ )
+        {
+            table.put( "key", "other" + i );
+        }
+
+        assertEquals( 25, table.remove( "key" ).size() );
+        assertEquals( 1, table.count() );
+    }
+
+
+    @Test
+    public void testCountWrittenOnUpdate() throws Exception
+    {
+        for ( int i = 0; i < 50; i++ )
+        {
+            table.put( "key" + i, "id" + i );
+        }
+
+        table.remove( "key0" );
+
+        // The table is reopened without being synced
+        recman.commit();
+        table = new JdbmHashTable<String, String>( recman, "test", BUCKET_SIZE, DUP_LIMIT );
+
+        assertEquals( 49, table.count() );
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.csn.CsnFactory;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.api.CacheService;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.MockCoreSession;
+import org.apache.directory.server.core.api.MockDirectoryService;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.api.partition.Subordinates;
+import org.apache.directory.server.core.shared.DefaultDnFactory;
+import org.apache.directory.server.xdbm.Index;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the JdbmPartition operations when the entry IDs are taken from the
+ * master table sequence instead of being the entryUUIDs.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JdbmSequentialIdsTest
+{
+    private File wkdir;
+    private JdbmPartition partition;
+    private CoreSession session;
+
+    private static SchemaManager schemaManager = null;
+    private static DnFactory dnFactory;
+    private static CacheService cacheService;
+    private static CsnFactory csnFactory = new CsnFactory( 0 );
+
+    /** The entryUUID AttributeType instance */
+    private static AttributeType ENTRY_UUID_AT;
+
+    /** The description AttributeType instance */
+    private static AttributeType DESCRIPTION_AT;
+
+    private static Dn SUFFIX_DN;
+    private static Dn PEOPLE_DN;
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = JdbmSequentialIdsTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+
+        ENTRY_UUID_AT = schemaManager.getAttributeType( SchemaConstants.ENTRY_UUID_AT );
+        DESCRIPTION_AT = schemaManager.getAttributeType( SchemaConstants.DESCRIPTION_AT );
+
+        SUFFIX_DN = new Dn( schemaManager, "dc=example,dc=com" );
+        PEOPLE_DN = new Dn( schemaManager, "ou=people,dc=example,dc=com" );
+
+        cacheService = new CacheService();
+        cacheService.initialize( null );
+        dnFactory = new DefaultDnFactory( schemaManager, cacheService.getCache( "dnCache" ) );
+    }
+
+
+    @Before
+    public void createPartition() throws Exception
+    {
+        wkdir = File.createTempFile( getClass().getSimpleName(), "db" );
+        wkdir.delete();
+        wkdir = new File( wkdir.getParentFile(), getClass().getSimpleName() );
+
+        partition = new JdbmPartition( schemaManager, dnFactory );
+        partition.setId( "example" );
+        partition.setCacheSize( 10 );
+        partition.setPartitionPath( wkdir.toURI() );
+        partition.setSyncOnWrite( false );
+        partition.setSequentialIds( true );
+
+        JdbmIndex ouIndex = new JdbmIndex( SchemaConstants.OU_AT_OID, false );
+        ouIndex.setWkDirPath( wkdir.toURI() );
+        partition.addIndex( ouIndex );
+
+        partition.setSuffixDn( SUFFIX_DN );
+        partition.setCacheService( cacheService );
+        partition.initialize();
+
+        DirectoryService directoryService = new MockDirectoryService();
+        directoryService.setSchemaManager( schemaManager );
+        session = new MockCoreSession( new LdapPrincipal(), directoryService );
+
+        add( SUFFIX_DN,
+            "objectClass: top",
+            "objectClass: domain",
+            "dc: example" );
+        add( PEOPLE_DN,
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: people" );
+    }
+
+
+    @After
+    public void destroyPartition() throws Exception
+    {
+        if ( partition != null )
+        {
+            partition.destroy();
+        }
+
+        partition = null;
+
+        if ( wkdir != null )
+        {
+            FileUtils.deleteDirectory( wkdir );
+        }
+
+        wkdir = null;
+    }
+
+
+    /**
+     * Adds an entry with a random entryUUID, so that its ID can't be confused with it
+     */
+    private Entry add( Dn dn, String... ldif ) throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager, dn, ldif );
+        entry.add( SchemaConstants.ENTRY_CSN_AT, csnFactory.newInstance().toString() );
+        entry.add( SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString() );
+
+        partition.add( new AddOperationContext( null, entry ) );
+
+        return entry;
+    }
+
+
+    private Entry addPerson( String cn ) throws Exception
+    {
+        return add( new Dn( schemaManager, "cn=" + cn + ",ou=people,dc=example,dc=com" ),
+            "objectClass: top",
+            "objectClass: person",
+            "cn: " + cn,
+            "sn: " + cn );
+    }
+
+
+    private String sequentialId( long id )
+    {
+        return new UUID( 0L, id ).toString();
+    }
+
+
+    /**
+     * The entryUUID as it is stored in the entryUUID index
+     */
+    private String getEntryUuid( Entry entry ) throws Exception
+    {
+        return ( String ) entry.get( ENTRY_UUID_AT ).get().getNormValue();
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private Index<String, String> getEntryUuidIndex() throws Exception
+    {
+        return ( Index<String, String> ) partition.getUserIndex( ENTRY_UUID_AT );
+    }
+
+
+    @Test
+    public void testAdd() throws Exception
+    {
+        Entry entry = addPerson( "jack" );
+        Dn dn = entry.getDn();
+
+        // The suffix and ou=people have taken the two first IDs
+        assertEquals( sequentialId( 1L ), partition.getEntryId( SUFFIX_DN ) );
+        assertEquals( sequentialId( 2L ), partition.getEntryId( PEOPLE_DN ) );
+
+        String id = partition.getEntryId( dn );
+        String entryUuid = getEntryUuid( entry );
+
+        assertEquals( sequentialId( 3L ), id );
+        assertFalse( id.equals( entryUuid ) );
+        assertEquals( id, getEntryUuidIndex().forwardLookup( entryUuid ) );
+
+        Entry fetched = partition.fetch( id, dn );
+        assertNotNull( fetched );
+        assertEquals( entryUuid, getEntryUuid( fetched ) );
+        assertTrue( fetched.contains( "sn", "jack" ) );
+    }
+
+
+    @Test
+    public void testDelete() throws Exception
+    {
+        Entry entry = addPerson( "jack" );
+        Dn dn = entry.getDn();
+        String id = partition.getEntryId( dn );
+        String entryUuid = getEntryUuid( entry );
+
+        // The fetched entry is cached
+        Entry fetched = partition.fetch( id, dn );
+        assertNotNull( partition.lookupCache( id ) );
+
+        DeleteOperationContext deleteContext = new DeleteOperationContext( session, dn );
+        deleteContext.setEntry( fetched );
+        partition.delete( deleteContext );
+
+        // The entry has been evicted from the cache, and its entryUUID isn't mapped anymore
+        assertNull( partition.lookupCache( id ) );
+        assertNull( partition.getEntryId( dn ) );
+        assertNull( partition.fetch( id ) );
+        assertNull( getEntryUuidIndex().forwardLookup( entryUuid ) );
+
+        // The IDs are never reused
+        assertEquals( sequentialId( 4L ), partition.getEntryId( addPerson( "jill" ).getDn() ) );
+    }
+
+
+    @Test
+    public void testModify() throws Exception
+    {
+        Entry entry = addPerson( "jack" );
+        Dn dn = entry.getDn();
+        String id = partition.getEntryId( dn );
+
+        partition.fetch( id, dn );
+        assertFalse( partition.lookupCache( id ).containsAttribute( DESCRIPTION_AT ) );
+
+        List<Modification> modifications = new ArrayList<Modification>();
+        modifications.add( new DefaultModification( ModificationOperation.ADD_ATTRIBUTE, DESCRIPTION_AT,
+            "modified" ) );
+
+        partition.modify( new ModifyOperationContext( session, dn, modifications ) );
+
+        // The cached entry, found from its entryUUID, has been replaced
+        assertTrue( partition.lookupCache( id ).contains( DESCRIPTION_AT, "modified" ) );
+        assertTrue( partition.fetch( id, dn ).contains( DESCRIPTION_AT, "modified" ) );
+        assertEquals( id, partition.getEntryId( dn ) );
+    }
+
+
+    @Test
+    public void testRename() throws Exception
+    {
+        Entry entry = addPerson( "jack" );
+        Dn dn = entry.getDn();
+        String id = partition.getEntryId( dn );
+        String entryUuid = getEntryUuid( entry );
+
+        Rdn newRdn = new Rdn( schemaManager, "cn=john" );
+        partition.rename( new RenameOperationContext( session, dn, newRdn, true ) );
+
+        Dn newDn = new Dn( schemaManager, "cn=john,ou=people,dc=example,dc=com" );
+
+        // The entry keeps its ID and its entryUUID
+        assertNull( partition.getEntryId( dn ) );
+        assertEquals( id, partition.getEntryId( newDn ) );
+        assertEquals( id, getEntryUuidIndex().forwardLookup( entryUuid ) );
+
+        Entry renamed = partition.fetch( id, newDn );
+        assertTrue( renamed.contains( "cn", "john" ) );
+        assertFalse( renamed.contains( "cn", "jack" ) );
+    }
+
+
+    @Test
+    public void testGetSubordinates() throws Exception
+    {
+        Entry people = partition.fetch( partition.getEntryId( PEOPLE_DN ), PEOPLE_DN );
+
+        Subordinates subordinates = partition.getSubordinates( people );
+        assertEquals( 0L, subordinates.getNbChildren() );
+
+        Entry jack = addPerson( "jack" );
+        addPerson( "jill" );
+
+        subordinates = partition.getSubordinates( people );
+        assertEquals( 2L, subordinates.getNbChildren() );
+        assertEquals( 2L, subordinates.getNbSubordinates() );
+
+        Entry suffix = partition.fetch( partition.getEntryId( SUFFIX_DN ), SUFFIX_DN );
+        subordinates = partition.getSubordinates( suffix );
+        assertEquals( 1L, subordinates.getNbChildren() );
+        assertEquals( 3L, subordinates.getNbSubordinates() );
+
+        DeleteOperationContext deleteContext = new DeleteOperationContext( session, jack.getDn() );
+        deleteContext.setEntry( jack );
+        partition.delete( deleteContext );
+
+        assertEquals( 1L, partition.getSubordinates( people ).getNbChildren() );
+        assertEquals( 2L, partition.getSubordinates( suffix ).getNbSubordinates() );
+    }
+}
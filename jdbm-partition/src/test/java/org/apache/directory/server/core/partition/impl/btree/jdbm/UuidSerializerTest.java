@@ -0,0 +1,95 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+
+/**
+ * Tests the UuidSerializer, with random and sequential IDs.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class UuidSerializerTest
+{
+    @Test
+    public void testRandomUuids() throws IOException
+    {
+        UuidSerializer serializer = UuidSerializer.INSTANCE;
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            String uuid = UUID.randomUUID().toString();
+            byte[] serialized = serializer.serialize( uuid );
+
+            assertEquals( 72, serialized.length );
+            assertEquals( uuid, serializer.deserialize( serialized ) );
+        }
+    }
+
+
+    @Test
+    public void testSequentialIds() throws IOException
+    {
+        UuidSerializer serializer = UuidSerializer.INSTANCE;
+        long[] ids = new long[]
+            { 1L, 2L, 255L, 65536L, 0x0123456789ABCDEFL, Long.MAX_VALUE, -1L };
+
+        for ( long id : ids )
+        {
+            String uuid = new UUID( 0L, id ).toString();
+            byte[] serialized = serializer.serialize( uuid );
+
+            assertEquals( 8, serialized.length );
+            assertEquals( uuid, serializer.deserialize( serialized ) );
+        }
+    }
+
+
+    @Test
+    public void testNotSequentialIds() throws IOException
+    {
+        UuidSerializer serializer = UuidSerializer.INSTANCE;
+
+        // The root ID and the upper case IDs keep the String format
+        String[] uuids = new String[]
+            { new UUID( 0L, 0L ).toString(), "00000000-0000-0000-0000-00000000000A" };
+
+        for ( String uuid : uuids )
+        {
+            byte[] serialized = serializer.serialize( uuid );
+
+            assertEquals( 72, serialized.length );
+            assertEquals( uuid, serializer.deserialize( serialized ) );
+        }
+    }
+}
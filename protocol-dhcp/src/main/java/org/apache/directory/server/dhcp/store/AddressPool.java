@@ -0,0 +1,306 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.dhcp.store;
+
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.BitSet;
+
+
+/**
+ * The pool of addresses of a {@link Subnet}. The addresses in the subnet range are
+ * tracked in a bitmap, a set bit meaning the address is in use. The free addresses
+ * are allocated in a round robin fashion, starting after the last allocated one, so
+ * that a released address is not immediately given to another client.<br>
+ * Only IPv4 subnets are supported. When the subnet range is not set, it spans all
+ * the subnet addresses except the network and broadcast ones. This class is not
+ * thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class AddressPool
+{
+    /** The subnet */
+    private final Subnet subnet;
+
+    /** The subnet address */
+    private final int network;
+
+    /** The subnet mask */
+    private final int netmask;
+
+    /** The first address of the range */
+    private final int rangeMin;
+
+    /** The number of addresses in the range */
+    private final int size;
+
+    /** The used addresses, indexed by their offset from rangeMin */
+    private final BitSet used;
+
+    /** The number of used addresses */
+    private int usedCount;
+
+    /** The offset at which the search for a free address starts */
+    private int cursor;
+
+
+    /**
+     * Creates a new instance of AddressPool.
+     *
+     * @param subnet The subnet
+     * @throws IllegalArgumentException If the subnet is not an IPv4 subnet, or if its range is empty
+     */
+    public AddressPool( Subnet subnet )
+    {
+        this.subnet = subnet;
+        netmask = toInt( subnet.getNetmask() );
+        network = toInt( subnet.getAddress() ) & netmask;
+
+        int min = ( subnet.getRangeMin() != null ) ? toInt( subnet.getRangeMin() ) : network + 1;
+        int max = ( subnet.getRangeMax() != null ) ? toInt( subnet.getRangeMax() ) : ( network | ~netmask ) - 1;
+
+        if ( ( ( min & netmask ) != network ) || ( ( max & netmask ) != network )
+            || ( ( min & 0xFFFFFFFFL ) > ( max & 0xFFFFFFFFL ) ) )
+        {
+            throw new IllegalArgumentException( "Invalid range for the subnet " + subnet.getAddress() );
+        }
+
+        rangeMin = min;
+        size = max - min + 1;
+        used = new BitSet( size );
+    }
+
+
+    /**
+     * @return The subnet
+     */
+    public Subnet getSubnet()
+    {
+        return subnet;
+    }
+
+
+    /**
+     * @return The subnet address, as an int
+     */
+    int getNetwork()
+    {
+        return network;
+    }
+
+
+    /**
+     * @return The subnet mask, as an int
+     */
+    int getNetmask()
+    {
+        return netmask;
+    }
+
+
+    /**
+     * @return The number of addresses in the range
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+
+    /**
+     * @return The number of free addresses
+     */
+    public int getFreeCount()
+    {
+        return size - usedCount;
+    }
+
+
+    /**
+     * Tells if an address belongs to the subnet
+     *
+     * @param address The address
+     * @return <code>true</code> if the address is in the subnet
+     */
+    public boolean contains( InetAddress address )
+    {
+        return ( address instanceof Inet4Address ) && ( ( toInt( address ) & netmask ) == network );
+    }
+
+
+    /**
+     * Tells if an address belongs to the subnet range
+     *
+     * @param address The address
+     * @return <code>true</code> if the address is in the range
+     */
+    public boolean isInRange( InetAddress address )
+    {
+        return contains( address ) && ( offset( address ) >= 0 );
+    }
+
+
+    /**
+     * Tells if an address of the range is free
+     *
+     * @param address The address
+     * @return <code>true</code> if the address is in the range and is not used
+     */
+    public boolean isFree( InetAddress address )
+    {
+        int offset = contains( address ) ? offset( address ) : -1;
+
+        return ( offset >= 0 ) && !used.get( offset );
+    }
+
+
+    /**
+     * Allocates an address. The requested address is allocated if it's free, otherwise
+     * the next free address is.
+     *
+     * @param requestedAddress The address requested by the client, may be null
+     * @return The allocated address, or null if the pool is exhausted
+     */
+    public InetAddress allocate( InetAddress requestedAddress )
+    {
+        if ( ( requestedAddress != null ) && reserve( requestedAddress ) )
+        {
+            return requestedAddress;
+        }
+
+        if ( usedCount == size )
+        {
+            return null;
+        }
+
+        int offset = used.nextClearBit( cursor );
+
+        if ( offset >= size )
+        {
+            offset = used.nextClearBit( 0 );
+        }
+
+        markUsed( offset );
+
+        return toAddress( rangeMin + offset );
+    }
+
+
+    /**
+     * Marks an address as used
+     *
+     * @param address The address
+     * @return <code>true</code> if the address was free, <code>false</code> if it's already
+     * used or out of the range
+     */
+    public boolean reserve( InetAddress address )
+    {
+        int offset = contains( address ) ? offset( address ) : -1;
+
+        if ( ( offset < 0 ) || used.get( offset ) )
+        {
+            return false;
+        }
+
+        markUsed( offset );
+
+        return true;
+    }
+
+
+    /**
+     * Gives an address back to the pool
+     *
+     * @param address The address
+     */
+    public void release( InetAddress address )
+    {
+        int offset = contains( address ) ? offset( address ) : -1;
+
+        if ( ( offset >= 0 ) && used.get( offset ) )
+        {
+            used.clear( offset );
+            usedCount--;
+        }
+    }
+
+
+    private void markUsed( int offset )
+    {
+        used.set( offset );
+        usedCount++;
+        cursor = ( offset + 1 ) % size;
+    }
+
+
+    /**
+     * @return The offset of an address of the subnet in the range, or -1 if it's out of the range
+     */
+    private int offset( InetAddress address )
+    {
+        long offset = ( toInt( address ) & 0xFFFFFFFFL ) - ( rangeMin & 0xFFFFFFFFL );
+
+        return ( ( offset >= 0 ) && ( offset < size ) ) ? ( int ) offset : -1;
+    }
+
+
+    /**
+     * Converts an IPv4 address to an int
+     *
+     * @param address The address
+     * @return The address as an int
+     * @throws IllegalArgumentException If the address is not an IPv4 address
+     */
+    static int toInt( InetAddress address )
+    {
+        if ( !( address instanceof Inet4Address ) )
+        {
+            throw new IllegalArgumentException( "Only IPv4 addresses are supported : " + address );
+        }
+
+        byte[] bytes = address.getAddress();
+
+        return ( ( bytes[0] & 0xFF ) << 24 ) | ( ( bytes[1] & 0xFF ) << 16 ) | ( ( bytes[2] & 0xFF ) << 8 )
+            | ( bytes[3] & 0xFF );
+    }
+
+
+    /**
+     * Converts an int to an IPv4 address
+     */
+    private static InetAddress toAddress( int address )
+    {
+        byte[] bytes = new byte[]
+            { ( byte ) ( address >>> 24 ), ( byte ) ( address >>> 16 ), ( byte ) ( address >>> 8 ), ( byte ) address };
+
+        try
+        {
+            return InetAddress.getByAddress( bytes );
+        }
+        catch ( UnknownHostException uhe )
+        {
+            // Can't happen with a 4 bytes address
+            throw new IllegalStateException( uhe );
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.dhcp.store;
+
+
+import java.util.List;
+
+import org.apache.directory.server.dhcp.DhcpException;
+import org.apache.directory.server.dhcp.messages.HardwareAddress;
+import org.apache.directory.server.dhcp.service.Lease;
+
+
+/**
+ * Stores the leases of a {@link MemoryDhcpStore}, typically in a partition, so that
+ * they survive a restart. The methods are called from a single background thread,
+ * never while a DHCP request is being processed.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface LeasePersister
+{
+    /**
+     * Reads the stored leases. Called once, when the store is started.
+     *
+     * @return The stored leases
+     * @throws DhcpException If the leases can't be read
+     */
+    List<Lease> load() throws DhcpException;
+
+
+    /**
+     * Stores a lease, replacing the lease with the same hardware address, if any.
+     *
+     * @param lease The lease to store
+     * @throws DhcpException If the lease can't be stored
+     */
+    void store( Lease lease ) throws DhcpException;
+
+
+    /**
+     * Removes the lease of a client, if any.
+     *
+     * @param hardwareAddress The client hardware address
+     * @throws DhcpException If the lease can't be removed
+     */
+    void remove( HardwareAddress hardwareAddress ) throws DhcpException;
+}
@@ -0,0 +1,709 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.dhcp.store;
+
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.server.dhcp.DhcpException;
+import org.apache.directory.server.dhcp.messages.HardwareAddress;
+import org.apache.directory.server.dhcp.options.OptionsField;
+import org.apache.directory.server.dhcp.options.vendor.HostName;
+import org.apache.directory.server.dhcp.options.vendor.SubnetMask;
+import org.apache.directory.server.dhcp.service.Lease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A {@link DhcpStore} serving all the requests from memory :
+ * <ul>
+ * <li>the free addresses of each subnet are tracked in an {@link AddressPool}</li>
+ * <li>the subnets are found by masking the selection base address, once per distinct netmask</li>
+ * <li>the leases are indexed by the client hardware address</li>
+ * <li>the leases expire through a {@link TimerWheel}, the offered but not requested leases
+ * being reclaimed after a short delay</li>
+ * <li>the lease times and options of the subnets and hosts are computed once, when they are added</li>
+ * </ul>
+ * The lease changes are written asynchronously by a {@link LeasePersister}, if any : the
+ * pending changes of a client are coalesced, and written by a background thread.<br>
+ * The store has to be started before being used, and stopped to flush the pending changes.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MemoryDhcpStore implements DhcpStore
+{
+    private static final Logger LOG = LoggerFactory.getLogger( MemoryDhcpStore.class );
+
+    /** The lease time used when the subnet or host does not set one, in ms */
+    public static final long DEFAULT_LEASE_TIME = 1000L * 3600;
+
+    /** The delay after which an offer which has not been requested is reclaimed, in ms */
+    public static final long DEFAULT_OFFER_TIMEOUT = 1000L * 60;
+
+    /** The duration of a timer wheel tick, in ms */
+    private static final long TICK_DURATION = 1000L;
+
+    /** The number of slots of the timer wheel : a rotation lasts a bit more than an hour */
+    private static final int NB_SLOTS = 4096;
+
+    /** The address pools, by netmask and subnet address */
+    private final Map<Long, AddressPool> pools = new HashMap<Long, AddressPool>();
+
+    /** The distinct netmasks of the pools */
+    private final List<Integer> netmasks = new ArrayList<Integer>();
+
+    /** The lease time of each subnet, in ms */
+    private final Map<Subnet, Long> subnetLeaseTimes = new HashMap<Subnet, Long>();
+
+    /** The designated hosts, by hardware address */
+    private final Map<HardwareAddress, Host> hosts = new HashMap<HardwareAddress, Host>();
+
+    /** The leases, by hardware address */
+    private final Map<HardwareAddress, LeaseRecord> leases = new HashMap<HardwareAddress, LeaseRecord>();
+
+    /** The lease expiration timeouts */
+    private TimerWheel<LeaseRecord> timerWheel;
+
+    /** The delay after which an offer which has not been requested is reclaimed, in ms */
+    private long offerTimeout = DEFAULT_OFFER_TIMEOUT;
+
+    /** The lease persister, may be null */
+    private LeasePersister persister;
+
+    /** The lease changes not written yet, by hardware address */
+    private final Map<HardwareAddress, Lease> pendingWrites = new LinkedHashMap<HardwareAddress, Lease>();
+
+    /** The thread expiring the leases and writing the changes */
+    private ScheduledExecutorService executor;
+
+
+    /**
+     * A lease, with the pool its address comes from and its expiration timeout
+     */
+    private static class LeaseRecord
+    {
+        /** The lease */
+        private final Lease lease;
+
+        /** The address pool, null if the address does not belong to a pool range */
+        private final AddressPool pool;
+
+        /** The expiration timeout */
+        private TimerWheel.Timeout<LeaseRecord> timeout;
+
+
+        private LeaseRecord( Lease lease, AddressPool pool )
+        {
+            this.lease = lease;
+            this.pool = pool;
+        }
+    }
+
+
+    /**
+     * Adds a subnet, whose range will be used to allocate addresses. The subnet
+     * properties and options are read once : they must be set before.
+     *
+     * @param subnet The subnet
+     * @throws IllegalArgumentException If the subnet is not an IPv4 subnet
+     */
+    public synchronized void addSubnet( Subnet subnet )
+    {
+        AddressPool pool = new AddressPool( subnet );
+        int netmask = pool.getNetmask();
+
+        if ( !netmasks.contains( netmask ) )
+        {
+            netmasks.add( netmask );
+        }
+
+        pools.put( poolKey( netmask, pool.getNetwork() ), pool );
+        subnetLeaseTimes.put( subnet, getLeaseTime( subnet, DEFAULT_LEASE_TIME ) );
+
+        // The designated hosts addresses are not available for the other clients
+        for ( Host host : hosts.values() )
+        {
+            pool.reserve( host.getAddress() );
+        }
+    }
+
+
+    /**
+     * Adds a host with a designated address. The host properties and options are read
+     * once : they must be set before.
+     *
+     * @param host The host
+     */
+    public synchronized void addHost( Host host )
+    {
+        hosts.put( host.getHardwareAddress(), host );
+
+        AddressPool pool = findPool( host.getAddress() );
+
+        if ( pool != null )
+        {
+            pool.reserve( host.getAddress() );
+        }
+    }
+
+
+    /**
+     * @param persister The lease persister
+     */
+    public void setPersister( LeasePersister persister )
+    {
+        this.persister = persister;
+    }
+
+
+    /**
+     * @param offerTimeout The delay after which an offer which has not been requested
+     * is reclaimed, in ms
+     */
+    public void setOfferTimeout( long offerTimeout )
+    {
+        this.offerTimeout = offerTimeout;
+    }
+
+
+    /**
+     * Loads the stored leases, and starts the thread expiring the leases and
+     * writing the changes.
+     *
+     * @throws DhcpException If the stored leases can't be loaded
+     */
+    public void start() throws DhcpException
+    {
+        synchronized ( this )
+        {
+            long now = currentTimeMillis();
+            timerWheel = new TimerWheel<LeaseRecord>( TICK_DURATION, NB_SLOTS, now );
+
+            if ( persister != null )
+            {
+                int loaded = 0;
+
+                for ( Lease lease : persister.load() )
+                {
+                    if ( restore( lease, now ) )
+                    {
+                        loaded++;
+                    }
+                }
+
+                LOG.info( "{} leases loaded", loaded );
+            }
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+        {
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "dhcp-leases" );
+                thread.setDaemon( true );
+
+                return thread;
+            }
+        } );
+
+        executor.scheduleWithFixedDelay( new Runnable()
+        {
+            public void run()
+            {
+                expireLeases();
+                flush();
+            }
+        }, TICK_DURATION, TICK_DURATION, TimeUnit.MILLISECONDS );
+    }
+
+
+    /**
+     * Stops the background thread, and writes the pending changes
+     */
+    public void stop()
+    {
+        if ( executor != null )
+        {
+            executor.shutdown();
+
+            try
+            {
+                executor.awaitTermination( 10, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            executor = null;
+        }
+
+        flush();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Lease getLeaseOffer( HardwareAddress hardwareAddress, InetAddress requestedAddress,
+        InetAddress selectionBase, long requestedLeaseTime, OptionsField options ) throws DhcpException
+    {
+        AddressPool pool = findPool( selectionBase );
+
+        if ( pool == null )
+        {
+            LOG.warn( "Don't know anything about the subnet containing {}", selectionBase );
+            return null;
+        }
+
+        long now = currentTimeMillis();
+        Host host = hosts.get( hardwareAddress );
+        LeaseRecord record = leases.get( hardwareAddress );
+
+        if ( record != null )
+        {
+            if ( pool.contains( record.lease.getClientAddress() ) )
+            {
+                Lease lease = record.lease;
+
+                if ( lease.getState() != Lease.STATE_ACTIVE )
+                {
+                    lease.setState( Lease.STATE_OFFERED );
+                    lease.setExpires( now + getLeaseTime( pool.getSubnet(), host, requestedLeaseTime ) );
+                    schedule( record, now + offerTimeout );
+                    write( lease );
+                }
+
+                return lease;
+            }
+
+            // The client moved to another subnet
+            remove( record, Lease.STATE_EXPIRED );
+        }
+
+        InetAddress clientAddress = null;
+
+        if ( host != null )
+        {
+            // Depending on the configuration, the host may not be within the subnet
+            if ( !pool.contains( host.getAddress() ) )
+            {
+                LOG.warn( "Host {} is not within the subnet for which an address is requested", host );
+                return null;
+            }
+
+            clientAddress = host.getAddress();
+        }
+        else
+        {
+            clientAddress = pool.allocate( requestedAddress );
+
+            if ( clientAddress == null )
+            {
+                LOG.warn( "No address left in the subnet {}", pool.getSubnet().getAddress() );
+                return null;
+            }
+        }
+
+        Lease lease = new Lease();
+        lease.setAcquired( now );
+        lease.setExpires( now + getLeaseTime( pool.getSubnet(), host, requestedLeaseTime ) );
+        lease.setHardwareAddress( hardwareAddress );
+        lease.setClientAddress( clientAddress );
+        lease.setState( Lease.STATE_OFFERED );
+        setOptions( lease, pool.getSubnet(), host );
+
+        record = new LeaseRecord( lease, ( host == null ) ? pool : null );
+        leases.put( hardwareAddress, record );
+        schedule( record, now + offerTimeout );
+        write( lease );
+
+        return lease;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Lease getExistingLease( HardwareAddress hardwareAddress, InetAddress requestedAddress,
+        InetAddress selectionBase, long requestedLeaseTime, OptionsField options ) throws DhcpException
+    {
+        LeaseRecord record = leases.get( hardwareAddress );
+
+        if ( record == null )
+        {
+            return null;
+        }
+
+        Lease lease = record.lease;
+
+        if ( !lease.getClientAddress().equals( requestedAddress ) )
+        {
+            LOG.warn( "Requested address {} for {} doesn't match existing lease {}", requestedAddress,
+                hardwareAddress, lease );
+            return null;
+        }
+
+        AddressPool pool = findPool( selectionBase );
+
+        if ( ( pool == null ) || !pool.contains( lease.getClientAddress() ) )
+        {
+            LOG.warn( "Client with existing lease {} is on wrong subnet", lease );
+            return null;
+        }
+
+        long now = currentTimeMillis();
+        Host host = hosts.get( hardwareAddress );
+
+        lease.getOptions().clear();
+        setOptions( lease, pool.getSubnet(), host );
+        lease.setExpires( now + getLeaseTime( pool.getSubnet(), host, requestedLeaseTime ) );
+        lease.setState( Lease.STATE_ACTIVE );
+        schedule( record, lease.getExpires() );
+        write( lease );
+
+        return lease;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void releaseLease( Lease lease )
+    {
+        LeaseRecord record = leases.get( lease.getHardwareAddress() );
+
+        if ( record != null )
+        {
+            remove( record, Lease.STATE_RELEASED );
+        }
+
+        lease.setState( Lease.STATE_RELEASED );
+    }
+
+
+    /**
+     * @return The number of leases, whatever their state
+     */
+    public synchronized int getLeaseCount()
+    {
+        return leases.size();
+    }
+
+
+    /**
+     * Gets the free addresses count of the subnet containing an address
+     *
+     * @param address The address
+     * @return The number of free addresses, or -1 if there is no subnet for this address
+     */
+    public synchronized int getFreeCount( InetAddress address )
+    {
+        AddressPool pool = findPool( address );
+
+        return ( pool == null ) ? -1 : pool.getFreeCount();
+    }
+
+
+    /**
+     * Expires the leases whose deadline has passed, and gives their address back to the pool
+     */
+    public synchronized void expireLeases()
+    {
+        if ( timerWheel == null )
+        {
+            return;
+        }
+
+        List<LeaseRecord> expired = timerWheel.expire( currentTimeMillis() );
+
+        for ( LeaseRecord record : expired )
+        {
+            // The timeout has been replaced if the lease has been renewed
+            if ( leases.get( record.lease.getHardwareAddress() ) == record )
+            {
+                LOG.debug( "The lease {} has expired", record.lease );
+                remove( record, Lease.STATE_EXPIRED );
+            }
+        }
+    }
+
+
+    /**
+     * @return The current time, in ms
+     */
+    protected long currentTimeMillis()
+    {
+        return System.currentTimeMillis();
+    }
+
+
+    /**
+     * Restores a stored lease, if it has not expired
+     */
+    private boolean restore( Lease lease, long now )
+    {
+        if ( ( lease.getExpires() <= now ) || ( lease.getState() == Lease.STATE_RELEASED )
+            || ( lease.getState() == Lease.STATE_EXPIRED ) )
+        {
+            return false;
+        }
+
+        AddressPool pool = findPool( lease.getClientAddress() );
+
+        if ( pool == null )
+        {
+            LOG.warn( "The stored lease {} does not belong to a known subnet", lease );
+            return false;
+        }
+
+        boolean designated = hosts.containsKey( lease.getHardwareAddress() );
+
+        if ( !designated && !pool.reserve( lease.getClientAddress() ) && pool.isInRange( lease.getClientAddress() ) )
+        {
+            LOG.warn( "The address of the stored lease {} is already used", lease );
+            return false;
+        }
+
+        LeaseRecord record = new LeaseRecord( lease, designated ? null : pool );
+        leases.put( lease.getHardwareAddress(), record );
+        schedule( record, lease.getExpires() );
+
+        return true;
+    }
+
+
+    /**
+     * Removes a lease, and gives its address back to the pool
+     */
+    private void remove( LeaseRecord record, int state )
+    {
+        leases.remove( record.lease.getHardwareAddress() );
+
+        if ( record.timeout != null )
+        {
+            record.timeout.cancel();
+        }
+
+        if ( record.pool != null )
+        {
+            record.pool.release( record.lease.getClientAddress() );
+        }
+
+        record.lease.setState( state );
+        write( record.lease );
+    }
+
+
+    /**
+     * Replaces the expiration timeout of a lease
+     */
+    private void schedule( LeaseRecord record, long deadline )
+    {
+        if ( record.timeout != null )
+        {
+            record.timeout.cancel();
+        }
+
+        if ( timerWheel != null )
+        {
+            record.timeout = timerWheel.schedule( record, deadline );
+        }
+    }
+
+
+    /**
+     * Finds the pool of the subnet containing an address
+     */
+    private AddressPool findPool( InetAddress address )
+    {
+        if ( address == null )
+        {
+            return null;
+        }
+
+        int intAddress = 0;
+
+        try
+        {
+            intAddress = AddressPool.toInt( address );
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            return null;
+        }
+
+        for ( int netmask : netmasks )
+        {
+            AddressPool pool = pools.get( poolKey( netmask, intAddress & netmask ) );
+
+            if ( pool != null )
+            {
+                return pool;
+            }
+        }
+
+        return null;
+    }
+
+
+    private static Long poolKey( int netmask, int network )
+    {
+        return ( ( long ) netmask << 32 ) | ( network & 0xFFFFFFFFL );
+    }
+
+
+    /**
+     * Sets the options of a lease : the subnet ones, overridden by the host ones
+     */
+    private void setOptions( Lease lease, Subnet subnet, Host host )
+    {
+        OptionsField o = lease.getOptions();
+
+        if ( host != null )
+        {
+            o.add( new HostName( host.getName() ) );
+        }
+
+        o.add( new SubnetMask( subnet.getNetmask() ) );
+        o.merge( subnet.getOptions() );
+
+        if ( host != null )
+        {
+            o.merge( host.getOptions() );
+        }
+    }
+
+
+    /**
+     * Determines the lease time, based on the time requested by the client and the
+     * maximum lease time of the host, or of the subnet.
+     */
+    private long getLeaseTime( Subnet subnet, Host host, long requestedLeaseTime )
+    {
+        long maxLeaseTime = subnetLeaseTimes.get( subnet );
+
+        if ( host != null )
+        {
+            maxLeaseTime = getLeaseTime( host, maxLeaseTime );
+        }
+
+        if ( requestedLeaseTime > 0 )
+        {
+            return Math.min( maxLeaseTime, requestedLeaseTime );
+        }
+
+        return maxLeaseTime;
+    }
+
+
+    /**
+     * Reads the maximum lease time of a configuration element
+     */
+    private static long getLeaseTime( DhcpConfigElement element, long defaultLeaseTime )
+    {
+        Integer maxLeaseTime = ( Integer ) element.getProperties().get( DhcpConfigElement.PROPERTY_MAX_LEASE_TIME );
+
+        return ( maxLeaseTime != null ) ? maxLeaseTime.intValue() * 1000L : defaultLeaseTime;
+    }
+
+
+    /**
+     * Queues a copy of a lease, to be written by the background thread. Only the last
+     * change of each client is written.
+     */
+    private void write( Lease lease )
+    {
+        if ( persister == null )
+        {
+            return;
+        }
+
+        Lease copy = new Lease();
+        copy.setHardwareAddress( lease.getHardwareAddress() );
+        copy.setClientAddress( lease.getClientAddress() );
+        copy.setState( lease.getState() );
+        copy.setAcquired( lease.getAcquired() );
+        copy.setExpires( lease.getExpires() );
+        copy.getOptions().merge( lease.getOptions() );
+
+        synchronized ( pendingWrites )
+        {
+            pendingWrites.remove( lease.getHardwareAddress() );
+            pendingWrites.put( lease.getHardwareAddress(), copy );
+        }
+    }
+
+
+    /**
+     * Writes the pending lease changes
+     */
+    private void flush()
+    {
+        if ( persister == null )
+        {
+            return;
+        }
+
+        List<Lease> changes = null;
+
+        synchronized ( pendingWrites )
+        {
+            if ( pendingWrites.isEmpty() )
+            {
+                return;
+            }
+
+            changes = new ArrayList<Lease>( pendingWrites.values() );
+            pendingWrites.clear();
+        }
+
+        for ( Lease lease : changes )
+        {
+            try
+            {
+                if ( ( lease.getState() == Lease.STATE_RELEASED ) || ( lease.getState() == Lease.STATE_EXPIRED ) )
+                {
+                    persister.remove( lease.getHardwareAddress() );
+                }
+                else
+                {
+                    persister.store( lease );
+                }
+            }
+            catch ( DhcpException de )
+            {
+                LOG.error( "Failed to store the lease {}", lease, de );
+            }
+        }
+
+        LOG.debug( "{} lease changes stored", changes.size() );
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.dhcp.store;
+
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * A hashed timer wheel. The timeouts are stored in slots covering a tick each, the
+ * slot of a timeout being the first tick after its deadline, modulo the number of
+ * slots : scheduling or cancelling a timeout is done in constant time, and expiring
+ * them only visits the slots of the elapsed ticks. A timeout whose deadline is more than a wheel
+ * rotation away stays in its slot until the rotation in which it's due.<br>
+ * A cancelled timeout is only removed when its slot is visited. This class is not
+ * thread safe.
+ *
+ * @param <T> The type of elements attached to the timeouts
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class TimerWheel<T>
+{
+    /**
+     * A scheduled timeout
+     *
+     * @param <T> The type of element attached to the timeout
+     */
+    static class Timeout<T>
+    {
+        /** The element */
+        private final T element;
+
+        /** The deadline, in ms */
+        private final long deadline;
+
+        /** Tells if the timeout has been cancelled */
+        private boolean cancelled;
+
+
+        private Timeout( T element, long deadline )
+        {
+            this.element = element;
+            this.deadline = deadline;
+        }
+
+
+        /**
+         * Cancels the timeout
+         */
+        void cancel()
+        {
+            cancelled = true;
+        }
+
+
+        /**
+         * @return The deadline, in ms
+         */
+        long getDeadline()
+        {
+            return deadline;
+        }
+    }
+
+    /** The duration of a tick, in ms */
+    private final long tickDuration;
+
+    /** The slots */
+    private final List<Timeout<T>>[] slots;
+
+    /** The last visited tick */
+    private long lastTick;
+
+    /** The number of timeouts in the wheel, including the cancelled ones */
+    private int size;
+
+
+    /**
+     * Creates a new instance of TimerWheel.
+     *
+     * @param tickDuration The duration of a tick, in ms
+     * @param nbSlots The number of slots
+     * @param now The current time, in ms
+     */
+    @SuppressWarnings("unchecked")
+    TimerWheel( long tickDuration, int nbSlots, long now )
+    {
+        this.tickDuration = tickDuration;
+        slots = new List[nbSlots];
+
+        for ( int i = 0; i < nbSlots; i++ )
+        {
+            slots[i] = new ArrayList<Timeout<T>>();
+        }
+
+        lastTick = now / tickDuration;
+    }
+
+
+    /**
+     * Schedules a timeout. A deadline in the past expires at the next tick.
+     *
+     * @param element The element attached to the timeout
+     * @param deadline The deadline, in ms
+     * @return The timeout, which can be cancelled
+     */
+    Timeout<T> schedule( T element, long deadline )
+    {
+        Timeout<T> timeout = new Timeout<T>( element, deadline );
+
+        // The first tick starting after the deadline
+        long tick = Math.max( ( deadline + tickDuration - 1 ) / tickDuration, lastTick + 1 );
+
+        slots[( int ) ( tick % slots.length )].add( timeout );
+        size++;
+
+        return timeout;
+    }
+
+
+    /**
+     * Removes the timeouts which have expired since the last call
+     *
+     * @param now The current time, in ms
+     * @return The elements of the expired timeouts, in no particular order
+     */
+    List<T> expire( long now )
+    {
+        List<T> expired = new ArrayList<T>();
+        long nowTick = now / tickDuration;
+
+        if ( nowTick <= lastTick )
+        {
+            return expired;
+        }
+
+        // Don't visit a slot twice if we are late by more than a rotation
+        long firstTick = Math.max( lastTick + 1, nowTick - slots.length + 1 );
+
+        for ( long tick = firstTick; tick <= nowTick; tick++ )
+        {
+            Iterator<Timeout<T>> timeouts = slots[( int ) ( tick % slots.length )].iterator();
+
+            while ( timeouts.hasNext() )
+            {
+                Timeout<T> timeout = timeouts.next();
+
+                if ( timeout.cancelled )
+                {
+                    timeouts.remove();
+                    size--;
+                }
+                else if ( timeout.deadline <= now )
+                {
+                    timeouts.remove();
+                    size--;
+                    expired.add( timeout.element );
+                }
+            }
+        }
+
+        lastTick = nowTick;
+
+        return expired;
+    }
+
+
+    /**
+     * @return The number of timeouts in the wheel, including the cancelled ones
+     * which have not been removed yet
+     */
+    int size()
+    {
+        return size;
+    }
+}
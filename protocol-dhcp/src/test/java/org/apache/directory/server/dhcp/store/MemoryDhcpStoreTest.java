@@ -0,0 +1,308 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.dhcp.store;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.directory.server.dhcp.messages.HardwareAddress;
+import org.apache.directory.server.dhcp.service.Lease;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests for the MemoryDhcpStore.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MemoryDhcpStoreTest
+{
+    /** The store, with a clock we control */
+    private TestStore store;
+
+    /** The stored leases */
+    private Map<HardwareAddress, Lease> stored;
+
+    private InetAddress selectionBase;
+
+
+    private static class TestStore extends MemoryDhcpStore
+    {
+        private long now = 1000000L;
+
+
+        @Override
+        protected long currentTimeMillis()
+        {
+            return now;
+        }
+    }
+
+
+    private class TestPersister implements LeasePersister
+    {
+        public List<Lease> load()
+        {
+            return new ArrayList<Lease>( stored.values() );
+        }
+
+
+        public void store( Lease lease )
+        {
+            stored.put( lease.getHardwareAddress(), lease );
+        }
+
+
+        public void remove( HardwareAddress hardwareAddress )
+        {
+            stored.remove( hardwareAddress );
+        }
+    }
+
+
+    @Before
+    public void init() throws Exception
+    {
+        stored = new HashMap<HardwareAddress, Lease>();
+        selectionBase = InetAddress.getByName( "192.168.0.1" );
+        store = createStore();
+    }
+
+
+    @After
+    public void shutdown()
+    {
+        store.stop();
+    }
+
+
+    private TestStore createStore() throws Exception
+    {
+        TestStore testStore = new TestStore();
+        testStore.addSubnet( new Subnet( InetAddress.getByName( "192.168.0.0" ),
+            InetAddress.getByName( "255.255.255.0" ), InetAddress.getByName( "192.168.0.10" ),
+            InetAddress.getByName( "192.168.0.19" ) ) );
+        testStore.addSubnet( new Subnet( InetAddress.getByName( "10.0.0.0" ),
+            InetAddress.getByName( "255.0.0.0" ), null, null ) );
+        testStore.setPersister( new TestPersister() );
+        testStore.setOfferTimeout( 10000L );
+        testStore.start();
+
+        return testStore;
+    }
+
+
+    private HardwareAddress mac( int i )
+    {
+        return new HardwareAddress( ( short ) 1, ( short ) 6, new byte[]
+            { 0, 1, 2, 3, 4, ( byte ) i } );
+    }
+
+
+    @Test
+    public void testAllocateUntilExhausted() throws Exception
+    {
+        Set<InetAddress> addresses = new HashSet<InetAddress>();
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            Lease lease = store.getLeaseOffer( mac( i ), null, selectionBase, -1, null );
+            assertEquals( Lease.STATE_OFFERED, lease.getState() );
+            assertTrue( addresses.add( lease.getClientAddress() ) );
+        }
+
+        assertNull( store.getLeaseOffer( mac( 10 ), null, selectionBase, -1, null ) );
+        assertEquals( 0, store.getFreeCount( selectionBase ) );
+
+        // Offering again to the same client gives the same address
+        assertEquals( store.getLeaseOffer( mac( 3 ), null, selectionBase, -1, null ).getClientAddress(),
+            store.getLeaseOffer( mac( 3 ), null, selectionBase, -1, null ).getClientAddress() );
+
+        // The other subnet is found by its own netmask
+        Lease lease = store.getLeaseOffer( mac( 10 ), null, InetAddress.getByName( "10.1.2.3" ), -1, null );
+        assertEquals( InetAddress.getByName( "10.0.0.1" ), lease.getClientAddress() );
+    }
+
+
+    @Test
+    public void testRequestedAddress() throws Exception
+    {
+        InetAddress requested = InetAddress.getByName( "192.168.0.15" );
+
+        assertEquals( requested, store.getLeaseOffer( mac( 1 ), requested, selectionBase, -1, null )
+            .getClientAddress() );
+
+        // Already allocated, another one is given
+        Lease lease = store.getLeaseOffer( mac( 2 ), requested, selectionBase, -1, null );
+        assertFalse( requested.equals( lease.getClientAddress() ) );
+
+        // Out of range, the next free address is given
+        lease = store.getLeaseOffer( mac( 3 ), InetAddress.getByName( "192.168.0.100" ), selectionBase, -1, null );
+        assertEquals( InetAddress.getByName( "192.168.0.17" ), lease.getClientAddress() );
+    }
+
+
+    @Test
+    public void testOfferTimeout() throws Exception
+    {
+        Lease offered = store.getLeaseOffer( mac( 1 ), null, selectionBase, -1, null );
+        store.getLeaseOffer( mac( 2 ), null, selectionBase, -1, null );
+
+        // The first client requests its lease, the second one never comes back
+        Lease active = store.getExistingLease( mac( 1 ), offered.getClientAddress(), selectionBase, 120000L, null );
+        assertNotNull( active );
+        assertEquals( Lease.STATE_ACTIVE, active.getState() );
+        assertEquals( store.now + 120000L, active.getExpires() );
+        assertEquals( 8, store.getFreeCount( selectionBase ) );
+
+        store.now += 11000L;
+        store.expireLeases();
+
+        assertEquals( 1, store.getLeaseCount() );
+        assertEquals( 9, store.getFreeCount( selectionBase ) );
+
+        // The active lease expires too
+        store.now += 110000L;
+        store.expireLeases();
+
+        assertEquals( 0, store.getLeaseCount() );
+        assertEquals( 10, store.getFreeCount( selectionBase ) );
+        assertEquals( Lease.STATE_EXPIRED, active.getState() );
+        assertNull( store.getExistingLease( mac( 1 ), offered.getClientAddress(), selectionBase, -1, null ) );
+    }
+
+
+    @Test
+    public void testRenewal() throws Exception
+    {
+        Lease lease = store.getLeaseOffer( mac( 1 ), null, selectionBase, -1, null );
+        store.getExistingLease( mac( 1 ), lease.getClientAddress(), selectionBase, 60000L, null );
+
+        // Renew before the expiration
+        store.now += 50000L;
+        store.getExistingLease( mac( 1 ), lease.getClientAddress(), selectionBase, 60000L, null );
+
+        store.now += 50000L;
+        store.expireLeases();
+        assertEquals( 1, store.getLeaseCount() );
+
+        store.now += 20000L;
+        store.expireLeases();
+        assertEquals( 0, store.getLeaseCount() );
+    }
+
+
+    @Test
+    public void testRelease() throws Exception
+    {
+        Lease lease = store.getLeaseOffer( mac( 1 ), null, selectionBase, -1, null );
+        assertEquals( 9, store.getFreeCount( selectionBase ) );
+
+        store.releaseLease( lease );
+
+        assertEquals( Lease.STATE_RELEASED, lease.getState() );
+        assertEquals( 0, store.getLeaseCount() );
+        assertEquals( 10, store.getFreeCount( selectionBase ) );
+    }
+
+
+    @Test
+    public void testDesignatedHost() throws Exception
+    {
+        InetAddress hostAddress = InetAddress.getByName( "192.168.0.12" );
+        store.addHost( new Host( "printer", hostAddress, mac( 42 ) ) );
+
+        assertEquals( 9, store.getFreeCount( selectionBase ) );
+
+        for ( int i = 0; i < 9; i++ )
+        {
+            assertFalse( hostAddress.equals( store.getLeaseOffer( mac( i ), null, selectionBase, -1, null )
+                .getClientAddress() ) );
+        }
+
+        Lease lease = store.getLeaseOffer( mac( 42 ), null, selectionBase, -1, null );
+        assertEquals( hostAddress, lease.getClientAddress() );
+
+        // The designated address is not given back to the pool
+        store.releaseLease( lease );
+        assertEquals( 0, store.getFreeCount( selectionBase ) );
+    }
+
+
+    @Test
+    public void testPersistence() throws Exception
+    {
+        Lease lease1 = store.getLeaseOffer( mac( 1 ), null, selectionBase, -1, null );
+        store.getExistingLease( mac( 1 ), lease1.getClientAddress(), selectionBase, -1, null );
+        Lease lease2 = store.getLeaseOffer( mac( 2 ), null, selectionBase, -1, null );
+        Lease lease3 = store.getLeaseOffer( mac( 3 ), null, selectionBase, -1, null );
+        store.releaseLease( lease3 );
+
+        store.stop();
+
+        assertEquals( 2, stored.size() );
+        assertEquals( Lease.STATE_ACTIVE, stored.get( mac( 1 ) ).getState() );
+        assertEquals( Lease.STATE_OFFERED, stored.get( mac( 2 ) ).getState() );
+
+        // The leases are restored, and their addresses are not available anymore
+        store = createStore();
+
+        assertEquals( 2, store.getLeaseCount() );
+        assertEquals( 8, store.getFreeCount( selectionBase ) );
+        assertEquals( lease1.getClientAddress(), store.getExistingLease( mac( 1 ), lease1.getClientAddress(),
+            selectionBase, -1, null ).getClientAddress() );
+        assertEquals( lease2.getClientAddress(), store.getLeaseOffer( mac( 2 ), null, selectionBase, -1, null )
+            .getClientAddress() );
+    }
+
+
+    @Test
+    public void testTimerWheel()
+    {
+        TimerWheel<String> wheel = new TimerWheel<String>( 1000L, 8, 0L );
+
+        wheel.schedule( "a", 2500L );
+        wheel.schedule( "b", 20500L );
+        wheel.schedule( "c", 2999L ).cancel();
+
+        assertTrue( wheel.expire( 2000L ).isEmpty() );
+        assertEquals( "[a]", wheel.expire( 3000L ).toString() );
+        assertEquals( 1, wheel.size() );
+
+        // The second timeout is more than a rotation away
+        assertTrue( wheel.expire( 19000L ).isEmpty() );
+        assertEquals( "[b]", wheel.expire( 21000L ).toString() );
+        assertEquals( 0, wheel.size() );
+    }
+}
@@ -174,14 +174,14 @@ public class DnsMessageDecoder
 
     static String getDomainName( IoBuffer byteBuffer )
     {
-        StringBuffer domainName = new StringBuffer();
+        StringBuilder domainName = new StringBuilder();
         recurseDomainName( byteBuffer, domainName );
 
         return domainName.toString();
     }
 
 
-    static void recurseDomainName( IoBuffer byteBuffer, StringBuffer domainName )
+    static void recurseDomainName( IoBuffer byteBuffer, StringBuilder domainName )
     {
         int length = byteBuffer.getUnsigned();
 
@@ -217,7 +217,7 @@ public class DnsMessageDecoder
     }
 
 
-    static void getLabel( IoBuffer byteBuffer, StringBuffer domainName, int labelLength )
+    static void getLabel( IoBuffer byteBuffer, StringBuilder domainName, int labelLength )
     {
         for ( int jj = 0; jj < labelLength; jj++ )
         {
@@ -227,7 +227,7 @@ public class DnsMessageDecoder
 
         if ( byteBuffer.get( byteBuffer.position() ) != 0 )
         {
-            domainName.append( "." );
+            domainName.append( '.' );
         }
     }
 
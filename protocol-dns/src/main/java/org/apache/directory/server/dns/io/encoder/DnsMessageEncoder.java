@@ -24,7 +24,6 @@ package org.apache.directory.server.dns.io.encoder;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -75,6 +74,9 @@ public class DnsMessageEncoder
         DEFAULT_ENCODERS = Collections.unmodifiableMap( map );
     }
 
+    /** The question encoder, which is stateless */
+    private static final QuestionRecordEncoder QUESTION_ENCODER = new QuestionRecordEncoder();
+
 
     /**
      * Encodes the {@link DnsMessage} into the {@link IoBuffer}.
@@ -121,14 +123,9 @@ public class DnsMessageEncoder
             return;
         }
 
-        QuestionRecordEncoder encoder = new QuestionRecordEncoder();
-
-        Iterator<QuestionRecord> it = questions.iterator();
-
-        while ( it.hasNext() )
+        for ( QuestionRecord question : questions )
         {
-            QuestionRecord question = it.next();
-            encoder.put( byteBuffer, question );
+            QUESTION_ENCODER.put( byteBuffer, question );
         }
     }
 
@@ -140,12 +137,8 @@ public class DnsMessageEncoder
             return;
         }
 
-        Iterator<ResourceRecord> it = records.iterator();
-
-        while ( it.hasNext() )
+        for ( ResourceRecord record : records )
         {
-            ResourceRecord record = it.next();
-
             try
             {
                 put( byteBuffer, record );
@@ -21,7 +21,6 @@
 package org.apache.directory.server.dns.io.encoder;
 
 
-import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.dns.messages.QuestionRecord;
 import org.apache.directory.server.dns.messages.RecordClass;
 import org.apache.directory.server.dns.messages.RecordType;
@@ -41,36 +40,12 @@ public class QuestionRecordEncoder
      */
     public void put( IoBuffer out, QuestionRecord question )
     {
-        encodeDomainName( out, question.getDomainName() );
+        ResourceRecordEncoder.encodeDomainName( out, question.getDomainName() );
         encodeRecordType( out, question.getRecordType() );
         encodeRecordClass( out, question.getRecordClass() );
     }
 
 
-    private void encodeDomainName( IoBuffer byteBuffer, String domainName )
-    {
-        if ( !Strings.isEmpty( domainName ) )
-        {
-            String[] labels = domainName.split( "\\." );
-        
-
-            for ( String label : labels )
-            {
-                byteBuffer.put( ( byte ) label.length() );
-    
-                char[] characters = label.toCharArray();
-                
-                for ( char c : characters )
-                {
-                    byteBuffer.put( ( byte ) c );
-                }
-            }
-        }
-
-        byteBuffer.put( ( byte ) 0x00 );
-    }
-
-
     private void encodeRecordType( IoBuffer byteBuffer, RecordType recordType )
     {
         byteBuffer.putShort( recordType.convert() );
@@ -80,22 +80,45 @@ public abstract class ResourceRecordEncoder implements RecordEncoder
      * @param domainName the domain name to encode
      */
     protected void putDomainName( IoBuffer byteBuffer, String domainName )
+    {
+        encodeDomainName( byteBuffer, domainName );
+    }
+
+
+    /**
+     * Encodes a domain name as a series of labels terminated by a zero length label,
+     * without splitting it first.
+     *
+     * @param byteBuffer the ByteBuffer to encode the domain name into
+     * @param domainName the domain name to encode
+     */
+    static void encodeDomainName( IoBuffer byteBuffer, String domainName )
     {
         if ( !Strings.isEmpty( domainName ) )
         {
-            String[] labels = domainName.split( "\\." );
-        
+            // The trailing dots are ignored
+            int end = domainName.length();
 
-            for ( String label : labels )
+            while ( ( end > 0 ) && ( domainName.charAt( end - 1 ) == '.' ) )
             {
-                byteBuffer.put( ( byte ) label.length() );
-    
-                char[] characters = label.toCharArray();
-                
-                for ( char c : characters )
+                end--;
+            }
+
+            int start = 0;
+
+            while ( start < end )
+            {
+                int dot = domainName.indexOf( '.', start );
+                int labelEnd = ( ( dot < 0 ) || ( dot > end ) ) ? end : dot;
+
+                byteBuffer.put( ( byte ) ( labelEnd - start ) );
+
+                for ( int ii = start; ii < labelEnd; ii++ )
                 {
-                    byteBuffer.put( ( byte ) c );
+                    byteBuffer.put( ( byte ) domainName.charAt( ii ) );
                 }
+
+                start = labelEnd + 1;
             }
         }
 
@@ -127,11 +150,9 @@ public abstract class ResourceRecordEncoder implements RecordEncoder
     {
         byteBuffer.put( ( byte ) characterString.length() );
 
-        char[] characters = characterString.toCharArray();
-
-        for ( int ii = 0; ii < characters.length; ii++ )
+        for ( int ii = 0; ii < characterString.length(); ii++ )
         {
-            byteBuffer.put( ( byte ) characters[ii] );
+            byteBuffer.put( ( byte ) characterString.charAt( ii ) );
         }
     }
 }
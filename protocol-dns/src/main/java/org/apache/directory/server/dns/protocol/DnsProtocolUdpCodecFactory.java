@@ -34,6 +34,12 @@ public final class DnsProtocolUdpCodecFactory implements ProtocolCodecFactory
 {
     private static final DnsProtocolUdpCodecFactory INSTANCE = new DnsProtocolUdpCodecFactory();
 
+    /** The encoder, which is stateless and shared by all the sessions */
+    private static final DnsUdpEncoder ENCODER = new DnsUdpEncoder();
+
+    /** The decoder, which is stateless and shared by all the sessions */
+    private static final DnsUdpDecoder DECODER = new DnsUdpDecoder();
+
 
     /**
      * Returns the singleton instance of {@link DnsProtocolUdpCodecFactory}.
@@ -54,14 +60,12 @@ public final class DnsProtocolUdpCodecFactory implements ProtocolCodecFactory
 
     public ProtocolEncoder getEncoder( IoSession session )
     {
-        // Create a new encoder.
-        return new DnsUdpEncoder();
+        return ENCODER;
     }
 
 
     public ProtocolDecoder getDecoder( IoSession session )
     {
-        // Create a new decoder.
-        return new DnsUdpDecoder();
+        return DECODER;
     }
 }
@@ -32,17 +32,26 @@ import org.apache.mina.filter.codec.ProtocolEncoderOutput;
 /**
  * A ProtocolEncoder for use in the MINA framework that uses the 
  * DnsMessageEncoder to encode DnsMessages.
+ * <br>
+ * Each message is encoded directly in the buffer handed to MINA, which owns it until
+ * it's sent. The buffer is sized for the usual UDP DNS message, and only grows for
+ * the larger responses. The encoder is stateless, and can be shared by all the sessions.
  * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 public class DnsUdpEncoder extends ProtocolEncoderAdapter
 {
+    /** The initial size of the encoding buffers, the maximum size of a UDP DNS message */
+    private static final int ENCODING_BUFFER_SIZE = 512;
+
     private DnsMessageEncoder encoder = new DnsMessageEncoder();
 
 
     public void encode( IoSession session, Object message, ProtocolEncoderOutput out )
     {
-        IoBuffer buf = IoBuffer.allocate( 1024 );
+        IoBuffer buf = IoBuffer.allocate( ENCODING_BUFFER_SIZE );
+        buf.setAutoExpand( true );
+
         encoder.encode( buf, ( DnsMessage ) message );
 
         buf.flip();
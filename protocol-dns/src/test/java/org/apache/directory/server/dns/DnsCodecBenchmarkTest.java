@@ -0,0 +1,118 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.dns;
+
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.directory.server.dns.io.decoder.DnsMessageDecoder;
+import org.apache.directory.server.dns.io.encoder.DnsMessageEncoder;
+import org.apache.directory.server.dns.messages.DnsMessage;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Tests the DNS message codec round trip : a query is decoded and a response is
+ * encoded, the way the UDP service does for each datagram. The benchmark loop is
+ * ignored by default.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DnsCodecBenchmarkTest extends AbstractDnsTestCase
+{
+    /** the log for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( DnsCodecBenchmarkTest.class );
+
+    /** The number of round trips of the benchmark */
+    private static final int NB_ITERATIONS = 100000;
+
+    private DnsMessageEncoder encoder = new DnsMessageEncoder();
+
+    private DnsMessageDecoder decoder = new DnsMessageDecoder();
+
+
+    /**
+     * Decodes the query, and encodes the response in the given buffer
+     */
+    private void roundTrip( IoBuffer queryBuffer, DnsMessage query, IoBuffer responseBuffer, DnsMessage response )
+        throws Exception
+    {
+        queryBuffer.rewind();
+        DnsMessage decoded = decoder.decode( queryBuffer );
+        assertEquals( query.getTransactionId(), decoded.getTransactionId() );
+
+        responseBuffer.clear();
+        encoder.encode( responseBuffer, response );
+    }
+
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        DnsMessage query = getTestMxQuery();
+        DnsMessage response = getTestMxResponse();
+
+        IoBuffer queryBuffer = IoBuffer.allocate( MINIMUM_DNS_DATAGRAM_SIZE );
+        encoder.encode( queryBuffer, query );
+        queryBuffer.flip();
+
+        IoBuffer responseBuffer = IoBuffer.allocate( MINIMUM_DNS_DATAGRAM_SIZE );
+        roundTrip( queryBuffer, query, responseBuffer, response );
+
+        responseBuffer.flip();
+        DnsMessage decoded = decoder.decode( responseBuffer );
+
+        assertEquals( response.getTransactionId(), decoded.getTransactionId() );
+        assertEquals( response.getQuestionRecords(), decoded.getQuestionRecords() );
+        assertEquals( response.getAnswerRecords().size(), decoded.getAnswerRecords().size() );
+        assertEquals( response.getAuthorityRecords().size(), decoded.getAuthorityRecords().size() );
+        assertEquals( response.getAdditionalRecords().size(), decoded.getAdditionalRecords().size() );
+    }
+
+
+    @Test
+    @Ignore
+    public void testRoundTripPerf() throws Exception
+    {
+        DnsMessage query = getTestMxQuery();
+        DnsMessage response = getTestMxResponse();
+
+        IoBuffer queryBuffer = IoBuffer.allocate( MINIMUM_DNS_DATAGRAM_SIZE );
+        encoder.encode( queryBuffer, query );
+        queryBuffer.flip();
+
+        IoBuffer responseBuffer = IoBuffer.allocate( MINIMUM_DNS_DATAGRAM_SIZE );
+
+        long t0 = System.nanoTime();
+
+        for ( int i = 0; i < NB_ITERATIONS; i++ )
+        {
+            roundTrip( queryBuffer, query, responseBuffer, response );
+        }
+
+        long t1 = System.nanoTime();
+
+        LOG.debug( "{} DNS round trips per second", NB_ITERATIONS * 1000000000L / Math.max( 1L, t1 - t0 ) );
+    }
+}
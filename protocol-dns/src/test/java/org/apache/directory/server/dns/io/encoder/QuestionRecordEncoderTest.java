@@ -74,4 +74,13 @@ public class QuestionRecordEncoderTest
         encoder.put( out, record );
         assertEquals( expectedData, out );
     }
+
+
+    @Test
+    public void testEncodeFullyQualifiedName()
+    {
+        IoBuffer out = IoBuffer.allocate( 128 );
+        encoder.put( out, new QuestionRecord( name + ".", type, rClass ) );
+        assertEquals( expectedData, out );
+    }
 }
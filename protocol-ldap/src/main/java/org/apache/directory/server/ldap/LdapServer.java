@@ -27,6 +27,8 @@ import java.security.Provider;
 import java.security.Security;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -67,6 +69,10 @@ import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.security.CoreKeyStoreSpi;
 import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.ldap.executor.ExecutionModel;
+import org.apache.directory.server.ldap.executor.LdapExecutorFilter;
+import org.apache.directory.server.ldap.executor.LdapRequestExecutor;
+import org.apache.directory.server.ldap.executor.OperationClass;
 import org.apache.directory.server.ldap.handlers.LdapRequestHandler;
 import org.apache.directory.server.ldap.handlers.LdapResponseHandler;
 import org.apache.directory.server.ldap.handlers.extended.StartTlsHandler;
@@ -105,12 +111,9 @@ import org.apache.mina.core.filterchain.DefaultIoFilterChainBuilder;
 import org.apache.mina.core.filterchain.IoFilterChainBuilder;
 import org.apache.mina.core.future.WriteFuture;
 import org.apache.mina.core.service.IoHandler;
-import org.apache.mina.core.session.IoEventType;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFactory;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
-import org.apache.mina.filter.executor.ExecutorFilter;
-import org.apache.mina.filter.executor.UnorderedThreadPoolExecutor;
 import org.apache.mina.handler.demux.MessageHandler;
 import org.apache.mina.transport.socket.AbstractSocketSessionConfig;
 import org.apache.mina.transport.socket.SocketAcceptor;
@@ -258,6 +261,19 @@ public class LdapServer extends DirectoryBackedService
     /** the time interval between subsequent pings to each replication provider */
     private int pingerSleepTime;
 
+    /** The way the requests are executed */
+    private ExecutionModel executionModel = ExecutionModel.SHARED_POOL;
+
+    /** The size of the pools per operation class, the transport number of threads by default */
+    private Map<OperationClass, Integer> operationPoolSizes = new EnumMap<OperationClass, Integer>(
+        OperationClass.class );
+
+    /** The capacity of the queue of the pools per operation class */
+    private int operationQueueSize = LdapRequestExecutor.DEFAULT_QUEUE_SIZE;
+
+    /** The request executors, one per transport */
+    private List<LdapRequestExecutor> requestExecutors = new ArrayList<LdapRequestExecutor>();
+
     /** the list of cipher suites to be used in LDAPS and StartTLS */
     @Deprecated
     private List<String> enabledCipherSuites = new ArrayList<String>();
@@ -519,11 +535,13 @@ public class LdapServer extends DirectoryBackedService
             ( ( DefaultIoFilterChainBuilder ) chain ).addLast( "codec", new ProtocolCodecFilter( this
                 .getProtocolCodecFactory() ) );
 
-            // Now inject an ExecutorFilter for the write operations
-            // We use the same number of thread than the number of IoProcessor
+            // Now inject the filter executing the requests out of the IoProcessor threads
+            // The shared pool has the same number of thread than the number of IoProcessor
             // (NOTE : this has to be double checked)
-            ( ( DefaultIoFilterChainBuilder ) chain ).addLast( "executor", new ExecutorFilter(
-                new UnorderedThreadPoolExecutor( transport.getNbThreads() ), IoEventType.MESSAGE_RECEIVED ) );
+            LdapRequestExecutor requestExecutor = new LdapRequestExecutor( executionModel,
+                transport.getNbThreads(), operationPoolSizes, operationQueueSize );
+            requestExecutors.add( requestExecutor );
+            ( ( DefaultIoFilterChainBuilder ) chain ).addLast( "executor", new LdapExecutorFilter( requestExecutor ) );
 
             /*
             // Trace all the incoming and outgoing message to the console
@@ -643,6 +661,13 @@ public class LdapServer extends DirectoryBackedService
             LOG.warn( "Failed to sent NoD.", e );
         }
 
+        for ( LdapRequestExecutor requestExecutor : requestExecutors )
+        {
+            requestExecutor.shutdown();
+        }
+
+        requestExecutors.clear();
+
         started = false;
         LOG.info( "Ldap service stopped." );
     }
@@ -1763,6 +1788,71 @@ public class LdapServer extends DirectoryBackedService
     }
 
 
+    /**
+     * @return The way the requests are executed
+     */
+    public ExecutionModel getExecutionModel()
+    {
+        return executionModel;
+    }
+
+
+    /**
+     * Sets the way the requests are executed. Takes effect when the server is started.
+     *
+     * @param executionModel The execution model
+     */
+    public void setExecutionModel( ExecutionModel executionModel )
+    {
+        this.executionModel = executionModel;
+    }
+
+
+    /**
+     * Sets the number of threads of an operation class pool, used when the execution
+     * model is {@link ExecutionModel#POOL_PER_OPERATION}. The default is the transport
+     * number of threads.
+     *
+     * @param operationClass The operation class
+     * @param poolSize The number of threads
+     */
+    public void setOperationPoolSize( OperationClass operationClass, int poolSize )
+    {
+        operationPoolSizes.put( operationClass, poolSize );
+    }
+
+
+    /**
+     * @return The capacity of the queue of each operation class pool
+     */
+    public int getOperationQueueSize()
+    {
+        return operationQueueSize;
+    }
+
+
+    /**
+     * Sets the capacity of the queue of each operation class pool, above which the
+     * requests are answered with a BUSY result.
+     *
+     * @param operationQueueSize The capacity of the queues
+     */
+    public void setOperationQueueSize( int operationQueueSize )
+    {
+        this.operationQueueSize = operationQueueSize;
+    }
+
+
+    /**
+     * @return The request executors, one per started transport, which give access
+     * to the queues statistics
+     */
+    public List<LdapRequestExecutor> getRequestExecutors()
+    {
+        return Collections.unmodifiableList( requestExecutors );
+    }
+
+
     /**
      * @see Object#toString()
      */
@@ -0,0 +1,45 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.executor;
+
+
+/**
+ * The ways the LDAP requests can be executed once they have been decoded.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public enum ExecutionModel
+{
+    /** All the requests are executed by a fixed pool, sized by the transport number of threads */
+    SHARED_POOL,
+
+    /**
+     * Each request is executed by its own virtual thread. Requires a JDK providing
+     * virtual threads, the shared pool is used otherwise
+     */
+    VIRTUAL_THREADS,
+
+    /**
+     * Each class of operation has its own bounded pool, so that a slow operation
+     * can't starve the others. A request which can't be queued is answered with
+     * a BUSY result
+     */
+    POOL_PER_OPERATION
+}
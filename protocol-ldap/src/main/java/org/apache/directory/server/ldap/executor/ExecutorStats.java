@@ -0,0 +1,176 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.executor;
+
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The statistics of the requests of an operation class : the number of requests
+ * waiting in the queue, being executed, completed and rejected. The counters are
+ * maintained by wrapping the tasks, so they are available whatever the executor.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ExecutorStats
+{
+    /** The operation class */
+    private final OperationClass operationClass;
+
+    /** The number of queued requests */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /** The number of requests being executed */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /** The highest number of queued requests seen */
+    private final AtomicInteger maxQueued = new AtomicInteger();
+
+    /** The number of completed requests */
+    private final AtomicLong completed = new AtomicLong();
+
+    /** The number of rejected requests */
+    private final AtomicLong rejected = new AtomicLong();
+
+
+    /**
+     * Creates a new instance of ExecutorStats.
+     *
+     * @param operationClass The operation class
+     */
+    public ExecutorStats( OperationClass operationClass )
+    {
+        this.operationClass = operationClass;
+    }
+
+
+    /**
+     * Wraps a task so that its execution is counted. The task is considered queued
+     * as soon as this method is called.
+     *
+     * @param task The task
+     * @return The wrapped task
+     */
+    Runnable wrap( final Runnable task )
+    {
+        int depth = queued.incrementAndGet();
+        int max = maxQueued.get();
+
+        while ( ( depth > max ) && !maxQueued.compareAndSet( max, depth ) )
+        {
+            max = maxQueued.get();
+        }
+
+        return new Runnable()
+        {
+            public void run()
+            {
+                queued.decrementAndGet();
+                active.incrementAndGet();
+
+                try
+                {
+                    task.run();
+                }
+                finally
+                {
+                    active.decrementAndGet();
+                    completed.incrementAndGet();
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Records a task which has been wrapped but not accepted by the executor
+     */
+    void rejected()
+    {
+        queued.decrementAndGet();
+        rejected.incrementAndGet();
+    }
+
+
+    /**
+     * @return The operation class
+     */
+    public OperationClass getOperationClass()
+    {
+        return operationClass;
+    }
+
+
+    /**
+     * @return The number of requests waiting to be executed
+     */
+    public int getQueueDepth()
+    {
+        return queued.get();
+    }
+
+
+    /**
+     * @return The highest number of requests waiting to be executed seen so far
+     */
+    public int getMaxQueueDepth()
+    {
+        return maxQueued.get();
+    }
+
+
+    /**
+     * @return The number of requests being executed
+     */
+    public int getActiveCount()
+    {
+        return active.get();
+    }
+
+
+    /**
+     * @return The number of executed requests
+     */
+    public long getCompletedCount()
+    {
+        return completed.get();
+    }
+
+
+    /**
+     * @return The number of requests which have been rejected because the queue was full
+     */
+    public long getRejectedCount()
+    {
+        return rejected.get();
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        return operationClass + " : queued=" + queued.get() + " (max " + maxQueued.get() + "), active="
+            + active.get() + ", completed=" + completed.get() + ", rejected=" + rejected.get();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.executor;
+
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
+import org.apache.directory.api.ldap.model.message.ResultResponseRequest;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A filter handing the received messages over to a {@link LdapRequestExecutor}, in
+ * place of the MINA ExecutorFilter. As with the unordered pool used before, the
+ * messages of a session are not serialized. A request which can't be queued is
+ * answered with a BUSY result, the unbind and abandon requests being processed in
+ * the IoProcessor thread instead, as they have no response.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapExecutorFilter extends IoFilterAdapter
+{
+    private static final Logger LOG = LoggerFactory.getLogger( LdapExecutorFilter.class );
+
+    /** The executor */
+    private final LdapRequestExecutor executor;
+
+
+    /**
+     * Creates a new instance of LdapExecutorFilter.
+     *
+     * @param executor The executor
+     */
+    public LdapExecutorFilter( LdapRequestExecutor executor )
+    {
+        this.executor = executor;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void messageReceived( final NextFilter nextFilter, final IoSession session, final Object message )
+        throws Exception
+    {
+        Runnable task = new Runnable()
+        {
+            public void run()
+            {
+                nextFilter.messageReceived( session, message );
+            }
+        };
+
+        try
+        {
+            executor.execute( message, task );
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            if ( message instanceof ResultResponseRequest )
+            {
+                LOG.debug( "Rejecting a request, the {} queue is full", OperationClass.classify( message ) );
+
+                ResultResponse response = ( ( ResultResponseRequest ) message ).getResultResponse();
+                response.getLdapResult().setResultCode( ResultCodeEnum.BUSY );
+                response.getLdapResult().setDiagnosticMessage( "Too many pending requests" );
+                session.write( response );
+            }
+            else
+            {
+                nextFilter.messageReceived( session, message );
+            }
+        }
+    }
+
+
+    /**
+     * @return The executor
+     */
+    public LdapRequestExecutor getExecutor()
+    {
+        return executor;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.executor;
+
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Executes the decoded LDAP requests, following an {@link ExecutionModel}. The
+ * statistics are kept per {@link OperationClass}, whatever the model.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapRequestExecutor
+{
+    private static final Logger LOG = LoggerFactory.getLogger( LdapRequestExecutor.class );
+
+    /** The default capacity of the queue of each pool, when the pools are per operation */
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    /** The model actually in use */
+    private final ExecutionModel executionModel;
+
+    /** The executors, per operation class. The same executor may be shared by several classes */
+    private final Map<OperationClass, ExecutorService> executors = new EnumMap<OperationClass, ExecutorService>(
+        OperationClass.class );
+
+    /** The statistics, per operation class */
+    private final Map<OperationClass, ExecutorStats> stats = new EnumMap<OperationClass, ExecutorStats>(
+        OperationClass.class );
+
+
+    /**
+     * Creates a new instance of LdapRequestExecutor.
+     *
+     * @param executionModel The execution model
+     * @param nbThreads The number of threads of the shared pool, and the default size of the pools per operation
+     * @param poolSizes The size of the pools per operation, may be null or incomplete
+     * @param queueSize The capacity of the queue of each pool, when the pools are per operation
+     */
+    public LdapRequestExecutor( ExecutionModel executionModel, int nbThreads,
+        Map<OperationClass, Integer> poolSizes, int queueSize )
+    {
+        ExecutionModel model = executionModel;
+        ExecutorService shared = null;
+
+        if ( model == ExecutionModel.VIRTUAL_THREADS )
+        {
+            shared = newVirtualThreadExecutor();
+
+            if ( shared == null )
+            {
+                LOG.warn( "Virtual threads are not available on this JVM, using a shared pool of {} threads",
+                    nbThreads );
+                model = ExecutionModel.SHARED_POOL;
+            }
+        }
+
+        if ( model == ExecutionModel.SHARED_POOL )
+        {
+            shared = new ThreadPoolExecutor( nbThreads, nbThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory( "ldap-request" ) );
+        }
+
+        this.executionModel = model;
+
+        for ( OperationClass operationClass : OperationClass.values() )
+        {
+            stats.put( operationClass, new ExecutorStats( operationClass ) );
+
+            if ( shared != null )
+            {
+                executors.put( operationClass, shared );
+            }
+            else
+            {
+                Integer poolSize = ( poolSizes != null ) ? poolSizes.get( operationClass ) : null;
+                int nb = ( poolSize != null ) ? poolSize : nbThreads;
+
+                // Bounded queue : the requests are rejected instead of piling up
+                executors.put( operationClass, new ThreadPoolExecutor( nb, nb, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>( queueSize ),
+                    new NamedThreadFactory( "ldap-" + operationClass.name().toLowerCase( Locale.ENGLISH ) ) ) );
+            }
+        }
+    }
+
+
+    /**
+     * Creates an executor starting a virtual thread per task, if the JVM supports it
+     *
+     * @return The executor, or null if virtual threads are not available
+     */
+    private static ExecutorService newVirtualThreadExecutor()
+    {
+        try
+        {
+            Method method = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+
+            return ( ExecutorService ) method.invoke( null );
+        }
+        catch ( Exception e )
+        {
+            return null;
+        }
+    }
+
+
+    /**
+     * Executes the processing of a message
+     *
+     * @param message The message, used to get its operation class
+     * @param task The processing
+     * @throws RejectedExecutionException If the queue of the operation class is full,
+     * or if the executor has been shut down
+     */
+    public void execute( Object message, Runnable task )
+    {
+        OperationClass operationClass = OperationClass.classify( message );
+        ExecutorStats operationStats = stats.get( operationClass );
+        Runnable wrapped = operationStats.wrap( task );
+
+        try
+        {
+            executors.get( operationClass ).execute( wrapped );
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            operationStats.rejected();
+
+            throw ree;
+        }
+    }
+
+
+    /**
+     * Stops the executors. The queued requests are still executed.
+     */
+    public void shutdown()
+    {
+        for ( ExecutorService executor : executors.values() )
+        {
+            executor.shutdown();
+        }
+    }
+
+
+    /**
+     * @return The execution model in use, which is the shared pool when virtual
+     * threads have been asked for and are not available
+     */
+    public ExecutionModel getExecutionModel()
+    {
+        return executionModel;
+    }
+
+
+    /**
+     * @param operationClass The operation class
+     * @return The statistics of the operation class
+     */
+    public ExecutorStats getStats( OperationClass operationClass )
+    {
+        return stats.get( operationClass );
+    }
+
+
+    /**
+     * @return The statistics of all the operation classes
+     */
+    public Collection<ExecutorStats> getStats()
+    {
+        return Collections.unmodifiableCollection( stats.values() );
+    }
+
+
+    /**
+     * A thread factory giving the threads a name
+     */
+    private static class NamedThreadFactory implements ThreadFactory
+    {
+        private final String prefix;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+
+        NamedThreadFactory( String prefix )
+        {
+            this.prefix = prefix;
+        }
+
+
+        public Thread newThread( Runnable runnable )
+        {
+            return new Thread( runnable, prefix + "-" + count.incrementAndGet() );
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.executor;
+
+
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncInfoValue.SyncRequestValue;
+import org.apache.directory.api.ldap.extras.extended.startTls.StartTlsRequest;
+import org.apache.directory.api.ldap.extras.extended.whoAmI.WhoAmIRequest;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.CompareRequest;
+import org.apache.directory.api.ldap.model.message.DeleteRequest;
+import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+
+
+/**
+ * The classes of operations which can be given their own pool.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public enum OperationClass
+{
+    /** The bind, unbind and abandon requests, the fast extended requests, and the session events */
+    BIND,
+
+    /** The search and compare requests */
+    SEARCH,
+
+    /** The add, delete, modify and modifyDn requests */
+    WRITE,
+
+    /** The replication consumers searches */
+    REPLICATION,
+
+    /** The extended requests which may take time, like a password modification */
+    EXTENDED;
+
+    /**
+     * Gets the class of operation of a received message
+     *
+     * @param message The message
+     * @return The operation class
+     */
+    public static OperationClass classify( Object message )
+    {
+        if ( message instanceof SearchRequest )
+        {
+            if ( ( ( SearchRequest ) message ).getControls().containsKey( SyncRequestValue.OID ) )
+            {
+                return REPLICATION;
+            }
+
+            return SEARCH;
+        }
+        else if ( message instanceof CompareRequest )
+        {
+            return SEARCH;
+        }
+        else if ( ( message instanceof AddRequest ) || ( message instanceof DeleteRequest )
+            || ( message instanceof ModifyRequest ) || ( message instanceof ModifyDnRequest ) )
+        {
+            return WRITE;
+        }
+        else if ( message instanceof ExtendedRequest )
+        {
+            return isFast( ( ( ExtendedRequest ) message ).getRequestName() ) ? BIND : EXTENDED;
+        }
+
+        return BIND;
+    }
+
+
+    /**
+     * Tells if an extended operation is processed quickly, without accessing the
+     * backend. Those operations are executed along with the binds : a StartTLS
+     * must not wait behind the slow extended operations.
+     *
+     * @param oid The extended request OID
+     * @return <code>true</code> if the extended operation is a fast one
+     */
+    private static boolean isFast( String oid )
+    {
+        return StartTlsRequest.EXTENSION_OID.equals( oid ) || WhoAmIRequest.EXTENSION_OID.equals( oid );
+    }
+}
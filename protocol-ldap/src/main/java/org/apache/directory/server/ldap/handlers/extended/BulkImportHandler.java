@@ -0,0 +1,695 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.extended;
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.apache.directory.api.ldap.codec.api.ExtendedRequestDecorator;
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.exception.LdapSchemaViolationException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.name.Ava;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.ObjectClass;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.SyntaxChecker;
+import org.apache.directory.api.ldap.model.schema.syntaxCheckers.OctetStringSyntaxChecker;
+import org.apache.directory.api.util.DateUtils;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.constants.ApacheSchemaConstants;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.subtree.SubentryUtils;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.ldap.ExtendedOperationHandler;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.LdapSession;
+import org.apache.directory.server.ldap.replication.provider.ReplicationRequestHandler;
+import org.apache.directory.server.ldap.replication.provider.SyncReplRequestHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An handler for the bulk import extended operation. The request value is the path,
+ * on the server, of a LDIF file containing entries to add. The entries are read and
+ * added in batches directly into their partition, without going through the interceptor
+ * chain : the schema is checked once per distinct set of ObjectClasses, the operational
+ * attributes are computed once per batch, and the indexes are updated once per batch.<br>
+ * As a consequence, the imported entries are not processed by the interceptors (no
+ * password hashing, no access control, no event notification, no replication log) : the
+ * replication consumers are asked to refresh their whole content once the import is done.
+ * The checks and operational attributes which protect the imported entries are still
+ * computed : the syntax and RDN checks of the SchemaInterceptor, and the references to
+ * the access control and collective attribute subentries of the SubentryInterceptor.<br>
+ * Only the administrator can use this operation, and all the entries must be stored in a
+ * BTree based partition. The entries must come after their parent in the file. The response
+ * value is the number of imported entries. Subentries and administrative points can't be
+ * imported. An entry which can't be added stops the import,
+ * the previous batches being kept.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class BulkImportHandler implements ExtendedOperationHandler<ExtendedRequest, ExtendedResponse>
+{
+    private static final Logger LOG = LoggerFactory.getLogger( BulkImportHandler.class );
+
+    /** The bulk import request OID */
+    public static final String EXTENSION_OID = "1.3.6.1.4.1.18060.0.1.10";
+
+    /** The bulk import response OID */
+    public static final String RESPONSE_OID = "1.3.6.1.4.1.18060.0.1.11";
+
+    public static final Set<String> EXTENSION_OIDS;
+
+    /** The default number of entries added at once */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /** The operational attributes referencing the subentries an entry is part of */
+    private static final String[] SUBENTRY_OPERATIONAL_ATTRIBUTES =
+        {
+            SchemaConstants.ACCESS_CONTROL_SUBENTRIES_AT,
+            SchemaConstants.COLLECTIVE_ATTRIBUTE_SUBENTRIES_AT,
+            SchemaConstants.SUBSCHEMA_SUBENTRY_AT,
+            ApacheSchemaConstants.TRIGGER_EXECUTION_SUBENTRIES_AT
+        };
+
+    static
+    {
+        Set<String> set = new HashSet<String>( 2 );
+        set.add( EXTENSION_OID );
+        set.add( RESPONSE_OID );
+        EXTENSION_OIDS = Collections.unmodifiableSet( set );
+    }
+
+    /** The LDAP server */
+    private LdapServer ldapServer;
+
+    /** The number of entries added at once */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getOid()
+    {
+        return EXTENSION_OID;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void handleExtendedOperation( LdapSession requestor, ExtendedRequest req ) throws Exception
+    {
+        CoreSession coreSession = requestor.getCoreSession();
+
+        if ( !coreSession.isAdministrator() )
+        {
+            LOG.error( "The bulk import has been requested by {}, who is not the administrator",
+                coreSession.getEffectivePrincipal().getName() );
+            writeError( requestor, req, ResultCodeEnum.INSUFFICIENT_ACCESS_RIGHTS,
+                "Only the administrator can import entries" );
+
+            return;
+        }
+
+        byte[] requestValue = null;
+
+        if ( req instanceof ExtendedRequestDecorator<?, ?> )
+        {
+            requestValue = ( ( ExtendedRequestDecorator<?, ?> ) req ).getRequestValue();
+        }
+
+        if ( Strings.isEmpty( requestValue ) )
+        {
+            writeError( requestor, req, ResultCodeEnum.PROTOCOL_ERROR, "The LDIF file path is missing" );
+
+            return;
+        }
+
+        File ldifFile = new File( Strings.utf8ToString( requestValue ) );
+
+        if ( !ldifFile.isFile() || !ldifFile.canRead() )
+        {
+            writeError( requestor, req, ResultCodeEnum.UNWILLING_TO_PERFORM, "Cannot read the LDIF file "
+                + ldifFile );
+
+            return;
+        }
+
+        LOG.info( "Importing the entries of {}", ldifFile );
+
+        long count = 0L;
+        String lastCsn = null;
+
+        try
+        {
+            Importer importer = new Importer( coreSession );
+            importer.importLdif( ldifFile );
+            count = importer.count;
+            lastCsn = importer.lastCsn;
+        }
+        catch ( ImportException ie )
+        {
+            count = ie.count;
+            lastCsn = ie.lastCsn;
+            Exception cause = ( Exception ) ie.getCause();
+
+            LOG.error( "The bulk import of {} stopped after {} entries", ldifFile, count, cause );
+
+            ResultCodeEnum resultCode = ResultCodeEnum.OTHER;
+
+            if ( cause instanceof LdapException )
+            {
+                resultCode = ResultCodeEnum.getResultCode( cause );
+            }
+
+            writeError( requestor, req, resultCode, "The import stopped after " + count + " entries : "
+                + cause.getMessage() );
+
+            return;
+        }
+        finally
+        {
+            requireRefresh( lastCsn );
+        }
+
+        LOG.info( "{} entries have been imported from {}", count, ldifFile );
+
+        ExtendedResponse response = LdapApiServiceFactory.getSingleton().newExtendedResponse( RESPONSE_OID,
+            req.getMessageId(), Strings.getBytesUtf8( Long.toString( count ) ) );
+        response.getLdapResult().setResultCode( ResultCodeEnum.SUCCESS );
+
+        requestor.getIoSession().write( response );
+    }
+
+
+    /**
+     * Tells the replication consumers to refresh their content, as the imported
+     * entries have not been logged
+     */
+    private void requireRefresh( String lastCsn )
+    {
+        if ( ( lastCsn == null ) || ( ldapServer == null ) )
+        {
+            return;
+        }
+
+        ReplicationRequestHandler replicationReqHandler = ldapServer.getReplicationReqHandler();
+
+        if ( replicationReqHandler instanceof SyncReplRequestHandler )
+        {
+            ( ( SyncReplRequestHandler ) replicationReqHandler ).requireRefresh( lastCsn );
+        }
+    }
+
+
+    /**
+     * Writes an error response
+     */
+    private void writeError( LdapSession requestor, ExtendedRequest req, ResultCodeEnum resultCode, String message )
+    {
+        LdapResult result = req.getResultResponse().getLdapResult();
+        result.setResultCode( resultCode );
+        result.setDiagnosticMessage( message );
+
+        requestor.getIoSession().write( req.getResultResponse() );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Set<String> getExtensionOids()
+    {
+        return EXTENSION_OIDS;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setLdapServer( LdapServer ldapServer )
+    {
+        this.ldapServer = ldapServer;
+    }
+
+
+    /**
+     * @return The number of entries added at once
+     */
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+
+    /**
+     * @param batchSize The number of entries added at once
+     */
+    public void setBatchSize( int batchSize )
+    {
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * The ObjectClasses of an entry, with their MUST and MAY AttributeTypes. They are
+     * computed once for all the imported entries having the same ObjectClasses.
+     */
+    private static class CompiledObjectClasses
+    {
+        /** The ObjectClasses, including the inherited ones, except top */
+        private final List<String> objectClasses = new ArrayList<String>();
+
+        /** The MUST AttributeTypes */
+        private final Set<AttributeType> must = new HashSet<AttributeType>();
+
+        /** The MUST and MAY AttributeTypes */
+        private final Set<AttributeType> allowed = new HashSet<AttributeType>();
+
+        /** Tells if the extensibleObject ObjectClass is present */
+        private boolean isExtensible;
+    }
+
+
+    /**
+     * Reports a failed import, with the number of entries imported before the failure
+     */
+    private static class ImportException extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        /** The number of imported entries */
+        private final long count;
+
+        /** The CSN of the last imported entry */
+        private final String lastCsn;
+
+
+        private ImportException( long count, String lastCsn, Exception cause )
+        {
+            super( cause );
+            this.count = count;
+            this.lastCsn = lastCsn;
+        }
+    }
+
+
+    /**
+     * Reads the LDIF file and adds its entries in batches
+     */
+    private class Importer
+    {
+        /** The session used to import the entries */
+        private final CoreSession coreSession;
+
+        /** The DirectoryService */
+        private final DirectoryService directoryService;
+
+        /** The SchemaManager */
+        private final SchemaManager schemaManager;
+
+        /** Computes the subentry operational attributes of the imported entries */
+        private final SubentryUtils subentryUtils;
+
+        /** The compiled ObjectClasses, for each distinct set of ObjectClasses */
+        private final Map<Set<String>, CompiledObjectClasses> compiledCache =
+            new HashMap<Set<String>, CompiledObjectClasses>();
+
+        /** The entries of the current batch */
+        private final List<Entry> batch = new ArrayList<Entry>( batchSize );
+
+        /** The partition the entries of the current batch are added to */
+        private AbstractBTreePartition partition;
+
+        /** The number of imported entries */
+        private long count;
+
+        /** The CSN of the last imported entry */
+        private String lastCsn;
+
+
+        private Importer( CoreSession coreSession )
+        {
+            this.coreSession = coreSession;
+            this.directoryService = coreSession.getDirectoryService();
+            this.schemaManager = directoryService.getSchemaManager();
+            this.subentryUtils = new SubentryUtils( directoryService );
+        }
+
+
+        /**
+         * Imports the entries of a LDIF file
+         */
+        private void importLdif( File ldifFile ) throws ImportException
+        {
+            LdifReader reader = null;
+
+            try
+            {
+                reader = new LdifReader( ldifFile );
+
+                for ( LdifEntry ldifEntry : reader )
+                {
+                    if ( !ldifEntry.isEntry() )
+                    {
+                        throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                            "Only entries can be imported, " + ldifEntry.getDn() + " is a " + ldifEntry.getChangeType()
+                                + " change" );
+                    }
+
+                    Entry entry = new DefaultEntry( schemaManager, ldifEntry.getEntry() );
+                    AbstractBTreePartition entryPartition = getPartition( entry );
+
+                    if ( ( entryPartition != partition ) || ( batch.size() == batchSize ) )
+                    {
+                        flush();
+                        partition = entryPartition;
+                    }
+
+                    batch.add( entry );
+                }
+
+                flush();
+            }
+            catch ( Exception e )
+            {
+                throw new ImportException( count, lastCsn, e );
+            }
+            finally
+            {
+                if ( reader != null )
+                {
+                    try
+                    {
+                        reader.close();
+                    }
+                    catch ( Exception e )
+                    {
+                        LOG.warn( "Failed to close the LDIF file {}", ldifFile, e );
+                    }
+                }
+            }
+        }
+
+
+        /**
+         * Gets the BTree partition in which an entry has to be stored
+         */
+        private AbstractBTreePartition getPartition( Entry entry ) throws LdapException
+        {
+            Partition entryPartition = directoryService.getPartitionNexus().getPartition( entry.getDn() );
+
+            if ( !( entryPartition instanceof AbstractBTreePartition ) )
+            {
+                throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                    "The partition " + entryPartition.getId() + " does not support the bulk import" );
+            }
+
+            return ( AbstractBTreePartition ) entryPartition;
+        }
+
+
+        /**
+         * Checks the entries of the current batch, adds their operational attributes, and
+         * stores them into their partition
+         */
+        private void flush() throws LdapException
+        {
+            if ( batch.isEmpty() )
+            {
+                return;
+            }
+
+            // The creator and creation time are shared by all the entries of the batch
+            String creatorsName = coreSession.getEffectivePrincipal().getDn().getNormName();
+            String createTimestamp = DateUtils.getGeneralizedTime();
+            String batchCsn = null;
+
+            for ( Entry entry : batch )
+            {
+                check( entry );
+                addSubentryAttributes( entry );
+
+                entry.put( SchemaConstants.CREATORS_NAME_AT, creatorsName );
+                entry.put( SchemaConstants.CREATE_TIMESTAMP_AT, createTimestamp );
+
+                batchCsn = directoryService.getCSN().toString();
+                entry.put( SchemaConstants.ENTRY_CSN_AT, batchCsn );
+
+                if ( !entry.containsAttribute( SchemaConstants.ENTRY_UUID_AT ) )
+                {
+                    entry.put( SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString() );
+                }
+            }
+
+            partition.addBatch( coreSession, batch );
+
+            count += batch.size();
+            lastCsn = batchCsn;
+            batch.clear();
+
+            LOG.debug( "{} entries imported", count );
+        }
+
+
+        /**
+         * Checks an entry against the schema, using the compiled ObjectClasses
+         */
+        private void check( Entry entry ) throws LdapException
+        {
+            Attribute objectClassAttr = entry.get( SchemaConstants.OBJECT_CLASS_AT );
+
+            if ( objectClassAttr == null )
+            {
+                throw new LdapSchemaViolationException( ResultCodeEnum.OBJECT_CLASS_VIOLATION,
+                    "The entry " + entry.getDn() + " has no ObjectClass" );
+            }
+
+            // The subentries and administrative points update the caches maintained by the interceptors
+            if ( objectClassAttr.contains( SchemaConstants.SUBENTRY_OC )
+                || entry.containsAttribute( SchemaConstants.ADMINISTRATIVE_ROLE_AT ) )
+            {
+                throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                    "The subentries and administrative points can't be imported : " + entry.getDn() );
+            }
+
+            Set<String> names = new TreeSet<String>();
+
+            for ( Value<?> value : objectClassAttr )
+            {
+                names.add( Strings.toLowerCaseAscii( value.getString() ) );
+            }
+
+            CompiledObjectClasses compiled = compiledCache.get( names );
+
+            if ( compiled == null )
+            {
+                compiled = compile( names );
+                compiledCache.put( names, compiled );
+            }
+
+            for ( AttributeType mustAttributeType : compiled.must )
+            {
+                if ( !entry.containsAttribute( mustAttributeType ) )
+                {
+                    throw new LdapSchemaViolationException( ResultCodeEnum.OBJECT_CLASS_VIOLATION,
+                        "The entry " + entry.getDn() + " does not have the mandatory attribute "
+                            + mustAttributeType.getName() );
+                }
+            }
+
+            for ( Attribute attribute : entry )
+            {
+                AttributeType attributeType = attribute.getAttributeType();
+
+                if ( attribute.size() == 0 )
+                {
+                    throw new LdapSchemaViolationException( ResultCodeEnum.OBJECT_CLASS_VIOLATION,
+                        "The attribute " + attribute.getUpId() + " of the entry " + entry.getDn() + " has no value" );
+                }
+
+                if ( attributeType.isSingleValued() && ( attribute.size() > 1 ) )
+                {
+                    throw new LdapSchemaViolationException( ResultCodeEnum.CONSTRAINT_VIOLATION,
+                        "The attribute " + attribute.getUpId() + " of the entry " + entry.getDn()
+                            + " is single valued" );
+                }
+
+                checkSyntax( entry, attribute );
+
+                if ( !compiled.isExtensible && attributeType.isUser()
+                    && !compiled.allowed.contains( attributeType ) )
+                {
+                    throw new LdapSchemaViolationException( ResultCodeEnum.OBJECT_CLASS_VIOLATION,
+                        "The attribute " + attribute.getUpId() + " is not allowed in the entry " + entry.getDn() );
+                }
+            }
+
+            // The RDN values must be present in the entry
+            for ( Ava ava : entry.getDn().getRdn() )
+            {
+                Attribute attribute = entry.get( ava.getNormType() );
+
+                if ( ( attribute == null ) || !attribute.contains( ava.getValue() ) )
+                {
+                    throw new LdapSchemaViolationException( ResultCodeEnum.NOT_ALLOWED_ON_RDN,
+                        "The entry " + entry.getDn() + " does not have the " + ava.getType()
+                            + " value of its RDN" );
+                }
+            }
+
+            // Add the inherited ObjectClasses, as the SchemaInterceptor does
+            for ( String objectClass : compiled.objectClasses )
+            {
+                if ( !objectClassAttr.contains( objectClass ) )
+                {
+                    objectClassAttr.add( objectClass );
+                }
+            }
+        }
+
+
+        /**
+         * Checks the syntax of the values of an attribute. Unlike the SchemaInterceptor,
+         * the schema aware values are checked too, as the values read from the LDIF file
+         * are made schema aware without being checked.
+         */
+        private void checkSyntax( Entry entry, Attribute attribute ) throws LdapException
+        {
+            SyntaxChecker syntaxChecker = attribute.getAttributeType().getSyntax().getSyntaxChecker();
+
+            if ( syntaxChecker instanceof OctetStringSyntaxChecker )
+            {
+                // All the values are accepted
+                return;
+            }
+
+            for ( Value<?> value : attribute )
+            {
+                if ( !syntaxChecker.isValidSyntax( value.getValue() ) )
+                {
+                    throw new LdapInvalidAttributeValueException( ResultCodeEnum.INVALID_ATTRIBUTE_SYNTAX,
+                        "The value '" + value.getString() + "' of the attribute " + attribute.getUpId()
+                            + " of the entry " + entry.getDn() + " is syntactically incorrect" );
+                }
+            }
+        }
+
+
+        /**
+         * Computes the subentry operational attributes of an entry, as the SubentryInterceptor
+         * does : the access control, collective attribute, subschema and trigger subentries
+         * the entry is part of. The values read from the LDIF file are replaced.
+         */
+        private void addSubentryAttributes( Entry entry ) throws LdapException
+        {
+            entry.removeAttributes( SUBENTRY_OPERATIONAL_ATTRIBUTES );
+
+            for ( Attribute attribute : subentryUtils.getSubentryAttributes( entry.getDn(), entry ) )
+            {
+                entry.put( attribute );
+            }
+        }
+
+
+        /**
+         * Computes the inherited ObjectClasses and the MUST and MAY AttributeTypes
+         * of a set of ObjectClasses
+         */
+        private CompiledObjectClasses compile( Set<String> names ) throws LdapException
+        {
+            CompiledObjectClasses compiled = new CompiledObjectClasses();
+            Set<String> seen = new HashSet<String>();
+            List<ObjectClass> pending = new ArrayList<ObjectClass>();
+
+            for ( String name : names )
+            {
+                pending.add( schemaManager.lookupObjectClassRegistry( name ) );
+            }
+
+            while ( !pending.isEmpty() )
+            {
+                ObjectClass objectClass = pending.remove( pending.size() - 1 );
+
+                if ( !seen.add( objectClass.getOid() ) )
+                {
+                    continue;
+                }
+
+                if ( SchemaConstants.EXTENSIBLE_OBJECT_OC_OID.equals( objectClass.getOid() ) )
+                {
+                    compiled.isExtensible = true;
+                }
+
+                if ( !SchemaConstants.TOP_OC_OID.equals( objectClass.getOid() ) )
+                {
+                    compiled.objectClasses.add( objectClass.getName() );
+                }
+
+                if ( objectClass.getMustAttributeTypes() != null )
+                {
+                    compiled.must.addAll( objectClass.getMustAttributeTypes() );
+                }
+
+                if ( objectClass.getMayAttributeTypes() != null )
+                {
+                    compiled.allowed.addAll( objectClass.getMayAttributeTypes() );
+                }
+
+                if ( objectClass.getSuperiors() != null )
+                {
+                    pending.addAll( objectClass.getSuperiors() );
+                }
+            }
+
+            compiled.allowed.addAll( compiled.must );
+
+            return compiled;
+        }
+    }
+}
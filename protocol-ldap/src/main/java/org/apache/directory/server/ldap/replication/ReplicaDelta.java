@@ -0,0 +1,294 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.NotSerializableException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.constants.ApacheSchemaConstants;
+
+
+/**
+ * The modifications applied on an entry by a single Modify operation, along with
+ * the entryCSN the entry had before the operation. This is what a provider sends
+ * to a consumer which has requested a delta synchronization, instead of the whole
+ * modified entry : the consumer can apply the modifications only if its own copy
+ * of the entry still has the previous CSN, otherwise the chain is broken and it
+ * has to fetch the full entry.
+ *
+ * The delta is serialized following this format : <br/>
+ * <ul>
+ * <li>UTF : the previous entryCSN</li>
+ * <li>int : the number of modifications</li>
+ * <li>for each modification, an int : its length, and the modification, written by
+ * its writeExternal method</li>
+ * </ul>
+ *
+ * No Java serialization is involved : the modifications are read back using their
+ * readExternal method, from a stream which refuses to read objects.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReplicaDelta
+{
+    /** The entryCSN before the modifications were applied */
+    private final String previousCsn;
+
+    /** The modifications */
+    private final List<Modification> modifications;
+
+
+    /**
+     * Creates a new instance of ReplicaDelta.
+     *
+     * @param previousCsn The entryCSN the entry had before the modifications
+     * @param modifications The modifications applied on the entry
+     */
+    public ReplicaDelta( String previousCsn, List<Modification> modifications )
+    {
+        this.previousCsn = previousCsn;
+        this.modifications = Collections.unmodifiableList( modifications );
+    }
+
+
+    /**
+     * @return The entryCSN the entry had before the modifications
+     */
+    public String getPreviousCsn()
+    {
+        return previousCsn;
+    }
+
+
+    /**
+     * @return The modifications applied on the entry
+     */
+    public List<Modification> getModifications()
+    {
+        return modifications;
+    }
+
+
+    /**
+     * Tells if the consumer which has sent a SyncRepl request wants to receive the
+     * modifications instead of the modified entries. The consumer asks for it by
+     * adding the replDelta attribute to the requested attributes.
+     *
+     * @param searchRequest The consumer's request
+     * @return <tt>true</tt> if the deltas must be sent
+     */
+    public static boolean isRequested( SearchRequest searchRequest )
+    {
+        if ( searchRequest == null )
+        {
+            return false;
+        }
+
+        for ( String attribute : searchRequest.getAttributes() )
+        {
+            if ( ApacheSchemaConstants.REPL_DELTA_AT.equalsIgnoreCase( attribute ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Tells if the replDelta attribute is known by the given SchemaManager. It's declared
+     * in the apache schema shipped with the server, but an instance whose schema has
+     * been extracted by an older version doesn't have it : the delta synchronization
+     * can't be used then.
+     *
+     * @param schemaManager The SchemaManager
+     * @return <tt>true</tt> if the replDelta AttributeType exists
+     */
+    public static boolean isSupported( SchemaManager schemaManager )
+    {
+        return schemaManager.getAttributeType( ApacheSchemaConstants.REPL_DELTA_AT ) != null;
+    }
+
+
+    /**
+     * Serializes the delta
+     *
+     * @return The serialized delta
+     * @throws IOException If the modifications can't be serialized
+     */
+    public byte[] toBytes() throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( baos );
+
+        out.writeUTF( previousCsn );
+        out.writeInt( modifications.size() );
+
+        for ( Modification modification : modifications )
+        {
+            byte[] bytes = toBytes( modification );
+            out.writeInt( bytes.length );
+            out.write( bytes );
+        }
+
+        out.flush();
+
+        return baos.toByteArray();
+    }
+
+
+    /**
+     * Serializes a modification, using its writeExternal method
+     */
+    private static byte[] toBytes( Modification modification ) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DeltaOutput out = new DeltaOutput( baos );
+
+        modification.writeExternal( out );
+        out.flush();
+
+        return baos.toByteArray();
+    }
+
+
+    /**
+     * Deserializes a delta. The modifications are schema aware.
+     *
+     * @param schemaManager The SchemaManager
+     * @param bytes The serialized delta
+     * @return The ReplicaDelta instance
+     * @throws IOException If the delta can't be deserialized
+     */
+    public static ReplicaDelta fromBytes( SchemaManager schemaManager, byte[] bytes ) throws IOException
+    {
+        DeltaInput in = new DeltaInput( bytes, 0, bytes.length );
+
+        String previousCsn = in.readUTF();
+        int nbModifications = in.readInt();
+
+        // Each modification takes at least its length
+        if ( ( nbModifications < 0 ) || ( nbModifications > in.available() / 4 ) )
+        {
+            throw new IOException( "Invalid number of modifications : " + nbModifications );
+        }
+
+        List<Modification> modifications = new ArrayList<Modification>( nbModifications );
+
+        for ( int i = 0; i < nbModifications; i++ )
+        {
+            int length = in.readInt();
+
+            if ( ( length < 0 ) || ( length > in.available() ) )
+            {
+                throw new IOException( "Invalid modification length : " + length );
+            }
+
+            int offset = bytes.length - in.available();
+            DeltaInput modificationIn = new DeltaInput( bytes, offset, length );
+
+            Modification modification = new DefaultModification();
+
+            try
+            {
+                modification.readExternal( modificationIn );
+            }
+            catch ( ClassNotFoundException cnfe )
+            {
+                throw new IOException( cnfe.getMessage(), cnfe );
+            }
+
+            if ( modificationIn.available() != 0 )
+            {
+                throw new IOException( "The modification " + i + " has not been entirely read" );
+            }
+
+            modifications.add( new DefaultModification( schemaManager, modification ) );
+            in.skipBytes( length );
+        }
+
+        if ( in.available() != 0 )
+        {
+            throw new IOException( "Unexpected bytes after the modifications" );
+        }
+
+        return new ReplicaDelta( previousCsn, modifications );
+    }
+
+
+    /**
+     * The stream the modifications are written into. It only writes primitive values :
+     * there is no Java serialization header, and no object can be written.
+     */
+    private static final class DeltaOutput extends DataOutputStream implements ObjectOutput
+    {
+        private DeltaOutput( ByteArrayOutputStream out )
+        {
+            super( out );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public void writeObject( Object object ) throws IOException
+        {
+            throw new NotSerializableException( object == null ? "null" : object.getClass().getName() );
+        }
+    }
+
+
+    /**
+     * The stream the modifications are read from. It only reads primitive values, so
+     * that no object sent by a provider is ever instantiated.
+     */
+    private static final class DeltaInput extends DataInputStream implements ObjectInput
+    {
+        private DeltaInput( byte[] bytes, int offset, int length )
+        {
+            super( new ByteArrayInputStream( bytes, offset, length ) );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public Object readObject() throws IOException
+        {
+            throw new InvalidObjectException( "A delta can't contain any serialized object" );
+        }
+    }
+}
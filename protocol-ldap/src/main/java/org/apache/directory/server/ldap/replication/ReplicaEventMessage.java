@@ -41,6 +41,9 @@ public class ReplicaEventMessage
     /** The entry */
     private Entry entry;
 
+    /** The modifications, when the message is a delta */
+    private ReplicaDelta delta;
+
     /**
      * Create a new ReplicaEvent instance for a Add/Delete+Modify operation
      * @param changeType The change type
@@ -61,6 +64,20 @@ public class ReplicaEventMessage
     }
 
 
+    /**
+     * Create a new ReplicaEvent instance for a Modify operation, storing the modifications
+     * instead of the modified entry.
+     *
+     * @param entry The entry, which only contains the entryUUID and the new entryCSN
+     * @param delta The modifications and the previous entryCSN
+     */
+    public ReplicaEventMessage( Entry entry, ReplicaDelta delta )
+    {
+        this( ChangeType.MODIFY, entry );
+        this.delta = delta;
+    }
+
+
     /**
      * @return The changeType
      */
@@ -79,6 +96,24 @@ public class ReplicaEventMessage
     }
 
 
+    /**
+     * @return The stored modifications, or null if the message contains the whole entry
+     */
+    public ReplicaDelta getDelta()
+    {
+        return delta;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the message contains the modifications instead of the whole entry
+     */
+    public boolean isDelta()
+    {
+        return delta != null;
+    }
+
+
     /**
      * checks if the event's CSN is older than the given CSN
      *
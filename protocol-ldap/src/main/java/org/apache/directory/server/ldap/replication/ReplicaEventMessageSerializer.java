@@ -22,6 +22,7 @@ package org.apache.directory.server.ldap.replication;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
@@ -44,8 +45,13 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
  * <li>byte : EventType</li>
  * <li>byte[] : the serialized DN</li>
  * <li>byte[] : the serialized entry</li>
+ * <li>boolean : true if the message contains a delta</li>
+ * <li>int, byte[] : the length and the serialized delta, if any</li>
  * </ul>
  * 
+ * The messages written before the delta were supported end with the entry : they
+ * are read back as full entry messages.
+ * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 public class ReplicaEventMessageSerializer implements Serializer
@@ -91,6 +97,21 @@ public class ReplicaEventMessageSerializer implements Serializer
             // The entry
             entry.writeExternal( out );
 
+            // The delta, if any
+            ReplicaDelta delta = replicaEventMessage.getDelta();
+
+            if ( delta != null )
+            {
+                byte[] deltaBytes = delta.toBytes();
+                out.writeBoolean( true );
+                out.writeInt( deltaBytes.length );
+                out.write( deltaBytes );
+            }
+            else
+            {
+                out.writeBoolean( false );
+            }
+
             out.flush();
 
             return baos.toByteArray();
@@ -126,8 +147,25 @@ public class ReplicaEventMessageSerializer implements Serializer
             entry.readExternal( in );
             entry.setDn( entryDn );
 
+            // The delta, if any
+            ReplicaDelta delta = null;
+
+            if ( readDeltaFlag( in ) )
+            {
+                byte[] deltaBytes = new byte[in.readInt()];
+                in.readFully( deltaBytes );
+                delta = ReplicaDelta.fromBytes( schemaManager, deltaBytes );
+            }
+
             // And create a ReplicaEventMessage
-            replicaEventMessage = new ReplicaEventMessage( changeType, entry );
+            if ( delta != null )
+            {
+                replicaEventMessage = new ReplicaEventMessage( entry, delta );
+            }
+            else
+            {
+                replicaEventMessage = new ReplicaEventMessage( changeType, entry );
+            }
         }
         catch ( ClassNotFoundException cnfe )
         {
@@ -136,4 +174,21 @@ public class ReplicaEventMessageSerializer implements Serializer
 
         return replicaEventMessage;
     }
+
+
+    /**
+     * Reads the flag telling if a delta follows the entry. The messages stored before
+     * the deltas were introduced don't have it.
+     */
+    private boolean readDeltaFlag( ObjectInputStream in ) throws IOException
+    {
+        try
+        {
+            return in.readBoolean();
+        }
+        catch ( EOFException eofe )
+        {
+            return false;
+        }
+    }
 }
@@ -58,6 +58,10 @@ import org.apache.directory.ldap.client.api.NoVerificationTrustManager;
  *   <li>useTls : the connection uses TLS, defaults to true</li>
  *   <li>strictCertVerification : strictly verify the certificate, defaults to true</li>
  *   <li>trustManager : the trustManager to use, defaults to @link{NoVerificationTrustManager}</li>
+ *   <li>applyThreads : the number of threads applying the received entries, defaults to 4</li>
+ *   <li>cookieCheckpointEntries : the number of entries after which the cookie is stored, defaults to 1000</li>
+ *   <li>cookieCheckpointInterval : the delay after which the cookie is stored, defaults to 5s</li>
+ *   <li>deltaSync : receive the modifications instead of the modified entries, defaults to false</li>
  *   <li></li>
  * </ul>
  * 
@@ -133,6 +137,18 @@ public class SyncReplConfiguration implements ReplicationConsumerConfig
     /** flag to indicate if this node is part of a MMR setup, default value is true */
     private boolean mmrMode = true;
 
+    /** the number of threads applying the received entries, default is 4 */
+    private int applyThreads = 4;
+
+    /** the number of applied entries after which the cookie is stored, default is 1000 */
+    private int cookieCheckpointEntries = 1000;
+
+    /** the delay after which the cookie of the applied entries is stored, default is 5 seconds */
+    private long cookieCheckpointInterval = 5 * 1000;
+
+    /** flag to receive the modifications instead of the modified entries, default is false */
+    private boolean deltaSync = false;
+
 
     /**
      * Creates a new instance of SyncreplConfiguration
@@ -580,6 +596,86 @@ public class SyncReplConfiguration implements ReplicationConsumerConfig
     }
 
 
+    /**
+     * @return the number of threads applying the received entries
+     */
+    public int getApplyThreads()
+    {
+        return applyThreads;
+    }
+
+
+    /**
+     * Sets the number of threads applying the received entries. With a single
+     * thread, the entries are applied by the thread reading them.
+     *
+     * @param applyThreads the number of threads
+     */
+    public void setApplyThreads( int applyThreads )
+    {
+        this.applyThreads = applyThreads;
+    }
+
+
+    /**
+     * @return the number of applied entries after which the cookie is stored
+     */
+    public int getCookieCheckpointEntries()
+    {
+        return cookieCheckpointEntries;
+    }
+
+
+    /**
+     * @param cookieCheckpointEntries the number of applied entries after which the cookie is stored
+     */
+    public void setCookieCheckpointEntries( int cookieCheckpointEntries )
+    {
+        this.cookieCheckpointEntries = cookieCheckpointEntries;
+    }
+
+
+    /**
+     * @return the delay, in milliseconds, after which the cookie is stored
+     */
+    public long getCookieCheckpointInterval()
+    {
+        return cookieCheckpointInterval;
+    }
+
+
+    /**
+     * @param cookieCheckpointInterval the delay, in milliseconds, after which the cookie is stored
+     */
+    public void setCookieCheckpointInterval( long cookieCheckpointInterval )
+    {
+        this.cookieCheckpointInterval = cookieCheckpointInterval;
+    }
+
+
+    /**
+     * @return true if the consumer receives the modifications instead of the modified entries
+     */
+    public boolean isDeltaSync()
+    {
+        return deltaSync;
+    }
+
+
+    /**
+     * Sets the delta synchronization mode. The provider then sends the modifications
+     * applied on an entry instead of the whole entry, the consumer fetching the full
+     * entry only when it's missing one of the previous modifications. It's only used
+     * when all the user attributes are replicated.
+     *
+     * @param deltaSync true to receive the modifications instead of the modified entries
+     */
+    public void setDeltaSync( boolean deltaSync )
+    {
+        this.deltaSync = deltaSync;
+    }
+
+
     public String toString()
     {
         StringBuilder sb = new StringBuilder();
@@ -633,6 +729,13 @@ public class SyncReplConfiguration implements ReplicationConsumerConfig
             sb.append( "MS, " );
         }
 
+        sb.append( "threads:" ).append( applyThreads ).append( ", " );
+
+        if ( deltaSync )
+        {
+            sb.append( "delta" ).append( ", " );
+        }
+
         sb.append( "provider:" ).append( producer ).append( ", " );
         sb.append( "user:'" ).append( replUserDn ).append( "', " );
 
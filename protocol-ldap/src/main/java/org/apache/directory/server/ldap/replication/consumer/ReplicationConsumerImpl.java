@@ -22,9 +22,10 @@ package org.apache.directory.server.ldap.replication.consumer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.collections.map.LRUMap;
 import org.apache.directory.api.ldap.codec.controls.manageDsaIT.ManageDsaITDecorator;
@@ -47,6 +48,7 @@ import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Modification;
 import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
 import org.apache.directory.api.ldap.model.filter.AndNode;
@@ -90,6 +92,7 @@ import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOpe
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.ldap.LdapProtocolUtils;
+import org.apache.directory.server.ldap.replication.ReplicaDelta;
 import org.apache.directory.server.ldap.replication.ReplicationConsumerConfig;
 import org.apache.directory.server.ldap.replication.SyncReplConfiguration;
 import org.slf4j.Logger;
@@ -125,6 +128,9 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
     /** the schema manager */
     private SchemaManager schemaManager;
 
+    /** flag to indicate whether the modifications are received instead of the modified entries */
+    private boolean deltaSync;
+
     /** flag to indicate whether the consumer was disconnected */
     private volatile boolean disconnected;
 
@@ -163,6 +169,15 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
 
     private static final Map<String, Object> UUID_LOCK_MAP = new LRUMap( 1000 );
 
+    /** The applier used when the entries are applied on several threads */
+    private SyncReplApplier applier;
+
+    /** The number of entries received since the cookie has been stored */
+    private int entriesSinceCheckpoint;
+
+    /** The last time the cookie has been stored */
+    private long lastCheckpoint;
+
 
     /**
      * @return the config
@@ -173,6 +188,15 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
     }
 
 
+    /**
+     * @return <tt>true</tt> if the modifications are received instead of the modified entries
+     */
+    public boolean isDeltaSync()
+    {
+        return deltaSync;
+    }
+
+
     /**
      * Init the replication service
      * @param directoryservice The directory service
@@ -194,7 +218,17 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
         Attribute ridAttr = new DefaultAttribute( adsDsReplicaIdAT );
         ridMod = new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, ridAttr );
 
+        if ( config.isDeltaSync() && !ReplicaDelta.isSupported( schemaManager ) )
+        {
+            CONSUMER_LOG.warn( "The replDelta AttributeType is not in the schema, the whole entries will be received" );
+        }
+
         prepareSyncSearchRequest();
+
+        if ( config.getApplyThreads() > 1 )
+        {
+            applier = new SyncReplApplier( "consumer-" + config.getReplicaId() + "-apply", config.getApplyThreads() );
+        }
     }
 
 
@@ -289,6 +323,17 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
 
         searchRequest.addAttributes( config.getAttributes() );
 
+        // The modifications can only be received instead of the entries if all the user
+        // attributes are replicated, and if the replDelta AttributeType is known
+        deltaSync = config.isDeltaSync()
+            && Arrays.asList( config.getAttributes() ).contains( SchemaConstants.ALL_USER_ATTRIBUTES )
+            && ReplicaDelta.isSupported( schemaManager );
+
+        if ( deltaSync )
+        {
+            searchRequest.addAttributes( ApacheSchemaConstants.REPL_DELTA_AT );
+        }
+
         if ( !config.isChaseReferrals() )
         {
             searchRequest.addControl( new ManageDsaITDecorator( directoryService.getLdapCodecService(),
@@ -332,138 +377,280 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
 
 
     /**
-     * Process a SearchResultEntry received from a consumer. We have to handle all the
-     * cases :
-     * - Add
-     * - Modify
-     * - Moddn
-     * - Delete
-     * - Present
+     * Process a SearchResultEntry received from a consumer. The cookie is updated,
+     * and the entry is applied, either directly or by the applier threads when it
+     * only impacts this entry. The cookie is stored every
+     * {@link SyncReplConfiguration#getCookieCheckpointEntries()} entries or
+     * {@link SyncReplConfiguration#getCookieCheckpointInterval()} milliseconds,
+     * once all the previous entries have been applied : after a crash, the entries
+     * received since the last checkpoint are simply applied again.
+     *
      * @param syncResult
      */
     private void handleSearchResultEntry( SearchResultEntry syncResult )
     {
         CONSUMER_LOG.debug( "------------- starting handleSearchResult ------------" );
 
-        SyncStateValue syncStateCtrl = ( SyncStateValue ) syncResult.getControl( SyncStateValue.OID );
+        final SyncStateValue syncStateCtrl = ( SyncStateValue ) syncResult.getControl( SyncStateValue.OID );
 
         try
         {
-            Entry remoteEntry = new DefaultEntry( schemaManager, syncResult.getEntry() );
-            String uuid = remoteEntry.get( directoryService.getAtProvider().getEntryUUID() ).getString();
-            // lock on UUID to serialize the updates when there are multiple consumers
-            // connected to several producers and to the *same* base/partition
-            Object lock = getLockFor( uuid );
+            final Entry remoteEntry = new DefaultEntry( schemaManager, syncResult.getEntry() );
+            final String uuid = remoteEntry.get( directoryService.getAtProvider().getEntryUUID() ).getString();
+            int rid = -1;
 
-            synchronized ( lock )
+            if ( syncStateCtrl.getCookie() != null )
             {
-                int rid = -1;
+                syncCookie = syncStateCtrl.getCookie();
+                rid = LdapProtocolUtils.getReplicaId( Strings.utf8ToString( syncCookie ) );
+                CONSUMER_LOG.debug( "assigning the cookie from sync state value control: {}",
+                    Strings.utf8ToString( syncCookie ) );
+            }
 
-                if ( syncStateCtrl.getCookie() != null )
-                {
-                    syncCookie = syncStateCtrl.getCookie();
-                    rid = LdapProtocolUtils.getReplicaId( Strings.utf8ToString( syncCookie ) );
-                    CONSUMER_LOG.debug( "assigning the cookie from sync state value control: {}",
-                        Strings.utf8ToString( syncCookie ) );
-                }
+            SyncStateTypeEnum state = syncStateCtrl.getSyncStateType();
+
+            // An entry has not been applied : stop here, the replication will restart
+            // from the last stored cookie
+            if ( ( applier != null ) && applier.hasFailed() && !drainApplier() )
+            {
+                return;
+            }
 
-                SyncStateTypeEnum state = syncStateCtrl.getSyncStateType();
+            if ( ( applier != null ) && isSingleEntryOperation( state, remoteEntry ) )
+            {
+                final int entryRid = rid;
 
-                // check to avoid conversion of UUID from byte[] to String
-                if ( CONSUMER_LOG.isDebugEnabled() )
+                applier.submit( remoteEntry.getDn(), uuid, new SyncReplApplier.Operation()
                 {
-                    CONSUMER_LOG.debug( "state name {}", state.name() );
-                    CONSUMER_LOG.debug( "entryUUID = {}", Strings.uuidToString( syncStateCtrl.getEntryUUID() ) );
+                    public void apply() throws Exception
+                    {
+                        applyEntry( remoteEntry, uuid, syncStateCtrl, entryRid );
+                    }
+                } );
+            }
+            else
+            {
+                if ( ( state != SyncStateTypeEnum.PRESENT ) && !drainApplier() )
+                {
+                    return;
                 }
 
-                Dn remoteDn = remoteEntry.getDn();
+                applyEntry( remoteEntry, uuid, syncStateCtrl, rid );
+            }
 
-                switch ( state )
-                {
-                    case ADD:
-                        boolean remoteDnExist = false;
-
-                        try
-                        {
-                            remoteDnExist = session.exists( remoteDn );
-                        }
-                        catch ( LdapNoSuchObjectException lnsoe )
-                        {
-                            CONSUMER_LOG.error( lnsoe.getMessage() );
-                        }
-
-                        if ( !remoteDnExist )
-                        {
-                            CONSUMER_LOG.debug( "adding entry with dn {}", remoteDn );
-                            CONSUMER_LOG.debug( remoteEntry.toString() );
-                            AddOperationContext addContext = new AddOperationContext( session, remoteEntry );
-                            addContext.setReplEvent( true );
-                            addContext.setRid( rid );
-
-                            OperationManager operationManager = directoryService.getOperationManager();
-                            operationManager.add( addContext );
-                        }
-                        else
-                        {
-                            CONSUMER_LOG.debug( "updating entry in refreshOnly mode {}", remoteDn );
-                            modify( remoteEntry, rid );
-                        }
-
-                        break;
-
-                    case MODIFY:
-                        CONSUMER_LOG.debug( "modifying entry with dn {}", remoteEntry.getDn().getName() );
-                        modify( remoteEntry, rid );
+            if ( syncStateCtrl.getCookie() != null )
+            {
+                checkpointCookie();
+            }
+        }
+        catch ( Exception e )
+        {
+            CONSUMER_LOG.error( e.getMessage(), e );
+        }
 
-                        break;
+        CONSUMER_LOG.debug( "------------- Ending handleSearchResult ------------" );
+    }
 
-                    case MODDN:
-                        String entryUuid = Strings.uuidToString( syncStateCtrl.getEntryUUID() ).toString();
-                        applyModDnOperation( remoteEntry, entryUuid, rid );
 
-                        break;
+    /**
+     * Tells if a received entry can be applied by the applier threads : this is the
+     * case for the additions and modifications, unless the entry is a subentry, as
+     * adding or modifying a subentry impacts the entries in its scope.
+     */
+    private boolean isSingleEntryOperation( SyncStateTypeEnum state, Entry remoteEntry )
+    {
+        switch ( state )
+        {
+            case ADD:
+            case MODIFY:
+                return !remoteEntry.contains( directoryService.getAtProvider().getObjectClass(),
+                    SchemaConstants.SUBENTRY_OC );
 
-                    case DELETE:
-                        CONSUMER_LOG.debug( "deleting entry with dn {}", remoteEntry.getDn().getName() );
+            default:
+                return false;
+        }
+    }
 
-                        if ( !session.exists( remoteDn ) )
-                        {
-                            CONSUMER_LOG
-                                .debug(
-                                    "looks like entry {} was already deleted in a prior update (possibly from another provider), skipping delete",
-                                    remoteDn );
-                        }
-                        else
-                        {
-                            // incase of a MODDN operation resulting in a branch to be moved out of scope
-                            // ApacheDS replication provider sends a single delete event on the Dn of the moved branch
-                            // so the branch needs to be recursively deleted here
-                            deleteRecursive( remoteEntry.getDn(), rid );
-                        }
 
-                        break;
+    /**
+     * Applies an entry received from the producer :
+     * - Add
+     * - Modify
+     * - Moddn
+     * - Delete
+     * - Present
+     * All the operations can be applied again without harm, which is what happens
+     * when the consumer restarts from the last stored cookie.
+     */
+    private void applyEntry( Entry remoteEntry, String uuid, SyncStateValue syncStateCtrl, int rid )
+        throws Exception
+    {
+        // lock on UUID to serialize the updates when there are multiple consumers
+        // connected to several producers and to the *same* base/partition
+        Object lock = getLockFor( uuid );
 
-                    case PRESENT:
-                        CONSUMER_LOG.debug( "entry present {}", remoteEntry );
-                        break;
+        synchronized ( lock )
+        {
+            SyncStateTypeEnum state = syncStateCtrl.getSyncStateType();
 
-                    default:
-                        throw new IllegalArgumentException( "Unexpected sync state " + state );
-                }
+            // check to avoid conversion of UUID from byte[] to String
+            if ( CONSUMER_LOG.isDebugEnabled() )
+            {
+                CONSUMER_LOG.debug( "state name {}", state.name() );
+                CONSUMER_LOG.debug( "entryUUID = {}", Strings.uuidToString( syncStateCtrl.getEntryUUID() ) );
+            }
 
-                // store the cookie only if the above operation was successful
-                if ( syncStateCtrl.getCookie() != null )
-                {
-                    storeCookie();
-                }
+            Dn remoteDn = remoteEntry.getDn();
+
+            switch ( state )
+            {
+                case ADD:
+                    boolean remoteDnExist = false;
+
+                    try
+                    {
+                        remoteDnExist = session.exists( remoteDn );
+                    }
+                    catch ( LdapNoSuchObjectException lnsoe )
+                    {
+                        CONSUMER_LOG.error( lnsoe.getMessage() );
+                    }
+
+                    if ( !remoteDnExist )
+                    {
+                        CONSUMER_LOG.debug( "adding entry with dn {}", remoteDn );
+                        CONSUMER_LOG.debug( remoteEntry.toString() );
+                        AddOperationContext addContext = new AddOperationContext( session, remoteEntry );
+                        addContext.setReplEvent( true );
+                        addContext.setRid( rid );
+
+                        OperationManager operationManager = directoryService.getOperationManager();
+                        operationManager.add( addContext );
+                    }
+                    else
+                    {
+                        CONSUMER_LOG.debug( "updating entry in refreshOnly mode {}", remoteDn );
+                        modify( remoteEntry, rid );
+                    }
+
+                    break;
+
+                case MODIFY:
+                    CONSUMER_LOG.debug( "modifying entry with dn {}", remoteEntry.getDn().getName() );
+                    Attribute deltaAttr = deltaSync ? remoteEntry.get( ApacheSchemaConstants.REPL_DELTA_AT ) : null;
+
+                    if ( deltaAttr != null )
+                    {
+                        applyDelta( remoteEntry, deltaAttr, rid );
+                    }
+                    else
+                    {
+                        modify( remoteEntry, rid );
+                    }
+
+                    break;
+
+                case MODDN:
+                    String entryUuid = Strings.uuidToString( syncStateCtrl.getEntryUUID() ).toString();
+                    applyModDnOperation( remoteEntry, entryUuid, rid );
+
+                    break;
+
+                case DELETE:
+                    CONSUMER_LOG.debug( "deleting entry with dn {}", remoteEntry.getDn().getName() );
+
+                    if ( !session.exists( remoteDn ) )
+                    {
+                        CONSUMER_LOG
+                            .debug(
+                                "looks like entry {} was already deleted in a prior update (possibly from another provider), skipping delete",
+                                remoteDn );
+                    }
+                    else
+                    {
+                        // incase of a MODDN operation resulting in a branch to be moved out of scope
+                        // ApacheDS replication provider sends a single delete event on the Dn of the moved branch
+                        // so the branch needs to be recursively deleted here
+                        deleteRecursive( remoteEntry.getDn(), rid );
+                    }
+
+                    break;
+
+                case PRESENT:
+                    CONSUMER_LOG.debug( "entry present {}", remoteEntry );
+                    break;
+
+                default:
+                    throw new IllegalArgumentException( "Unexpected sync state " + state );
             }
         }
-        catch ( Exception e )
+    }
+
+
+    /**
+     * Stores the cookie if enough entries have been received, or if the last
+     * checkpoint is old enough.
+     */
+    private void checkpointCookie()
+    {
+        entriesSinceCheckpoint++;
+
+        if ( ( entriesSinceCheckpoint < config.getCookieCheckpointEntries() )
+            && ( System.currentTimeMillis() - lastCheckpoint < config.getCookieCheckpointInterval() ) )
         {
-            CONSUMER_LOG.error( e.getMessage(), e );
+            return;
         }
 
-        CONSUMER_LOG.debug( "------------- Ending handleSearchResult ------------" );
+        storeCookie();
+    }
+
+
+    /**
+     * Waits until all the entries handed to the applier threads have been applied.
+     * If one of them has failed, the cookie is rolled back to the last stored one and
+     * the consumer is disconnected : the replication restarts from this cookie, the
+     * entries received since then being sent again by the producer.
+     *
+     * @return <code>false</code> if we have been interrupted while waiting, or if an
+     * entry has not been applied
+     */
+    private boolean drainApplier()
+    {
+        if ( applier == null )
+        {
+            return true;
+        }
+
+        try
+        {
+            applier.drain();
+
+            return true;
+        }
+        catch ( InterruptedException ie )
+        {
+            CONSUMER_LOG.warn( "Interrupted while waiting for the pending updates of consumer {}",
+                config.getReplicaId() );
+            Thread.currentThread().interrupt();
+
+            return false;
+        }
+        catch ( LdapException le )
+        {
+            CONSUMER_LOG.error( "Consumer {} failed to apply an entry, restarting from the last stored cookie",
+                config.getReplicaId(), le );
+
+            // Never store a cookie past an entry which has not been applied
+            syncCookie = lastSavedCookie;
+            applier.reset();
+
+            if ( !disconnected )
+            {
+                disconnect();
+            }
+
+            return false;
+        }
     }
 
 
@@ -510,6 +697,12 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
 
             List<byte[]> uuidList = syncInfoValue.getSyncUUIDs();
 
+            // The deleted entries may have some pending updates
+            if ( !drainApplier() )
+            {
+                return;
+            }
+
             // if refreshDeletes set to true then delete all the entries with entryUUID
             // present in the syncIdSet
             if ( syncInfoValue.isRefreshDeletes() )
@@ -704,6 +897,11 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
         {
             disconnect();
         }
+
+        if ( applier != null )
+        {
+            applier.stop();
+        }
     }
 
 
@@ -899,12 +1097,15 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
 
 
     /**
-     * stores the cookie.
+     * stores the cookie, once all the entries received so far have been applied.
      */
     private void storeCookie()
     {
         CONSUMER_LOG.debug( "Storing the cookie '{}'", Strings.utf8ToString( syncCookie ) );
 
+        entriesSinceCheckpoint = 0;
+        lastCheckpoint = System.currentTimeMillis();
+
         if ( syncCookie == null )
         {
             return;
@@ -915,6 +1116,12 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
             return;
         }
 
+        // Don't store a cookie ahead of the applied entries
+        if ( !drainApplier() )
+        {
+            return;
+        }
+
         try
         {
             Attribute attr = cookieMod.getAttribute();
@@ -1063,6 +1270,13 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
             Dn localDn = localEntry.getDn();
             Dn remoteDn = directoryService.getDnFactory().create( remoteEntry.getDn().getName() );
 
+            // The operation has already been applied, before the last stored cookie
+            if ( localDn.equals( remoteDn ) )
+            {
+                CONSUMER_LOG.debug( "entry {} has already been moved or renamed", remoteDn );
+                return;
+            }
+
             Dn localParentDn = localDn.getParent();
             Dn remoteParentDn = directoryService.getDnFactory().create( remoteDn.getParent().getName() );
 
@@ -1145,48 +1359,91 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
         remoteEntry.removeAttributes( MOD_IGNORE_AT );
         localEntry.removeAttributes( MOD_IGNORE_AT );
 
-        List<Modification> mods = new ArrayList<Modification>();
-        Iterator<Attribute> itr = localEntry.iterator();
+        List<Modification> mods = computeModifications( localEntry, remoteEntry );
+
+        if ( mods.isEmpty() )
+        {
+            // Nothing has changed, the modification has already been applied
+            CONSUMER_LOG.debug( "entry {} is already up to date", remoteEntry.getDn() );
+            return;
+        }
+
+        List<Modification> serverModifications = new ArrayList<Modification>( mods.size() );
 
-        while ( itr.hasNext() )
+        for ( Modification mod : mods )
         {
-            Attribute localAttr = itr.next();
-            String attrId = localAttr.getId();
-            Modification mod;
-            Attribute remoteAttr = remoteEntry.get( attrId );
+            serverModifications.add( new DefaultModification( directoryService.getSchemaManager(), mod ) );
+        }
 
-            if ( remoteAttr != null ) // would be better if we compare the values also? or will it consume more time?
-            {
-                mod = new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, remoteAttr );
-                remoteEntry.remove( remoteAttr );
-            }
-            else
-            {
-                mod = new DefaultModification( ModificationOperation.REMOVE_ATTRIBUTE, localAttr );
-            }
+        ModifyOperationContext modifyContext = new ModifyOperationContext( session, remoteEntry.getDn(),
+            serverModifications );
+        modifyContext.setReplEvent( true );
+        modifyContext.setRid( rid );
 
-            mods.add( mod );
+        OperationManager operationManager = directoryService.getOperationManager();
+        operationManager.modify( modifyContext );
+    }
+
+
+    /**
+     * Applies the modifications sent by the provider in delta mode. They are applied only if
+     * the local entry has the entryCSN the provider's entry had before the modifications,
+     * otherwise some modifications have been missed, and the full entry is fetched from the
+     * provider.
+     */
+    private void applyDelta( Entry remoteEntry, Attribute deltaAttr, int rid ) throws Exception
+    {
+        Dn dn = remoteEntry.getDn();
+        ReplicaDelta delta = ReplicaDelta.fromBytes( schemaManager, deltaAttr.getBytes() );
+        Csn remoteCsn = new Csn( remoteEntry.get( SchemaConstants.ENTRY_CSN_AT ).getString() );
+
+        LookupOperationContext lookupCtx = new LookupOperationContext( session, dn, SchemaConstants.ENTRY_CSN_AT );
+        lookupCtx.setSyncreplLookup( true );
+
+        Entry localEntry = directoryService.getOperationManager().lookup( lookupCtx );
+
+        if ( localEntry == null )
+        {
+            CONSUMER_LOG.error( "The entry {} does not exist, the modifications can't be applied", dn );
+            return;
         }
 
-        if ( remoteEntry.size() > 0 )
+        Attribute localCsnAttr = localEntry.get( SchemaConstants.ENTRY_CSN_AT );
+
+        if ( localCsnAttr == null )
         {
-            itr = remoteEntry.iterator();
+            modifyFromProvider( dn, rid );
+            return;
+        }
 
-            while ( itr.hasNext() )
-            {
-                mods.add( new DefaultModification( ModificationOperation.ADD_ATTRIBUTE, itr.next() ) );
-            }
+        String localCsn = localCsnAttr.getString();
+
+        if ( new Csn( localCsn ).compareTo( remoteCsn ) >= 0 )
+        {
+            // Already applied, or the local entry has been fetched after those modifications
+            CONSUMER_LOG.debug( "entry {} is already up to date", dn );
+            return;
         }
 
-        List<Modification> serverModifications = new ArrayList<Modification>( mods.size() );
+        if ( !localCsn.equals( delta.getPreviousCsn() ) )
+        {
+            CONSUMER_LOG.debug( "entry {} has CSN {} while the modifications apply on CSN {}, fetching the entry",
+                dn, localCsn, delta.getPreviousCsn() );
+            modifyFromProvider( dn, rid );
+            return;
+        }
 
-        for ( Modification mod : mods )
+        List<Modification> mods = new ArrayList<Modification>( delta.getModifications().size() );
+
+        for ( Modification mod : delta.getModifications() )
         {
-            serverModifications.add( new DefaultModification( directoryService.getSchemaManager(), mod ) );
+            if ( !isIgnored( mod.getAttribute().getAttributeType() ) )
+            {
+                mods.add( mod );
+            }
         }
 
-        ModifyOperationContext modifyContext = new ModifyOperationContext( session, remoteEntry.getDn(),
-            serverModifications );
+        ModifyOperationContext modifyContext = new ModifyOperationContext( session, dn, mods );
         modifyContext.setReplEvent( true );
         modifyContext.setRid( rid );
 
@@ -1195,6 +1452,156 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
     }
 
 
+    /**
+     * Fetches an entry from the provider and updates the local entry with it
+     */
+    private void modifyFromProvider( Dn dn, int rid ) throws Exception
+    {
+        String[] attributes = computeAttributes( config.getAttributes(), SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES );
+        Entry remoteEntry = connection.lookup( dn, attributes );
+
+        if ( remoteEntry == null )
+        {
+            // The entry has been moved or deleted since, the next events will take care of it
+            CONSUMER_LOG.debug( "entry {} does not exist anymore on the provider", dn );
+            return;
+        }
+
+        modify( remoteEntry, rid );
+    }
+
+
+    /**
+     * Tells if the modifications on an attribute must be ignored
+     */
+    private boolean isIgnored( AttributeType attributeType )
+    {
+        if ( attributeType == null )
+        {
+            // Unknown by the consumer
+            return true;
+        }
+
+        for ( String ignoredId : MOD_IGNORE_AT )
+        {
+            if ( attributeType.equals( schemaManager.getAttributeType( ignoredId ) ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Computes the modifications to apply on the local entry to get the remote entry. Only the
+     * attributes which have changed are modified, and for multi-valued attributes, only the
+     * added and removed values are sent, so that the untouched values are not re-indexed.
+     * The values are compared using their normalized form first : when a value is kept
+     * but its user provided form has changed (for instance, 'Test' replaced by 'test'),
+     * the attribute is replaced, as neither an addition nor a removal would change it.
+     * The remote entry is modified by this method.
+     *
+     * @param localEntry The entry stored by the consumer
+     * @param remoteEntry The entry received from the producer
+     * @return The modifications to apply on the local entry
+     * @throws LdapException If a modification can't be created
+     */
+    static List<Modification> computeModifications( Entry localEntry, Entry remoteEntry ) throws LdapException
+    {
+        List<Modification> mods = new ArrayList<Modification>();
+
+        for ( Attribute localAttr : localEntry )
+        {
+            AttributeType attributeType = localAttr.getAttributeType();
+            Attribute remoteAttr = remoteEntry.get( attributeType );
+
+            if ( remoteAttr == null )
+            {
+                mods.add( new DefaultModification( ModificationOperation.REMOVE_ATTRIBUTE, localAttr ) );
+                continue;
+            }
+
+            remoteEntry.remove( remoteAttr );
+
+            List<Value<?>> removedValues = new ArrayList<Value<?>>();
+            List<Value<?>> addedValues = new ArrayList<Value<?>>();
+            Set<String> remoteUpValues = getUpValues( remoteAttr );
+            boolean upValueChanged = false;
+
+            for ( Value<?> value : localAttr )
+            {
+                if ( !remoteAttr.contains( value ) )
+                {
+                    removedValues.add( value );
+                }
+                else if ( !remoteUpValues.contains( value.getString() ) )
+                {
+                    upValueChanged = true;
+                }
+            }
+
+            for ( Value<?> value : remoteAttr )
+            {
+                if ( !localAttr.contains( value ) )
+                {
+                    addedValues.add( value );
+                }
+            }
+
+            if ( removedValues.isEmpty() && addedValues.isEmpty() && !upValueChanged )
+            {
+                // Same values, nothing to do
+                continue;
+            }
+
+            if ( upValueChanged || attributeType.isSingleValued() || ( removedValues.size() == localAttr.size() ) )
+            {
+                // All the values have changed, or some have only changed their user provided form
+                mods.add( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, remoteAttr ) );
+                continue;
+            }
+
+            if ( !removedValues.isEmpty() )
+            {
+                mods.add( new DefaultModification( ModificationOperation.REMOVE_ATTRIBUTE, new DefaultAttribute(
+                    localAttr.getUpId(), attributeType, removedValues.toArray( new Value<?>[removedValues.size()] ) ) ) );
+            }
+
+            if ( !addedValues.isEmpty() )
+            {
+                mods.add( new DefaultModification( ModificationOperation.ADD_ATTRIBUTE, new DefaultAttribute(
+                    remoteAttr.getUpId(), attributeType, addedValues.toArray( new Value<?>[addedValues.size()] ) ) ) );
+            }
+        }
+
+        // The remaining remote attributes are new
+        for ( Attribute remoteAttr : remoteEntry )
+        {
+            mods.add( new DefaultModification( ModificationOperation.ADD_ATTRIBUTE, remoteAttr ) );
+        }
+
+        return mods;
+    }
+
+
+    /**
+     * @return The user provided form of the values of an attribute
+     */
+    private static Set<String> getUpValues( Attribute attribute )
+    {
+        Set<String> upValues = new HashSet<String>( attribute.size() * 2 );
+
+        for ( Value<?> value : attribute )
+        {
+            upValues.add( value.getString() );
+        }
+
+        return upValues;
+    }
+
+
     /**
      * Create a new list combining a list and a newly added attribute
      */
@@ -1377,17 +1784,21 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
     }
 
 
-    private synchronized Object getLockFor( String uuid )
+    private Object getLockFor( String uuid )
     {
-        Object lock = UUID_LOCK_MAP.get( uuid );
-
-        if ( lock == null )
+        // The map is shared by all the consumers, and used by the applier threads
+        synchronized ( UUID_LOCK_MAP )
         {
-            lock = new Object();
-            UUID_LOCK_MAP.put( uuid, lock );
-        }
+            Object lock = UUID_LOCK_MAP.get( uuid );
 
-        return lock;
+            if ( lock == null )
+            {
+                lock = new Object();
+                UUID_LOCK_MAP.put( uuid, lock );
+            }
+
+            return lock;
+        }
     }
 
 
@@ -0,0 +1,328 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication.consumer;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Applies the operations received by a syncrepl consumer on a set of threads. Each
+ * thread (a lane) processes its own queue in order, and the operations are dispatched
+ * so that the ones depending on each other end up in the same lane :
+ * <ul>
+ *   <li>an operation on an entry which has a pending operation goes to the same lane</li>
+ *   <li>otherwise, an operation on an entry whose parent has a pending operation goes
+ *   to the parent's lane, so that a parent is always added before its children</li>
+ *   <li>otherwise, the lane is selected using the entryUUID</li>
+ * </ul>
+ * Only the operations impacting a single entry can be submitted : the operations which
+ * may impact other entries (moddn, recursive deletes...) must be applied by the caller
+ * after a call to {@link #drain()}.<br>
+ * The first failure of an operation is kept until {@link #reset()} is called : it's
+ * reported by {@link #hasFailed()} and thrown by {@link #drain()}, so that the caller
+ * does not consider the operations submitted so far as applied.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SyncReplApplier
+{
+    /**
+     * An operation on a single entry
+     */
+    public interface Operation
+    {
+        /**
+         * Applies the operation
+         *
+         * @throws Exception If the operation failed
+         */
+        void apply() throws Exception;
+    }
+
+    /** A dedicated logger for the consumer */
+    private static final Logger CONSUMER_LOG = LoggerFactory.getLogger( Loggers.CONSUMER_LOG.getName() );
+
+    /** The maximum number of operations waiting in a lane */
+    private static final int LANE_CAPACITY = 1000;
+
+    /** The lanes' queues */
+    private final List<BlockingQueue<Runnable>> queues;
+
+    /** The lanes' threads */
+    private final List<Thread> threads;
+
+    /** The lane and number of pending operations, by normalized Dn */
+    private final Map<String, int[]> pending = new HashMap<String, int[]>();
+
+    /** Tells if the applier has been stopped */
+    private volatile boolean stopped;
+
+    /** The first failure since the last reset */
+    private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+
+    /**
+     * Creates a new instance of SyncReplApplier, and starts its threads.
+     *
+     * @param name The name used for the threads
+     * @param nbThreads The number of threads
+     */
+    public SyncReplApplier( String name, int nbThreads )
+    {
+        int nbLanes = Math.max( 1, nbThreads );
+        queues = new ArrayList<BlockingQueue<Runnable>>( nbLanes );
+        threads = new ArrayList<Thread>( nbLanes );
+
+        for ( int i = 0; i < nbLanes; i++ )
+        {
+            final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<Runnable>( LANE_CAPACITY );
+            queues.add( queue );
+
+            Thread thread = new Thread( name + "-" + i )
+            {
+                public void run()
+                {
+                    processLane( queue );
+                }
+            };
+
+            thread.setDaemon( true );
+            threads.add( thread );
+            thread.start();
+        }
+    }
+
+
+    /**
+     * Process the operations of a lane, until the applier is stopped
+     */
+    private void processLane( BlockingQueue<Runnable> queue )
+    {
+        try
+        {
+            while ( !stopped )
+            {
+                Runnable operation = queue.take();
+
+                try
+                {
+                    operation.run();
+                }
+                catch ( RuntimeException re )
+                {
+                    CONSUMER_LOG.error( re.getMessage(), re );
+                }
+            }
+        }
+        catch ( InterruptedException ie )
+        {
+            CONSUMER_LOG.debug( "{} interrupted", Thread.currentThread().getName() );
+        }
+    }
+
+
+    /**
+     * Submits an operation on a single entry. This method blocks if the selected lane
+     * is full.
+     *
+     * @param dn The entry's Dn
+     * @param uuid The entry's entryUUID
+     * @param operation The operation to apply
+     * @throws InterruptedException If the caller has been interrupted while waiting
+     */
+    public void submit( Dn dn, String uuid, final Operation operation ) throws InterruptedException
+    {
+        final String key = dn.getNormName();
+        int lane;
+
+        synchronized ( pending )
+        {
+            int[] dnPending = pending.get( key );
+
+            if ( dnPending == null )
+            {
+                Dn parentDn = dn.getParent();
+                int[] parentPending = parentDn == null ? null : pending.get( parentDn.getNormName() );
+
+                if ( parentPending != null )
+                {
+                    lane = parentPending[0];
+                }
+                else
+                {
+                    lane = ( uuid.hashCode() & Integer.MAX_VALUE ) % queues.size();
+                }
+
+                dnPending = new int[]
+                    { lane, 0 };
+                pending.put( key, dnPending );
+            }
+            else
+            {
+                lane = dnPending[0];
+            }
+
+            dnPending[1]++;
+        }
+
+        enqueue( queues.get( lane ), new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    operation.apply();
+                }
+                catch ( Exception e )
+                {
+                    CONSUMER_LOG.error( e.getMessage(), e );
+                    failure.compareAndSet( null, e );
+                }
+                finally
+                {
+                    release( key );
+                }
+            }
+        } );
+    }
+
+
+    /**
+     * Decrements the number of pending operations on an entry
+     */
+    private void release( String key )
+    {
+        synchronized ( pending )
+        {
+            int[] dnPending = pending.get( key );
+
+            if ( ( dnPending != null ) && ( --dnPending[1] == 0 ) )
+            {
+                pending.remove( key );
+            }
+        }
+    }
+
+
+    /**
+     * Waits until all the operations submitted so far have been processed.
+     *
+     * @throws InterruptedException If the caller has been interrupted while waiting
+     * @throws LdapException If an operation has failed since the last reset
+     */
+    public void drain() throws InterruptedException, LdapException
+    {
+        if ( stopped )
+        {
+            return;
+        }
+
+        final CountDownLatch latch = new CountDownLatch( queues.size() );
+
+        for ( BlockingQueue<Runnable> queue : queues )
+        {
+            enqueue( queue, new Runnable()
+            {
+                public void run()
+                {
+                    latch.countDown();
+                }
+            } );
+        }
+
+        while ( !latch.await( 1L, TimeUnit.SECONDS ) )
+        {
+            if ( stopped )
+            {
+                return;
+            }
+        }
+
+        Exception cause = failure.get();
+
+        if ( cause != null )
+        {
+            throw new LdapException( cause.getMessage(), cause );
+        }
+    }
+
+
+    /**
+     * @return <tt>true</tt> if an operation has failed since the last reset
+     */
+    public boolean hasFailed()
+    {
+        return failure.get() != null;
+    }
+
+
+    /**
+     * Forgets the failure, once the caller has dealt with it.
+     */
+    public void reset()
+    {
+        failure.set( null );
+    }
+
+
+    /**
+     * Adds an operation to a lane, waiting while the lane is full. The operation is
+     * discarded if the applier is stopped in the meantime.
+     */
+    private void enqueue( BlockingQueue<Runnable> queue, Runnable operation ) throws InterruptedException
+    {
+        while ( !stopped )
+        {
+            if ( queue.offer( operation, 1L, TimeUnit.SECONDS ) )
+            {
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Stops the threads. The operations which have not yet been applied are discarded.
+     */
+    public void stop()
+    {
+        stopped = true;
+
+        for ( Thread thread : threads )
+        {
+            thread.interrupt();
+        }
+    }
+}
@@ -29,6 +29,7 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.file.Files;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -88,6 +89,7 @@ import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.url.LdapUrl;
 import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.constants.ApacheSchemaConstants;
 import org.apache.directory.server.constants.ServerDNConstants;
 import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.event.DirectoryListenerAdapter;
@@ -104,6 +106,7 @@ import org.apache.directory.server.ldap.LdapServer;
 import org.apache.directory.server.ldap.LdapSession;
 import org.apache.directory.server.ldap.handlers.SearchAbandonListener;
 import org.apache.directory.server.ldap.handlers.SearchTimeLimitingMonitor;
+import org.apache.directory.server.ldap.replication.ReplicaDelta;
 import org.apache.directory.server.ldap.replication.ReplicaEventMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -154,6 +157,15 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
     /** thread used for updating consumer infor */
     private Thread consumerInfoUpdateThread;
 
+    /** The name of the file storing the refresh marker */
+    private static final String REFRESH_MARKER_FILE = "refresh-required.csn";
+
+    /**
+     * The CSN of the last change which has not been logged, like a bulk import. The consumers
+     * which have not seen it have to do a full refresh.
+     */
+    private volatile String refreshRequiredCsn;
+
     /**
      * Create a SyncReplRequestHandler empty instance
      */
@@ -194,6 +206,12 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
             replLogPurgeThresholdCountAT = dirService.getSchemaManager()
                 .lookupAttributeTypeRegistry( SchemaConstants.ADS_REPL_LOG_PURGE_THRESHOLD_COUNT );
 
+            // The consumers asking for the modifications need the replDelta AttributeType
+            if ( !ReplicaDelta.isSupported( dirService.getSchemaManager() ) )
+            {
+                PROVIDER_LOG.warn( "The replDelta AttributeType is not in the schema, the whole entries will be sent" );
+            }
+
             // Get and create the replication directory if it does not exist
             syncReplData = dirService.getInstanceLayout().getReplDirectory();
 
@@ -208,6 +226,8 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
             // Create the replication manager
             replicaUtil = new ReplConsumerManager( dirService );
 
+            loadRefreshMarker();
+
             loadReplicaInfo();
 
             logJanitor = new ReplicaEventLogJanitor( dirService, replicaLogMap );
@@ -345,7 +365,18 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
                     else
                     {
                         String consumerCsn = LdapProtocolUtils.getCsn( cookieString );
-                        doContentUpdate( session, request, clientMsgLog, consumerCsn );
+                        String markerCsn = refreshRequiredCsn;
+
+                        if ( ( markerCsn != null ) && ( consumerCsn.compareTo( markerCsn ) < 0 ) )
+                        {
+                            PROVIDER_LOG.debug( "The consumer {} has not seen the changes up to {}, it must refresh",
+                                clientMsgLog.getId(), markerCsn );
+                            sendESyncRefreshRequired( session, request );
+                        }
+                        else
+                        {
+                            doContentUpdate( session, request, clientMsgLog, consumerCsn );
+                        }
                     }
                 }
             }
@@ -409,7 +440,15 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
                         throw new IllegalStateException( I18n.err( I18n.ERR_686 ) );
                 }
 
-                sendSearchResultEntry( session, req, entry, syncStateType );
+                if ( replicaEventMessage.isDelta() )
+                {
+                    entry = getDeltaEntry( req, replicaEventMessage );
+                }
+
+                if ( entry != null )
+                {
+                    sendSearchResultEntry( session, req, entry, syncStateType );
+                }
 
                 clientMsgLog.setLastSentCsn( lastSentCsn );
 
@@ -426,6 +465,36 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
     }
 
 
+    /**
+     * Gives back the entry to send for a logged delta. If the consumer has requested a
+     * delta synchronization, the modifications are added to the entry, otherwise the
+     * consumer gets the current entry. Null is returned if the entry does not exist anymore.
+     */
+    private Entry getDeltaEntry( SearchRequest req, ReplicaEventMessage replicaEventMessage ) throws Exception
+    {
+        Entry entry = replicaEventMessage.getEntry();
+
+        if ( ReplicaDelta.isRequested( req ) )
+        {
+            entry = entry.clone();
+            entry.add( ApacheSchemaConstants.REPL_DELTA_AT, replicaEventMessage.getDelta().toBytes() );
+
+            return entry;
+        }
+
+        Entry currentEntry = ldapServer.getDirectoryService().getAdminSession().lookup( entry.getDn(),
+            SchemaConstants.ALL_USER_ATTRIBUTES, SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES );
+
+        if ( currentEntry == null )
+        {
+            PROVIDER_LOG.debug( "The entry {} does not exist anymore, the logged modification is skipped",
+                entry.getDn() );
+        }
+
+        return currentEntry;
+    }
+
+
     /**
      * process the update of the consumer, starting from the given LastEntryCSN the consumer
      * has sent with the sync request.
@@ -969,6 +1038,59 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
     }
 
 
+    /**
+     * Records that some changes have been applied without being logged, like a bulk import :
+     * the consumers which come back with a cookie older than the given CSN are asked to do
+     * a full refresh, and the persistent searches are ended the same way. The marker is
+     * stored in the replication directory, so it survives a restart.
+     *
+     * @param csn The CSN of the last unlogged change
+     */
+    public void requireRefresh( String csn )
+    {
+        refreshRequiredCsn = csn;
+
+        try
+        {
+            File markerFile = new File( syncReplData, REFRESH_MARKER_FILE );
+            Files.write( markerFile.toPath(), Strings.getBytesUtf8( csn ) );
+        }
+        catch ( IOException ioe )
+        {
+            PROVIDER_LOG.error( "Failed to store the refresh marker {}", csn, ioe );
+        }
+
+        for ( ReplicaEventLog replicaLog : replicaLogMap.values() )
+        {
+            synchronized ( replicaLog )
+            {
+                SyncReplSearchListener listener = replicaLog.getPersistentListener();
+
+                if ( listener != null )
+                {
+                    listener.sendRefreshRequired();
+                }
+            }
+        }
+
+        PROVIDER_LOG.info( "The consumers will have to refresh their content up to {}", csn );
+    }
+
+
+    /**
+     * Reads the refresh marker, if any
+     */
+    private void loadRefreshMarker() throws IOException
+    {
+        File markerFile = new File( syncReplData, REFRESH_MARKER_FILE );
+
+        if ( markerFile.exists() )
+        {
+            refreshRequiredCsn = Strings.utf8ToString( Files.readAllBytes( markerFile.toPath() ) ).trim();
+        }
+    }
+
+
     public ReplicaEventLogJanitor getLogJanitor()
     {
         return logJanitor;
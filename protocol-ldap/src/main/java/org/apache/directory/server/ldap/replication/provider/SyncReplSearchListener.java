@@ -20,19 +20,30 @@
 package org.apache.directory.server.ldap.replication.provider;
 
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncDone.SyncDoneValue;
 import org.apache.directory.api.ldap.extras.controls.syncrepl.syncState.SyncStateTypeEnum;
 import org.apache.directory.api.ldap.extras.controls.syncrepl.syncState.SyncStateValue;
+import org.apache.directory.api.ldap.extras.controls.syncrepl_impl.SyncDoneValueDecorator;
 import org.apache.directory.api.ldap.extras.controls.syncrepl_impl.SyncStateValueDecorator;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
 import org.apache.directory.api.ldap.model.message.AbandonListener;
 import org.apache.directory.api.ldap.model.message.AbandonableRequest;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
 import org.apache.directory.api.ldap.model.message.SearchResultEntry;
 import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
 import org.apache.directory.api.ldap.model.message.controls.ChangeType;
 import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.constants.ApacheSchemaConstants;
 import org.apache.directory.server.constants.ServerDNConstants;
 import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
@@ -48,6 +59,7 @@ import org.apache.directory.server.core.api.interceptor.context.RenameOperationC
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.LdapProtocolUtils;
 import org.apache.directory.server.ldap.LdapSession;
+import org.apache.directory.server.ldap.replication.ReplicaDelta;
 import org.apache.directory.server.ldap.replication.ReplicaEventMessage;
 import org.apache.mina.core.future.WriteFuture;
 import org.slf4j.Logger;
@@ -127,6 +139,30 @@ public class SyncReplSearchListener implements DirectoryListener, AbandonListene
     }
 
 
+    /**
+     * Ends the persistent search with an e-syncRefreshRequired result, so that the consumer
+     * reloads its whole content. The changes are still logged, but not pushed anymore.
+     */
+    public void sendRefreshRequired()
+    {
+        if ( ( session == null ) || ( searchRequest == null ) )
+        {
+            return;
+        }
+
+        pushInRealTime = false;
+
+        SearchResultDone searchDoneResp = ( SearchResultDone ) searchRequest.getResultResponse();
+        searchDoneResp.getLdapResult().setResultCode( ResultCodeEnum.E_SYNC_REFRESH_REQUIRED );
+        SyncDoneValue syncDone = new SyncDoneValueDecorator(
+            session.getCoreSession().getDirectoryService().getLdapCodecService() );
+        searchDoneResp.addControl( syncDone );
+
+        LOG.debug( "Asking the consumer {} to refresh its content", consumerMsgLog.getId() );
+        session.getIoSession().write( searchDoneResp );
+    }
+
+
     @Override
     public boolean isSynchronous()
     {
@@ -311,14 +347,22 @@ public class SyncReplSearchListener implements DirectoryListener, AbandonListene
         try
         {
             //System.out.println( "MODIFY Listener : log " + alteredEntry.getDn() );
-            consumerMsgLog.log( new ReplicaEventMessage( ChangeType.MODIFY, alteredEntry ) );
+            ReplicaEventMessage message = createModifyMessage( modifyContext );
+            consumerMsgLog.log( message );
             
             if ( pushInRealTime )
             {
+                Entry sentEntry = alteredEntry;
+
+                if ( message.isDelta() )
+                {
+                    sentEntry = message.getEntry().clone();
+                    sentEntry.add( ApacheSchemaConstants.REPL_DELTA_AT, message.getDelta().toBytes() );
+                }
 
                 SearchResultEntry resultEntry = new SearchResultEntryImpl( searchRequest.getMessageId() );
                 resultEntry.setObjectName( modifyContext.getDn() );
-                resultEntry.setEntry( alteredEntry );
+                resultEntry.setEntry( sentEntry );
 
                 SyncStateValue syncModify = createControl( session.getCoreSession().getDirectoryService(), SyncStateTypeEnum.MODIFY, alteredEntry );
 
@@ -332,6 +376,41 @@ public class SyncReplSearchListener implements DirectoryListener, AbandonListene
     }
 
 
+    /**
+     * Creates the message logged for a Modify operation. When the consumer has requested a
+     * delta synchronization, the message contains the modifications and the previous entryCSN
+     * instead of the whole modified entry.
+     */
+    private ReplicaEventMessage createModifyMessage( ModifyOperationContext modifyContext ) throws LdapException
+    {
+        Entry alteredEntry = modifyContext.getAlteredEntry();
+        DirectoryService directoryService = modifyContext.getSession().getDirectoryService();
+        Entry originalEntry = modifyContext.getEntry();
+
+        if ( !ReplicaDelta.isRequested( searchRequest )
+            || !ReplicaDelta.isSupported( directoryService.getSchemaManager() ) || ( originalEntry == null )
+            || !originalEntry.containsAttribute( SchemaConstants.ENTRY_CSN_AT ) )
+        {
+            return new ReplicaEventMessage( ChangeType.MODIFY, alteredEntry );
+        }
+
+        // Only keep what the consumer needs to identify the entry and to check the CSN chain
+        Entry entry = new DefaultEntry( directoryService.getSchemaManager(), alteredEntry.getDn() );
+        entry.add( alteredEntry.get( SchemaConstants.ENTRY_UUID_AT ).clone() );
+        entry.add( alteredEntry.get( SchemaConstants.ENTRY_CSN_AT ).clone() );
+
+        String previousCsn = originalEntry.get( SchemaConstants.ENTRY_CSN_AT ).getString();
+        List<Modification> modifications = new ArrayList<Modification>( modifyContext.getModItems().size() );
+
+        for ( Modification modification : modifyContext.getModItems() )
+        {
+            modifications.add( modification.clone() );
+        }
+
+        return new ReplicaEventMessage( entry, new ReplicaDelta( previousCsn, modifications ) );
+    }
+
+
     /**
      * Process a Move operation. A MODDN event is send to the consumer, or stored in its 
      * queue if the consumer is not connected.
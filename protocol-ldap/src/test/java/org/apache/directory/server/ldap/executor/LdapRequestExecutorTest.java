@@ -0,0 +1,173 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.executor;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.extras.extended.pwdModify.PasswordModifyRequestImpl;
+import org.apache.directory.api.ldap.extras.extended.startTls.StartTlsRequestImpl;
+import org.apache.directory.api.ldap.extras.extended.whoAmI.WhoAmIRequestImpl;
+import org.apache.directory.api.ldap.model.message.AbandonRequestImpl;
+import org.apache.directory.api.ldap.model.message.CompareRequestImpl;
+import org.apache.directory.api.ldap.model.message.DeleteRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.junit.Test;
+
+
+/**
+ * Tests for the LdapRequestExecutor.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapRequestExecutorTest
+{
+    @Test
+    public void testClassify()
+    {
+        assertEquals( OperationClass.SEARCH, OperationClass.classify( new SearchRequestImpl() ) );
+        assertEquals( OperationClass.SEARCH, OperationClass.classify( new CompareRequestImpl() ) );
+        assertEquals( OperationClass.WRITE, OperationClass.classify( new DeleteRequestImpl() ) );
+        assertEquals( OperationClass.BIND, OperationClass.classify( new AbandonRequestImpl() ) );
+
+        // Only the fast extended operations are executed along with the binds
+        assertEquals( OperationClass.BIND, OperationClass.classify( new StartTlsRequestImpl() ) );
+        assertEquals( OperationClass.BIND, OperationClass.classify( new WhoAmIRequestImpl() ) );
+        assertEquals( OperationClass.EXTENDED, OperationClass.classify( new PasswordModifyRequestImpl() ) );
+    }
+
+
+    @Test
+    public void testPoolPerOperation() throws Exception
+    {
+        Map<OperationClass, Integer> poolSizes = new EnumMap<OperationClass, Integer>( OperationClass.class );
+        poolSizes.put( OperationClass.SEARCH, 1 );
+
+        LdapRequestExecutor executor = new LdapRequestExecutor( ExecutionModel.POOL_PER_OPERATION, 2, poolSizes, 1 );
+        final CountDownLatch blocked = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        try
+        {
+            // The only search thread is blocked, and the queue holds one request
+            executor.execute( new SearchRequestImpl(), new Runnable()
+            {
+                public void run()
+                {
+                    blocked.countDown();
+
+                    try
+                    {
+                        release.await();
+                    }
+                    catch ( InterruptedException ie )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            } );
+
+            assertTrue( blocked.await( 10, TimeUnit.SECONDS ) );
+            executor.execute( new SearchRequestImpl(), new Runnable()
+            {
+                public void run()
+                {
+                }
+            } );
+
+            ExecutorStats searchStats = executor.getStats( OperationClass.SEARCH );
+            assertEquals( 1, searchStats.getActiveCount() );
+            assertEquals( 1, searchStats.getQueueDepth() );
+
+            try
+            {
+                executor.execute( new SearchRequestImpl(), new Runnable()
+                {
+                    public void run()
+                    {
+                    }
+                } );
+                fail();
+            }
+            catch ( RejectedExecutionException ree )
+            {
+                assertEquals( 1, searchStats.getRejectedCount() );
+            }
+
+            // The other operations are not starved by the searches
+            final CountDownLatch written = new CountDownLatch( 1 );
+
+            executor.execute( new DeleteRequestImpl(), new Runnable()
+            {
+                public void run()
+                {
+                    written.countDown();
+                }
+            } );
+
+            assertTrue( written.await( 10, TimeUnit.SECONDS ) );
+        }
+        finally
+        {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void testVirtualThreads() throws Exception
+    {
+        LdapRequestExecutor executor = new LdapRequestExecutor( ExecutionModel.VIRTUAL_THREADS, 2, null,
+            LdapRequestExecutor.DEFAULT_QUEUE_SIZE );
+        final CountDownLatch done = new CountDownLatch( 100 );
+
+        try
+        {
+            // Falls back to the shared pool on JVMs without virtual threads
+            assertTrue( executor.getExecutionModel() != ExecutionModel.POOL_PER_OPERATION );
+
+            for ( int i = 0; i < 100; i++ )
+            {
+                executor.execute( new SearchRequestImpl(), new Runnable()
+                {
+                    public void run()
+                    {
+                        done.countDown();
+                    }
+                } );
+            }
+
+            assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.UsageEnum;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.server.constants.ApacheSchemaConstants;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the ReplicaDelta class, and the replDelta AttributeType it relies on.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReplicaDeltaTest
+{
+    private static SchemaManager schemaManager;
+
+    private static final String PREVIOUS_CSN = "20141201102233.000000Z#000000#001#000000";
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    @Test
+    public void testAttributeType() throws Exception
+    {
+        // The replDelta AttributeType is declared by the apache schema shipped with the server
+        assertTrue( ReplicaDelta.isSupported( schemaManager ) );
+
+        AttributeType replDelta = schemaManager.lookupAttributeTypeRegistry( ApacheSchemaConstants.REPL_DELTA_AT );
+
+        assertEquals( ApacheSchemaConstants.REPL_DELTA_AT_OID, replDelta.getOid() );
+        assertEquals( "apache", replDelta.getSchemaName() );
+        assertEquals( UsageEnum.DSA_OPERATION, replDelta.getUsage() );
+        assertFalse( replDelta.getSyntax().isHumanReadable() );
+        assertFalse( replDelta.isUserModifiable() );
+        assertTrue( replDelta.isSingleValued() );
+    }
+
+
+    @Test
+    public void testIsRequested() throws Exception
+    {
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.addAttributes( "*" );
+
+        assertFalse( ReplicaDelta.isRequested( searchRequest ) );
+
+        searchRequest.addAttributes( "REPLDELTA" );
+
+        assertTrue( ReplicaDelta.isRequested( searchRequest ) );
+        assertFalse( ReplicaDelta.isRequested( null ) );
+    }
+
+
+    @Test
+    public void testDeltaInEntry() throws Exception
+    {
+        List<Modification> mods = new ArrayList<Modification>();
+        mods.add( new DefaultModification( ModificationOperation.ADD_ATTRIBUTE,
+            new DefaultAttribute( schemaManager.getAttributeType( "description" ), "added" ) ) );
+        mods.add( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE,
+            new DefaultAttribute( schemaManager.getAttributeType( "sn" ), "Test" ) ) );
+
+        byte[] bytes = new ReplicaDelta( PREVIOUS_CSN, mods ).toBytes();
+
+        // The delta is carried by the sent entry as a binary value
+        Entry entry = new DefaultEntry( schemaManager, "cn=test,ou=system",
+            "objectClass: person",
+            "cn: test",
+            "sn: Test" );
+        entry.add( ApacheSchemaConstants.REPL_DELTA_AT, bytes );
+
+        assertArrayEquals( bytes, entry.get( ApacheSchemaConstants.REPL_DELTA_AT ).getBytes() );
+
+        ReplicaDelta delta = ReplicaDelta.fromBytes( schemaManager,
+            entry.get( ApacheSchemaConstants.REPL_DELTA_AT ).getBytes() );
+
+        assertEquals( PREVIOUS_CSN, delta.getPreviousCsn() );
+        assertEquals( mods, delta.getModifications() );
+    }
+
+
+    @Test
+    public void testInvalidDelta() throws Exception
+    {
+        List<Modification> mods = new ArrayList<Modification>();
+        mods.add( new DefaultModification( ModificationOperation.ADD_ATTRIBUTE,
+            new DefaultAttribute( schemaManager.getAttributeType( "description" ), "added" ) ) );
+
+        byte[] bytes = new ReplicaDelta( PREVIOUS_CSN, mods ).toBytes();
+
+        // A truncated delta
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy( bytes, 0, truncated, 0, truncated.length );
+
+        try
+        {
+            ReplicaDelta.fromBytes( schemaManager, truncated );
+            fail();
+        }
+        catch ( IOException ioe )
+        {
+            // Expected
+        }
+
+        // A delta followed by some garbage
+        byte[] extended = new byte[bytes.length + 1];
+        System.arraycopy( bytes, 0, extended, 0, bytes.length );
+
+        try
+        {
+            ReplicaDelta.fromBytes( schemaManager, extended );
+            fail();
+        }
+        catch ( IOException ioe )
+        {
+            // Expected
+        }
+
+        // A Java serialization stream is not a delta
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream( baos );
+        out.writeObject( mods.get( 0 ) );
+        out.close();
+
+        try
+        {
+            ReplicaDelta.fromBytes( schemaManager, baos.toByteArray() );
+            fail();
+        }
+        catch ( IOException ioe )
+        {
+            // Expected
+        }
+    }
+}
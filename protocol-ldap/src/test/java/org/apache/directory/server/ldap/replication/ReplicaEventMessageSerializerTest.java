@@ -0,0 +1,114 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.message.controls.ChangeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the ReplicaEventMessageSerializer class, with and without a delta.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReplicaEventMessageSerializerTest
+{
+    private static SchemaManager schemaManager;
+
+    private static final String CSN = "20141201112233.000000Z#000000#001#000000";
+    private static final String PREVIOUS_CSN = "20141201102233.000000Z#000000#001#000000";
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    @Test
+    public void testEntryMessage() throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager, "cn=test,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "sn: Test",
+            "entryUUID: f1c5e0b2-4a2e-4e4b-9d2c-7d3a6f0e8b11",
+            "entryCSN: " + CSN );
+
+        ReplicaEventMessageSerializer serializer = new ReplicaEventMessageSerializer( schemaManager );
+
+        ReplicaEventMessage message = ( ReplicaEventMessage ) serializer.deserialize( serializer
+            .serialize( new ReplicaEventMessage( ChangeType.ADD, entry ) ) );
+
+        assertEquals( ChangeType.ADD, message.getChangeType() );
+        assertEquals( entry, message.getEntry() );
+        assertFalse( message.isDelta() );
+        assertNull( message.getDelta() );
+    }
+
+
+    @Test
+    public void testDeltaMessage() throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager, "cn=test,ou=system",
+            "entryUUID: f1c5e0b2-4a2e-4e4b-9d2c-7d3a6f0e8b11",
+            "entryCSN: " + CSN );
+
+        List<Modification> modifications = new ArrayList<Modification>();
+        modifications.add( new DefaultModification( ModificationOperation.ADD_ATTRIBUTE,
+            new DefaultAttribute( schemaManager.lookupAttributeTypeRegistry( "description" ), "added" ) ) );
+        modifications.add( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE,
+            new DefaultAttribute( schemaManager.lookupAttributeTypeRegistry( SchemaConstants.ENTRY_CSN_AT ), CSN ) ) );
+
+        ReplicaEventMessageSerializer serializer = new ReplicaEventMessageSerializer( schemaManager );
+
+        ReplicaEventMessage message = ( ReplicaEventMessage ) serializer.deserialize( serializer
+            .serialize( new ReplicaEventMessage( entry, new ReplicaDelta( PREVIOUS_CSN, modifications ) ) ) );
+
+        assertEquals( ChangeType.MODIFY, message.getChangeType() );
+        assertEquals( entry, message.getEntry() );
+        assertTrue( message.isDelta() );
+        assertEquals( PREVIOUS_CSN, message.getDelta().getPreviousCsn() );
+        assertEquals( modifications, message.getDelta().getModifications() );
+        assertEquals( schemaManager.lookupAttributeTypeRegistry( "description" ), message.getDelta()
+            .getModifications().get( 0 ).getAttribute().getAttributeType() );
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication.consumer;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the modifications computed by the consumer to turn the local entry into
+ * the entry received from the producer.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReplicationConsumerImplTest
+{
+    private static SchemaManager schemaManager;
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    private Entry entry( String... attributes ) throws Exception
+    {
+        return new DefaultEntry( schemaManager, "cn=test,ou=system", ( Object[] ) attributes );
+    }
+
+
+    /**
+     * Applies the modifications on the local entry, and checks that it's now equal to
+     * the remote entry
+     */
+    private void assertApplied( Entry localEntry, Entry remoteEntry, List<Modification> mods ) throws Exception
+    {
+        for ( Modification mod : mods )
+        {
+            Attribute attribute = mod.getAttribute();
+
+            switch ( mod.getOperation() )
+            {
+                case ADD_ATTRIBUTE:
+                    localEntry.add( attribute );
+                    break;
+
+                case REMOVE_ATTRIBUTE:
+                    for ( Value<?> value : attribute )
+                    {
+                        localEntry.remove( attribute.getAttributeType(), value );
+                    }
+
+                    break;
+
+                case REPLACE_ATTRIBUTE:
+                    localEntry.put( attribute );
+                    break;
+
+                default:
+                    break;
+            }
+        }
+
+        assertEquals( remoteEntry, localEntry );
+    }
+
+
+    @Test
+    public void testSameEntry() throws Exception
+    {
+        Entry localEntry = entry( "objectClass: person", "cn: test", "sn: Test", "description: a", "description: b" );
+        Entry remoteEntry = entry( "objectClass: person", "cn: test", "sn: Test", "description: b", "description: a" );
+
+        assertTrue( ReplicationConsumerImpl.computeModifications( localEntry, remoteEntry ).isEmpty() );
+    }
+
+
+    @Test
+    public void testUpValueChanged() throws Exception
+    {
+        Entry localEntry = entry( "objectClass: person", "cn: test", "sn: Test" );
+        Entry remoteEntry = entry( "objectClass: person", "cn: test", "sn: TEST" );
+
+        // The normalized values are the same, but the user provided value has changed
+        List<Modification> mods = ReplicationConsumerImpl.computeModifications( localEntry.clone(),
+            remoteEntry.clone() );
+
+        assertEquals( 1, mods.size() );
+        assertEquals( ModificationOperation.REPLACE_ATTRIBUTE, mods.get( 0 ).getOperation() );
+        assertEquals( "TEST", mods.get( 0 ).getAttribute().getString() );
+
+        assertApplied( localEntry, remoteEntry, mods );
+        assertEquals( "TEST", localEntry.get( "sn" ).getString() );
+    }
+
+
+    @Test
+    public void testUpValueChangedWithAddedValue() throws Exception
+    {
+        Entry localEntry = entry( "objectClass: person", "cn: test", "sn: test", "description: First",
+            "description: second" );
+        Entry remoteEntry = entry( "objectClass: person", "cn: test", "sn: test", "description: first",
+            "description: second", "description: third" );
+
+        List<Modification> mods = ReplicationConsumerImpl.computeModifications( localEntry.clone(),
+            remoteEntry.clone() );
+
+        // A value is added, another one has changed its user provided form : replace
+        assertEquals( 1, mods.size() );
+        assertEquals( ModificationOperation.REPLACE_ATTRIBUTE, mods.get( 0 ).getOperation() );
+        assertEquals( 3, mods.get( 0 ).getAttribute().size() );
+        assertTrue( mods.get( 0 ).getAttribute().contains( "first" ) );
+
+        assertApplied( localEntry, remoteEntry, mods );
+        assertEquals( "first", localEntry.get( "description" ).get().getString() );
+    }
+
+
+    @Test
+    public void testAddedAndRemovedValues() throws Exception
+    {
+        Entry localEntry = entry( "objectClass: person", "cn: test", "sn: test", "description: first",
+            "description: second" );
+        Entry remoteEntry = entry( "objectClass: person", "cn: test", "sn: test", "description: second",
+            "description: third" );
+
+        List<Modification> mods = ReplicationConsumerImpl.computeModifications( localEntry.clone(),
+            remoteEntry.clone() );
+
+        // Only the removed and added values are sent
+        assertEquals( 2, mods.size() );
+        assertEquals( ModificationOperation.REMOVE_ATTRIBUTE, mods.get( 0 ).getOperation() );
+        assertEquals( "first", mods.get( 0 ).getAttribute().getString() );
+        assertEquals( ModificationOperation.ADD_ATTRIBUTE, mods.get( 1 ).getOperation() );
+        assertEquals( "third", mods.get( 1 ).getAttribute().getString() );
+
+        assertApplied( localEntry, remoteEntry, mods );
+    }
+
+
+    @Test
+    public void testAddedAndRemovedAttributes() throws Exception
+    {
+        Entry localEntry = entry( "objectClass: person", "cn: test", "sn: test", "description: removed" );
+        Entry remoteEntry = entry( "objectClass: person", "cn: test", "sn: test", "telephoneNumber: 1234" );
+
+        List<Modification> mods = ReplicationConsumerImpl.computeModifications( localEntry.clone(),
+            remoteEntry.clone() );
+
+        assertEquals( 2, mods.size() );
+        assertEquals( ModificationOperation.REMOVE_ATTRIBUTE, mods.get( 0 ).getOperation() );
+        assertEquals( ModificationOperation.ADD_ATTRIBUTE, mods.get( 1 ).getOperation() );
+
+        assertApplied( localEntry, remoteEntry, mods );
+    }
+}
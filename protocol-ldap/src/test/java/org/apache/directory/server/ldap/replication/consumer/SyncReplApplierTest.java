@@ -0,0 +1,255 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication.consumer;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the SyncReplApplier class : the operations depending on each other must be
+ * applied in the order they have been submitted.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SyncReplApplierTest
+{
+    private SyncReplApplier applier;
+
+
+    @Before
+    public void init()
+    {
+        applier = new SyncReplApplier( "test-apply", 4 );
+    }
+
+
+    @After
+    public void shutdown()
+    {
+        applier.stop();
+    }
+
+
+    @Test
+    public void testParentsAreAppliedFirst() throws Exception
+    {
+        final Set<String> applied = Collections.synchronizedSet( new HashSet<String>() );
+        final AtomicInteger errors = new AtomicInteger();
+
+        for ( int i = 0; i < 50; i++ )
+        {
+            final Dn parentDn = new Dn( "ou=parent" + i + ",dc=example,dc=com" );
+
+            applier.submit( parentDn, "parent-" + i, new SyncReplApplier.Operation()
+            {
+                public void apply()
+                {
+                    // Slow down the parents, so that the children would overtake them
+                    // if they were not in the same lane
+                    try
+                    {
+                        Thread.sleep( 1L );
+                    }
+                    catch ( InterruptedException ie )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    applied.add( parentDn.getNormName() );
+                }
+            } );
+
+            for ( int j = 0; j < 10; j++ )
+            {
+                final Dn childDn = parentDn.add( "cn=child" + j );
+
+                applier.submit( childDn, "child-" + i + "-" + j, new SyncReplApplier.Operation()
+                {
+                    public void apply()
+                    {
+                        if ( !applied.contains( childDn.getParent().getNormName() ) )
+                        {
+                            errors.incrementAndGet();
+                        }
+
+                        applied.add( childDn.getNormName() );
+                    }
+                } );
+            }
+        }
+
+        applier.drain();
+
+        assertEquals( 0, errors.get() );
+        assertEquals( 50 * 11, applied.size() );
+    }
+
+
+    @Test
+    public void testSameEntryIsAppliedInOrder() throws Exception
+    {
+        final Dn dn = new Dn( "cn=test,dc=example,dc=com" );
+        final StringBuffer sb = new StringBuffer();
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            final int value = i;
+
+            // A different UUID for each operation, the Dn must be enough
+            applier.submit( dn, "uuid-" + i, new SyncReplApplier.Operation()
+            {
+                public void apply()
+                {
+                    sb.append( value ).append( ',' );
+                }
+            } );
+        }
+
+        applier.drain();
+
+        StringBuilder expected = new StringBuilder();
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            expected.append( i ).append( ',' );
+        }
+
+        assertEquals( expected.toString(), sb.toString() );
+    }
+
+
+    @Test
+    public void testFailuresDoNotStopTheLanes() throws Exception
+    {
+        final AtomicInteger count = new AtomicInteger();
+
+        for ( int i = 0; i < 20; i++ )
+        {
+            final int value = i;
+
+            Dn dn = new Dn( "cn=entry" + i + ",dc=example,dc=com" );
+
+            applier.submit( dn, "uuid-" + i, new SyncReplApplier.Operation()
+            {
+                public void apply()
+                {
+                    if ( value % 2 == 0 )
+                    {
+                        throw new IllegalStateException( "failure " + value );
+                    }
+
+                    count.incrementAndGet();
+                }
+            } );
+        }
+
+        try
+        {
+            applier.drain();
+            fail();
+        }
+        catch ( LdapException le )
+        {
+            // Expected
+        }
+
+        assertEquals( 10, count.get() );
+    }
+
+
+    @Test
+    public void testOneLaneFails() throws Exception
+    {
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch failed = new CountDownLatch( 1 );
+
+        Dn failingDn = new Dn( "cn=failing,dc=example,dc=com" );
+
+        applier.submit( failingDn, "uuid-failing", new SyncReplApplier.Operation()
+        {
+            public void apply() throws Exception
+            {
+                failed.countDown();
+
+                throw new LdapOtherException( "failure" );
+            }
+        } );
+
+        assertTrue( failed.await( 10, TimeUnit.SECONDS ) );
+
+        for ( int i = 0; ( i < 100 ) && !applier.hasFailed(); i++ )
+        {
+            Thread.sleep( 10L );
+        }
+
+        // The failure is reported to the dispatcher
+        assertTrue( applier.hasFailed() );
+
+        for ( int i = 0; i < 20; i++ )
+        {
+            Dn dn = new Dn( "cn=entry" + i + ",dc=example,dc=com" );
+
+            applier.submit( dn, "uuid-" + i, new SyncReplApplier.Operation()
+            {
+                public void apply()
+                {
+                    count.incrementAndGet();
+                }
+            } );
+        }
+
+        // Draining reports the failure, even if the other operations have been applied
+        try
+        {
+            applier.drain();
+            fail();
+        }
+        catch ( LdapException le )
+        {
+            assertEquals( "failure", le.getMessage() );
+        }
+
+        assertEquals( 20, count.get() );
+        assertTrue( applier.hasFailed() );
+
+        // Until the failure has been dealt with
+        applier.reset();
+        assertFalse( applier.hasFailed() );
+        applier.drain();
+    }
+}
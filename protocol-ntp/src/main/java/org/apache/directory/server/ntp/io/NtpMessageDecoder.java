@@ -60,8 +60,8 @@ public class NtpMessageDecoder
         modifier.setReferenceTimestamp( new NtpTimeStamp( request ) );
         modifier.setOriginateTimestamp( new NtpTimeStamp( request ) );
 
-        byte[] unneededBytes = new byte[8];
-        request.get( unneededBytes );
+        // Skip the receive timestamp
+        request.position( request.position() + 8 );
 
         modifier.setReceiveTimestamp( new NtpTimeStamp() );
         modifier.setTransmitTimestamp( new NtpTimeStamp( request ) );
@@ -108,9 +108,7 @@ public class NtpMessageDecoder
 
     private ReferenceIdentifier parseReferenceIdentifier( ByteBuffer request )
     {
-        byte[] nextFourBytes = new byte[4];
-        request.get( nextFourBytes );
-        return ReferenceIdentifier.getTypeByName( new String( nextFourBytes ) );
+        return ReferenceIdentifier.getTypeByCode( request );
     }
 
 
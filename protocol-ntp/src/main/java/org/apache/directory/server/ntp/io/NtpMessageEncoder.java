@@ -34,6 +34,10 @@ import org.apache.directory.server.ntp.messages.ReferenceIdentifier;
  */
 public class NtpMessageEncoder
 {
+    /** The size of an encoded NTP message, without the optional authenticator */
+    public static final int MESSAGE_SIZE = 48;
+
+
     /**
      * Encodes the {@link NtpMessage} into the {@link ByteBuffer}.
      *
@@ -87,11 +91,12 @@ public class NtpMessageEncoder
 
     private void encodeReferenceIdentifier( ReferenceIdentifier identifier, ByteBuffer byteBuffer )
     {
-        char[] characters = identifier.getCode().toCharArray();
+        String code = identifier.getCode();
 
-        for ( int ii = 0; ii < characters.length; ii++ )
+        // The code is left justified and zero padded to 32 bits
+        for ( int ii = 0; ii < 4; ii++ )
         {
-            byteBuffer.put( ( byte ) characters[ii] );
+            byteBuffer.put( ( ii < code.length() ) ? ( byte ) code.charAt( ii ) : 0 );
         }
     }
 }
@@ -61,7 +61,7 @@ public class NtpTimeStamp
      */
     public NtpTimeStamp()
     {
-        this( new Date() );
+        this( System.currentTimeMillis() );
     }
 
 
@@ -72,7 +72,18 @@ public class NtpTimeStamp
      */
     public NtpTimeStamp( Date date )
     {
-        long msSinceStartOfNtpEpoch = date.getTime() - NTP_EPOCH_DIFFERENCE;
+        this( date.getTime() );
+    }
+
+
+    /**
+     * Creates a new instance of NtpTimeStamp that represents the given time.
+     *
+     * @param timeMillis The number of milliseconds since the Java epoch
+     */
+    public NtpTimeStamp( long timeMillis )
+    {
+        long msSinceStartOfNtpEpoch = timeMillis - NTP_EPOCH_DIFFERENCE;
 
         seconds = msSinceStartOfNtpEpoch / 1000;
         fraction = ( ( msSinceStartOfNtpEpoch % 1000 ) * 0x100000000L ) / 1000;
@@ -86,15 +97,8 @@ public class NtpTimeStamp
      */
     public NtpTimeStamp( ByteBuffer data )
     {
-        for ( int ii = 0; ii < 4; ii++ )
-        {
-            seconds = 256 * seconds + makePositive( data.get() );
-        }
-
-        for ( int ii = 4; ii < 8; ii++ )
-        {
-            fraction = 256 * fraction + makePositive( data.get() );
-        }
+        seconds = data.getInt() & 0xFFFFFFFFL;
+        fraction = data.getInt() & 0xFFFFFFFFL;
     }
 
 
@@ -105,23 +109,8 @@ public class NtpTimeStamp
      */
     public void writeTo( ByteBuffer buffer )
     {
-        byte[] bytes = new byte[8];
-
-        long temp = seconds;
-        for ( int ii = 3; ii >= 0; ii-- )
-        {
-            bytes[ii] = ( byte ) ( temp % 256 );
-            temp = temp / 256;
-        }
-
-        temp = fraction;
-        for ( int ii = 7; ii >= 4; ii-- )
-        {
-            bytes[ii] = ( byte ) ( temp % 256 );
-            temp = temp / 256;
-        }
-
-        buffer.put( bytes );
+        buffer.putInt( ( int ) seconds );
+        buffer.putInt( ( int ) fraction );
     }
 
 
@@ -170,11 +159,4 @@ public class NtpTimeStamp
         NtpTimeStamp that = ( NtpTimeStamp ) o;
         return ( this.seconds == that.seconds ) && ( this.fraction == that.fraction );
     }
-
-
-    private int makePositive( byte b )
-    {
-        int byteAsInt = b;
-        return ( byteAsInt < 0 ) ? 256 + byteAsInt : byteAsInt;
-    }
 }
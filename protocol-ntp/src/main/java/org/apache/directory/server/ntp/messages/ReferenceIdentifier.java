@@ -21,6 +21,7 @@
 package org.apache.directory.server.ntp.messages;
 
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -219,6 +220,56 @@ public final class ReferenceIdentifier implements Comparable<ReferenceIdentifier
     }
 
 
+    /**
+     * Reads the four bytes of an encoded reference identifier, and returns its type.
+     * The code is left justified and zero padded, and compared ignoring the case.
+     *
+     * @param buffer The buffer to read the reference identifier from
+     * @return The reference identifier type, or LOCL if the code is not known
+     */
+    public static ReferenceIdentifier getTypeByCode( ByteBuffer buffer )
+    {
+        int position = buffer.position();
+        buffer.position( position + 4 );
+
+        for ( int ii = 0; ii < VALUES_ARRAY.length; ii++ )
+        {
+            if ( VALUES_ARRAY[ii].matches( buffer, position ) )
+            {
+                return VALUES_ARRAY[ii];
+            }
+        }
+
+        return LOCL;
+    }
+
+
+    /**
+     * Tells if the four bytes at a given position are this identifier code
+     */
+    private boolean matches( ByteBuffer buffer, int position )
+    {
+        for ( int ii = 0; ii < 4; ii++ )
+        {
+            int b = buffer.get( position + ii );
+
+            if ( ii < code.length() )
+            {
+                if ( Character.toUpperCase( ( char ) b ) != code.charAt( ii ) )
+                {
+                    return false;
+                }
+            }
+            else if ( b != 0 )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
     /**
      * Returns the code associated with this reference identifier type.
      *
@@ -29,13 +29,18 @@ import org.apache.mina.filter.codec.ProtocolDecoderOutput;
 
 
 /**
+ * Decodes the NTP requests. The decoder is stateless, and can be shared by all the sessions.
+ *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 public class NtpDecoder extends ProtocolDecoderAdapter
 {
+    /** The message decoder, which is stateless */
+    private static final NtpMessageDecoder DECODER = new NtpMessageDecoder();
+
+
     public void decode( IoSession session, IoBuffer in, ProtocolDecoderOutput out )
     {
-        NtpMessageDecoder decoder = new NtpMessageDecoder();
-        out.write( decoder.decode( in.buf() ) );
+        out.write( DECODER.decode( in.buf() ) );
     }
 }
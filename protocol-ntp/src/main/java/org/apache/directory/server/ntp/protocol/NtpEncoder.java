@@ -30,16 +30,21 @@ import org.apache.mina.filter.codec.ProtocolEncoderOutput;
 
 
 /**
+ * Encodes the NTP replies. The encoder is stateless, and can be shared by all the sessions.
+ *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 public class NtpEncoder extends ProtocolEncoderAdapter
 {
+    /** The message encoder, which is stateless */
+    private static final NtpMessageEncoder ENCODER = new NtpMessageEncoder();
+
+
     public void encode( IoSession session, Object message, ProtocolEncoderOutput out )
     {
-        NtpMessageEncoder encoder = new NtpMessageEncoder();
-
-        IoBuffer buf = IoBuffer.allocate( 1024 );
-        encoder.encode( buf.buf(), ( NtpMessage ) message );
+        // The buffer belongs to MINA once written, it can't be reused, but it's sized for the message
+        IoBuffer buf = IoBuffer.allocate( NtpMessageEncoder.MESSAGE_SIZE );
+        ENCODER.encode( buf.buf(), ( NtpMessage ) message );
 
         buf.flip();
 
@@ -34,6 +34,12 @@ public final class NtpProtocolCodecFactory implements ProtocolCodecFactory
 {
     private static final NtpProtocolCodecFactory INSTANCE = new NtpProtocolCodecFactory();
 
+    /** The encoder, which is stateless and shared by all the sessions */
+    private static final NtpEncoder ENCODER = new NtpEncoder();
+
+    /** The decoder, which is stateless and shared by all the sessions */
+    private static final NtpDecoder DECODER = new NtpDecoder();
+
 
     /**
      * Returns the singleton instance of {@link NtpProtocolCodecFactory}.
@@ -54,14 +60,12 @@ public final class NtpProtocolCodecFactory implements ProtocolCodecFactory
 
     public ProtocolEncoder getEncoder( IoSession session )
     {
-        // Create a new encoder.
-        return new NtpEncoder();
+        return ENCODER;
     }
 
 
     public ProtocolDecoder getDecoder( IoSession session )
     {
-        // Create a new decoder.
-        return new NtpDecoder();
+        return DECODER;
     }
 }
@@ -0,0 +1,161 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ntp;
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.apache.directory.server.ntp.io.NtpMessageDecoder;
+import org.apache.directory.server.ntp.io.NtpMessageEncoder;
+import org.apache.directory.server.ntp.messages.LeapIndicatorType;
+import org.apache.directory.server.ntp.messages.ModeType;
+import org.apache.directory.server.ntp.messages.NtpMessage;
+import org.apache.directory.server.ntp.messages.NtpMessageModifier;
+import org.apache.directory.server.ntp.messages.NtpTimeStamp;
+import org.apache.directory.server.ntp.messages.ReferenceIdentifier;
+import org.apache.directory.server.ntp.messages.StratumType;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Tests the NTP message codec round trip : a request is decoded and a reply is
+ * encoded, the way the UDP service does for each datagram. The benchmark loop is
+ * ignored by default.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class NtpCodecBenchmarkTest
+{
+    /** the log for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( NtpCodecBenchmarkTest.class );
+
+    /** The number of round trips of the benchmark */
+    private static final int NB_ITERATIONS = 100000;
+
+
+    private NtpMessage createMessage( ReferenceIdentifier referenceIdentifier, NtpTimeStamp timeStamp )
+    {
+        NtpMessageModifier modifier = new NtpMessageModifier();
+        modifier.setLeapIndicator( LeapIndicatorType.NO_WARNING );
+        modifier.setVersionNumber( 4 );
+        modifier.setMode( ModeType.SERVER );
+        modifier.setStratum( StratumType.PRIMARY_REFERENCE );
+        modifier.setPollInterval( ( byte ) 0x06 );
+        modifier.setPrecision( ( byte ) 0xFA );
+        modifier.setRootDelay( 0 );
+        modifier.setRootDispersion( 0 );
+        modifier.setReferenceIdentifier( referenceIdentifier );
+        modifier.setReferenceTimestamp( timeStamp );
+        modifier.setOriginateTimestamp( timeStamp );
+        modifier.setReceiveTimestamp( timeStamp );
+        modifier.setTransmitTimestamp( timeStamp );
+
+        return modifier.getNtpMessage();
+    }
+
+
+    /**
+     * Decodes the request, and encodes the reply in the given buffer
+     */
+    private void roundTrip( NtpMessageEncoder encoder, NtpMessageDecoder decoder, ByteBuffer requestBuffer,
+        ByteBuffer replyBuffer )
+    {
+        requestBuffer.flip();
+        NtpMessage decoded = decoder.decode( requestBuffer );
+
+        replyBuffer.clear();
+        encoder.encode( replyBuffer, createMessage( ReferenceIdentifier.LOCL, decoded.getTransmitTimestamp() ) );
+    }
+
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        NtpMessageEncoder encoder = new NtpMessageEncoder();
+        NtpMessageDecoder decoder = new NtpMessageDecoder();
+        NtpMessage request = createMessage( ReferenceIdentifier.INIT, new NtpTimeStamp() );
+
+        ByteBuffer requestBuffer = ByteBuffer.allocate( NtpMessageEncoder.MESSAGE_SIZE );
+        encoder.encode( requestBuffer, request );
+
+        ByteBuffer replyBuffer = ByteBuffer.allocate( NtpMessageEncoder.MESSAGE_SIZE );
+        roundTrip( encoder, decoder, requestBuffer, replyBuffer );
+
+        replyBuffer.flip();
+        NtpMessage reply = decoder.decode( replyBuffer );
+
+        assertEquals( ReferenceIdentifier.LOCL, reply.getReferenceIdentifier() );
+        assertEquals( request.getTransmitTimestamp(), reply.getTransmitTimestamp() );
+    }
+
+
+    @Test
+    @Ignore
+    public void testRoundTripPerf() throws Exception
+    {
+        NtpMessageEncoder encoder = new NtpMessageEncoder();
+        NtpMessageDecoder decoder = new NtpMessageDecoder();
+        NtpMessage request = createMessage( ReferenceIdentifier.INIT, new NtpTimeStamp() );
+
+        ByteBuffer requestBuffer = ByteBuffer.allocate( NtpMessageEncoder.MESSAGE_SIZE );
+        encoder.encode( requestBuffer, request );
+
+        ByteBuffer replyBuffer = ByteBuffer.allocate( NtpMessageEncoder.MESSAGE_SIZE );
+
+        long t0 = System.nanoTime();
+
+        for ( int i = 0; i < NB_ITERATIONS; i++ )
+        {
+            roundTrip( encoder, decoder, requestBuffer, replyBuffer );
+        }
+
+        long t1 = System.nanoTime();
+
+        LOG.debug( "{} NTP round trips per second", NB_ITERATIONS * 1000000000L / Math.max( 1L, t1 - t0 ) );
+    }
+
+
+    /**
+     * The three letters reference identifiers are zero padded to 32 bits, so that
+     * the timestamps following them stay aligned.
+     */
+    @Test
+    public void testShortReferenceIdentifier() throws Exception
+    {
+        NtpTimeStamp timeStamp = new NtpTimeStamp( 1234567890123L );
+        NtpMessage message = createMessage( ReferenceIdentifier.GPS, timeStamp );
+
+        ByteBuffer buffer = ByteBuffer.allocate( NtpMessageEncoder.MESSAGE_SIZE );
+        new NtpMessageEncoder().encode( buffer, message );
+
+        assertEquals( NtpMessageEncoder.MESSAGE_SIZE, buffer.position() );
+
+        buffer.flip();
+        NtpMessage decoded = new NtpMessageDecoder().decode( buffer );
+
+        assertEquals( ReferenceIdentifier.GPS, decoded.getReferenceIdentifier() );
+        assertEquals( timeStamp, decoded.getTransmitTimestamp() );
+    }
+}
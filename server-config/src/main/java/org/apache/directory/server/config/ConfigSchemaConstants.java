@@ -129,6 +129,10 @@ public enum ConfigSchemaConstants
 
     ADS_HTTP_CONFFILE("ads-httpConfFile", ""),
 
+    ADS_HTTP_EXPORT_CTX_PATH("ads-httpExportCtxPath", ""),
+
+    ADS_HTTP_MAX_EXPORTS("ads-httpMaxExports", ""),
+
     ADS_DIRECTORYSERVICE_ID("ads-directoryServiceId", ""),
 
     //ADS_DS_REPLICA_ID( "ads-dsReplicaId", "" ),
@@ -149,6 +153,8 @@ public enum ConfigSchemaConstants
 
     ADS_DS_MAXPDU_SIZE("ads-dsMaxPDUSize", ""),
 
+    ADS_DS_METRICS_ENABLED("ads-dsMetricsEnabled", ""),
+
     ADS_DS_PASSWORD_HIDDEN("ads-dsPasswordHidden", ""),
 
     //ADS_DS_REPLICATION( "ads-dsReplication", "" ),
@@ -173,6 +179,8 @@ public enum ConfigSchemaConstants
 
     ADS_JDBM_PARTITION_OPTIMIZER_ENABLED("ads-jdbmPartitionOptimizerEnabled", ""),
 
+    ADS_JDBM_PARTITION_SEQUENTIAL_IDS("ads-jdbmPartitionSequentialIds", ""),
+
     ADS_PARTITION_SYNCONWRITE("ads-partitionSyncOnWrite", ""),
 
     ADS_PARTITION_INDEXED_ATTRIBUTES("ads-partitionIndexedAttributes", ""),
@@ -181,6 +189,8 @@ public enum ConfigSchemaConstants
 
     ADS_INDEX_HAS_REVERSE("ads-indexHasReverse", ""),
 
+    ADS_INDEX_TYPE("ads-indexType", ""),
+
     ADS_JDBMINDEX("ads-jdbmIndex", ""),
 
     ADS_INDEX_CACHESIZE("ads-indexCacheSize", ""),
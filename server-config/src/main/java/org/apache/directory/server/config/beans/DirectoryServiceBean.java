@@ -58,6 +58,10 @@ public class DirectoryServiceBean extends AdsBaseBean
     @ConfigurationElement(attributeType = "ads-dsPasswordHidden")
     private boolean dsPasswordHidden = false;
 
+    /** The flag that tells if the operation latencies and partition counters are gathered. Off by default */
+    @ConfigurationElement(attributeType = "ads-dsMetricsEnabled", isOptional = true, defaultValue = "false")
+    private boolean dsMetricsEnabled = false;
+
     /** The delay between two flushes on disk */
     @ConfigurationElement(attributeType = "ads-dsSyncPeriodMillis")
     private long dsSyncPeriodMillis = 15000L;
@@ -247,6 +251,24 @@ public class DirectoryServiceBean extends AdsBaseBean
     }
 
 
+    /**
+     * @return the dsMetricsEnabled
+     */
+    public boolean isDsMetricsEnabled()
+    {
+        return dsMetricsEnabled;
+    }
+
+
+    /**
+     * @param dsMetricsEnabled the dsMetricsEnabled to set
+     */
+    public void setDsMetricsEnabled( boolean dsMetricsEnabled )
+    {
+        this.dsMetricsEnabled = dsMetricsEnabled;
+    }
+
+
     /**
      * @return the dsSyncPeriodMillis
      */
@@ -524,6 +546,7 @@ public class DirectoryServiceBean extends AdsBaseBean
         sb.append( toString( "  ", "allow anonymous access", dsAllowAnonymousAccess ) );
         sb.append( toString( "  ", "denormalized attributes enabled", dsDenormalizeOpAttrsEnabled ) );
         sb.append( toString( "  ", "password hidden", dsPasswordHidden ) );
+        sb.append( toString( "  ", "metrics enabled", dsMetricsEnabled ) );
         sb.append( "  sync period millisecond : " ).append( dsSyncPeriodMillis ).append( '\n' );
         sb.append( toString( "  ", "test entries", dsTestEntries ) );
 
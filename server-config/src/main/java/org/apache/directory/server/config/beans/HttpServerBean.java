@@ -37,6 +37,14 @@ public class HttpServerBean extends ServerBean
     @ConfigurationElement(attributeType = "ads-httpConfFile", isOptional = true)
     private String httpConfFile;
 
+    /** The context path of the export servlet. The export is disabled if not set */
+    @ConfigurationElement(attributeType = "ads-httpExportCtxPath", isOptional = true)
+    private String httpExportCtxPath;
+
+    /** The maximum number of concurrent exports */
+    @ConfigurationElement(attributeType = "ads-httpMaxExports", isOptional = true, defaultValue = "2")
+    private int httpMaxExports = 2;
+
     /** The list of supported web apps */
     @ConfigurationElement(objectClass = "ads-httpWebApp", container = "httpWebApps")
     private List<HttpWebAppBean> httpWebApps = new ArrayList<HttpWebAppBean>();
@@ -72,6 +80,42 @@ public class HttpServerBean extends ServerBean
     }
 
 
+    /**
+     * @return the httpExportCtxPath
+     */
+    public String getHttpExportCtxPath()
+    {
+        return httpExportCtxPath;
+    }
+
+
+    /**
+     * @param httpExportCtxPath the httpExportCtxPath to set
+     */
+    public void setHttpExportCtxPath( String httpExportCtxPath )
+    {
+        this.httpExportCtxPath = httpExportCtxPath;
+    }
+
+
+    /**
+     * @return the httpMaxExports
+     */
+    public int getHttpMaxExports()
+    {
+        return httpMaxExports;
+    }
+
+
+    /**
+     * @param httpMaxExports the httpMaxExports to set
+     */
+    public void setHttpMaxExports( int httpMaxExports )
+    {
+        this.httpMaxExports = httpMaxExports;
+    }
+
+
     /**
      * @return the httpWebApps
      */
@@ -112,6 +156,8 @@ public class HttpServerBean extends ServerBean
         sb.append( tabs ).append( "HttpServer :\n" );
         sb.append( super.toString( tabs + "  " ) );
         sb.append( toString( tabs, "  http configuration file", httpConfFile ) );
+        sb.append( toString( tabs, "  export context path", httpExportCtxPath ) );
+        sb.append( toString( tabs, "  max exports", httpMaxExports ) );
 
         if ( ( httpWebApps != null ) && ( httpWebApps.size() > 0 ) )
         {
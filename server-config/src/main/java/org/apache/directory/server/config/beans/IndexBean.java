@@ -30,6 +30,12 @@ import org.apache.directory.server.config.ConfigurationElement;
  */
 public abstract class IndexBean extends AdsBaseBean
 {
+    /** The B-tree index type, the default */
+    public static final String BTREE_INDEX_TYPE = "btree";
+
+    /** The hash index type, for the attributes only searched by equality */
+    public static final String HASH_INDEX_TYPE = "hash";
+
     /** The index unique identifier */
     @ConfigurationElement(attributeType = "ads-indexAttributeId", isRdn = true)
     private String indexAttributeId;
@@ -37,6 +43,10 @@ public abstract class IndexBean extends AdsBaseBean
     @ConfigurationElement(attributeType = "ads-indexHasReverse")
     private boolean indexHasReverse;
 
+    /** The index structure, btree or hash */
+    @ConfigurationElement(attributeType = "ads-indexType", isOptional = true, defaultValue = "btree")
+    private String indexType = BTREE_INDEX_TYPE;
+
 
     /**
      * Create a new IndexBean instance
@@ -82,6 +92,25 @@ public abstract class IndexBean extends AdsBaseBean
     }
 
 
+    /**
+     * @return the index structure, btree or hash
+     */
+    public String getIndexType()
+    {
+        return indexType;
+    }
+
+
+    /**
+     * @param indexType the index structure to set, btree or hash. A hash index can
+     * only be used for the equality and presence filters.
+     */
+    public void setIndexType( String indexType )
+    {
+        this.indexType = indexType;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -92,6 +121,7 @@ public abstract class IndexBean extends AdsBaseBean
         sb.append( super.toString( tabs + "  " ) );
         sb.append( tabs ).append( "  indexed attribute ID : " ).append( indexAttributeId ).append( '\n' );
         sb.append( tabs ).append( "  indexed has reverse : " ).append( indexHasReverse ).append( '\n' );
+        sb.append( tabs ).append( "  index type : " ).append( indexType ).append( '\n' );
 
         return sb.toString();
     }
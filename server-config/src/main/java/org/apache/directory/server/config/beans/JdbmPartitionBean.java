@@ -38,6 +38,10 @@ public class JdbmPartitionBean extends PartitionBean
     @ConfigurationElement(attributeType = "ads-jdbmPartitionOptimizerEnabled", isOptional = true, defaultValue = "true")
     private boolean jdbmPartitionOptimizerEnabled = true;
 
+    /** Tells if the entry IDs are taken from a sequence */
+    @ConfigurationElement(attributeType = "ads-jdbmPartitionSequentialIds", isOptional = true, defaultValue = "false")
+    private boolean jdbmPartitionSequentialIds = false;
+
 
     /**
      * Create a new JdbmPartitionBean instance
@@ -91,6 +95,26 @@ public class JdbmPartitionBean extends PartitionBean
     }
 
 
+    /**
+     * @return <code>true</code> if the entry IDs are taken from a sequence
+     */
+    public boolean isJdbmPartitionSequentialIds()
+    {
+        return jdbmPartitionSequentialIds;
+    }
+
+
+    /**
+     * Use sequential entry IDs instead of the entryUUIDs
+     * 
+     * @param jdbmPartitionSequentialIds True or false
+     */
+    public void setJdbmPartitionSequentialIds( boolean jdbmPartitionSequentialIds )
+    {
+        this.jdbmPartitionSequentialIds = jdbmPartitionSequentialIds;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -102,6 +126,7 @@ public class JdbmPartitionBean extends PartitionBean
         sb.append( super.toString( tabs ) );
         sb.append( tabs ).append( "  partition cache size : " ).append( partitionCacheSize ).append( '\n' );
         sb.append( toString( tabs, "  jdbm partition optimizer enabled", jdbmPartitionOptimizerEnabled ) );
+        sb.append( toString( tabs, "  jdbm partition sequential IDs", jdbmPartitionSequentialIds ) );
 
         return sb.toString();
     }
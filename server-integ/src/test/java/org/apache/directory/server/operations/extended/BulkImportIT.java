@@ -0,0 +1,276 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.operations.extended;
+
+
+import static org.apache.directory.server.core.integ.IntegrationUtils.getAdminNetworkConnection;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.FrameworkRunner;
+import org.apache.directory.server.ldap.handlers.extended.BulkImportHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Test the bulk import extended operation
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(FrameworkRunner.class)
+@CreateLdapServer(
+    transports =
+        { @CreateTransport(protocol = "LDAP") },
+    extendedOpHandlers =
+        { BulkImportHandler.class })
+@CreateDS(name = "BulkImportIT")
+public class BulkImportIT extends AbstractLdapTestUnit
+{
+    /** The entries the tests may import, children first */
+    private static final String[] IMPORTED_DNS =
+        {
+            "cn=imported,ou=people,ou=import,ou=system",
+            "ou=people,ou=import,ou=system",
+            "ou=first,ou=import,ou=system",
+            "cn=broken,ou=import,ou=system",
+            "cn=missing,ou=import,ou=system",
+            "cn=invalid,ou=import,ou=system"
+        };
+
+    private LdapConnection adminConnection;
+
+    private File ldifFile;
+
+
+    @Before
+    public void setup() throws Exception
+    {
+        adminConnection = getAdminNetworkConnection( getLdapServer() );
+        ldifFile = File.createTempFile( "bulkImport", ".ldif" );
+
+        // An administrative point with an access control and a collective attribute subentry
+        adminConnection.add( new DefaultEntry(
+            "ou=import,ou=system",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: import",
+            "administrativeRole: accessControlSpecificArea",
+            "administrativeRole: collectiveAttributeSpecificArea" ) );
+
+        adminConnection.add( new DefaultEntry(
+            "cn=importAci,ou=import,ou=system",
+            "objectClass: top",
+            "objectClass: subentry",
+            "objectClass: accessControlSubentry",
+            "cn: importAci",
+            "subtreeSpecification: {}",
+            "prescriptiveACI: { identificationTag \"importAci\", precedence 14, authenticationLevel none, "
+                + "itemOrUserFirst userFirst: { userClasses { allUsers }, userPermissions { { protectedItems "
+                + "{ entry, allUserAttributeTypesAndValues }, grantsAndDenials { grantRead, grantBrowse } } } } }" ) );
+
+        adminConnection.add( new DefaultEntry(
+            "cn=importCollective,ou=import,ou=system",
+            "objectClass: top",
+            "objectClass: subentry",
+            "objectClass: collectiveAttributeSubentry",
+            "cn: importCollective",
+            "subtreeSpecification: {}",
+            "c-ou: imported" ) );
+    }
+
+
+    @After
+    public void cleanup() throws Exception
+    {
+        if ( adminConnection != null )
+        {
+            // The imported entries are not logged, so they can't be reverted
+            for ( String dn : IMPORTED_DNS )
+            {
+                if ( adminConnection.exists( dn ) )
+                {
+                    adminConnection.delete( dn );
+                }
+            }
+
+            adminConnection.close();
+        }
+
+        if ( ldifFile != null )
+        {
+            ldifFile.delete();
+        }
+    }
+
+
+    /**
+     * Writes the LDIF file to import
+     */
+    private void writeLdif( String... lines ) throws Exception
+    {
+        Writer writer = new OutputStreamWriter( new FileOutputStream( ldifFile ), "UTF-8" );
+
+        try
+        {
+            for ( String line : lines )
+            {
+                writer.write( line );
+                writer.write( '\n' );
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+
+    /**
+     * Imports the LDIF file
+     */
+    private ExtendedResponse bulkImport() throws Exception
+    {
+        return ( ExtendedResponse ) adminConnection.extended( BulkImportHandler.EXTENSION_OID,
+            Strings.getBytesUtf8( ldifFile.getAbsolutePath() ) );
+    }
+
+
+    @Test
+    public void testImportAddsSubentryReferences() throws Exception
+    {
+        writeLdif(
+            "dn: ou=people,ou=import,ou=system",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: people",
+            "",
+            "dn: cn=imported,ou=people,ou=import,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: imported",
+            "sn: imported",
+            "accessControlSubentries: cn=forged,ou=system" );
+
+        ExtendedResponse response = bulkImport();
+
+        assertEquals( ResultCodeEnum.SUCCESS, response.getLdapResult().getResultCode() );
+
+        Entry entry = adminConnection.lookup( "cn=imported,ou=people,ou=import,ou=system", "*", "+" );
+        assertNotNull( entry );
+
+        // The references read from the file are replaced by the computed ones
+        Attribute aciSubentries = entry.get( "accessControlSubentries" );
+        assertNotNull( aciSubentries );
+        assertEquals( 1, aciSubentries.size() );
+        assertTrue( Strings.toLowerCaseAscii( aciSubentries.getString() ).contains( "importaci" ) );
+
+        Attribute collectiveSubentries = entry.get( "collectiveAttributeSubentries" );
+        assertNotNull( collectiveSubentries );
+        assertEquals( 1, collectiveSubentries.size() );
+        assertTrue( Strings.toLowerCaseAscii( collectiveSubentries.getString() ).contains( "importcollective" ) );
+
+        // The collective attribute is now visible
+        assertTrue( entry.contains( "c-ou", "imported" ) );
+    }
+
+
+    @Test
+    public void testImportRejectsMissingRdnValue() throws Exception
+    {
+        writeLdif(
+            "dn: cn=missing,ou=import,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: other",
+            "sn: other" );
+
+        ExtendedResponse response = bulkImport();
+
+        assertEquals( ResultCodeEnum.NOT_ALLOWED_ON_RDN, response.getLdapResult().getResultCode() );
+        assertNull( adminConnection.lookup( "cn=missing,ou=import,ou=system" ) );
+    }
+
+
+    @Test
+    public void testImportRejectsInvalidSyntax() throws Exception
+    {
+        writeLdif(
+            "dn: cn=invalid,ou=import,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "objectClass: organizationalPerson",
+            "cn: invalid",
+            "sn: invalid",
+            "x121Address: not a number" );
+
+        ExtendedResponse response = bulkImport();
+
+        assertEquals( ResultCodeEnum.INVALID_ATTRIBUTE_SYNTAX, response.getLdapResult().getResultCode() );
+        assertNull( adminConnection.lookup( "cn=invalid,ou=import,ou=system" ) );
+    }
+
+
+    @Test
+    public void testRejectedAliasLeavesBatchUnwritten() throws Exception
+    {
+        writeLdif(
+            "dn: ou=first,ou=import,ou=system",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: first",
+            "",
+            "dn: cn=broken,ou=import,ou=system",
+            "objectClass: top",
+            "objectClass: alias",
+            "objectClass: extensibleObject",
+            "cn: broken",
+            "aliasedObjectName: cn=nowhere,ou=import,ou=system" );
+
+        ExtendedResponse response = bulkImport();
+
+        assertFalse( ResultCodeEnum.SUCCESS == response.getLdapResult().getResultCode() );
+
+        // Both entries are in the same batch : none of them has been added
+        assertNull( adminConnection.lookup( "ou=first,ou=import,ou=system" ) );
+        assertNull( adminConnection.lookup( "cn=broken,ou=import,ou=system" ) );
+    }
+}
@@ -95,6 +95,7 @@ import org.apache.directory.server.core.changelog.DefaultChangeLog;
 import org.apache.directory.server.core.journal.DefaultJournal;
 import org.apache.directory.server.core.journal.DefaultJournalStore;
 import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmDnIndex;
+import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmHashIndex;
 import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmIndex;
 import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmPartition;
 import org.apache.directory.server.core.partition.impl.btree.jdbm.JdbmRdnIndex;
@@ -935,6 +936,10 @@ public final class ServiceBuilder
         // The webApps
         httpServer.setWebApps( createHttpWebApps( httpServerBean.getHttpWebApps(), directoryService ) );
 
+        // The export servlet, if enabled
+        httpServer.setExportContextPath( httpServerBean.getHttpExportCtxPath() );
+        httpServer.setMaxExports( httpServerBean.getHttpMaxExports() );
+
         return httpServer;
     }
 
@@ -1257,6 +1262,10 @@ public final class ServiceBuilder
         {
             index = new JdbmDnIndex( ApacheSchemaConstants.APACHE_ALIAS_AT_OID );
         }
+        else if ( IndexBean.HASH_INDEX_TYPE.equalsIgnoreCase( jdbmIndexBean.getIndexType() ) )
+        {
+            index = new JdbmHashIndex<String>( jdbmIndexBean.getIndexAttributeId(), hasReverse );
+        }
         else
         {
             index = new JdbmIndex<String>( jdbmIndexBean.getIndexAttributeId(), hasReverse );
@@ -1335,6 +1344,7 @@ public final class ServiceBuilder
         jdbmPartition.setCacheSize( jdbmPartitionBean.getPartitionCacheSize() );
         jdbmPartition.setId( jdbmPartitionBean.getPartitionId() );
         jdbmPartition.setOptimizerEnabled( jdbmPartitionBean.isJdbmPartitionOptimizerEnabled() );
+        jdbmPartition.setSequentialIds( jdbmPartitionBean.isJdbmPartitionSequentialIds() );
         File partitionPath = new File( directoryService.getInstanceLayout().getPartitionsDirectory(),
             jdbmPartitionBean.getPartitionId() );
         jdbmPartition.setPartitionPath( partitionPath.toURI() );
@@ -1493,6 +1503,9 @@ public final class ServiceBuilder
         // PasswordHidden
         directoryService.setPasswordHidden( directoryServiceBean.isDsPasswordHidden() );
 
+        // MetricsEnabled
+        directoryService.setMetricsEnabled( directoryServiceBean.isDsMetricsEnabled() );
+
         // SyncPeriodMillis
         directoryService.setSyncPeriodMillis( directoryServiceBean.getDsSyncPeriodMillis() );
 
@@ -1603,6 +1616,12 @@ public final class ServiceBuilder
         }
         else
         {
+            if ( IndexBean.HASH_INDEX_TYPE.equalsIgnoreCase( mavobotIndexBean.getIndexType() ) )
+            {
+                LOG.warn( "Hash indexes are not supported by the Mavibot partition, using a B-tree for {}",
+                    mavobotIndexBean.getIndexAttributeId() );
+            }
+
             index = new MavibotIndex<String>( mavobotIndexBean.getIndexAttributeId(), hasReverse );
         }
 
@@ -23,12 +23,18 @@ package org.apache.directory.server.core.partition.impl.btree;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -66,8 +72,10 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.api.util.exception.MultiException;
 import org.apache.directory.server.constants.ApacheSchemaConstants;
+import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.DnFactory;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.entry.CopyOnWriteServerEntry;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursorImpl;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
@@ -187,6 +195,32 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     private static final boolean WITH_REVERSE = Boolean.TRUE;
 
     protected static final boolean ADD_CHILD = true;
+
+    /**
+     * Orders the index tuples of a batch by key, then by ID. Only the String keys are
+     * ordered, which covers the normalized values of the human readable attributes.
+     */
+    private static final Comparator<IndexEntry<Object, String>> INDEX_TUPLE_COMPARATOR =
+        new Comparator<IndexEntry<Object, String>>()
+        {
+            public int compare( IndexEntry<Object, String> tuple1, IndexEntry<Object, String> tuple2 )
+            {
+                Object key1 = tuple1.getKey();
+                Object key2 = tuple2.getKey();
+
+                if ( ( key1 instanceof String ) && ( key2 instanceof String ) )
+                {
+                    int comp = ( ( String ) key1 ).compareTo( ( String ) key2 );
+
+                    if ( comp != 0 )
+                    {
+                        return comp;
+                    }
+                }
+
+                return tuple1.getId().compareTo( tuple2.getId() );
+            }
+        };
     protected static final boolean REMOVE_CHILD = false;
 
     /** A lock to protect the backend from concurrent reads/writes */
@@ -743,12 +777,13 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 throw new LdapNoSuchObjectException( I18n.err( I18n.ERR_216_ID_FOR_PARENT_NOT_FOUND, parentDn ) );
             }
 
-            // Get a new UUID for the added entry if it does not have any already
+            // Get a new ID for the added entry if it does not have any UUID already,
+            // or if the IDs are not the entryUUIDs
             Attribute entryUUID = entry.get( entryUuidAT );
 
             String id = null;
 
-            if ( entryUUID == null )
+            if ( ( entryUUID == null ) || !isEntryUuidId() )
             {
                 id = master.getNextId( entry );
             }
@@ -883,6 +918,389 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * Adds a batch of entries directly into the partition, without going through the
+     * interceptor chain. The entries must be schema aware, carry all their operational
+     * attributes, and come after their parent, which can be either already stored or
+     * part of the batch. The whole batch is added while holding the write lock.<br>
+     * Instead of updating the indexes entry by entry, the index tuples of the batch are
+     * gathered and sorted before being added, and the children and descendants counts of
+     * the entries which already exist are updated once per batch.<br>
+     * The whole batch is checked before anything is written, so that a rejected entry
+     * leaves the partition untouched. The RDN index is then updated, followed by the
+     * alias indexes, as an alias may target an entry of the batch, and by the other
+     * indexes and the master table.
+     *
+     * @param session The session used to get the operation lock
+     * @param entries The entries to add
+     * @throws LdapException If an entry already exists, has no parent, lacks
+     * an ObjectClass or entryCSN, or is an alias which can't be added
+     */
+    public void addBatch( CoreSession session, List<Entry> entries ) throws LdapException
+    {
+        rwLock = session.getDirectoryService().getOperationManager().getRWLock();
+
+        lockWrite();
+
+        try
+        {
+            // The IDs and RDN keys of the entries of the batch
+            Map<Dn, String> batchIds = new HashMap<Dn, String>();
+            Map<String, ParentIdAndRdn> batchKeys = new HashMap<String, ParentIdAndRdn>();
+
+            // The number of children and descendants added below the existing entries
+            Map<String, int[]> existingCounts = new HashMap<String, int[]>();
+
+            // The index tuples, which are added once the whole batch has been processed
+            Map<Index<?, String>, List<IndexEntry<Object, String>>> indexTuples =
+                new HashMap<Index<?, String>, List<IndexEntry<Object, String>>>();
+
+            // The targets of the aliases of the batch
+            Map<String, Dn> aliasTargets = new LinkedHashMap<String, Dn>();
+
+            Map<String, Entry> sortedEntries = new TreeMap<String, Entry>();
+            String lastCsn = null;
+
+            // First check the whole batch : nothing is written if an entry is rejected
+            for ( Entry entry : entries )
+            {
+                Dn entryDn = entry.getDn();
+
+                if ( batchIds.containsKey( entryDn ) || ( getEntryId( entryDn ) != null ) )
+                {
+                    throw new LdapEntryAlreadyExistsException(
+                        I18n.err( I18n.ERR_250_ENTRY_ALREADY_EXISTS, entryDn.getName() ) );
+                }
+
+                String parentId = null;
+                ParentIdAndRdn key = null;
+
+                if ( entryDn.equals( suffixDn ) )
+                {
+                    parentId = Partition.ROOT_ID;
+                    key = new ParentIdAndRdn( parentId, suffixDn.getRdns() );
+                }
+                else
+                {
+                    Dn parentDn = entryDn.getParent();
+                    parentId = batchIds.get( parentDn );
+
+                    if ( parentId == null )
+                    {
+                        parentId = getEntryId( parentDn );
+                    }
+
+                    if ( parentId == null )
+                    {
+                        throw new LdapNoSuchObjectException( I18n.err( I18n.ERR_216_ID_FOR_PARENT_NOT_FOUND,
+                            parentDn ) );
+                    }
+
+                    key = new ParentIdAndRdn( parentId, entryDn.getRdn() );
+                }
+
+                Attribute entryUUID = entry.get( entryUuidAT );
+                String id = null;
+
+                if ( ( entryUUID == null ) || !isEntryUuidId() )
+                {
+                    id = master.getNextId( entry );
+                }
+                else
+                {
+                    id = entryUUID.getString();
+                }
+
+                Attribute objectClass = entry.get( objectClassAT );
+
+                if ( objectClass == null )
+                {
+                    String msg = I18n.err( I18n.ERR_217, entryDn.getName(), entry );
+                    throw new LdapSchemaViolationException( ResultCodeEnum.OBJECT_CLASS_VIOLATION, msg );
+                }
+
+                Attribute entryCsn = entry.get( entryCsnAT );
+
+                if ( entryCsn == null )
+                {
+                    String msg = I18n.err( I18n.ERR_219, entryDn.getName(), entry );
+                    throw new LdapSchemaViolationException( ResultCodeEnum.OBJECT_CLASS_VIOLATION, msg );
+                }
+
+                lastCsn = entryCsn.getString();
+
+                for ( Value<?> value : objectClass )
+                {
+                    String valueStr = ( String ) value.getNormValue();
+
+                    if ( !valueStr.equals( SchemaConstants.TOP_OC ) )
+                    {
+                        addIndexTuple( indexTuples, objectClassIdx, valueStr, id );
+                    }
+                }
+
+                if ( objectClass.contains( SchemaConstants.ALIAS_OC ) )
+                {
+                    Attribute aliasAttr = entry.get( aliasedObjectNameAT );
+
+                    if ( aliasAttr == null )
+                    {
+                        String msg = I18n.err( I18n.ERR_581, entryDn.getName(), null );
+                        throw new LdapAliasException( msg );
+                    }
+
+                    aliasTargets.put( id, new Dn( schemaManager, aliasAttr.getString() ) );
+                }
+
+                addIndexTuple( indexTuples, entryCsnIdx, entryCsn.getString(), id );
+
+                if ( entry.containsAttribute( administrativeRoleAT ) )
+                {
+                    for ( Value<?> value : entry.get( administrativeRoleAT ) )
+                    {
+                        addIndexTuple( indexTuples, adminRoleIdx, value.getNormValue(), id );
+                    }
+
+                    addIndexTuple( indexTuples, presenceIdx, administrativeRoleAT.getOid(), id );
+                }
+
+                for ( Attribute attribute : entry )
+                {
+                    AttributeType attributeType = attribute.getAttributeType();
+
+                    if ( hasUserIndexOn( attributeType ) )
+                    {
+                        Index<?, String> idx = getUserIndex( attributeType );
+
+                        for ( Value<?> value : attribute )
+                        {
+                            addIndexTuple( indexTuples, idx, value.getNormValue(), id );
+                        }
+
+                        addIndexTuple( indexTuples, presenceIdx, attributeType.getOid(), id );
+                    }
+                }
+
+                // Count the new entry in its ancestors which are part of the batch, then
+                // in the first one which already exists
+                ParentIdAndRdn parentKey = batchKeys.get( parentId );
+
+                if ( parentKey != null )
+                {
+                    parentKey.setNbChildren( parentKey.getNbChildren() + 1 );
+                }
+                else if ( !parentId.equals( Partition.ROOT_ID ) )
+                {
+                    getCounts( existingCounts, parentId )[0]++;
+                }
+
+                String ancestorId = parentId;
+
+                while ( parentKey != null )
+                {
+                    parentKey.setNbDescendants( parentKey.getNbDescendants() + 1 );
+                    ancestorId = parentKey.getParentId();
+                    parentKey = batchKeys.get( ancestorId );
+                }
+
+                if ( !ancestorId.equals( Partition.ROOT_ID ) )
+                {
+                    getCounts( existingCounts, ancestorId )[1]++;
+                }
+
+                entry.put( ApacheSchemaConstants.ENTRY_PARENT_ID_AT, parentId );
+                entry.removeAttributes( entryDnAT );
+
+                batchIds.put( entryDn, id );
+                batchKeys.put( id, key );
+                sortedEntries.put( id, entry );
+            }
+
+            for ( Map.Entry<String, Dn> aliasTarget : aliasTargets.entrySet() )
+            {
+                checkBatchAlias( sortedEntries.get( aliasTarget.getKey() ).getDn(), aliasTarget.getValue(),
+                    batchIds, aliasTargets );
+            }
+
+            // The RDN keys are complete : the descendants of the new entries are in the batch
+            for ( Map.Entry<String, ParentIdAndRdn> batchKey : batchKeys.entrySet() )
+            {
+                rdnIdx.add( batchKey.getValue(), batchKey.getKey() );
+            }
+
+            for ( Map.Entry<String, int[]> counts : existingCounts.entrySet() )
+            {
+                addToRdnIdxCounts( counts.getKey(), counts.getValue()[0], counts.getValue()[1] );
+            }
+
+            // The alias targets of the batch can now be found in the RDN index
+            for ( Map.Entry<String, Dn> aliasTarget : aliasTargets.entrySet() )
+            {
+                addAliasIndices( aliasTarget.getKey(), sortedEntries.get( aliasTarget.getKey() ).getDn(),
+                    aliasTarget.getValue() );
+            }
+
+            for ( Map.Entry<Index<?, String>, List<IndexEntry<Object, String>>> tuples : indexTuples.entrySet() )
+            {
+                Index<Object, String> idx = ( Index<Object, String> ) tuples.getKey();
+                List<IndexEntry<Object, String>> indexEntries = tuples.getValue();
+
+                Collections.sort( indexEntries, INDEX_TUPLE_COMPARATOR );
+
+                for ( IndexEntry<Object, String> indexEntry : indexEntries )
+                {
+                    idx.add( indexEntry.getKey(), indexEntry.getId() );
+                }
+            }
+
+            // The master table is updated in ID order
+            for ( Map.Entry<String, Entry> sortedEntry : sortedEntries.entrySet() )
+            {
+                master.put( sortedEntry.getKey(), sortedEntry.getValue() );
+            }
+
+            if ( lastCsn != null )
+            {
+                setContextCsn( lastCsn );
+            }
+        }
+        catch ( LdapException le )
+        {
+            throw le;
+        }
+        catch ( Exception e )
+        {
+            throw new LdapException( e.getMessage(), e );
+        }
+        finally
+        {
+            unlockWrite();
+        }
+
+        if ( isSyncOnWrite.get() )
+        {
+            try
+            {
+                sync();
+            }
+            catch ( Exception e )
+            {
+                throw new LdapException( e.getMessage(), e );
+            }
+        }
+    }
+
+
+    /**
+     * Checks that an alias of a batch can be added, before anything is written : its
+     * target must belong to the partition, exist or be part of the batch, and not be
+     * an alias itself. These are the checks done by addAliasIndices.
+     *
+     * @param aliasDn The alias Dn
+     * @param aliasTarget The aliased entry Dn
+     * @param batchIds The IDs of the entries of the batch
+     * @param aliasTargets The targets of the aliases of the batch
+     */
+    private void checkBatchAlias( Dn aliasDn, Dn aliasTarget, Map<Dn, String> batchIds,
+        Map<String, Dn> aliasTargets ) throws Exception
+    {
+        if ( !aliasTarget.isDescendantOf( suffixDn ) )
+        {
+            String msg = I18n.err( I18n.ERR_225, suffixDn.getName() );
+            throw new LdapAliasDereferencingException( msg );
+        }
+
+        String targetId = batchIds.get( aliasTarget );
+
+        if ( targetId == null )
+        {
+            targetId = getEntryId( aliasTarget );
+        }
+
+        if ( targetId == null )
+        {
+            String msg = I18n.err( I18n.ERR_581, aliasDn.getName(), aliasTarget );
+            throw new LdapAliasException( msg );
+        }
+
+        if ( aliasTargets.containsKey( targetId ) || ( aliasIdx.reverseLookup( targetId ) != null ) )
+        {
+            String msg = I18n.err( I18n.ERR_227 );
+            throw new LdapAliasDereferencingException( msg );
+        }
+    }
+
+
+    /**
+     * Stores an index tuple of the batch being added
+     */
+    private void addIndexTuple( Map<Index<?, String>, List<IndexEntry<Object, String>>> indexTuples,
+        Index<?, String> index, Object key, String id )
+    {
+        List<IndexEntry<Object, String>> tuples = indexTuples.get( index );
+
+        if ( tuples == null )
+        {
+            tuples = new ArrayList<IndexEntry<Object, String>>();
+            indexTuples.put( index, tuples );
+        }
+
+        IndexEntry<Object, String> tuple = new IndexEntry<Object, String>();
+        tuple.setKey( key );
+        tuple.setId( id );
+        tuples.add( tuple );
+    }
+
+
+    /**
+     * Gets the number of children and descendants added below an existing entry
+     */
+    private int[] getCounts( Map<String, int[]> existingCounts, String id )
+    {
+        int[] counts = existingCounts.get( id );
+
+        if ( counts == null )
+        {
+            counts = new int[2];
+            existingCounts.put( id, counts );
+        }
+
+        return counts;
+    }
+
+
+    /**
+     * Adds some children and descendants to the counts of an existing entry, and
+     * some descendants to the counts of its ancestors.
+     *
+     * @param id The entry ID
+     * @param nbChildren The number of added children
+     * @param nbDescendants The number of added descendants, including the children
+     */
+    private void addToRdnIdxCounts( String id, int nbChildren, int nbDescendants ) throws Exception
+    {
+        boolean isFirst = true;
+        ParentIdAndRdn key = rdnIdx.reverseLookup( id );
+
+        while ( key != null )
+        {
+            rdnIdx.drop( id );
+
+            if ( isFirst )
+            {
+                key.setNbChildren( key.getNbChildren() + nbChildren );
+                isFirst = false;
+            }
+
+            key.setNbDescendants( key.getNbDescendants() + nbDescendants );
+            rdnIdx.add( key, id );
+
+            id = key.getParentId();
+            key = rdnIdx.reverseLookup( id );
+        }
+    }
+
+
     //---------------------------------------------------------------------------------------------
     // The Delete operation
     //---------------------------------------------------------------------------------------------
@@ -923,10 +1341,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 throw cnee;
             }
 
+            // Evict the entry before the deletion, while its entryUUID can still
+            // be mapped to its ID
+            updateCache( deleteContext );
+
             // We now defer the deletion to the implementing class
             Entry deletedEntry = delete( id );
-
-            updateCache( deleteContext );
             
             return deletedEntry;
         }
@@ -1216,7 +1636,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     {
         try
         {
-            rwLock.readLock().lock();
+            lockRead();
 
             Dn dn = buildEntryDn( id );
 
@@ -1228,7 +1648,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         }
         finally
         {
-            rwLock.readLock().unlock();
+            unlockRead();
         }
     }
 
@@ -1248,34 +1668,28 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
             if ( entry != null )
             {
-                entry.setDn( dn );
+                partitionMetrics.cacheHit();
 
-                entry = new ClonedServerEntry( entry );
+                // The cached entry is shared : only modify the view built on top of it
+                entry = new CopyOnWriteServerEntry( entry );
+                entry.setDn( dn );
 
                 // Replace the entry's DN with the provided one
-                Attribute entryDnAt = entry.get( entryDnAT );
-
-                if ( entryDnAt == null )
-                {
-                    entry.add( entryDnAT, dn.getName() );
-                }
-                else
-                {
-                    entryDnAt.clear();
-                    entryDnAt.add( dn.getName() );
-                }
+                entry.put( entryDnAT, dn.getName() );
 
                 return entry;
             }
 
+            partitionMetrics.cacheMiss();
+
             try
             {
-                rwLock.readLock().lock();
+                lockRead();
                 entry = master.get( id );
             }
             finally
             {
-                rwLock.readLock().unlock();
+                unlockRead();
             }
 
             if ( entry != null )
@@ -1286,7 +1700,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 // always store original entry in the cache
                 addToCache( id, entry );
 
-                entry = new ClonedServerEntry( entry );
+                entry = new CopyOnWriteServerEntry( entry );
 
                 if ( !entry.containsAttribute( entryDnAT ) )
                 {
@@ -1688,7 +2102,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         {
             Index<?, String> index = getUserIndex( attributeType );
 
-            Attribute attribute = entry.get( attributeType ).clone();
+            Attribute attribute = entry.get( attributeType );
             int nbValues = 0;
 
             if ( attribute != null )
@@ -1708,12 +2122,14 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             }
             else
             {
+                // Count the removed values without copying the attribute, which may be huge
+                Set<Value<?>> removedValues = new HashSet<Value<?>>();
+
                 for ( Value<?> value : mods )
                 {
-                    if ( attribute.contains( value ) )
+                    if ( ( attribute != null ) && attribute.contains( value ) && removedValues.add( value ) )
                     {
                         nbValues--;
-                        attribute.remove( value );
                     }
 
                     ( ( Index ) index ).drop( value.getNormValue(), id );
@@ -2398,7 +2814,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         
         try
         {
-            rwLock.readLock().lock();
+            lockRead();
 
             Element el = entryDnCache.get( id );
             
@@ -2467,7 +2883,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         }
         finally
         {
-            rwLock.readLock().unlock();
+            unlockRead();
         }
     }
 
@@ -2525,7 +2941,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             // Check into the Rdn index, starting with the partition Suffix
             try
             {
-                rwLock.readLock().lock();
+                lockRead();
                 String currentId = rdnIdx.forwardLookup( suffixKey );
 
                 for ( int i = dn.size() - suffixDn.size(); i > 0; i-- )
@@ -2544,7 +2960,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             }
             finally
             {
-                rwLock.readLock().unlock();
+                unlockRead();
             }
         }
         catch ( Exception e )
@@ -2561,7 +2977,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     {
         try
         {
-            rwLock.readLock().lock();
+            lockRead();
             ParentIdAndRdn key = rdnIdx.reverseLookup( childId );
 
             if ( key == null )
@@ -2573,7 +2989,7 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         }
         finally
         {
-            rwLock.readLock().unlock();
+            unlockRead();
         }
     }
 
@@ -2589,12 +3005,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
             try
             {
-                rwLock.readLock().lock();
+                lockRead();
                 suffixId = rdnIdx.forwardLookup( key );
             }
             finally
             {
-                rwLock.readLock().unlock();
+                unlockRead();
             }
         }
 
@@ -3183,12 +3599,27 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * Tells if the reads are protected by the read lock. A store whose tables can be read
+     * while they are being modified can let its readers run during the updates.
+     *
+     * @return <code>true</code> if the reads have to take the read lock
+     */
+    protected boolean isReadLocked()
+    {
+        return true;
+    }
+
+
     /**
      * Acquire a Read lock
      */
     private void lockRead()
     {
-        rwLock.readLock().lock();
+        if ( isReadLocked() )
+        {
+            rwLock.readLock().lock();
+        }
     }
 
 
@@ -3197,7 +3628,10 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
      */
     private void unlockRead()
     {
-        rwLock.readLock().unlock();
+        if ( isReadLocked() )
+        {
+            rwLock.readLock().unlock();
+        }
     }
 
 
@@ -3403,7 +3837,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             String contextEntryId = getEntryId( getSuffixDn() );
             Entry origEntry = fetch( contextEntryId );
             
-            origEntry = ( ( ClonedServerEntry ) origEntry ).getOriginalEntry();
+            // The original entry may be cached and shared, work on a copy
+            origEntry = ( ( ClonedServerEntry ) origEntry ).getOriginalEntry().clone();
             
             origEntry.removeAttributes( contextCsnAT, entryDnAT );
             
@@ -3411,6 +3846,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             
             master.put( contextEntryId, origEntry );
             
+            addToCache( contextEntryId, origEntry );
+            
             ctxCsnChanged = false;
             
             LOG.debug( "Saved context CSN {} for the partition {}", contextCsn, suffixDn );
@@ -3422,6 +3859,42 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
     
     
+    /**
+     * Tells if the entries are stored using their entryUUID as ID. The partitions
+     * which generate their own IDs must override this method, and must maintain
+     * an index on the entryUUID attribute to map the UUIDs to the IDs.
+     *
+     * @return <tt>true</tt> if the ID of an entry is its entryUUID
+     */
+    protected boolean isEntryUuidId()
+    {
+        return true;
+    }
+
+
+    /**
+     * Gets the ID of an entry from its entryUUID.
+     *
+     * @param entry The entry
+     * @return The entry ID, or null if the entry is not stored in this partition
+     * @throws Exception If the entryUUID index can't be read
+     */
+    @SuppressWarnings("unchecked")
+    protected String getIdFromEntryUuid( Entry entry ) throws Exception
+    {
+        Attribute entryUUID = entry.get( entryUuidAT );
+
+        if ( isEntryUuidId() )
+        {
+            return entryUUID.getString();
+        }
+
+        Index<String, String> entryUuidIdx = ( Index<String, String> ) getUserIndex( entryUuidAT );
+
+        return entryUuidIdx.forwardLookup( ( String ) entryUUID.get().getNormValue() );
+    }
+
+
     /**
      * Return the number of children and subordinates for a given entry
      *
@@ -3438,15 +3911,15 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             // Check into the Rdn index, starting with the partition Suffix
             try
             {
-                rwLock.readLock().lock();
-                ParentIdAndRdn parentIdAndRdn = rdnIdx.reverseLookup( entry.get( SchemaConstants.ENTRY_UUID_AT ).getString() );
+                lockRead();
+                ParentIdAndRdn parentIdAndRdn = rdnIdx.reverseLookup( getIdFromEntryUuid( entry ) );
 
                 subordinates.setNbChildren( parentIdAndRdn.getNbChildren() );
                 subordinates.setNbSubordinates( parentIdAndRdn.getNbDescendants() );
             }
             finally
             {
-                rwLock.readLock().unlock();
+                unlockRead();
             }
         }
         catch ( Exception e )
@@ -30,6 +30,7 @@ import org.apache.directory.api.ldap.model.cursor.CursorException;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.server.core.api.monitor.PartitionMetrics;
 import org.apache.directory.server.xdbm.IndexEntry;
 import org.apache.directory.server.xdbm.search.Evaluator;
 import org.apache.directory.server.xdbm.search.PartitionSearchResult;
@@ -53,6 +54,9 @@ public class EntryCursorAdaptor extends AbstractCursor<Entry>
     private final Cursor<IndexEntry<String, String>> indexCursor;
     private final Evaluator<? extends ExprNode> evaluator;
 
+    /** The partition counters */
+    private final PartitionMetrics partitionMetrics;
+
 
     public EntryCursorAdaptor( AbstractBTreePartition db, PartitionSearchResult searchResult )
     {
@@ -63,6 +67,7 @@ public class EntryCursorAdaptor extends AbstractCursor<Entry>
 
         indexCursor = searchResult.getResultSet();
         evaluator = searchResult.getEvaluator();
+        partitionMetrics = db.getPartitionMetrics();
     }
 
 
@@ -210,6 +215,8 @@ public class EntryCursorAdaptor extends AbstractCursor<Entry>
      */
     public boolean next() throws LdapException, CursorException
     {
+        partitionMetrics.cursorStep();
+
         return indexCursor.next();
     }
 
@@ -219,6 +226,8 @@ public class EntryCursorAdaptor extends AbstractCursor<Entry>
      */
     public boolean previous() throws LdapException, CursorException
     {
+        partitionMetrics.cursorStep();
+
         return indexCursor.previous();
     }
 
@@ -0,0 +1,245 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.skiplist;
+
+
+import java.net.URI;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.comparators.UuidComparator;
+import org.apache.directory.server.constants.ApacheSchemaConstants;
+import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.xdbm.Index;
+import org.apache.directory.server.xdbm.impl.skiplist.SkipListIndex;
+import org.apache.directory.server.xdbm.impl.skiplist.SkipListMasterTable;
+import org.apache.directory.server.xdbm.impl.skiplist.SkipListRdnIndex;
+import org.apache.directory.server.xdbm.search.impl.CursorBuilder;
+import org.apache.directory.server.xdbm.search.impl.DefaultOptimizer;
+import org.apache.directory.server.xdbm.search.impl.DefaultSearchEngine;
+import org.apache.directory.server.xdbm.search.impl.EvaluatorBuilder;
+import org.apache.directory.server.xdbm.search.impl.NoOpOptimizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An XDBM Partition backed by in memory concurrent skip lists. Unlike the AvlPartition,
+ * whose tables are not thread safe, the tables and indexes of this partition can be
+ * read while they are modified : the searches never block on the structures of the
+ * partition, and the updates of different keys don't contend. It's meant to be used
+ * for small and hot data sets, like sessions or tokens, which don't need to survive
+ * a restart.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SkipListPartition extends AbstractBTreePartition
+{
+    /** static logger */
+    private static final Logger LOG = LoggerFactory.getLogger( SkipListPartition.class );
+
+
+    /**
+     * Creates a store based on concurrent skip lists.
+     * 
+     * @param schemaManager the schema manager
+     */
+    public SkipListPartition( SchemaManager schemaManager )
+    {
+        super( schemaManager );
+    }
+
+
+    /**
+     * Creates a store based on concurrent skip lists.
+     *
+     * @param schemaManager the schema manager
+     * @param dnFactory the DN factory
+     */
+    public SkipListPartition( SchemaManager schemaManager, DnFactory dnFactory )
+    {
+        super( schemaManager, dnFactory );
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doRepair() throws Exception
+    {
+        // Nothing to do
+    }
+
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doInit() throws Exception
+    {
+        if ( !initialized )
+        {
+            EvaluatorBuilder evaluatorBuilder = new EvaluatorBuilder( this, schemaManager );
+            CursorBuilder cursorBuilder = new CursorBuilder( this, evaluatorBuilder );
+
+            // setup optimizer and registries for parent
+            if ( !optimizerEnabled )
+            {
+                setOptimizer( new NoOpOptimizer() );
+            }
+            else
+            {
+                setOptimizer( new DefaultOptimizer<Entry>( this ) );
+            }
+
+            setSearchEngine( new DefaultSearchEngine( this, cursorBuilder, evaluatorBuilder, getOptimizer() ) );
+
+            if ( isInitialized() )
+            {
+                return;
+            }
+
+            // Create the master table (the table containing all the entries)
+            master = new SkipListMasterTable( id, UuidComparator.INSTANCE, null, false );
+
+            super.doInit();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getDefaultId()
+    {
+        return Partition.DEFAULT_ID;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getRootId()
+    {
+        return Partition.ROOT_ID;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void sync() throws Exception
+    {
+        // Nothing to do
+    }
+
+
+    /**
+     * always returns false, cause this is a in-memory store
+     */
+    @Override
+    public boolean isSyncOnWrite()
+    {
+        return false;
+    }
+
+
+    /**
+     * Always returns false : the skip lists can be read while they are modified, and the
+     * master table never gives back the stored entries, so the fetches and the cursors
+     * don't wait for the updates to be done.
+     */
+    @Override
+    protected boolean isReadLocked()
+    {
+        return false;
+    }
+
+
+    /**
+     * Always returns 0 (zero), cause this is a in-memory store
+     */
+    @Override
+    public int getCacheSize()
+    {
+        return 0;
+    }
+
+
+    @Override
+    protected Index<?, String> convertAndInit( Index<?, String> index ) throws Exception
+    {
+        SkipListIndex<?> skipListIndex;
+
+        if ( index.getAttributeId().equals( ApacheSchemaConstants.APACHE_RDN_AT_OID ) )
+        {
+            skipListIndex = new SkipListRdnIndex( index.getAttributeId() );
+        }
+        else if ( index instanceof SkipListIndex<?> )
+        {
+            skipListIndex = ( SkipListIndex<?> ) index;
+        }
+        else
+        {
+            LOG.debug( "Supplied index {} is not a SkipListIndex. "
+                + "Will create new SkipListIndex using copied configuration parameters.", index );
+            skipListIndex = new SkipListIndex( index.getAttributeId(), true );
+        }
+
+        skipListIndex.init( schemaManager, schemaManager.lookupAttributeTypeRegistry( index.getAttributeId() ) );
+
+        return skipListIndex;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    protected final Index createSystemIndex( String oid, URI path, boolean withReverse ) throws Exception
+    {
+        SkipListIndex<?> skipListIndex;
+
+        if ( oid.equals( ApacheSchemaConstants.APACHE_RDN_AT_OID ) )
+        {
+            skipListIndex = new SkipListRdnIndex( oid );
+        }
+        else
+        {
+            LOG.debug( "Supplied index {} is not a SkipListIndex. "
+                + "Will create new SkipListIndex using copied configuration parameters." );
+            skipListIndex = new SkipListIndex( oid, withReverse );
+        }
+
+        return skipListIndex;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public URI getPartitionPath()
+    {
+        // It's a in-memory partition, return null
+        return null;
+    }
+}
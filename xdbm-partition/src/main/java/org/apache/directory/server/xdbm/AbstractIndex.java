@@ -119,6 +119,15 @@ public abstract class AbstractIndex<K, ID> implements Index<K, ID>
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isOrdered()
+    {
+        return true;
+    }
+
+
     /**
      * Gets the size of the index cache in terms of the number of index entries to be cached.
      *
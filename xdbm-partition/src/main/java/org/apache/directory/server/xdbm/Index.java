@@ -244,4 +244,14 @@ public interface Index<K, ID>
      * @return true if the index has a reverse table
      */
     boolean hasReverse();
+
+
+    /**
+     * Tells if the index keeps its keys ordered. An unordered index (a hash index)
+     * can only be used to evaluate the equality and presence filters, the ordering
+     * and substring filters being evaluated by scanning the master table.
+     *
+     * @return true if the keys are ordered
+     */
+    boolean isOrdered();
 }
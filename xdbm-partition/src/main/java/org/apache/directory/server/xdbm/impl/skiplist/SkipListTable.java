@@ -0,0 +1,678 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.impl.skiplist;
+
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.EmptyCursor;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.xdbm.AbstractTable;
+
+
+/**
+ * A Table implementation backed by in memory concurrent skip lists. The reads and the
+ * cursors never lock, and don't need the partition lock to be consistent : a cursor
+ * sees the tuples added or removed after its creation, or not, but never fails. The
+ * writes on different keys don't contend ; the writes on the duplicate values of a
+ * same key are serialized.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SkipListTable<K, V> extends AbstractTable<K, V>
+{
+    /** The tuples, when the duplicate keys are not allowed */
+    private final ConcurrentSkipListMap<K, V> singles;
+
+    /** The sets of values, when the duplicate keys are allowed. A set is never empty for long */
+    private final ConcurrentSkipListMap<K, NavigableSet<V>> duplicates;
+
+    /** The number of tuples, which is updated concurrently */
+    private final AtomicLong tupleCount = new AtomicLong();
+
+
+    public SkipListTable( String name, Comparator<K> keyComparator, Comparator<V> valueComparator,
+        boolean dupsEnabled )
+    {
+        super( null, name, keyComparator, valueComparator );
+        allowsDuplicates = dupsEnabled;
+
+        if ( dupsEnabled )
+        {
+            singles = null;
+            duplicates = new ConcurrentSkipListMap<K, NavigableSet<V>>( keyComparator );
+        }
+        else
+        {
+            singles = new ConcurrentSkipListMap<K, V>( keyComparator );
+            duplicates = null;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws Exception
+    {
+        if ( allowsDuplicates )
+        {
+            duplicates.clear();
+        }
+        else
+        {
+            singles.clear();
+        }
+
+        tupleCount.set( 0L );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count()
+    {
+        return tupleCount.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public long count( K key ) throws Exception
+    {
+        if ( key == null )
+        {
+            return 0L;
+        }
+
+        if ( allowsDuplicates )
+        {
+            NavigableSet<V> values = duplicates.get( key );
+
+            return values == null ? 0L : values.size();
+        }
+
+        return singles.containsKey( key ) ? 1L : 0L;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public V get( K key ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return null;
+        }
+
+        if ( allowsDuplicates )
+        {
+            NavigableSet<V> values = duplicates.get( key );
+
+            return values == null ? null : first( values );
+        }
+
+        return singles.get( key );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public long greaterThanCount( K key ) throws Exception
+    {
+        return tupleCount.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public long lessThanCount( K key ) throws Exception
+    {
+        return tupleCount.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean has( K key ) throws Exception
+    {
+        return ( key != null ) && ( get( key ) != null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean has( K key, V value ) throws LdapException
+    {
+        if ( ( key == null ) || ( value == null ) )
+        {
+            return false;
+        }
+
+        if ( allowsDuplicates )
+        {
+            NavigableSet<V> values = duplicates.get( key );
+
+            return ( values != null ) && values.contains( value );
+        }
+
+        V stored = singles.get( key );
+
+        return ( stored != null ) && ( compareValues( stored, value ) == 0 );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasGreaterOrEqual( K key ) throws Exception
+    {
+        return ( key != null ) && ( next( key, null, true, null ) != null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasGreaterOrEqual( K key, V val ) throws LdapException
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        if ( allowsDuplicates )
+        {
+            Map.Entry<K, NavigableSet<V>> entry = duplicates.ceilingEntry( key );
+
+            return ( entry != null ) && ( entry.getValue().ceiling( val ) != null );
+        }
+
+        Map.Entry<K, V> entry = singles.ceilingEntry( key );
+
+        return ( entry != null ) && ( compareValues( entry.getValue(), val ) >= 0 );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasLessOrEqual( K key ) throws Exception
+    {
+        return ( key != null ) && ( previous( key, null, true, null ) != null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasLessOrEqual( K key, V val ) throws Exception
+    {
+        if ( key == null )
+        {
+            return false;
+        }
+
+        if ( allowsDuplicates )
+        {
+            Map.Entry<K, NavigableSet<V>> entry = duplicates.floorEntry( key );
+
+            return ( entry != null ) && ( entry.getValue().floor( val ) != null );
+        }
+
+        Map.Entry<K, V> entry = singles.floorEntry( key );
+
+        return ( entry != null ) && ( compareValues( entry.getValue(), val ) <= 0 );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isDupsEnabled()
+    {
+        return allowsDuplicates;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void put( K key, V value ) throws Exception
+    {
+        if ( ( key == null ) || ( value == null ) )
+        {
+            return;
+        }
+
+        if ( !allowsDuplicates )
+        {
+            if ( singles.put( key, value ) == null )
+            {
+                tupleCount.incrementAndGet();
+            }
+
+            return;
+        }
+
+        while ( true )
+        {
+            NavigableSet<V> values = duplicates.get( key );
+
+            if ( values == null )
+            {
+                NavigableSet<V> newValues = new ConcurrentSkipListSet<V>( valueComparator );
+                values = duplicates.putIfAbsent( key, newValues );
+
+                if ( values == null )
+                {
+                    values = newValues;
+                }
+            }
+
+            synchronized ( values )
+            {
+                // The set may have been removed because it was empty : retry with a new one
+                if ( duplicates.get( key ) != values )
+                {
+                    continue;
+                }
+
+                if ( values.add( value ) )
+                {
+                    tupleCount.incrementAndGet();
+                }
+
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void remove( K key ) throws Exception
+    {
+        if ( key == null )
+        {
+            return;
+        }
+
+        if ( !allowsDuplicates )
+        {
+            if ( singles.remove( key ) != null )
+            {
+                tupleCount.decrementAndGet();
+            }
+
+            return;
+        }
+
+        NavigableSet<V> values = duplicates.remove( key );
+
+        if ( values != null )
+        {
+            synchronized ( values )
+            {
+                tupleCount.addAndGet( -values.size() );
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void remove( K key, V value ) throws Exception
+    {
+        if ( ( key == null ) || ( value == null ) )
+        {
+            return;
+        }
+
+        if ( !allowsDuplicates )
+        {
+            V stored = singles.get( key );
+
+            if ( ( stored != null ) && ( compareValues( stored, value ) == 0 ) && singles.remove( key, stored ) )
+            {
+                tupleCount.decrementAndGet();
+            }
+
+            return;
+        }
+
+        NavigableSet<V> values = duplicates.get( key );
+
+        if ( values == null )
+        {
+            return;
+        }
+
+        synchronized ( values )
+        {
+            if ( ( duplicates.get( key ) == values ) && values.remove( value ) )
+            {
+                tupleCount.decrementAndGet();
+
+                if ( values.isEmpty() )
+                {
+                    duplicates.remove( key, values );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Cursor<Tuple<K, V>> cursor() throws LdapException
+    {
+        return new SkipListTableCursor<K, V>( this, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Cursor<Tuple<K, V>> cursor( K key ) throws Exception
+    {
+        if ( key == null )
+        {
+            return new EmptyCursor<Tuple<K, V>>();
+        }
+
+        return new SkipListTableCursor<K, V>( this, key );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Cursor<V> valueCursor( K key ) throws Exception
+    {
+        if ( key == null )
+        {
+            return new EmptyCursor<V>();
+        }
+
+        return new SkipListValueCursor<K, V>( new SkipListTableCursor<K, V>( this, key ) );
+    }
+
+
+    /**
+     * Finds the first tuple after a position. The position is given by a key and a value :
+     * a null key stands for the beginning of the table, a null value stands for the lowest
+     * value of the key when inclusive, and for the greatest value otherwise.
+     *
+     * @param key The key, or null
+     * @param value The value, or null
+     * @param inclusive Tells if the tuple at the position can be returned
+     * @param onlyKey The only key which can be returned, or null
+     * @return The found tuple, or null
+     */
+    Tuple<K, V> next( K key, V value, boolean inclusive, K onlyKey )
+    {
+        if ( onlyKey != null )
+        {
+            if ( key == null )
+            {
+                key = onlyKey;
+                value = null;
+                inclusive = true;
+            }
+            else if ( keyComparator.compare( key, onlyKey ) != 0 )
+            {
+                return null;
+            }
+        }
+
+        Tuple<K, V> tuple;
+
+        if ( allowsDuplicates )
+        {
+            tuple = nextDuplicate( key, value, inclusive );
+        }
+        else
+        {
+            tuple = nextSingle( key, value, inclusive );
+        }
+
+        if ( ( tuple != null ) && ( onlyKey != null ) && ( keyComparator.compare( tuple.getKey(), onlyKey ) != 0 ) )
+        {
+            return null;
+        }
+
+        return tuple;
+    }
+
+
+    /**
+     * Finds the last tuple before a position. The position is given by a key and a value :
+     * a null key stands for the end of the table, a null value stands for the greatest value
+     * of the key when inclusive, and for the lowest value otherwise.
+     *
+     * @param key The key, or null
+     * @param value The value, or null
+     * @param inclusive Tells if the tuple at the position can be returned
+     * @param onlyKey The only key which can be returned, or null
+     * @return The found tuple, or null
+     */
+    Tuple<K, V> previous( K key, V value, boolean inclusive, K onlyKey )
+    {
+        if ( onlyKey != null )
+        {
+            if ( key == null )
+            {
+                key = onlyKey;
+                value = null;
+                inclusive = true;
+            }
+            else if ( keyComparator.compare( key, onlyKey ) != 0 )
+            {
+                return null;
+            }
+        }
+
+        Tuple<K, V> tuple;
+
+        if ( allowsDuplicates )
+        {
+            tuple = previousDuplicate( key, value, inclusive );
+        }
+        else
+        {
+            tuple = previousSingle( key, value, inclusive );
+        }
+
+        if ( ( tuple != null ) && ( onlyKey != null ) && ( keyComparator.compare( tuple.getKey(), onlyKey ) != 0 ) )
+        {
+            return null;
+        }
+
+        return tuple;
+    }
+
+
+    private Tuple<K, V> nextSingle( K key, V value, boolean inclusive )
+    {
+        Map.Entry<K, V> entry = ( key == null ) ? singles.firstEntry() : singles.ceilingEntry( key );
+
+        if ( ( entry != null ) && ( key != null ) && ( keyComparator.compare( entry.getKey(), key ) == 0 ) )
+        {
+            int res = ( value == null ) ? ( inclusive ? 1 : -1 ) : compareValues( entry.getValue(), value );
+
+            if ( ( res < 0 ) || ( ( res == 0 ) && !inclusive ) )
+            {
+                entry = singles.higherEntry( key );
+            }
+        }
+
+        return ( entry == null ) ? null : new Tuple<K, V>( entry.getKey(), entry.getValue() );
+    }
+
+
+    private Tuple<K, V> previousSingle( K key, V value, boolean inclusive )
+    {
+        Map.Entry<K, V> entry = ( key == null ) ? singles.lastEntry() : singles.floorEntry( key );
+
+        if ( ( entry != null ) && ( key != null ) && ( keyComparator.compare( entry.getKey(), key ) == 0 ) )
+        {
+            int res = ( value == null ) ? ( inclusive ? -1 : 1 ) : compareValues( entry.getValue(), value );
+
+            if ( ( res > 0 ) || ( ( res == 0 ) && !inclusive ) )
+            {
+                entry = singles.lowerEntry( key );
+            }
+        }
+
+        return ( entry == null ) ? null : new Tuple<K, V>( entry.getKey(), entry.getValue() );
+    }
+
+
+    private Tuple<K, V> nextDuplicate( K key, V value, boolean inclusive )
+    {
+        Map.Entry<K, NavigableSet<V>> entry = ( key == null ) ? duplicates.firstEntry() : duplicates
+            .ceilingEntry( key );
+
+        while ( entry != null )
+        {
+            NavigableSet<V> values = entry.getValue();
+            V found;
+
+            if ( ( key != null ) && ( keyComparator.compare( entry.getKey(), key ) == 0 ) )
+            {
+                if ( value == null )
+                {
+                    found = inclusive ? first( values ) : null;
+                }
+                else
+                {
+                    found = inclusive ? values.ceiling( value ) : values.higher( value );
+                }
+            }
+            else
+            {
+                found = first( values );
+            }
+
+            if ( found != null )
+            {
+                return new Tuple<K, V>( entry.getKey(), found );
+            }
+
+            entry = duplicates.higherEntry( entry.getKey() );
+        }
+
+        return null;
+    }
+
+
+    private Tuple<K, V> previousDuplicate( K key, V value, boolean inclusive )
+    {
+        Map.Entry<K, NavigableSet<V>> entry = ( key == null ) ? duplicates.lastEntry() : duplicates
+            .floorEntry( key );
+
+        while ( entry != null )
+        {
+            NavigableSet<V> values = entry.getValue();
+            V found;
+
+            if ( ( key != null ) && ( keyComparator.compare( entry.getKey(), key ) == 0 ) )
+            {
+                if ( value == null )
+                {
+                    found = inclusive ? last( values ) : null;
+                }
+                else
+                {
+                    found = inclusive ? values.floor( value ) : values.lower( value );
+                }
+            }
+            else
+            {
+                found = last( values );
+            }
+
+            if ( found != null )
+            {
+                return new Tuple<K, V>( entry.getKey(), found );
+            }
+
+            entry = duplicates.lowerEntry( entry.getKey() );
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Compares two values. Without value comparator, the values of a same key are equal.
+     */
+    private int compareValues( V value1, V value2 )
+    {
+        if ( valueComparator == null )
+        {
+            return 0;
+        }
+
+        return valueComparator.compare( value1, value2 );
+    }
+
+
+    /**
+     * @return the first value of a set which may be emptied concurrently, or null
+     */
+    private static <V> V first( NavigableSet<V> values )
+    {
+        Iterator<V> iterator = values.iterator();
+
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+
+    /**
+     * @return the last value of a set which may be emptied concurrently, or null
+     */
+    private static <V> V last( NavigableSet<V> values )
+    {
+        Iterator<V> iterator = values.descendingIterator();
+
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+}
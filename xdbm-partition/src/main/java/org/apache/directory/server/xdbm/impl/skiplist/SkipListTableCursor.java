@@ -0,0 +1,344 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.impl.skiplist;
+
+
+import java.io.IOException;
+
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A Cursor over the tuples of a SkipListTable, or over the tuples of a single key.
+ * The Cursor does not hold any reference in the table : its position is the last
+ * returned tuple, or the tuple it has been positioned before or after, and each move
+ * looks for the next tuple in the table as it is at this moment.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SkipListTableCursor<K, V> extends AbstractCursor<Tuple<K, V>>
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( Loggers.CURSOR_LOG.getName() );
+
+    /** Speedup for logs */
+    private static final boolean IS_DEBUG = LOG_CURSOR.isDebugEnabled();
+
+    /** The possible positions of the cursor */
+    private enum State
+    {
+        BEFORE_FIRST,
+        BEFORE,
+        ON,
+        AFTER,
+        AFTER_LAST
+    }
+
+    /** The browsed table */
+    private final SkipListTable<K, V> table;
+
+    /** The only key this cursor returns, or null if all the tuples are returned */
+    private final K onlyKey;
+
+    /** The current state */
+    private State state = State.BEFORE_FIRST;
+
+    /** The key and the value of the current position */
+    private K currentKey;
+    private V currentValue;
+
+    /** The tuple returned by get() */
+    private Tuple<K, V> returnedTuple;
+
+
+    /**
+     * Creates a new instance of SkipListTableCursor.
+     *
+     * @param table The table to browse
+     * @param onlyKey The only key the cursor returns, or null for all the tuples
+     */
+    public SkipListTableCursor( SkipListTable<K, V> table, K onlyKey )
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Creating SkipListTableCursor {}", this );
+        }
+
+        this.table = table;
+        this.onlyKey = onlyKey;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean available()
+    {
+        return state == State.ON;
+    }
+
+
+    /**
+     * Positions the cursor before a tuple. A null value positions the cursor before
+     * all the values of the key. When the cursor is limited to a key, only the value
+     * of the tuple is considered.
+     */
+    public void before( Tuple<K, V> element ) throws LdapException, CursorException
+    {
+        checkNotClosed( "before()" );
+        setPosition( State.BEFORE, element );
+    }
+
+
+    /**
+     * Positions the cursor after a tuple. A null value positions the cursor after
+     * all the values of the key. When the cursor is limited to a key, only the value
+     * of the tuple is considered.
+     */
+    public void after( Tuple<K, V> element ) throws LdapException, CursorException
+    {
+        checkNotClosed( "after()" );
+        setPosition( State.AFTER, element );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        checkNotClosed( "beforeFirst()" );
+        setPosition( State.BEFORE_FIRST, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void afterLast() throws LdapException, CursorException
+    {
+        checkNotClosed( "afterLast()" );
+        setPosition( State.AFTER_LAST, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean last() throws LdapException, CursorException
+    {
+        afterLast();
+
+        return previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean next() throws LdapException, CursorException
+    {
+        checkNotClosed( "next()" );
+
+        Tuple<K, V> tuple;
+
+        switch ( state )
+        {
+            case BEFORE_FIRST:
+                tuple = table.next( null, null, true, onlyKey );
+                break;
+
+            case BEFORE:
+                tuple = table.next( currentKey, currentValue, true, onlyKey );
+                break;
+
+            case ON:
+            case AFTER:
+                tuple = table.next( currentKey, currentValue, false, onlyKey );
+                break;
+
+            default:
+                return false;
+        }
+
+        if ( tuple == null )
+        {
+            setPosition( State.AFTER_LAST, null );
+
+            return false;
+        }
+
+        setPosition( State.ON, tuple );
+
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean previous() throws LdapException, CursorException
+    {
+        checkNotClosed( "previous()" );
+
+        Tuple<K, V> tuple;
+
+        switch ( state )
+        {
+            case AFTER_LAST:
+                tuple = table.previous( null, null, true, onlyKey );
+                break;
+
+            case AFTER:
+                tuple = table.previous( currentKey, currentValue, true, onlyKey );
+                break;
+
+            case ON:
+            case BEFORE:
+                tuple = table.previous( currentKey, currentValue, false, onlyKey );
+                break;
+
+            default:
+                return false;
+        }
+
+        if ( tuple == null )
+        {
+            setPosition( State.BEFORE_FIRST, null );
+
+            return false;
+        }
+
+        setPosition( State.ON, tuple );
+
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Tuple<K, V> get() throws CursorException
+    {
+        checkNotClosed( "get()" );
+
+        if ( state == State.ON )
+        {
+            return returnedTuple;
+        }
+
+        throw new InvalidCursorPositionException();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing SkipListTableCursor {}", this );
+        }
+
+        super.close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close( Exception reason ) throws IOException
+    {
+        if ( IS_DEBUG )
+        {
+            LOG_CURSOR.debug( "Closing SkipListTableCursor {}", this );
+        }
+
+        super.close( reason );
+    }
+
+
+    /**
+     * Changes the position of the cursor
+     */
+    private void setPosition( State newState, Tuple<K, V> tuple )
+    {
+        state = newState;
+
+        if ( tuple == null )
+        {
+            currentKey = null;
+            currentValue = null;
+            returnedTuple = null;
+        }
+        else
+        {
+            currentKey = ( onlyKey != null ) ? onlyKey : tuple.getKey();
+            currentValue = tuple.getValue();
+            returnedTuple = ( newState == State.ON ) ? tuple : null;
+        }
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString( String tabs )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( tabs ).append( "SkipListTableCursor (" ).append( state ).append( ")" );
+
+        if ( state != State.BEFORE_FIRST && state != State.AFTER_LAST )
+        {
+            sb.append( "#<" ).append( currentKey ).append( ", " ).append( currentValue ).append( ">" );
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        return toString( "" );
+    }
+}
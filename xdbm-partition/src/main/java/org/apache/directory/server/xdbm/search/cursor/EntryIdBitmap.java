@@ -0,0 +1,510 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.search.cursor;
+
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+
+
+/**
+ * A compressed bitmap of sequential entry IDs, the IDs being UUIDs whose most
+ * significant bits are all 0. The IDs are split in chunks of 65536 values : a
+ * chunk containing less than 4096 IDs is stored as a sorted array of 16 bits values,
+ * a denser chunk is stored as a 65536 bits bitmap. Two bitmaps are intersected
+ * word by word, and the number of IDs is always known.
+ *
+ * This class is not thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class EntryIdBitmap
+{
+    /** The maximum number of IDs in an array chunk */
+    private static final int ARRAY_MAX_SIZE = 4096;
+
+    /** The number of longs in a bitmap chunk */
+    private static final int BITMAP_WORDS = 1024;
+
+    /** The beginning of a sequential ID */
+    private static final String SEQUENTIAL_PREFIX = "00000000-0000-0000-";
+
+    /** The length of a UUID String */
+    private static final int UUID_LENGTH = 36;
+
+    /** The high 48 bits of the IDs of each chunk, sorted */
+    private long[] keys = new long[4];
+
+    /** The chunks, either a char[] or a long[] */
+    private Object[] chunks = new Object[4];
+
+    /** The number of IDs in each chunk */
+    private int[] sizes = new int[4];
+
+    /** The number of chunks */
+    private int nbChunks;
+
+    /** The number of IDs */
+    private long cardinality;
+
+
+    /**
+     * Adds an ID to the bitmap. Adding the IDs in ascending order is the fastest.
+     *
+     * @param id The sequential ID, which must not be negative
+     * @return true if the ID was not already present
+     */
+    public boolean add( long id )
+    {
+        long key = id >>> 16;
+        char low = ( char ) id;
+        int pos;
+
+        if ( ( nbChunks > 0 ) && ( keys[nbChunks - 1] == key ) )
+        {
+            pos = nbChunks - 1;
+        }
+        else
+        {
+            pos = Arrays.binarySearch( keys, 0, nbChunks, key );
+
+            if ( pos < 0 )
+            {
+                pos = -pos - 1;
+                insertChunk( pos, key, new char[16], 0 );
+            }
+        }
+
+        boolean added;
+
+        if ( chunks[pos] instanceof long[] )
+        {
+            added = setBit( ( long[] ) chunks[pos], low );
+        }
+        else
+        {
+            added = addToArray( pos, low );
+        }
+
+        if ( added )
+        {
+            sizes[pos]++;
+            cardinality++;
+        }
+
+        return added;
+    }
+
+
+    /**
+     * Tells if the bitmap contains an ID
+     *
+     * @param id The sequential ID
+     * @return true if the ID is present
+     */
+    public boolean contains( long id )
+    {
+        int pos = Arrays.binarySearch( keys, 0, nbChunks, id >>> 16 );
+
+        if ( pos < 0 )
+        {
+            return false;
+        }
+
+        char low = ( char ) id;
+
+        if ( chunks[pos] instanceof long[] )
+        {
+            return ( ( ( long[] ) chunks[pos] )[low >>> 6] & ( 1L << low ) ) != 0L;
+        }
+
+        return Arrays.binarySearch( ( char[] ) chunks[pos], 0, sizes[pos], low ) >= 0;
+    }
+
+
+    /**
+     * @return The number of IDs in the bitmap
+     */
+    public long getCardinality()
+    {
+        return cardinality;
+    }
+
+
+    /**
+     * Computes the intersection of this bitmap with another one. None of the bitmaps
+     * is modified.
+     *
+     * @param other The other bitmap
+     * @return A new bitmap, containing the IDs present in both bitmaps
+     */
+    public EntryIdBitmap and( EntryIdBitmap other )
+    {
+        EntryIdBitmap result = new EntryIdBitmap();
+        int i = 0;
+        int j = 0;
+
+        while ( ( i < nbChunks ) && ( j < other.nbChunks ) )
+        {
+            if ( keys[i] < other.keys[j] )
+            {
+                i++;
+            }
+            else if ( keys[i] > other.keys[j] )
+            {
+                j++;
+            }
+            else
+            {
+                result.andChunks( keys[i], chunks[i], sizes[i], other.chunks[j], other.sizes[j] );
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Adds all the IDs of this bitmap to a set, as UUID Strings, in ascending order.
+     *
+     * @param set The set to feed
+     * @return The number of IDs which were not already present in the set
+     */
+    public long addTo( Set<String> set )
+    {
+        long nbAdded = 0L;
+
+        for ( int i = 0; i < nbChunks; i++ )
+        {
+            long high = keys[i] << 16;
+
+            if ( chunks[i] instanceof long[] )
+            {
+                long[] words = ( long[] ) chunks[i];
+
+                for ( int w = 0; w < BITMAP_WORDS; w++ )
+                {
+                    long word = words[w];
+
+                    while ( word != 0L )
+                    {
+                        int bit = Long.numberOfTrailingZeros( word );
+                        word &= word - 1;
+
+                        if ( set.add( toUuid( high | ( w << 6 ) | bit ) ) )
+                        {
+                            nbAdded++;
+                        }
+                    }
+                }
+            }
+            else
+            {
+                char[] values = ( char[] ) chunks[i];
+
+                for ( int v = 0; v < sizes[i]; v++ )
+                {
+                    if ( set.add( toUuid( high | values[v] ) ) )
+                    {
+                        nbAdded++;
+                    }
+                }
+            }
+        }
+
+        return nbAdded;
+    }
+
+
+    /**
+     * Gets the value of a sequential ID.
+     *
+     * @param id The entry ID
+     * @return The ID value, or -1 if the ID is not a sequential ID
+     */
+    public static long getSequentialId( String id )
+    {
+        if ( ( id == null ) || ( id.length() != UUID_LENGTH ) || !id.startsWith( SEQUENTIAL_PREFIX ) )
+        {
+            return -1L;
+        }
+
+        long value = 0L;
+
+        for ( int i = SEQUENTIAL_PREFIX.length(); i < UUID_LENGTH; i++ )
+        {
+            char c = id.charAt( i );
+
+            if ( i == 23 )
+            {
+                if ( c != '-' )
+                {
+                    return -1L;
+                }
+            }
+            else if ( ( c >= '0' ) && ( c <= '9' ) )
+            {
+                value = ( value << 4 ) | ( c - '0' );
+            }
+            else if ( ( c >= 'a' ) && ( c <= 'f' ) )
+            {
+                value = ( value << 4 ) | ( c - 'a' + 10 );
+            }
+            else
+            {
+                return -1L;
+            }
+        }
+
+        // The IDs above Long.MAX_VALUE are not supported
+        return value < 0L ? -1L : value;
+    }
+
+
+    /**
+     * Converts a sequential ID value to the entry ID
+     *
+     * @param id The ID value
+     * @return The entry ID
+     */
+    public static String toUuid( long id )
+    {
+        return new UUID( 0L, id ).toString();
+    }
+
+
+    /**
+     * Stores the intersection of two chunks, if not empty
+     */
+    private void andChunks( long key, Object chunk1, int size1, Object chunk2, int size2 )
+    {
+        if ( ( chunk1 instanceof long[] ) && ( chunk2 instanceof long[] ) )
+        {
+            long[] words1 = ( long[] ) chunk1;
+            long[] words2 = ( long[] ) chunk2;
+            long[] words = new long[BITMAP_WORDS];
+            int size = 0;
+
+            for ( int w = 0; w < BITMAP_WORDS; w++ )
+            {
+                words[w] = words1[w] & words2[w];
+                size += Long.bitCount( words[w] );
+            }
+
+            if ( size > ARRAY_MAX_SIZE )
+            {
+                appendChunk( key, words, size );
+            }
+            else if ( size > 0 )
+            {
+                appendChunk( key, toArray( words, size ), size );
+            }
+        }
+        else if ( chunk1 instanceof long[] )
+        {
+            andArrayWithBitmap( key, ( char[] ) chunk2, size2, ( long[] ) chunk1 );
+        }
+        else if ( chunk2 instanceof long[] )
+        {
+            andArrayWithBitmap( key, ( char[] ) chunk1, size1, ( long[] ) chunk2 );
+        }
+        else
+        {
+            char[] values1 = ( char[] ) chunk1;
+            char[] values2 = ( char[] ) chunk2;
+            char[] values = new char[Math.min( size1, size2 )];
+            int size = 0;
+            int i = 0;
+            int j = 0;
+
+            while ( ( i < size1 ) && ( j < size2 ) )
+            {
+                if ( values1[i] < values2[j] )
+                {
+                    i++;
+                }
+                else if ( values1[i] > values2[j] )
+                {
+                    j++;
+                }
+                else
+                {
+                    values[size++] = values1[i];
+                    i++;
+                    j++;
+                }
+            }
+
+            if ( size > 0 )
+            {
+                appendChunk( key, values, size );
+            }
+        }
+    }
+
+
+    /**
+     * Stores the values of an array chunk which are present in a bitmap chunk, if any
+     */
+    private void andArrayWithBitmap( long key, char[] values, int size, long[] words )
+    {
+        char[] result = new char[size];
+        int resultSize = 0;
+
+        for ( int i = 0; i < size; i++ )
+        {
+            char low = values[i];
+
+            if ( ( words[low >>> 6] & ( 1L << low ) ) != 0L )
+            {
+                result[resultSize++] = low;
+            }
+        }
+
+        if ( resultSize > 0 )
+        {
+            appendChunk( key, result, resultSize );
+        }
+    }
+
+
+    /**
+     * Adds a value to an array chunk, converting it to a bitmap chunk when it's full
+     */
+    private boolean addToArray( int pos, char low )
+    {
+        char[] values = ( char[] ) chunks[pos];
+        int size = sizes[pos];
+
+        // Fast path : the values are added in ascending order
+        int index = ( ( size == 0 ) || ( values[size - 1] < low ) ) ? -size - 1 : Arrays.binarySearch( values, 0,
+            size, low );
+
+        if ( index >= 0 )
+        {
+            return false;
+        }
+
+        if ( size == ARRAY_MAX_SIZE )
+        {
+            long[] words = new long[BITMAP_WORDS];
+
+            for ( int i = 0; i < size; i++ )
+            {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+
+            chunks[pos] = words;
+
+            return setBit( words, low );
+        }
+
+        index = -index - 1;
+
+        if ( size == values.length )
+        {
+            values = Arrays.copyOf( values, Math.min( size * 2, ARRAY_MAX_SIZE ) );
+            chunks[pos] = values;
+        }
+
+        System.arraycopy( values, index, values, index + 1, size - index );
+        values[index] = low;
+
+        return true;
+    }
+
+
+    /**
+     * Sets a bit in a bitmap chunk
+     */
+    private static boolean setBit( long[] words, char low )
+    {
+        long mask = 1L << low;
+
+        if ( ( words[low >>> 6] & mask ) != 0L )
+        {
+            return false;
+        }
+
+        words[low >>> 6] |= mask;
+
+        return true;
+    }
+
+
+    /**
+     * Converts a bitmap chunk to an array chunk
+     */
+    private static char[] toArray( long[] words, int size )
+    {
+        char[] values = new char[size];
+        int pos = 0;
+
+        for ( int w = 0; w < BITMAP_WORDS; w++ )
+        {
+            long word = words[w];
+
+            while ( word != 0L )
+            {
+                values[pos++] = ( char ) ( ( w << 6 ) | Long.numberOfTrailingZeros( word ) );
+                word &= word - 1;
+            }
+        }
+
+        return values;
+    }
+
+
+    /**
+     * Adds a chunk after the last one
+     */
+    private void appendChunk( long key, Object chunk, int size )
+    {
+        insertChunk( nbChunks, key, chunk, size );
+        cardinality += size;
+    }
+
+
+    /**
+     * Inserts a chunk at a given position
+     */
+    private void insertChunk( int pos, long key, Object chunk, int size )
+    {
+        if ( nbChunks == keys.length )
+        {
+            int capacity = nbChunks * 2;
+            keys = Arrays.copyOf( keys, capacity );
+            chunks = Arrays.copyOf( chunks, capacity );
+            sizes = Arrays.copyOf( sizes, capacity );
+        }
+
+        System.arraycopy( keys, pos, keys, pos + 1, nbChunks - pos );
+        System.arraycopy( chunks, pos, chunks, pos + 1, nbChunks - pos );
+        System.arraycopy( sizes, pos, sizes, pos + 1, nbChunks - pos );
+
+        keys[pos] = key;
+        chunks[pos] = chunk;
+        sizes[pos] = size;
+        nbChunks++;
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.search.cursor;
+
+
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * A set of entry IDs. The IDs which are UUIDs are stored as two longs in an open
+ * addressing hash table, instead of keeping one String and one HashMap node per ID :
+ * a stored UUID uses around 25 bytes instead of 150. The other IDs are stored in
+ * a plain HashSet.
+ *
+ * This class is not thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class EntryIdSet
+{
+    /** The initial number of slots. Must be a power of 2 */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The length of a UUID String */
+    private static final int UUID_LENGTH = 36;
+
+    /** The UUIDs, two longs per slot. A (0, 0) slot is empty */
+    private long[] slots;
+
+    /** The number of UUIDs stored in the table */
+    private int nbUuids;
+
+    /** Tells if the (0, 0) UUID, which can't be stored in the table, is present */
+    private boolean hasZeroUuid;
+
+    /** The IDs which are not UUIDs, created when needed */
+    private Set<String> otherIds;
+
+    /** The most significant bits of the last parsed UUID */
+    private long parsedMsb;
+
+    /** The least significant bits of the last parsed UUID */
+    private long parsedLsb;
+
+
+    /**
+     * Creates a new, empty, instance of EntryIdSet.
+     */
+    public EntryIdSet()
+    {
+        slots = new long[INITIAL_CAPACITY * 2];
+    }
+
+
+    /**
+     * Adds an ID to the set
+     *
+     * @param id The entry ID
+     * @return true if the ID was not already present
+     */
+    public boolean add( String id )
+    {
+        if ( !parse( id ) )
+        {
+            if ( otherIds == null )
+            {
+                otherIds = new HashSet<String>();
+            }
+
+            return otherIds.add( id );
+        }
+
+        if ( ( parsedMsb == 0L ) && ( parsedLsb == 0L ) )
+        {
+            boolean added = !hasZeroUuid;
+            hasZeroUuid = true;
+
+            return added;
+        }
+
+        if ( insert( slots, parsedMsb, parsedLsb ) )
+        {
+            nbUuids++;
+
+            // Keep the load factor under 0.75
+            if ( nbUuids * 4 > slots.length * 3 / 2 )
+            {
+                grow();
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Tells if the set contains an ID
+     *
+     * @param id The entry ID
+     * @return true if the ID is present
+     */
+    public boolean contains( String id )
+    {
+        if ( !parse( id ) )
+        {
+            return ( otherIds != null ) && otherIds.contains( id );
+        }
+
+        if ( ( parsedMsb == 0L ) && ( parsedLsb == 0L ) )
+        {
+            return hasZeroUuid;
+        }
+
+        int mask = slots.length / 2 - 1;
+        int slot = hash( parsedMsb, parsedLsb ) & mask;
+
+        while ( true )
+        {
+            long msb = slots[slot * 2];
+            long lsb = slots[slot * 2 + 1];
+
+            if ( ( msb == 0L ) && ( lsb == 0L ) )
+            {
+                return false;
+            }
+
+            if ( ( msb == parsedMsb ) && ( lsb == parsedLsb ) )
+            {
+                return true;
+            }
+
+            slot = ( slot + 1 ) & mask;
+        }
+    }
+
+
+    /**
+     * @return The number of IDs in the set
+     */
+    public int size()
+    {
+        return nbUuids + ( hasZeroUuid ? 1 : 0 ) + ( otherIds == null ? 0 : otherIds.size() );
+    }
+
+
+    /**
+     * Removes all the IDs from the set
+     */
+    public void clear()
+    {
+        slots = new long[INITIAL_CAPACITY * 2];
+        nbUuids = 0;
+        hasZeroUuid = false;
+        otherIds = null;
+    }
+
+
+    /**
+     * Stores a UUID in a table, if it's not already present
+     *
+     * @return true if the UUID has been added
+     */
+    private static boolean insert( long[] table, long msb, long lsb )
+    {
+        int mask = table.length / 2 - 1;
+        int slot = hash( msb, lsb ) & mask;
+
+        while ( true )
+        {
+            long slotMsb = table[slot * 2];
+            long slotLsb = table[slot * 2 + 1];
+
+            if ( ( slotMsb == 0L ) && ( slotLsb == 0L ) )
+            {
+                table[slot * 2] = msb;
+                table[slot * 2 + 1] = lsb;
+
+                return true;
+            }
+
+            if ( ( slotMsb == msb ) && ( slotLsb == lsb ) )
+            {
+                return false;
+            }
+
+            slot = ( slot + 1 ) & mask;
+        }
+    }
+
+
+    /**
+     * Doubles the number of slots
+     */
+    private void grow()
+    {
+        long[] newSlots = new long[slots.length * 2];
+
+        for ( int i = 0; i < slots.length; i += 2 )
+        {
+            if ( ( slots[i] != 0L ) || ( slots[i + 1] != 0L ) )
+            {
+                insert( newSlots, slots[i], slots[i + 1] );
+            }
+        }
+
+        slots = newSlots;
+    }
+
+
+    /**
+     * Mixes the UUID bits, as the UUID versions leave some of them constant
+     */
+    private static int hash( long msb, long lsb )
+    {
+        long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+
+        return ( int ) h;
+    }
+
+
+    /**
+     * Parses an ID as a UUID (8-4-4-4-12 hexadecimal digits) into parsedMsb and parsedLsb,
+     * without creating any object.
+     *
+     * @return false if the ID is not a UUID
+     */
+    private boolean parse( String id )
+    {
+        if ( ( id == null ) || ( id.length() != UUID_LENGTH ) )
+        {
+            return false;
+        }
+
+        long msb = 0L;
+        long lsb = 0L;
+        int nbDigits = 0;
+
+        for ( int i = 0; i < UUID_LENGTH; i++ )
+        {
+            char c = id.charAt( i );
+
+            if ( ( i == 8 ) || ( i == 13 ) || ( i == 18 ) || ( i == 23 ) )
+            {
+                if ( c != '-' )
+                {
+                    return false;
+                }
+
+                continue;
+            }
+
+            int digit = Character.digit( c, 16 );
+
+            if ( digit < 0 )
+            {
+                return false;
+            }
+
+            if ( nbDigits < 16 )
+            {
+                msb = ( msb << 4 ) | digit;
+            }
+            else
+            {
+                lsb = ( lsb << 4 ) | digit;
+            }
+
+            nbDigits++;
+        }
+
+        parsedMsb = msb;
+        parsedLsb = lsb;
+
+        return true;
+    }
+}
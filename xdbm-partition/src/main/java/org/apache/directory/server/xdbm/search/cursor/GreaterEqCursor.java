@@ -92,7 +92,8 @@ public class GreaterEqCursor<V> extends AbstractIndexCursor<V>
 
         AttributeType attributeType = greaterEqEvaluator.getExpression().getAttributeType();
 
-        if ( store.hasIndexOn( attributeType ) )
+        // A hash index can't be walked in order, the master table is used instead
+        if ( store.hasIndexOn( attributeType ) && store.getIndex( attributeType ).isOrdered() )
         {
             userIdxCursor = ( ( Index<V, String> ) store.getIndex( attributeType ) ).forwardCursor();
             uuidIdxCursor = null;
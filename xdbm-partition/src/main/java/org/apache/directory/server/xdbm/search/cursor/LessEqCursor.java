@@ -86,7 +86,8 @@ public class LessEqCursor<V> extends AbstractIndexCursor<V>
 
         AttributeType attributeType = lessEqEvaluator.getExpression().getAttributeType();
 
-        if ( store.hasIndexOn( attributeType ) )
+        // A hash index can't be walked in order, the master table is used instead
+        if ( store.hasIndexOn( attributeType ) && store.getIndex( attributeType ).isOrdered() )
         {
             userIdxCursor = ( ( Index<V, String> ) store.getIndex( attributeType ) ).forwardCursor();
             uuidIdxCursor = null;
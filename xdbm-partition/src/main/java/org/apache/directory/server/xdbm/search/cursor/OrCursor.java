@@ -22,9 +22,7 @@ package org.apache.directory.server.xdbm.search.cursor;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import org.apache.directory.api.ldap.model.constants.Loggers;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
@@ -56,7 +54,9 @@ public class OrCursor<V> extends AbstractIndexCursor<V>
     private static final String UNSUPPORTED_MSG = I18n.err( I18n.ERR_722 );
     private final List<Cursor<IndexEntry<V, String>>> cursors;
     private final List<Evaluator<? extends ExprNode>> evaluators;
-    private final List<Set<String>> blacklists;
+
+    /** The IDs of the candidates already returned, which must be skipped by each cursor */
+    private final List<EntryIdSet> blacklists;
     private int cursorIndex = -1;
 
     /** The candidate we have fetched in the next/previous call */
@@ -79,11 +79,11 @@ public class OrCursor<V> extends AbstractIndexCursor<V>
 
         this.cursors = cursors;
         this.evaluators = evaluators;
-        this.blacklists = new ArrayList<Set<String>>();
+        this.blacklists = new ArrayList<EntryIdSet>();
 
         for ( int i = 0; i < cursors.size(); i++ )
         {
-            this.blacklists.add( new HashSet<String>() );
+            this.blacklists.add( new EntryIdSet() );
         }
 
         this.cursorIndex = 0;
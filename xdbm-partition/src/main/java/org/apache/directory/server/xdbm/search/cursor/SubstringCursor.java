@@ -27,6 +27,7 @@ import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.cursor.CursorException;
 import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
 import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.xdbm.AbstractIndexCursor;
 import org.apache.directory.server.xdbm.Index;
@@ -67,12 +68,15 @@ public class SubstringCursor extends AbstractIndexCursor<String>
         }
 
         evaluator = substringEvaluator;
-        hasIndex = store.hasIndexOn( evaluator.getExpression().getAttributeType() );
+
+        AttributeType attributeType = evaluator.getExpression().getAttributeType();
+
+        // A hash index can't be walked in order, the master table is used instead
+        hasIndex = store.hasIndexOn( attributeType ) && store.getIndex( attributeType ).isOrdered();
 
         if ( hasIndex )
         {
-            wrapped = ( ( Index<String, String> ) store.getIndex( evaluator.getExpression().getAttributeType() ) )
-                .forwardCursor();
+            wrapped = ( ( Index<String, String> ) store.getIndex( attributeType ) ).forwardCursor();
         }
         else
         {
@@ -20,10 +20,14 @@
 package org.apache.directory.server.xdbm.search.impl;
 
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.filter.AndNode;
@@ -45,6 +49,7 @@ import org.apache.directory.api.ldap.model.schema.MatchingRule;
 import org.apache.directory.api.ldap.model.schema.Normalizer;
 import org.apache.directory.api.ldap.model.schema.normalizers.NoOpNormalizer;
 import org.apache.directory.api.util.exception.NotImplementedException;
+import org.apache.directory.server.core.api.partition.AbstractPartition;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.xdbm.Index;
@@ -56,6 +61,7 @@ import org.apache.directory.server.xdbm.search.PartitionSearchResult;
 import org.apache.directory.server.xdbm.search.cursor.ApproximateCursor;
 import org.apache.directory.server.xdbm.search.cursor.ChildrenCursor;
 import org.apache.directory.server.xdbm.search.cursor.DescendantCursor;
+import org.apache.directory.server.xdbm.search.cursor.EntryIdBitmap;
 import org.apache.directory.server.xdbm.search.evaluator.ApproximateEvaluator;
 
 
@@ -66,6 +72,21 @@ import org.apache.directory.server.xdbm.search.evaluator.ApproximateEvaluator;
  */
 public class CursorBuilder
 {
+    /** The minimal number of candidates for which the bitmaps are used in a conjunction */
+    private static final long BITMAP_THRESHOLD = 1000L;
+
+    /** The maximal ratio between the scanned index entries and the candidates */
+    private static final long BITMAP_SCAN_RATIO = 8L;
+
+    /** Sorts the nodes by ascending count */
+    private static final Comparator<ExprNode> COUNT_COMPARATOR = new Comparator<ExprNode>()
+    {
+        public int compare( ExprNode node1, ExprNode node2 )
+        {
+            return ( ( Long ) node1.get( "count" ) ).compareTo( ( Long ) node2.get( "count" ) );
+        }
+    };
+
     /** The database used by this builder */
     private Store db = null;
 
@@ -86,6 +107,18 @@ public class CursorBuilder
     }
 
 
+    /**
+     * Updates the partition counters, when an index is used to compute the candidates
+     */
+    private void countIndexLookup()
+    {
+        if ( db instanceof AbstractPartition )
+        {
+            ( ( AbstractPartition ) db ).getPartitionMetrics().indexLookup();
+        }
+    }
+
+
     public <T> long build( ExprNode node, PartitionSearchResult searchResult ) throws Exception
     {
         Object count = node.get( "count" );
@@ -214,6 +247,8 @@ public class CursorBuilder
         // Fetch all the UUIDs if we have an index
         if ( db.hasIndexOn( attributeType ) )
         {
+            countIndexLookup();
+
             // Get the cursor using the index
             Index<T, String> userIndex = ( Index<T, String> ) db.getIndex( attributeType );
             Cursor<IndexEntry<T, String>> userIdxCursor = userIndex.forwardCursor( value.getValue() );
@@ -258,8 +293,10 @@ public class CursorBuilder
         int nbResults = 0;
 
         // Fetch all the UUIDs if we have an index
-        if ( db.hasIndexOn( attributeType ) )
+        if ( hasOrderedIndexOn( attributeType ) )
         {
+            countIndexLookup();
+
             // Get the cursor using the index
             Index<T, String> userIndex = ( Index<T, String> ) db.getIndex( attributeType );
             Cursor<IndexEntry<T, String>> userIdxCursor = userIndex.forwardCursor();
@@ -310,8 +347,10 @@ public class CursorBuilder
         int nbResults = 0;
 
         // Fetch all the UUIDs if we have an index
-        if ( db.hasIndexOn( attributeType ) )
+        if ( hasOrderedIndexOn( attributeType ) )
         {
+            countIndexLookup();
+
             // Get the cursor using the index
             Index<T, String> userIndex = ( Index<T, String> ) db.getIndex( attributeType );
             Cursor<IndexEntry<T, String>> userIdxCursor = userIndex.forwardCursor();
@@ -363,6 +402,8 @@ public class CursorBuilder
         // Fetch all the UUIDs if we have an index
         if ( db.hasIndexOn( attributeType ) )
         {
+            countIndexLookup();
+
             // Get the cursor using the index
             Cursor<IndexEntry<String, String>> presenceCursor = db.getPresenceIndex().forwardCursor(
                 attributeType.getOid() );
@@ -405,6 +446,8 @@ public class CursorBuilder
     private long computeOneLevelScope( ScopeNode node, PartitionSearchResult searchResult )
         throws Exception
     {
+        countIndexLookup();
+
         int nbResults = 0;
 
         // We use the RdnIndex to get all the entries from a starting point
@@ -481,6 +524,8 @@ public class CursorBuilder
     private long computeSubLevelScope( ScopeNode node, PartitionSearchResult searchResult )
         throws Exception
     {
+        countIndexLookup();
+
         // If we are searching from the partition DN, better get out.
         String contextEntryId = db.getEntryId( ( ( Partition ) db ).getSuffixDn() );
 
@@ -580,8 +625,10 @@ public class CursorBuilder
         AttributeType attributeType = node.getAttributeType();
 
         // Fetch all the UUIDs if we have an index
-        if ( db.hasIndexOn( attributeType ) )
+        if ( hasOrderedIndexOn( attributeType ) )
         {
+            countIndexLookup();
+
             Index<String, String> userIndex = ( ( Index<String, String> ) db.getIndex( attributeType ) );
             Cursor<IndexEntry<String, String>> cursor = userIndex.forwardCursor();
 
@@ -778,12 +825,166 @@ public class CursorBuilder
 
         // Once found we return the number of candidates for this child
         ExprNode minChild = children.get( minIndex );
+
+        // If the smallest child is a big posting list of a low cardinality index, we
+        // intersect it with the other ones, instead of fetching every candidate
+        if ( ( minValue >= BITMAP_THRESHOLD ) && ( minValue < Long.MAX_VALUE ) && isBitmapCandidate( minChild ) )
+        {
+            long nbResults = computeAndWithBitmaps( children, minValue, searchResult );
+
+            if ( nbResults >= 0L )
+            {
+                return nbResults;
+            }
+        }
+
         long nbResults = build( minChild, searchResult );
 
         return nbResults;
     }
 
 
+    /**
+     * Tells if the candidates of a node can be read as a bitmap : the node must be an
+     * equality on the objectClass or administrativeRole index, or a presence node
+     * using the presence index.
+     */
+    private boolean isBitmapCandidate( ExprNode node ) throws Exception
+    {
+        if ( node.get( "count" ) == null )
+        {
+            return false;
+        }
+
+        if ( node instanceof EqualityNode )
+        {
+            AttributeType attributeType = ( ( EqualityNode<?> ) node ).getAttributeType();
+            String oid = attributeType.getOid();
+
+            return ( SchemaConstants.OBJECT_CLASS_AT_OID.equals( oid )
+                || SchemaConstants.ADMINISTRATIVE_ROLE_AT_OID.equals( oid ) )
+                && db.hasIndexOn( attributeType )
+                && ( node.get( DefaultOptimizer.CANDIDATES_ANNOTATION_KEY ) == null );
+        }
+
+        if ( node instanceof PresenceNode )
+        {
+            return db.hasIndexOn( ( ( PresenceNode ) node ).getAttributeType() );
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Computes the candidates of a conjunction by intersecting the bitmaps of its low
+     * cardinality children. The children which have many more candidates than the
+     * smallest one are not read, they will be evaluated on the candidates. The other
+     * children are evaluated on the candidates too.
+     *
+     * @return The number of candidates, or -1 if the bitmaps can't be used, because
+     * there is only one bitmap child, or because the partition doesn't use sequential IDs
+     */
+    private long computeAndWithBitmaps( List<ExprNode> children, long minValue, PartitionSearchResult searchResult )
+        throws Exception
+    {
+        List<ExprNode> bitmapChildren = new ArrayList<ExprNode>();
+
+        for ( ExprNode child : children )
+        {
+            if ( isBitmapCandidate( child ) && ( ( Long ) child.get( "count" ) <= minValue * BITMAP_SCAN_RATIO ) )
+            {
+                bitmapChildren.add( child );
+            }
+        }
+
+        if ( bitmapChildren.size() < 2 )
+        {
+            return -1L;
+        }
+
+        Collections.sort( bitmapChildren, COUNT_COMPARATOR );
+        EntryIdBitmap candidates = null;
+
+        for ( ExprNode child : bitmapChildren )
+        {
+            EntryIdBitmap bitmap = buildBitmap( child );
+
+            if ( bitmap == null )
+            {
+                return -1L;
+            }
+
+            candidates = ( candidates == null ) ? bitmap : candidates.and( bitmap );
+
+            if ( candidates.getCardinality() == 0L )
+            {
+                return 0L;
+            }
+        }
+
+        return candidates.addTo( searchResult.getCandidateSet() );
+    }
+
+
+    /**
+     * Reads the candidates of an equality or presence node into a bitmap
+     *
+     * @return The bitmap, or null if one of the IDs is not a sequential ID
+     */
+    @SuppressWarnings("unchecked")
+    private EntryIdBitmap buildBitmap( ExprNode node ) throws Exception
+    {
+        countIndexLookup();
+
+        Cursor<? extends IndexEntry<?, String>> cursor;
+
+        if ( node instanceof EqualityNode )
+        {
+            EqualityNode<Object> equalityNode = ( EqualityNode<Object> ) node;
+            Index<Object, String> index = ( Index<Object, String> ) db.getIndex( equalityNode.getAttributeType() );
+            cursor = index.forwardCursor( equalityNode.getValue().getValue() );
+        }
+        else
+        {
+            cursor = db.getPresenceIndex().forwardCursor( ( ( PresenceNode ) node ).getAttributeType().getOid() );
+        }
+
+        EntryIdBitmap bitmap = new EntryIdBitmap();
+
+        try
+        {
+            while ( cursor.next() )
+            {
+                long id = EntryIdBitmap.getSequentialId( cursor.get().getId() );
+
+                if ( id < 0L )
+                {
+                    return null;
+                }
+
+                bitmap.add( id );
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+
+        return bitmap;
+    }
+
+
+    /**
+     * Tells if the attribute has an index whose keys are ordered. The ordering and
+     * substring filters can't be evaluated using a hash index.
+     */
+    private boolean hasOrderedIndexOn( AttributeType attributeType ) throws Exception
+    {
+        return db.hasIndexOn( attributeType ) && db.getIndex( attributeType ).isOrdered();
+    }
+
+
     /**
      * Creates an AndCursor over a conjunction expression branch node.
      *
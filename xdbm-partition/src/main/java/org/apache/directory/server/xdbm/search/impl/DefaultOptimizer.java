@@ -42,6 +42,7 @@ import org.apache.directory.api.ldap.model.filter.PresenceNode;
 import org.apache.directory.api.ldap.model.filter.ScopeNode;
 import org.apache.directory.api.ldap.model.filter.SimpleNode;
 import org.apache.directory.api.ldap.model.filter.SubstringNode;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.i18n.I18n;
@@ -356,7 +357,7 @@ public class DefaultOptimizer<E> implements Optimizer
     @SuppressWarnings("unchecked")
     private <V> long getGreaterLessScan( SimpleNode<V> node, boolean isGreaterThan ) throws Exception
     {
-        if ( db.hasIndexOn( node.getAttributeType() ) )
+        if ( hasOrderedIndexOn( node.getAttributeType() ) )
         {
             Index<V, String> idx = ( Index<V, String> ) db.getIndex( node.getAttributeType() );
 
@@ -387,7 +388,7 @@ public class DefaultOptimizer<E> implements Optimizer
      */
     private long getSubstringScan( SubstringNode node ) throws Exception
     {
-        if ( db.hasIndexOn( node.getAttributeType() ) )
+        if ( hasOrderedIndexOn( node.getAttributeType() ) )
         {
             Index<String, String> idx = ( Index<String, String> ) db.getIndex( node.getAttributeType() );
 
@@ -411,6 +412,20 @@ public class DefaultOptimizer<E> implements Optimizer
     }
 
 
+    /**
+     * Tells if the attribute has an index whose keys are ordered : a hash index
+     * can't be used to count the candidates of an ordering or substring filter.
+     *
+     * @param attributeType The attribute type
+     * @return true if the attribute has an ordered index
+     * @throws Exception if there is an error accessing the index
+     */
+    private boolean hasOrderedIndexOn( AttributeType attributeType ) throws Exception
+    {
+        return db.hasIndexOn( attributeType ) && db.getIndex( attributeType ).isOrdered();
+    }
+
+
     /**
      * Gets the total number of entries within the database index if one is 
      * available otherwise the count of all the entries within the database is
@@ -29,7 +29,10 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
 
 import net.sf.ehcache.store.AbstractStore;
 
@@ -42,6 +45,9 @@ import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Modification;
 import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapAliasDereferencingException;
+import org.apache.directory.api.ldap.model.exception.LdapAliasException;
+import org.apache.directory.api.ldap.model.exception.LdapEntryAlreadyExistsException;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
@@ -53,7 +59,12 @@ import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
 import org.apache.directory.api.util.exception.Exceptions;
 import org.apache.directory.server.constants.ApacheSchemaConstants;
 import org.apache.directory.server.core.api.CacheService;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.MockCoreSession;
+import org.apache.directory.server.core.api.MockDirectoryService;
 import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
 import org.apache.directory.server.xdbm.impl.avl.AvlIndex;
 import org.apache.directory.server.xdbm.impl.avl.AvlPartitionTest;
@@ -402,6 +413,163 @@ public class PartitionTest
     }
 
 
+    @Test
+    public void testAddBatch() throws Exception
+    {
+        String suffixId = partition.getEntryId( partition.getSuffixDn() );
+        long suffixChildren = partition.getChildCount( suffixId );
+
+        // The alias targets an entry of the batch, added after it
+        List<Entry> batch = new ArrayList<Entry>();
+        batch.add( batchEntry( "ou=Batch,o=Good Times Co.",
+            "objectClass: organizationalUnit",
+            "ou: Batch" ) );
+        batch.add( batchEntry( "cn=alias,ou=Batch,o=Good Times Co.",
+            "objectClass: alias",
+            "objectClass: extensibleObject",
+            "cn: alias",
+            "aliasedObjectName: cn=one,ou=Batch,o=Good Times Co." ) );
+        batch.add( batchEntry( "cn=one,ou=Batch,o=Good Times Co.",
+            "objectClass: person",
+            "cn: one",
+            "sn: one" ) );
+
+        partition.addBatch( getSession(), batch );
+
+        String batchId = partition.getEntryId( new Dn( schemaManager, "ou=Batch,o=Good Times Co." ) );
+        assertNotNull( batchId );
+        assertEquals( 2, partition.getChildCount( batchId ) );
+        assertEquals( suffixChildren + 1, partition.getChildCount( suffixId ) );
+        assertEquals( 14, partition.getRdnIndex().count() );
+        assertEquals( 4, partition.getAliasIndex().count() );
+
+        String aliasId = partition.getEntryId( new Dn( schemaManager, "cn=alias,ou=Batch,o=Good Times Co." ) );
+        assertEquals( new Dn( schemaManager, "cn=one,ou=Batch,o=Good Times Co." ),
+            partition.getAliasIndex().reverseLookup( aliasId ) );
+    }
+
+
+    /**
+     * An alias to an unknown entry rejects the whole batch, including the entries
+     * which come before it.
+     */
+    @Test
+    public void testAddBatchWithBrokenAlias() throws Exception
+    {
+        List<Entry> batch = new ArrayList<Entry>();
+        batch.add( batchEntry( "ou=Batch,o=Good Times Co.",
+            "objectClass: organizationalUnit",
+            "ou: Batch" ) );
+        batch.add( batchEntry( "cn=alias,ou=Batch,o=Good Times Co.",
+            "objectClass: alias",
+            "objectClass: extensibleObject",
+            "cn: alias",
+            "aliasedObjectName: cn=nowhere,o=Good Times Co." ) );
+
+        try
+        {
+            partition.addBatch( getSession(), batch );
+            fail();
+        }
+        catch ( LdapAliasException lae )
+        {
+            // Expected
+        }
+
+        assertBatchNotWritten();
+    }
+
+
+    /**
+     * An alias to another alias rejects the whole batch
+     */
+    @Test
+    public void testAddBatchWithAliasChain() throws Exception
+    {
+        List<Entry> batch = new ArrayList<Entry>();
+        batch.add( batchEntry( "ou=Batch,o=Good Times Co.",
+            "objectClass: organizationalUnit",
+            "ou: Batch" ) );
+        batch.add( batchEntry( "cn=alias,ou=Batch,o=Good Times Co.",
+            "objectClass: alias",
+            "objectClass: extensibleObject",
+            "cn: alias",
+            "aliasedObjectName: commonName=Jim Bean,ou=Board of Directors,o=Good Times Co." ) );
+
+        try
+        {
+            partition.addBatch( getSession(), batch );
+            fail();
+        }
+        catch ( LdapAliasDereferencingException lade )
+        {
+            // Expected
+        }
+
+        assertBatchNotWritten();
+    }
+
+
+    /**
+     * An existing entry rejects the whole batch
+     */
+    @Test
+    public void testAddBatchWithExistingEntry() throws Exception
+    {
+        List<Entry> batch = new ArrayList<Entry>();
+        batch.add( batchEntry( "ou=Batch,o=Good Times Co.",
+            "objectClass: organizationalUnit",
+            "ou: Batch" ) );
+        batch.add( batchEntry( "ou=Sales,o=Good Times Co.",
+            "objectClass: organizationalUnit",
+            "ou: Sales" ) );
+
+        try
+        {
+            partition.addBatch( getSession(), batch );
+            fail();
+        }
+        catch ( LdapEntryAlreadyExistsException leaee )
+        {
+            // Expected
+        }
+
+        assertBatchNotWritten();
+    }
+
+
+    private void assertBatchNotWritten() throws Exception
+    {
+        assertNull( partition.getEntryId( new Dn( schemaManager, "ou=Batch,o=Good Times Co." ) ) );
+        assertEquals( 11, partition.getRdnIndex().count() );
+        assertEquals( 3, partition.getAliasIndex().count() );
+        assertEquals( 3, partition.getOneAliasIndex().count() );
+        assertEquals( 3, partition.getSubAliasIndex().count() );
+        assertEquals( 11, partition.getEntryCsnIndex().count() );
+        assertEquals( 11, partition.count() );
+    }
+
+
+    private Entry batchEntry( String dn, String... attributes ) throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager, dn, ( Object[] ) attributes );
+        entry.add( SchemaConstants.OBJECT_CLASS_AT, SchemaConstants.TOP_OC );
+        entry.add( SchemaConstants.ENTRY_CSN_AT, new CsnFactory( 1 ).newInstance().toString() );
+        entry.add( SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString() );
+
+        return entry;
+    }
+
+
+    private CoreSession getSession()
+    {
+        DirectoryService directoryService = new MockDirectoryService();
+        directoryService.setSchemaManager( schemaManager );
+
+        return new MockCoreSession( new LdapPrincipal(), directoryService );
+    }
+
+
     private Entry verifyParentId( Dn dn ) throws Exception
     {
         String entryId = partition.getEntryId( dn );
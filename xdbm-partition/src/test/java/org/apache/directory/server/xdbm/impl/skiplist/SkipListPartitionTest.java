@@ -0,0 +1,450 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.impl.skiplist;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.csn.CsnFactory;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.api.CacheService;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.MockCoreSession;
+import org.apache.directory.server.core.api.MockDirectoryService;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.partition.impl.skiplist.SkipListPartition;
+import org.apache.directory.server.core.shared.DefaultDnFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the SkipListPartition operations, and the searches using its indexes
+ * or scanning its master table.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SkipListPartitionTest
+{
+    private SkipListPartition partition;
+    private CoreSession session;
+
+    private static SchemaManager schemaManager = null;
+    private static DnFactory dnFactory;
+    private static CacheService cacheService;
+    private static CsnFactory csnFactory = new CsnFactory( 0 );
+
+    /** The OU AttributeType instance */
+    private static AttributeType OU_AT;
+
+    /** The description AttributeType instance */
+    private static AttributeType DESCRIPTION_AT;
+
+    private static Dn SUFFIX_DN;
+    private static Dn PEOPLE_DN;
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = SkipListPartitionTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+
+        schemaManager = new DefaultSchemaManager( loader );
+        cacheService = new CacheService();
+        cacheService.initialize( null );
+        dnFactory = new DefaultDnFactory( schemaManager, cacheService.getCache( "dnCache" ) );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+
+        OU_AT = schemaManager.getAttributeType( SchemaConstants.OU_AT );
+        DESCRIPTION_AT = schemaManager.getAttributeType( SchemaConstants.DESCRIPTION_AT );
+
+        SUFFIX_DN = new Dn( schemaManager, "dc=example,dc=com" );
+        PEOPLE_DN = new Dn( schemaManager, "ou=people,dc=example,dc=com" );
+    }
+
+
+    @Before
+    public void createPartition() throws Exception
+    {
+        partition = new SkipListPartition( schemaManager, dnFactory );
+        partition.setId( "example" );
+        partition.setSyncOnWrite( false );
+
+        // ou and cn are indexed, sn and description are not
+        partition.addIndex( new SkipListIndex<String>( SchemaConstants.OU_AT_OID ) );
+        partition.addIndex( new SkipListIndex<String>( SchemaConstants.CN_AT_OID ) );
+        partition.setSuffixDn( SUFFIX_DN );
+
+        partition.setCacheService( cacheService );
+        partition.initialize();
+
+        DirectoryService directoryService = new MockDirectoryService();
+        directoryService.setSchemaManager( schemaManager );
+        session = new MockCoreSession( new LdapPrincipal(), directoryService );
+
+        add( SUFFIX_DN,
+            "objectClass: top",
+            "objectClass: domain",
+            "dc: example" );
+        add( PEOPLE_DN,
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: people" );
+        addPerson( "jack", "developer" );
+        addPerson( "jill", "manager" );
+    }
+
+
+    @After
+    public void destroyPartition() throws Exception
+    {
+        partition.destroy();
+    }
+
+
+    private Entry add( Dn dn, String... ldif ) throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager, dn, ldif );
+        entry.add( SchemaConstants.ENTRY_CSN_AT, csnFactory.newInstance().toString() );
+        entry.add( SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString() );
+
+        partition.add( new AddOperationContext( null, entry ) );
+
+        return entry;
+    }
+
+
+    private Entry addPerson( String cn, String description ) throws Exception
+    {
+        return add( getPersonDn( cn ),
+            "objectClass: top",
+            "objectClass: person",
+            "objectClass: organizationalPerson",
+            "cn: " + cn,
+            "sn: " + cn,
+            "description: " + description );
+    }
+
+
+    private Dn getPersonDn( String cn ) throws Exception
+    {
+        return new Dn( schemaManager, "cn=" + cn + ",ou=people,dc=example,dc=com" );
+    }
+
+
+    /**
+     * Searches the whole partition
+     *
+     * @return The cn values of the found entries
+     */
+    private Set<String> search( String filter ) throws Exception
+    {
+        SearchOperationContext searchContext = new SearchOperationContext( session, SUFFIX_DN,
+            SearchScope.SUBTREE, FilterParser.parse( schemaManager, filter ), SchemaConstants.CN_AT );
+        EntryFilteringCursor cursor = partition.search( searchContext );
+        Set<String> found = new TreeSet<String>();
+
+        try
+        {
+            cursor.beforeFirst();
+
+            while ( cursor.next() )
+            {
+                found.add( cursor.get().get( SchemaConstants.CN_AT ).getString() );
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+
+        return found;
+    }
+
+
+    private Set<String> set( String... values )
+    {
+        Set<String> set = new TreeSet<String>();
+
+        for ( String value : values )
+        {
+            set.add( value );
+        }
+
+        return set;
+    }
+
+
+    @Test
+    public void testAdd() throws Exception
+    {
+        assertEquals( 4, partition.count() );
+
+        Entry entry = addPerson( "john", "tester" );
+        String id = partition.getEntryId( entry.getDn() );
+
+        // The IDs are the entryUUIDs
+        assertEquals( entry.get( SchemaConstants.ENTRY_UUID_AT ).getString(), id );
+        assertEquals( 5, partition.count() );
+        assertEquals( partition.getEntryId( PEOPLE_DN ), partition.getParentId( id ) );
+        assertEquals( 3, partition.getChildCount( partition.getEntryId( PEOPLE_DN ) ) );
+
+        Entry fetched = partition.fetch( id, entry.getDn() );
+        assertTrue( fetched.contains( DESCRIPTION_AT, "tester" ) );
+        assertEquals( set( "john" ), search( "(cn=john)" ) );
+    }
+
+
+    @Test
+    public void testDelete() throws Exception
+    {
+        Dn dn = getPersonDn( "jack" );
+        String id = partition.getEntryId( dn );
+
+        partition.delete( new DeleteOperationContext( session, dn ) );
+
+        assertNull( partition.getEntryId( dn ) );
+        assertNull( partition.fetch( id ) );
+        assertEquals( 3, partition.count() );
+        assertEquals( 1, partition.getChildCount( partition.getEntryId( PEOPLE_DN ) ) );
+
+        // Neither the indexes nor the master table know about the entry anymore
+        assertTrue( search( "(cn=jack)" ).isEmpty() );
+        assertTrue( search( "(sn=jack)" ).isEmpty() );
+        assertEquals( set( "jill" ), search( "(objectClass=person)" ) );
+    }
+
+
+    @Test
+    public void testModify() throws Exception
+    {
+        Dn dn = getPersonDn( "jack" );
+
+        Entry modified = partition.modify( dn,
+            new DefaultModification( ModificationOperation.ADD_ATTRIBUTE, OU_AT, "engineering" ),
+            new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, DESCRIPTION_AT, "architect" ) );
+
+        assertTrue( modified.contains( OU_AT, "engineering" ) );
+        assertTrue( modified.contains( DESCRIPTION_AT, "architect" ) );
+
+        Entry fetched = partition.fetch( partition.getEntryId( dn ), dn );
+        assertTrue( fetched.contains( DESCRIPTION_AT, "architect" ) );
+        assertFalse( fetched.contains( DESCRIPTION_AT, "developer" ) );
+
+        // The ou index has been updated
+        assertEquals( set( "jack" ), search( "(ou=engineering)" ) );
+
+        // The unindexed attribute is evaluated on the stored entry
+        assertEquals( set( "jack" ), search( "(description=architect)" ) );
+        assertTrue( search( "(description=developer)" ).isEmpty() );
+
+        partition.modify( dn, new DefaultModification( ModificationOperation.REMOVE_ATTRIBUTE, OU_AT ) );
+
+        assertTrue( search( "(ou=engineering)" ).isEmpty() );
+    }
+
+
+    @Test
+    public void testRename() throws Exception
+    {
+        Dn dn = getPersonDn( "jack" );
+        String id = partition.getEntryId( dn );
+
+        partition.rename( new RenameOperationContext( session, dn, new Rdn( schemaManager, "cn=john" ), true ) );
+
+        Dn newDn = getPersonDn( "john" );
+
+        assertNull( partition.getEntryId( dn ) );
+        assertEquals( id, partition.getEntryId( newDn ) );
+
+        Entry renamed = partition.fetch( id, newDn );
+        assertTrue( renamed.contains( SchemaConstants.CN_AT, "john" ) );
+        assertFalse( renamed.contains( SchemaConstants.CN_AT, "jack" ) );
+
+        // The old Rdn value has been removed from the cn index
+        assertEquals( set( "john" ), search( "(cn=john)" ) );
+        assertTrue( search( "(cn=jack)" ).isEmpty() );
+        assertEquals( 2, partition.getChildCount( partition.getEntryId( PEOPLE_DN ) ) );
+    }
+
+
+    @Test
+    public void testSearch() throws Exception
+    {
+        // Indexed filters
+        assertEquals( set( "jack" ), search( "(cn=jack)" ) );
+        assertEquals( set( "jack", "jill" ), search( "(cn=j*)" ) );
+        assertEquals( set( "jack", "jill" ), search( "(|(cn=jack)(cn=jill))" ) );
+
+        // Unindexed filters
+        assertEquals( set( "jill" ), search( "(sn=jill)" ) );
+        assertEquals( set( "jack" ), search( "(description=dev*)" ) );
+        assertEquals( set( "jack", "jill" ), search( "(description=*)" ) );
+        assertTrue( search( "(sn=nobody)" ).isEmpty() );
+
+        // Indexed and unindexed filters mixed
+        assertEquals( set( "jill" ), search( "(&(cn=j*)(description=manager))" ) );
+        assertEquals( set( "jack" ), search( "(&(objectClass=person)(!(sn=jill)))" ) );
+
+        // The scope
+        SearchOperationContext searchContext = new SearchOperationContext( session, getPersonDn( "jack" ),
+            SearchScope.OBJECT, FilterParser.parse( schemaManager, "(objectClass=*)" ), SchemaConstants.CN_AT );
+        EntryFilteringCursor cursor = partition.search( searchContext );
+
+        try
+        {
+            cursor.beforeFirst();
+
+            assertTrue( cursor.next() );
+            assertNotNull( cursor.get() );
+            assertEquals( "jack", cursor.get().get( SchemaConstants.CN_AT ).getString() );
+            assertFalse( cursor.next() );
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+
+
+    @Test
+    public void testReadersAreNotBlockedByWriters() throws Exception
+    {
+        final Dn dn = getPersonDn( "jack" );
+        final String id = partition.getEntryId( dn );
+        final int nbLoops = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+
+        // Hold the partition lock, as a writer would do
+        Lock writeLock = partition.getReadWriteLock().writeLock();
+        writeLock.lock();
+
+        try
+        {
+            Future<Void> writer = executor.submit( new Callable<Void>()
+            {
+                public Void call() throws Exception
+                {
+                    for ( int i = 0; i < nbLoops; i++ )
+                    {
+                        partition.modify( dn,
+                            new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, DESCRIPTION_AT,
+                                "writer " + i ) );
+                    }
+
+                    return null;
+                }
+            } );
+
+            Future<Integer> reader = executor.submit( new Callable<Integer>()
+            {
+                public Integer call() throws Exception
+                {
+                    int nbReads = 0;
+
+                    for ( int i = 0; i < nbLoops; i++ )
+                    {
+                        assertEquals( id, partition.getEntryId( dn ) );
+                        assertEquals( dn, partition.getEntryDn( id ) );
+
+                        // The entry is never seen while it's being modified
+                        Entry entry = partition.fetch( id );
+                        Attribute description = entry.get( DESCRIPTION_AT );
+                        assertNotNull( description );
+                        assertEquals( 1, description.size() );
+                        nbReads++;
+                    }
+
+                    return nbReads;
+                }
+            } );
+
+            // Neither the reader nor the writer wait for the lock to be released
+            assertEquals( nbLoops, reader.get( 30, TimeUnit.SECONDS ).intValue() );
+            writer.get( 30, TimeUnit.SECONDS );
+        }
+        finally
+        {
+            writeLock.unlock();
+            executor.shutdownNow();
+        }
+
+        assertEquals( "writer " + ( nbLoops - 1 ), partition.fetch( id ).get( DESCRIPTION_AT ).getString() );
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.impl.skiplist;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the SkipListTable class and its cursors.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SkipListTableTest
+{
+    private static final Comparator<Integer> COMPARATOR = new Comparator<Integer>()
+    {
+        public int compare( Integer i1, Integer i2 )
+        {
+            return i1.compareTo( i2 );
+        }
+    };
+
+    private SkipListTable<Integer, Integer> dups;
+    private SkipListTable<Integer, Integer> nodups;
+
+
+    @Before
+    public void setUp() throws Exception
+    {
+        dups = new SkipListTable<Integer, Integer>( "dups", COMPARATOR, COMPARATOR, true );
+        nodups = new SkipListTable<Integer, Integer>( "nodups", COMPARATOR, COMPARATOR, false );
+
+        // (1, 10), (1, 11), (1, 12), (3, 30), (5, 50), (5, 51)
+        int[][] tuples = new int[][]
+            { { 1, 10 }, { 1, 11 }, { 1, 12 }, { 3, 30 }, { 5, 50 }, { 5, 51 } };
+
+        for ( int[] tuple : tuples )
+        {
+            dups.put( tuple[0], tuple[1] );
+        }
+
+        // (1, 10), (3, 30), (5, 50)
+        nodups.put( 1, 10 );
+        nodups.put( 3, 30 );
+        nodups.put( 5, 50 );
+    }
+
+
+    @Test
+    public void testPutRemove() throws Exception
+    {
+        assertEquals( 6L, dups.count() );
+        assertEquals( 3L, dups.count( 1 ) );
+        assertEquals( 0L, dups.count( 2 ) );
+        assertEquals( Integer.valueOf( 10 ), dups.get( 1 ) );
+        assertTrue( dups.has( 5, 51 ) );
+        assertFalse( dups.has( 5, 52 ) );
+
+        // Adding an existing tuple does nothing
+        dups.put( 1, 11 );
+        assertEquals( 6L, dups.count() );
+
+        dups.remove( 1, 10 );
+        assertEquals( Integer.valueOf( 11 ), dups.get( 1 ) );
+        dups.remove( 3, 30 );
+        assertFalse( dups.has( 3 ) );
+        dups.remove( 5 );
+        assertFalse( dups.has( 5 ) );
+        assertEquals( 2L, dups.count() );
+
+        assertEquals( 3L, nodups.count() );
+        nodups.put( 3, 31 );
+        assertEquals( 3L, nodups.count() );
+        assertEquals( Integer.valueOf( 31 ), nodups.get( 3 ) );
+        nodups.remove( 3, 30 );
+        assertTrue( nodups.has( 3 ) );
+        nodups.remove( 3, 31 );
+        assertFalse( nodups.has( 3 ) );
+        assertEquals( 2L, nodups.count() );
+
+        assertTrue( nodups.hasGreaterOrEqual( 4 ) );
+        assertFalse( nodups.hasGreaterOrEqual( 6 ) );
+        assertTrue( nodups.hasLessOrEqual( 1 ) );
+        assertFalse( nodups.hasLessOrEqual( 0 ) );
+    }
+
+
+    @Test
+    public void testCursor() throws Exception
+    {
+        assertEquals( "(1,10)(1,11)(1,12)(3,30)(5,50)(5,51)", forward( dups.cursor() ) );
+        assertEquals( "(5,51)(5,50)(3,30)(1,12)(1,11)(1,10)", backward( dups.cursor() ) );
+        assertEquals( "(1,10)(3,30)(5,50)", forward( nodups.cursor() ) );
+        assertEquals( "(5,50)(3,30)(1,10)", backward( nodups.cursor() ) );
+
+        Cursor<Tuple<Integer, Integer>> cursor = dups.cursor();
+
+        // Before a key
+        cursor.before( new Tuple<Integer, Integer>( 3, null ) );
+        assertTrue( cursor.next() );
+        assertEquals( "(3,30)", toString( cursor.get() ) );
+
+        cursor.before( new Tuple<Integer, Integer>( 3, null ) );
+        assertTrue( cursor.previous() );
+        assertEquals( "(1,12)", toString( cursor.get() ) );
+
+        // After a key
+        cursor.after( new Tuple<Integer, Integer>( 1, null ) );
+        assertTrue( cursor.next() );
+        assertEquals( "(3,30)", toString( cursor.get() ) );
+
+        cursor.after( new Tuple<Integer, Integer>( 1, null ) );
+        assertTrue( cursor.previous() );
+        assertEquals( "(1,12)", toString( cursor.get() ) );
+
+        // Within the values of a key
+        cursor.before( new Tuple<Integer, Integer>( 1, 11 ) );
+        assertTrue( cursor.next() );
+        assertEquals( "(1,11)", toString( cursor.get() ) );
+
+        cursor.after( new Tuple<Integer, Integer>( 1, 11 ) );
+        assertTrue( cursor.next() );
+        assertEquals( "(1,12)", toString( cursor.get() ) );
+
+        cursor.after( new Tuple<Integer, Integer>( 5, 51 ) );
+        assertFalse( cursor.next() );
+        assertFalse( cursor.available() );
+        cursor.close();
+
+        // A key of a table without duplicates
+        cursor = nodups.cursor();
+        cursor.after( new Tuple<Integer, Integer>( 3, 30 ) );
+        assertTrue( cursor.next() );
+        assertEquals( "(5,50)", toString( cursor.get() ) );
+        cursor.close();
+    }
+
+
+    @Test
+    public void testKeyCursor() throws Exception
+    {
+        assertEquals( "(1,10)(1,11)(1,12)", forward( dups.cursor( 1 ) ) );
+        assertEquals( "(5,51)(5,50)", backward( dups.cursor( 5 ) ) );
+        assertEquals( "", forward( dups.cursor( 2 ) ) );
+        assertEquals( "(3,30)", forward( nodups.cursor( 3 ) ) );
+
+        Cursor<Integer> values = dups.valueCursor( 1 );
+        values.after( 10 );
+        assertTrue( values.next() );
+        assertEquals( Integer.valueOf( 11 ), values.get() );
+        assertTrue( values.next() );
+        assertEquals( Integer.valueOf( 12 ), values.get() );
+        assertFalse( values.next() );
+        values.close();
+    }
+
+
+    @Test
+    public void testCursorOnModifiedTable() throws Exception
+    {
+        Cursor<Tuple<Integer, Integer>> cursor = dups.cursor();
+
+        assertTrue( cursor.next() );
+        assertEquals( "(1,10)", toString( cursor.get() ) );
+
+        // The cursor continues from its position
+        dups.remove( 1 );
+        dups.put( 2, 20 );
+        assertTrue( cursor.next() );
+        assertEquals( "(2,20)", toString( cursor.get() ) );
+        cursor.close();
+    }
+
+
+    @Test
+    public void testConcurrentWrites() throws Exception
+    {
+        final SkipListTable<Integer, Integer> table = new SkipListTable<Integer, Integer>( "concurrent",
+            COMPARATOR, COMPARATOR, true );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for ( int t = 0; t < 4; t++ )
+        {
+            final int offset = t;
+
+            Thread thread = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+
+                        // All the threads write on the same keys, and remove half of their values
+                        for ( int i = 0; i < 2000; i++ )
+                        {
+                            table.put( i % 10, i * 4 + offset );
+
+                            if ( i % 2 == 1 )
+                            {
+                                table.remove( i % 10, i * 4 + offset );
+                            }
+                        }
+
+                        Cursor<Tuple<Integer, Integer>> cursor = table.cursor();
+
+                        while ( cursor.next() )
+                        {
+                            cursor.get();
+                        }
+
+                        cursor.close();
+                    }
+                    catch ( Exception e )
+                    {
+                        failure.set( e );
+                    }
+                }
+            };
+
+            threads.add( thread );
+            thread.start();
+        }
+
+        start.countDown();
+
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        assertNull( failure.get() );
+        assertEquals( 4000L, table.count() );
+
+        long count = 0L;
+
+        for ( int key = 0; key < 10; key++ )
+        {
+            count += table.count( key );
+        }
+
+        assertEquals( 4000L, count );
+    }
+
+
+    private static String toString( Tuple<Integer, Integer> tuple )
+    {
+        return "(" + tuple.getKey() + "," + tuple.getValue() + ")";
+    }
+
+
+    private static String forward( Cursor<Tuple<Integer, Integer>> cursor ) throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+
+        while ( cursor.next() )
+        {
+            sb.append( toString( cursor.get() ) );
+        }
+
+        cursor.close();
+
+        return sb.toString();
+    }
+
+
+    private static String backward( Cursor<Tuple<Integer, Integer>> cursor ) throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        cursor.afterLast();
+
+        while ( cursor.previous() )
+        {
+            sb.append( toString( cursor.get() ) );
+        }
+
+        cursor.close();
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.search.cursor;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the EntryIdBitmap class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EntryIdBitmapTest
+{
+    @Test
+    public void testAddContains()
+    {
+        EntryIdBitmap bitmap = new EntryIdBitmap();
+        Random random = new Random( 42L );
+        Set<Long> ids = new HashSet<Long>();
+
+        // Some sparse chunks, and a dense one which is converted to a bitmap
+        for ( int i = 0; i < 20000; i++ )
+        {
+            long id = ( i % 2 == 0 ) ? random.nextInt( 65536 ) : random.nextInt( 10000000 );
+
+            assertEquals( ids.add( id ), bitmap.add( id ) );
+        }
+
+        assertEquals( ids.size(), bitmap.getCardinality() );
+
+        for ( long id = 0; id < 200000; id++ )
+        {
+            assertEquals( ids.contains( id ), bitmap.contains( id ) );
+        }
+    }
+
+
+    @Test
+    public void testAnd()
+    {
+        EntryIdBitmap bitmap1 = new EntryIdBitmap();
+        EntryIdBitmap bitmap2 = new EntryIdBitmap();
+        Set<String> expected = new TreeSet<String>();
+
+        for ( long id = 1; id < 300000; id++ )
+        {
+            // A dense bitmap, and a bitmap with dense and sparse chunks
+            if ( id % 3 != 0 )
+            {
+                bitmap1.add( id );
+            }
+
+            if ( ( id < 100000 ) ? ( id % 2 == 0 ) : ( id % 97 == 0 ) )
+            {
+                bitmap2.add( id );
+            }
+
+            if ( ( id % 3 != 0 ) && ( ( id < 100000 ) ? ( id % 2 == 0 ) : ( id % 97 == 0 ) ) )
+            {
+                expected.add( EntryIdBitmap.toUuid( id ) );
+            }
+        }
+
+        EntryIdBitmap result = bitmap1.and( bitmap2 );
+        assertEquals( expected.size(), result.getCardinality() );
+        assertEquals( expected.size(), bitmap2.and( bitmap1 ).getCardinality() );
+
+        Set<String> uuids = new TreeSet<String>();
+        assertEquals( expected.size(), result.addTo( uuids ) );
+        assertEquals( expected, uuids );
+
+        assertEquals( 0L, result.and( new EntryIdBitmap() ).getCardinality() );
+    }
+
+
+    @Test
+    public void testSequentialIds()
+    {
+        assertEquals( 1L, EntryIdBitmap.getSequentialId( "00000000-0000-0000-0000-000000000001" ) );
+        assertEquals( 0x1234abcdL, EntryIdBitmap.getSequentialId( EntryIdBitmap.toUuid( 0x1234abcdL ) ) );
+        assertEquals( -1L, EntryIdBitmap.getSequentialId( UUID.randomUUID().toString() ) );
+        assertEquals( -1L, EntryIdBitmap.getSequentialId( "00000000-0000-0000-0000-00000000000A" ) );
+        assertEquals( -1L, EntryIdBitmap.getSequentialId( "00000000-0000-0000-8000-000000000000" ) );
+        assertFalse( new EntryIdBitmap().contains( 1L ) );
+        assertTrue( EntryIdBitmap.toUuid( 1L ).equals( "00000000-0000-0000-0000-000000000001" ) );
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.search.cursor;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the EntryIdSet class.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EntryIdSetTest
+{
+    @Test
+    public void testUuids()
+    {
+        EntryIdSet set = new EntryIdSet();
+        List<String> ids = new ArrayList<String>();
+
+        // Enough IDs to grow the table several times
+        for ( int i = 0; i < 10000; i++ )
+        {
+            String id = UUID.randomUUID().toString();
+            ids.add( id );
+
+            assertFalse( set.contains( id ) );
+            assertTrue( set.add( id ) );
+        }
+
+        assertEquals( 10000, set.size() );
+
+        for ( String id : ids )
+        {
+            assertTrue( set.contains( id ) );
+            assertFalse( set.add( id ) );
+        }
+
+        assertFalse( set.contains( UUID.randomUUID().toString() ) );
+        assertEquals( 10000, set.size() );
+    }
+
+
+    @Test
+    public void testZeroUuid()
+    {
+        EntryIdSet set = new EntryIdSet();
+        String zero = "00000000-0000-0000-0000-000000000000";
+
+        assertFalse( set.contains( zero ) );
+        assertTrue( set.add( zero ) );
+        assertFalse( set.add( zero ) );
+        assertTrue( set.contains( zero ) );
+        assertEquals( 1, set.size() );
+    }
+
+
+    @Test
+    public void testOtherIds()
+    {
+        EntryIdSet set = new EntryIdSet();
+
+        assertTrue( set.add( "1" ) );
+        assertTrue( set.add( "00000000-0000-0000-0000-00000000000g" ) );
+        assertTrue( set.add( "00000000x0000-0000-0000-000000000001" ) );
+        assertTrue( set.add( "00000000-0000-0000-0000-000000000001" ) );
+        assertFalse( set.add( "1" ) );
+
+        assertTrue( set.contains( "1" ) );
+        assertTrue( set.contains( "00000000-0000-0000-0000-00000000000g" ) );
+        assertFalse( set.contains( "2" ) );
+        assertEquals( 4, set.size() );
+
+        set.clear();
+
+        assertEquals( 0, set.size() );
+        assertFalse( set.contains( "1" ) );
+        assertFalse( set.contains( "00000000-0000-0000-0000-000000000001" ) );
+    }
+}